@@ -308,6 +308,53 @@ BEGIN
 
     END loop;
 END $$;
+
+-- Drops monthly partitions of all audit tables that contain only records older than the provided
+-- timestamp (upper bound of the partition range is not after it), at most maxPartitions of them,
+-- oldest first. Default partition is never dropped.
+-- Detaching a partition takes ACCESS EXCLUSIVE lock on the parent table which is held until the end
+-- of the transaction, blocking audit writes and reads. Callers should drop only a few partitions
+-- per transaction and commit in between, as audit cleanup does.
+-- Returns the number of dropped ma_audit_event partitions.
+CREATE OR REPLACE FUNCTION audit_drop_partitions_older_than(olderThan TIMESTAMPTZ, maxPartitions int)
+    RETURNS int
+    LANGUAGE plpgsql
+AS $$
+DECLARE
+    partition RECORD;
+    tableSuffix TEXT;
+    dropped int = 0;
+BEGIN
+    FOR partition IN
+        SELECT c.relname AS name,
+            substring(pg_get_expr(c.relpartbound, c.oid) FROM 'TO \(''([^'']+)''\)')::timestamptz AS rangeTo
+        FROM pg_inherits i
+            JOIN pg_class c ON c.oid = i.inhrelid
+        WHERE i.inhparent = 'ma_audit_event'::regclass
+        ORDER BY rangeTo
+    LOOP
+        EXIT WHEN dropped >= maxPartitions;
+        CONTINUE WHEN partition.rangeTo IS NULL OR partition.rangeTo > olderThan;
+
+        tableSuffix := substring(partition.name FROM length('ma_audit_event_') + 1);
+        RAISE NOTICE 'Dropping partitions %, range up to %', tableSuffix, partition.rangeTo;
+
+        -- delta and ref partitions reference the event partition, so they go first
+        IF to_regclass('ma_audit_delta_' || tableSuffix) IS NOT NULL THEN
+            EXECUTE format('ALTER TABLE ma_audit_delta DETACH PARTITION %I', 'ma_audit_delta_' || tableSuffix);
+            EXECUTE format('DROP TABLE %I', 'ma_audit_delta_' || tableSuffix);
+        END IF;
+        IF to_regclass('ma_audit_ref_' || tableSuffix) IS NOT NULL THEN
+            EXECUTE format('ALTER TABLE ma_audit_ref DETACH PARTITION %I', 'ma_audit_ref_' || tableSuffix);
+            EXECUTE format('DROP TABLE %I', 'ma_audit_ref_' || tableSuffix);
+        END IF;
+        EXECUTE format('ALTER TABLE ma_audit_event DETACH PARTITION %I', partition.name);
+        EXECUTE format('DROP TABLE %I', partition.name);
+        dropped := dropped + 1;
+    END LOOP;
+
+    RETURN dropped;
+END $$;
 -- endregion
 
 /*
@@ -326,6 +373,10 @@ however it may be complicated to organize it into proper partitions after the fa
 Create past partitions if needed, e.g. for migration. E.g., for last 12 months (including current):
 call audit_create_monthly_partitions(-12);
 
+Audit cleanup based on maxAge drops whole partitions older than the cleanup limit
+(see audit_drop_partitions_older_than), rows are deleted only from the remaining partitions.
+Future partitions can be also created by the cleanup task, see auditPartitions cleanup policy.
+
 Check the existing partitions with this SQL query:
 select inhrelid::regclass as partition
 from pg_inherits
@@ -339,4 +390,4 @@ limit 50;
 */
 
 -- Initializing the last change number used in postgres-new-upgrade.sql.
-call apply_audit_change(2, $$ SELECT 1 $$, true);
+call apply_audit_change(3, $$ SELECT 1 $$, true);
@@ -96,6 +96,256 @@ CREATE INDEX m_shadow_correlationCaseOpenTimestamp_idx ON m_shadow (correlationC
 CREATE INDEX m_shadow_correlationCaseCloseTimestamp_idx ON m_shadow (correlationCaseCloseTimestamp);
 $aa$);
 
+-- changes for 4.6
+
+-- Work buckets of distributed activities stored in a separate table
+call apply_change(6, $aa$
+CREATE TYPE WorkBucketStateType AS ENUM ('READY', 'DELEGATED', 'COMPLETE');
+$aa$);
+
+call apply_change(7, $aa$
+CREATE TABLE m_activity_bucket (
+    taskOid UUID NOT NULL REFERENCES m_object_oid(oid) ON DELETE CASCADE,
+    activityPath TEXT NOT NULL,
+    sequentialNumber INTEGER NOT NULL,
+    state WorkBucketStateType NOT NULL,
+    workerOid UUID,
+    fullObject BYTEA NOT NULL,
+
+    PRIMARY KEY (taskOid, activityPath, sequentialNumber)
+);
+
+CREATE INDEX m_activity_bucket_state_idx ON m_activity_bucket (taskOid, activityPath, state);
+$aa$);
+
+-- Org closure as a table maintained incrementally instead of materialized view refreshed as a whole
+call apply_change(8, $aa$
+DROP TRIGGER m_ref_object_parent_mark_refresh_tr ON m_ref_object_parent_org;
+DROP TRIGGER m_ref_object_parent_mark_refresh_trunc_tr ON m_ref_object_parent_org;
+DROP TRIGGER m_org_mark_refresh_tr ON m_org;
+DROP TRIGGER m_org_mark_refresh_trunc_tr ON m_org;
+DROP FUNCTION mark_org_closure_for_refresh();
+DROP FUNCTION mark_org_closure_for_refresh_org();
+DROP MATERIALIZED VIEW m_org_closure;
+
+CREATE TABLE m_org_closure (
+    ancestor_oid UUID NOT NULL,
+    descendant_oid UUID NOT NULL,
+
+    PRIMARY KEY (ancestor_oid, descendant_oid)
+);
+
+CREATE INDEX m_org_closure_desc_asc_idx
+    ON m_org_closure (descendant_oid, ancestor_oid);
+
+-- Queue of changed edges (only their endpoints, the current state is in m_ref_object_parent_org).
+CREATE TABLE m_org_closure_change (
+    id BIGSERIAL NOT NULL PRIMARY KEY,
+    ownerOid UUID NOT NULL,
+    targetOid UUID NOT NULL
+);
+
+-- Adds closure rows for a new edge: all ancestors of the parent x all descendants of the child.
+CREATE OR REPLACE FUNCTION m_org_closure_add_edge(childOid UUID, parentOid UUID)
+    RETURNS void
+    LANGUAGE sql
+AS $$
+    INSERT INTO m_org_closure (ancestor_oid, descendant_oid)
+        SELECT a.oid, d.oid
+            FROM (SELECT parentOid AS oid
+                    UNION SELECT ancestor_oid FROM m_org_closure WHERE descendant_oid = parentOid) a,
+                (SELECT childOid AS oid
+                    UNION SELECT descendant_oid FROM m_org_closure WHERE ancestor_oid = childOid) d
+        ON CONFLICT DO NOTHING;
+$$;
+
+-- Recomputes closure rows of the subtree of the child after the edge was removed
+-- (or after any other change of its parents, the edge table is already up to date here).
+-- Rows between the subtree and the rest are deleted and derived again from the remaining edges
+-- leading into the subtree; rows inside the subtree and above it are not affected in acyclic graph.
+-- Subtree membership is checked by (childOid, x) rows, these are never deleted here.
+CREATE OR REPLACE FUNCTION m_org_closure_remove_edge(childOid UUID)
+    RETURNS void
+    LANGUAGE sql
+AS $$
+    DELETE FROM m_org_closure c
+        USING (SELECT childOid AS oid
+            UNION SELECT descendant_oid FROM m_org_closure WHERE ancestor_oid = childOid) s
+        WHERE c.descendant_oid = s.oid
+            AND c.ancestor_oid <> childOid
+            AND NOT EXISTS (SELECT 1 FROM m_org_closure x
+                WHERE x.ancestor_oid = childOid AND x.descendant_oid = c.ancestor_oid);
+
+    INSERT INTO m_org_closure (ancestor_oid, descendant_oid)
+        SELECT DISTINCT a.oid, d.oid
+            FROM (SELECT childOid AS oid
+                    UNION SELECT descendant_oid FROM m_org_closure WHERE ancestor_oid = childOid) s
+                JOIN m_ref_object_parent_org r ON r.ownerOid = s.oid
+                JOIN LATERAL (SELECT r.targetOid AS oid
+                    UNION SELECT ancestor_oid FROM m_org_closure WHERE descendant_oid = r.targetOid) a ON true
+                JOIN LATERAL (SELECT r.ownerOid AS oid
+                    UNION SELECT descendant_oid FROM m_org_closure WHERE ancestor_oid = r.ownerOid) d ON true
+            WHERE r.ownerType = 'ORG'
+                AND r.targetOid <> childOid
+                AND NOT EXISTS (SELECT 1 FROM m_org_closure x
+                    WHERE x.ancestor_oid = childOid AND x.descendant_oid = r.targetOid)
+        ON CONFLICT DO NOTHING;
+$$;
+
+-- The trigger for m_ref_object_parent_org that maintains the closure (or queues the change).
+CREATE OR REPLACE FUNCTION m_org_closure_update_for_ref()
+    RETURNS trigger
+    LANGUAGE plpgsql
+AS $$
+DECLARE
+    deferred boolean;
+BEGIN
+    IF TG_OP = 'TRUNCATE' THEN
+        DELETE FROM m_org_closure WHERE ancestor_oid <> descendant_oid;
+        DELETE FROM m_org_closure_change;
+        RETURN NULL;
+    END IF;
+    IF (TG_OP = 'INSERT' OR NEW.ownerType IS DISTINCT FROM 'ORG')
+            AND (TG_OP = 'DELETE' OR OLD.ownerType IS DISTINCT FROM 'ORG') THEN
+        -- parent refs of non-org objects are not part of the closure
+        RETURN NULL;
+    END IF;
+
+    SELECT value = 'true' INTO deferred FROM m_global_metadata WHERE name = 'orgClosureDeferredUpdate';
+    IF deferred THEN
+        IF TG_OP <> 'INSERT' AND OLD.ownerType = 'ORG' THEN
+            INSERT INTO m_org_closure_change (ownerOid, targetOid) VALUES (OLD.ownerOid, OLD.targetOid);
+        END IF;
+        IF TG_OP <> 'DELETE' AND NEW.ownerType = 'ORG' THEN
+            INSERT INTO m_org_closure_change (ownerOid, targetOid) VALUES (NEW.ownerOid, NEW.targetOid);
+        END IF;
+        INSERT INTO m_global_metadata VALUES ('orgClosureRefreshNeeded', 'true')
+            ON CONFLICT (name) DO UPDATE SET value = 'true';
+        RETURN NULL;
+    END IF;
+
+    -- Concurrent changes could miss each other's closure rows, so they are serialized.
+    PERFORM pg_advisory_xact_lock(47);
+    IF TG_OP <> 'INSERT' AND OLD.ownerType = 'ORG' THEN
+        PERFORM m_org_closure_remove_edge(OLD.ownerOid);
+    END IF;
+    IF TG_OP <> 'DELETE' AND NEW.ownerType = 'ORG' THEN
+        PERFORM m_org_closure_add_edge(NEW.ownerOid, NEW.targetOid);
+    END IF;
+
+    -- after trigger returns null
+    RETURN NULL;
+END $$;
+
+CREATE TRIGGER m_ref_object_parent_org_closure_tr
+    AFTER INSERT OR UPDATE OR DELETE ON m_ref_object_parent_org
+    FOR EACH ROW EXECUTE FUNCTION m_org_closure_update_for_ref();
+CREATE TRIGGER m_ref_object_parent_org_closure_trunc_tr
+    AFTER TRUNCATE ON m_ref_object_parent_org
+    FOR EACH STATEMENT EXECUTE FUNCTION m_org_closure_update_for_ref();
+
+-- The trigger that maintains identity rows after m_org changes.
+-- Rows for the edges of the org are handled by the trigger on m_ref_object_parent_org.
+CREATE OR REPLACE FUNCTION m_org_closure_update_for_org()
+    RETURNS trigger
+    LANGUAGE plpgsql
+AS $$
+BEGIN
+    IF TG_OP = 'TRUNCATE' THEN
+        DELETE FROM m_org_closure;
+        DELETE FROM m_org_closure_change;
+    ELSIF TG_OP = 'INSERT' THEN
+        INSERT INTO m_org_closure VALUES (NEW.oid, NEW.oid) ON CONFLICT DO NOTHING;
+    ELSE
+        DELETE FROM m_org_closure WHERE ancestor_oid = OLD.oid AND descendant_oid = OLD.oid;
+    END IF;
+
+    -- after trigger returns null
+    RETURN NULL;
+END $$;
+
+-- Update is not necessary, it does not change relations between orgs.
+-- If it does, it is handled by trigger on m_ref_object_parent_org.
+CREATE TRIGGER m_org_closure_tr
+    AFTER INSERT OR DELETE ON m_org
+    FOR EACH ROW EXECUTE FUNCTION m_org_closure_update_for_org();
+CREATE TRIGGER m_org_closure_trunc_tr
+    AFTER TRUNCATE ON m_org
+    FOR EACH STATEMENT EXECUTE FUNCTION m_org_closure_update_for_org();
+
+-- This procedure is called from the application code before queries using the closure.
+-- It applies queued changes in deferred update mode, otherwise the flag is not set and it's cheap.
+-- The full rebuild can be forced, e.g. after many changes with triggers off (or just to be sure).
+CREATE OR REPLACE PROCEDURE m_refresh_org_closure(force boolean = false)
+    LANGUAGE plpgsql
+AS $$
+DECLARE
+    flag_val text;
+    last_change_id bigint;
+    edge record;
+BEGIN
+    SELECT value INTO flag_val FROM m_global_metadata WHERE name = 'orgClosureRefreshNeeded';
+    IF flag_val = 'true' OR force THEN
+        -- We use advisory session lock only for the check + refresh, then release it immediately.
+        -- This can still dead-lock two transactions in a single thread on the select/delete combo,
+        -- (I mean, who would do that?!) but works fine for parallel transactions.
+        PERFORM pg_advisory_lock(47);
+        BEGIN
+            IF force THEN
+                DELETE FROM m_org_closure_change;
+                DELETE FROM m_org_closure;
+                INSERT INTO m_org_closure (ancestor_oid, descendant_oid)
+                    WITH RECURSIVE org_h (ancestor_oid, descendant_oid) AS (
+                        -- non-recursive term: identity lines (o => o) for all orgs
+                        SELECT o.oid, o.oid FROM m_org o
+                        UNION
+                        -- recursive term: their parents (anc => desc, that is target => owner)
+                        SELECT par.targetoid, chi.descendant_oid
+                            FROM m_ref_object_parent_org as par, org_h as chi
+                            WHERE par.ownerOid = chi.ancestor_oid
+                    )
+                    SELECT * FROM org_h;
+            ELSE
+                SELECT value INTO flag_val FROM m_global_metadata WHERE name = 'orgClosureRefreshNeeded';
+                IF flag_val = 'true' THEN
+                    -- Changes committed while we're applying these ones are left for the next refresh.
+                    SELECT max(id) INTO last_change_id FROM m_org_closure_change;
+                    -- Queued edges are applied together, each only once with its current state.
+                    -- Removed edges first, so the added ones are joined with up-to-date closure.
+                    FOR edge IN
+                        SELECT DISTINCT c.ownerOid, c.targetOid FROM m_org_closure_change c
+                            WHERE c.id <= last_change_id
+                                AND NOT EXISTS (SELECT 1 FROM m_ref_object_parent_org r
+                                    WHERE r.ownerOid = c.ownerOid AND r.targetOid = c.targetOid)
+                    LOOP
+                        PERFORM m_org_closure_remove_edge(edge.ownerOid);
+                    END LOOP;
+                    FOR edge IN
+                        SELECT DISTINCT c.ownerOid, c.targetOid FROM m_org_closure_change c
+                            WHERE c.id <= last_change_id
+                                AND EXISTS (SELECT 1 FROM m_ref_object_parent_org r
+                                    WHERE r.ownerOid = c.ownerOid AND r.targetOid = c.targetOid)
+                    LOOP
+                        PERFORM m_org_closure_add_edge(edge.ownerOid, edge.targetOid);
+                    END LOOP;
+                    DELETE FROM m_org_closure_change WHERE id <= last_change_id;
+                END IF;
+            END IF;
+            DELETE FROM m_global_metadata WHERE name = 'orgClosureRefreshNeeded'
+                AND NOT EXISTS (SELECT 1 FROM m_org_closure_change);
+            PERFORM pg_advisory_unlock(47);
+        EXCEPTION WHEN OTHERS THEN
+            -- Whatever happens we definitely want to release the lock.
+            PERFORM pg_advisory_unlock(47);
+            RAISE;
+        END;
+    END IF;
+END; $$;
+
+-- initial content of the closure table
+CALL m_refresh_org_closure(true);
+$aa$);
+
 -- WRITE CHANGES ABOVE ^^
 -- IMPORTANT: update apply_change number at the end of postgres-new.sql
 -- to match the number used in the last change here!
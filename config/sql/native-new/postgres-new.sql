@@ -150,6 +150,8 @@ CREATE TYPE TaskWaitingReasonType AS ENUM ('OTHER_TASKS', 'OTHER');
 CREATE TYPE ThreadStopActionType AS ENUM ('RESTART', 'RESCHEDULE', 'SUSPEND', 'CLOSE');
 
 CREATE TYPE TimeIntervalStatusType AS ENUM ('BEFORE', 'IN', 'AFTER');
+
+CREATE TYPE WorkBucketStateType AS ENUM ('READY', 'DELEGATED', 'COMPLETE');
 -- endregion
 
 -- region OID-pool table
@@ -710,72 +712,150 @@ CREATE INDEX m_ref_object_parent_org_targetOidRelationId_idx
 
 -- region org-closure
 /*
-Trigger on m_ref_object_parent_org marks this view for refresh in one m_global_metadata row.
-Closure contains also identity (org = org) entries because:
-* It's easier to do optimized matrix-multiplication based refresh with them later.
+Org closure is a table maintained incrementally by triggers on m_ref_object_parent_org and m_org.
+Closure contains also identity (org = org) entries for all orgs because:
 * It actually makes some query easier and requires AND instead of OR conditions.
+* Incremental maintenance can join through them without special cases.
 * While the table shows that o => o (=> means "is parent of"), this is not the semantics
 of isParent/ChildOf searches and they never return parameter OID as a result.
+
+Changes of org-to-org parent refs are applied in the same transaction (serialized by advisory
+transaction lock 47), unless deferred update is enabled by 'orgClosureDeferredUpdate' = 'true'
+row in m_global_metadata. In that case the changed edges are queued in m_org_closure_change
+and applied together by m_refresh_org_closure() which is called before queries with org filters.
+Incremental maintenance assumes acyclic org graph, after fixing a cycle call m_refresh_org_closure(true).
 */
-CREATE MATERIALIZED VIEW m_org_closure AS
-WITH RECURSIVE org_h (
-    ancestor_oid, -- ref.targetoid
-    descendant_oid --ref.ownerOid
-    -- paths -- number of different paths, not used for materialized view version
-    -- depth -- possible later, but cycle detected must be added to the recursive term
-) AS (
-    -- non-recursive term:
-    -- Gather all organization oids from parent-org refs and initialize identity lines (o => o).
-    -- We don't want the orgs not in org hierarchy, that would require org triggers too.
-    SELECT o.oid, o.oid FROM m_org o
-        WHERE EXISTS(
-            SELECT 1 FROM m_ref_object_parent_org r
-                WHERE r.targetOid = o.oid OR r.ownerOid = o.oid)
-    UNION
-    -- recursive (iterative) term:
-    -- Generate their parents (anc => desc, that is target => owner), => means "is parent of".
-    SELECT par.targetoid, chi.descendant_oid -- leaving original child there generates closure
-        FROM m_ref_object_parent_org as par, org_h as chi
-        WHERE par.ownerOid = chi.ancestor_oid
-)
-SELECT * FROM org_h;
+CREATE TABLE m_org_closure (
+    ancestor_oid UUID NOT NULL,
+    descendant_oid UUID NOT NULL,
+
+    PRIMARY KEY (ancestor_oid, descendant_oid)
+);
 
--- unique index is like PK if it was table
-CREATE UNIQUE INDEX m_org_closure_asc_desc_idx
-    ON m_org_closure (ancestor_oid, descendant_oid);
 CREATE INDEX m_org_closure_desc_asc_idx
     ON m_org_closure (descendant_oid, ancestor_oid);
 
--- The trigger for m_ref_object_parent_org that flags the view for refresh.
-CREATE OR REPLACE FUNCTION mark_org_closure_for_refresh()
+-- Queue of changed edges (only their endpoints, the current state is in m_ref_object_parent_org).
+CREATE TABLE m_org_closure_change (
+    id BIGSERIAL NOT NULL PRIMARY KEY,
+    ownerOid UUID NOT NULL,
+    targetOid UUID NOT NULL
+);
+
+-- Adds closure rows for a new edge: all ancestors of the parent x all descendants of the child.
+CREATE OR REPLACE FUNCTION m_org_closure_add_edge(childOid UUID, parentOid UUID)
+    RETURNS void
+    LANGUAGE sql
+AS $$
+    INSERT INTO m_org_closure (ancestor_oid, descendant_oid)
+        SELECT a.oid, d.oid
+            FROM (SELECT parentOid AS oid
+                    UNION SELECT ancestor_oid FROM m_org_closure WHERE descendant_oid = parentOid) a,
+                (SELECT childOid AS oid
+                    UNION SELECT descendant_oid FROM m_org_closure WHERE ancestor_oid = childOid) d
+        ON CONFLICT DO NOTHING;
+$$;
+
+-- Recomputes closure rows of the subtree of the child after the edge was removed
+-- (or after any other change of its parents, the edge table is already up to date here).
+-- Rows between the subtree and the rest are deleted and derived again from the remaining edges
+-- leading into the subtree; rows inside the subtree and above it are not affected in acyclic graph.
+-- Subtree membership is checked by (childOid, x) rows, these are never deleted here.
+CREATE OR REPLACE FUNCTION m_org_closure_remove_edge(childOid UUID)
+    RETURNS void
+    LANGUAGE sql
+AS $$
+    DELETE FROM m_org_closure c
+        USING (SELECT childOid AS oid
+            UNION SELECT descendant_oid FROM m_org_closure WHERE ancestor_oid = childOid) s
+        WHERE c.descendant_oid = s.oid
+            AND c.ancestor_oid <> childOid
+            AND NOT EXISTS (SELECT 1 FROM m_org_closure x
+                WHERE x.ancestor_oid = childOid AND x.descendant_oid = c.ancestor_oid);
+
+    INSERT INTO m_org_closure (ancestor_oid, descendant_oid)
+        SELECT DISTINCT a.oid, d.oid
+            FROM (SELECT childOid AS oid
+                    UNION SELECT descendant_oid FROM m_org_closure WHERE ancestor_oid = childOid) s
+                JOIN m_ref_object_parent_org r ON r.ownerOid = s.oid
+                JOIN LATERAL (SELECT r.targetOid AS oid
+                    UNION SELECT ancestor_oid FROM m_org_closure WHERE descendant_oid = r.targetOid) a ON true
+                JOIN LATERAL (SELECT r.ownerOid AS oid
+                    UNION SELECT descendant_oid FROM m_org_closure WHERE ancestor_oid = r.ownerOid) d ON true
+            WHERE r.ownerType = 'ORG'
+                AND r.targetOid <> childOid
+                AND NOT EXISTS (SELECT 1 FROM m_org_closure x
+                    WHERE x.ancestor_oid = childOid AND x.descendant_oid = r.targetOid)
+        ON CONFLICT DO NOTHING;
+$$;
+
+-- The trigger for m_ref_object_parent_org that maintains the closure (or queues the change).
+CREATE OR REPLACE FUNCTION m_org_closure_update_for_ref()
     RETURNS trigger
     LANGUAGE plpgsql
 AS $$
+DECLARE
+    deferred boolean;
 BEGIN
-    IF TG_OP = 'TRUNCATE' OR OLD.ownerType = 'ORG' OR NEW.ownerType = 'ORG' THEN
+    IF TG_OP = 'TRUNCATE' THEN
+        DELETE FROM m_org_closure WHERE ancestor_oid <> descendant_oid;
+        DELETE FROM m_org_closure_change;
+        RETURN NULL;
+    END IF;
+    IF (TG_OP = 'INSERT' OR NEW.ownerType IS DISTINCT FROM 'ORG')
+            AND (TG_OP = 'DELETE' OR OLD.ownerType IS DISTINCT FROM 'ORG') THEN
+        -- parent refs of non-org objects are not part of the closure
+        RETURN NULL;
+    END IF;
+
+    SELECT value = 'true' INTO deferred FROM m_global_metadata WHERE name = 'orgClosureDeferredUpdate';
+    IF deferred THEN
+        IF TG_OP <> 'INSERT' AND OLD.ownerType = 'ORG' THEN
+            INSERT INTO m_org_closure_change (ownerOid, targetOid) VALUES (OLD.ownerOid, OLD.targetOid);
+        END IF;
+        IF TG_OP <> 'DELETE' AND NEW.ownerType = 'ORG' THEN
+            INSERT INTO m_org_closure_change (ownerOid, targetOid) VALUES (NEW.ownerOid, NEW.targetOid);
+        END IF;
         INSERT INTO m_global_metadata VALUES ('orgClosureRefreshNeeded', 'true')
             ON CONFLICT (name) DO UPDATE SET value = 'true';
+        RETURN NULL;
+    END IF;
+
+    -- Concurrent changes could miss each other's closure rows, so they are serialized.
+    PERFORM pg_advisory_xact_lock(47);
+    IF TG_OP <> 'INSERT' AND OLD.ownerType = 'ORG' THEN
+        PERFORM m_org_closure_remove_edge(OLD.ownerOid);
+    END IF;
+    IF TG_OP <> 'DELETE' AND NEW.ownerType = 'ORG' THEN
+        PERFORM m_org_closure_add_edge(NEW.ownerOid, NEW.targetOid);
     END IF;
 
     -- after trigger returns null
     RETURN NULL;
 END $$;
 
-CREATE TRIGGER m_ref_object_parent_mark_refresh_tr
+CREATE TRIGGER m_ref_object_parent_org_closure_tr
     AFTER INSERT OR UPDATE OR DELETE ON m_ref_object_parent_org
-    FOR EACH ROW EXECUTE FUNCTION mark_org_closure_for_refresh();
-CREATE TRIGGER m_ref_object_parent_mark_refresh_trunc_tr
+    FOR EACH ROW EXECUTE FUNCTION m_org_closure_update_for_ref();
+CREATE TRIGGER m_ref_object_parent_org_closure_trunc_tr
     AFTER TRUNCATE ON m_ref_object_parent_org
-    FOR EACH STATEMENT EXECUTE FUNCTION mark_org_closure_for_refresh();
+    FOR EACH STATEMENT EXECUTE FUNCTION m_org_closure_update_for_ref();
 
--- The trigger that flags the view for refresh after m_org changes.
-CREATE OR REPLACE FUNCTION mark_org_closure_for_refresh_org()
+-- The trigger that maintains identity rows after m_org changes.
+-- Rows for the edges of the org are handled by the trigger on m_ref_object_parent_org.
+CREATE OR REPLACE FUNCTION m_org_closure_update_for_org()
     RETURNS trigger
     LANGUAGE plpgsql
 AS $$
 BEGIN
-    INSERT INTO m_global_metadata VALUES ('orgClosureRefreshNeeded', 'true')
-        ON CONFLICT (name) DO UPDATE SET value = 'true';
+    IF TG_OP = 'TRUNCATE' THEN
+        DELETE FROM m_org_closure;
+        DELETE FROM m_org_closure_change;
+    ELSIF TG_OP = 'INSERT' THEN
+        INSERT INTO m_org_closure VALUES (NEW.oid, NEW.oid) ON CONFLICT DO NOTHING;
+    ELSE
+        DELETE FROM m_org_closure WHERE ancestor_oid = OLD.oid AND descendant_oid = OLD.oid;
+    END IF;
 
     -- after trigger returns null
     RETURN NULL;
@@ -783,20 +863,23 @@ END $$;
 
 -- Update is not necessary, it does not change relations between orgs.
 -- If it does, it is handled by trigger on m_ref_object_parent_org.
-CREATE TRIGGER m_org_mark_refresh_tr
+CREATE TRIGGER m_org_closure_tr
     AFTER INSERT OR DELETE ON m_org
-    FOR EACH ROW EXECUTE FUNCTION mark_org_closure_for_refresh_org();
-CREATE TRIGGER m_org_mark_refresh_trunc_tr
+    FOR EACH ROW EXECUTE FUNCTION m_org_closure_update_for_org();
+CREATE TRIGGER m_org_closure_trunc_tr
     AFTER TRUNCATE ON m_org
-    FOR EACH STATEMENT EXECUTE FUNCTION mark_org_closure_for_refresh_org();
+    FOR EACH STATEMENT EXECUTE FUNCTION m_org_closure_update_for_org();
 
--- This procedure for conditional refresh when needed is called from the application code.
--- The refresh can be forced, e.g. after many changes with triggers off (or just to be sure).
+-- This procedure is called from the application code before queries using the closure.
+-- It applies queued changes in deferred update mode, otherwise the flag is not set and it's cheap.
+-- The full rebuild can be forced, e.g. after many changes with triggers off (or just to be sure).
 CREATE OR REPLACE PROCEDURE m_refresh_org_closure(force boolean = false)
     LANGUAGE plpgsql
 AS $$
 DECLARE
     flag_val text;
+    last_change_id bigint;
+    edge record;
 BEGIN
     SELECT value INTO flag_val FROM m_global_metadata WHERE name = 'orgClosureRefreshNeeded';
     IF flag_val = 'true' OR force THEN
@@ -805,11 +888,48 @@ BEGIN
         -- (I mean, who would do that?!) but works fine for parallel transactions.
         PERFORM pg_advisory_lock(47);
         BEGIN
-            SELECT value INTO flag_val FROM m_global_metadata WHERE name = 'orgClosureRefreshNeeded';
-            IF flag_val = 'true' OR force THEN
-                REFRESH MATERIALIZED VIEW m_org_closure;
-                DELETE FROM m_global_metadata WHERE name = 'orgClosureRefreshNeeded';
+            IF force THEN
+                DELETE FROM m_org_closure_change;
+                DELETE FROM m_org_closure;
+                INSERT INTO m_org_closure (ancestor_oid, descendant_oid)
+                    WITH RECURSIVE org_h (ancestor_oid, descendant_oid) AS (
+                        -- non-recursive term: identity lines (o => o) for all orgs
+                        SELECT o.oid, o.oid FROM m_org o
+                        UNION
+                        -- recursive term: their parents (anc => desc, that is target => owner)
+                        SELECT par.targetoid, chi.descendant_oid
+                            FROM m_ref_object_parent_org as par, org_h as chi
+                            WHERE par.ownerOid = chi.ancestor_oid
+                    )
+                    SELECT * FROM org_h;
+            ELSE
+                SELECT value INTO flag_val FROM m_global_metadata WHERE name = 'orgClosureRefreshNeeded';
+                IF flag_val = 'true' THEN
+                    -- Changes committed while we're applying these ones are left for the next refresh.
+                    SELECT max(id) INTO last_change_id FROM m_org_closure_change;
+                    -- Queued edges are applied together, each only once with its current state.
+                    -- Removed edges first, so the added ones are joined with up-to-date closure.
+                    FOR edge IN
+                        SELECT DISTINCT c.ownerOid, c.targetOid FROM m_org_closure_change c
+                            WHERE c.id <= last_change_id
+                                AND NOT EXISTS (SELECT 1 FROM m_ref_object_parent_org r
+                                    WHERE r.ownerOid = c.ownerOid AND r.targetOid = c.targetOid)
+                    LOOP
+                        PERFORM m_org_closure_remove_edge(edge.ownerOid);
+                    END LOOP;
+                    FOR edge IN
+                        SELECT DISTINCT c.ownerOid, c.targetOid FROM m_org_closure_change c
+                            WHERE c.id <= last_change_id
+                                AND EXISTS (SELECT 1 FROM m_ref_object_parent_org r
+                                    WHERE r.ownerOid = c.ownerOid AND r.targetOid = c.targetOid)
+                    LOOP
+                        PERFORM m_org_closure_add_edge(edge.ownerOid, edge.targetOid);
+                    END LOOP;
+                    DELETE FROM m_org_closure_change WHERE id <= last_change_id;
+                END IF;
             END IF;
+            DELETE FROM m_global_metadata WHERE name = 'orgClosureRefreshNeeded'
+                AND NOT EXISTS (SELECT 1 FROM m_org_closure_change);
             PERFORM pg_advisory_unlock(47);
         EXCEPTION WHEN OTHERS THEN
             -- Whatever happens we definitely want to release the lock.
@@ -1266,6 +1386,27 @@ CREATE INDEX m_task_createTimestamp_idx ON m_task (createTimestamp);
 CREATE INDEX m_task_modifyTimestamp_idx ON m_task (modifyTimestamp);
 -- endregion
 
+-- region activity buckets
+/*
+Work buckets of distributed (coordinator-workers) activities, one row per bucket.
+Used instead of the list of buckets in the coordinator task state if the activity is configured so.
+Workers claim READY buckets using SELECT ... FOR UPDATE SKIP LOCKED, so they do not compete for
+the coordinator task row.
+*/
+CREATE TABLE m_activity_bucket (
+    taskOid UUID NOT NULL REFERENCES m_object_oid(oid) ON DELETE CASCADE, -- coordinator task
+    activityPath TEXT NOT NULL, -- activity identifiers separated by slash, empty for the root activity
+    sequentialNumber INTEGER NOT NULL,
+    state WorkBucketStateType NOT NULL,
+    workerOid UUID, -- present only for DELEGATED buckets
+    fullObject BYTEA NOT NULL, -- serialized WorkBucketType
+
+    PRIMARY KEY (taskOid, activityPath, sequentialNumber)
+);
+
+CREATE INDEX m_activity_bucket_state_idx ON m_activity_bucket (taskOid, activityPath, state);
+-- endregion
+
 -- region cases
 -- Represents CaseType, see https://docs.evolveum.com/midpoint/features/planned/case-management/
 CREATE TABLE m_case (
@@ -1903,4 +2044,4 @@ END $$;
 -- endregion
 
 -- Initializing the last change number used in postgres-new-upgrade.sql.
-call apply_change(5, $$ SELECT 1 $$, true);
+call apply_change(8, $$ SELECT 1 $$, true);
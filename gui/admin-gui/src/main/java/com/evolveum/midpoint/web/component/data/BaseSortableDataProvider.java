@@ -176,6 +176,13 @@ public abstract class BaseSortableDataProvider<T extends Serializable> extends S
         return () -> true;
     }
 
+    /**
+     * Returns true if the size returned by {@link #size()} is only an estimate and should be displayed as approximate.
+     */
+    public boolean isSizeEstimated() {
+        return false;
+    }
+
     protected boolean checkOrderingSettings() {
         return false;
     }
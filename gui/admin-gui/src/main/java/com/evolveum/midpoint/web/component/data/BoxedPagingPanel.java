@@ -8,6 +8,8 @@
 package com.evolveum.midpoint.web.component.data;
 
 import com.evolveum.midpoint.web.component.data.paging.NavigatorPanel;
+
+import org.apache.wicket.extensions.markup.html.repeater.data.table.DataTable;
 import org.apache.wicket.markup.html.navigation.paging.IPageable;
 
 /**
@@ -15,7 +17,18 @@ import org.apache.wicket.markup.html.navigation.paging.IPageable;
  */
 public class BoxedPagingPanel extends NavigatorPanel {
 
+    private final IPageable pageable;
+
     public BoxedPagingPanel(String id, IPageable pageable, boolean showPageListing) {
         super(id, pageable, showPageListing);
+        this.pageable = pageable;
+    }
+
+    /**
+     * If the number of items is only estimated, the last page is not known and can't be navigated to.
+     */
+    @Override
+    protected boolean isCountingDisabled() {
+        return pageable instanceof DataTable && CountToolbar.isSizeEstimated((DataTable<?, ?>) pageable);
     }
 }
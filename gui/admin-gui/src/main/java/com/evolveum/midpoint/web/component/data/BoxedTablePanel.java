@@ -309,6 +309,9 @@ public class BoxedTablePanel<T> extends BasePanel<T> implements Table {
 
                 @Override
                 protected boolean isCountingDisabled(){
+                    if (super.isCountingDisabled()) {
+                        return true;
+                    }
                     if (dataTable.getDataProvider() instanceof SelectableBeanContainerDataProvider){
                         return !((SelectableBeanContainerDataProvider)dataTable.getDataProvider()).isUseObjectCounting();
                     }
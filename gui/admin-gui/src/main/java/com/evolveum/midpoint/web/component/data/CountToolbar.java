@@ -83,6 +83,7 @@ public class CountToolbar extends AbstractToolbar {
         long from = 0;
         long to = 0;
         long count = 0;
+        boolean estimated = false;
 
         if (pageable instanceof DataViewBase) {
             DataViewBase view = (DataViewBase) pageable;
@@ -104,6 +105,7 @@ public class CountToolbar extends AbstractToolbar {
                 to = itemCount;
             }
             count = itemCount;
+            estimated = isSizeEstimated(table);
         }
 
         if (count > 0) {
@@ -112,12 +114,21 @@ public class CountToolbar extends AbstractToolbar {
                         new Object[] { from, to }).getString();
             }
 
-            return PageBase.createStringResourceStatic("CountToolbar.label", new Object[]{from, to, count}).getString();
+            Object countValue = estimated ? "~" + count : count;
+            return PageBase.createStringResourceStatic("CountToolbar.label", new Object[]{from, to, countValue}).getString();
         }
 
         return PageBase.createStringResourceStatic("CountToolbar.noFound").getString();
     }
 
+    /**
+     * Returns true if the table's data provider only estimated the number of items.
+     */
+    public static boolean isSizeEstimated(DataTable<?, ?> table) {
+        return table.getDataProvider() instanceof BaseSortableDataProvider
+                && ((BaseSortableDataProvider<?>) table.getDataProvider()).isSizeEstimated();
+    }
+
     protected void pageSizeChanged(AjaxRequestTarget target) {
     }
 
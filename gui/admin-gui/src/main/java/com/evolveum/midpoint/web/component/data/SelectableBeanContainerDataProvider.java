@@ -21,10 +21,10 @@ import org.apache.wicket.model.Model;
 import org.jetbrains.annotations.NotNull;
 
 import com.evolveum.midpoint.gui.api.util.WebComponentUtil;
+import com.evolveum.midpoint.model.api.ModelAuthorizationAction;
 import com.evolveum.midpoint.model.api.authentication.CompiledObjectCollectionView;
 import com.evolveum.midpoint.prism.Containerable;
-import com.evolveum.midpoint.prism.query.ObjectPaging;
-import com.evolveum.midpoint.prism.query.ObjectQuery;
+import com.evolveum.midpoint.prism.query.*;
 import com.evolveum.midpoint.schema.GetOperationOptions;
 import com.evolveum.midpoint.schema.GetOperationOptionsBuilder;
 import com.evolveum.midpoint.schema.SelectorOptions;
@@ -37,6 +37,7 @@ import com.evolveum.midpoint.util.logging.TraceManager;
 import com.evolveum.midpoint.web.component.search.Search;
 import com.evolveum.midpoint.web.component.util.SelectableBean;
 import com.evolveum.midpoint.web.component.util.SelectableBeanImpl;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.ObjectType;
 import com.evolveum.midpoint.xml.ns._public.common.common_3.ResourceType;
 import com.evolveum.midpoint.xml.ns._public.common.common_3.ShadowType;
 
@@ -53,6 +54,12 @@ public class SelectableBeanContainerDataProvider<C extends Containerable> extend
     private static final String OPERATION_SEARCH_OBJECTS = DOT_CLASS + "searchObjects";
     private static final String OPERATION_COUNT_OBJECTS = DOT_CLASS + "countObjects";
 
+    /**
+     * Estimated counts below this value are not used, the objects are counted exactly instead.
+     * Such counts are cheap and the estimate would be too imprecise for small lists.
+     */
+    private static final int MIN_ESTIMATED_COUNT = 10_000;
+
     private Set<? extends C> selected = new HashSet<>();
 
     private boolean emptyListOnNullQuery = false;
@@ -69,6 +76,9 @@ public class SelectableBeanContainerDataProvider<C extends Containerable> extend
 
     private Collection<SelectorOptions<GetOperationOptions>> options;
 
+    // true if the last computed size is only an estimate
+    private boolean sizeEstimated;
+
     public SelectableBeanContainerDataProvider(Component component, @NotNull IModel<Search<C>> search, Set<? extends C> selected, boolean useDefaultSortingField) {
         super(component, search, false, useDefaultSortingField);
 
@@ -113,7 +123,6 @@ public class SelectableBeanContainerDataProvider<C extends Containerable> extend
 
         OperationResult result = new OperationResult(OPERATION_SEARCH_OBJECTS);
         try {
-            ObjectPaging paging = createPaging(offset, pageSize);
             Task task = getPageBase().createSimpleTask(OPERATION_SEARCH_OBJECTS);
 
             ObjectQuery query = getQuery();
@@ -123,7 +132,7 @@ public class SelectableBeanContainerDataProvider<C extends Containerable> extend
                 }
                 query = getPrismContext().queryFactory().createQuery();
             }
-            query.setPaging(paging);
+            query = createPagedQuery(query, offset, pageSize);
 
             if (LOGGER.isTraceEnabled()) {
                 LOGGER.trace("Query {} with {}", getType().getSimpleName(), query.debugDump());
@@ -146,7 +155,9 @@ public class SelectableBeanContainerDataProvider<C extends Containerable> extend
             }
             optionsBuilder.mergeFrom(getDistinctRelatedOptions());
 
-            getAvailableData().addAll(createDataObjectWrappers(getType(), query, optionsBuilder.build(), task, result));
+            List<SelectableBean<C>> page = createDataObjectWrappers(getType(), query, optionsBuilder.build(), task, result);
+            pageLoaded(offset, page);
+            getAvailableData().addAll(page);
 
         } catch (Exception ex) {
             result.recordFatalError(getPageBase().createStringResource("ObjectDataProvider.message.listObjects.fatalError").getString(), ex);
@@ -159,6 +170,20 @@ public class SelectableBeanContainerDataProvider<C extends Containerable> extend
         LOGGER.trace("end::iterator() {}", result);
         return getAvailableData().iterator();
     }
+
+    /**
+     * Sets the paging for the requested page to the query (and possibly modifies the query in other ways).
+     */
+    protected ObjectQuery createPagedQuery(ObjectQuery query, long offset, long pageSize) {
+        query.setPaging(createPaging(offset, pageSize));
+        return query;
+    }
+
+    /**
+     * Called when the page of data is loaded, before it is added to available data.
+     */
+    protected void pageLoaded(long offset, List<SelectableBean<C>> page) {
+    }
     public List<SelectableBean<C>> createDataObjectWrappers(Class<? extends C> type, ObjectQuery query,
             Collection<SelectorOptions<GetOperationOptions>> options, Task task, OperationResult result)
             throws CommonException {
@@ -212,11 +237,24 @@ public class SelectableBeanContainerDataProvider<C extends Containerable> extend
             return Integer.MAX_VALUE;
         }
         int count = 0;
+        sizeEstimated = false;
         Task task = getPageBase().createSimpleTask(OPERATION_COUNT_OBJECTS);
         OperationResult result = task.getResult();
         try {
             Collection<SelectorOptions<GetOperationOptions>> currentOptions = GetOperationOptions.merge(getPrismContext(), options, getDistinctRelatedOptions());
-            Integer counted = countObjects(getType(), getQuery(), currentOptions, task, result);
+            Integer counted = null;
+            if (isUseEstimatedCounting() && isCheapToEstimate(getQuery(), task, result)) {
+                Integer estimated = countObjects(getType(), getQuery(),
+                        GetOperationOptions.merge(getPrismContext(), currentOptions, getOperationOptionsBuilder().estimatedCount().build()),
+                        task, result);
+                if (estimated != null && estimated >= MIN_ESTIMATED_COUNT) {
+                    counted = estimated;
+                    sizeEstimated = true;
+                }
+            }
+            if (counted == null) {
+                counted = countObjects(getType(), getQuery(), currentOptions, task, result);
+            }
             count = defaultIfNull(counted, defaultCountIfNull);
         } catch (Exception ex) {
             result.recordFatalError(getPageBase().createStringResource("ObjectDataProvider.message.countObjects.fatalError").getString(), ex);
@@ -235,6 +273,50 @@ public class SelectableBeanContainerDataProvider<C extends Containerable> extend
         return count;
     }
 
+    /**
+     * Estimates are good only for queries without a filter or with simple conditions on the object's own items.
+     * Estimates for other filters (e.g. org or exists filters, which use subqueries) are just guesses.
+     *
+     * The filter derived from the read authorizations is added to the query by the model, and it often contains
+     * such conditions. So the estimate is used only if the authorizations add no filter at all.
+     */
+    private boolean isCheapToEstimate(ObjectQuery query, Task task, OperationResult result) throws CommonException {
+        if (!isReadAuthorizationUnrestricted(task, result)) {
+            return false;
+        }
+        ObjectFilter filter = query != null ? query.getFilter() : null;
+        if (filter == null) {
+            return true;
+        }
+        boolean[] cheap = { true };
+        filter.accept(f -> {
+            if (f instanceof OrgFilter || f instanceof ExistsFilter || f instanceof FullTextFilter
+                    || f instanceof RefFilter || f instanceof TypeFilter) {
+                cheap[0] = false;
+            }
+        });
+        return cheap[0];
+    }
+
+    /**
+     * Objects are authorized by "search" authorizations. Container values are authorized by "get" authorizations
+     * of the objects they belong to; as we do not know their type here, we check the authorizations for all objects.
+     */
+    private boolean isReadAuthorizationUnrestricted(Task task, OperationResult result) throws CommonException {
+        Class<? extends C> type = getType();
+        ObjectFilter securityFilter;
+        if (ObjectType.class.isAssignableFrom(type)) {
+            securityFilter = getPageBase().getSecurityEnforcer().preProcessObjectFilter(
+                    ModelAuthorizationAction.AUTZ_ACTIONS_URLS_SEARCH, null, type.asSubclass(ObjectType.class),
+                    null, null, null, null, task, result);
+        } else {
+            securityFilter = getPageBase().getSecurityEnforcer().preProcessObjectFilter(
+                    ModelAuthorizationAction.AUTZ_ACTIONS_URLS_GET, null, ObjectType.class,
+                    null, null, null, null, task, result);
+        }
+        return securityFilter == null; // null means no restriction
+    }
+
     protected Integer countObjects(Class<? extends C> type, ObjectQuery query,
             Collection<SelectorOptions<GetOperationOptions>> currentOptions, Task task, OperationResult result)
             throws CommonException {
@@ -266,6 +348,16 @@ public class SelectableBeanContainerDataProvider<C extends Containerable> extend
         return true;
     }
 
+    protected boolean isUseEstimatedCounting() {
+        CompiledObjectCollectionView guiObjectListViewType = getCompiledObjectCollectionView();
+        return !export && guiObjectListViewType != null && Boolean.TRUE.equals(guiObjectListViewType.isEstimateCounting());
+    }
+
+    @Override
+    public boolean isSizeEstimated() {
+        return sizeEstimated;
+    }
+
     public Collection<SelectorOptions<GetOperationOptions>> getOptions() {
         return options;
     }
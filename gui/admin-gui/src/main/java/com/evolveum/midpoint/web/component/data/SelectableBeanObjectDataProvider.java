@@ -6,9 +6,11 @@
  */
 package com.evolveum.midpoint.web.component.data;
 
+import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
+import java.util.Objects;
 import java.util.Set;
 
 import com.evolveum.midpoint.gui.api.page.PageBase;
@@ -16,16 +18,26 @@ import com.evolveum.midpoint.gui.api.util.WebModelServiceUtils;
 import com.evolveum.midpoint.gui.impl.model.SelectableObjectModel;
 
 import org.apache.wicket.Component;
+import org.apache.wicket.extensions.markup.html.repeater.util.SortParam;
 import org.apache.wicket.model.IModel;
 import org.apache.wicket.model.Model;
 
 import com.evolveum.midpoint.gui.api.util.WebComponentUtil;
 import com.evolveum.midpoint.model.api.authentication.CompiledObjectCollectionView;
+import com.evolveum.midpoint.prism.Item;
+import com.evolveum.midpoint.prism.PrismConstants;
+import com.evolveum.midpoint.prism.PrismContext;
 import com.evolveum.midpoint.prism.PrismObject;
-import com.evolveum.midpoint.prism.query.ObjectQuery;
+import com.evolveum.midpoint.prism.path.ItemPath;
+import com.evolveum.midpoint.prism.polystring.PolyString;
+import com.evolveum.midpoint.prism.query.*;
+import com.evolveum.midpoint.prism.query.builder.S_ConditionEntry;
+import com.evolveum.midpoint.prism.query.builder.S_FilterExit;
+import com.evolveum.midpoint.prism.query.builder.S_MatchingRuleEntry;
 import com.evolveum.midpoint.schema.GetOperationOptions;
 import com.evolveum.midpoint.schema.SelectorOptions;
 import com.evolveum.midpoint.schema.result.OperationResult;
+import com.evolveum.midpoint.schema.util.ObjectQueryUtil;
 import com.evolveum.midpoint.task.api.Task;
 import com.evolveum.midpoint.util.exception.*;
 import com.evolveum.midpoint.util.logging.Trace;
@@ -45,8 +57,13 @@ public class SelectableBeanObjectDataProvider<O extends ObjectType> extends Sele
 
     private static final Trace LOGGER = TraceManager.getTrace(SelectableBeanObjectDataProvider.class);
 
+    private static final ItemPath OID_PATH = ItemPath.create(PrismConstants.T_ID);
+
     private boolean isMemberPanel = false;
 
+    // position after the last loaded page, used for keyset paging
+    private KeysetPosition keysetPosition;
+
     public SelectableBeanObjectDataProvider(Component component, IModel<Search<O>> search, Set<O> selected) {
         super(component, search, selected, true);
     }
@@ -138,6 +155,78 @@ public class SelectableBeanObjectDataProvider<O extends ObjectType> extends Sele
         return true;
     }
 
+    /**
+     * Keyset paging relies on the null ordering of the native repository (PostgreSQL), other repositories use offset.
+     */
+    protected boolean isUseKeysetPaging() {
+        CompiledObjectCollectionView guiObjectListViewType = getCompiledObjectCollectionView();
+        return guiObjectListViewType != null && Boolean.TRUE.equals(guiObjectListViewType.isKeysetPaging())
+                && getPageBase().isNativeRepo();
+    }
+
+    /**
+     * With keyset paging, the page directly following the last loaded page (for the same query and sorting)
+     * is searched by the condition on the ordering item and OID of the last loaded object, without offset.
+     * This is the same approach as used by the repository for iterative search.
+     * Other pages are searched by the offset; OID is added to the ordering in any case to make the order stable.
+     */
+    @Override
+    protected ObjectQuery createPagedQuery(ObjectQuery query, long offset, long pageSize) {
+        if (!isUseKeysetPaging()) {
+            keysetPosition = null;
+            return super.createPagedQuery(query, offset, pageSize);
+        }
+        ObjectPaging paging = createPaging(offset, pageSize);
+        List<? extends ObjectOrdering> orderings = paging.getOrderingInstructions();
+        if (orderings != null && orderings.size() > 1) {
+            keysetPosition = null;
+            query.setPaging(paging);
+            return query;
+        }
+        ObjectOrdering ordering = orderings == null || orderings.isEmpty() ? null : orderings.get(0);
+        paging.addOrderingInstruction(OID_PATH, ordering != null && ordering.getDirection() == OrderDirection.DESCENDING
+                ? OrderDirection.DESCENDING : OrderDirection.ASCENDING);
+
+        KeysetPosition position = keysetPosition;
+        keysetPosition = new KeysetPosition(query.getFilter(), getSort(), ordering);
+        if (position != null && position.isFollowedBy(keysetPosition, offset)) {
+            paging.setOffset(null);
+            ObjectQuery pagedQuery = getPrismContext().queryFactory().createQuery(
+                    ObjectQueryUtil.filterAndImmutable(query.getFilter(), position.createNextPageFilter(getType())),
+                    paging);
+            LOGGER.trace("Using keyset paging for offset {}: {}", offset, pagedQuery);
+            return pagedQuery;
+        }
+        query.setPaging(paging);
+        return query;
+    }
+
+    @Override
+    protected void pageLoaded(long offset, List<SelectableBean<O>> page) {
+        if (keysetPosition == null || page.isEmpty()) {
+            keysetPosition = null;
+            return;
+        }
+        O last = page.get(page.size() - 1).getValue();
+        if (last == null || last.getOid() == null) {
+            keysetPosition = null;
+            return;
+        }
+        Serializable lastValue = null;
+        if (keysetPosition.ordering != null) {
+            Item<?, ?> item = last.asPrismObject().findItem(keysetPosition.ordering.getOrderBy());
+            if (item != null && !item.isEmpty()) {
+                if (item.size() > 1 || !(item.getRealValue() instanceof Serializable)) {
+                    // no unique value to continue from, the next page will use the offset
+                    keysetPosition = null;
+                    return;
+                }
+                lastValue = (Serializable) item.getRealValue();
+            }
+        }
+        keysetPosition.setLast(offset + page.size(), lastValue, last.getOid());
+    }
+
     @Override
     public IModel<SelectableBean<O>> model(SelectableBean<O> object) {
         return new Model<>(object);
@@ -168,4 +257,90 @@ public class SelectableBeanObjectDataProvider<O extends ObjectType> extends Sele
         super.detach();
         getAvailableData().clear();
     }
+
+    /**
+     * Query, sorting and the last object of the loaded page, i.e. the place where the next page starts.
+     */
+    private static class KeysetPosition implements Serializable {
+
+        private final ObjectFilter filter;
+        private final SortParam<String> sort;
+        private final ObjectOrdering ordering;
+
+        private long nextOffset = -1;
+        private Serializable lastValue;
+        private String lastOid;
+
+        private KeysetPosition(ObjectFilter filter, SortParam<String> sort, ObjectOrdering ordering) {
+            this.filter = filter;
+            this.sort = sort;
+            this.ordering = ordering;
+        }
+
+        private void setLast(long nextOffset, Serializable lastValue, String lastOid) {
+            this.nextOffset = nextOffset;
+            this.lastValue = lastValue;
+            this.lastOid = lastOid;
+        }
+
+        private boolean isFollowedBy(KeysetPosition requested, long offset) {
+            return lastOid != null
+                    && nextOffset == offset
+                    && Objects.equals(filter, requested.filter)
+                    && Objects.equals(sort, requested.sort);
+        }
+
+        /**
+         * Objects after the last one: `orderItem > lastValue or (orderItem = lastValue and oid > lastOid)`,
+         * with `<` for descending order.
+         * Null values are sorted as if larger than any non-null value (PostgreSQL default), so they follow
+         * the non-null values for ascending order and precede them for descending order.
+         */
+        private ObjectFilter createNextPageFilter(Class<? extends ObjectType> type) {
+            boolean asc = ordering == null || ordering.getDirection() != OrderDirection.DESCENDING;
+            if (ordering == null) {
+                S_ConditionEntry oidCondition = PrismContext.get().queryFor(type).item(OID_PATH);
+                return (asc ? oidCondition.gt(lastOid) : oidCondition.lt(lastOid)).buildFilter();
+            }
+
+            ItemPath orderBy = ordering.getOrderBy();
+            if (lastValue == null) {
+                // (orderItem is null and oid > lastOid), for descending order followed by all non-null values
+                S_ConditionEntry oidCondition = PrismContext.get().queryFor(type)
+                        .block()
+                        .item(orderBy).isNull()
+                        .and()
+                        .item(OID_PATH);
+                S_FilterExit nullsAfterLast = (asc ? oidCondition.gt(lastOid) : oidCondition.lt(lastOid))
+                        .endBlock();
+                return asc
+                        ? nullsAfterLast.buildFilter()
+                        : nullsAfterLast.or().not().item(orderBy).isNull().buildFilter();
+            }
+
+            S_ConditionEntry valueCondition = PrismContext.get().queryFor(type).item(orderBy);
+            S_ConditionEntry equalValueCondition =
+                    matchingOrigIfPolyString(asc ? valueCondition.gt(lastValue) : valueCondition.lt(lastValue))
+                    .or()
+                    .block()
+                    .item(orderBy);
+            S_ConditionEntry oidCondition = matchingOrigIfPolyString(equalValueCondition.eq(lastValue))
+                    .and()
+                    .item(OID_PATH);
+            S_FilterExit nonNullsAfterLast = (asc ? oidCondition.gt(lastOid) : oidCondition.lt(lastOid))
+                    .endBlock();
+            // for ascending order, all null values follow
+            return asc
+                    ? nonNullsAfterLast.or().item(orderBy).isNull().buildFilter()
+                    : nonNullsAfterLast.buildFilter();
+        }
+
+        /**
+         * Polystrings are ordered by their original value, so they must be compared by it too.
+         * Without a matching rule, both the original and the normalized values would have to be greater.
+         */
+        private S_FilterExit matchingOrigIfPolyString(S_MatchingRuleEntry condition) {
+            return lastValue instanceof PolyString ? condition.matchingOrig() : condition;
+        }
+    }
 }
@@ -52,6 +52,8 @@ public class AssignmentListProvider extends MultivalueContainerListDataProvider<
             return;
         }
 
+        // Targets are resolved one by one via the model, as the authorizations have to be applied to each of them,
+        // and there is no bulk get in the model API. Only the targets of the current page are resolved here.
         PrismObject<? extends ObjectType> object = WebModelServiceUtils.loadObject(targetRef, getPageBase());
         targetRef.asReferenceValue().setObject(object);
     }
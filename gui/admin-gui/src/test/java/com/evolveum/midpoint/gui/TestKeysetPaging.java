@@ -0,0 +1,152 @@
+/*
+ * Copyright (C) 2010-2022 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+package com.evolveum.midpoint.gui;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.apache.wicket.Component;
+import org.apache.wicket.Page;
+import org.apache.wicket.extensions.markup.html.repeater.data.sort.SortOrder;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.annotation.DirtiesContext.ClassMode;
+import org.springframework.test.context.ActiveProfiles;
+import org.testng.annotations.Test;
+
+import com.evolveum.midpoint.gui.test.TestMidPointSpringApplication;
+import com.evolveum.midpoint.model.api.authentication.CompiledObjectCollectionView;
+import com.evolveum.midpoint.prism.PrismContext;
+import com.evolveum.midpoint.prism.query.ObjectQuery;
+import com.evolveum.midpoint.schema.result.OperationResult;
+import com.evolveum.midpoint.task.api.Task;
+import com.evolveum.midpoint.web.AbstractInitializedGuiIntegrationTest;
+import com.evolveum.midpoint.web.component.data.SelectableBeanObjectDataProvider;
+import com.evolveum.midpoint.web.component.util.SelectableBean;
+import com.evolveum.midpoint.web.page.admin.users.PageUsers;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.UserType;
+
+/**
+ * Tests keyset paging of {@link SelectableBeanObjectDataProvider}: moving page by page through the list
+ * must give the same objects as reading the whole list at once, also when the ordering item is null for some of them.
+ * Keyset paging is used only with the native repository, otherwise all the pages are read by the offset.
+ */
+@DirtiesContext(classMode = ClassMode.AFTER_CLASS)
+@ActiveProfiles("test")
+@SpringBootTest(classes = TestMidPointSpringApplication.class)
+public class TestKeysetPaging extends AbstractInitializedGuiIntegrationTest {
+
+    private static final String COST_CENTER = "keyset";
+    private static final int USERS = 11;
+    private static final int PAGE_SIZE = 3;
+
+    @Override
+    public void initSystem(Task initTask, OperationResult initResult) throws Exception {
+        super.initSystem(initTask, initResult);
+
+        // Every third user has no telephone number, others share a few values, so the pages end
+        // inside groups of the same value as well as inside the null values.
+        for (int i = 0; i < USERS; i++) {
+            UserType user = new UserType()
+                    .name(String.format("keyset-%02d", i))
+                    .costCenter(COST_CENTER)
+                    .telephoneNumber(i % 3 == 0 ? null : "555-" + i % 2);
+            repositoryService.addObject(user.asPrismObject(), null, initResult);
+        }
+    }
+
+    @Test
+    public void test100AscendingOrderingByNullableItem() {
+        pageThroughUsers(SortOrder.ASCENDING);
+    }
+
+    @Test
+    public void test110DescendingOrderingByNullableItem() {
+        pageThroughUsers(SortOrder.DESCENDING);
+    }
+
+    private void pageThroughUsers(SortOrder sortOrder) {
+        given("users list page and keyset paging provider sorted by telephone number");
+        Page page = renderPage(PageUsers.class);
+        List<UserType> allUsers = readAllPages(new TestDataProvider(page, sortOrder), USERS);
+        TestDataProvider keysetProvider = new TestDataProvider(page, sortOrder);
+
+        when("going through all the pages");
+        List<UserType> keysetUsers = readAllPages(keysetProvider, PAGE_SIZE);
+
+        then("all users are listed exactly once");
+        assertThat(oids(allUsers)).hasSize(USERS).doesNotHaveDuplicates();
+        assertThat(oids(keysetUsers)).hasSize(USERS).containsExactlyInAnyOrderElementsOf(oids(allUsers));
+
+        and("in the order of telephone numbers, nulls included");
+        assertThat(telephoneNumbers(keysetUsers)).containsExactlyElementsOf(telephoneNumbers(allUsers));
+
+        and("pages following the first one are read without offset, if the repository is native");
+        if (repositoryService.isNative()) {
+            assertThat(keysetProvider.offsets.get(0)).isEqualTo(0);
+            assertThat(keysetProvider.offsets.subList(1, keysetProvider.offsets.size())).containsOnlyNulls();
+        } else {
+            assertThat(keysetProvider.offsets).doesNotContainNull();
+        }
+    }
+
+    private List<UserType> readAllPages(TestDataProvider provider, int pageSize) {
+        List<UserType> users = new ArrayList<>();
+        for (long offset = 0; offset < USERS; offset += pageSize) {
+            Iterator<SelectableBean<UserType>> iterator = provider.internalIterator(offset, pageSize);
+            iterator.forEachRemaining(bean -> users.add(bean.getValue()));
+            provider.detach(); // clears the loaded page, as after the request
+        }
+        return users;
+    }
+
+    private List<String> oids(List<UserType> users) {
+        return users.stream().map(UserType::getOid).collect(Collectors.toList());
+    }
+
+    private List<String> telephoneNumbers(List<UserType> users) {
+        return users.stream().map(UserType::getTelephoneNumber).collect(Collectors.toList());
+    }
+
+    private static class TestDataProvider extends SelectableBeanObjectDataProvider<UserType> {
+
+        // offsets of the paged queries, null if keyset paging was used
+        private final List<Integer> offsets = new ArrayList<>();
+
+        TestDataProvider(Component component, SortOrder sortOrder) {
+            super(component, new HashSet<>());
+            CompiledObjectCollectionView view = new CompiledObjectCollectionView();
+            view.setKeysetPaging(true);
+            setCompiledObjectCollectionView(view);
+            setSort(UserType.F_TELEPHONE_NUMBER.getLocalPart(), sortOrder);
+        }
+
+        @Override
+        public Class<UserType> getType() {
+            return UserType.class;
+        }
+
+        @Override
+        public ObjectQuery getQuery() {
+            return PrismContext.get().queryFor(UserType.class)
+                    .item(UserType.F_COST_CENTER).eq(COST_CENTER)
+                    .build();
+        }
+
+        @Override
+        protected ObjectQuery createPagedQuery(ObjectQuery query, long offset, long pageSize) {
+            ObjectQuery pagedQuery = super.createPagedQuery(query, offset, pageSize);
+            offsets.add(pagedQuery.getPaging().getOffset());
+            return pagedQuery;
+        }
+    }
+}
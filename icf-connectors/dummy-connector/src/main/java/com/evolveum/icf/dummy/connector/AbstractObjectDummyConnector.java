@@ -579,6 +579,7 @@ public abstract class AbstractObjectDummyConnector extends AbstractBaseDummyConn
                     // Continue, do not break. We still want to know how much objects match in total.
                     continue;
                 }
+                resource.checkSearchBreak(returnedObjects);
                 returnedObjects++;
                 handleConnectorObject(object, co, handler, options, attributesToGet, recorder);
             }
@@ -140,6 +140,9 @@ public class DummyResource implements DebugDumpable {
     private BreakMode modifyBreakMode = BreakMode.NONE;
     private BreakMode deleteBreakMode = BreakMode.NONE;
 
+    /** If non-negative, searches fail (with network error) after returning this number of objects. */
+    private int searchBreakAfter = -1;
+
     private boolean blockOperations = false;
 
     private boolean generateAccountDescriptionOnCreate = false;           // simulates volatile behavior (on create)
@@ -307,6 +310,7 @@ public class DummyResource implements DebugDumpable {
 
     public void resetBreakMode() {
         setBreakMode(BreakMode.NONE);
+        searchBreakAfter = -1;
     }
 
     public boolean isBlockOperations() {
@@ -1004,6 +1008,21 @@ public class DummyResource implements DebugDumpable {
         }
     }
 
+    public int getSearchBreakAfter() {
+        return searchBreakAfter;
+    }
+
+    public void setSearchBreakAfter(int searchBreakAfter) {
+        this.searchBreakAfter = searchBreakAfter;
+    }
+
+    /** Simulates a failure in the middle of a search, see {@link #searchBreakAfter}. */
+    public void checkSearchBreak(int objectsReturned) throws ConnectException {
+        if (searchBreakAfter >= 0 && objectsReturned >= searchBreakAfter) {
+            throw new ConnectException("Network error (simulated error) after " + objectsReturned + " objects");
+        }
+    }
+
     void delayOperation() throws InterruptedException {
         if (operationDelayOffset == 0 && operationDelayRange == 0) {
             return;
@@ -45,6 +45,7 @@ public interface MidpointConfiguration {
     String WEB_APP_CONFIGURATION = "midpoint.webApplication";
     String WORKFLOW_CONFIGURATION = "midpoint.workflow";
     String INTERNALS_CONFIGURATION = "midpoint.internals";
+    String EXPRESSIONS_CONFIGURATION = "midpoint.expressions";
 
     /**
      * Reference to midpoint-system.properties generated in system-init component.
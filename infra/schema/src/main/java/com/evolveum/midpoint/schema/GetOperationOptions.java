@@ -175,6 +175,17 @@ public class GetOperationOptions extends AbstractOptions implements Serializable
     @Experimental
     private Boolean distinct;
 
+    /**
+     * For count operations: should the count be only estimated (e.g. from database statistics)
+     * instead of being computed exactly?
+     * Not all providers support this option, the others return the exact count.
+     * <p>
+     * The estimate is cheap even for large number of objects, but it can be way off, especially for
+     * complex filters or when the statistics are not up-to-date. It should be used only for displaying.
+     */
+    @Experimental
+    private Boolean estimatedCount;
+
     /**
      * Whether to attach diagnostics data to the returned object(s).
      */
@@ -806,6 +817,39 @@ public class GetOperationOptions extends AbstractOptions implements Serializable
         return opts;
     }
 
+    public Boolean getEstimatedCount() {
+        return estimatedCount;
+    }
+
+    public void setEstimatedCount(Boolean estimatedCount) {
+        this.estimatedCount = estimatedCount;
+    }
+
+    public GetOperationOptions estimatedCount(Boolean estimatedCount) {
+        this.estimatedCount = estimatedCount;
+        return this;
+    }
+
+    public static boolean isEstimatedCount(GetOperationOptions options) {
+        if (options == null) {
+            return false;
+        }
+        if (options.estimatedCount == null) {
+            return false;
+        }
+        return options.estimatedCount;
+    }
+
+    /**
+     * Count should be only estimated (if supported by the provider).
+     */
+    @Experimental
+    public static GetOperationOptions createEstimatedCount() {
+        GetOperationOptions opts = new GetOperationOptions();
+        opts.setEstimatedCount(true);
+        return opts;
+    }
+
     public Boolean getAttachDiagData() {
         return attachDiagData;
     }
@@ -972,6 +1016,7 @@ public class GetOperationOptions extends AbstractOptions implements Serializable
                 Objects.equals(forceRefresh, that.forceRefresh) &&
                 Objects.equals(forceRetry, that.forceRetry) &&
                 Objects.equals(distinct, that.distinct) &&
+                Objects.equals(estimatedCount, that.estimatedCount) &&
                 Objects.equals(attachDiagData, that.attachDiagData) &&
                 Objects.equals(definitionProcessing, that.definitionProcessing) &&
                 Objects.equals(iterationMethod, that.iterationMethod) &&
@@ -983,7 +1028,7 @@ public class GetOperationOptions extends AbstractOptions implements Serializable
     public int hashCode() {
         return Objects
                 .hash(retrieve, resolve, resolveNames, noFetch, raw, tolerateRawData, doNotDiscovery,
-                        allowNotFound, readOnly, staleness, distinct, definitionProcessing, attachDiagData, executionPhase);
+                        allowNotFound, readOnly, staleness, distinct, estimatedCount, definitionProcessing, attachDiagData, executionPhase);
     }
 
     public GetOperationOptions clone() {
@@ -1005,6 +1050,7 @@ public class GetOperationOptions extends AbstractOptions implements Serializable
         clone.forceRefresh = this.forceRefresh;
         clone.forceRetry = this.forceRetry;
         clone.distinct = this.distinct;
+        clone.estimatedCount = this.estimatedCount;
         clone.attachDiagData = this.attachDiagData;
         clone.definitionProcessing = this.definitionProcessing;
         clone.iterationMethod = this.iterationMethod;
@@ -1040,6 +1086,7 @@ public class GetOperationOptions extends AbstractOptions implements Serializable
         appendFlag(sb, "forceRefresh", forceRefresh);
         appendFlag(sb, "forceRetry", forceRetry);
         appendVal(sb, "distinct", distinct);
+        appendFlag(sb, "estimatedCount", estimatedCount);
         appendFlag(sb, "attachDiagData", attachDiagData);
         appendVal(sb, "definitionProcessing", definitionProcessing);
         appendVal(sb, "iterationMethod", iterationMethod);
@@ -1203,6 +1250,9 @@ public class GetOperationOptions extends AbstractOptions implements Serializable
         if (increment.distinct != null) {
             this.distinct = increment.distinct;
         }
+        if (increment.estimatedCount != null) {
+            this.estimatedCount = increment.estimatedCount;
+        }
         if (increment.attachDiagData != null) {
             this.attachDiagData = increment.attachDiagData;
         }
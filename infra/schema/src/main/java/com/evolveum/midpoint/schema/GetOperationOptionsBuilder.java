@@ -59,6 +59,8 @@ public interface GetOperationOptionsBuilder {
     GetOperationOptionsBuilder forceRetry(Boolean value);
     GetOperationOptionsBuilder distinct();
     GetOperationOptionsBuilder distinct(Boolean value);
+    GetOperationOptionsBuilder estimatedCount();
+    GetOperationOptionsBuilder estimatedCount(Boolean value);
     GetOperationOptionsBuilder attachDiagData();
     GetOperationOptionsBuilder attachDiagData(Boolean value);
     GetOperationOptionsBuilder definitionProcessing(DefinitionProcessingOption value);
@@ -221,6 +221,16 @@ public class GetOperationOptionsBuilderImpl
         return forPaths(opts -> opts.setDistinct(value));
     }
 
+    @Override
+    public GetOperationOptionsBuilder estimatedCount() {
+        return estimatedCount(true);
+    }
+
+    @Override
+    public GetOperationOptionsBuilder estimatedCount(Boolean value) {
+        return forPaths(opts -> opts.setEstimatedCount(value));
+    }
+
     @Override
     public GetOperationOptionsBuilder attachDiagData() {
         return attachDiagData(true);
@@ -627,6 +627,7 @@ public abstract class SchemaConstants {
     public static final String ID_DEAD_NODES_CLEANUP = "deadNodes";
     public static final String ID_OUTPUT_REPORTS_CLEANUP = "outputReports";
     public static final String ID_CLOSED_CERTIFICATION_CAMPAIGNS_CLEANUP = "closedCertificationCampaigns";
+    public static final String ID_AUDIT_PARTITIONS_MAINTENANCE = "auditPartitions";
 
     public static final ActivityPath PATH_AUDIT_RECORDS_CLEANUP = ActivityPath.fromId(ID_AUDIT_RECORDS_CLEANUP);
     public static final ActivityPath PATH_CLOSED_TASKS_CLEANUP = ActivityPath.fromId(ID_CLOSED_TASKS_CLEANUP);
@@ -635,6 +636,8 @@ public abstract class SchemaConstants {
     public static final ActivityPath PATH_OUTPUT_REPORTS_CLEANUP = ActivityPath.fromId(ID_OUTPUT_REPORTS_CLEANUP);
     public static final ActivityPath PATH_CLOSED_CERTIFICATION_CAMPAIGNS_CLEANUP =
             ActivityPath.fromId(ID_CLOSED_CERTIFICATION_CAMPAIGNS_CLEANUP);
+    public static final ActivityPath PATH_AUDIT_PARTITIONS_MAINTENANCE =
+            ActivityPath.fromId(ID_AUDIT_PARTITIONS_MAINTENANCE);
 
     public static final String CORRELATION_NONE = "none";
     public static final String CORRELATION_EXISTING_PREFIX = "existing-";
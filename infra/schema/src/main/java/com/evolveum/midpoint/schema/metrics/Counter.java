@@ -0,0 +1,54 @@
+/*
+ * Copyright (C) 2010-2022 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+
+package com.evolveum.midpoint.schema.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Monotonically increasing counter. By convention, the name should end with `_total`.
+ */
+public class Counter extends Metric<Counter.Child> {
+
+    Counter(@NotNull String name, @NotNull String help, @NotNull String... labelNames) {
+        super(name, help, labelNames);
+    }
+
+    @Override
+    @NotNull Child newChild() {
+        return new Child();
+    }
+
+    @Override
+    @NotNull String getType() {
+        return "counter";
+    }
+
+    @Override
+    void writeSamples(@NotNull PrometheusTextWriter writer, @NotNull String[] labelValues, @NotNull Child child) {
+        writer.sample(getName(), getLabelNames(), labelValues, child.get());
+    }
+
+    public static class Child {
+
+        private final LongAdder value = new LongAdder();
+
+        public void inc() {
+            value.increment();
+        }
+
+        public void inc(long amount) {
+            value.add(amount);
+        }
+
+        public long get() {
+            return value.sum();
+        }
+    }
+}
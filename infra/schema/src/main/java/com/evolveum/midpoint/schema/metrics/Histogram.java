@@ -0,0 +1,113 @@
+/*
+ * Copyright (C) 2010-2022 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+
+package com.evolveum.midpoint.schema.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Histogram of durations with fixed buckets. By convention, the name should end with `_seconds`.
+ *
+ * Observation does not allocate: it finds the bucket by a linear scan over (a small number of) bounds
+ * and increments the bucket and sum adders. Buckets are kept non-cumulative, they are summed only when exported.
+ * As the adders are read one by one, an export running concurrently with observations may see
+ * the sum and the buckets very slightly out of sync; this is acceptable for monitoring purposes.
+ */
+public class Histogram extends Metric<Histogram.Child> {
+
+    /** Default bucket bounds (in seconds) covering operations from sub-millisecond ones to minutes. */
+    public static final double[] DEFAULT_DURATION_BUCKETS = {
+            0.0005, 0.001, 0.0025, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10, 30, 60, 300 };
+
+    private static final double NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    /** Bucket upper bounds in seconds, as exported. */
+    @NotNull private final String[] upperBoundLabels;
+
+    /** Bucket upper bounds in nanoseconds, as observed. */
+    @NotNull private final long[] upperBoundsNanos;
+
+    Histogram(@NotNull String name, @NotNull String help, @NotNull double[] upperBoundsSeconds,
+            @NotNull String... labelNames) {
+        super(name, help, labelNames);
+        upperBoundLabels = new String[upperBoundsSeconds.length + 1];
+        upperBoundsNanos = new long[upperBoundsSeconds.length];
+        for (int i = 0; i < upperBoundsSeconds.length; i++) {
+            if (i > 0 && upperBoundsSeconds[i] <= upperBoundsSeconds[i - 1]) {
+                throw new IllegalArgumentException("Bucket bounds of " + name + " must be increasing");
+            }
+            upperBoundsNanos[i] = (long) (upperBoundsSeconds[i] * NANOS_PER_SECOND);
+            upperBoundLabels[i] = PrometheusTextWriter.formatValue(upperBoundsSeconds[i]);
+        }
+        upperBoundLabels[upperBoundsSeconds.length] = "+Inf";
+    }
+
+    @Override
+    @NotNull Child newChild() {
+        return new Child(upperBoundsNanos);
+    }
+
+    @Override
+    @NotNull String getType() {
+        return "histogram";
+    }
+
+    @Override
+    void writeSamples(@NotNull PrometheusTextWriter writer, @NotNull String[] labelValues, @NotNull Child child) {
+        String[] labelNames = getLabelNames();
+        long cumulative = 0;
+        for (int i = 0; i < child.buckets.length; i++) {
+            cumulative += child.buckets[i].sum();
+            writer.sample(getName() + "_bucket", labelNames, labelValues, "le", upperBoundLabels[i], cumulative);
+        }
+        writer.sample(getName() + "_sum", labelNames, labelValues, child.sumNanos.sum() / NANOS_PER_SECOND);
+        writer.sample(getName() + "_count", labelNames, labelValues, cumulative);
+    }
+
+    public static class Child {
+
+        @NotNull private final long[] upperBoundsNanos;
+
+        /** Counts of observations in individual buckets; the last one is for values over the highest bound. */
+        @NotNull private final LongAdder[] buckets;
+        private final LongAdder sumNanos = new LongAdder();
+
+        private Child(@NotNull long[] upperBoundsNanos) {
+            this.upperBoundsNanos = upperBoundsNanos;
+            this.buckets = new LongAdder[upperBoundsNanos.length + 1];
+            for (int i = 0; i < buckets.length; i++) {
+                buckets[i] = new LongAdder();
+            }
+        }
+
+        public void observeNanos(long nanos) {
+            long value = Math.max(nanos, 0);
+            int i = 0;
+            while (i < upperBoundsNanos.length && value > upperBoundsNanos[i]) {
+                i++;
+            }
+            buckets[i].increment();
+            sumNanos.add(value);
+        }
+
+        public void observeMillis(double millis) {
+            observeNanos((long) (millis * 1_000_000));
+        }
+
+        /** Returns total number of observations. */
+        public long getCount() {
+            long count = 0;
+            for (LongAdder bucket : buckets) {
+                count += bucket.sum();
+            }
+            return count;
+        }
+    }
+}
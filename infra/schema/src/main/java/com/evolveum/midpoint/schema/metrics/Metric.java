@@ -0,0 +1,183 @@
+/*
+ * Copyright (C) 2010-2022 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+
+package com.evolveum.midpoint.schema.metrics;
+
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Named metric with a fixed set of label names, consisting of time series ("children") of type `C`,
+ * one for each combination of label values.
+ *
+ * Children are created on the first use of given label values and are never removed.
+ * Looking up an existing child does not allocate: the children are kept in nested maps, one level per label.
+ * To protect the memory (and the monitoring system) from labels with unexpectedly high cardinality,
+ * the number of children is limited by {@link #MAX_SERIES}. Observations for label values over the limit
+ * are aggregated in a single child with all label values set to {@link #OVERFLOW_LABEL_VALUE}.
+ */
+public abstract class Metric<C> {
+
+    /** Maximal number of time series (label values combinations) for a single metric. */
+    public static final int MAX_SERIES = 1000;
+
+    public static final String OVERFLOW_LABEL_VALUE = "_other";
+
+    @NotNull private final String name;
+    @NotNull private final String help;
+    @NotNull private final String[] labelNames;
+
+    /** Children in nested maps: label value -> (label value -> ... -> child). Not used for unlabeled metrics. */
+    private final ConcurrentHashMap<String, Object> children = new ConcurrentHashMap<>();
+
+    /** All children with their label values, in the order of creation. Used when exporting. */
+    private final Queue<Series<C>> series = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger seriesCount = new AtomicInteger();
+
+    /** The only child for unlabeled metric, or a child for label values over the limit for labeled ones. */
+    private volatile Series<C> defaultSeries;
+
+    Metric(@NotNull String name, @NotNull String help, @NotNull String... labelNames) {
+        this.name = name;
+        this.help = help;
+        this.labelNames = labelNames.clone();
+    }
+
+    /** Creates a new child, i.e. the object holding the values of single time series. */
+    abstract @NotNull C newChild();
+
+    /** Returns metric type as used in `# TYPE` line. */
+    abstract @NotNull String getType();
+
+    /** Writes samples of single time series. */
+    abstract void writeSamples(@NotNull PrometheusTextWriter writer, @NotNull String[] labelValues, @NotNull C child);
+
+    public @NotNull String getName() {
+        return name;
+    }
+
+    public @NotNull String getHelp() {
+        return help;
+    }
+
+    @NotNull String[] getLabelNames() {
+        return labelNames;
+    }
+
+    /**
+     * Returns the child for given label values (null values are treated as empty strings).
+     * The number of values must be the same as the number of label names.
+     */
+    public @NotNull C labels(String... labelValues) {
+        if (labelValues.length != labelNames.length) {
+            throw new IllegalArgumentException("Metric " + name + " requires " + labelNames.length
+                    + " label value(s), got " + labelValues.length);
+        }
+        if (labelValues.length == 0) {
+            return getDefaultSeries().child;
+        }
+        ConcurrentHashMap<String, Object> level = children;
+        int last = labelValues.length - 1;
+        for (int i = 0; i < last; i++) {
+            Object next = level.get(normalize(labelValues[i]));
+            if (next == null) {
+                return createChild(labelValues);
+            }
+            //noinspection unchecked
+            level = (ConcurrentHashMap<String, Object>) next;
+        }
+        Object child = level.get(normalize(labelValues[last]));
+        if (child != null) {
+            //noinspection unchecked
+            return (C) child;
+        } else {
+            return createChild(labelValues);
+        }
+    }
+
+    private @NotNull C createChild(String[] labelValues) {
+        if (seriesCount.get() >= MAX_SERIES) {
+            return overflow();
+        }
+        synchronized (this) {
+            if (seriesCount.get() >= MAX_SERIES) {
+                return overflow();
+            }
+            ConcurrentHashMap<String, Object> level = children;
+            int last = labelValues.length - 1;
+            for (int i = 0; i < last; i++) {
+                //noinspection unchecked
+                level = (ConcurrentHashMap<String, Object>)
+                        level.computeIfAbsent(normalize(labelValues[i]), k -> new ConcurrentHashMap<>());
+            }
+            String lastValue = normalize(labelValues[last]);
+            Object existing = level.get(lastValue);
+            if (existing != null) {
+                //noinspection unchecked
+                return (C) existing;
+            }
+            String[] normalizedValues = new String[labelValues.length];
+            for (int i = 0; i < labelValues.length; i++) {
+                normalizedValues[i] = normalize(labelValues[i]);
+            }
+            C child = newChild();
+            series.add(new Series<>(normalizedValues, child));
+            seriesCount.incrementAndGet();
+            level.put(lastValue, child);
+            return child;
+        }
+    }
+
+    private @NotNull C overflow() {
+        return getDefaultSeries().child;
+    }
+
+    private @NotNull Series<C> getDefaultSeries() {
+        Series<C> current = defaultSeries;
+        return current != null ? current : createDefaultSeries();
+    }
+
+    private synchronized @NotNull Series<C> createDefaultSeries() {
+        if (defaultSeries == null) {
+            String[] labelValues = new String[labelNames.length];
+            Arrays.fill(labelValues, OVERFLOW_LABEL_VALUE);
+            defaultSeries = new Series<>(labelValues, newChild());
+        }
+        return defaultSeries;
+    }
+
+    private static String normalize(String labelValue) {
+        return labelValue != null ? labelValue : "";
+    }
+
+    void write(@NotNull PrometheusTextWriter writer) {
+        writer.header(name, help, getType());
+        Series<C> defaultSeries = labelNames.length == 0 ? getDefaultSeries() : this.defaultSeries;
+        if (defaultSeries != null) {
+            writeSamples(writer, defaultSeries.labelValues, defaultSeries.child);
+        }
+        for (Series<C> s : series) {
+            writeSamples(writer, s.labelValues, s.child);
+        }
+    }
+
+    private static class Series<C> {
+
+        @NotNull private final String[] labelValues;
+        @NotNull private final C child;
+
+        private Series(@NotNull String[] labelValues, @NotNull C child) {
+            this.labelValues = labelValues;
+            this.child = child;
+        }
+    }
+}
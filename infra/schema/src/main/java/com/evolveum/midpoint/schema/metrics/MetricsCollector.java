@@ -0,0 +1,21 @@
+/*
+ * Copyright (C) 2010-2022 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+
+package com.evolveum.midpoint.schema.metrics;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Provides metrics computed at export time from values that are already maintained elsewhere
+ * (e.g. cache statistics). This costs nothing on the hot path.
+ */
+@FunctionalInterface
+public interface MetricsCollector {
+
+    /** Writes complete metric families (header and samples) to the writer. */
+    void collect(@NotNull PrometheusTextWriter writer);
+}
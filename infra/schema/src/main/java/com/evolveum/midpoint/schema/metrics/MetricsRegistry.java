@@ -0,0 +1,95 @@
+/*
+ * Copyright (C) 2010-2022 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+
+package com.evolveum.midpoint.schema.metrics;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.jetbrains.annotations.NotNull;
+
+import com.evolveum.midpoint.util.logging.LoggingUtils;
+import com.evolveum.midpoint.util.logging.Trace;
+import com.evolveum.midpoint.util.logging.TraceManager;
+
+/**
+ * Registry of metrics that can be exported (scraped) in Prometheus text format.
+ *
+ * This is a deliberately small implementation: counters and histograms backed by {@link java.util.concurrent.atomic.LongAdder}s
+ * (cheap enough to be updated from many threads under full load), plus collectors evaluated at export time.
+ * The registry is a singleton, just like other performance collectors (e.g. `CachePerformanceCollector`),
+ * so that it can be used from any place without wiring. Standard midPoint metrics are in {@link MidpointMetrics}.
+ */
+public class MetricsRegistry {
+
+    private static final Trace LOGGER = TraceManager.getTrace(MetricsRegistry.class);
+
+    public static final MetricsRegistry INSTANCE = new MetricsRegistry();
+
+    private final Map<String, Metric<?>> metrics = new ConcurrentHashMap<>();
+    private final CopyOnWriteArrayList<MetricsCollector> collectors = new CopyOnWriteArrayList<>();
+
+    /** If false, the instrumented code should not record anything. Already recorded values are still exported. */
+    private volatile boolean enabled = true;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /** Returns existing counter with the given name or creates a new one. */
+    public @NotNull Counter counter(@NotNull String name, @NotNull String help, @NotNull String... labelNames) {
+        return register(Counter.class, new Counter(name, help, labelNames));
+    }
+
+    /** Returns existing histogram with the given name or creates a new one. Bounds are in seconds. */
+    public @NotNull Histogram histogram(@NotNull String name, @NotNull String help, @NotNull double[] upperBounds,
+            @NotNull String... labelNames) {
+        return register(Histogram.class, new Histogram(name, help, upperBounds, labelNames));
+    }
+
+    private <M extends Metric<?>> @NotNull M register(@NotNull Class<M> type, @NotNull M metric) {
+        Metric<?> existing = metrics.putIfAbsent(metric.getName(), metric);
+        if (existing == null) {
+            return metric;
+        } else if (type.isInstance(existing)) {
+            return type.cast(existing);
+        } else {
+            throw new IllegalStateException("Metric " + metric.getName() + " is already registered as "
+                    + existing.getClass().getSimpleName());
+        }
+    }
+
+    public void registerCollector(@NotNull MetricsCollector collector) {
+        collectors.addIfAbsent(collector);
+    }
+
+    public void unregisterCollector(@NotNull MetricsCollector collector) {
+        collectors.remove(collector);
+    }
+
+    /** Exports all the metrics in Prometheus text format (see {@link PrometheusTextWriter#CONTENT_TYPE}). */
+    public @NotNull String export() {
+        PrometheusTextWriter writer = new PrometheusTextWriter();
+        metrics.values().stream()
+                .sorted((m1, m2) -> m1.getName().compareTo(m2.getName()))
+                .forEach(metric -> metric.write(writer));
+        for (MetricsCollector collector : collectors) {
+            try {
+                collector.collect(writer);
+            } catch (RuntimeException e) {
+                // Export of other metrics should not be influenced by a single faulty collector.
+                LoggingUtils.logUnexpectedException(LOGGER, "Couldn't collect metrics from {}", e, collector);
+            }
+        }
+        return writer.toString();
+    }
+}
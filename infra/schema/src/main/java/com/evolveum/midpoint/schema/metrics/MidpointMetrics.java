@@ -0,0 +1,158 @@
+/*
+ * Copyright (C) 2010-2022 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+
+package com.evolveum.midpoint.schema.metrics;
+
+import static com.evolveum.midpoint.schema.metrics.Histogram.DEFAULT_DURATION_BUCKETS;
+
+import java.util.Map;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import com.evolveum.midpoint.util.caching.CachePerformanceCollector;
+
+/**
+ * Standard metrics of midPoint hot paths: repository operations, caches, activities (tasks) and connectors.
+ *
+ * Instrumented code should use the `record...` methods that do nothing if the metrics are disabled.
+ * All the label values used here have limited cardinality (operation kinds, object types, activity types,
+ * resources, ...), never object OIDs or names.
+ */
+public class MidpointMetrics {
+
+    private static final MetricsRegistry REGISTRY = MetricsRegistry.INSTANCE;
+
+    private static final String[] CACHE_LABELS = { "cache", "result" };
+
+    public static final Histogram REPOSITORY_OPERATION_DURATION = REGISTRY.histogram(
+            "midpoint_repository_operation_duration_seconds",
+            "Duration of repository operations, including all the attempts.",
+            DEFAULT_DURATION_BUCKETS, "operation", "object_type");
+
+    public static final Counter REPOSITORY_OPERATION_RETRIES = REGISTRY.counter(
+            "midpoint_repository_operation_retries_total",
+            "Number of repeated attempts of repository operations, e.g. because of concurrent modifications.",
+            "operation", "object_type");
+
+    public static final Counter CACHE_EVICTIONS = REGISTRY.counter(
+            "midpoint_cache_evictions_total",
+            "Number of entries removed from global caches because of capacity (evicted) or time to live (expired).",
+            "cache", "reason");
+
+    /** The count of this histogram gives the item throughput of the activities. */
+    public static final Histogram ACTIVITY_ITEM_DURATION = REGISTRY.histogram(
+            "midpoint_activity_item_duration_seconds",
+            "Duration of processing of individual items by activities (tasks).",
+            DEFAULT_DURATION_BUCKETS, "activity", "outcome");
+
+    public static final Histogram BUCKET_WAIT_DURATION = REGISTRY.histogram(
+            "midpoint_activity_bucket_wait_seconds",
+            "Time spent by activity workers waiting for a work bucket to become available.",
+            DEFAULT_DURATION_BUCKETS);
+
+    public static final Histogram BUCKET_OPERATION_DURATION = REGISTRY.histogram(
+            "midpoint_activity_bucket_operation_duration_seconds",
+            "Duration of work bucket management operations (getting, completing, releasing buckets).",
+            DEFAULT_DURATION_BUCKETS, "situation");
+
+    public static final Histogram CONNECTOR_OPERATION_DURATION = REGISTRY.histogram(
+            "midpoint_connector_operation_duration_seconds",
+            "Duration of connector operations, excluding the time spent in midPoint while processing search results.",
+            DEFAULT_DURATION_BUCKETS, "resource_oid", "resource", "operation");
+
+    static {
+        REGISTRY.registerCollector(MidpointMetrics::collectCacheStatistics);
+    }
+
+    public static boolean isEnabled() {
+        return REGISTRY.isEnabled();
+    }
+
+    public static void recordRepositoryOperation(
+            @NotNull String operation, @NotNull String objectType, long durationNanos, int attempts) {
+        if (isEnabled()) {
+            REPOSITORY_OPERATION_DURATION.labels(operation, objectType).observeNanos(durationNanos);
+            if (attempts > 1) {
+                REPOSITORY_OPERATION_RETRIES.labels(operation, objectType).inc(attempts - 1);
+            }
+        }
+    }
+
+    public static void recordCacheEviction(@NotNull String cache, @NotNull String reason) {
+        if (isEnabled()) {
+            CACHE_EVICTIONS.labels(cache, reason).inc();
+        }
+    }
+
+    public static void recordActivityItem(@NotNull String activity, @Nullable String outcome, double durationMillis) {
+        if (isEnabled()) {
+            ACTIVITY_ITEM_DURATION.labels(activity, outcome).observeMillis(durationMillis);
+        }
+    }
+
+    public static void recordBucketWait(long waitMillis) {
+        if (isEnabled()) {
+            BUCKET_WAIT_DURATION.labels().observeMillis(waitMillis);
+        }
+    }
+
+    public static void recordBucketOperation(@NotNull String situation, long durationMillis) {
+        if (isEnabled()) {
+            BUCKET_OPERATION_DURATION.labels(situation).observeMillis(durationMillis);
+        }
+    }
+
+    public static void recordConnectorOperation(
+            @NotNull String resourceOid, @Nullable String resourceName, @NotNull String operation, long durationMillis) {
+        if (isEnabled()) {
+            CONNECTOR_OPERATION_DURATION.labels(resourceOid, resourceName, operation).observeMillis(durationMillis);
+        }
+    }
+
+    /**
+     * Registers a collector of metrics of a component that keeps its own statistics (e.g. the asynchronous audit writer).
+     * The component should unregister it when it is stopped.
+     */
+    public static void registerCollector(@NotNull MetricsCollector collector) {
+        REGISTRY.registerCollector(collector);
+    }
+
+    public static void unregisterCollector(@NotNull MetricsCollector collector) {
+        REGISTRY.unregisterCollector(collector);
+    }
+
+    /**
+     * Exports all the registered metrics, including the standard ones defined here.
+     * (Referencing this class makes sure they are registered even if nothing was recorded yet.)
+     */
+    public static @NotNull String export() {
+        return REGISTRY.export();
+    }
+
+    /** Cache statistics are already maintained by {@link CachePerformanceCollector}, so we just read them. */
+    private static void collectCacheStatistics(@NotNull PrometheusTextWriter writer) {
+        Map<String, CachePerformanceCollector.CacheData> performanceMap =
+                CachePerformanceCollector.INSTANCE.getGlobalPerformanceMap();
+        if (performanceMap == null || performanceMap.isEmpty()) {
+            return;
+        }
+        writer.header("midpoint_cache_requests_total",
+                "Number of cache requests by their result (hit, weak hit, miss, pass, not available).", "counter");
+        performanceMap.forEach((cache, data) -> {
+            writeCacheSample(writer, cache, "hit", data.hits.longValue());
+            writeCacheSample(writer, cache, "weak_hit", data.weakHits.longValue());
+            writeCacheSample(writer, cache, "miss", data.misses.longValue());
+            writeCacheSample(writer, cache, "pass", data.passes.longValue());
+            writeCacheSample(writer, cache, "not_available", data.notAvailable.longValue());
+        });
+    }
+
+    private static void writeCacheSample(PrometheusTextWriter writer, String cache, String result, long value) {
+        writer.sample("midpoint_cache_requests_total", CACHE_LABELS, new String[] { cache, result }, value);
+    }
+}
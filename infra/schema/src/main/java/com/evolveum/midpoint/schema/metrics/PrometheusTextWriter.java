@@ -0,0 +1,120 @@
+/*
+ * Copyright (C) 2010-2022 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+
+package com.evolveum.midpoint.schema.metrics;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Writes metrics in Prometheus text exposition format (version 0.0.4), which is understood also
+ * by OpenMetrics scrapers.
+ *
+ * Used by {@link Metric} implementations and by {@link MetricsCollector}s that provide their samples at export time.
+ */
+public class PrometheusTextWriter {
+
+    public static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    private static final String[] NO_STRINGS = new String[0];
+
+    private final StringBuilder sb = new StringBuilder();
+
+    /** Writes `# HELP` and `# TYPE` lines. Type is `counter`, `gauge`, `histogram`, or `untyped`. */
+    public void header(@NotNull String name, @NotNull String help, @NotNull String type) {
+        sb.append("# HELP ").append(name).append(' ');
+        appendEscaped(help, false);
+        sb.append('\n');
+        sb.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    public void sample(@NotNull String name, long value) {
+        sample(name, NO_STRINGS, NO_STRINGS, null, null, formatValue(value));
+    }
+
+    public void sample(@NotNull String name, double value) {
+        sample(name, NO_STRINGS, NO_STRINGS, null, null, formatValue(value));
+    }
+
+    public void sample(@NotNull String name, @NotNull String[] labelNames, @NotNull String[] labelValues, long value) {
+        sample(name, labelNames, labelValues, null, null, formatValue(value));
+    }
+
+    public void sample(@NotNull String name, @NotNull String[] labelNames, @NotNull String[] labelValues, double value) {
+        sample(name, labelNames, labelValues, null, null, formatValue(value));
+    }
+
+    /** Writes a sample with an extra label, e.g. `le` for histogram buckets. */
+    public void sample(@NotNull String name, @NotNull String[] labelNames, @NotNull String[] labelValues,
+            @NotNull String extraLabelName, @NotNull String extraLabelValue, long value) {
+        sample(name, labelNames, labelValues, extraLabelName, extraLabelValue, formatValue(value));
+    }
+
+    private void sample(String name, String[] labelNames, String[] labelValues,
+            @Nullable String extraLabelName, @Nullable String extraLabelValue, String value) {
+        sb.append(name);
+        if (labelNames.length > 0 || extraLabelName != null) {
+            sb.append('{');
+            for (int i = 0; i < labelNames.length; i++) {
+                if (i > 0) {
+                    sb.append(',');
+                }
+                appendLabel(labelNames[i], labelValues[i]);
+            }
+            if (extraLabelName != null) {
+                if (labelNames.length > 0) {
+                    sb.append(',');
+                }
+                appendLabel(extraLabelName, extraLabelValue);
+            }
+            sb.append('}');
+        }
+        sb.append(' ').append(value).append('\n');
+    }
+
+    private void appendLabel(String name, String value) {
+        sb.append(name).append("=\"");
+        appendEscaped(value, true);
+        sb.append('"');
+    }
+
+    private void appendEscaped(String text, boolean labelValue) {
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '\\') {
+                sb.append("\\\\");
+            } else if (c == '\n') {
+                sb.append("\\n");
+            } else if (c == '"' && labelValue) {
+                sb.append("\\\"");
+            } else {
+                sb.append(c);
+            }
+        }
+    }
+
+    static String formatValue(long value) {
+        return Long.toString(value);
+    }
+
+    static String formatValue(double value) {
+        if (Double.isNaN(value)) {
+            return "NaN";
+        } else if (Double.isInfinite(value)) {
+            return value > 0 ? "+Inf" : "-Inf";
+        } else if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+            return Long.toString((long) value);
+        } else {
+            return Double.toString(value);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return sb.toString();
+    }
+}
@@ -154,6 +154,29 @@ public class ResourceSchemaFactory {
         }
     }
 
+    /**
+     * Lets the target resource (an immutable copy of the source) use the frozen schemas already parsed for the source,
+     * so they are not parsed again. Mutable schemas and schemas already present in the target are not touched.
+     *
+     * The target must be immutable: the schemas would get stale if its `schema` or `schemaHandling` were changed.
+     */
+    public static void shareParsedSchemas(@NotNull PrismObject<ResourceType> source, @NotNull PrismObject<ResourceType> target) {
+        if (!target.isImmutable()) {
+            throw new IllegalArgumentException("Parsed schemas can be shared only with immutable resources: " + target);
+        }
+        shareFrozenUserData(source, target, USER_DATA_KEY_PARSED_RESOURCE_SCHEMA);
+        shareFrozenUserData(source, target, USER_DATA_KEY_REFINED_SCHEMA);
+    }
+
+    private static void shareFrozenUserData(PrismObject<ResourceType> source, PrismObject<ResourceType> target, String key) {
+        Object sourceSchema = source.getUserData(key);
+        if (sourceSchema instanceof ResourceSchema
+                && ((ResourceSchema) sourceSchema).isImmutable()
+                && target.getUserData(key) == null) {
+            target.setUserData(key, sourceSchema);
+        }
+    }
+
     public static boolean hasParsedSchema(ResourceType resourceType) {
         PrismObject<ResourceType> resource = resourceType.asPrismObject();
         return resource.getUserData(USER_DATA_KEY_PARSED_RESOURCE_SCHEMA) != null;
@@ -20,6 +20,7 @@ import java.util.*;
 import java.util.Objects;
 import java.util.Map.Entry;
 import java.util.function.Function;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 import javax.xml.namespace.QName;
@@ -157,6 +158,16 @@ public class OperationResult
     /** Whether we should preserve the content of the result e.g. for the sake of reporting. */
     private boolean preserve;
 
+    /** Depth of this result in the result tree; the root has 0. */
+    private int depth;
+
+    /**
+     * Lightweight results do not collect params, context, returns, nor invocation records. When finished successfully,
+     * they are replaced by hidden records entries in their parent (when the parent computes its status or is summarized).
+     * See {@link OperationResultHandlingStrategyType#getLightweightSubresultsDepth()}.
+     */
+    private boolean lightweight;
+
     /**
      * True if we collect log entries.
      * Maybe it could be replaced by checking {@link #logRecorder} being not null and open?
@@ -274,6 +285,8 @@ public class OperationResult
         subresult.tracingProfile = tracingProfile;
         subresult.preserve = preserve;
         subresult.parentLogRecorder = logRecorder;
+        subresult.depth = depth + 1;
+        subresult.lightweight = subresult.shouldBeLightweight();
         return subresult;
     }
 
@@ -288,7 +301,10 @@ public class OperationResult
         if (!building) {
             throw new IllegalStateException("Not being built");
         }
-        recordStart(operation, createArguments());
+        if (lightweight && !shouldBeLightweight()) {
+            lightweight = false; // tracing or preservation was requested when building
+        }
+        recordStart(operation, lightweight ? null : createArguments());
         building = false;
         if (futureParent != null) {
             futureParent.addSubresult(this);
@@ -305,6 +321,10 @@ public class OperationResult
     }
 
     private void recordStart(String operation, Object[] arguments) {
+        if (lightweight) {
+            start = System.currentTimeMillis();
+            return;
+        }
         if (tracingProfile != null) {
             startLoggingIfRequested();
             startOperationMonitoring();
@@ -368,10 +388,77 @@ public class OperationResult
         addSubresult(subresult);
         subresult.parentLogRecorder = logRecorder;
         subresult.importance = minor ? MINOR : NORMAL;
+        subresult.depth = depth + 1;
+        subresult.lightweight = subresult.shouldBeLightweight();
         subresult.recordStart(operation, arguments);
         return subresult;
     }
 
+    private boolean shouldBeLightweight() {
+        Integer lightweightDepth = getCurrentHandlingStrategy().getLightweightSubresultsDepth();
+        return lightweightDepth != null && depth > lightweightDepth && !isTraced() && !preserve;
+    }
+
+    public boolean isLightweight() {
+        return lightweight;
+    }
+
+    /**
+     * Removes lightweight subresults that were finished successfully (and have nothing but successful hidden records
+     * themselves). They are counted in hidden records entries, just like subresults stripped by {@link #summarize()}.
+     */
+    private void dropLightweightSubresults() {
+        if (subresults == null || subresults.isEmpty()) {
+            return;
+        }
+        Map<String, Integer> droppedCounts = null;
+        Iterator<OperationResult> iterator = subresults.iterator();
+        while (iterator.hasNext()) {
+            OperationResult subresult = iterator.next();
+            if (subresult != null && subresult.canBeDropped()) {
+                iterator.remove();
+                if (droppedCounts == null) {
+                    droppedCounts = new LinkedHashMap<>();
+                }
+                droppedCounts.merge(subresult.getOperation(), 1, Integer::sum);
+            }
+        }
+        if (droppedCounts != null) {
+            droppedCounts.forEach(this::addHiddenSuccessRecords);
+        }
+    }
+
+    private boolean canBeDropped() {
+        if (!lightweight || status != OperationResultStatus.SUCCESS) {
+            return false;
+        }
+        dropLightweightSubresults();
+        if (subresults != null) {
+            for (OperationResult subresult : subresults) {
+                if (!subresult.representsHiddenRecords() || subresult.status != OperationResultStatus.SUCCESS) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private void addHiddenSuccessRecords(String operation, int count) {
+        for (OperationResult subresult : getSubresults()) {
+            if (subresult.representsHiddenRecords()
+                    && subresult.status == OperationResultStatus.SUCCESS
+                    && Objects.equals(subresult.operation, operation)) {
+                subresult.hiddenRecordsCount += count;
+                subresult.message = subresult.hiddenRecordsCount + " record(s) were hidden to save space.";
+                return;
+            }
+        }
+        OperationResult hiddenRecordsEntry = new OperationResult(operation, OperationResultStatus.SUCCESS,
+                count + " record(s) were hidden to save space.");
+        hiddenRecordsEntry.setHiddenRecordsCount(count);
+        getSubresults().add(hiddenRecordsEntry);
+    }
+
     // todo determine appropriate places where recordEnd() should be called
     public void recordEnd() {
         if (invocationRecord != null) {
@@ -745,6 +832,7 @@ public class OperationResult
         if (!skipFinish) {
             recordEnd();
         }
+        dropLightweightSubresults();
         if (getSubresults().isEmpty()) {
             if (status == OperationResultStatus.UNKNOWN) {
                 status = OperationResultStatus.SUCCESS;
@@ -1156,6 +1244,10 @@ public class OperationResult
         return params;
     }
 
+    private OperationResult putParam(String name, Supplier<Collection<String>> value) {
+        return putUnlessLightweight(this::getParams, name, value);
+    }
+
     public @Nullable ParamsType getParamsBean() {
         return ParamsTypeUtil.toParamsType(getParams());
     }
@@ -1186,91 +1278,72 @@ public class OperationResult
 
     @Override
     public OperationResult addParam(String name, String value) {
-        getParams().put(name, collectionize(value));
-        return this;
+        return putParam(name, () -> collectionize(value));
     }
 
     @Override
     public OperationResult addParam(String name, PrismObject<? extends ObjectType> value) {
-        getParams().put(name, collectionize(stringify(value)));
-        return this;
+        return putParam(name, () -> collectionize(stringify(value)));
     }
 
     @Override
     public OperationResult addParam(String name, ObjectType value) {
-        getParams().put(name, collectionize(stringify(value)));
-        return this;
+        return putParam(name, () -> collectionize(stringify(value)));
     }
 
     @Override
     public OperationResult addParam(String name, boolean value) {
-        getParams().put(name, collectionize(stringify(value)));
-        return this;
+        return putParam(name, () -> collectionize(stringify(value)));
     }
 
     @Override
     public OperationResult addParam(String name, long value) {
-        getParams().put(name, collectionize(stringify(value)));
-        return this;
+        return putParam(name, () -> collectionize(stringify(value)));
     }
 
     @Override
     public OperationResult addParam(String name, int value) {
-        getParams().put(name, collectionize(stringify(value)));
-        return this;
+        return putParam(name, () -> collectionize(stringify(value)));
     }
 
     @Override
-    @SuppressWarnings("unchecked")
     public OperationResult addParam(String name, Class<?> value) {
-        if (value != null && ObjectType.class.isAssignableFrom(value)) {
-            getParams().put(name, collectionize(ObjectTypes.getObjectType((Class<? extends ObjectType>) value).getObjectTypeUri()));
-        } else {
-            getParams().put(name, collectionize(stringify(value)));
-        }
-        return this;
+        return putParam(name, () -> collectionize(stringifyClass(value)));
     }
 
     @Override
     public OperationResult addParam(String name, QName value) {
-        getParams().put(name, collectionize(value == null ? null : QNameUtil.qNameToUri(value)));
-        return this;
+        return putParam(name, () -> collectionize(value == null ? null : QNameUtil.qNameToUri(value)));
     }
 
     @Override
     public OperationResult addParam(String name, PolyString value) {
-        getParams().put(name, collectionize(value == null ? null : value.getOrig()));
-        return this;
+        return putParam(name, () -> collectionize(value == null ? null : value.getOrig()));
     }
 
     @Override
     public OperationResult addParam(String name, ObjectQuery value) {
-        getParams().put(name, collectionize(stringify(value)));
-        return this;
+        return putParam(name, () -> collectionize(stringify(value)));
     }
 
     @Override
     public OperationResult addParam(String name, ObjectDelta<?> value) {
-        getParams().put(name, collectionize(stringify(value)));
-        return this;
+        return putParam(name, () -> collectionize(stringify(value)));
     }
 
     @Override
     public OperationResult addParam(String name, String... values) {
-        getParams().put(name, collectionize(values));
-        return this;
+        return putParam(name, () -> collectionize(values));
     }
 
     @Override
     public OperationResult addArbitraryObjectAsParam(String paramName, Object paramValue) {
-        getParams().put(paramName, collectionize(stringify(paramValue)));
-        return this;
+        return putParam(paramName, () -> collectionize(stringify(paramValue)));
     }
 
     @Override
     public OperationResult addArbitraryObjectCollectionAsParam(String name, Collection<?> value) {
-        getParams().put(name, stringifyCol(value));
-        return this;
+        return putParam(name, () -> stringifyCol(value));
     }
 
     public @NotNull Map<String, Collection<String>> getContext() {
@@ -1280,97 +1353,82 @@ public class OperationResult
         return context;
     }
 
+    private OperationResult putContext(String name, Supplier<Collection<String>> value) {
+        return putUnlessLightweight(this::getContext, name, value);
+    }
+
     public @Nullable ParamsType getContextBean() {
         return ParamsTypeUtil.toParamsType(getContext());
     }
 
     @Override
     public OperationResult addContext(String name, String value) {
-        getContext().put(name, collectionize(value));
-        return this;
+        return putContext(name, () -> collectionize(value));
     }
 
     @Override
     public OperationResult addContext(String name, PrismObject<? extends ObjectType> value) {
-        getContext().put(name, collectionize(stringify(value)));
-        return this;
+        return putContext(name, () -> collectionize(stringify(value)));
     }
 
     @Override
     public OperationResult addContext(String name, ObjectType value) {
-        getContext().put(name, collectionize(stringify(value)));
-        return this;
+        return putContext(name, () -> collectionize(stringify(value)));
     }
 
     @Override
     public OperationResult addContext(String name, boolean value) {
-        getContext().put(name, collectionize(stringify(value)));
-        return this;
+        return putContext(name, () -> collectionize(stringify(value)));
     }
 
     @Override
     public OperationResult addContext(String name, long value) {
-        getContext().put(name, collectionize(stringify(value)));
-        return this;
+        return putContext(name, () -> collectionize(stringify(value)));
     }
 
     @Override
     public OperationResult addContext(String name, int value) {
-        getContext().put(name, collectionize(stringify(value)));
-        return this;
+        return putContext(name, () -> collectionize(stringify(value)));
     }
 
     @Override
-    @SuppressWarnings("unchecked")
     public OperationResult addContext(String name, Class<?> value) {
-        if (value != null && ObjectType.class.isAssignableFrom(value)) {
-            getContext().put(name, collectionize(ObjectTypes.getObjectType((Class<? extends ObjectType>) value).getObjectTypeUri()));
-        } else {
-            getContext().put(name, collectionize(stringify(value)));
-        }
-        return this;
+        return putContext(name, () -> collectionize(stringifyClass(value)));
     }
 
     @Override
     public OperationResult addContext(String name, QName value) {
-        getContext().put(name, collectionize(value == null ? null : QNameUtil.qNameToUri(value)));
-        return this;
+        return putContext(name, () -> collectionize(value == null ? null : QNameUtil.qNameToUri(value)));
     }
 
     @Override
     public OperationResult addContext(String name, PolyString value) {
-        getContext().put(name, collectionize(value == null ? null : value.getOrig()));
-        return this;
+        return putContext(name, () -> collectionize(value == null ? null : value.getOrig()));
     }
 
     @Override
     public OperationResult addContext(String name, ObjectQuery value) {
-        getContext().put(name, collectionize(stringify(value)));
-        return this;
+        return putContext(name, () -> collectionize(stringify(value)));
     }
 
     @Override
     public OperationResult addContext(String name, ObjectDelta<?> value) {
-        getContext().put(name, collectionize(stringify(value)));
-        return this;
+        return putContext(name, () -> collectionize(stringify(value)));
     }
 
     @Override
     public OperationResult addContext(String name, String... values) {
-        getContext().put(name, collectionize(values));
-        return this;
+        return putContext(name, () -> collectionize(values));
     }
 
     @Override
     public OperationResult addArbitraryObjectAsContext(String name, Object value) {
-        getContext().put(name, collectionize(stringify(value)));
-        return this;
+        return putContext(name, () -> collectionize(stringify(value)));
     }
 
     @Override
     public OperationResult addArbitraryObjectCollectionAsContext(String paramName, Collection<?> paramValue) {
-        getContext().put(paramName, stringifyCol(paramValue));
-        return this;
+        return putContext(paramName, () -> stringifyCol(paramValue));
     }
 
     @NotNull
@@ -1381,6 +1439,22 @@ public class OperationResult
         return returns;
     }
 
+    private void putReturn(String name, Supplier<Collection<String>> value) {
+        putUnlessLightweight(this::getReturns, name, value);
+    }
+
+    /**
+     * Lightweight results collect no params, context nor returns. The value is computed (stringified) only if needed,
+     * as this may be expensive, e.g. for objects or deltas.
+     */
+    private OperationResult putUnlessLightweight(
+            Supplier<Map<String, Collection<String>>> target, String name, Supplier<Collection<String>> value) {
+        if (!lightweight) {
+            target.get().put(name, value.get());
+        }
+        return this;
+    }
+
     public @Nullable ParamsType getReturnsBean() {
         return ParamsTypeUtil.toParamsType(getReturns());
     }
@@ -1404,64 +1478,68 @@ public class OperationResult
     }
 
     public void addReturn(String name, String value) {
-        getReturns().put(name, collectionize(value));
+        putReturn(name, () -> collectionize(value));
     }
 
     public void addReturn(String name, PrismObject<? extends ObjectType> value) {
-        getReturns().put(name, collectionize(stringify(value)));
+        putReturn(name, () -> collectionize(stringify(value)));
     }
 
     public void addReturn(String name, ObjectType value) {
-        getReturns().put(name, collectionize(stringify(value)));
+        putReturn(name, () -> collectionize(stringify(value)));
     }
 
     public void addReturn(String name, boolean value) {
-        getReturns().put(name, collectionize(stringify(value)));
+        putReturn(name, () -> collectionize(stringify(value)));
     }
 
     public void addReturn(String name, long value) {
-        getReturns().put(name, collectionize(stringify(value)));
+        putReturn(name, () -> collectionize(stringify(value)));
     }
 
     public void addReturn(String name, int value) {
-        getReturns().put(name, collectionize(stringify(value)));
+        putReturn(name, () -> collectionize(stringify(value)));
     }
 
-    @SuppressWarnings("unchecked")
     public void addReturn(String name, Class<?> value) {
-        if (value != null && ObjectType.class.isAssignableFrom(value)) {
-            getReturns().put(name, collectionize(ObjectTypes.getObjectType((Class<? extends ObjectType>) value).getObjectTypeUri()));
-        } else {
-            getReturns().put(name, collectionize(stringify(value)));
-        }
+        putReturn(name, () -> collectionize(stringifyClass(value)));
     }
 
     public void addReturn(String name, QName value) {
-        getReturns().put(name, collectionize(value == null ? null : QNameUtil.qNameToUri(value)));
+        putReturn(name, () -> collectionize(value == null ? null : QNameUtil.qNameToUri(value)));
     }
 
     public void addReturn(String name, PolyString value) {
-        getReturns().put(name, collectionize(value == null ? null : value.getOrig()));
+        putReturn(name, () -> collectionize(value == null ? null : value.getOrig()));
     }
 
     public void addReturn(String name, ObjectQuery value) {
-        getReturns().put(name, collectionize(stringify(value)));
+        putReturn(name, () -> collectionize(stringify(value)));
     }
 
     public void addReturn(String name, ObjectDelta<?> value) {
-        getReturns().put(name, collectionize(stringify(value)));
+        putReturn(name, () -> collectionize(stringify(value)));
     }
 
     public void addReturn(String name, String... values) {
-        getReturns().put(name, collectionize(values));
+        putReturn(name, () -> collectionize(values));
     }
 
     public void addArbitraryObjectAsReturn(String name, Object value) {
-        getReturns().put(name, collectionize(stringify(value)));
+        putReturn(name, () -> collectionize(stringify(value)));
     }
 
     public void addArbitraryObjectCollectionAsReturn(String paramName, Collection<?> paramValue) {
-        getReturns().put(paramName, stringifyCol(paramValue));
+        putReturn(paramName, () -> stringifyCol(paramValue));
+    }
+
+    @SuppressWarnings("unchecked")
+    private String stringifyClass(Class<?> value) {
+        if (value != null && ObjectType.class.isAssignableFrom(value)) {
+            return ObjectTypes.getObjectType((Class<? extends ObjectType>) value).getObjectTypeUri();
+        } else {
+            return stringify(value);
+        }
     }
 
     private String stringify(Object value) {
@@ -1885,6 +1963,8 @@ public class OperationResult
             return;
         }
 
+        dropLightweightSubresults();
+
         int subresultStripThreshold = getSubresultStripThreshold();
 
         // first phase: summarizing records if explicitly requested
@@ -694,6 +694,14 @@ public class ResourceTypeUtil {
         return false;
     }
 
+    public static int getShadowLookupBatchSize(ResourceType resource) {
+        ResourceConsistencyType consistency = resource.getConsistency();
+        if (consistency == null || consistency.getShadowLookupBatchSize() == null) {
+            return 1;
+        }
+        return Math.max(consistency.getShadowLookupBatchSize(), 1);
+    }
+
     public static ErrorSelectorType getConnectorErrorCriticality(ResourceType resourceType) {
         ResourceConsistencyType consistency = resourceType.getConsistency();
         return consistency != null ? consistency.getConnectorErrorCriticality() : null;
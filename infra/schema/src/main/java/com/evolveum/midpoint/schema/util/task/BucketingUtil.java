@@ -59,11 +59,17 @@ public class BucketingUtil {
         }
     }
 
+    /**
+     * Returns the number of complete buckets in a buckets-holding task. If the buckets are kept in the dedicated
+     * storage, the (periodically updated) summary is used, as there are no buckets in the task itself.
+     */
     static int getCompleteBucketsNumber(ActivityBucketingStateType bucketing) {
-        if (bucketing != null) {
-            return getCompleteBucketsNumber(bucketing.getBucket());
-        } else {
+        if (bucketing == null) {
             return 0;
+        } else if (hasDedicatedBucketStorage(bucketing)) {
+            return MiscUtil.or0(bucketing.getCompleteBuckets());
+        } else {
+            return getCompleteBucketsNumber(bucketing.getBucket());
         }
     }
 
@@ -139,11 +145,21 @@ public class BucketingUtil {
                 ActivityStateUtil.getActivityStateRequired(taskState, activityPath));
     }
 
+    /**
+     * Returns buckets stored in the task. Note that if they are kept in the dedicated storage
+     * (see {@link #hasDedicatedBucketStorage(ActivityBucketingStateType)}), the list is empty; only the summary
+     * is available in the task then.
+     */
     public static @NotNull List<WorkBucketType> getBuckets(@NotNull ActivityStateType state) {
         ActivityBucketingStateType bucketing = state.getBucketing();
         return bucketing != null ? bucketing.getBucket() : List.of();
     }
 
+    /** Are the buckets kept in the dedicated repository storage instead of the task? */
+    public static boolean hasDedicatedBucketStorage(@Nullable ActivityBucketingStateType bucketing) {
+        return bucketing != null && Boolean.TRUE.equals(bucketing.isDedicatedBucketStorage());
+    }
+
     public static Integer getNumberOfBuckets(@NotNull ActivityStateType state) {
         ActivityBucketingStateType bucketing = state.getBucketing();
         return bucketing != null ? bucketing.getNumberOfBuckets() : null;
@@ -7,11 +7,14 @@
 package com.evolveum.midpoint.schema;
 
 import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertFalse;
+import static org.testng.AssertJUnit.assertTrue;
 
 import static com.evolveum.midpoint.prism.util.PrismTestUtil.getPrismContext;
 import static com.evolveum.midpoint.xml.ns._public.common.common_3.OperationResultImportanceType.MAJOR;
 
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
 import org.testng.annotations.Test;
@@ -27,6 +30,14 @@ import com.evolveum.midpoint.xml.ns._public.common.common_3.OperationResultType;
 public class TestOperationResult extends AbstractSchemaTest {
 
     private static final String LOCAL_1 = "local1";
+    private static final String LIGHTWEIGHT = "lightweight";
+
+    private static final Object NOT_TO_BE_STRINGIFIED = new Object() {
+        @Override
+        public String toString() {
+            throw new AssertionError("Value should not be converted to string");
+        }
+    };
 
     @Test
     public void testCleanup() throws Exception {
@@ -208,6 +219,74 @@ public class TestOperationResult extends AbstractSchemaTest {
         checkResultConversion(root, true);
     }
 
+    @Test
+    public void testLightweightSubresults() throws Exception {
+        given();
+        OperationResult.applyOperationResultHandlingStrategy(
+                List.of(
+                        new OperationResultHandlingStrategyType(getPrismContext())
+                                .name(LIGHTWEIGHT)
+                                .lightweightSubresultsDepth(1)));
+        OperationResult.setThreadLocalHandlingStrategy(LIGHTWEIGHT);
+
+        try {
+            when();
+            OperationResult root = new OperationResult("root");
+            OperationResult level1 = root.createSubresult("level1");
+            for (int i = 1; i <= 30; i++) {
+                OperationResult level2 = level1.subresult("level2")
+                        .addParam("value", i)
+                        .build();
+                OperationResult level3 = level2.createSubresult("level3");
+                // values for lightweight results must not be even converted to strings
+                level3.addArbitraryObjectAsParam("param", NOT_TO_BE_STRINGIFIED);
+                level3.addArbitraryObjectAsContext("context", NOT_TO_BE_STRINGIFIED);
+                level3.addArbitraryObjectAsReturn("return", NOT_TO_BE_STRINGIFIED);
+                if (i == 10) {
+                    level3.recordWarning("Warning");
+                } else {
+                    level3.recordSuccess();
+                }
+                level2.computeStatus();
+                assertEquals("Finished lightweight subresult should be kept until level1 is done with them",
+                        level2, level1.getLastSubresult());
+            }
+            OperationResult preserved = level1.subresult("preserved")
+                    .preserve()
+                    .build();
+            preserved.recordSuccess();
+            level1.computeStatus();
+            root.computeStatus();
+            System.out.println("Result with lightweight subresults:\n" + root.debugDump());
+
+            then();
+            assertFalse("level1 should not be lightweight", level1.isLightweight());
+            assertFalse("preserved result should not be lightweight", preserved.isLightweight());
+            assertEquals("Wrong overall status", OperationResultStatus.WARNING, root.getStatus());
+            assertEquals("Wrong # of level1 subresults", 3, level1.getSubresults().size());
+
+            OperationResult kept = level1.getSubresults().get(0);
+            assertTrue("kept result should be lightweight", kept.isLightweight());
+            assertEquals("Wrong status of kept result", OperationResultStatus.WARNING, kept.getStatus());
+            assertEquals("Wrong # of kept result subresults", 1, kept.getSubresults().size());
+            assertTrue("Params should not be collected", kept.getParams().isEmpty());
+            assertEquals("Wrong preserved result", preserved, level1.getSubresults().get(1));
+
+            OperationResult hidden = level1.getSubresults().get(2);
+            assertEquals("Wrong operation of hidden records", "level2", hidden.getOperation());
+            assertEquals("Wrong status of hidden records", OperationResultStatus.SUCCESS, hidden.getStatus());
+            assertEquals("Wrong # of hidden records", 29, hidden.getHiddenRecordsCount());
+
+            and("hidden records survive serialization");
+            OperationResult level1RoundTrip = OperationResult.createOperationResult(level1.createOperationResultType());
+            assertEquals("Wrong # of hidden records after round trip",
+                    29, level1RoundTrip.getSubresults().get(2).getHiddenRecordsCount());
+        } finally {
+            OperationResult.applyOperationResultHandlingStrategy(Collections.emptyList());
+            OperationResult.setThreadLocalHandlingStrategy(null);
+        }
+    }
+
     private void checkResultConversion(OperationResult result, boolean assertEquals) throws SchemaException {
         when();
         OperationResultType resultType = result.createOperationResultType();
@@ -0,0 +1,95 @@
+/*
+ * Copyright (C) 2010-2022 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+package com.evolveum.midpoint.schema.metrics;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.testng.annotations.Test;
+
+import com.evolveum.midpoint.tools.testng.AbstractUnitTest;
+
+public class TestMetricsRegistry extends AbstractUnitTest {
+
+    @Test
+    public void test100CounterWithLabels() {
+        MetricsRegistry registry = new MetricsRegistry();
+        Counter counter = registry.counter("test_requests_total", "Test requests.", "kind", "result");
+
+        counter.labels("get", "ok").inc();
+        counter.labels("get", "ok").inc(2);
+        counter.labels("search", "fail \"quoted\"\n").inc();
+
+        assertThat(counter.labels("get", "ok").get()).isEqualTo(3);
+        assertThat(registry.counter("test_requests_total", "Test requests.", "kind", "result"))
+                .as("registered counter")
+                .isSameAs(counter);
+
+        String text = registry.export();
+        displayValue("export", text);
+        assertThat(text).contains(
+                "# HELP test_requests_total Test requests.\n"
+                        + "# TYPE test_requests_total counter\n"
+                        + "test_requests_total{kind=\"get\",result=\"ok\"} 3\n"
+                        + "test_requests_total{kind=\"search\",result=\"fail \\\"quoted\\\"\\n\"} 1\n");
+    }
+
+    @Test
+    public void test110HistogramBuckets() {
+        MetricsRegistry registry = new MetricsRegistry();
+        Histogram histogram = registry.histogram("test_duration_seconds", "Test durations.",
+                new double[] { 0.001, 0.01, 1 }, "operation");
+
+        Histogram.Child child = histogram.labels("op");
+        child.observeMillis(0.5);
+        child.observeMillis(1); // the bound is inclusive
+        child.observeMillis(5);
+        child.observeMillis(2000);
+
+        assertThat(child.getCount()).isEqualTo(4);
+
+        String text = registry.export();
+        displayValue("export", text);
+        assertThat(text).contains(
+                "# TYPE test_duration_seconds histogram\n"
+                        + "test_duration_seconds_bucket{operation=\"op\",le=\"0.001\"} 2\n"
+                        + "test_duration_seconds_bucket{operation=\"op\",le=\"0.01\"} 3\n"
+                        + "test_duration_seconds_bucket{operation=\"op\",le=\"1\"} 3\n"
+                        + "test_duration_seconds_bucket{operation=\"op\",le=\"+Inf\"} 4\n"
+                        + "test_duration_seconds_sum{operation=\"op\"} 2.0065\n"
+                        + "test_duration_seconds_count{operation=\"op\"} 4\n");
+    }
+
+    @Test
+    public void test120SeriesLimit() {
+        MetricsRegistry registry = new MetricsRegistry();
+        Counter counter = registry.counter("test_limited_total", "Test limited counter.", "value");
+
+        for (int i = 0; i < Metric.MAX_SERIES + 10; i++) {
+            counter.labels(String.valueOf(i)).inc();
+        }
+
+        assertThat(counter.labels("0").get()).isEqualTo(1);
+        assertThat(counter.labels("over-the-limit").get())
+                .as("overflow series")
+                .isEqualTo(10);
+        assertThat(registry.export())
+                .contains("test_limited_total{value=\"" + Metric.OVERFLOW_LABEL_VALUE + "\"} 10\n")
+                .doesNotContain("test_limited_total{value=\"" + Metric.MAX_SERIES + "\"}");
+    }
+
+    @Test
+    public void test130Collector() {
+        MetricsRegistry registry = new MetricsRegistry();
+        registry.registerCollector(writer -> {
+            writer.header("test_gauge", "Test gauge.", "gauge");
+            writer.sample("test_gauge", 42);
+        });
+
+        assertThat(registry.export())
+                .contains("# TYPE test_gauge gauge\ntest_gauge 42\n");
+    }
+}
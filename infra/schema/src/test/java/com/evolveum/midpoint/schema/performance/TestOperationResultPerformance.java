@@ -0,0 +1,103 @@
+/*
+ * Copyright (C) 2010-2022 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+package com.evolveum.midpoint.schema.performance;
+
+import static com.evolveum.midpoint.prism.util.PrismTestUtil.getPrismContext;
+
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.List;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+
+import com.evolveum.midpoint.schema.result.OperationResult;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.OperationResultHandlingStrategyType;
+
+/**
+ * Compares allocation rate of operation result handling with and without lightweight subresults,
+ * simulating item processing in a long-running task: each item gets a small tree of subresults with parameters.
+ */
+public class TestOperationResultPerformance extends AbstractSchemaPerformanceTest {
+
+    private static final String LIGHTWEIGHT = "lightweight";
+
+    private static final int WARM_UP_ITEMS = 20_000;
+    private static final int ITEMS = 200_000;
+    private static final int ITEMS_BETWEEN_SUMMARIZATION = 100;
+
+    @AfterMethod
+    public void resetHandlingStrategy() {
+        OperationResult.applyOperationResultHandlingStrategy(Collections.emptyList());
+        OperationResult.setThreadLocalHandlingStrategy(null);
+    }
+
+    @Test
+    public void test100FullResults() {
+        OperationResult.setThreadLocalHandlingStrategy(null);
+        measureAllocation("Full results");
+    }
+
+    @Test
+    public void test110LightweightResults() {
+        OperationResult.applyOperationResultHandlingStrategy(
+                List.of(
+                        new OperationResultHandlingStrategyType(getPrismContext())
+                                .name(LIGHTWEIGHT)
+                                .lightweightSubresultsDepth(1)));
+        OperationResult.setThreadLocalHandlingStrategy(LIGHTWEIGHT);
+        measureAllocation("Lightweight results");
+    }
+
+    private void measureAllocation(String label) {
+        processItems(WARM_UP_ITEMS);
+
+        long allocatedBefore = getAllocatedBytes();
+        long start = System.nanoTime();
+        processItems(ITEMS);
+        long nanos = System.nanoTime() - start;
+        long allocated = getAllocatedBytes() - allocatedBefore;
+
+        String message = String.format("%s: %,d bytes per item, %,.3f us per item, %,.1f MB/s",
+                label, allocated / ITEMS, nanos / 1000.0 / ITEMS, allocated / 1e6 / (nanos / 1e9));
+        System.out.println(message);
+        logger.info(message);
+    }
+
+    private void processItems(int items) {
+        OperationResult root = new OperationResult(TestOperationResultPerformance.class.getName() + ".run");
+        OperationResult bucket = root.createSubresult("bucket");
+        for (int i = 0; i < items; i++) {
+            OperationResult item = bucket.subresult("item")
+                    .addParam("number", i)
+                    .addParam("name", "item-" + i)
+                    .build();
+            for (int j = 0; j < 3; j++) {
+                OperationResult repoOp = item.subresult("repoOperation")
+                        .setMinor()
+                        .addParam("oid", "00000000-0000-0000-0000-" + j)
+                        .addContext("index", j)
+                        .build();
+                OperationResult cacheOp = repoOp.createMinorSubresult("cacheOperation");
+                cacheOp.addReturn("hit", j % 2 == 0);
+                cacheOp.recordSuccess();
+                repoOp.computeStatus();
+            }
+            item.computeStatus();
+            if (i % ITEMS_BETWEEN_SUMMARIZATION == 0) {
+                bucket.summarize();
+            }
+        }
+        bucket.computeStatus();
+        root.computeStatus();
+    }
+
+    private long getAllocatedBytes() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean())
+                .getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+}
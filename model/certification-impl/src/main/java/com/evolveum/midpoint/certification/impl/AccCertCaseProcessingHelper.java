@@ -0,0 +1,320 @@
+/*
+ * Copyright (C) 2010-2022 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+
+package com.evolveum.midpoint.certification.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jetbrains.annotations.NotNull;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.security.core.Authentication;
+import org.springframework.stereotype.Component;
+
+import com.evolveum.midpoint.model.common.SystemObjectCache;
+import com.evolveum.midpoint.prism.PrismObject;
+import com.evolveum.midpoint.schema.result.OperationResult;
+import com.evolveum.midpoint.security.api.SecurityContextManager;
+import com.evolveum.midpoint.task.api.RunningTask;
+import com.evolveum.midpoint.task.api.Task;
+import com.evolveum.midpoint.task.api.TaskManager;
+import com.evolveum.midpoint.util.exception.CommonException;
+import com.evolveum.midpoint.util.exception.ObjectNotFoundException;
+import com.evolveum.midpoint.util.exception.SchemaException;
+import com.evolveum.midpoint.util.exception.SystemException;
+import com.evolveum.midpoint.util.logging.LoggingUtils;
+import com.evolveum.midpoint.util.logging.Trace;
+import com.evolveum.midpoint.util.logging.TraceManager;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.AccessCertificationCampaignType;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.AccessCertificationCaseProcessingType;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.AccessCertificationConfigurationType;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.SystemConfigurationType;
+
+/**
+ * Supports processing of large number of certification cases: divides the objects (or cases) into buckets
+ * that are processed by worker threads, and determines the size of campaign modification batches.
+ *
+ * The buckets and worker threads are local to the current operation (e.g. opening of a stage): they are not
+ * activity buckets and workers, as campaign operations are not run as activities. Hence they are not persisted,
+ * not distributed among nodes, and the operation cannot be resumed after a failure.
+ *
+ * See {@link AccessCertificationCaseProcessingType}.
+ */
+@Component
+public class AccCertCaseProcessingHelper {
+
+    private static final Trace LOGGER = TraceManager.getTrace(AccCertCaseProcessingHelper.class);
+
+    private static final int DEFAULT_BUCKET_SIZE = 100;
+
+    @Autowired private SystemObjectCache systemObjectCache;
+    @Autowired private SecurityContextManager securityContextManager;
+    @Autowired private TaskManager taskManager;
+
+    @NotNull AccessCertificationCaseProcessingType getConfiguration(OperationResult result) {
+        try {
+            PrismObject<SystemConfigurationType> systemConfiguration = systemObjectCache.getSystemConfiguration(result);
+            AccessCertificationConfigurationType certConfiguration =
+                    systemConfiguration != null ? systemConfiguration.asObjectable().getAccessCertification() : null;
+            if (certConfiguration != null && certConfiguration.getCaseProcessing() != null) {
+                return certConfiguration.getCaseProcessing();
+            }
+        } catch (SchemaException e) {
+            LoggingUtils.logUnexpectedException(LOGGER, "Couldn't get certification case processing configuration, "
+                    + "using the defaults", e);
+        }
+        return new AccessCertificationCaseProcessingType();
+    }
+
+    @NotNull ModificationsToExecute createModifications(@NotNull AccessCertificationCaseProcessingType configuration) {
+        Integer batchSize = configuration.getModificationBatchSize();
+        return new ModificationsToExecute(batchSize != null ? batchSize : ModificationsToExecute.DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * Starts bucketed processing of items in given campaign. The caller adds the items one by one and then collects
+     * the results by {@link BucketedExecution#finish()}. The execution has to be closed afterwards.
+     */
+    <I, R> BucketedExecution<I, R> startExecution(@NotNull String operation,
+            @NotNull AccessCertificationCaseProcessingType configuration,
+            @NotNull AccessCertificationCampaignType campaign, @NotNull BucketProcessor<I, R> processor,
+            @NotNull Task task, @NotNull OperationResult result) {
+        int threads = configuration.getWorkerThreads() != null ? configuration.getWorkerThreads() : 0;
+        int bucketSize = configuration.getBucketSize() != null && configuration.getBucketSize() > 0
+                ? configuration.getBucketSize() : DEFAULT_BUCKET_SIZE;
+        return new BucketedExecution<>(operation, threads, bucketSize, campaign, processor, task, result);
+    }
+
+    /**
+     * Processes a bucket of items, returning a result for the whole bucket.
+     * The campaign, the task and the result are the caller's ones or (in worker threads) the worker's own ones.
+     */
+    @FunctionalInterface
+    interface BucketProcessor<I, R> {
+        R process(List<I> bucket, AccessCertificationCampaignType campaign, Task task, OperationResult result)
+                throws CommonException;
+    }
+
+    /**
+     * Single bucketed processing. Buckets are processed either in the caller's thread (no worker threads configured)
+     * or in a pool of worker threads; the results are returned in the order in which the buckets were created.
+     *
+     * Worker threads run under the authentication of the caller. As tasks and operation results are not thread-safe,
+     * each worker thread has its own task (with the owner and the channel of the caller's task), and each bucket
+     * processed by a worker has its own operation result. Progress is reported on the caller's task, in the caller's
+     * thread, as the buckets are completed.
+     *
+     * The campaign is provided e.g. to the expressions as a variable, and nothing prevents them from modifying it.
+     * So each worker thread gets its own clone of it.
+     */
+    class BucketedExecution<I, R> implements AutoCloseable {
+
+        @NotNull private final String operation;
+        private final int bucketSize;
+        @NotNull private final AccessCertificationCampaignType campaign;
+        @NotNull private final BucketProcessor<I, R> processor;
+        @NotNull private final Task task;
+        @NotNull private final OperationResult result;
+
+        private final ExecutorService executor;
+        private final Authentication authentication;
+        private final ThreadLocal<Task> workerTask = ThreadLocal.withInitial(this::createWorkerTask);
+        private final ThreadLocal<AccessCertificationCampaignType> workerCampaign = ThreadLocal.withInitial(this::cloneCampaign);
+
+        private final List<Future<R>> futures = new ArrayList<>();
+        private final List<Integer> bucketSizes = new ArrayList<>();
+        private final List<R> inlineResults = new ArrayList<>();
+        private int reportedBuckets;
+        private int processedItems;
+        private final List<OperationResult> failedWorkerResults = new CopyOnWriteArrayList<>();
+
+        private List<I> currentBucket = new ArrayList<>();
+        private final long started = System.currentTimeMillis();
+
+        private BucketedExecution(@NotNull String operation, int threads, int bucketSize,
+                @NotNull AccessCertificationCampaignType campaign, @NotNull BucketProcessor<I, R> processor,
+                @NotNull Task task, @NotNull OperationResult result) {
+            this.operation = operation;
+            this.bucketSize = bucketSize;
+            this.campaign = campaign;
+            this.processor = processor;
+            this.task = task;
+            this.result = result;
+            if (threads > 0) {
+                AtomicInteger threadNumber = new AtomicInteger();
+                // Caller runs the bucket if the workers are behind, so the items are not read much ahead of processing.
+                this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                        new ArrayBlockingQueue<>(threads * 2),
+                        r -> {
+                            Thread thread = new Thread(r, "cert-case-worker-" + threadNumber.incrementAndGet());
+                            thread.setDaemon(true);
+                            return thread;
+                        },
+                        new ThreadPoolExecutor.CallerRunsPolicy());
+                this.authentication = securityContextManager.getAuthentication();
+            } else {
+                this.executor = null;
+                this.authentication = null;
+            }
+        }
+
+        void add(I item) throws SchemaException, ObjectNotFoundException {
+            currentBucket.add(item);
+            if (currentBucket.size() >= bucketSize) {
+                submitCurrentBucket();
+            }
+        }
+
+        void addAll(List<I> items) throws SchemaException, ObjectNotFoundException {
+            for (I item : items) {
+                add(item);
+            }
+        }
+
+        private void submitCurrentBucket() throws SchemaException, ObjectNotFoundException {
+            if (currentBucket.isEmpty()) {
+                return;
+            }
+            List<I> bucket = currentBucket;
+            currentBucket = new ArrayList<>();
+            if (executor == null) {
+                try {
+                    inlineResults.add(processor.process(bucket, campaign, task, result));
+                } catch (CommonException e) {
+                    throw processException(e);
+                }
+                recordProgress(bucket.size());
+            } else {
+                futures.add(executor.submit(() -> processInWorker(bucket)));
+                bucketSizes.add(bucket.size());
+                reportCompletedBuckets();
+            }
+        }
+
+        private R processInWorker(List<I> bucket) throws CommonException {
+            Authentication previous = securityContextManager.getAuthentication();
+            securityContextManager.setupPreAuthenticatedSecurityContext(authentication);
+            OperationResult workerResult = new OperationResult(operation);
+            try {
+                return processor.process(bucket, workerCampaign.get(), workerTask.get(), workerResult);
+            } catch (CommonException | RuntimeException e) {
+                workerResult.recordFatalError(e);
+                throw e;
+            } finally {
+                workerResult.computeStatusIfUnknown();
+                if (!workerResult.isSuccess()) {
+                    failedWorkerResults.add(workerResult); // the parent result is not thread-safe
+                }
+                securityContextManager.setupPreAuthenticatedSecurityContext(previous);
+            }
+        }
+
+        private Task createWorkerTask() {
+            Task worker = taskManager.createTaskInstance(operation);
+            worker.setOwnerRef(task.getOwnerRef());
+            worker.setChannel(task.getChannel());
+            worker.setExecutionEnvironment(task.getExecutionEnvironment());
+            return worker;
+        }
+
+        private AccessCertificationCampaignType cloneCampaign() {
+            return campaign.clone();
+        }
+
+        /** Reports progress of the buckets completed so far, keeping the order of the buckets. */
+        private void reportCompletedBuckets() throws SchemaException, ObjectNotFoundException {
+            while (reportedBuckets < futures.size() && futures.get(reportedBuckets).isDone()) {
+                reportBucket(reportedBuckets);
+            }
+        }
+
+        private void reportBucket(int index) throws SchemaException, ObjectNotFoundException {
+            assert index == reportedBuckets;
+            reportedBuckets++;
+            recordProgress(bucketSizes.get(index));
+        }
+
+        /** Called in the caller's thread only. */
+        private void recordProgress(int items) throws SchemaException, ObjectNotFoundException {
+            for (int i = 0; i < items; i++) {
+                if (task instanceof RunningTask) {
+                    ((RunningTask) task).incrementLegacyProgressAndStoreStatisticsIfTimePassed(result);
+                } else {
+                    task.incrementLegacyProgressTransient();
+                }
+            }
+            processedItems += items;
+            LOGGER.debug("{}: processed {} items in {} ms", operation, processedItems, System.currentTimeMillis() - started);
+        }
+
+        /** Processes the remaining items and returns the results of all the buckets. */
+        List<R> finish() throws SchemaException, ObjectNotFoundException {
+            submitCurrentBucket();
+            List<R> results;
+            if (executor == null) {
+                results = inlineResults;
+            } else {
+                results = new ArrayList<>(futures.size());
+                try {
+                    for (int i = 0; i < futures.size(); i++) {
+                        results.add(getBucketResult(futures.get(i)));
+                        if (i == reportedBuckets) {
+                            reportBucket(i);
+                        }
+                    }
+                } finally {
+                    failedWorkerResults.forEach(result::addSubresult);
+                }
+            }
+            LOGGER.debug("{}: finished processing of {} items in {} buckets in {} ms", operation,
+                    processedItems, results.size(), System.currentTimeMillis() - started);
+            return results;
+        }
+
+        private R getBucketResult(Future<R> future) throws SchemaException, ObjectNotFoundException {
+            try {
+                return future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new SystemException("Interrupted while waiting for processing of certification cases", e);
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof CommonException) {
+                    throw processException((CommonException) cause);
+                } else if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                } else if (cause instanceof Error) {
+                    throw (Error) cause;
+                } else {
+                    throw new SystemException(cause);
+                }
+            }
+        }
+
+        /** Throws the expected exceptions, wraps the others. */
+        private SystemException processException(CommonException e) throws SchemaException, ObjectNotFoundException {
+            if (e instanceof SchemaException) {
+                throw (SchemaException) e;
+            } else if (e instanceof ObjectNotFoundException) {
+                throw (ObjectNotFoundException) e;
+            } else {
+                return new SystemException(e.getMessage(), e);
+            }
+        }
+
+        @Override
+        public void close() {
+            if (executor != null) {
+                executor.shutdownNow();
+                workerTask.remove(); // in case the caller ran some buckets itself
+                workerCampaign.remove();
+            }
+        }
+    }
+}
@@ -66,11 +66,13 @@ public class AccCertCloserHelper {
     @Autowired private Clock clock;
     @Autowired private AccCertResponseComputationHelper computationHelper;
     @Autowired private AccCertUpdateHelper updateHelper;
+    @Autowired private AccCertCaseProcessingHelper caseProcessingHelper;
 
     private static final String CLASS_DOT = AccCertCloserHelper.class.getName() + ".";
     private static final String OPERATION_DELETE_OBSOLETE_CAMPAIGN = CLASS_DOT + "deleteObsoleteCampaign";
     private static final String OPERATION_CLEANUP_CAMPAIGNS_BY_NUMBER = CLASS_DOT + "cleanupCampaignsByNumber";
     private static final String OPERATION_CLEANUP_CAMPAIGNS_BY_AGE = CLASS_DOT + "cleanupCampaignsByAge";
+    private static final String OPERATION_UPDATE_CASES_ON_STAGE_CLOSE = CLASS_DOT + "updateCasesOnStageClose";
 
     void closeCampaign(AccessCertificationCampaignType campaign, Task task, OperationResult result)
             throws ObjectAlreadyExistsException, ObjectNotFoundException, SchemaException {
@@ -78,7 +80,8 @@ public class AccCertCloserHelper {
         XMLGregorianCalendar now = clock.currentTimeXMLGregorianCalendar();
         int lastStageNumber = CertCampaignTypeUtil.getNumberOfStages(campaign);
         // TODO issue a warning if we are not in a correct state
-        ModificationsToExecute modifications = new ModificationsToExecute();
+        ModificationsToExecute modifications =
+                caseProcessingHelper.createModifications(caseProcessingHelper.getConfiguration(result));
         modifications.add(updateHelper.createStageNumberDelta(lastStageNumber + 1));
         modifications.add(updateHelper.createStateDelta(CLOSED));
         modifications.add(updateHelper.createTriggerReplaceDelta(createTriggersForCampaignClose(campaign, result)));
@@ -141,17 +144,18 @@ public class AccCertCloserHelper {
 
     void closeStage(AccessCertificationCampaignType campaign, Task task, OperationResult result)
             throws SchemaException, ObjectNotFoundException, ObjectAlreadyExistsException {
-        ModificationsToExecute modifications = getDeltasForStageClose(campaign, result);
+        ModificationsToExecute modifications = getDeltasForStageClose(campaign, task, result);
         updateHelper.modifyCampaignPreAuthorized(campaign.getOid(), modifications, task, result);
         afterStageClose(campaign.getOid(), task, result);
     }
 
-    private ModificationsToExecute getDeltasForStageClose(AccessCertificationCampaignType campaign, OperationResult result)
-            throws SchemaException {
+    private ModificationsToExecute getDeltasForStageClose(AccessCertificationCampaignType campaign, Task task,
+            OperationResult result) throws SchemaException, ObjectNotFoundException {
         XMLGregorianCalendar now = clock.currentTimeXMLGregorianCalendar();
-        ModificationsToExecute rv = new ModificationsToExecute();
+        AccessCertificationCaseProcessingType processingConfig = caseProcessingHelper.getConfiguration(result);
+        ModificationsToExecute rv = caseProcessingHelper.createModifications(processingConfig);
         List<AccessCertificationResponseType> outcomesToStopOn = computationHelper.getOutcomesToStopOn(campaign);
-        createCaseDeltasOnStageClose(campaign, rv, now, outcomesToStopOn, result);
+        createCaseDeltasOnStageClose(campaign, processingConfig, rv, now, outcomesToStopOn, task, result);
         rv.createNewBatch();
         createWorkItemsCloseDeltas(campaign, rv, now, result);
         rv.createNewBatch();
@@ -161,14 +165,35 @@ public class AccCertCloserHelper {
         return rv;
     }
 
-    // computes cases outcomes (stage-level and overall) at stage close and creates appropriate deltas
+    /**
+     * Computes cases outcomes (stage-level and overall) at stage close and creates appropriate deltas.
+     *
+     * Cases are processed in buckets, possibly by worker threads (see {@link AccCertCaseProcessingHelper}).
+     */
     private void createCaseDeltasOnStageClose(AccessCertificationCampaignType campaign,
-            ModificationsToExecute modifications, XMLGregorianCalendar now,
-            List<AccessCertificationResponseType> outcomesToStopOn,
-            OperationResult result) throws SchemaException {
+            AccessCertificationCaseProcessingType processingConfig, ModificationsToExecute modifications,
+            XMLGregorianCalendar now, List<AccessCertificationResponseType> outcomesToStopOn,
+            Task task, OperationResult result) throws SchemaException, ObjectNotFoundException {
         LOGGER.debug("Updating current outcome for cases in {}", toShortStringLazy(campaign));
         List<AccessCertificationCaseType> caseList = queryHelper.getAllCurrentIterationCases(campaign.getOid(), norm(campaign.getIteration()), null, result);
-        for (AccessCertificationCaseType aCase : caseList) {
+        List<List<ItemDelta<?, ?>>> caseDeltasList = new ArrayList<>();
+        try (AccCertCaseProcessingHelper.BucketedExecution<AccessCertificationCaseType, List<List<ItemDelta<?, ?>>>> execution =
+                caseProcessingHelper.startExecution(OPERATION_UPDATE_CASES_ON_STAGE_CLOSE, processingConfig, campaign,
+                        (cases, workerCampaign, workerTask, workerResult) ->
+                                createCaseDeltasOnStageClose(cases, workerCampaign, now, outcomesToStopOn),
+                        task, result)) {
+            execution.addAll(caseList);
+            execution.finish().forEach(caseDeltasList::addAll);
+        }
+        caseDeltasList.forEach(modifications::add);
+    }
+
+    /** Creates deltas for a bucket of cases, one list of deltas for each case. Can run in a worker thread. */
+    private List<List<ItemDelta<?, ?>>> createCaseDeltasOnStageClose(List<AccessCertificationCaseType> cases,
+            AccessCertificationCampaignType campaign, XMLGregorianCalendar now,
+            List<AccessCertificationResponseType> outcomesToStopOn) throws SchemaException {
+        List<List<ItemDelta<?, ?>>> rv = new ArrayList<>();
+        for (AccessCertificationCaseType aCase : cases) {
             long caseId = aCase.getId();
             if (aCase.getReviewFinishedTimestamp() != null) {
                 LOGGER.trace("Review process of case {} has already finished, skipping to the next one", caseId);
@@ -196,8 +221,9 @@ public class AccCertCloserHelper {
                         .asItemDelta());
                 LOGGER.debug("Marking case {} as review-finished because stage outcome = {}", caseId, newStageOutcome);
             }
-            modifications.add(deltas);
+            rv.add(deltas);
         }
+        return rv;
     }
 
     private ItemDelta createStageEndTimeDelta(AccessCertificationCampaignType campaign, XMLGregorianCalendar now) throws SchemaException {
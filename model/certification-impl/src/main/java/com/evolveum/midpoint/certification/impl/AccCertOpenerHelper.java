@@ -74,6 +74,10 @@ public class AccCertOpenerHelper {
 
     private static final Trace LOGGER = TraceManager.getTrace(AccCertOpenerHelper.class);
 
+    private static final String CLASS_DOT = AccCertOpenerHelper.class.getName() + ".";
+    private static final String OP_CREATE_CASES = CLASS_DOT + "createCases";
+    private static final String OP_UPDATE_CASES = CLASS_DOT + "updateCases";
+
     @Autowired private AccCertReviewersHelper reviewersHelper;
     @Autowired private AccCertEventHelper eventHelper;
     @Autowired private PrismContext prismContext;
@@ -83,6 +87,7 @@ public class AccCertOpenerHelper {
     @Autowired private Clock clock;
     @Autowired private AccCertResponseComputationHelper computationHelper;
     @Autowired private AccCertUpdateHelper updateHelper;
+    @Autowired private AccCertCaseProcessingHelper caseProcessingHelper;
     @Autowired
     @Qualifier("cacheRepositoryService")
     private RepositoryService repositoryService;
@@ -209,11 +214,17 @@ public class AccCertOpenerHelper {
 
     //region ================================ Stage open ================================
 
-    private class OpeningContext {
+    private static class OpeningContext {
         int casesEnteringStage;
         int workItemsCreated;
     }
 
+    /** Deltas for cases entering the stage, computed for a single bucket of cases. */
+    private static class CaseUpdates {
+        final List<List<ItemDelta<?, ?>>> caseDeltas = new ArrayList<>();
+        int workItemsCreated;
+    }
+
     void openNextStage(AccessCertificationCampaignType campaign, CertificationHandler handler, Task task,
             OperationResult result) throws SchemaException, ObjectNotFoundException, ObjectAlreadyExistsException {
         boolean skipEmptyStages = norm(campaign.getIteration()) > 1;        // TODO make configurable
@@ -223,7 +234,8 @@ public class AccCertOpenerHelper {
             AccessCertificationStageType stage = createStage(campaign, requestedStageNumber);
             ModificationsToExecute modifications = getDeltasForStageOpen(campaign, stage, handler, openingContext, task, result);
             if (!skipEmptyStages || openingContext.casesEnteringStage > 0) {
-                updateHelper.modifyCampaignPreAuthorized(campaign.getOid(), modifications, task, result);
+                // Cases (and their work items) are added in batches of their own, so they can be inserted in JDBC batches.
+                updateHelper.modifyCampaignPreAuthorized(campaign.getOid(), modifications, true, task, result);
                 afterStageOpen(campaign.getOid(), stage, task, result);       // notifications, bookkeeping, ...
                 return;
             }
@@ -247,11 +259,12 @@ public class AccCertOpenerHelper {
         LOGGER.trace("getDeltasForStageOpen starting; campaign = {}, stage number = {}, new stage number = {}, iteration = {}",
                 ObjectTypeUtil.toShortStringLazy(campaign), stageNumber, newStageNumber, norm(campaign.getIteration()));
 
-        ModificationsToExecute rv = new ModificationsToExecute();
+        AccessCertificationCaseProcessingType processingConfig = caseProcessingHelper.getConfiguration(result);
+        ModificationsToExecute rv = caseProcessingHelper.createModifications(processingConfig);
         if (stageNumber == 0 && norm(campaign.getIteration()) == 1) {
-            getDeltasToCreateCases(campaign, stage, handler, rv, openingContext, task, result);
+            getDeltasToCreateCases(campaign, stage, handler, processingConfig, rv, openingContext, task, result);
         } else {
-            getDeltasToUpdateCases(campaign, stage, rv, openingContext, task, result);
+            getDeltasToUpdateCases(campaign, stage, processingConfig, rv, openingContext, task, result);
         }
         rv.createNewBatch();
         rv.add(createStageAddDelta(stage));
@@ -270,11 +283,13 @@ public class AccCertOpenerHelper {
 
     /**
      *  Creates certification cases (in the form of delta list) on first stage opening.
+     *
+     *  Objects in scope are processed in buckets, possibly by worker threads (see {@link AccCertCaseProcessingHelper}).
      */
     private <F extends FocusType> void getDeltasToCreateCases(AccessCertificationCampaignType campaign,
-            AccessCertificationStageType stage,
-            CertificationHandler handler, ModificationsToExecute modifications, OpeningContext openingContext, Task task,
-            OperationResult result) throws SchemaException, ObjectNotFoundException {
+            AccessCertificationStageType stage, CertificationHandler handler,
+            AccessCertificationCaseProcessingType processingConfig, ModificationsToExecute modifications,
+            OpeningContext openingContext, Task task, OperationResult result) throws SchemaException, ObjectNotFoundException {
         String campaignShortName = toShortString(campaign);
 
         AccessCertificationScopeType scope = campaign.getScopeDefinition();
@@ -288,44 +303,38 @@ public class AccCertOpenerHelper {
 
         TypedObjectQuery<F> typedQuery = prepareObjectQuery(objectBasedScope, handler, campaignShortName);
 
-        List<AccessCertificationCaseType> caseList = new ArrayList<>();
-
-        // create certification cases by executing the query and caseExpression on its results
-        // here the subclasses of this class come into play
-        repositoryService.searchObjectsIterative(typedQuery.getObjectClass(), typedQuery.getObjectQuery(),
-                (object, parentResult) -> {
-                    try {
-                        caseList.addAll(handler.createCasesForObject(object, campaign, task, parentResult));
-                    } catch (CommonException | RuntimeException e) {
-                        // TODO process the exception more intelligently
-                        throw new SystemException("Cannot create certification case for object " + toShortString(object.asObjectable()) + ": " + e.getMessage(), e);
-                    }
-                    return true;
-                }, null, true, result);
-
         AccessCertificationReviewerSpecificationType reviewerSpec =
                 reviewersHelper.findReviewersSpecification(campaign, 1);
 
         assert norm(campaign.getIteration()) == 1;
 
-        for (AccessCertificationCaseType acase : caseList) {
-            ContainerDelta<AccessCertificationCaseType> caseDelta = prismContext.deltaFactory().container().createDelta(F_CASE,
-                    AccessCertificationCampaignType.class);
-            acase.setIteration(1);
-            acase.setStageNumber(1);
-            acase.setCurrentStageCreateTimestamp(stage.getStartTimestamp());
-            acase.setCurrentStageDeadline(stage.getDeadline());
+        List<AccessCertificationCaseType> caseList = new ArrayList<>();
 
-            List<ObjectReferenceType> reviewers = reviewersHelper.getReviewersForCase(acase, campaign, reviewerSpec, task, result);
-            acase.getWorkItem().addAll(createWorkItems(reviewers, 1, 1, acase));
+        // create certification cases by executing the query and caseExpression on its results
+        // here the subclasses of this class come into play
+        try (AccCertCaseProcessingHelper.BucketedExecution<PrismObject<F>, List<AccessCertificationCaseType>> execution =
+                caseProcessingHelper.startExecution(OP_CREATE_CASES, processingConfig, campaign,
+                        (objects, workerCampaign, workerTask, workerResult) ->
+                                createCases(objects, workerCampaign, stage, handler, reviewerSpec, workerTask, workerResult),
+                        task, result)) {
+            repositoryService.searchObjectsIterative(typedQuery.getObjectClass(), typedQuery.getObjectQuery(),
+                    (object, parentResult) -> {
+                        try {
+                            execution.add(object);
+                        } catch (SchemaException | ObjectNotFoundException e) {
+                            throw new SystemException("Cannot create certification case for object " + toShortString(object.asObjectable()) + ": " + e.getMessage(), e);
+                        }
+                        return true;
+                    }, null, true, result);
+            execution.finish().forEach(caseList::addAll);
+        }
 
+        for (AccessCertificationCaseType acase : caseList) {
             openingContext.workItemsCreated += acase.getWorkItem().size();
             openingContext.casesEnteringStage++;
 
-            AccessCertificationResponseType currentStageOutcome = computationHelper.computeOutcomeForStage(acase, campaign, 1);
-            acase.setCurrentStageOutcome(toUri(currentStageOutcome));
-            acase.setOutcome(toUri(computationHelper.computeOverallOutcome(acase, campaign, 1, currentStageOutcome)));
-
+            ContainerDelta<AccessCertificationCaseType> caseDelta = prismContext.deltaFactory().container().createDelta(F_CASE,
+                    AccessCertificationCampaignType.class);
             @SuppressWarnings({ "raw", "unchecked" })
             PrismContainerValue<AccessCertificationCaseType> caseCVal = acase.asPrismContainerValue();
             caseDelta.addValueToAdd(caseCVal);
@@ -338,6 +347,38 @@ public class AccCertOpenerHelper {
                 openingContext.workItemsCreated, campaignShortName);
     }
 
+    /** Creates fully prepared cases (with work items and outcomes) for a bucket of objects. Can run in a worker thread. */
+    private <F extends FocusType> List<AccessCertificationCaseType> createCases(List<PrismObject<F>> objects,
+            AccessCertificationCampaignType campaign, AccessCertificationStageType stage, CertificationHandler handler,
+            AccessCertificationReviewerSpecificationType reviewerSpec, Task task, OperationResult result)
+            throws SchemaException, ObjectNotFoundException {
+        List<AccessCertificationCaseType> cases = new ArrayList<>();
+        for (PrismObject<F> object : objects) {
+            Collection<? extends AccessCertificationCaseType> objectCases;
+            try {
+                objectCases = handler.createCasesForObject(object, campaign, task, result);
+            } catch (CommonException | RuntimeException e) {
+                // TODO process the exception more intelligently
+                throw new SystemException("Cannot create certification case for object " + toShortString(object.asObjectable()) + ": " + e.getMessage(), e);
+            }
+            for (AccessCertificationCaseType acase : objectCases) {
+                acase.setIteration(1);
+                acase.setStageNumber(1);
+                acase.setCurrentStageCreateTimestamp(stage.getStartTimestamp());
+                acase.setCurrentStageDeadline(stage.getDeadline());
+
+                List<ObjectReferenceType> reviewers = reviewersHelper.getReviewersForCase(acase, campaign, reviewerSpec, task, result);
+                acase.getWorkItem().addAll(createWorkItems(reviewers, 1, 1, acase));
+
+                AccessCertificationResponseType currentStageOutcome = computationHelper.computeOutcomeForStage(acase, campaign, 1);
+                acase.setCurrentStageOutcome(toUri(currentStageOutcome));
+                acase.setOutcome(toUri(computationHelper.computeOverallOutcome(acase, campaign, 1, currentStageOutcome)));
+                cases.add(acase);
+            }
+        }
+        return cases;
+    }
+
     // create a query to find target objects from which certification cases will be created
     @NotNull
     private <F extends FocusType> TypedObjectQuery<F> prepareObjectQuery(AccessCertificationObjectBasedScopeType objectBasedScope,
@@ -418,8 +459,8 @@ public class AccCertOpenerHelper {
      * Deltas to advance cases to next stage when opening it.
      */
     private void getDeltasToUpdateCases(AccessCertificationCampaignType campaign, AccessCertificationStageType stage,
-            ModificationsToExecute modifications, OpeningContext openingContext,
-            Task task, OperationResult result) throws SchemaException, ObjectNotFoundException {
+            AccessCertificationCaseProcessingType processingConfig, ModificationsToExecute modifications,
+            OpeningContext openingContext, Task task, OperationResult result) throws SchemaException, ObjectNotFoundException {
 
         int stageToBe = stage.getNumber();
         int iteration = norm(campaign.getIteration());
@@ -431,7 +472,34 @@ public class AccCertOpenerHelper {
                 reviewersHelper.findReviewersSpecification(campaign, stageToBe);
 
         LOGGER.trace("cases: {}, reviewerSpec: {}", caseList.size(), reviewerSpec);
-        for (AccessCertificationCaseType aCase : caseList) {
+        List<CaseUpdates> updatesList;
+        try (AccCertCaseProcessingHelper.BucketedExecution<AccessCertificationCaseType, CaseUpdates> execution =
+                caseProcessingHelper.startExecution(OP_UPDATE_CASES, processingConfig, campaign,
+                        (cases, workerCampaign, workerTask, workerResult) ->
+                                createCaseUpdates(cases, workerCampaign, stage, reviewerSpec, workerTask, workerResult),
+                        task, result)) {
+            execution.addAll(caseList);
+            updatesList = execution.finish();
+        }
+        for (CaseUpdates updates : updatesList) {
+            updates.caseDeltas.forEach(modifications::add);
+            openingContext.casesEnteringStage += updates.caseDeltas.size();
+            openingContext.workItemsCreated += updates.workItemsCreated;
+        }
+
+        LOGGER.debug("Created {} deltas (in {} batches) to advance {} out of {} cases for campaign {}; work items created: {}",
+                modifications.getTotalDeltasCount(), modifications.batches.size(), openingContext.casesEnteringStage,
+                caseList.size(), toShortString(campaign), openingContext.workItemsCreated);
+    }
+
+    /** Computes deltas for a bucket of cases entering the stage. Can run in a worker thread. */
+    private CaseUpdates createCaseUpdates(List<AccessCertificationCaseType> cases, AccessCertificationCampaignType campaign,
+            AccessCertificationStageType stage, AccessCertificationReviewerSpecificationType reviewerSpec,
+            Task task, OperationResult result) throws SchemaException, ObjectNotFoundException {
+        int stageToBe = stage.getNumber();
+        int iteration = norm(campaign.getIteration());
+        CaseUpdates updates = new CaseUpdates();
+        for (AccessCertificationCaseType aCase : cases) {
             LOGGER.trace("----------------------------------------------------------------------------------------");
             LOGGER.trace("Considering case: {}", aCase);
             Long caseId = aCase.asPrismContainerValue().getId();
@@ -449,8 +517,7 @@ public class AccCertOpenerHelper {
 
             List<ObjectReferenceType> reviewers = reviewersHelper.getReviewersForCase(aCase, campaign, reviewerSpec, task, result);
             List<AccessCertificationWorkItemType> workItems = createWorkItems(reviewers, stageToBe, iteration, aCase);
-            openingContext.workItemsCreated += workItems.size();
-            openingContext.casesEnteringStage++;
+            updates.workItemsCreated += workItems.size();
             aCase.getWorkItem().addAll(CloneUtil.cloneCollectionMembers(workItems));
             AccessCertificationResponseType currentStageOutcome = computationHelper.computeOutcomeForStage(aCase, campaign, stageToBe);
             AccessCertificationResponseType overallOutcome = computationHelper.computeOverallOutcome(aCase, campaign, stageToBe, currentStageOutcome);
@@ -458,7 +525,7 @@ public class AccCertOpenerHelper {
                 LOGGER.trace("Computed: reviewers: {}, workItems: {}, currentStageOutcome: {}, overallOutcome: {}",
                         PrettyPrinter.prettyPrint(reviewers), workItems.size(), currentStageOutcome, overallOutcome);
             }
-            modifications.add(prismContext.deltaFor(AccessCertificationCampaignType.class)
+            updates.caseDeltas.add(prismContext.deltaFor(AccessCertificationCampaignType.class)
                     .item(F_CASE, caseId, F_WORK_ITEM).add(PrismContainerValue.toPcvList(workItems))
                     .item(F_CASE, caseId, F_CURRENT_STAGE_CREATE_TIMESTAMP).replace(stage.getStartTimestamp())
                     .item(F_CASE, caseId, F_CURRENT_STAGE_DEADLINE).replace(stage.getDeadline())
@@ -468,10 +535,7 @@ public class AccCertOpenerHelper {
                     .item(F_CASE, caseId, F_ITERATION).replace(iteration)
                     .asItemDeltas());
         }
-
-        LOGGER.debug("Created {} deltas (in {} batches) to advance {} out of {} cases for campaign {}; work items created: {}",
-                modifications.getTotalDeltasCount(), modifications.batches.size(), openingContext.casesEnteringStage,
-                caseList.size(), toShortString(campaign), openingContext.workItemsCreated);
+        return updates;
     }
 
     // some bureaucracy... stage#, state, start time, triggers
@@ -594,7 +658,8 @@ public class AccCertOpenerHelper {
             throw new IllegalStateException("Campaign cannot be reiterated: maximum number of iterations ("
                 + campaign.getReiterationDefinition().getLimit() + ") was reached.");
         }
-        ModificationsToExecute modifications = new ModificationsToExecute();
+        ModificationsToExecute modifications =
+                caseProcessingHelper.createModifications(caseProcessingHelper.getConfiguration(result));
         modifications.add(updateHelper.createStageNumberDelta(0));
         modifications.add(updateHelper.createStateDelta(CREATED));
         modifications.add(updateHelper.createTriggerDeleteDelta());
@@ -161,19 +161,39 @@ public class AccCertUpdateHelper {
 
     void modifyCampaignPreAuthorized(String campaignOid, ModificationsToExecute modifications, Task task, OperationResult result)
             throws ObjectAlreadyExistsException, SchemaException, ObjectNotFoundException {
+        modifyCampaignPreAuthorized(campaignOid, modifications, false, task, result);
+    }
+
+    /**
+     * Applies the modifications batch by batch. If `batchCaseInserts` is set, the repository may insert the rows
+     * of cases (and their work items) added by a batch using JDBC batches.
+     */
+    void modifyCampaignPreAuthorized(String campaignOid, ModificationsToExecute modifications, boolean batchCaseInserts,
+            Task task, OperationResult result)
+            throws ObjectAlreadyExistsException, SchemaException, ObjectNotFoundException {
+        ModelExecuteOptions options = ModelExecuteOptions.create(prismContext).raw().preAuthorized();
+        if (batchCaseInserts) {
+            options.batchContainerInserts();
+        }
         for (List<ItemDelta<?, ?>> batch : modifications.batches) {
             if (!batch.isEmpty()) {
                 LOGGER.trace("Applying {} changes to campaign {}", batch.size(), campaignOid);
-                modifyObjectPreAuthorized(AccessCertificationCampaignType.class, campaignOid, batch, task, result);
+                modifyObjectPreAuthorized(AccessCertificationCampaignType.class, campaignOid, batch, options, task, result);
             }
         }
     }
 
     <T extends ObjectType> void modifyObjectPreAuthorized(Class<T> objectClass, String oid, Collection<ItemDelta<?,?>> itemDeltas, Task task, OperationResult result) throws ObjectAlreadyExistsException, SchemaException, ObjectNotFoundException {
+        modifyObjectPreAuthorized(objectClass, oid, itemDeltas,
+                ModelExecuteOptions.create(prismContext).raw().preAuthorized(), task, result);
+    }
+
+    private <T extends ObjectType> void modifyObjectPreAuthorized(Class<T> objectClass, String oid,
+            Collection<ItemDelta<?,?>> itemDeltas, ModelExecuteOptions options, Task task, OperationResult result)
+            throws ObjectAlreadyExistsException, SchemaException, ObjectNotFoundException {
         ObjectDelta<T> objectDelta = prismContext.deltaFactory().object().createModifyDelta(oid, itemDeltas, objectClass
         );
         try {
-            ModelExecuteOptions options = ModelExecuteOptions.create(prismContext).raw().preAuthorized();
             modelService.executeChanges(Collections.singletonList(objectDelta), options, task, result);
         } catch (SecurityViolationException|ExpressionEvaluationException|CommunicationException|ConfigurationException|PolicyViolationException e) {
             throw new SystemException("Unexpected exception when modifying " + objectClass.getSimpleName() + " " + oid + ": " + e.getMessage(), e);
@@ -16,14 +16,25 @@ import java.util.stream.Collectors;
  * Modifications to execute on an object (mostly on a campaign).
  *
  * Because there can be lots of modifications that could take literally hours to execute (sometimes blocking DB as described
- * e.g. in MID-4611), they are divided into smaller batches.
+ * e.g. in MID-4611), they are divided into smaller batches. The size of the batches can be configured,
+ * see {@link AccCertCaseProcessingHelper#createModifications}.
  */
 public class ModificationsToExecute {
 
-    private static final int BATCH_SIZE = 50;
+    static final int DEFAULT_BATCH_SIZE = 50;
+
+    private final int batchSize;
 
     final List<List<ItemDelta<?, ?>>> batches = new ArrayList<>();
 
+    public ModificationsToExecute() {
+        this(DEFAULT_BATCH_SIZE);
+    }
+
+    public ModificationsToExecute(int batchSize) {
+        this.batchSize = batchSize > 0 ? batchSize : DEFAULT_BATCH_SIZE;
+    }
+
     private List<ItemDelta<?, ?>> getLastBatch() {
         return batches.get(batches.size() - 1);
     }
@@ -40,7 +51,7 @@ public class ModificationsToExecute {
         if (deltas.isEmpty()) {
             return;
         }
-        if (isEmpty() || getLastBatch().size() + deltas.size() > BATCH_SIZE) {
+        if (isEmpty() || getLastBatch().size() + deltas.size() > batchSize) {
             createNewBatch();
         }
         getLastBatch().addAll(deltas);
@@ -0,0 +1,145 @@
+/*
+ * Copyright (C) 2010-2022 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+
+package com.evolveum.midpoint.certification.test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ContextConfiguration;
+import org.testng.annotations.Test;
+
+import com.evolveum.midpoint.prism.path.ItemPath;
+import com.evolveum.midpoint.schema.result.OperationResult;
+import com.evolveum.midpoint.task.api.Task;
+import com.evolveum.midpoint.test.util.TestUtil;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.*;
+
+/**
+ * Runs the same campaign twice: with cases processed in the caller's thread, and with cases processed
+ * by worker threads (in small buckets, and written in small modification batches).
+ * The resulting cases, their work items and their ordering must be the same.
+ */
+@ContextConfiguration(locations = { "classpath:ctx-certification-test-main.xml" })
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_CLASS)
+public class TestCaseProcessingWithWorkers extends AbstractCertificationTest {
+
+    private static final File CERT_DEF_FILE = new File(COMMON_DIR, "certification-of-critical-roles.xml");
+
+    private static final int CASES = 6;
+
+    private AccessCertificationDefinitionType certificationDefinition;
+
+    private List<String> sequentialCases;
+    private long sequentialProgress;
+
+    @Override
+    public void initSystem(Task initTask, OperationResult initResult) throws Exception {
+        super.initSystem(initTask, initResult);
+        assignRole(USER_JACK_OID, ROLE_CTO_OID);
+        certificationDefinition = repoAddObjectFromFile(CERT_DEF_FILE,
+                AccessCertificationDefinitionType.class, initResult).asObjectable();
+    }
+
+    @Test
+    public void test100SequentialProcessing() throws Exception {
+        Task task = getTestTask();
+        task.setOwner(userAdministrator.asPrismObject());
+        OperationResult result = task.getResult();
+
+        when("campaign goes through two stages with cases processed in the caller's thread");
+        String campaignOid = runCampaign(task, result);
+
+        then("cases are created and processed");
+        sequentialCases = describeCases(campaignOid, result);
+        sequentialProgress = task.getLegacyProgress();
+        displayValue("cases", String.join("\n", sequentialCases));
+        assertThat(sequentialCases).hasSize(CASES);
+        assertThat(sequentialProgress).as("progress").isGreaterThan(0);
+    }
+
+    @Test
+    public void test200ProcessingWithWorkers() throws Exception {
+        Task task = getTestTask();
+        task.setOwner(userAdministrator.asPrismObject());
+        OperationResult result = task.getResult();
+
+        given("cases are processed by worker threads, one case in a bucket, two cases in a campaign modification");
+        modifyObjectReplaceContainer(SystemConfigurationType.class, SystemObjectsType.SYSTEM_CONFIGURATION.value(),
+                ItemPath.create(SystemConfigurationType.F_ACCESS_CERTIFICATION,
+                        AccessCertificationConfigurationType.F_CASE_PROCESSING),
+                task, result,
+                new AccessCertificationCaseProcessingType()
+                        .workerThreads(3)
+                        .bucketSize(1)
+                        .modificationBatchSize(2));
+
+        when("campaign goes through two stages");
+        task.setLegacyProgress(0L);
+        String campaignOid = runCampaign(task, result);
+
+        then("cases, work items and their ordering are the same as in sequential processing");
+        List<String> cases = describeCases(campaignOid, result);
+        displayValue("cases", String.join("\n", cases));
+        assertThat(cases).containsExactlyElementsOf(sequentialCases);
+
+        and("the progress is the same");
+        assertThat(task.getLegacyProgress()).as("progress").isEqualTo(sequentialProgress);
+    }
+
+    /** Opens and closes the first two stages of a new campaign. */
+    private String runCampaign(Task task, OperationResult result) throws Exception {
+        String campaignOid = certificationManager.createCampaign(certificationDefinition.getOid(), task, result).getOid();
+        certificationManager.openNextStage(campaignOid, task, result); // creates the cases
+        certificationManager.closeCurrentStage(campaignOid, task, result);
+        certificationManager.openNextStage(campaignOid, task, result); // updates the cases
+        certificationManager.closeCurrentStage(campaignOid, task, result);
+        result.computeStatus();
+        TestUtil.assertSuccess(result);
+        assertCasesCount(campaignOid, CASES);
+        return campaignOid;
+    }
+
+    /** Describes the cases (ordered by their IDs) without campaign-specific data like timestamps. */
+    private List<String> describeCases(String campaignOid, OperationResult result) throws Exception {
+        List<AccessCertificationCaseType> caseList = new ArrayList<>(queryHelper.searchCases(campaignOid, null, null, result));
+        caseList.sort(Comparator.comparing(AccessCertificationCaseType::getId));
+        List<String> descriptions = new ArrayList<>();
+        for (AccessCertificationCaseType aCase : caseList) {
+            StringBuilder sb = new StringBuilder();
+            sb.append(aCase.getId())
+                    .append(": ").append(aCase.getObjectRef().getOid())
+                    .append(" -> ").append(aCase.getTargetRef().getOid())
+                    .append(", stage ").append(aCase.getStageNumber())
+                    .append(", stage outcome ").append(aCase.getCurrentStageOutcome())
+                    .append(", outcome ").append(aCase.getOutcome())
+                    .append(", finished ").append(aCase.getReviewFinishedTimestamp() != null);
+            for (CaseEventType event : aCase.getEvent()) {
+                if (event instanceof StageCompletionEventType) {
+                    sb.append("\n  stage ").append(event.getStageNumber())
+                            .append(" completed with ").append(((StageCompletionEventType) event).getOutcome());
+                }
+            }
+            List<AccessCertificationWorkItemType> workItems = new ArrayList<>(aCase.getWorkItem());
+            workItems.sort(Comparator.comparing(AccessCertificationWorkItemType::getId));
+            for (AccessCertificationWorkItemType workItem : workItems) {
+                sb.append("\n  work item ").append(workItem.getId())
+                        .append(": stage ").append(workItem.getStageNumber())
+                        .append(", iteration ").append(workItem.getIteration())
+                        .append(", reviewer ").append(workItem.getOriginalAssigneeRef().getOid())
+                        .append(", closed ").append(workItem.getCloseTimestamp() != null);
+            }
+            descriptions.add(sb.toString());
+        }
+        return descriptions;
+    }
+}
@@ -94,7 +94,10 @@ public enum ModelAuthorizationAction implements DisplayableValue<String> {
     RECORD_TRACE("recordTrace", "Record trace", "RECORD_TRACE_HELP"),
 
     @Experimental
-    READ_TRACE("readTrace", "Read trace", "READ_TRACE_HELP");
+    READ_TRACE("readTrace", "Read trace", "READ_TRACE_HELP"),
+
+    @Experimental
+    READ_METRICS("readMetrics", "Read metrics", "READ_METRICS_HELP");
 
     public static final String[] AUTZ_ACTIONS_URLS_SEARCH = new String[] { READ.getUrl(),  SEARCH.getUrl() };
     public static final String[] AUTZ_ACTIONS_URLS_GET = new String[] { READ.getUrl(),  GET.getUrl() };
@@ -59,6 +59,14 @@ public class ModelExecuteOptions extends AbstractOptions implements Serializable
      */
     private TracingProfileType tracingProfile;
 
+    /**
+     * Allows the repository to insert rows of added containers using JDBC batches, see
+     * {@link com.evolveum.midpoint.repo.api.RepoModifyOptions#isBatchContainerInserts()}.
+     * Used when adding certification cases to a campaign. Currently supported only for raw executions.
+     * EXPERIMENTAL. (So not put into XML version of the options yet.)
+     */
+    private Boolean batchContainerInserts;
+
     public ModelExecuteOptions(PrismContext prismContext) {
         content = new ModelExecuteOptionsType(prismContext);
     }
@@ -312,6 +320,20 @@ public class ModelExecuteOptions extends AbstractOptions implements Serializable
         return options != null && options.preAuthorized != null && options.preAuthorized;
     }
 
+    @SuppressWarnings("WeakerAccess")
+    public ModelExecuteOptions batchContainerInserts(Boolean value) {
+        this.batchContainerInserts = value;
+        return this;
+    }
+
+    public ModelExecuteOptions batchContainerInserts() {
+        return batchContainerInserts(true);
+    }
+
+    public static boolean isBatchContainerInserts(ModelExecuteOptions options) {
+        return options != null && isTrue(options.batchContainerInserts);
+    }
+
     @SuppressWarnings("WeakerAccess")
     public OperationBusinessContextType getRequestBusinessContext() {
         return content.getRequestBusinessContext();
@@ -491,6 +513,7 @@ public class ModelExecuteOptions extends AbstractOptions implements Serializable
         appendVal(sb, "initialPartialProcessing", format(content.getInitialPartialProcessing()));
         appendVal(sb, "focusConflictResolution", content.getFocusConflictResolution());
         appendVal(sb, "tracingProfile", tracingProfile);
+        appendFlag(sb, "batchContainerInserts", batchContainerInserts);
         removeLastComma(sb);
         sb.append(")");
         return sb.toString();
@@ -548,6 +571,7 @@ public class ModelExecuteOptions extends AbstractOptions implements Serializable
         clone.preAuthorized = this.preAuthorized;
         clone.evaluateAllAssignmentRelationsOnRecompute = this.evaluateAllAssignmentRelationsOnRecompute;
         clone.tracingProfile = this.tracingProfile;
+        clone.batchContainerInserts = this.batchContainerInserts;
         return clone;
     }
 
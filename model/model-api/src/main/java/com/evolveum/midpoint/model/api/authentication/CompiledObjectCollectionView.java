@@ -52,6 +52,8 @@ public class CompiledObjectCollectionView implements DebugDumpable, Serializable
     private DistinctSearchOptionType distinct;
     private Boolean disableSorting;
     private Boolean disableCounting;
+    private Boolean estimateCounting;
+    private Boolean keysetPaging;
     private SearchBoxConfigurationType searchBoxConfiguration;
     private ObjectFilter filter;
     private ObjectFilter domainFilter;
@@ -171,6 +173,22 @@ public class CompiledObjectCollectionView implements DebugDumpable, Serializable
         this.disableCounting = disableCounting;
     }
 
+    public Boolean isEstimateCounting() {
+        return estimateCounting;
+    }
+
+    public void setEstimateCounting(Boolean estimateCounting) {
+        this.estimateCounting = estimateCounting;
+    }
+
+    public Boolean isKeysetPaging() {
+        return keysetPaging;
+    }
+
+    public void setKeysetPaging(Boolean keysetPaging) {
+        this.keysetPaging = keysetPaging;
+    }
+
     public SearchBoxConfigurationType getSearchBoxConfiguration() {
         return searchBoxConfiguration;
     }
@@ -304,6 +322,8 @@ public class CompiledObjectCollectionView implements DebugDumpable, Serializable
         DebugUtil.debugDumpWithLabelToStringLn(sb, "distinct", distinct, indent + 1);
         DebugUtil.debugDumpWithLabelLn(sb, "disableSorting", disableSorting, indent + 1);
         DebugUtil.debugDumpWithLabelLn(sb, "disableCounting", disableCounting, indent + 1);
+        DebugUtil.debugDumpWithLabelLn(sb, "estimateCounting", estimateCounting, indent + 1);
+        DebugUtil.debugDumpWithLabelLn(sb, "keysetPaging", keysetPaging, indent + 1);
         DebugUtil.debugDumpWithLabelToStringLn(sb, "searchBoxConfiguration", searchBoxConfiguration, indent + 1);
         DebugUtil.debugDumpWithLabelLn(sb, "filter", filter, indent + 1);
         DebugUtil.debugDumpWithLabel(sb, "domainFilter", domainFilter, indent + 1);
@@ -331,6 +351,8 @@ public class CompiledObjectCollectionView implements DebugDumpable, Serializable
         viewType.setDistinct(getDistinct());
         viewType.setDisableSorting(isDisableSorting());
         viewType.setDisableCounting(isDisableCounting());
+        viewType.setEstimateCounting(isEstimateCounting());
+        viewType.setKeysetPaging(isKeysetPaging());
         viewType.setSearchBoxConfiguration(getSearchBoxConfiguration() != null ? getSearchBoxConfiguration().clone() : null);
         viewType.setDisplayOrder(getDisplayOrder());
         viewType.setRefreshInterval(getRefreshInterval());
@@ -28,6 +28,7 @@ import com.evolveum.midpoint.schema.util.ExceptionUtil;
 import com.evolveum.midpoint.util.exception.*;
 import com.evolveum.midpoint.util.logging.Trace;
 import com.evolveum.midpoint.util.logging.TraceManager;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.ScriptExpressionEvaluatorType;
 
 /**
  * Expression evaluator that is using javax.script (JSR-223) engine.
@@ -47,10 +48,20 @@ public abstract class AbstractCachingScriptEvaluator<I, C> extends AbstractScrip
         this.scriptCache = new ScriptCache<>();
     }
 
-    protected ScriptCache<I, C> getScriptCache() {
+    @Override
+    public @NotNull ScriptCache<I, C> getScriptCache() {
         return scriptCache;
     }
 
+    @Override
+    public void precompile(@NotNull String codeString, String contextDescription)
+            throws ExpressionEvaluationException, SecurityViolationException {
+        ScriptExpressionEvaluationContext context = new ScriptExpressionEvaluationContext();
+        context.setExpressionType(new ScriptExpressionEvaluatorType().code(codeString));
+        context.setContextDescription(contextDescription);
+        getCompiledScript(codeString, context);
+    }
+
     @NotNull
     @Override
     public <T, V extends PrismValue> List<V> evaluate(ScriptExpressionEvaluationContext context) throws ExpressionEvaluationException,
@@ -155,20 +166,16 @@ public abstract class AbstractCachingScriptEvaluator<I, C> extends AbstractScrip
     }
 
     private C getCompiledScript(String codeString, ScriptExpressionEvaluationContext context) throws ExpressionEvaluationException, SecurityViolationException {
-        C compiledScript = scriptCache.getCode(context.getExpressionProfile(), codeString);
-        if (compiledScript != null) {
-            return compiledScript;
-        }
-        InternalMonitor.recordCount(InternalCounters.SCRIPT_COMPILE_COUNT);
         try {
-            compiledScript = compileScript(codeString, context);
+            return scriptCache.getOrCompileCode(context.getExpressionProfile(), codeString, () -> {
+                InternalMonitor.recordCount(InternalCounters.SCRIPT_COMPILE_COUNT);
+                return compileScript(codeString, context);
+            });
         } catch (ExpressionEvaluationException | SecurityViolationException e) {
             throw e;
         } catch (Exception e) {
             throw new ExpressionEvaluationException(e.getMessage() + " while compiling " + context.getContextDescription(), e);
         }
-        scriptCache.putCode(context.getExpressionProfile(), codeString, compiledScript);
-        return compiledScript;
     }
 
     protected abstract C compileScript(String codeString, ScriptExpressionEvaluationContext context) throws Exception;
@@ -6,59 +6,185 @@
  */
 package com.evolveum.midpoint.model.common.expression.script;
 
-import java.util.HashMap;
+import static com.evolveum.midpoint.util.caching.CacheConfiguration.StatisticsLevel.PER_CACHE;
+
 import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.util.concurrent.ExecutionError;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import org.jetbrains.annotations.NotNull;
 
 import com.evolveum.midpoint.schema.expression.ExpressionProfile;
+import com.evolveum.midpoint.util.caching.CachePerformanceCollector;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.ScriptExpressionEvaluatorType;
 
 /**
  * Cache for compiled scripts and interpreters, aware of expression profiles.
  *
+ * The cache is safe for concurrent use without any global lock. Compiled code is kept up to
+ * {@link #getMaxSize()} entries (for all profiles together), least recently used entries are evicted first.
+ * A script requested by more threads at once is compiled only once, the other threads wait for the result.
+ *
+ * @param <I> script interpreter/compiler
  * @param <C> compiled code
  * @author Radovan Semancik
  */
-public class ScriptCache<I,C> {
+public class ScriptCache<I, C> {
+
+    /** Default maximum number of compiled scripts kept by single evaluator. */
+    public static final int DEFAULT_MAX_SIZE = 10_000;
+
+    /** Key for "no profile" interpreter, as concurrent map does not support null keys. */
+    private static final String NO_PROFILE_KEY = "";
 
-    private final Map<String, I> interpreterCache = new HashMap<>();
-    private final Map<String, Map<String, C>> codeCache = new HashMap<>();
+    private final Map<String, I> interpreterCache = new ConcurrentHashMap<>();
 
-    public synchronized I getInterpreter(ExpressionProfile profile) {
-        return interpreterCache.get(getProfileKey(profile));
+    private volatile int maxSize;
+    private volatile Cache<CodeKey, C> codeCache;
+
+    public ScriptCache() {
+        this(DEFAULT_MAX_SIZE);
     }
 
-    public synchronized void putInterpreter(ExpressionProfile profile, I interpreter) {
-        interpreterCache.put(getProfileKey(profile), interpreter);
+    public ScriptCache(int maxSize) {
+        this.maxSize = maxSize;
+        this.codeCache = createCodeCache(maxSize);
     }
 
-    public synchronized C getCode(ExpressionProfile profile, String sourceCodeKey) {
-        String profileKey = getProfileKey(profile);
-        Map<String, C> profileCache = codeCache.get(profileKey);
-        if (profileCache == null) {
-            return null;
-        }
-        return profileCache.get(sourceCodeKey);
+    private static <C> Cache<CodeKey, C> createCodeCache(int maxSize) {
+        return CacheBuilder.newBuilder()
+                .maximumSize(maxSize)
+                .recordStats()
+                .build();
+    }
+
+    public I getInterpreter(ExpressionProfile profile) {
+        return interpreterCache.get(getInterpreterKey(profile));
     }
 
-    public synchronized void putCode(ExpressionProfile profile, String sourceCodeKey, C compiledCode) {
-        String profileKey = getProfileKey(profile);
-        Map<String, C> profileCache = codeCache.get(profileKey);
-        if (profileCache == null) {
-            profileCache = new HashMap<>();
-            codeCache.put(profileKey, profileCache);
+    public void putInterpreter(ExpressionProfile profile, I interpreter) {
+        interpreterCache.put(getInterpreterKey(profile), interpreter);
+    }
+
+    public C getCode(ExpressionProfile profile, String sourceCodeKey) {
+        C code = codeCache.getIfPresent(new CodeKey(profile, sourceCodeKey));
+        registerAccess(code != null);
+        return code;
+    }
+
+    public void putCode(ExpressionProfile profile, String sourceCodeKey, C compiledCode) {
+        codeCache.put(new CodeKey(profile, sourceCodeKey), compiledCode);
+    }
+
+    /**
+     * Returns compiled code from the cache, compiling (and caching) it if it's not there.
+     * The lookup and the compilation are a single cache operation; it is a miss only if this thread compiled the code.
+     * Exceptions thrown by the compiler are rethrown as they are.
+     */
+    public @NotNull C getOrCompileCode(ExpressionProfile profile, String sourceCodeKey, Callable<C> compiler)
+            throws Exception {
+        boolean[] compiled = { false };
+        try {
+            return codeCache.get(new CodeKey(profile, sourceCodeKey), () -> {
+                compiled[0] = true;
+                return compiler.call();
+            });
+        } catch (ExecutionException | UncheckedExecutionException | ExecutionError e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            } else {
+                throw e;
+            }
+        } finally {
+            registerAccess(!compiled[0]);
         }
-        profileCache.put(sourceCodeKey, compiledCode);
     }
 
-    private String getProfileKey(ExpressionProfile profile) {
-        if (profile == null) {
-            return null;
+    private void registerAccess(boolean hit) {
+        if (hit) {
+            CachePerformanceCollector.INSTANCE.registerHit(ScriptCache.class, ScriptExpressionEvaluatorType.class, PER_CACHE);
         } else {
-            return profile.getIdentifier();
+            CachePerformanceCollector.INSTANCE.registerMiss(ScriptCache.class, ScriptExpressionEvaluatorType.class, PER_CACHE);
+        }
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * Changes the maximum number of compiled scripts kept. Existing entries are retained (as far as the new size allows),
+     * statistics are reset.
+     */
+    public synchronized void setMaxSize(int maxSize) {
+        if (maxSize == this.maxSize) {
+            return;
         }
+        Cache<CodeKey, C> newCache = createCodeCache(maxSize);
+        newCache.putAll(codeCache.asMap());
+        this.codeCache = newCache;
+        this.maxSize = maxSize;
+    }
+
+    /** Number of compiled scripts currently in the cache. */
+    public long size() {
+        return codeCache.size();
+    }
+
+    public int getInterpretersCount() {
+        return interpreterCache.size();
+    }
+
+    /** Hit, miss and eviction statistics for compiled code. */
+    public @NotNull CacheStats getStats() {
+        return codeCache.stats();
+    }
+
+    public void clear() {
+        codeCache.invalidateAll();
     }
 
-    public synchronized void clear() {
-        codeCache.clear();
+    private static String getInterpreterKey(ExpressionProfile profile) {
+        return profile != null ? profile.getIdentifier() : NO_PROFILE_KEY;
     }
 
+    /** Compiled code depends on the source code and the profile (via the interpreter used to compile it). */
+    private static class CodeKey {
+
+        private final String profileIdentifier;
+        private final String sourceCode;
+
+        private CodeKey(ExpressionProfile profile, String sourceCode) {
+            this.profileIdentifier = profile != null ? profile.getIdentifier() : null;
+            this.sourceCode = sourceCode;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof CodeKey)) {
+                return false;
+            }
+            CodeKey codeKey = (CodeKey) o;
+            return Objects.equals(profileIdentifier, codeKey.profileIdentifier)
+                    && Objects.equals(sourceCode, codeKey.sourceCode);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(profileIdentifier, sourceCode);
+        }
+    }
 }
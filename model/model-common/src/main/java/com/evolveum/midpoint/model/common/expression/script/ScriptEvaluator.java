@@ -9,6 +9,7 @@ package com.evolveum.midpoint.model.common.expression.script;
 import java.util.List;
 
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import com.evolveum.midpoint.prism.PrismValue;
 import com.evolveum.midpoint.repo.common.expression.ExpressionSyntaxException;
@@ -40,4 +41,20 @@ public interface ScriptEvaluator {
     default boolean isInitialized() {
         return true;
     }
+
+    /**
+     * Returns the cache of compiled scripts, if this evaluator has one.
+     */
+    default @Nullable ScriptCache<?, ?> getScriptCache() {
+        return null;
+    }
+
+    /**
+     * Compiles the script ahead of time, so the compiled form is ready in the cache when the script is evaluated.
+     * The script is compiled for the default (null) expression profile.
+     * Evaluators not caching compiled scripts do nothing.
+     */
+    default void precompile(@NotNull String code, String contextDescription)
+            throws ExpressionEvaluationException, SecurityViolationException {
+    }
 }
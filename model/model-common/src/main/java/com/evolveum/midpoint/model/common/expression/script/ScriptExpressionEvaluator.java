@@ -6,7 +6,9 @@
  */
 package com.evolveum.midpoint.model.common.expression.script;
 
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import javax.xml.namespace.QName;
 
@@ -14,10 +16,14 @@ import com.evolveum.midpoint.common.LocalizationService;
 import com.evolveum.midpoint.model.common.expression.evaluator.transformation.AbstractValueTransformationExpressionEvaluator;
 import com.evolveum.midpoint.prism.ItemDefinition;
 import com.evolveum.midpoint.prism.PrismContext;
+import com.evolveum.midpoint.prism.PrismPropertyValue;
 import com.evolveum.midpoint.prism.PrismValue;
 import com.evolveum.midpoint.prism.crypto.Protector;
 import com.evolveum.midpoint.prism.delta.PlusMinusZero;
 import com.evolveum.midpoint.repo.common.expression.ExpressionEvaluationContext;
+import com.evolveum.midpoint.repo.common.expression.Source;
+import com.evolveum.midpoint.schema.expression.ExpressionProfile;
+import com.evolveum.midpoint.schema.expression.TypedValue;
 import com.evolveum.midpoint.schema.expression.VariablesMap;
 import com.evolveum.midpoint.schema.result.OperationResult;
 import com.evolveum.midpoint.security.api.SecurityContextManager;
@@ -44,11 +50,15 @@ public class ScriptExpressionEvaluator<V extends PrismValue,D extends ItemDefini
 
     private final ScriptExpression scriptExpression;
 
+    /** Cache for results of deterministic scripts; null if not available (e.g. in low-level tests). */
+    @Nullable private final ScriptResultCache resultCache;
+
     ScriptExpressionEvaluator(QName elementName, ScriptExpressionEvaluatorType scriptType, D outputDefinition, Protector protector, PrismContext prismContext,
-            ScriptExpression scriptExpression,
+            ScriptExpression scriptExpression, @Nullable ScriptResultCache resultCache,
             SecurityContextManager securityContextManager, LocalizationService localizationService) {
         super(elementName, scriptType, outputDefinition, protector, prismContext, securityContextManager, localizationService);
         this.scriptExpression = scriptExpression;
+        this.resultCache = resultCache;
     }
 
     @Override
@@ -61,6 +71,25 @@ public class ScriptExpressionEvaluator<V extends PrismValue,D extends ItemDefini
     protected List<V> transformSingleValue(VariablesMap variables, PlusMinusZero valueDestination, boolean useNew,
             ExpressionEvaluationContext eCtx, String contextDescription, Task task, OperationResult result)
                     throws ExpressionEvaluationException, ObjectNotFoundException, SchemaException, CommunicationException, ConfigurationException, SecurityViolationException {
+        ScriptResultCache.Key cacheKey = createResultCacheKey(variables, eCtx);
+        if (cacheKey != null) {
+            List<V> cachedResult = resultCache.get(cacheKey);
+            if (cachedResult != null) {
+                return cachedResult;
+            }
+        }
+
+        List<V> scriptResult = evaluateScript(variables, useNew, eCtx, contextDescription, task, result);
+        if (cacheKey != null) {
+            resultCache.put(cacheKey, scriptResult);
+        }
+        return scriptResult;
+    }
+
+    @NotNull
+    private List<V> evaluateScript(VariablesMap variables, boolean useNew,
+            ExpressionEvaluationContext eCtx, String contextDescription, Task task, OperationResult result)
+                    throws ExpressionEvaluationException, ObjectNotFoundException, SchemaException, CommunicationException, ConfigurationException, SecurityViolationException {
         scriptExpression.setAdditionalConvertor(eCtx.getAdditionalConvertor());
         ScriptExpressionEvaluationContext sCtx = new ScriptExpressionEvaluationContext();
         sCtx.setVariables(variables);
@@ -74,6 +103,46 @@ public class ScriptExpressionEvaluator<V extends PrismValue,D extends ItemDefini
         return scriptExpression.evaluate(sCtx);
     }
 
+    /**
+     * Returns the key for cached result of deterministic script, or null if the result should not be cached.
+     * Sources are keyed by their names, as the script refers to them by names.
+     * Only real values of property sources are supported in the key; other sources (e.g. whole items
+     * in absolute mode, containers, references) are not cached. Results converted by additional convertor
+     * are not cached either, as we can't say anything about the convertor. Nor are the results of expressions
+     * with their own variables or with variables produced for each value, as these are not part of the key.
+     */
+    @Nullable
+    private ScriptResultCache.Key createResultCacheKey(VariablesMap variables, ExpressionEvaluationContext eCtx) {
+        if (resultCache == null || !Boolean.TRUE.equals(expressionEvaluatorBean.isDeterministic())) {
+            return null;
+        }
+        if (!isRelative() || eCtx.getAdditionalConvertor() != null
+                || eCtx.isInnerVariablesDefined() || eCtx.getVariableProducer() != null) {
+            resultCache.registerPass();
+            return null;
+        }
+
+        Map<String, Object> sourceValues = new HashMap<>();
+        for (Source<?, ?> source : eCtx.getSources()) {
+            String sourceName = source.getName().getLocalPart();
+            TypedValue<?> typedValue = variables.get(sourceName);
+            Object value = typedValue != null ? typedValue.getValue() : null;
+            if (value == null) {
+                sourceValues.put(sourceName, null);
+            } else if (value instanceof PrismPropertyValue) {
+                sourceValues.put(sourceName, ((PrismPropertyValue<?>) value).getRealValue());
+            } else {
+                resultCache.registerPass();
+                return null;
+            }
+        }
+
+        ExpressionProfile profile = scriptExpression.getExpressionProfile();
+        return new ScriptResultCache.Key(expressionEvaluatorBean.getLanguage(), expressionEvaluatorBean.getCode(),
+                getReturnType(), profile != null ? profile.getIdentifier() : null,
+                outputDefinition != null ? outputDefinition.getTypeName() : null, sourceValues);
+    }
+
     @Nullable
     private ScriptExpressionReturnTypeType getReturnType() {
         ScriptExpressionReturnTypeType explicitReturnType = expressionEvaluatorBean.getReturnType();
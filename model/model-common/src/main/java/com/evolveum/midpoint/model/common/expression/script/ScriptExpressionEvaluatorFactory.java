@@ -74,7 +74,7 @@ public class ScriptExpressionEvaluatorFactory extends AbstractAutowiredExpressio
                 expressionProfile, expressionFactory, contextDescription, result);
 
         return new ScriptExpressionEvaluator<>(ELEMENT_NAME, evaluatorBean, outputDefinition, protector, prismContext,
-                scriptExpression, securityContextManager, localizationService);
+                scriptExpression, scriptExpressionFactory.getResultCache(), securityContextManager, localizationService);
     }
 
     public ScriptExpressionFactory getScriptExpressionFactory() {
@@ -37,6 +37,7 @@ import com.evolveum.midpoint.schema.expression.ExpressionProfile;
 import com.evolveum.midpoint.schema.expression.ScriptExpressionProfile;
 import com.evolveum.midpoint.schema.result.OperationResult;
 import com.evolveum.midpoint.schema.util.MiscSchemaUtil;
+import com.evolveum.midpoint.util.exception.ExpressionEvaluationException;
 import com.evolveum.midpoint.util.exception.SchemaException;
 import com.evolveum.midpoint.util.exception.SecurityViolationException;
 import com.evolveum.midpoint.util.logging.Trace;
@@ -65,6 +66,7 @@ public class ScriptExpressionFactory implements Cache {
 
     @NotNull private final Map<String, FunctionLibrary> customFunctionLibraryCache = new ConcurrentHashMap<>();
     private final AtomicBoolean initialized = new AtomicBoolean(false);
+    @NotNull private final ScriptResultCache resultCache = new ScriptResultCache();
 
     private CacheRegistry cacheRegistry;
 
@@ -237,6 +239,39 @@ public class ScriptExpressionFactory implements Cache {
         throw new ExpressionSyntaxException("Unsupported language " + languageUri + " used in script in " + shortDesc);
     }
 
+    /**
+     * Compiles the script and puts it into the cache of respective evaluator, so the first evaluation does not have to.
+     * Only the default (null) expression profile is considered.
+     */
+    public void precompile(@NotNull ScriptExpressionEvaluatorType expressionType, String shortDesc)
+            throws ExpressionSyntaxException, ExpressionEvaluationException, SecurityViolationException {
+        String code = expressionType.getCode();
+        if (code == null) {
+            return;
+        }
+        getEvaluator(getLanguage(expressionType), shortDesc)
+                .precompile(code, shortDesc);
+    }
+
+    /** Sets the maximum number of compiled scripts kept by each of the evaluators. */
+    public void setScriptCacheMaxSize(int maxSize) {
+        for (ScriptEvaluator evaluator : evaluatorMap.values()) {
+            ScriptCache<?, ?> scriptCache = evaluator.getScriptCache();
+            if (scriptCache != null) {
+                scriptCache.setMaxSize(maxSize);
+            }
+        }
+    }
+
+    /** Cache for results of deterministic scripts, shared by all the script expression evaluators. */
+    public @NotNull ScriptResultCache getResultCache() {
+        return resultCache;
+    }
+
+    public void setScriptResultCacheMaxSize(int maxSize) {
+        resultCache.setMaxSize(maxSize);
+    }
+
     private String getLanguage(ScriptExpressionEvaluatorType expressionType) {
         if (expressionType.getLanguage() != null) {
             return expressionType.getLanguage();
@@ -250,15 +285,31 @@ public class ScriptExpressionFactory implements Cache {
             // Currently we don't try to select entries to be cleared based on OID
             customFunctionLibraryCache.clear();
             initialized.set(false);
+            // deterministic scripts may call custom functions
+            resultCache.clear();
         }
     }
 
     @NotNull
     @Override
     public Collection<SingleCacheStateInformationType> getStateInformation() {
-        return Collections.singleton(new SingleCacheStateInformationType(prismContext)
+        List<SingleCacheStateInformationType> rv = new ArrayList<>();
+        rv.add(new SingleCacheStateInformationType(prismContext)
                 .name(ScriptExpressionFactory.class.getName())
                 .size(customFunctionLibraryCache.size()));
+        rv.add(new SingleCacheStateInformationType(prismContext)
+                .name(ScriptResultCache.class.getName())
+                .size((int) resultCache.size()));
+        for (ScriptEvaluator evaluator : evaluatorMap.values()) {
+            ScriptCache<?, ?> scriptCache = evaluator.getScriptCache();
+            if (scriptCache != null) {
+                rv.add(new SingleCacheStateInformationType(prismContext)
+                        .name(ScriptCache.class.getName() + "." + evaluator.getLanguageName())
+                        .size((int) scriptCache.size())
+                        .secondarySize(scriptCache.getInterpretersCount()));
+            }
+        }
+        return rv;
     }
 
     @Override
@@ -269,6 +320,16 @@ public class ScriptExpressionFactory implements Cache {
             } else {
                 LOGGER_CONTENT.info("Custom function library cache is not yet initialized");
             }
+            for (ScriptEvaluator evaluator : evaluatorMap.values()) {
+                ScriptCache<?, ?> scriptCache = evaluator.getScriptCache();
+                if (scriptCache != null) {
+                    LOGGER_CONTENT.info("Script cache for {}: {} compiled scripts (max {}), {} interpreters; {}",
+                            evaluator.getLanguageName(), scriptCache.size(), scriptCache.getMaxSize(),
+                            scriptCache.getInterpretersCount(), scriptCache.getStats());
+                }
+            }
+            LOGGER_CONTENT.info("Script result cache: {} results (max {}); {}",
+                    resultCache.size(), resultCache.getMaxSize(), resultCache.getStats());
         }
     }
 }
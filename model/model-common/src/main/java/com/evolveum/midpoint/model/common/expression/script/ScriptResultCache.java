@@ -0,0 +1,165 @@
+/*
+ * Copyright (C) 2010-2022 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+package com.evolveum.midpoint.model.common.expression.script;
+
+import static com.evolveum.midpoint.util.caching.CacheConfiguration.StatisticsLevel.PER_CACHE;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import com.evolveum.midpoint.prism.PrismValue;
+import com.evolveum.midpoint.util.caching.CachePerformanceCollector;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.ScriptExpressionEvaluatorType;
+
+/**
+ * Cache for results of deterministic script expressions (see `deterministic` in {@link ScriptExpressionEvaluatorType}).
+ *
+ * The key consists of everything that determines the result of such a script: the script itself (language, code,
+ * return type), expression profile, output type and the real values of the sources, by source name.
+ * Cached values are cloned both when they are stored and when they are returned, so the callers can modify them.
+ *
+ * The cache is safe for concurrent use, least recently used entries are evicted first.
+ */
+public class ScriptResultCache {
+
+    /** Default maximum number of cached results. */
+    public static final int DEFAULT_MAX_SIZE = 10_000;
+
+    private volatile int maxSize;
+    private volatile Cache<Key, List<PrismValue>> cache;
+
+    public ScriptResultCache() {
+        this(DEFAULT_MAX_SIZE);
+    }
+
+    public ScriptResultCache(int maxSize) {
+        this.maxSize = maxSize;
+        this.cache = createCache(maxSize);
+    }
+
+    private static Cache<Key, List<PrismValue>> createCache(int maxSize) {
+        return CacheBuilder.newBuilder()
+                .maximumSize(maxSize)
+                .recordStats()
+                .build();
+    }
+
+    /** Returns (a copy of) cached result or null if there is none. */
+    public <V extends PrismValue> @Nullable List<V> get(@NotNull Key key) {
+        List<PrismValue> cached = cache.getIfPresent(key);
+        if (cached != null) {
+            CachePerformanceCollector.INSTANCE.registerHit(
+                    ScriptResultCache.class, ScriptExpressionEvaluatorType.class, PER_CACHE);
+            return cloneValues(cached);
+        } else {
+            CachePerformanceCollector.INSTANCE.registerMiss(
+                    ScriptResultCache.class, ScriptExpressionEvaluatorType.class, PER_CACHE);
+            return null;
+        }
+    }
+
+    public void put(@NotNull Key key, @NotNull List<? extends PrismValue> result) {
+        cache.put(key, cloneValues(result));
+    }
+
+    /** To be called for deterministic scripts that could not be cached (e.g. because of non-property sources). */
+    public void registerPass() {
+        CachePerformanceCollector.INSTANCE.registerPass(
+                ScriptResultCache.class, ScriptExpressionEvaluatorType.class, PER_CACHE);
+    }
+
+    private static <V extends PrismValue> List<V> cloneValues(List<? extends PrismValue> values) {
+        List<V> clones = new ArrayList<>(values.size());
+        for (PrismValue value : values) {
+            //noinspection unchecked
+            clones.add(value != null ? (V) value.clone() : null);
+        }
+        return clones;
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /** Changes the maximum number of cached results, existing entries are dropped. */
+    public synchronized void setMaxSize(int maxSize) {
+        if (maxSize == this.maxSize) {
+            return;
+        }
+        this.cache = createCache(maxSize);
+        this.maxSize = maxSize;
+    }
+
+    public long size() {
+        return cache.size();
+    }
+
+    public @NotNull CacheStats getStats() {
+        return cache.stats();
+    }
+
+    public void clear() {
+        cache.invalidateAll();
+    }
+
+    /**
+     * Identity of the script evaluation. Source values (by source name) must be immutable (real values
+     * of properties), the key is used for both hashing and comparison.
+     */
+    public static class Key {
+
+        private final String language;
+        private final String code;
+        private final Object returnType;
+        private final String profileIdentifier;
+        private final Object outputType;
+        private final Map<String, Object> sourceValues;
+        private final int hashCode;
+
+        public Key(String language, String code, Object returnType, String profileIdentifier,
+                Object outputType, @NotNull Map<String, Object> sourceValues) {
+            this.language = language;
+            this.code = code;
+            this.returnType = returnType;
+            this.profileIdentifier = profileIdentifier;
+            this.outputType = outputType;
+            this.sourceValues = sourceValues;
+            this.hashCode = Objects.hash(language, code, returnType, profileIdentifier, outputType, sourceValues);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return hashCode == key.hashCode
+                    && Objects.equals(code, key.code)
+                    && Objects.equals(language, key.language)
+                    && Objects.equals(returnType, key.returnType)
+                    && Objects.equals(profileIdentifier, key.profileIdentifier)
+                    && Objects.equals(outputType, key.outputType)
+                    && sourceValues.equals(key.sourceValues);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+}
@@ -6,16 +6,22 @@
  */
 package com.evolveum.midpoint.model.common.expression.script.velocity;
 
+import java.io.StringReader;
 import java.io.StringWriter;
 import java.util.*;
 import javax.xml.namespace.QName;
 
+import org.apache.velocity.Template;
 import org.apache.velocity.VelocityContext;
 import org.apache.velocity.app.Velocity;
+import org.apache.velocity.runtime.RuntimeServices;
+import org.apache.velocity.runtime.RuntimeSingleton;
+import org.apache.velocity.runtime.parser.ParseException;
 import org.jetbrains.annotations.NotNull;
 
 import com.evolveum.midpoint.common.LocalizationService;
 import com.evolveum.midpoint.model.common.expression.script.AbstractScriptEvaluator;
+import com.evolveum.midpoint.model.common.expression.script.ScriptCache;
 import com.evolveum.midpoint.model.common.expression.script.ScriptExpressionEvaluationContext;
 import com.evolveum.midpoint.prism.PrismContext;
 import com.evolveum.midpoint.prism.PrismValue;
@@ -36,6 +42,9 @@ public class VelocityScriptEvaluator extends AbstractScriptEvaluator {
     public static final String LANGUAGE_NAME = "velocity";
     public static final String LANGUAGE_URL = MidPointConstants.EXPRESSION_LANGUAGE_URL_BASE + LANGUAGE_NAME;
 
+    /** Parsed templates. Velocity has no interpreter per expression profile. */
+    private final ScriptCache<Void, Template> scriptCache = new ScriptCache<>();
+
     public VelocityScriptEvaluator(PrismContext prismContext, Protector protector, LocalizationService localizationService) {
         super(prismContext, protector, localizationService);
         Properties properties = new Properties();
@@ -55,10 +64,12 @@ public class VelocityScriptEvaluator extends AbstractScriptEvaluator {
             throw new ExpressionEvaluationException("No script code in " + context.getContextDescription());
         }
 
+        Template template = getTemplate(codeString, context);
+
         StringWriter resultWriter = new StringWriter();
         try {
             InternalMonitor.recordCount(InternalCounters.SCRIPT_EXECUTION_COUNT);
-            Velocity.evaluate(velocityCtx, resultWriter, "", codeString);
+            template.merge(velocityCtx, resultWriter);
         } catch (RuntimeException e) {
             throw new ExpressionEvaluationException(e.getMessage() + " in " + context.getContextDescription(), e);
         }
@@ -94,6 +105,38 @@ public class VelocityScriptEvaluator extends AbstractScriptEvaluator {
         return values;
     }
 
+    private Template getTemplate(String codeString, ScriptExpressionEvaluationContext context)
+            throws ExpressionEvaluationException {
+        try {
+            return scriptCache.getOrCompileCode(context.getExpressionProfile(), codeString, () -> parseTemplate(codeString));
+        } catch (Exception e) {
+            throw new ExpressionEvaluationException(e.getMessage() + " in " + context.getContextDescription(), e);
+        }
+    }
+
+    /** Parses the template just like {@link Velocity#evaluate} does, but keeps the result for later use. */
+    private Template parseTemplate(String codeString) throws ParseException {
+        RuntimeServices runtimeServices = RuntimeSingleton.getRuntimeServices();
+        Template template = new Template();
+        template.setName("");
+        template.setRuntimeServices(runtimeServices);
+        template.setData(runtimeServices.parse(new StringReader(codeString), template));
+        template.initDocument();
+        return template;
+    }
+
+    @Override
+    public @NotNull ScriptCache<Void, Template> getScriptCache() {
+        return scriptCache;
+    }
+
+    @Override
+    public void precompile(@NotNull String code, String contextDescription) throws ExpressionEvaluationException {
+        ScriptExpressionEvaluationContext context = new ScriptExpressionEvaluationContext();
+        context.setContextDescription(contextDescription);
+        getTemplate(code, context);
+    }
+
     private VelocityContext createVelocityContext(ScriptExpressionEvaluationContext context) throws ExpressionSyntaxException, ObjectNotFoundException, CommunicationException, ConfigurationException, SecurityViolationException, ExpressionEvaluationException {
         VelocityContext velocityCtx = new VelocityContext();
         Map<String, Object> scriptVariables = prepareScriptVariablesValueMap(context);
@@ -27,6 +27,7 @@ import com.evolveum.midpoint.model.common.expression.script.ScriptExpressionEval
 import com.evolveum.midpoint.prism.*;
 import com.evolveum.midpoint.prism.crypto.Protector;
 import com.evolveum.midpoint.prism.delta.PrismValueDeltaSetTriple;
+import com.evolveum.midpoint.prism.path.ItemName;
 import com.evolveum.midpoint.prism.util.PrismTestUtil;
 import com.evolveum.midpoint.repo.common.DirectoryFileObjectResolver;
 import com.evolveum.midpoint.repo.common.ObjectResolver;
@@ -38,6 +39,7 @@ import com.evolveum.midpoint.schema.MidPointPrismContextFactory;
 import com.evolveum.midpoint.schema.SchemaConstantsGenerated;
 import com.evolveum.midpoint.schema.constants.ExpressionConstants;
 import com.evolveum.midpoint.schema.constants.MidPointConstants;
+import com.evolveum.midpoint.schema.constants.SchemaConstants;
 import com.evolveum.midpoint.schema.expression.ExpressionProfile;
 import com.evolveum.midpoint.schema.expression.ExpressionProfiles;
 import com.evolveum.midpoint.schema.expression.VariablesMap;
@@ -80,6 +82,9 @@ public class TestExpression extends AbstractModelCommonTest {
     protected static final File EXPRESSION_SCRIPT_GROOVY_SYSTEM_ALLOW_FILE = new File(TEST_DIR, "expression-script-groovy-system-allow.xml");
     protected static final File EXPRESSION_SCRIPT_GROOVY_SYSTEM_DENY_FILE = new File(TEST_DIR, "expression-script-groovy-system-deny.xml");
     protected static final File EXPRESSION_SCRIPT_JAVASCRIPT_FILE = new File(TEST_DIR, "expression-script-javascript.xml");
+    protected static final File EXPRESSION_SCRIPT_GROOVY_DETERMINISTIC_FILE = new File(TEST_DIR, "expression-script-groovy-deterministic.xml");
+    protected static final File EXPRESSION_SCRIPT_GROOVY_DETERMINISTIC_TWO_SOURCES_FILE = new File(TEST_DIR, "expression-script-groovy-deterministic-two-sources.xml");
+    protected static final File EXPRESSION_SCRIPT_GROOVY_DETERMINISTIC_VARIABLE_FILE = new File(TEST_DIR, "expression-script-groovy-deterministic-variable.xml");
 
     protected static final String VAR_FOO_NAME = "foo";
     protected static final String VAR_FOO_VALUE = "F00";
@@ -329,6 +334,103 @@ public class TestExpression extends AbstractModelCommonTest {
         assertScriptExecutionIncrement(1);
     }
 
+    /** Deterministic script is executed only once for the same source values. */
+    @Test
+    public void test170ScriptGroovyDeterministic() throws Exception {
+        given();
+        OperationResult result = createOperationResult();
+
+        rememberScriptExecutionCount();
+
+        ExpressionType expressionType = parseExpression(EXPRESSION_SCRIPT_GROOVY_DETERMINISTIC_FILE);
+
+        when("the script is evaluated twice with the same source value");
+        PrismValueDeltaSetTriple<PrismPropertyValue<String>> firstTriple = evaluatePropertyExpression(
+                expressionType, PrimitiveType.STRING,
+                new ExpressionEvaluationContext(prepareStringSources(), prepareBasicVariables(), getTestNameShort(), null),
+                result);
+        PrismValueDeltaSetTriple<PrismPropertyValue<String>> secondTriple = evaluatePropertyExpression(
+                expressionType, PrimitiveType.STRING,
+                new ExpressionEvaluationContext(prepareStringSources(), prepareBasicVariables(), getTestNameShort(), null),
+                result);
+
+        then("both results are the same, but the script is executed only once");
+        assertOutputTriple(firstTriple)
+                .assertEmptyMinus()
+                .assertEmptyPlus()
+                .zeroSet()
+                .assertSinglePropertyValue("X-" + INPUT_VALUE);
+        assertOutputTriple(secondTriple)
+                .assertEmptyMinus()
+                .assertEmptyPlus()
+                .zeroSet()
+                .assertSinglePropertyValue("X-" + INPUT_VALUE);
+
+        assertScriptExecutionIncrement(1);
+    }
+
+    /** Cached results of deterministic script are keyed by source names, not by the order of the sources. */
+    @Test
+    public void test172ScriptGroovyDeterministicSourceNames() throws Exception {
+        given();
+        OperationResult result = createOperationResult();
+
+        rememberScriptExecutionCount();
+
+        ExpressionType expressionType = parseExpression(EXPRESSION_SCRIPT_GROOVY_DETERMINISTIC_TWO_SOURCES_FILE);
+
+        when("the script is evaluated with the same source values, but assigned to the sources the other way round");
+        Collection<Source<?, ?>> firstSources = new ArrayList<>();
+        firstSources.add(prepareStringSource("first", "A"));
+        firstSources.add(prepareStringSource("second", "B"));
+        PrismValueDeltaSetTriple<PrismPropertyValue<String>> firstTriple = evaluatePropertyExpression(
+                expressionType, PrimitiveType.STRING,
+                new ExpressionEvaluationContext(firstSources, prepareBasicVariables(), getTestNameShort(), null),
+                result);
+        Collection<Source<?, ?>> secondSources = new ArrayList<>();
+        secondSources.add(prepareStringSource("second", "A"));
+        secondSources.add(prepareStringSource("first", "B"));
+        PrismValueDeltaSetTriple<PrismPropertyValue<String>> secondTriple = evaluatePropertyExpression(
+                expressionType, PrimitiveType.STRING,
+                new ExpressionEvaluationContext(secondSources, prepareBasicVariables(), getTestNameShort(), null),
+                result);
+
+        then("each result corresponds to its sources, the script is executed twice");
+        assertOutputTriple(firstTriple)
+                .zeroSet()
+                .assertSinglePropertyValue("A-B");
+        assertOutputTriple(secondTriple)
+                .zeroSet()
+                .assertSinglePropertyValue("B-A");
+
+        assertScriptExecutionIncrement(2);
+    }
+
+    /** Results of deterministic scripts with their own variables are not cached, as the variables are not in the key. */
+    @Test
+    public void test174ScriptGroovyDeterministicWithVariable() throws Exception {
+        given();
+        OperationResult result = createOperationResult();
+
+        rememberScriptExecutionCount();
+
+        ExpressionType expressionType = parseExpression(EXPRESSION_SCRIPT_GROOVY_DETERMINISTIC_VARIABLE_FILE);
+
+        when("the script is evaluated twice with the same source value");
+        for (int i = 0; i < 2; i++) {
+            PrismValueDeltaSetTriple<PrismPropertyValue<String>> outputTriple = evaluatePropertyExpression(
+                    expressionType, PrimitiveType.STRING,
+                    new ExpressionEvaluationContext(prepareStringSources(), prepareBasicVariables(), getTestNameShort(), null),
+                    result);
+            assertOutputTriple(outputTriple)
+                    .zeroSet()
+                    .assertSinglePropertyValue("X-" + INPUT_VALUE);
+        }
+
+        then("the script is executed each time");
+        assertScriptExecutionIncrement(2);
+    }
+
     @Test
     public void test200IterationCondition() throws Exception {
         // GIVEN
@@ -384,6 +486,16 @@ public class TestExpression extends AbstractModelCommonTest {
         return new Source<>(inputProp, null, inputProp, ExpressionConstants.VAR_INPUT_QNAME, propDef);
     }
 
+    protected Source<PrismPropertyValue<String>, PrismPropertyDefinition<String>> prepareStringSource(
+            String name, String value) {
+        ItemName sourceName = new ItemName(SchemaConstants.NS_C, name);
+        PrismPropertyDefinition<String> propDef = prismContext.definitionFactory()
+                .createPropertyDefinition(sourceName, PrimitiveType.STRING.getQname());
+        PrismProperty<String> sourceProp = prismContext.itemFactory().createProperty(sourceName, propDef);
+        sourceProp.add(prismContext.itemFactory().createPropertyValue(value));
+        return new Source<>(sourceProp, null, sourceProp, sourceName, propDef);
+    }
+
     protected Collection<Source<?, ?>> prepareStringSources() throws SchemaException {
         Collection<Source<?, ?>> sources = new ArrayList<>();
         sources.add(prepareStringSource());
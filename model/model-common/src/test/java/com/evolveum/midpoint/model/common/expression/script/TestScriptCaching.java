@@ -16,6 +16,8 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 import javax.xml.namespace.QName;
 
 import org.testng.AssertJUnit;
@@ -122,6 +124,72 @@ public class TestScriptCaching extends AbstractUnitTest
         assertTrue("Even Horatio was wrong! " + horatio1Time + " -> " + horatio2Time, horatio2Time <= horatio1Time);
     }
 
+    @Test
+    public void testPrecompile() throws Exception {
+        given("a script that was not evaluated yet");
+        ScriptExpressionEvaluatorType scriptType = parseScriptType("expression-func-concatname.xml");
+        evaluator.getScriptCache().clear();
+        InternalMonitor.reset();
+
+        when("the script is precompiled");
+        scriptExpressionfactory.precompile(scriptType, "precompile");
+
+        then("it is compiled but not executed");
+        assertScriptMonitor(1, 0, "precompile");
+
+        and("it is not compiled again when evaluated");
+        executeScript("expression-func-concatname.xml", "Horatio Torquemada Marley", "after precompile");
+        assertScriptMonitor(1, 1, "after precompile");
+    }
+
+    @Test
+    public void testBoundedCache() throws Exception {
+        given("a cache for two scripts");
+        ScriptCache<Void, String> cache = new ScriptCache<>(2);
+
+        when("three scripts are compiled");
+        for (String code : List.of("a", "b", "c")) {
+            cache.getOrCompileCode(null, code, () -> "compiled-" + code);
+        }
+
+        then("the least recently used one is evicted");
+        assertEquals("Wrong cache size", 2, cache.size());
+        assertEquals("Wrong eviction count", 1, cache.getStats().evictionCount());
+        AssertJUnit.assertNull("Evicted script still present", cache.getCode(null, "a"));
+        assertEquals("Wrong cached code", "compiled-c", cache.getCode(null, "c"));
+    }
+
+    @Test
+    public void testConcurrentCompilation() throws Exception {
+        given("a cache and a slow compiler");
+        ScriptCache<Void, String> cache = new ScriptCache<>();
+        AtomicInteger compilations = new AtomicInteger();
+        int threads = 8;
+        CountDownLatch startLatch = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+
+        when("the same script is requested by more threads at once");
+        List<Future<String>> futures = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            futures.add(executor.submit(() -> {
+                startLatch.await();
+                return cache.getOrCompileCode(null, "code", () -> {
+                    compilations.incrementAndGet();
+                    Thread.sleep(100);
+                    return "compiled";
+                });
+            }));
+        }
+        startLatch.countDown();
+        for (Future<String> future : futures) {
+            assertEquals("Wrong compiled code", "compiled", future.get(10, TimeUnit.SECONDS));
+        }
+        executor.shutdown();
+
+        then("the script is compiled only once");
+        assertEquals("Wrong number of compilations", 1, compilations.get());
+    }
+
     private void assertScriptMonitor(int expCompilations, int expExecutions, String desc) {
         assertEquals("Unexpected number of script compilations after " + desc, expCompilations, InternalMonitor.getCount(InternalCounters.SCRIPT_COMPILE_COUNT));
         assertEquals("Unexpected number of script executions after " + desc, expExecutions, InternalMonitor.getCount(InternalCounters.SCRIPT_EXECUTION_COUNT));
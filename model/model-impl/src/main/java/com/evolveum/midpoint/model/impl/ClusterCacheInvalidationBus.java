@@ -0,0 +1,505 @@
+/*
+ * Copyright (C) 2010-2022 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+package com.evolveum.midpoint.model.impl;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.ws.rs.core.Response;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.apache.commons.configuration2.Configuration;
+import org.jetbrains.annotations.NotNull;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.stereotype.Component;
+
+import com.evolveum.midpoint.common.configuration.api.MidpointConfiguration;
+import com.evolveum.midpoint.model.api.util.ClusterServiceConsts;
+import com.evolveum.midpoint.prism.PrismContext;
+import com.evolveum.midpoint.prism.PrismObject;
+import com.evolveum.midpoint.prism.query.ObjectQuery;
+import com.evolveum.midpoint.schema.constants.ObjectTypes;
+import com.evolveum.midpoint.schema.metrics.MetricsCollector;
+import com.evolveum.midpoint.schema.metrics.MetricsRegistry;
+import com.evolveum.midpoint.schema.metrics.PrometheusTextWriter;
+import com.evolveum.midpoint.schema.result.OperationResult;
+import com.evolveum.midpoint.task.api.ClusterExecutionHelper;
+import com.evolveum.midpoint.task.api.TaskManager;
+import com.evolveum.midpoint.util.exception.SchemaException;
+import com.evolveum.midpoint.util.logging.LoggingUtils;
+import com.evolveum.midpoint.util.logging.Trace;
+import com.evolveum.midpoint.util.logging.TraceManager;
+import com.evolveum.midpoint.xml.ns._public.common.api_types_3.CacheInvalidationEventListType;
+import com.evolveum.midpoint.xml.ns._public.common.api_types_3.CacheInvalidationEventType;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.NodeType;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.ObjectType;
+
+/**
+ * Distributes cluster-wide cache invalidations asynchronously.
+ *
+ * Invalidation events are queued and duplicates are coalesced until the next flush (see {@link #KEY_FLUSH_INTERVAL}).
+ * Each flush sends all queued events to each other node as a single batch using
+ * {@link ClusterServiceConsts#EVENT_INVALIDATION_BATCH} endpoint.
+ * Each node has its own queue and at most one batch in flight, so a slow node does not delay the others
+ * or the threads modifying the objects.
+ * If the queue of a node grows over {@link #KEY_MAX_QUEUE_SIZE}, it is collapsed to a single global invalidation.
+ *
+ * The list of other nodes is cached for {@link #KEY_NODE_LIST_REFRESH_INTERVAL}, so flushes do not search the repository.
+ * A new node gets invalidations after the next refresh, entries in its caches are at most that old.
+ * Queue depth, lag and counters are exported as `midpoint_cluster_cache_invalidation_...` metrics.
+ *
+ * The bus is used only if enabled by {@link #KEY_ASYNCHRONOUS} in `midpoint.clusterCacheInvalidation`
+ * section of `config.xml`, otherwise {@link ClusterCacheListener} invalidates caches on other nodes synchronously.
+ */
+@Component
+@DependsOn({ "midpointConfiguration" })
+public class ClusterCacheInvalidationBus {
+
+    private static final Trace LOGGER = TraceManager.getTrace(ClusterCacheInvalidationBus.class);
+
+    public static final String CONFIGURATION_SECTION = "midpoint.clusterCacheInvalidation";
+
+    private static final String KEY_ASYNCHRONOUS = "asynchronous";
+    private static final String KEY_FLUSH_INTERVAL = "flushInterval";
+    private static final String KEY_MAX_QUEUE_SIZE = "maxQueueSize";
+    private static final String KEY_NODE_LIST_REFRESH_INTERVAL = "nodeListRefreshInterval";
+
+    private static final long DEFAULT_FLUSH_INTERVAL = 100; // ms
+    private static final int DEFAULT_MAX_QUEUE_SIZE = 10_000;
+    private static final long DEFAULT_NODE_LIST_REFRESH_INTERVAL = 10_000; // ms
+
+    private static final String METRIC_PREFIX = "midpoint_cluster_cache_invalidation_";
+
+    private static final String OP_FLUSH = ClusterCacheInvalidationBus.class.getName() + ".flush";
+
+    @Autowired private MidpointConfiguration midpointConfiguration;
+    @Autowired private TaskManager taskManager;
+    @Autowired private ClusterExecutionHelper clusterExecutionHelper;
+    @Autowired private PrismContext prismContext;
+
+    private boolean asynchronous;
+    private long flushInterval;
+    private int maxQueueSize;
+    private long nodeListRefreshInterval;
+
+    /** Events not yet distributed to node queues. Guarded by itself. */
+    private InvalidationBatch pendingEvents = new InvalidationBatch();
+
+    /** Queues for other nodes, by node identifier. */
+    private final Map<String, NodeQueue> nodeQueues = new ConcurrentHashMap<>();
+
+    /** Other nodes as of {@link #otherNodesTimestamp}, null if not known yet. Accessed only by the flush thread. */
+    private List<NodeType> otherNodes;
+    private long otherNodesTimestamp;
+
+    private ScheduledExecutorService flushExecutor;
+    private ExecutorService sendExecutorService;
+    private Executor sendExecutor;
+
+    private final MetricsCollector metricsCollector = this::collectMetrics;
+
+    // metrics
+    private final AtomicLong eventsReceived = new AtomicLong();
+    private final AtomicLong eventsSent = new AtomicLong();
+    private final AtomicLong batchesSent = new AtomicLong();
+    private final AtomicLong queueOverflows = new AtomicLong();
+    private volatile long lastSendLag;
+
+    public ClusterCacheInvalidationBus() {
+    }
+
+    /** For tests, the bus is asynchronous, flushes are invoked explicitly and batches are sent by the executor. */
+    ClusterCacheInvalidationBus(int maxQueueSize, long nodeListRefreshInterval, Executor sendExecutor) {
+        this.asynchronous = true;
+        this.maxQueueSize = maxQueueSize;
+        this.nodeListRefreshInterval = nodeListRefreshInterval;
+        this.sendExecutor = sendExecutor;
+    }
+
+    @PostConstruct
+    public void initialize() {
+        Configuration c = midpointConfiguration.getConfiguration(CONFIGURATION_SECTION);
+        asynchronous = c.getBoolean(KEY_ASYNCHRONOUS, false);
+        flushInterval = Math.max(1, c.getLong(KEY_FLUSH_INTERVAL, DEFAULT_FLUSH_INTERVAL));
+        maxQueueSize = Math.max(1, c.getInt(KEY_MAX_QUEUE_SIZE, DEFAULT_MAX_QUEUE_SIZE));
+        nodeListRefreshInterval = Math.max(0, c.getLong(KEY_NODE_LIST_REFRESH_INTERVAL, DEFAULT_NODE_LIST_REFRESH_INTERVAL));
+        if (!asynchronous) {
+            return;
+        }
+
+        LOGGER.info("Asynchronous cluster cache invalidation enabled, flush interval {} ms, max queue size {}, "
+                + "node list refresh interval {} ms", flushInterval, maxQueueSize, nodeListRefreshInterval);
+        flushExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+                .setNameFormat("cluster-cache-invalidation-flush")
+                .setDaemon(true)
+                .build());
+        sendExecutorService = Executors.newCachedThreadPool(new ThreadFactoryBuilder()
+                .setNameFormat("cluster-cache-invalidation-send-%d")
+                .setDaemon(true)
+                .build());
+        sendExecutor = sendExecutorService;
+        flushExecutor.scheduleWithFixedDelay(this::flushSafely, flushInterval, flushInterval, TimeUnit.MILLISECONDS);
+        MetricsRegistry.INSTANCE.registerCollector(metricsCollector);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (flushExecutor != null) {
+            MetricsRegistry.INSTANCE.unregisterCollector(metricsCollector);
+            flushExecutor.shutdownNow();
+            sendExecutorService.shutdown();
+            try {
+                if (!sendExecutorService.awaitTermination(flushInterval * 10, TimeUnit.MILLISECONDS)) {
+                    LOGGER.warn("Some cache invalidation batches were not sent before shutdown");
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    public boolean isAsynchronous() {
+        return asynchronous;
+    }
+
+    /**
+     * Queues the invalidation for other nodes, this never blocks on the network.
+     * Null type means invalidation of everything, null OID means all objects of the type.
+     */
+    public <O extends ObjectType> void enqueue(Class<O> type, String oid) {
+        eventsReceived.incrementAndGet();
+        synchronized (this) {
+            pendingEvents.add(type, oid);
+        }
+    }
+
+    private void flushSafely() {
+        try {
+            flush();
+        } catch (Throwable t) {
+            LoggingUtils.logUnexpectedException(LOGGER, "Couldn't flush cluster cache invalidation events", t);
+        }
+    }
+
+    /** Invoked by the flush thread only (or by tests). */
+    void flush() {
+        InvalidationBatch toDistribute;
+        synchronized (this) {
+            toDistribute = pendingEvents;
+            pendingEvents = new InvalidationBatch();
+        }
+
+        OperationResult result = new OperationResult(OP_FLUSH);
+        if (!toDistribute.isEmpty()) {
+            distributeToNodeQueues(toDistribute, result);
+        }
+
+        for (NodeQueue nodeQueue : nodeQueues.values()) {
+            if (!nodeQueue.isEmpty() && nodeQueue.sending.compareAndSet(false, true)) {
+                sendExecutor.execute(() -> send(nodeQueue));
+            }
+        }
+
+        if (LOGGER.isTraceEnabled()) {
+            LOGGER.trace("Cache invalidation bus flushed, queue depth: {}, lag: {} ms, received: {}, sent: {} in {} batches",
+                    getQueueDepth(), getLag(), eventsReceived.get(), eventsSent.get(), batchesSent.get());
+        }
+    }
+
+    private void distributeToNodeQueues(InvalidationBatch toDistribute, OperationResult result) {
+        if (!isClustered()) {
+            LOGGER.trace("Node is not part of a cluster, skipping remote cache entry invalidation");
+            nodeQueues.clear();
+            otherNodes = null;
+            return;
+        }
+
+        List<NodeType> nodes = getOtherNodes(result);
+        if (nodes == null) {
+            return; // Events are lost here, just like when synchronous invalidation fails.
+        }
+
+        Set<String> currentNodes = new HashSet<>();
+        for (NodeType node : nodes) {
+            String nodeIdentifier = node.getNodeIdentifier();
+            currentNodes.add(nodeIdentifier);
+            NodeQueue nodeQueue = nodeQueues.computeIfAbsent(nodeIdentifier, k -> new NodeQueue());
+            nodeQueue.add(node, toDistribute);
+        }
+        nodeQueues.keySet().retainAll(currentNodes);
+    }
+
+    /** Returns cached list of other nodes, refreshing it if it is too old. Null if the nodes are not known. */
+    private List<NodeType> getOtherNodes(OperationResult result) {
+        long now = System.currentTimeMillis();
+        if (otherNodes != null && now - otherNodesTimestamp < nodeListRefreshInterval) {
+            return otherNodes;
+        }
+        try {
+            otherNodes = searchOtherNodes(result);
+            otherNodesTimestamp = now;
+        } catch (Exception e) {
+            // The previous list (if any) is still better than nothing, we will try again with the next flush.
+            LoggingUtils.logUnexpectedException(LOGGER, "Couldn't find nodes to send cache invalidation events to", e);
+        }
+        return otherNodes;
+    }
+
+    boolean isClustered() {
+        return taskManager.isClustered();
+    }
+
+    List<NodeType> searchOtherNodes(OperationResult result) throws SchemaException {
+        ObjectQuery query = prismContext.queryFor(NodeType.class)
+                .not().item(NodeType.F_NODE_IDENTIFIER).eq(taskManager.getNodeId())
+                .build();
+        List<NodeType> nodes = new ArrayList<>();
+        for (PrismObject<NodeType> node : taskManager.searchObjects(NodeType.class, query, null, result)) {
+            nodes.add(node.asObjectable());
+        }
+        return nodes;
+    }
+
+    private void send(NodeQueue nodeQueue) {
+        try {
+            NodeType node;
+            InvalidationBatch batch;
+            synchronized (nodeQueue) {
+                node = nodeQueue.node;
+                batch = nodeQueue.events;
+                nodeQueue.events = new InvalidationBatch();
+            }
+            if (batch.isEmpty()) {
+                return;
+            }
+
+            CacheInvalidationEventListType eventList = batch.toEventList();
+            sendBatch(node, eventList, new OperationResult(OP_FLUSH));
+
+            eventsSent.addAndGet(eventList.getEvent().size());
+            batchesSent.incrementAndGet();
+            lastSendLag = System.currentTimeMillis() - batch.firstEventTimestamp;
+        } catch (Throwable t) {
+            LoggingUtils.logUnexpectedException(LOGGER, "Couldn't send cache invalidation events", t);
+        } finally {
+            nodeQueue.sending.set(false);
+        }
+    }
+
+    void sendBatch(NodeType node, CacheInvalidationEventListType eventList, OperationResult result) {
+        // Regular cache invalidation can be skipped for nodes not checking in. Cache entries will expire on such nodes
+        // eventually. This is the same as with synchronous invalidation.
+        clusterExecutionHelper.execute(node, (client, node1, result1) -> {
+            client.path(ClusterServiceConsts.EVENT_INVALIDATION_BATCH);
+            Response response = client.post(eventList);
+            Response.StatusType statusInfo = response.getStatusInfo();
+            if (statusInfo.getFamily() != Response.Status.Family.SUCCESSFUL) {
+                LOGGER.warn("Cluster-wide cache clearance of {} events finished on {} with status {}, {}",
+                        eventList.getEvent().size(), node1.getNodeIdentifier(),
+                        statusInfo.getStatusCode(), statusInfo.getReasonPhrase());
+            } else {
+                LOGGER.debug("Cluster-wide cache clearance of {} events finished on {} with status {}, {}",
+                        eventList.getEvent().size(), node1.getNodeIdentifier(),
+                        statusInfo.getStatusCode(), statusInfo.getReasonPhrase());
+            }
+            response.close();
+        }, null, "cache invalidation", result);
+    }
+
+    /** Number of (coalesced) events waiting for distribution or sending to other nodes. */
+    public int getQueueDepth() {
+        int depth;
+        synchronized (this) {
+            depth = pendingEvents.size();
+        }
+        for (NodeQueue nodeQueue : nodeQueues.values()) {
+            synchronized (nodeQueue) {
+                depth += nodeQueue.events.size();
+            }
+        }
+        return depth;
+    }
+
+    /** Age of the oldest event not yet sent to all other nodes in milliseconds, 0 if there is none. */
+    public long getLag() {
+        long oldest = Long.MAX_VALUE;
+        synchronized (this) {
+            if (!pendingEvents.isEmpty()) {
+                oldest = pendingEvents.firstEventTimestamp;
+            }
+        }
+        for (NodeQueue nodeQueue : nodeQueues.values()) {
+            synchronized (nodeQueue) {
+                if (!nodeQueue.events.isEmpty()) {
+                    oldest = Math.min(oldest, nodeQueue.events.firstEventTimestamp);
+                }
+            }
+        }
+        return oldest != Long.MAX_VALUE ? System.currentTimeMillis() - oldest : 0;
+    }
+
+    /** Time between the first event of the last sent batch and finishing of the sending, in milliseconds. */
+    public long getLastSendLag() {
+        return lastSendLag;
+    }
+
+    public long getEventsReceived() {
+        return eventsReceived.get();
+    }
+
+    public long getEventsSent() {
+        return eventsSent.get();
+    }
+
+    public long getBatchesSent() {
+        return batchesSent.get();
+    }
+
+    /** Number of times a node queue was collapsed to a global invalidation because it was too big. */
+    public long getQueueOverflows() {
+        return queueOverflows.get();
+    }
+
+    void collectMetrics(@NotNull PrometheusTextWriter writer) {
+        writeMetric(writer, "queue_depth", "Number of coalesced cache invalidation events waiting to be sent to other nodes.",
+                "gauge", getQueueDepth());
+        writeMetric(writer, "lag_seconds", "Age of the oldest cache invalidation event not yet sent to all other nodes.",
+                "gauge", getLag() / 1000.0);
+        writeMetric(writer, "last_send_lag_seconds", "Time between the first event of the last sent batch and its delivery.",
+                "gauge", lastSendLag / 1000.0);
+        writeMetric(writer, "events_received_total", "Number of cache invalidation events queued for other nodes.",
+                "counter", eventsReceived.get());
+        writeMetric(writer, "events_sent_total", "Number of (coalesced) cache invalidation events sent to other nodes.",
+                "counter", eventsSent.get());
+        writeMetric(writer, "batches_sent_total", "Number of cache invalidation batches sent to other nodes.",
+                "counter", batchesSent.get());
+        writeMetric(writer, "queue_overflows_total", "Number of node queues collapsed to a global invalidation.",
+                "counter", queueOverflows.get());
+    }
+
+    private void writeMetric(PrometheusTextWriter writer, String name, String help, String type, double value) {
+        writer.header(METRIC_PREFIX + name, help, type);
+        writer.sample(METRIC_PREFIX + name, value);
+    }
+
+    private void writeMetric(PrometheusTextWriter writer, String name, String help, String type, long value) {
+        writer.header(METRIC_PREFIX + name, help, type);
+        writer.sample(METRIC_PREFIX + name, value);
+    }
+
+    private class NodeQueue {
+        private final AtomicBoolean sending = new AtomicBoolean();
+        private NodeType node; // updated on each distribution, as its URL or state may change
+        private InvalidationBatch events = new InvalidationBatch();
+
+        private synchronized void add(NodeType node, InvalidationBatch batch) {
+            this.node = node;
+            events.addAll(batch);
+            if (events.size() > maxQueueSize) {
+                LOGGER.debug("Cache invalidation queue for node {} is full, collapsing it to a global invalidation",
+                        node.getNodeIdentifier());
+                queueOverflows.incrementAndGet();
+                events.add(null, null);
+            }
+        }
+
+        private synchronized boolean isEmpty() {
+            return events.isEmpty();
+        }
+    }
+
+    /**
+     * Coalesced invalidation events.
+     * Global invalidation covers everything, invalidation of the whole type covers all its OIDs.
+     * Not thread-safe, guarded by its owner.
+     */
+    private static class InvalidationBatch {
+        private boolean global;
+        private final Set<Class<? extends ObjectType>> wholeTypes = new LinkedHashSet<>();
+        private final Map<Class<? extends ObjectType>, Set<String>> oidsByType = new LinkedHashMap<>();
+        private long firstEventTimestamp;
+
+        private void add(Class<? extends ObjectType> type, String oid) {
+            if (isEmpty()) {
+                firstEventTimestamp = System.currentTimeMillis();
+            }
+            if (global) {
+                return;
+            }
+            if (type == null) {
+                if (oid != null) {
+                    LOGGER.warn("Cannot invalidate object type null with specific OID. Converting to global invalidation (type=null, oid=null).");
+                }
+                global = true;
+                wholeTypes.clear();
+                oidsByType.clear();
+            } else if (oid == null) {
+                wholeTypes.add(type);
+                oidsByType.remove(type);
+            } else if (!wholeTypes.contains(type)) {
+                oidsByType.computeIfAbsent(type, k -> new LinkedHashSet<>()).add(oid);
+            }
+        }
+
+        private void addAll(InvalidationBatch other) {
+            if (other.isEmpty()) {
+                return;
+            }
+            long timestamp = isEmpty()
+                    ? other.firstEventTimestamp
+                    : Math.min(firstEventTimestamp, other.firstEventTimestamp);
+            if (other.global) {
+                add(null, null);
+            } else {
+                other.wholeTypes.forEach(type -> add(type, null));
+                other.oidsByType.forEach((type, oids) -> oids.forEach(oid -> add(type, oid)));
+            }
+            firstEventTimestamp = timestamp;
+        }
+
+        private boolean isEmpty() {
+            return !global && wholeTypes.isEmpty() && oidsByType.isEmpty();
+        }
+
+        private int size() {
+            if (global) {
+                return 1;
+            }
+            int size = wholeTypes.size();
+            for (Set<String> oids : oidsByType.values()) {
+                size += oids.size();
+            }
+            return size;
+        }
+
+        @NotNull
+        private CacheInvalidationEventListType toEventList() {
+            CacheInvalidationEventListType eventList = new CacheInvalidationEventListType();
+            List<CacheInvalidationEventType> events = eventList.getEvent();
+            if (global) {
+                events.add(new CacheInvalidationEventType());
+                return eventList;
+            }
+            for (Class<? extends ObjectType> type : wholeTypes) {
+                events.add(createEvent(type, null));
+            }
+            oidsByType.forEach((type, oids) -> oids.forEach(oid -> events.add(createEvent(type, oid))));
+            return eventList;
+        }
+
+        private CacheInvalidationEventType createEvent(Class<? extends ObjectType> type, String oid) {
+            CacheInvalidationEventType event = new CacheInvalidationEventType();
+            event.setType(ObjectTypes.getRestTypeFromClass(type));
+            event.setOid(oid);
+            return event;
+        }
+    }
+}
@@ -38,6 +38,16 @@ public class ClusterCacheListener implements CacheListener {
     @Autowired private TaskManager taskManager;
     @Autowired private CacheDispatcher cacheDispatcher;
     @Autowired private ClusterExecutionHelper clusterExecutionHelper;
+    @Autowired private ClusterCacheInvalidationBus clusterCacheInvalidationBus;
+
+    public ClusterCacheListener() {
+    }
+
+    /** For tests of the asynchronous invalidation. */
+    ClusterCacheListener(TaskManager taskManager, ClusterCacheInvalidationBus clusterCacheInvalidationBus) {
+        this.taskManager = taskManager;
+        this.clusterCacheInvalidationBus = clusterCacheInvalidationBus;
+    }
 
     @PostConstruct
     public void addListener() {
@@ -52,6 +62,11 @@ public class ClusterCacheListener implements CacheListener {
             return;
         }
 
+        if (clusterCacheInvalidationBus.isAsynchronous()) {
+            clusterCacheInvalidationBus.enqueue(type, oid);
+            return;
+        }
+
         Task task = taskManager.createTaskInstance("invalidate");
         OperationResult result = task.getResult();
 
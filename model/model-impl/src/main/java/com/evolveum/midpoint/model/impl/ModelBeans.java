@@ -17,7 +17,9 @@ import com.evolveum.midpoint.model.common.ModelCommonBeans;
 import com.evolveum.midpoint.model.common.SystemObjectCache;
 import com.evolveum.midpoint.model.impl.correlator.BuiltInResultCreator;
 import com.evolveum.midpoint.model.impl.correlation.CorrelationCaseManager;
+import com.evolveum.midpoint.model.impl.expr.SequenceReservoir;
 import com.evolveum.midpoint.model.impl.lens.*;
+import com.evolveum.midpoint.model.impl.lens.assignments.RoleInducementGraphCache;
 import com.evolveum.midpoint.model.impl.lens.projector.ContextLoader;
 import com.evolveum.midpoint.model.impl.lens.projector.Projector;
 import com.evolveum.midpoint.model.impl.lens.projector.credentials.CredentialsProcessor;
@@ -129,4 +131,6 @@ public class ModelBeans {
     @Autowired public CorrelationCaseManager correlationCaseManager;
     @Autowired public CorrelationService correlationService;
     @Autowired public BuiltInResultCreator builtInResultCreator;
+    @Autowired public SequenceReservoir sequenceReservoir;
+    @Autowired public RoleInducementGraphCache roleInducementGraphCache;
 }
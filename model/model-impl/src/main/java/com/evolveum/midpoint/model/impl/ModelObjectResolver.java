@@ -6,9 +6,7 @@
  */
 package com.evolveum.midpoint.model.impl;
 
-import java.util.ArrayList;
-import java.util.Collection;
-import java.util.List;
+import java.util.*;
 import java.util.Objects;
 import java.util.function.Function;
 import javax.xml.namespace.QName;
@@ -89,16 +87,21 @@ public class ModelObjectResolver implements ObjectResolver {
             //noinspection unchecked
             return refVal.getObject();
         }
-        Class<?> typeClass = ObjectType.class;
+        Class<?> typeClass = determineTargetClass(refVal);
+        return (PrismObject<O>) (getObjectSimple((Class<O>) typeClass, oid, options, task, result)).asPrismObject();
+    }
+
+    private @NotNull Class<?> determineTargetClass(PrismReferenceValue refVal) {
         QName typeQName = refVal.getTargetType();
         if (typeQName == null && refVal.getParent() != null && refVal.getParent().getDefinition() != null) {
             PrismReferenceDefinition refDef = (PrismReferenceDefinition) refVal.getParent().getDefinition();
             typeQName = refDef.getTargetTypeName();
         }
         if (typeQName != null) {
-            typeClass = prismContext.getSchemaRegistry().determineCompileTimeClass(typeQName);
+            return prismContext.getSchemaRegistry().determineCompileTimeClass(typeQName);
+        } else {
+            return ObjectType.class;
         }
-        return (PrismObject<O>) (getObjectSimple((Class<O>) typeClass, oid, options, task, result)).asPrismObject();
     }
 
     public <T extends ObjectType> T getObjectSimple(Class<T> clazz, String oid, GetOperationOptions options, Task task,
@@ -346,6 +349,7 @@ public class ModelObjectResolver implements ObjectResolver {
     public void resolveAllReferences(Collection<PrismContainerValue<?>> pcvs, Object taskObject, OperationResult result) {
         Session session = openResolutionSession(null);
         Task task = (Task) taskObject;
+        List<PrismReferenceValue> references = new ArrayList<>();
         ConfigurableVisitor<?> visitor = new ConfigurableVisitor() {
             @Override
             public boolean shouldVisitEmbeddedObjects() {
@@ -363,11 +367,64 @@ public class ModelObjectResolver implements ObjectResolver {
             @Override
             public void visit(Visitable visitable) {
                 if (visitable instanceof PrismReferenceValue) {
-                    resolveReference((PrismReferenceValue) visitable, "resolving object reference", session, task, result);
+                    references.add((PrismReferenceValue) visitable);
                 }
             }
         };
         pcvs.forEach(pcv -> pcv.accept(visitor));
+        prefetchFromRepository(references, session, task, result);
+        for (PrismReferenceValue reference : references) {
+            resolveReference(reference, "resolving object reference", session, task, result);
+        }
+    }
+
+    /**
+     * Reads objects stored in the repository in bulk (one call per type) and puts them into the session,
+     * so they need not be fetched one by one. Objects that are not found here, or whose type is not known,
+     * are resolved individually later, with the usual error handling.
+     */
+    private void prefetchFromRepository(List<PrismReferenceValue> references, Session session, Task task,
+            OperationResult result) {
+        Set<String> embedded = new HashSet<>();
+        Map<Class<? extends ObjectType>, Set<String>> oidsByClass = new LinkedHashMap<>();
+        for (PrismReferenceValue reference : references) {
+            String oid = reference.getOid();
+            if (oid == null) {
+                continue;
+            }
+            if (reference.getObject() != null) {
+                embedded.add(oid);
+                continue;
+            }
+            Class<?> clazz = determineTargetClass(reference);
+            if (clazz != ObjectType.class && ObjectType.class.isAssignableFrom(clazz)) {
+                //noinspection unchecked
+                oidsByClass.computeIfAbsent((Class<? extends ObjectType>) clazz, k -> new LinkedHashSet<>())
+                        .add(oid);
+            }
+        }
+        Collection<SelectorOptions<GetOperationOptions>> options = SelectorOptions.createCollection(session.getOptions());
+        for (Map.Entry<Class<? extends ObjectType>, Set<String>> entry : oidsByClass.entrySet()) {
+            Set<String> oids = entry.getValue();
+            oids.removeAll(embedded);
+            if (oids.size() < 2 || getObjectManager(entry.getKey(), options) != ObjectTypes.ObjectManager.REPOSITORY) {
+                continue; // nothing to gain here
+            }
+            try {
+                for (PrismObject<? extends ObjectType> object :
+                        cacheRepositoryService.getObjects(entry.getKey(), oids, options, result).values()) {
+                    if (hookRegistry != null) {
+                        for (ReadHook hook : hookRegistry.getAllReadHooks()) {
+                            hook.invoke(object, options, task, result);
+                        }
+                    }
+                    session.put(object.getOid(), object);
+                }
+            } catch (CommonException | RuntimeException e) {
+                LoggingUtils.logExceptionAsWarning(LOGGER, "Couldn't read {} objects of type {} in bulk, "
+                        + "will resolve them one by one", e, oids.size(), entry.getKey().getSimpleName());
+            }
+        }
     }
 
     @Override
@@ -100,6 +100,17 @@ public class CleanupActivityHandler
                 stateDef,
                 parentActivity));
 
+        children.add(EmbeddedActivity.create(
+                parentActivity.getDefinition().clone(),
+                (context, result) ->
+                        new CleanupPartialActivityRun<>(
+                                context, Part.AUDIT_PARTITIONS, CleanupPoliciesType::getAuditPartitions,
+                                this::maintainAuditPartitions),
+                null,
+                (i) -> Part.AUDIT_PARTITIONS.identifier,
+                stateDef,
+                parentActivity));
+
         children.add(EmbeddedActivity.create(
                 parentActivity.getDefinition().clone(),
                 (context, result) ->
@@ -165,6 +176,14 @@ public class CleanupActivityHandler
         auditService.cleanupAudit(p, result);
     }
 
+    private void maintainAuditPartitions(AuditPartitionsPolicyType p, RunningTask task, OperationResult result)
+            throws CommonException {
+        // Dropping of the partitions is driven by audit records cleanup, so the same authorization is used.
+        securityEnforcer.authorize(ModelAuthorizationAction.CLEANUP_AUDIT_RECORDS.getUrl(), null,
+                AuthorizationParameters.EMPTY, null, task, result);
+        auditService.maintainAuditPartitions(p, result);
+    }
+
     private void cleanupTasks(CleanupPolicyType p, RunningTask task, OperationResult result)
             throws SchemaException, ObjectNotFoundException {
         // Authorization by selector
@@ -236,6 +255,8 @@ public class CleanupActivityHandler
         // TODO progress
         AUDIT_RECORDS("Audit records cleanup", SchemaConstants.ID_AUDIT_RECORDS_CLEANUP, false),
 
+        AUDIT_PARTITIONS("Audit partitions maintenance", SchemaConstants.ID_AUDIT_PARTITIONS_MAINTENANCE, false),
+
         CLOSED_TASKS("Closed tasks", SchemaConstants.ID_CLOSED_TASKS_CLEANUP, true),
 
         CLOSED_CASES("Closed cases", SchemaConstants.ID_CLOSED_CASES_CLEANUP, true),
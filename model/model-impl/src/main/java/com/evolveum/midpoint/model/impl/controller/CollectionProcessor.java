@@ -72,6 +72,7 @@ public class CollectionProcessor {
     @Autowired private ArchetypeManager archetypeManager;
     @Autowired private ExpressionFactory expressionFactory;
     @Autowired private SchemaService schemaService;
+    @Autowired private MaintainedCollectionCounts maintainedCollectionCounts;
 
     Collection<EvaluatedPolicyRule> evaluateCollectionPolicyRules(PrismObject<ObjectCollectionType> collection,
             CompiledObjectCollectionView collectionView, Class<? extends ObjectType> targetTypeClass,
@@ -218,6 +219,28 @@ public class CollectionProcessor {
         return stats;
     }
 
+    /**
+     * Like {@link #determineCollectionStats(CompiledObjectCollectionView, Task, OperationResult)}, but the counts
+     * are taken from {@link MaintainedCollectionCounts}, i.e. they are not computed on each call and they may be
+     * slightly out of date. Objects not counted by the repository (e.g. shadows) are counted live.
+     */
+    public <O extends ObjectType> CollectionStats determineMaintainedCollectionStats(CompiledObjectCollectionView collectionView,
+            long reconciliationInterval, Task task, OperationResult result) throws SchemaException, ObjectNotFoundException,
+            SecurityViolationException, ConfigurationException, CommunicationException, ExpressionEvaluationException {
+        Class<O> targetClass = collectionView.getTargetClass(prismContext);
+        if (targetClass == null || !MaintainedCollectionCounts.isApplicable(targetClass)) {
+            return determineCollectionStats(collectionView, task, result);
+        }
+        CollectionStats stats = new CollectionStats();
+        stats.setObjectCount(maintainedCollectionCounts.getCount(targetClass,
+                evaluateExpressionsInFilter(collectionView.getFilter(), result, task),
+                collectionView.getOptions(), reconciliationInterval, task, result));
+        stats.setDomainCount(maintainedCollectionCounts.getCount(targetClass,
+                evaluateExpressionsInFilter(collectionView.getDomainFilter(), result, task),
+                collectionView.getDomainOptions(), reconciliationInterval, task, result));
+        return stats;
+    }
+
     private <O extends ObjectType> Integer countObjects(Class<O> targetTypeClass, ObjectFilter filter, Collection<SelectorOptions<GetOperationOptions>> options, Task task, OperationResult result) throws SchemaException, ObjectNotFoundException, SecurityViolationException, ConfigurationException, CommunicationException, ExpressionEvaluationException {
         if (filter == null) {
             return null;
@@ -614,6 +637,14 @@ public class CollectionProcessor {
         if (newDisableCounting != null && (existingView.isDisableCounting() == null || replaceIfExist)) {
             existingView.setDisableCounting(newDisableCounting);
         }
+        Boolean newEstimateCounting = objectListViewType.isEstimateCounting();
+        if (newEstimateCounting != null && (existingView.isEstimateCounting() == null || replaceIfExist)) {
+            existingView.setEstimateCounting(newEstimateCounting);
+        }
+        Boolean newKeysetPaging = objectListViewType.isKeysetPaging();
+        if (newKeysetPaging != null && (existingView.isKeysetPaging() == null || replaceIfExist)) {
+            existingView.setKeysetPaging(newKeysetPaging);
+        }
     }
 
     private void compileDisplayOrder(CompiledObjectCollectionView existingView, GuiObjectListViewType objectListViewType, boolean replaceIfExist) {
@@ -347,7 +347,7 @@ public class DashboardServiceImpl implements DashboardService {
 
             CompiledObjectCollectionView compiledCollection = modelInteractionService.compileObjectCollectionView(
                     collectionSpec, null, task, task.getResult());
-            CollectionStats collStats = modelInteractionService.determineCollectionStats(compiledCollection, task, result);
+            CollectionStats collStats = determineCollectionStats(widget, compiledCollection, task, result);
 
             Integer value = collStats.getObjectCount();//getObjectCount(valueCollection, true, task, result);
             Integer domainValue = collStats.getDomainCount();
@@ -374,6 +374,21 @@ public class DashboardServiceImpl implements DashboardService {
         return null;
     }
 
+    private CollectionStats determineCollectionStats(DashboardWidgetType widget,
+            CompiledObjectCollectionView compiledCollection, Task task, OperationResult result)
+            throws SchemaException, CommunicationException, ConfigurationException, SecurityViolationException,
+            ExpressionEvaluationException, ObjectNotFoundException {
+        DashboardWidgetCountingType counting = widget.getData() != null ? widget.getData().getCounting() : null;
+        if (counting == null || counting.getMode() != DashboardWidgetCountingModeType.MAINTAINED) {
+            return modelInteractionService.determineCollectionStats(compiledCollection, task, result);
+        }
+        long reconciliationInterval = counting.getReconciliationInterval() != null
+                ? counting.getReconciliationInterval().getTimeInMillis(new Date())
+                : MaintainedCollectionCounts.DEFAULT_RECONCILIATION_INTERVAL;
+        return collectionProcessor.determineMaintainedCollectionStats(
+                compiledCollection, reconciliationInterval, task, result);
+    }
+
     private static VariablesMap createVariables(PrismObject<? extends ObjectType> object,
             IntegerStatType statType, Collection<String> policySituations, String storedData) {
         VariablesMap variables = new VariablesMap();
@@ -0,0 +1,405 @@
+/*
+ * Copyright (C) 2010-2022 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+package com.evolveum.midpoint.model.impl.controller;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Component;
+
+import com.evolveum.midpoint.CacheInvalidationContext;
+import com.evolveum.midpoint.model.api.ModelAuthorizationAction;
+import com.evolveum.midpoint.prism.PrismContext;
+import com.evolveum.midpoint.prism.PrismObject;
+import com.evolveum.midpoint.prism.match.MatchingRuleRegistry;
+import com.evolveum.midpoint.prism.query.FilterCreationUtil;
+import com.evolveum.midpoint.prism.query.NoneFilter;
+import com.evolveum.midpoint.prism.query.ObjectFilter;
+import com.evolveum.midpoint.prism.query.PrismQuerySerialization;
+import com.evolveum.midpoint.repo.api.AddObjectResult;
+import com.evolveum.midpoint.repo.api.Cache;
+import com.evolveum.midpoint.repo.api.CacheRegistry;
+import com.evolveum.midpoint.repo.api.DeleteObjectResult;
+import com.evolveum.midpoint.repo.api.ModifyObjectResult;
+import com.evolveum.midpoint.repo.api.RepositoryService;
+import com.evolveum.midpoint.repo.cache.invalidation.RepositoryCacheInvalidationDetails;
+import com.evolveum.midpoint.schema.GetOperationOptions;
+import com.evolveum.midpoint.schema.SelectorOptions;
+import com.evolveum.midpoint.schema.constants.ObjectTypes;
+import com.evolveum.midpoint.schema.result.OperationResult;
+import com.evolveum.midpoint.security.enforcer.api.SecurityEnforcer;
+import com.evolveum.midpoint.task.api.Task;
+import com.evolveum.midpoint.util.exception.*;
+import com.evolveum.midpoint.util.logging.LoggingUtils;
+import com.evolveum.midpoint.util.logging.Trace;
+import com.evolveum.midpoint.util.logging.TraceManager;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.ObjectType;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.SingleCacheStateInformationType;
+
+/**
+ * Maintained ("materialized") counts of objects in collections, used by dashboard widgets
+ * with `maintained` counting mode.
+ *
+ * A count is computed in the repository when it is requested for the first time. Then it is kept in memory
+ * and updated by repository change events (the same ones that invalidate repository cache): old and new state
+ * of the changed object is matched against the collection filter in memory. Events without the object state
+ * (e.g. from other nodes) and filters that cannot be evaluated in memory make the count stale.
+ *
+ * Counts are reconciled (recomputed) by the collection counts reconciliation activity running on this node:
+ * stale ones, and the ones whose reconciliation interval elapsed. This corrects changes that were not seen
+ * by this node. If there is no such activity, a count that was not reconciled for twice its reconciliation interval
+ * is recomputed when requested. Counts that were not requested for {@link #UNUSED_COUNT_EXPIRATION} are dropped.
+ *
+ * The collection filter is combined with the security filter of the current user (as in live counting).
+ * Users with the same effective filter share the count.
+ */
+@Component
+public class MaintainedCollectionCounts implements Cache {
+
+    private static final Trace LOGGER = TraceManager.getTrace(MaintainedCollectionCounts.class);
+    private static final Trace LOGGER_CONTENT = TraceManager.getTrace(MaintainedCollectionCounts.class.getName() + ".content");
+
+    private static final String OP_RECOMPUTE = MaintainedCollectionCounts.class.getName() + ".recompute";
+
+    private static final long UNUSED_COUNT_EXPIRATION = TimeUnit.DAYS.toMillis(1);
+
+    public static final long DEFAULT_RECONCILIATION_INTERVAL = TimeUnit.HOURS.toMillis(1);
+
+    @Autowired private CacheRegistry cacheRegistry;
+    @Autowired @Qualifier("cacheRepositoryService") private RepositoryService repositoryService;
+    @Autowired private SecurityEnforcer securityEnforcer;
+    @Autowired private PrismContext prismContext;
+    @Autowired private MatchingRuleRegistry matchingRuleRegistry;
+
+    private final Map<CountKey, MaintainedCount> counts = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void register() {
+        cacheRegistry.registerCache(this);
+    }
+
+    @PreDestroy
+    public void unregister() {
+        cacheRegistry.unregisterCache(this);
+    }
+
+    /**
+     * Can objects of given type be counted this way? Objects managed by provisioning or task manager cannot,
+     * as their count is not determined by the repository.
+     */
+    public static boolean isApplicable(@NotNull Class<? extends ObjectType> type) {
+        ObjectTypes.ObjectManager objectManager = ObjectTypes.getObjectManagerForClass(type);
+        return objectManager == null
+                || objectManager == ObjectTypes.ObjectManager.MODEL
+                || objectManager == ObjectTypes.ObjectManager.REPOSITORY;
+    }
+
+    /**
+     * Returns maintained count of objects matching the filter (and visible to the current user),
+     * computing it now if it's not known yet. Returns null for null filter, as live counting does.
+     */
+    public <O extends ObjectType> @Nullable Integer getCount(@NotNull Class<O> type, @Nullable ObjectFilter filter,
+            @Nullable Collection<SelectorOptions<GetOperationOptions>> options, long reconciliationInterval,
+            @NotNull Task task, @NotNull OperationResult result)
+            throws SchemaException, ObjectNotFoundException, ExpressionEvaluationException, CommunicationException,
+            ConfigurationException, SecurityViolationException {
+        if (filter == null) {
+            return null;
+        }
+        ObjectFilter securedFilter = securityEnforcer.preProcessObjectFilter(
+                ModelAuthorizationAction.AUTZ_ACTIONS_URLS_SEARCH, null, type, null, filter, null, null, task, result);
+        if (securedFilter == null) {
+            securedFilter = FilterCreationUtil.createAll(prismContext);
+        } else if (securedFilter instanceof NoneFilter) {
+            LOGGER.trace("Not counting objects because the filter is NONE");
+            return 0;
+        }
+        ObjectFilter finalFilter = securedFilter;
+        MaintainedCount count = counts.computeIfAbsent(
+                new CountKey(type, serializeFilter(finalFilter), String.valueOf(options)),
+                k -> new MaintainedCount(type, finalFilter, options));
+        long now = System.currentTimeMillis();
+        count.lastAccess = now;
+        count.reconciliationInterval = reconciliationInterval;
+        if (count.value == null || now - count.lastComputed >= 2 * reconciliationInterval) {
+            // The first request (or no reconciliation on this node), computing synchronously.
+            count.recompute(result);
+        }
+        return count.value;
+    }
+
+    private String serializeFilter(ObjectFilter filter) {
+        try {
+            PrismQuerySerialization serialization = prismContext.querySerializer().serialize(filter);
+            if (serialization != null) {
+                return serialization.filterText();
+            }
+        } catch (Exception e) {
+            LOGGER.trace("Couldn't serialize filter {}, using its dump as the key: {}", filter, e.getMessage());
+        }
+        // Not so nice, but stable enough to distinguish the filters.
+        return filter.debugDump();
+    }
+
+    @Override
+    public void invalidate(Class<?> type, String oid, CacheInvalidationContext context) {
+        if (counts.isEmpty()) {
+            return;
+        }
+        if (type == null) {
+            counts.values().forEach(MaintainedCount::markStale);
+            return;
+        }
+        if (!ObjectType.class.isAssignableFrom(type)) {
+            return;
+        }
+        Object details = context != null && context.getDetails() instanceof RepositoryCacheInvalidationDetails ?
+                ((RepositoryCacheInvalidationDetails) context.getDetails()).getObject() : null;
+        PrismObject<?> objectOld;
+        PrismObject<?> objectNew;
+        if (details instanceof AddObjectResult<?>) {
+            objectOld = null;
+            objectNew = ((AddObjectResult<?>) details).getObject();
+        } else if (details instanceof ModifyObjectResult<?>
+                && ((ModifyObjectResult<?>) details).getObjectBefore() != null
+                && ((ModifyObjectResult<?>) details).getObjectAfter() != null) {
+            objectOld = ((ModifyObjectResult<?>) details).getObjectBefore();
+            objectNew = ((ModifyObjectResult<?>) details).getObjectAfter();
+        } else if (details instanceof DeleteObjectResult) {
+            objectOld = parseDeletedObject((DeleteObjectResult) details);
+            objectNew = null;
+        } else {
+            objectOld = null;
+            objectNew = null;
+        }
+        boolean changeKnown = objectOld != null || objectNew != null;
+        for (MaintainedCount count : counts.values()) {
+            if (!count.type.isAssignableFrom(type)) {
+                continue;
+            }
+            if (changeKnown) {
+                count.update(objectOld, objectNew);
+            } else {
+                count.markStale();
+            }
+        }
+    }
+
+    private PrismObject<?> parseDeletedObject(DeleteObjectResult deleteInfo) {
+        String text = deleteInfo.getObjectTextRepresentation();
+        if (text == null) {
+            return null;
+        }
+        try {
+            return prismContext.parserFor(text).parse();
+        } catch (SchemaException | RuntimeException e) {
+            LOGGER.debug("Couldn't parse deleted object, the maintained counts will be stale: {}", e.getMessage(), e);
+            return null;
+        }
+    }
+
+    /**
+     * Recomputes counts that are stale or whose reconciliation interval elapsed, and drops unused counts.
+     * Called by the reconciliation activity.
+     *
+     * @return number of recomputed counts
+     */
+    public int reconcile(@NotNull OperationResult parentResult) {
+        OperationResult result = parentResult.createSubresult(OP_RECOMPUTE);
+        try {
+            long now = System.currentTimeMillis();
+            counts.entrySet().removeIf(e -> now - e.getValue().lastAccess > UNUSED_COUNT_EXPIRATION);
+            int recomputed = 0;
+            for (MaintainedCount count : counts.values()) {
+                if (count.isRecomputeNeeded(now)) {
+                    try {
+                        count.recompute(result);
+                        recomputed++;
+                    } catch (SchemaException | RuntimeException e) {
+                        LoggingUtils.logUnexpectedException(LOGGER, "Couldn't recompute maintained count of {}", e, count);
+                        result.recordPartialError("Couldn't recompute maintained count of " + count, e);
+                    }
+                }
+            }
+            result.addReturn("recomputed", recomputed);
+            return recomputed;
+        } catch (Throwable t) {
+            result.recordFatalError(t);
+            throw t;
+        } finally {
+            result.computeStatusIfUnknown();
+        }
+    }
+
+    /** Number of maintained counts, for diagnostics and tests. */
+    public int size() {
+        return counts.size();
+    }
+
+    /** Forgets all the counts, they will be computed again when requested. */
+    public void clear() {
+        counts.clear();
+    }
+
+    @NotNull
+    @Override
+    public Collection<SingleCacheStateInformationType> getStateInformation() {
+        return Collections.singleton(
+                new SingleCacheStateInformationType(prismContext)
+                        .name(MaintainedCollectionCounts.class.getName())
+                        .size(counts.size()));
+    }
+
+    @Override
+    public void dumpContent() {
+        if (LOGGER_CONTENT.isInfoEnabled()) {
+            counts.values().forEach(count -> LOGGER_CONTENT.info("Maintained count: {}: {}", count, count.value));
+        }
+    }
+
+    private class MaintainedCount {
+
+        @NotNull private final Class<? extends ObjectType> type;
+        @NotNull private final ObjectFilter filter;
+        private final Collection<SelectorOptions<GetOperationOptions>> options;
+
+        /** Only one recomputation at a time. Not held by updates, so they are not blocked by the repository count. */
+        private final Object recomputationLock = new Object();
+
+        private volatile Integer value;
+        private volatile long lastComputed;
+        private volatile long lastAccess;
+        private volatile long reconciliationInterval = DEFAULT_RECONCILIATION_INTERVAL;
+
+        // The following ones are guarded by "this".
+        private boolean stale;
+        private boolean recomputing;
+        private boolean changedWhileRecomputing;
+
+        private MaintainedCount(@NotNull Class<? extends ObjectType> type, @NotNull ObjectFilter filter,
+                Collection<SelectorOptions<GetOperationOptions>> options) {
+            this.type = type;
+            this.filter = filter;
+            this.options = options;
+        }
+
+        /**
+         * A change that arrives while the repository count is running may or may not be included in it.
+         * So such a change is not applied to the value; the new value is marked as stale instead,
+         * to be recomputed by the next reconciliation.
+         */
+        private void recompute(OperationResult result) throws SchemaException {
+            synchronized (recomputationLock) {
+                long started = System.currentTimeMillis();
+                synchronized (this) {
+                    recomputing = true;
+                    changedWhileRecomputing = false;
+                }
+                Integer newValue = null;
+                try {
+                    newValue = repositoryService.countObjects(
+                            type, prismContext.queryFactory().createQuery(filter), options, result);
+                } finally {
+                    synchronized (this) {
+                        recomputing = false;
+                        if (newValue != null) {
+                            value = newValue;
+                            lastComputed = started;
+                            stale = changedWhileRecomputing;
+                        }
+                    }
+                }
+                LOGGER.trace("Recomputed maintained count of {}: {} (stale: {})", this, newValue, stale);
+            }
+        }
+
+        private synchronized boolean isRecomputeNeeded(long now) {
+            return stale || now - lastComputed >= reconciliationInterval;
+        }
+
+        private synchronized void markStale() {
+            stale = true;
+            if (recomputing) {
+                changedWhileRecomputing = true;
+            }
+        }
+
+        private void update(PrismObject<?> objectOld, PrismObject<?> objectNew) {
+            int difference;
+            try {
+                difference = (matches(objectNew) ? 1 : 0) - (matches(objectOld) ? 1 : 0);
+            } catch (SchemaException | RuntimeException e) {
+                LOGGER.debug("Couldn't evaluate filter of maintained count {} in memory, marking it as stale: {}",
+                        this, e.getMessage(), e);
+                markStale();
+                return;
+            }
+            if (difference != 0) {
+                applyDifference(difference);
+            }
+        }
+
+        private synchronized void applyDifference(int difference) {
+            if (recomputing) {
+                changedWhileRecomputing = true;
+            } else if (value != null && !stale) {
+                value = value + difference;
+            }
+        }
+
+        private boolean matches(PrismObject<?> object) throws SchemaException {
+            return object != null && filter.match(object.getValue(), matchingRuleRegistry);
+        }
+
+        @Override
+        public String toString() {
+            return type.getSimpleName() + ": " + filter;
+        }
+    }
+
+    private static class CountKey {
+
+        private final Class<?> type;
+        private final String filter;
+        private final String options;
+
+        private CountKey(Class<?> type, String filter, String options) {
+            this.type = type;
+            this.filter = filter;
+            this.options = options;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof CountKey)) {
+                return false;
+            }
+            CountKey that = (CountKey) o;
+            return type.equals(that.type)
+                    && filter.equals(that.filter)
+                    && options.equals(that.options);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(type, filter, options);
+        }
+    }
+}
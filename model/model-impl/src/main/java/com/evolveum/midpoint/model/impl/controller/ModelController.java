@@ -42,6 +42,7 @@ import com.evolveum.midpoint.model.api.hooks.HookRegistry;
 import com.evolveum.midpoint.model.api.hooks.ReadHook;
 import com.evolveum.midpoint.model.common.SystemObjectCache;
 import com.evolveum.midpoint.model.impl.ModelObjectResolver;
+import com.evolveum.midpoint.model.impl.expr.ScriptPrecompiler;
 import com.evolveum.midpoint.model.impl.importer.ObjectImporter;
 import com.evolveum.midpoint.model.impl.lens.*;
 import com.evolveum.midpoint.model.impl.scripting.ExecutionContext;
@@ -65,6 +66,7 @@ import com.evolveum.midpoint.provisioning.api.ExternalResourceEvent;
 import com.evolveum.midpoint.provisioning.api.ProvisioningOperationOptions;
 import com.evolveum.midpoint.provisioning.api.ProvisioningService;
 import com.evolveum.midpoint.repo.api.RepoAddOptions;
+import com.evolveum.midpoint.repo.api.RepoModifyOptions;
 import com.evolveum.midpoint.repo.api.RepositoryService;
 import com.evolveum.midpoint.repo.cache.RepositoryCache;
 import com.evolveum.midpoint.repo.common.activity.TaskActivityManager;
@@ -156,6 +158,7 @@ public class ModelController implements ModelService, TaskService, CaseService,
     @Qualifier("cacheRepositoryService")
     private RepositoryService cacheRepositoryService;
     @Autowired private CorrelationCaseManager correlationCaseManager;
+    @Autowired private ScriptPrecompiler scriptPrecompiler;
 
     @Autowired(required = false)                        // not required in all circumstances
     private CaseManager caseManager;
@@ -714,8 +717,10 @@ public class ModelController implements ModelService, TaskService, CaseService,
                 if (TaskType.class.isAssignableFrom(delta.getObjectTypeClass())) {
                     taskManager.modifyTask(delta.getOid(), delta.getModifications(), result1);
                 } else {
+                    RepoModifyOptions repoOptions = ModelExecuteOptions.isBatchContainerInserts(options) ?
+                            RepoModifyOptions.createBatchContainerInserts() : null;
                     cacheRepositoryService.modifyObject(delta.getObjectTypeClass(), delta.getOid(),
-                            delta.getModifications(), result1);
+                            delta.getModifications(), repoOptions, result1);
                 }
                 task.recordObjectActionExecuted(existingObject, ChangeType.MODIFY, null);
             } catch (Throwable t) {
@@ -1682,6 +1687,8 @@ public class ModelController implements ModelService, TaskService, CaseService,
         // Initialize provisioning
         provisioning.postInit(result);
 
+        scriptPrecompiler.startIfEnabled();
+
         if (result.isUnknown()) {
             result.computeStatus();
         }
@@ -2273,12 +2280,17 @@ public class ModelController implements ModelService, TaskService, CaseService,
     private List<PrismObject<TaskType>> createTaskList(Collection<String> taskOids, OperationResult parentResult) throws SchemaException, ObjectNotFoundException {
         List<PrismObject<TaskType>> taskRefs = new ArrayList<>(taskOids.size());
 
+        var options = SchemaService.get().getOperationOptionsBuilder()
+                .raw() // why?
+                .readOnly()
+                .build();
+        Map<String, PrismObject<TaskType>> tasks =
+                cacheRepositoryService.getObjects(TaskType.class, taskOids, options, parentResult);
         for (String taskOid : taskOids) {
-            var options = SchemaService.get().getOperationOptionsBuilder()
-                    .raw() // why?
-                    .readOnly()
-                    .build();
-            PrismObject<TaskType> task = cacheRepositoryService.getObject(TaskType.class, taskOid, options, parentResult);
+            PrismObject<TaskType> task = tasks.get(taskOid);
+            if (task == null) {
+                throw new ObjectNotFoundException(TaskType.class, taskOid);
+            }
             taskRefs.add(task);
         }
         return taskRefs;
@@ -199,7 +199,7 @@ public class ModelInteractionServiceImpl implements ModelInteractionService {
 
             schemaTransformer.applySchemasAndSecurity(context, null, task, result);
         } finally {
-            LensUtil.reclaimSequences(context, cacheRepositoryService, task, result);
+            LensUtil.reclaimSequences(context, modelBeans.sequenceReservoir, task, result);
 
             RepositoryCache.exitLocalCaches();
         }
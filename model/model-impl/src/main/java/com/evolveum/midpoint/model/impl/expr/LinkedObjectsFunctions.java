@@ -9,6 +9,7 @@ package com.evolveum.midpoint.model.impl.expr;
 
 import static java.util.Collections.emptySet;
 
+import static com.evolveum.midpoint.schema.GetOperationOptions.createReadOnlyCollection;
 import static com.evolveum.midpoint.schema.util.ObjectTypeUtil.*;
 
 import java.lang.reflect.InvocationTargetException;
@@ -24,6 +25,7 @@ import com.evolveum.midpoint.repo.common.expression.ExpressionFactory;
 import com.evolveum.midpoint.repo.common.query.LinkedSelectorToFilterTranslator;
 import com.evolveum.midpoint.schema.result.OperationResult;
 import com.evolveum.midpoint.task.api.Task;
+import com.evolveum.midpoint.util.logging.LoggingUtils;
 import com.evolveum.midpoint.util.logging.Trace;
 import com.evolveum.midpoint.util.logging.TraceManager;
 import com.evolveum.midpoint.xml.ns._public.common.common_3.*;
@@ -137,6 +139,7 @@ public class LinkedObjectsFunctions {
                 .collect(Collectors.toList());
         // TODO deduplicate w.r.t. member/manager
         // TODO optimize matching
+        prefetchTargets(assignedWithMemberRelation);
         List<T> objects = new ArrayList<>(assignedWithMemberRelation.size());
         for (PrismReferenceValue reference : assignedWithMemberRelation) {
             ObjectReferenceType ort = new ObjectReferenceType();
@@ -173,6 +176,7 @@ public class LinkedObjectsFunctions {
                 .collect(Collectors.toList());
         // TODO deduplicate w.r.t. member/manager
         // TODO optimize matching
+        prefetchTargets(assignedWithMatchingRelation);
         List<T> objects = new ArrayList<>(assignedWithMatchingRelation.size());
         for (PrismReferenceValue reference : assignedWithMatchingRelation) {
             ObjectReferenceType ort = new ObjectReferenceType();
@@ -185,6 +189,38 @@ public class LinkedObjectsFunctions {
         return objects;
     }
 
+    /**
+     * Reads the membership targets from the repository in bulk (one call per type), so they are in the repository cache
+     * when they are resolved one by one afterwards. The resolution itself stays in the model, because of authorizations.
+     */
+    private void prefetchTargets(List<PrismReferenceValue> references) {
+        if (references.size() < 2) {
+            return;
+        }
+        Map<Class<? extends ObjectType>, Set<String>> oidsByClass = new HashMap<>();
+        for (PrismReferenceValue reference : references) {
+            if (reference.getOid() != null && reference.getTargetType() != null) {
+                //noinspection unchecked
+                Class<? extends ObjectType> clazz = (Class<? extends ObjectType>)
+                        prismContext.getSchemaRegistry().determineClassForTypeRequired(reference.getTargetType());
+                oidsByClass.computeIfAbsent(clazz, k -> new HashSet<>())
+                        .add(reference.getOid());
+            }
+        }
+        OperationResult result = midpointFunctions.getCurrentResult();
+        for (Map.Entry<Class<? extends ObjectType>, Set<String>> entry : oidsByClass.entrySet()) {
+            if (entry.getValue().size() < 2) {
+                continue;
+            }
+            try {
+                repositoryService.getObjects(entry.getKey(), entry.getValue(), createReadOnlyCollection(), result);
+            } catch (SchemaException | RuntimeException e) {
+                LoggingUtils.logExceptionAsWarning(LOGGER, "Couldn't prefetch {} objects of type {}", e,
+                        entry.getValue().size(), entry.getKey().getSimpleName());
+            }
+        }
+    }
+
     private Class<?> getExpectedClass(LinkedObjectSelectorType selector) {
         if (selector == null || selector.getType() == null) {
             return null;
@@ -137,6 +137,7 @@ public class MidpointFunctionsImpl implements MidpointFunctions {
     @Autowired private TaskManager taskManager;
     @Autowired private SchemaService schemaService;
     @Autowired private CorrelationCaseManager correlationCaseManager;
+    @Autowired private SequenceReservoir sequenceReservoir;
 
     @Autowired
     @Qualifier("cacheRepositoryService")
@@ -1189,7 +1190,7 @@ public class MidpointFunctionsImpl implements MidpointFunctions {
 
     @Override
     public long getSequenceCounter(String sequenceOid) throws ObjectNotFoundException, SchemaException {
-        return SequentialValueExpressionEvaluator.getSequenceCounterValue(sequenceOid, repositoryService, getCurrentResult());
+        return SequentialValueExpressionEvaluator.getSequenceCounterValue(sequenceOid, sequenceReservoir, getCurrentResult());
     }
 
     // orgstruct related methods
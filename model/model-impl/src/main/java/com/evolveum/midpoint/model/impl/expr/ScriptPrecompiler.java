@@ -0,0 +1,150 @@
+/*
+ * Copyright (C) 2010-2022 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+package com.evolveum.midpoint.model.impl.expr;
+
+import static com.evolveum.midpoint.schema.GetOperationOptions.createReadOnlyCollection;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.annotation.PostConstruct;
+import javax.xml.bind.JAXBElement;
+
+import com.google.common.annotations.VisibleForTesting;
+import org.apache.commons.configuration2.Configuration;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.stereotype.Component;
+
+import com.evolveum.midpoint.common.configuration.api.MidpointConfiguration;
+import com.evolveum.midpoint.model.common.expression.script.ScriptExpressionFactory;
+import com.evolveum.midpoint.prism.PrismObject;
+import com.evolveum.midpoint.prism.PrismPropertyValue;
+import com.evolveum.midpoint.repo.api.RepositoryService;
+import com.evolveum.midpoint.schema.result.OperationResult;
+import com.evolveum.midpoint.util.exception.SchemaException;
+import com.evolveum.midpoint.util.logging.LoggingUtils;
+import com.evolveum.midpoint.util.logging.Trace;
+import com.evolveum.midpoint.util.logging.TraceManager;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.*;
+
+/**
+ * Compiles scripts found in selected configuration objects (object templates, roles and similar, resources)
+ * at system start, so the first evaluation of each of them does not have to wait for the compilation.
+ *
+ * Disabled by default; enabled by `precompileScripts` in `midpoint.expressions` section of `config.xml`.
+ * The same section can set the maximum number of compiled scripts cached per language (`scriptCacheMaxSize`)
+ * and the maximum number of cached results of deterministic scripts (`scriptResultCacheMaxSize`).
+ *
+ * Scripts are compiled in a background thread, for the default expression profile only.
+ * Scripts that cannot be compiled are skipped; the error will be reported when they are evaluated.
+ */
+@Component
+@DependsOn({ "midpointConfiguration" })
+public class ScriptPrecompiler {
+
+    private static final Trace LOGGER = TraceManager.getTrace(ScriptPrecompiler.class);
+
+    private static final String OP_PRECOMPILE = ScriptPrecompiler.class.getName() + ".precompile";
+
+    private static final String KEY_PRECOMPILE_SCRIPTS = "precompileScripts";
+    private static final String KEY_SCRIPT_CACHE_MAX_SIZE = "scriptCacheMaxSize";
+    private static final String KEY_SCRIPT_RESULT_CACHE_MAX_SIZE = "scriptResultCacheMaxSize";
+
+    private static final List<Class<? extends ObjectType>> TYPES_TO_PROCESS =
+            List.of(ObjectTemplateType.class, AbstractRoleType.class, ResourceType.class);
+
+    @Autowired private MidpointConfiguration midpointConfiguration;
+    @Autowired private ScriptExpressionFactory scriptExpressionFactory;
+    @Autowired @Qualifier("cacheRepositoryService") private RepositoryService repositoryService;
+
+    private boolean enabled;
+
+    @PostConstruct
+    void initialize() {
+        Configuration c = midpointConfiguration.getConfiguration(MidpointConfiguration.EXPRESSIONS_CONFIGURATION);
+        enabled = c.getBoolean(KEY_PRECOMPILE_SCRIPTS, false);
+        if (c.containsKey(KEY_SCRIPT_CACHE_MAX_SIZE)) {
+            int maxSize = c.getInt(KEY_SCRIPT_CACHE_MAX_SIZE);
+            LOGGER.info("Setting maximum script cache size to {}", maxSize);
+            scriptExpressionFactory.setScriptCacheMaxSize(maxSize);
+        }
+        if (c.containsKey(KEY_SCRIPT_RESULT_CACHE_MAX_SIZE)) {
+            int maxSize = c.getInt(KEY_SCRIPT_RESULT_CACHE_MAX_SIZE);
+            LOGGER.info("Setting maximum script result cache size to {}", maxSize);
+            scriptExpressionFactory.setScriptResultCacheMaxSize(maxSize);
+        }
+    }
+
+    /** Starts the precompilation in background, if enabled. */
+    public void startIfEnabled() {
+        if (!enabled) {
+            LOGGER.trace("Script precompilation is disabled");
+            return;
+        }
+        Thread thread = new Thread(this::precompileAll, "script-precompiler");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @VisibleForTesting
+    boolean isEnabled() {
+        return enabled;
+    }
+
+    /** Compiles the scripts in the current thread. */
+    @VisibleForTesting
+    void precompileAll() {
+        OperationResult result = new OperationResult(OP_PRECOMPILE);
+        long start = System.currentTimeMillis();
+        AtomicInteger compiled = new AtomicInteger();
+        AtomicInteger failed = new AtomicInteger();
+        for (Class<? extends ObjectType> type : TYPES_TO_PROCESS) {
+            try {
+                repositoryService.searchObjectsIterative(type, null,
+                        (object, lResult) -> {
+                            precompileScripts(object, compiled, failed);
+                            return true;
+                        },
+                        createReadOnlyCollection(), true, result);
+            } catch (SchemaException | RuntimeException e) {
+                LoggingUtils.logUnexpectedException(LOGGER, "Couldn't precompile scripts in objects of {}", e,
+                        type.getSimpleName());
+            }
+        }
+        LOGGER.info("Precompiled {} scripts in {} ms ({} could not be compiled)",
+                compiled.get(), System.currentTimeMillis() - start, failed.get());
+    }
+
+    private void precompileScripts(PrismObject<?> object, AtomicInteger compiled, AtomicInteger failed) {
+        object.accept(visitable -> {
+            if (visitable instanceof PrismPropertyValue) {
+                Object realValue = ((PrismPropertyValue<?>) visitable).getRealValue();
+                if (realValue instanceof ExpressionType) {
+                    precompileScripts((ExpressionType) realValue, object, compiled, failed);
+                }
+            }
+        });
+    }
+
+    private void precompileScripts(ExpressionType expression, PrismObject<?> object,
+            AtomicInteger compiled, AtomicInteger failed) {
+        for (JAXBElement<?> evaluatorElement : expression.getExpressionEvaluator()) {
+            Object evaluator = evaluatorElement.getValue();
+            if (evaluator instanceof ScriptExpressionEvaluatorType
+                    && ((ScriptExpressionEvaluatorType) evaluator).getCode() != null) {
+                try {
+                    scriptExpressionFactory.precompile((ScriptExpressionEvaluatorType) evaluator, "script in " + object);
+                    compiled.incrementAndGet();
+                } catch (Exception e) {
+                    LOGGER.debug("Couldn't precompile script in {}: {}", object, e.getMessage(), e);
+                    failed.incrementAndGet();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright (C) 2010-2022 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+package com.evolveum.midpoint.model.impl.expr;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.annotation.PreDestroy;
+
+import org.jetbrains.annotations.NotNull;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Component;
+
+import com.evolveum.midpoint.repo.api.RepositoryService;
+import com.evolveum.midpoint.schema.result.OperationResult;
+import com.evolveum.midpoint.util.exception.ObjectNotFoundException;
+import com.evolveum.midpoint.util.exception.SchemaException;
+import com.evolveum.midpoint.util.logging.LoggingUtils;
+import com.evolveum.midpoint.util.logging.Trace;
+import com.evolveum.midpoint.util.logging.TraceManager;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.SequenceType;
+
+/**
+ * Node-local reservoir of sequence values.
+ *
+ * Values are reserved from the repository using {@link RepositoryService#reserveSequenceValues}
+ * in blocks of {@link SequenceType#getReservationBlockSize()} values and then served from memory.
+ * With the default block size of 1 each value is obtained from the repository, as before.
+ *
+ * Values that are not used before the node shuts down are returned to the sequence
+ * using {@link RepositoryService#returnUnusedValuesToSequence}.
+ * Changes of the sequence object (e.g. counter reset) do not affect values already reserved by the node.
+ */
+@Component
+public class SequenceReservoir {
+
+    private static final Trace LOGGER = TraceManager.getTrace(SequenceReservoir.class);
+
+    private static final String OP_RETURN_RESERVED_VALUES = SequenceReservoir.class.getName() + ".returnReservedValues";
+
+    @Autowired @Qualifier("cacheRepositoryService") private RepositoryService repositoryService;
+
+    /** Reserved values for each sequence OID, each instance is also used as a lock for its sequence. */
+    private final Map<String, ReservedValues> reservedValuesMap = new ConcurrentHashMap<>();
+
+    public SequenceReservoir() {
+    }
+
+    /** For unit tests. */
+    SequenceReservoir(RepositoryService repositoryService) {
+        this.repositoryService = repositoryService;
+    }
+
+    /**
+     * Returns the next value of the sequence, from memory if possible, otherwise a new block
+     * of values is reserved from the repository.
+     */
+    public long advanceSequence(@NotNull String sequenceOid, OperationResult result)
+            throws ObjectNotFoundException, SchemaException {
+        ReservedValues reservedValues = reservedValuesMap.computeIfAbsent(sequenceOid, k -> new ReservedValues());
+        // Other threads needing the same sequence wait here, they would wait for the row lock anyway.
+        synchronized (reservedValues) {
+            Long value = reservedValues.values.pollFirst();
+            if (value != null) {
+                return value;
+            }
+
+            List<Long> block = repositoryService.reserveSequenceValues(sequenceOid, null, result);
+            LOGGER.trace("Reserved values {} from sequence {}", block, sequenceOid);
+            if (block.size() > 1) {
+                // Not reset by shorter blocks, these are returned e.g. near the end (or rewind) of the sequence.
+                reservedValues.blockReservation = true;
+            }
+            reservedValues.values.addAll(block.subList(1, block.size()));
+            return block.get(0);
+        }
+    }
+
+    /**
+     * Returns values that were not used.
+     * If the sequence is reserved in blocks, the values are kept in memory and used first,
+     * otherwise they are returned to the sequence in the repository right away.
+     */
+    public void returnUnusedValues(@NotNull String sequenceOid, Collection<Long> unusedValues, OperationResult result)
+            throws ObjectNotFoundException, SchemaException {
+        if (unusedValues == null || unusedValues.isEmpty()) {
+            return;
+        }
+
+        ReservedValues reservedValues = reservedValuesMap.get(sequenceOid);
+        if (reservedValues != null) {
+            synchronized (reservedValues) {
+                if (reservedValues.blockReservation) {
+                    LOGGER.trace("Returning values {} to the reserved values of sequence {}", unusedValues, sequenceOid);
+                    List<Long> toReturn = new ArrayList<>(unusedValues);
+                    // to preserve the order of returned values at the head of the deque
+                    Collections.reverse(toReturn);
+                    toReturn.forEach(reservedValues.values::addFirst);
+                    return;
+                }
+            }
+        }
+        repositoryService.returnUnusedValuesToSequence(sequenceOid, unusedValues, result);
+    }
+
+    @PreDestroy
+    public void returnReservedValues() {
+        OperationResult result = new OperationResult(OP_RETURN_RESERVED_VALUES);
+        for (Map.Entry<String, ReservedValues> entry : reservedValuesMap.entrySet()) {
+            ReservedValues reservedValues = entry.getValue();
+            synchronized (reservedValues) {
+                if (reservedValues.values.isEmpty()) {
+                    continue;
+                }
+                try {
+                    LOGGER.debug("Returning {} unused reserved values to sequence {}",
+                            reservedValues.values.size(), entry.getKey());
+                    repositoryService.returnUnusedValuesToSequence(
+                            entry.getKey(), new ArrayList<>(reservedValues.values), result);
+                    reservedValues.values.clear();
+                } catch (Exception e) {
+                    LoggingUtils.logUnexpectedException(LOGGER,
+                            "Couldn't return unused reserved values to sequence {}", e, entry.getKey());
+                }
+            }
+        }
+    }
+
+    private static class ReservedValues {
+        private final Deque<Long> values = new ArrayDeque<>();
+
+        /** True if any reservation obtained more than one value from the repository, i.e. values are reserved in blocks. */
+        private boolean blockReservation;
+    }
+}
@@ -18,7 +18,6 @@ import javax.xml.namespace.QName;
 
 import com.evolveum.midpoint.prism.crypto.Protector;
 import com.evolveum.midpoint.prism.delta.PrismValueDeltaSetTriple;
-import com.evolveum.midpoint.repo.api.RepositoryService;
 import com.evolveum.midpoint.schema.result.OperationResult;
 import com.evolveum.midpoint.util.exception.ExpressionEvaluationException;
 import com.evolveum.midpoint.util.exception.ObjectNotFoundException;
@@ -40,14 +39,14 @@ public class SequentialValueExpressionEvaluator<V extends PrismValue, D extends
         extends AbstractExpressionEvaluator<V, D, SequentialValueExpressionEvaluatorType> {
 
     @NotNull private final String sequenceOid;
-    private final RepositoryService repositoryService;
+    private final SequenceReservoir sequenceReservoir;
 
     SequentialValueExpressionEvaluator(QName elementName, @NotNull String sequenceOid,
             SequentialValueExpressionEvaluatorType sequentialValueEvaluatorType, D outputDefinition,
-            Protector protector, RepositoryService repositoryService, PrismContext prismContext) {
+            Protector protector, SequenceReservoir sequenceReservoir, PrismContext prismContext) {
         super(elementName, sequentialValueEvaluatorType, outputDefinition, protector, prismContext);
         this.sequenceOid = sequenceOid;
-        this.repositoryService = repositoryService;
+        this.sequenceReservoir = sequenceReservoir;
     }
 
     @Override
@@ -56,7 +55,7 @@ public class SequentialValueExpressionEvaluator<V extends PrismValue, D extends
             throws SchemaException, ExpressionEvaluationException, ObjectNotFoundException, SecurityViolationException {
         checkEvaluatorProfile(context);
 
-        long counterValue = getSequenceCounterValue(sequenceOid, repositoryService, result);
+        long counterValue = getSequenceCounterValue(sequenceOid, sequenceReservoir, result);
 
         Object value = ExpressionUtil.convertToOutputValue(counterValue, outputDefinition, protector);
         Item<V, D> output = addValueToOutputProperty(value);
@@ -69,15 +68,16 @@ public class SequentialValueExpressionEvaluator<V extends PrismValue, D extends
      *
      * Because mappings are evaluated repeatedly, the value is obtained from the repository only for the first time.
      * Then it is stored in model context to be reused as needed.
+     * The value itself may come from values reserved by this node in advance, see {@link SequenceReservoir}.
      */
-    static long getSequenceCounterValue(String sequenceOid, RepositoryService repositoryService, OperationResult result) throws ObjectNotFoundException, SchemaException {
+    static long getSequenceCounterValue(String sequenceOid, SequenceReservoir sequenceReservoir, OperationResult result) throws ObjectNotFoundException, SchemaException {
         ModelContext<? extends FocusType> ctx = ModelExpressionThreadLocalHolder.getLensContextRequired();
 
         Long alreadyObtainedValue = ctx.getSequenceCounter(sequenceOid);
         if (alreadyObtainedValue != null) {
             return alreadyObtainedValue;
         } else {
-            long freshValue = repositoryService.advanceSequence(sequenceOid, result);
+            long freshValue = sequenceReservoir.advanceSequence(sequenceOid, result);
             ctx.setSequenceCounter(sequenceOid, freshValue);
             return freshValue;
         }
@@ -17,7 +17,6 @@ import com.evolveum.midpoint.prism.ItemDefinition;
 import com.evolveum.midpoint.prism.PrismContext;
 import com.evolveum.midpoint.prism.PrismValue;
 import com.evolveum.midpoint.prism.crypto.Protector;
-import com.evolveum.midpoint.repo.api.RepositoryService;
 import com.evolveum.midpoint.repo.common.expression.AbstractAutowiredExpressionEvaluatorFactory;
 import com.evolveum.midpoint.repo.common.expression.ExpressionEvaluator;
 import com.evolveum.midpoint.repo.common.expression.ExpressionFactory;
@@ -38,7 +37,7 @@ public class SequentialValueExpressionEvaluatorFactory extends AbstractAutowired
 
     @Autowired private Protector protector;
     @Autowired private PrismContext prismContext;
-    @Autowired private RepositoryService repositoryService;
+    @Autowired private SequenceReservoir sequenceReservoir;
 
     @Override
     public QName getElementName() {
@@ -59,7 +58,7 @@ public class SequentialValueExpressionEvaluatorFactory extends AbstractAutowired
 
         if (evaluatorBean.getSequenceRef() != null && evaluatorBean.getSequenceRef().getOid() != null) {
             return new SequentialValueExpressionEvaluator<>(ELEMENT_NAME, evaluatorBean.getSequenceRef().getOid(), evaluatorBean,
-                    outputDefinition, protector, repositoryService, prismContext);
+                    outputDefinition, protector, sequenceReservoir, prismContext);
         } else {
             throw new SchemaException("Missing sequence reference in sequentialValue expression evaluator in "+contextDescription);
         }
@@ -27,7 +27,7 @@ import com.evolveum.midpoint.prism.path.ItemPath;
 import com.evolveum.midpoint.prism.polystring.PolyString;
 import com.evolveum.midpoint.prism.util.CloneUtil;
 import com.evolveum.midpoint.prism.util.ItemDeltaItem;
-import com.evolveum.midpoint.repo.api.RepositoryService;
+import com.evolveum.midpoint.model.impl.expr.SequenceReservoir;
 import com.evolveum.midpoint.schema.SchemaConstantsGenerated;
 import com.evolveum.midpoint.schema.processor.ResourceObjectDefinition;
 import com.evolveum.midpoint.schema.processor.ResourceSchema;
@@ -1080,7 +1080,7 @@ public class LensUtil {
         return rv;
     }
 
-    public static <F extends ObjectType> void reclaimSequences(LensContext<F> context, RepositoryService repositoryService, Task task, OperationResult result) throws SchemaException {
+    public static <F extends ObjectType> void reclaimSequences(LensContext<F> context, SequenceReservoir sequenceReservoir, Task task, OperationResult result) throws SchemaException {
         if (context == null) {
             return;
         }
@@ -1092,7 +1092,7 @@ public class LensUtil {
             unusedValues.add(sequenceMapEntry.getValue());
             try {
                 LOGGER.trace("Returning value {} to sequence {}", sequenceMapEntry.getValue(), sequenceMapEntry.getKey());
-                repositoryService.returnUnusedValuesToSequence(sequenceMapEntry.getKey(), unusedValues, result);
+                sequenceReservoir.returnUnusedValues(sequenceMapEntry.getKey(), unusedValues, result);
             } catch (ObjectNotFoundException e) {
                 LOGGER.error("Cannot return unused value to sequence {}: it does not exist", sequenceMapEntry.getKey(), e);
                 // ... but otherwise ignore it and go on
@@ -0,0 +1,305 @@
+/*
+ * Copyright (C) 2010-2022 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+
+package com.evolveum.midpoint.model.impl.lens.assignments;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.xml.namespace.QName;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import com.evolveum.midpoint.CacheInvalidationContext;
+import com.evolveum.midpoint.prism.PrismContainer;
+import com.evolveum.midpoint.prism.PrismContainerDefinition;
+import com.evolveum.midpoint.prism.PrismContext;
+import com.evolveum.midpoint.prism.PrismObject;
+import com.evolveum.midpoint.repo.api.Cache;
+import com.evolveum.midpoint.repo.api.CacheRegistry;
+import com.evolveum.midpoint.schema.cache.CacheConfigurationManager;
+import com.evolveum.midpoint.schema.cache.CacheType;
+import com.evolveum.midpoint.util.caching.CacheConfiguration;
+import com.evolveum.midpoint.util.exception.SchemaException;
+import com.evolveum.midpoint.util.logging.Trace;
+import com.evolveum.midpoint.util.logging.TraceManager;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.*;
+
+/**
+ * Node-wide cache of the focus-independent structure of idempotent roles, i.e. roles with idempotence other than "none".
+ *
+ * For each such role it keeps:
+ *
+ * . the immutable role object itself, so the role graph (assignment and inducement targets referenced by OID)
+ * is walked from memory instead of going to the repository for each focus;
+ * . the list of its inducements with `focusType` already resolved to a class;
+ * . for archetypes, the inducement synthesized from `superArchetypeRef`.
+ *
+ * Conditions, activation, evaluation orders, constructions and mappings may depend on the focus, so they are still
+ * evaluated for each focus.
+ *
+ * Entries are invalidated through {@link CacheRegistry} (i.e. by `CacheDispatcher`, also for changes made on other nodes):
+ * a change of a role removes its entry, a type-wide invalidation clears the whole cache.
+ *
+ * The cache is configured by `globalRoleInducementGraphCache` in the caching profile: it is used only for the object types
+ * listed there, and holds at most `maxSize` roles. It is enabled for all the role types by the default profile.
+ */
+@Component
+public class RoleInducementGraphCache implements Cache {
+
+    private static final Trace LOGGER = TraceManager.getTrace(RoleInducementGraphCache.class);
+    private static final Trace LOGGER_CONTENT = TraceManager.getTrace(RoleInducementGraphCache.class.getName() + ".content");
+
+    @Autowired private PrismContext prismContext;
+    @Autowired private CacheRegistry cacheRegistry;
+    @Autowired private CacheConfigurationManager cacheConfigurationManager;
+
+    /** Compiled roles, indexed by OID. */
+    private final Map<String, CompiledRole> roles = new ConcurrentHashMap<>();
+
+    /** Incremented on each invalidation. Used to avoid caching roles that were loaded before an invalidation. */
+    private final AtomicLong invalidationCount = new AtomicLong();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    @PostConstruct
+    public void register() {
+        cacheRegistry.registerCache(this);
+    }
+
+    @PreDestroy
+    public void unregister() {
+        cacheRegistry.unregisterCache(this);
+    }
+
+    /** Whether given object can be stored in this cache. */
+    static boolean isCacheable(@NotNull PrismObject<? extends ObjectType> object) {
+        ObjectType bean = object.asObjectable();
+        if (!(bean instanceof AbstractRoleType) || bean.getOid() == null || bean.getVersion() == null) {
+            return false;
+        }
+        IdempotenceType idempotence = ((AbstractRoleType) bean).getIdempotence();
+        return idempotence != null && idempotence != IdempotenceType.NONE;
+    }
+
+    /** Whether the caching profile enables this cache for given object type. */
+    boolean isEnabledFor(@NotNull Class<?> type) {
+        return isEnabled(getConfiguration(), type);
+    }
+
+    private static boolean isEnabled(@Nullable CacheConfiguration configuration, @NotNull Class<?> type) {
+        return configuration != null
+                && (configuration.getMaxSize() == null || configuration.getMaxSize() > 0)
+                && configuration.supportsObjectType(type);
+    }
+
+    private CacheConfiguration getConfiguration() {
+        return cacheConfigurationManager.getConfiguration(CacheType.GLOBAL_ROLE_INDUCEMENT_GRAPH_CACHE);
+    }
+
+    /** Returns the current invalidation count, to be passed to {@link #put(PrismObject, long)}. */
+    long getInvalidationCount() {
+        return invalidationCount.get();
+    }
+
+    /**
+     * Returns cached role with given OID, if it is of expected type.
+     */
+    @Nullable PrismObject<? extends AbstractRoleType> getRole(@NotNull String oid, @NotNull Class<? extends ObjectType> type) {
+        CompiledRole compiled = roles.get(oid);
+        if (compiled != null && type.isAssignableFrom(compiled.role.getCompileTimeClass())
+                && isEnabledFor(compiled.role.getCompileTimeClass())) {
+            hits.increment();
+            return compiled.role;
+        } else {
+            misses.increment();
+            return null;
+        }
+    }
+
+    /**
+     * Returns compiled structure of given role, if it is cached. The role must be the cached object itself
+     * or must have the same version.
+     */
+    @Nullable CompiledRole getCompiled(@NotNull AbstractRoleType role) {
+        if (role.getOid() == null) {
+            return null;
+        }
+        CompiledRole compiled = roles.get(role.getOid());
+        if (compiled != null
+                && (compiled.role.asObjectable() == role || Objects.equals(compiled.role.getVersion(), role.getVersion()))
+                && isEnabledFor(compiled.role.getCompileTimeClass())) {
+            return compiled;
+        } else {
+            return null;
+        }
+    }
+
+    /**
+     * Compiles and stores the role, unless the cache was invalidated since the `invalidationCountBefore`
+     * was obtained (i.e. before the role was loaded). Objects that are not idempotent roles, roles of types
+     * not enabled by the caching profile, and roles over the maximum size of the cache are ignored.
+     */
+    void put(@NotNull PrismObject<? extends ObjectType> object, long invalidationCountBefore) {
+        CacheConfiguration configuration = getConfiguration();
+        if (!isCacheable(object) || !isEnabled(configuration, object.getCompileTimeClass())) {
+            return;
+        }
+        Integer maxSize = configuration.getMaxSize();
+        if (maxSize != null && roles.size() >= maxSize && !roles.containsKey(object.getOid())) {
+            return;
+        }
+        CompiledRole compiled;
+        try {
+            //noinspection unchecked
+            compiled = compile((PrismObject<? extends AbstractRoleType>) object);
+        } catch (SchemaException e) {
+            // Will be reported when the role is evaluated in the usual way.
+            LOGGER.debug("Couldn't compile {}, not caching it: {}", object, e.getMessage(), e);
+            return;
+        }
+        String oid = object.getOid();
+        roles.put(oid, compiled);
+        if (invalidationCount.get() != invalidationCountBefore) {
+            // There might have been an invalidation that we did not see; let us be safe.
+            roles.remove(oid, compiled);
+        }
+    }
+
+    private CompiledRole compile(PrismObject<? extends AbstractRoleType> object) throws SchemaException {
+        PrismObject<? extends AbstractRoleType> role;
+        if (object.isImmutable()) {
+            role = object;
+        } else {
+            role = object.clone();
+            role.freeze();
+        }
+        AbstractRoleType roleBean = role.asObjectable();
+        List<CompiledInducement> inducements = new ArrayList<>(roleBean.getInducement().size());
+        for (AssignmentType inducement : roleBean.getInducement()) {
+            inducements.add(new CompiledInducement(inducement, resolveFocusClass(inducement.getFocusType())));
+        }
+        return new CompiledRole(role, inducements, createSuperArchetypeInducement(roleBean));
+    }
+
+    private Class<?> resolveFocusClass(QName focusType) throws SchemaException {
+        if (focusType == null) {
+            return null;
+        }
+        Class<?> focusClass = prismContext.getSchemaRegistry().determineCompileTimeClass(focusType);
+        if (focusClass == null) {
+            throw new SchemaException("Could not determine class for " + focusType);
+        }
+        return focusClass;
+    }
+
+    /**
+     * Super-archetype is evaluated as if it were induced by the archetype. Creates such an inducement.
+     */
+    static @Nullable AssignmentType createSuperArchetypeInducement(@NotNull AssignmentHolderType target) {
+        if (!(target instanceof ArchetypeType)) {
+            return null;
+        }
+        ObjectReferenceType superArchetype = ((ArchetypeType) target).getSuperArchetypeRef();
+        if (superArchetype == null) {
+            return null;
+        }
+        PrismContainerDefinition<AssignmentType> def =
+                target.asPrismObject().getDefinition().findContainerDefinition(ArchetypeType.F_INDUCEMENT);
+        PrismContainer<AssignmentType> inducement = def.instantiate();
+        AssignmentType inducementRealValue = inducement.createNewValue().asContainerable();
+        inducementRealValue.setTargetRef(superArchetype);
+        if (target.asPrismObject().isImmutable()) {
+            inducement.freeze();
+        }
+        return inducementRealValue;
+    }
+
+    @Override
+    public void invalidate(Class<?> type, String oid, CacheInvalidationContext context) {
+        if (type == null || AbstractRoleType.class.isAssignableFrom(type) || type.isAssignableFrom(AbstractRoleType.class)) {
+            invalidationCount.incrementAndGet();
+            if (oid != null) {
+                if (roles.remove(oid) != null) {
+                    LOGGER.trace("Removed {}:{} from role inducement graph cache", type, oid);
+                }
+            } else if (!roles.isEmpty()) {
+                LOGGER.trace("Invalidating role inducement graph cache because of {}", type);
+                roles.clear();
+            }
+        }
+    }
+
+    @Override
+    public @NotNull Collection<SingleCacheStateInformationType> getStateInformation() {
+        return Collections.singleton(
+                new SingleCacheStateInformationType(prismContext)
+                        .name(RoleInducementGraphCache.class.getName())
+                        .size(roles.size())
+                        .hits(hits.sum())
+                        .misses(misses.sum()));
+    }
+
+    @Override
+    public void dumpContent() {
+        if (LOGGER_CONTENT.isInfoEnabled()) {
+            roles.forEach((oid, compiled) ->
+                    LOGGER_CONTENT.info("Cached role {} (version {}) with {} inducement(s)",
+                            compiled.role, compiled.role.getVersion(), compiled.inducements.size()));
+        }
+    }
+
+    /**
+     * Focus-independent structure of an idempotent role.
+     */
+    static class CompiledRole {
+
+        /** The role itself (immutable). */
+        @NotNull final PrismObject<? extends AbstractRoleType> role;
+
+        /** Inducements of the role, in the original order. */
+        @NotNull final List<CompiledInducement> inducements;
+
+        /** Inducement synthesized from `superArchetypeRef`, if applicable. */
+        @Nullable final AssignmentType superArchetypeInducement;
+
+        private CompiledRole(@NotNull PrismObject<? extends AbstractRoleType> role,
+                @NotNull List<CompiledInducement> inducements, @Nullable AssignmentType superArchetypeInducement) {
+            this.role = role;
+            this.inducements = Collections.unmodifiableList(inducements);
+            this.superArchetypeInducement = superArchetypeInducement;
+        }
+    }
+
+    /**
+     * Inducement with `focusType` resolved to a class.
+     */
+    static class CompiledInducement {
+
+        @NotNull final AssignmentType inducement;
+
+        /** Class corresponding to `focusType`; null if the inducement is not limited to a focus type. */
+        @Nullable final Class<?> focusClass;
+
+        private CompiledInducement(@NotNull AssignmentType inducement, @Nullable Class<?> focusClass) {
+            this.inducement = inducement;
+            this.focusClass = focusClass;
+        }
+    }
+}
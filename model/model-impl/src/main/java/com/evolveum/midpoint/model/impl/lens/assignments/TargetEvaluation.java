@@ -7,10 +7,6 @@
 
 package com.evolveum.midpoint.model.impl.lens.assignments;
 
-import com.evolveum.midpoint.prism.PrismContainer;
-import com.evolveum.midpoint.prism.PrismContainerDefinition;
-import com.evolveum.midpoint.prism.PrismContainerValue;
-
 import org.apache.commons.lang.BooleanUtils;
 import org.jetbrains.annotations.NotNull;
 
@@ -171,28 +167,35 @@ public class TargetEvaluation<AH extends AssignmentHolderType> extends AbstractE
 
     private void evaluateInducements() throws SchemaException, ObjectNotFoundException, ExpressionEvaluationException,
             PolicyViolationException, SecurityViolationException, ConfigurationException, CommunicationException {
-        if (target instanceof AbstractRoleType) {
+        if (!(target instanceof AbstractRoleType)) {
+            return;
+        }
+        RoleInducementGraphCache.CompiledRole compiled = ctx.ae.beans.roleInducementGraphCache.getCompiled((AbstractRoleType) target);
+        if (compiled != null) {
+            for (RoleInducementGraphCache.CompiledInducement inducement : compiled.inducements) {
+                new TargetInducementEvaluation<>(segment, targetOverallConditionState, targetActivity, ctx, result,
+                        inducement.inducement, inducement.focusClass, false)
+                        .evaluate();
+            }
+        } else {
             for (AssignmentType inducement : ((AbstractRoleType) target).getInducement()) {
-                new TargetInducementEvaluation<>(segment, targetOverallConditionState, targetActivity, ctx, result, inducement, false)
+                new TargetInducementEvaluation<>(segment, targetOverallConditionState, targetActivity, ctx, result,
+                        inducement, null, false)
                         .evaluate();
             }
         }
     }
 
     private void evaluateArchetypeHierarchy() throws CommunicationException, ObjectNotFoundException, ConfigurationException, SchemaException, SecurityViolationException, PolicyViolationException, ExpressionEvaluationException {
-        if (ArchetypeType.class.isAssignableFrom(target.getClass())) {
-            ObjectReferenceType superArchetype = ((ArchetypeType) target).getSuperArchetypeRef();
-            if (superArchetype == null) {
-                return;
-            }
-
-            PrismContainerDefinition<AssignmentType> def = target.asPrismObject().getDefinition().findContainerDefinition(ArchetypeType.F_INDUCEMENT);
-            PrismContainer<AssignmentType> inducement = def.instantiate();
-            PrismContainerValue<AssignmentType> inducementValue = inducement.createNewValue();
-            AssignmentType inducementRealValue = inducementValue.asContainerable();
-            inducementRealValue.setTargetRef(superArchetype);
-
-            new TargetInducementEvaluation<>(segment, targetOverallConditionState, targetActivity, ctx, result, inducementRealValue, true)
+        if (!(target instanceof ArchetypeType)) {
+            return;
+        }
+        RoleInducementGraphCache.CompiledRole compiled = ctx.ae.beans.roleInducementGraphCache.getCompiled((ArchetypeType) target);
+        AssignmentType inducement = compiled != null ?
+                compiled.superArchetypeInducement : RoleInducementGraphCache.createSuperArchetypeInducement(target);
+        if (inducement != null) {
+            new TargetInducementEvaluation<>(segment, targetOverallConditionState, targetActivity, ctx, result,
+                    inducement, null, true)
                     .evaluate();
         }
     }
@@ -19,6 +19,7 @@ import com.evolveum.midpoint.xml.ns._public.common.common_3.OrderConstraintsType
 
 import org.apache.commons.collections4.CollectionUtils;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import javax.xml.namespace.QName;
 import java.util.ArrayList;
@@ -40,16 +41,25 @@ class TargetInducementEvaluation<AH extends AssignmentHolderType> extends Abstra
     @NotNull private final TargetEvaluation.TargetActivity targetActivity;
     private final OperationResult result;
     private final AssignmentType inducement;
+
+    /**
+     * Class corresponding to inducement `focusType`, if already known (from {@link RoleInducementGraphCache}).
+     * If null, it is determined during the evaluation.
+     */
+    @Nullable private final Class<?> inducementFocusClass;
+
     private final boolean archetypeHierarchy;
 
     TargetInducementEvaluation(AssignmentPathSegmentImpl segment,
             @NotNull ConditionState targetOverallConditionState, @NotNull TargetEvaluation.TargetActivity targetActivity,
-            EvaluationContext<AH> ctx, OperationResult result, AssignmentType inducement, boolean archetypeHierarchy) {
+            EvaluationContext<AH> ctx, OperationResult result, AssignmentType inducement, @Nullable Class<?> inducementFocusClass,
+            boolean archetypeHierarchy) {
         super(segment, ctx);
         this.targetOverallConditionState = targetOverallConditionState;
         this.targetActivity = targetActivity;
         this.result = result;
         this.inducement = inducement;
+        this.inducementFocusClass = inducementFocusClass;
         this.archetypeHierarchy = archetypeHierarchy;
     }
 
@@ -112,7 +122,8 @@ class TargetInducementEvaluation<AH extends AssignmentHolderType> extends Abstra
         if (inducementFocusType == null) {
             return true;
         }
-        Class<?> inducementFocusClass = ctx.ae.prismContext.getSchemaRegistry().determineCompileTimeClass(inducementFocusType);
+        Class<?> inducementFocusClass = this.inducementFocusClass != null ?
+                this.inducementFocusClass : ctx.ae.prismContext.getSchemaRegistry().determineCompileTimeClass(inducementFocusType);
         if (inducementFocusClass == null) {
             throw new SchemaException("Could not determine class for " + inducementFocusType);
         }
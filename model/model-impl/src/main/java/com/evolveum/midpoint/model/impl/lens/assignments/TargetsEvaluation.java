@@ -207,8 +207,28 @@ class TargetsEvaluation<AH extends AssignmentHolderType> extends AbstractEvaluat
             CommunicationException, ConfigurationException, SecurityViolationException {
         ObjectReferenceType targetRef = segment.assignment.getTargetRef();
         ReferenceResolver.FilterEvaluator filterEvaluator = createFilterEvaluator(segment, ctx);
-        return ctx.ae.referenceResolver.resolve(targetRef, createReadOnlyCollection(), REPOSITORY,
-                filterEvaluator, ctx.task, result);
+        String oid = targetRef.getOid();
+        if (oid == null || targetRef.getType() == null) {
+            return ctx.ae.referenceResolver.resolve(targetRef, createReadOnlyCollection(), REPOSITORY,
+                    filterEvaluator, ctx.task, result);
+        }
+
+        // Targets referenced by OID: idempotent roles are taken from the node-wide cache, if possible.
+        RoleInducementGraphCache cache = ctx.ae.beans.roleInducementGraphCache;
+        Class<? extends ObjectType> targetClass =
+                ctx.ae.prismContext.getSchemaRegistry().determineClassForTypeRequired(targetRef.getType(), ObjectType.class);
+        PrismObject<? extends ObjectType> cached = cache.getRole(oid, targetClass);
+        if (cached != null) {
+            LOGGER.trace("Target {} of {} found in role inducement graph cache", cached, segment);
+            return Collections.singletonList(cached);
+        }
+        long invalidationCount = cache.getInvalidationCount();
+        List<PrismObject<? extends ObjectType>> resolved = ctx.ae.referenceResolver.resolve(
+                targetRef, createReadOnlyCollection(), REPOSITORY, filterEvaluator, ctx.task, result);
+        if (resolved.size() == 1) {
+            cache.put(resolved.get(0), invalidationCount);
+        }
+        return resolved;
     }
 
     @NotNull
@@ -120,6 +120,8 @@ public class ProjectionsLoadOperation<F extends FocusType> {
             return;
         }
 
+        // The shadows are not read in bulk using RepositoryService.getObjects: they are read via provisioning
+        // (with definitions applied, shadow state determined, and possibly refreshed), and provisioning has no bulk get.
         for (PrismReferenceValue linkRefVal : linkRef.getValues()) {
             getOrCreateProjectionContextFromAnyLinkRefVal(linkRefVal, result);
         }
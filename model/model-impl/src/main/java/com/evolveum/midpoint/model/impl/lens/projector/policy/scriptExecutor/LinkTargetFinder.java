@@ -31,7 +31,6 @@ import com.evolveum.midpoint.prism.PrismObject;
 import com.evolveum.midpoint.prism.PrismReferenceValue;
 import com.evolveum.midpoint.schema.result.OperationResult;
 import com.evolveum.midpoint.util.exception.CommonException;
-import com.evolveum.midpoint.util.exception.ObjectNotFoundException;
 import com.evolveum.midpoint.util.exception.SchemaException;
 import com.evolveum.midpoint.util.logging.LoggingUtils;
 import com.evolveum.midpoint.util.logging.Trace;
@@ -166,17 +165,30 @@ class LinkTargetFinder implements AutoCloseable {
     }
 
     private Collection<PrismObject<? extends ObjectType>> resolveLinks(Set<PrismReferenceValue> links) {
-        Map<String, PrismObject<? extends ObjectType>> objects = new HashMap<>();
+        Map<Class<? extends ObjectType>, Set<String>> oidsByClass = new LinkedHashMap<>();
         for (PrismReferenceValue link : links) {
-            String oid = link.getOid();
-            if (!objects.containsKey(oid)) {
-                try {
-                    Class<? extends ObjectType> clazz = getClassForType(link.getTargetType());
-                    // TODO consider reading in read-only mode
-                    objects.put(oid, beans.repositoryService.getObject(clazz, oid, null, result));
-                } catch (SchemaException | ObjectNotFoundException e) {
-                    LoggingUtils.logUnexpectedException(LOGGER, "Couldn't resolve reference {} in {} when applying script on link targets",
-                            e, link, actx.focusContext.getObjectAny());
+            oidsByClass.computeIfAbsent(getClassForType(link.getTargetType()), k -> new LinkedHashSet<>())
+                    .add(link.getOid());
+        }
+        Map<String, PrismObject<? extends ObjectType>> objects = new HashMap<>();
+        for (Map.Entry<Class<? extends ObjectType>, Set<String>> entry : oidsByClass.entrySet()) {
+            Set<String> oids = entry.getValue();
+            oids.removeAll(objects.keySet());
+            if (oids.isEmpty()) {
+                continue;
+            }
+            try {
+                // TODO consider reading in read-only mode
+                objects.putAll(beans.repositoryService.getObjects(entry.getKey(), oids, null, result));
+            } catch (SchemaException e) {
+                LoggingUtils.logUnexpectedException(LOGGER, "Couldn't resolve references to {} in {} when applying script on link targets",
+                        e, oids, actx.focusContext.getObjectAny());
+                continue;
+            }
+            for (String oid : oids) {
+                if (!objects.containsKey(oid)) {
+                    LOGGER.error("Couldn't resolve reference to {} {} in {} when applying script on link targets: object not found",
+                            entry.getKey().getSimpleName(), oid, actx.focusContext.getObjectAny());
                 }
             }
         }
@@ -0,0 +1,100 @@
+/*
+ * Copyright (C) 2010-2022 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+package com.evolveum.midpoint.model.impl.tasks;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.jetbrains.annotations.NotNull;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import com.evolveum.midpoint.model.impl.controller.MaintainedCollectionCounts;
+import com.evolveum.midpoint.repo.common.activity.definition.AbstractWorkDefinition;
+import com.evolveum.midpoint.repo.common.activity.run.*;
+import com.evolveum.midpoint.schema.result.OperationResult;
+import com.evolveum.midpoint.schema.util.task.work.WorkDefinitionSource;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.*;
+
+/**
+ * Reconciles maintained collection counts (see {@link MaintainedCollectionCounts}) on the node where it runs.
+ * No iteration here: the counts are recomputed one after another, each one being a single repository count.
+ */
+@Component
+public class CollectionCountsReconciliationActivityHandler
+        extends ModelActivityHandler<
+        CollectionCountsReconciliationActivityHandler.MyWorkDefinition,
+        CollectionCountsReconciliationActivityHandler> {
+
+    private static final String OP_RECONCILE = CollectionCountsReconciliationActivityHandler.class.getName() + ".reconcile";
+
+    @Autowired private MaintainedCollectionCounts maintainedCollectionCounts;
+
+    @PostConstruct
+    public void register() {
+        handlerRegistry.register(CollectionCountsReconciliationWorkDefinitionType.COMPLEX_TYPE, null,
+                MyWorkDefinition.class, MyWorkDefinition::new, this);
+    }
+
+    @PreDestroy
+    public void unregister() {
+        handlerRegistry.unregister(CollectionCountsReconciliationWorkDefinitionType.COMPLEX_TYPE, null,
+                MyWorkDefinition.class);
+    }
+
+    @Override
+    public String getIdentifierPrefix() {
+        return "collection-counts-reconciliation";
+    }
+
+    @Override
+    public String getDefaultArchetypeOid() {
+        return SystemObjectsType.ARCHETYPE_SYSTEM_TASK.value();
+    }
+
+    @Override
+    public AbstractActivityRun<MyWorkDefinition, CollectionCountsReconciliationActivityHandler, ?> createActivityRun(
+            @NotNull ActivityRunInstantiationContext<MyWorkDefinition, CollectionCountsReconciliationActivityHandler> context,
+            @NotNull OperationResult result) {
+        return new MyActivityRun(context);
+    }
+
+    final static class MyActivityRun
+            extends LocalActivityRun<MyWorkDefinition, CollectionCountsReconciliationActivityHandler, AbstractActivityWorkStateType> {
+
+        MyActivityRun(
+                @NotNull ActivityRunInstantiationContext<MyWorkDefinition, CollectionCountsReconciliationActivityHandler> context) {
+            super(context);
+            setInstanceReady();
+        }
+
+        @Override
+        protected @NotNull ActivityRunResult runLocally(OperationResult parentResult) {
+            OperationResult result = parentResult.createSubresult(OP_RECONCILE);
+            try {
+                getActivityHandler().maintainedCollectionCounts.reconcile(result);
+            } catch (Throwable t) {
+                result.recordFatalError(t);
+                throw t;
+            } finally {
+                result.close();
+            }
+            return standardRunResult(result.getStatus());
+        }
+    }
+
+    public static class MyWorkDefinition extends AbstractWorkDefinition {
+
+        MyWorkDefinition(WorkDefinitionSource source) {
+            // No parameters.
+        }
+
+        @Override
+        protected void debugDumpContent(StringBuilder sb, int indent) {
+        }
+    }
+}
@@ -0,0 +1,247 @@
+/*
+ * Copyright (C) 2010-2022 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+package com.evolveum.midpoint.model.impl;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import org.testng.annotations.Test;
+
+import com.evolveum.midpoint.CacheInvalidationContext;
+import com.evolveum.midpoint.schema.metrics.MetricsRegistry;
+import com.evolveum.midpoint.schema.result.OperationResult;
+import com.evolveum.midpoint.task.api.TaskManager;
+import com.evolveum.midpoint.tools.testng.AbstractUnitTest;
+import com.evolveum.midpoint.xml.ns._public.common.api_types_3.CacheInvalidationEventListType;
+import com.evolveum.midpoint.xml.ns._public.common.api_types_3.CacheInvalidationEventType;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.NodeType;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.RoleType;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.UserType;
+
+/**
+ * Tests {@link ClusterCacheInvalidationBus} without real nodes: node list and sending of batches are replaced,
+ * flushes are invoked explicitly.
+ */
+public class TestClusterCacheInvalidationBus extends AbstractUnitTest {
+
+    private static final NodeType NODE_1 = new NodeType().nodeIdentifier("node1");
+    private static final NodeType NODE_2 = new NodeType().nodeIdentifier("node2");
+
+    @Test
+    public void test100DuplicateEventsAreCoalesced() {
+        TestBus bus = new TestBus(100, Long.MAX_VALUE, Runnable::run, NODE_1, NODE_2);
+
+        when("overlapping events are queued and flushed");
+        bus.enqueue(UserType.class, "u1");
+        bus.enqueue(UserType.class, "u1");
+        bus.enqueue(UserType.class, "u2");
+        bus.enqueue(RoleType.class, "r1");
+        bus.enqueue(RoleType.class, null);
+        bus.flush();
+
+        then("each node gets a single batch without duplicates");
+        assertThat(bus.sent).hasSize(2);
+        for (SentBatch batch : bus.sent) {
+            assertThat(batch.events()).containsExactly("roles/null", "users/u1", "users/u2");
+        }
+        assertThat(bus.getEventsReceived()).isEqualTo(5);
+        assertThat(bus.getEventsSent()).isEqualTo(6);
+        assertThat(bus.getBatchesSent()).isEqualTo(2);
+        assertThat(bus.getQueueDepth()).isZero();
+
+        when("global invalidation is queued along with other events");
+        bus.sent.clear();
+        bus.enqueue(UserType.class, "u3");
+        bus.enqueue(null, null);
+        bus.enqueue(RoleType.class, "r2");
+        bus.flush();
+
+        then("it covers all of them");
+        assertThat(bus.sent).hasSize(2);
+        assertThat(bus.sent.get(0).events()).containsExactly("null/null");
+    }
+
+    @Test
+    public void test110FullQueueIsCollapsedWhileBatchIsInFlight() {
+        List<Runnable> sendTasks = new ArrayList<>();
+        TestBus bus = new TestBus(3, Long.MAX_VALUE, sendTasks::add, NODE_1);
+
+        given("a batch is being sent to the node");
+        bus.enqueue(UserType.class, "u1");
+        bus.flush();
+        assertThat(sendTasks).hasSize(1);
+
+        when("more events than the queue can hold arrive in the meantime");
+        for (int i = 0; i < 5; i++) {
+            bus.enqueue(UserType.class, "other" + i);
+            bus.flush();
+        }
+
+        then("no other batch is started for the node and its queue is collapsed");
+        assertThat(sendTasks).hasSize(1);
+        assertThat(bus.getQueueOverflows()).isEqualTo(1);
+        assertThat(bus.getQueueDepth()).isEqualTo(1);
+        assertThat(bus.getLag()).isGreaterThanOrEqualTo(0);
+
+        when("the batch in flight is sent");
+        sendTasks.remove(0).run();
+
+        then("the node gets a single global invalidation covering all the events");
+        assertThat(bus.sent).hasSize(1);
+        assertThat(bus.sent.get(0).events()).containsExactly("null/null");
+        assertThat(bus.getQueueDepth()).isZero();
+        assertThat(bus.getLag()).isZero();
+
+        and("there is nothing more to send");
+        bus.flush();
+        assertThat(sendTasks).isEmpty();
+    }
+
+    @Test
+    public void test120NodeListIsCached() {
+        TestBus bus = new TestBus(100, Long.MAX_VALUE, Runnable::run, NODE_1);
+
+        when("several flushes are done");
+        for (int i = 0; i < 5; i++) {
+            bus.enqueue(UserType.class, "u" + i);
+            bus.flush();
+        }
+
+        then("nodes are searched for only once");
+        assertThat(bus.nodeSearches).isEqualTo(1);
+        assertThat(bus.sent).hasSize(5);
+
+        when("node list is refreshed on each flush");
+        TestBus refreshingBus = new TestBus(100, 0, Runnable::run, NODE_1);
+        refreshingBus.enqueue(UserType.class, "u1");
+        refreshingBus.flush();
+        refreshingBus.enqueue(UserType.class, "u2");
+        refreshingBus.flush();
+
+        then("nodes are searched for each time");
+        assertThat(refreshingBus.nodeSearches).isEqualTo(2);
+    }
+
+    @Test
+    public void test130EventsFromRemoteNodeAreNotRedistributed() {
+        TestBus bus = new TestBus(100, Long.MAX_VALUE, Runnable::run, NODE_1);
+        ClusterCacheListener listener = new ClusterCacheListener(createClusteredTaskManager(), bus);
+
+        when("invalidations coming from other nodes are dispatched (as the batch endpoint does)");
+        listener.invalidate(UserType.class, "u1", false, new CacheInvalidationContext(true, null));
+        listener.invalidate(UserType.class, "u2", true, new CacheInvalidationContext(true, null));
+
+        then("nothing is queued");
+        assertThat(bus.getEventsReceived()).isZero();
+
+        when("local cluster-wide invalidation is dispatched");
+        listener.invalidate(UserType.class, "u3", true, new CacheInvalidationContext(false, null));
+        bus.flush();
+
+        then("it is sent to the other node");
+        assertThat(bus.getEventsReceived()).isEqualTo(1);
+        assertThat(bus.sent).hasSize(1);
+        assertThat(bus.sent.get(0).events()).containsExactly("users/u3");
+    }
+
+    @Test
+    public void test140QueueMetricsAreExported() {
+        List<Runnable> sendTasks = new ArrayList<>();
+        TestBus bus = new TestBus(100, Long.MAX_VALUE, sendTasks::add, NODE_1);
+        MetricsRegistry registry = new MetricsRegistry();
+        registry.registerCollector(bus::collectMetrics);
+
+        given("events are waiting to be sent");
+        bus.enqueue(UserType.class, "u1");
+        bus.enqueue(UserType.class, "u2");
+        bus.flush();
+
+        when("metrics are exported");
+        String text = registry.export();
+        displayValue("export", text);
+
+        then("queue depth and counters are there");
+        assertThat(text)
+                .contains("# TYPE midpoint_cluster_cache_invalidation_queue_depth gauge\n"
+                        + "midpoint_cluster_cache_invalidation_queue_depth 2\n")
+                .contains("# TYPE midpoint_cluster_cache_invalidation_lag_seconds gauge\n")
+                .contains("midpoint_cluster_cache_invalidation_events_received_total 2\n")
+                .contains("midpoint_cluster_cache_invalidation_batches_sent_total 0\n");
+    }
+
+    private TaskManager createClusteredTaskManager() {
+        return (TaskManager) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { TaskManager.class },
+                (proxy, method, args) -> {
+                    if (method.getName().equals("isClustered")) {
+                        return true;
+                    } else if (method.getName().equals("createTaskInstance")) {
+                        throw new AssertionError("Synchronous invalidation should not be used");
+                    } else {
+                        throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+    }
+
+    private static class TestBus extends ClusterCacheInvalidationBus {
+
+        private final List<NodeType> nodes;
+        private final List<SentBatch> sent = new ArrayList<>();
+        private int nodeSearches;
+
+        TestBus(int maxQueueSize, long nodeListRefreshInterval, Executor sendExecutor,
+                NodeType... nodes) {
+            super(maxQueueSize, nodeListRefreshInterval, sendExecutor);
+            this.nodes = List.of(nodes);
+        }
+
+        @Override
+        boolean isClustered() {
+            return true;
+        }
+
+        @Override
+        List<NodeType> searchOtherNodes(OperationResult result) {
+            nodeSearches++;
+            return nodes;
+        }
+
+        @Override
+        void sendBatch(NodeType node, CacheInvalidationEventListType eventList, OperationResult result) {
+            synchronized (sent) {
+                sent.add(new SentBatch(node.getNodeIdentifier(), eventList));
+            }
+        }
+    }
+
+    private static class SentBatch {
+        private final String nodeIdentifier;
+        private final CacheInvalidationEventListType eventList;
+
+        SentBatch(String nodeIdentifier, CacheInvalidationEventListType eventList) {
+            this.nodeIdentifier = nodeIdentifier;
+            this.eventList = eventList;
+        }
+
+        /** Events as `type/oid` strings. */
+        private List<String> events() {
+            List<String> events = new ArrayList<>();
+            for (CacheInvalidationEventType event : eventList.getEvent()) {
+                events.add(event.getType() + "/" + event.getOid());
+            }
+            return events;
+        }
+
+        @Override
+        public String toString() {
+            return nodeIdentifier + ": " + events();
+        }
+    }
+}
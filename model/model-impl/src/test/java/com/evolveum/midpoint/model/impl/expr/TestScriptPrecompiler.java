@@ -0,0 +1,122 @@
+/*
+ * Copyright (C) 2010-2022 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+package com.evolveum.midpoint.model.impl.expr;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.annotation.DirtiesContext.ClassMode;
+import org.springframework.test.context.ContextConfiguration;
+import org.testng.annotations.Test;
+
+import com.evolveum.midpoint.common.configuration.api.MidpointConfiguration;
+import com.evolveum.midpoint.model.common.expression.ExpressionEnvironment;
+import com.evolveum.midpoint.model.common.expression.ModelExpressionThreadLocalHolder;
+import com.evolveum.midpoint.model.common.expression.script.ScriptCache;
+import com.evolveum.midpoint.model.common.expression.script.ScriptExpression;
+import com.evolveum.midpoint.model.common.expression.script.ScriptExpressionEvaluationContext;
+import com.evolveum.midpoint.model.common.expression.script.ScriptExpressionFactory;
+import com.evolveum.midpoint.model.impl.AbstractInternalModelIntegrationTest;
+import com.evolveum.midpoint.prism.PrismPropertyDefinition;
+import com.evolveum.midpoint.prism.PrismPropertyValue;
+import com.evolveum.midpoint.prism.path.ItemName;
+import com.evolveum.midpoint.repo.common.expression.ExpressionFactory;
+import com.evolveum.midpoint.schema.constants.MidPointConstants;
+import com.evolveum.midpoint.schema.expression.VariablesMap;
+import com.evolveum.midpoint.schema.result.OperationResult;
+import com.evolveum.midpoint.task.api.Task;
+import com.evolveum.midpoint.util.DOMUtil;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.*;
+
+/**
+ * Tests {@link ScriptPrecompiler}: scripts in configuration objects are compiled (and cached in {@link ScriptCache})
+ * before they are evaluated for the first time.
+ */
+@ContextConfiguration(locations = { "classpath:ctx-model-test-main.xml" })
+@DirtiesContext(classMode = ClassMode.AFTER_CLASS)
+public class TestScriptPrecompiler extends AbstractInternalModelIntegrationTest {
+
+    private static final String KEY_PRECOMPILE_SCRIPTS =
+            MidpointConfiguration.EXPRESSIONS_CONFIGURATION + ".precompileScripts";
+
+    private static final String GROOVY = MidPointConstants.EXPRESSION_LANGUAGE_URL_BASE + "Groovy";
+
+    @Autowired private MidpointConfiguration midpointConfiguration;
+    @Autowired private ScriptPrecompiler scriptPrecompiler;
+    @Autowired private ScriptExpressionFactory scriptExpressionFactory;
+    @Autowired private ExpressionFactory expressionFactory;
+
+    @Test
+    public void test100ScriptsArePrecompiled() throws Exception {
+        Task task = getTestTask();
+        OperationResult result = task.getResult();
+
+        given("a role with a script that was not evaluated yet");
+        assertThat(scriptPrecompiler.isEnabled()).as("precompilation enabled by default").isFalse();
+        String code = "'precompiled in " + getTestNameShort() + "'";
+        addRoleWithScript("role100", code, result);
+        ScriptCache<?, ?> scriptCache = scriptExpressionFactory.getEvaluators().get(GROOVY).getScriptCache();
+        assertThat(scriptCache.getCode(null, code)).as("compiled script before precompilation").isNull();
+
+        when("the precompilation is enabled and run");
+        midpointConfiguration.getConfiguration().setProperty(KEY_PRECOMPILE_SCRIPTS, true);
+        try {
+            scriptPrecompiler.initialize();
+            assertThat(scriptPrecompiler.isEnabled()).as("precompilation enabled").isTrue();
+            scriptPrecompiler.precompileAll();
+        } finally {
+            midpointConfiguration.getConfiguration().clearProperty(KEY_PRECOMPILE_SCRIPTS);
+            scriptPrecompiler.initialize();
+        }
+
+        then("the script is in the cache before its first evaluation");
+        assertThat(scriptCache.getCode(null, code)).as("compiled script after precompilation").isNotNull();
+
+        and("the first evaluation does not compile the script again");
+        long misses = scriptCache.getStats().missCount();
+        List<PrismPropertyValue<String>> values = evaluate(code, task, result);
+        assertThat(values).extracting(PrismPropertyValue::getRealValue)
+                .containsExactly("precompiled in " + getTestNameShort());
+        assertThat(scriptCache.getStats().missCount()).as("cache misses").isEqualTo(misses);
+    }
+
+    private void addRoleWithScript(String name, String code, OperationResult result) throws Exception {
+        ExpressionType expression = new ExpressionType();
+        expression.getExpressionEvaluator().add(
+                new ObjectFactory().createScript(new ScriptExpressionEvaluatorType().code(code)));
+        RoleType role = new RoleType(prismContext)
+                .name(name)
+                .inducement(new AssignmentType(prismContext)
+                        .condition(new MappingType().expression(expression))
+                        .focusType(UserType.COMPLEX_TYPE));
+        repositoryService.addObject(role.asPrismObject(), null, result);
+    }
+
+    private List<PrismPropertyValue<String>> evaluate(String code, Task task, OperationResult result) throws Exception {
+        PrismPropertyDefinition<String> outputDefinition = prismContext.definitionFactory()
+                .createPropertyDefinition(new ItemName(MidPointConstants.NS_MIDPOINT_TEST_PREFIX, "output"),
+                        DOMUtil.XSD_STRING);
+        ScriptExpression scriptExpression = scriptExpressionFactory.createScriptExpression(
+                new ScriptExpressionEvaluatorType().code(code), outputDefinition, null,
+                expressionFactory, getTestNameShort(), result);
+        ModelExpressionThreadLocalHolder.pushExpressionEnvironment(new ExpressionEnvironment<>(task, result));
+        try {
+            ScriptExpressionEvaluationContext context = new ScriptExpressionEvaluationContext();
+            context.setVariables(new VariablesMap());
+            context.setScriptExpression(scriptExpression);
+            context.setContextDescription(getTestNameShort());
+            context.setTask(task);
+            context.setResult(result);
+            return scriptExpression.evaluate(context);
+        } finally {
+            ModelExpressionThreadLocalHolder.popExpressionEnvironment();
+        }
+    }
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright (C) 2010-2022 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+package com.evolveum.midpoint.model.impl.expr;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import org.testng.annotations.Test;
+
+import com.evolveum.midpoint.repo.api.RepositoryService;
+import com.evolveum.midpoint.schema.result.OperationResult;
+import com.evolveum.midpoint.test.util.InfraTestMixin;
+import com.evolveum.midpoint.tools.testng.AbstractUnitTest;
+
+/**
+ * Tests node-local {@link SequenceReservoir} against a simple in-memory sequence
+ * that provides blocks like the repository does (shorter block near the end of the sequence).
+ */
+public class TestSequenceReservoir extends AbstractUnitTest implements InfraTestMixin {
+
+    private static final String SEQUENCE_OID = "e0ab6e2c-3b0e-4a6e-9c0f-5a3b0d7c1f11";
+
+    @Test
+    public void test100ValuesAreServedFromReservedBlock() throws Exception {
+        FakeSequence sequence = new FakeSequence(3, 100);
+        SequenceReservoir reservoir = new SequenceReservoir(sequence.asRepository());
+        OperationResult result = createOperationResult();
+
+        when("values are requested");
+        List<Long> values = new ArrayList<>();
+        for (int i = 0; i < 7; i++) {
+            values.add(reservoir.advanceSequence(SEQUENCE_OID, result));
+        }
+
+        then("values are in order and obtained by three reservations");
+        assertThat(values).containsExactly(0L, 1L, 2L, 3L, 4L, 5L, 6L);
+        assertThat(sequence.reservations).isEqualTo(3);
+    }
+
+    @Test
+    public void test110ShortBlockDoesNotDisableBlockReservation() throws Exception {
+        FakeSequence sequence = new FakeSequence(3, 4);
+        SequenceReservoir reservoir = new SequenceReservoir(sequence.asRepository());
+        OperationResult result = createOperationResult();
+
+        given("values are used up to the short block at the end of the sequence");
+        for (long expected = 0; expected <= 3; expected++) {
+            assertThat(reservoir.advanceSequence(SEQUENCE_OID, result)).isEqualTo(expected);
+        }
+        assertThat(sequence.reservations).isEqualTo(2); // 0-2 and 3-4
+
+        when("unused values are returned");
+        reservoir.returnUnusedValues(SEQUENCE_OID, List.of(1L, 2L), result);
+
+        then("they are kept in memory and served before the rest of the reserved block");
+        assertThat(sequence.returnedValues).isEmpty();
+        assertThat(reservoir.advanceSequence(SEQUENCE_OID, result)).isEqualTo(1L);
+        assertThat(reservoir.advanceSequence(SEQUENCE_OID, result)).isEqualTo(2L);
+        assertThat(reservoir.advanceSequence(SEQUENCE_OID, result)).isEqualTo(4L);
+        assertThat(sequence.reservations).isEqualTo(2);
+    }
+
+    @Test
+    public void test120ValuesAreReturnedToRepositoryWithoutBlockReservation() throws Exception {
+        FakeSequence sequence = new FakeSequence(1, 100);
+        SequenceReservoir reservoir = new SequenceReservoir(sequence.asRepository());
+        OperationResult result = createOperationResult();
+
+        given("values are reserved one by one");
+        assertThat(reservoir.advanceSequence(SEQUENCE_OID, result)).isEqualTo(0L);
+        assertThat(reservoir.advanceSequence(SEQUENCE_OID, result)).isEqualTo(1L);
+
+        when("unused value is returned");
+        reservoir.returnUnusedValues(SEQUENCE_OID, List.of(1L), result);
+
+        then("it is returned to the repository right away");
+        assertThat(sequence.returnedValues).containsExactly(1L);
+    }
+
+    @Test
+    public void test130ReservedValuesAreReturnedOnShutdown() throws Exception {
+        FakeSequence sequence = new FakeSequence(5, 100);
+        SequenceReservoir reservoir = new SequenceReservoir(sequence.asRepository());
+        OperationResult result = createOperationResult();
+
+        given("a block is reserved and two values are used");
+        reservoir.advanceSequence(SEQUENCE_OID, result);
+        reservoir.advanceSequence(SEQUENCE_OID, result);
+
+        when("reservoir is shut down");
+        reservoir.returnReservedValues();
+
+        then("the rest of the block is returned to the repository");
+        assertThat(sequence.returnedValues).containsExactly(2L, 3L, 4L);
+
+        and("nothing is returned again");
+        reservoir.returnReservedValues();
+        assertThat(sequence.returnedValues).hasSize(3);
+    }
+
+    /** Sequence without rewind providing blocks of the configured size, the last block may be shorter. */
+    private static class FakeSequence {
+
+        private final int blockSize;
+        private final long maxCounter;
+
+        private long counter;
+        private int reservations;
+        private final List<Long> returnedValues = new ArrayList<>();
+
+        FakeSequence(int blockSize, long maxCounter) {
+            this.blockSize = blockSize;
+            this.maxCounter = maxCounter;
+        }
+
+        private synchronized List<Long> reserve() {
+            if (counter > maxCounter) {
+                throw new IllegalStateException("Sequence exhausted");
+            }
+            reservations++;
+            List<Long> block = new ArrayList<>();
+            while (block.size() < blockSize && counter <= maxCounter) {
+                block.add(counter++);
+            }
+            return block;
+        }
+
+        @SuppressWarnings("unchecked")
+        private synchronized Object returnValues(Object values) {
+            returnedValues.addAll((Collection<Long>) values);
+            return null;
+        }
+
+        RepositoryService asRepository() {
+            return (RepositoryService) Proxy.newProxyInstance(getClass().getClassLoader(),
+                    new Class<?>[] { RepositoryService.class },
+                    (proxy, method, args) -> {
+                        switch (method.getName()) {
+                            case "reserveSequenceValues":
+                                return reserve();
+                            case "returnUnusedValuesToSequence":
+                                return returnValues(args[1]);
+                            default:
+                                throw new UnsupportedOperationException(method.getName());
+                        }
+                    });
+        }
+    }
+}
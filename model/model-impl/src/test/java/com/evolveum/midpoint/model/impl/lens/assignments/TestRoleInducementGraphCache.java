@@ -0,0 +1,249 @@
+/*
+ * Copyright (C) 2010-2022 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+package com.evolveum.midpoint.model.impl.lens.assignments;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.annotation.DirtiesContext.ClassMode;
+import org.springframework.test.context.ContextConfiguration;
+import org.testng.annotations.Test;
+
+import com.evolveum.midpoint.model.impl.AbstractInternalModelIntegrationTest;
+import com.evolveum.midpoint.prism.PrismObject;
+import com.evolveum.midpoint.prism.delta.ItemDelta;
+import com.evolveum.midpoint.schema.cache.CacheConfigurationManager;
+import com.evolveum.midpoint.schema.result.OperationResult;
+import com.evolveum.midpoint.task.api.Task;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.*;
+
+/**
+ * Tests {@link RoleInducementGraphCache}: hits and misses, invalidation on role modification and deletion,
+ * roles loaded concurrently with an invalidation, and the configuration by the caching profile.
+ */
+@ContextConfiguration(locations = { "classpath:ctx-model-test-main.xml" })
+@DirtiesContext(classMode = ClassMode.AFTER_CLASS)
+public class TestRoleInducementGraphCache extends AbstractInternalModelIntegrationTest {
+
+    private static final String PROFILE_NO_ROLE_CACHE = "no-role-inducement-graph-cache";
+
+    @Autowired private RoleInducementGraphCache cache;
+    @Autowired private CacheConfigurationManager cacheConfigurationManager;
+
+    @Test
+    public void test100MissAndHit() throws Exception {
+        OperationResult result = getTestOperationResult();
+
+        given("an idempotent role");
+        String oid = addRole("role100", IdempotenceType.CONSERVATIVE, result);
+        long misses = getMisses();
+        long hits = getHits();
+
+        when("the role is looked up, put into the cache, and looked up again");
+        PrismObject<? extends AbstractRoleType> first = cache.getRole(oid, RoleType.class);
+        cache.put(getRole(oid, result), cache.getInvalidationCount());
+        PrismObject<? extends AbstractRoleType> second = cache.getRole(oid, RoleType.class);
+
+        then("the first lookup is a miss and the second one is a hit");
+        assertThat(first).isNull();
+        assertThat(second).isNotNull();
+        assertThat(second.isImmutable()).isTrue();
+        assertThat(second.getOid()).isEqualTo(oid);
+        assertThat(getMisses()).isEqualTo(misses + 1);
+        assertThat(getHits()).isEqualTo(hits + 1);
+
+        and("the compiled inducements are available");
+        RoleInducementGraphCache.CompiledRole compiled = cache.getCompiled(second.asObjectable());
+        assertThat(compiled).isNotNull();
+        assertThat(compiled.inducements).hasSize(1);
+        assertThat(compiled.inducements.get(0).focusClass).isEqualTo(UserType.class);
+
+        and("the role of other type is not returned");
+        assertThat(cache.getRole(oid, OrgType.class)).isNull();
+    }
+
+    @Test
+    public void test110NonIdempotentRoleIsNotCached() throws Exception {
+        OperationResult result = getTestOperationResult();
+
+        given("a role that is not idempotent");
+        String oid = addRole("role110", null, result);
+
+        when("it is put into the cache");
+        cache.put(getRole(oid, result), cache.getInvalidationCount());
+
+        then("it is not cached");
+        assertThat(cache.getRole(oid, RoleType.class)).isNull();
+    }
+
+    @Test
+    public void test120ModifiedRoleIsInvalidated() throws Exception {
+        OperationResult result = getTestOperationResult();
+
+        given("a cached idempotent role");
+        String oid = addRole("role120", IdempotenceType.CONSERVATIVE, result);
+        cache.put(getRole(oid, result), cache.getInvalidationCount());
+        assertThat(cache.getRole(oid, RoleType.class)).isNotNull();
+
+        when("the role is modified");
+        List<ItemDelta<?, ?>> modifications = deltaFor(RoleType.class)
+                .item(RoleType.F_DESCRIPTION).replace("modified")
+                .asItemDeltas();
+        repositoryService.modifyObject(RoleType.class, oid, modifications, result);
+
+        then("it is removed from the cache");
+        assertThat(cache.getRole(oid, RoleType.class)).isNull();
+
+        and("the new version is cached when put again");
+        cache.put(getRole(oid, result), cache.getInvalidationCount());
+        PrismObject<? extends AbstractRoleType> cached = cache.getRole(oid, RoleType.class);
+        assertThat(cached).isNotNull();
+        assertThat(cached.asObjectable().getDescription()).isEqualTo("modified");
+    }
+
+    @Test
+    public void test130DeletedRoleIsInvalidated() throws Exception {
+        OperationResult result = getTestOperationResult();
+
+        given("a cached idempotent role");
+        String oid = addRole("role130", IdempotenceType.CONSERVATIVE, result);
+        cache.put(getRole(oid, result), cache.getInvalidationCount());
+        assertThat(cache.getRole(oid, RoleType.class)).isNotNull();
+
+        when("the role is deleted");
+        repositoryService.deleteObject(RoleType.class, oid, result);
+
+        then("it is removed from the cache");
+        assertThat(cache.getRole(oid, RoleType.class)).isNull();
+    }
+
+    /** A role loaded before an invalidation must not be cached, as it could be the old version. */
+    @Test
+    public void test140RoleLoadedBeforeInvalidationIsNotCached() throws Exception {
+        OperationResult result = getTestOperationResult();
+
+        given("an idempotent role loaded before an invalidation");
+        String oid = addRole("role140", IdempotenceType.CONSERVATIVE, result);
+        long invalidationCount = cache.getInvalidationCount();
+        PrismObject<RoleType> role = getRole(oid, result);
+        cache.invalidate(RoleType.class, oid, null);
+
+        when("it is put into the cache");
+        cache.put(role, invalidationCount);
+
+        then("it is not cached");
+        assertThat(cache.getRole(oid, RoleType.class)).isNull();
+
+        and("it is cached when loaded after the invalidation");
+        cache.put(getRole(oid, result), cache.getInvalidationCount());
+        assertThat(cache.getRole(oid, RoleType.class)).isNotNull();
+    }
+
+    @Test
+    public void test150TypeWideInvalidationClearsTheCache() throws Exception {
+        OperationResult result = getTestOperationResult();
+
+        given("a cached idempotent role");
+        String oid = addRole("role150", IdempotenceType.CONSERVATIVE, result);
+        cache.put(getRole(oid, result), cache.getInvalidationCount());
+        assertThat(cache.getRole(oid, RoleType.class)).isNotNull();
+
+        when("all roles are invalidated");
+        cache.invalidate(AbstractRoleType.class, null, null);
+
+        then("the cache is empty");
+        assertThat(cache.getRole(oid, RoleType.class)).isNull();
+        assertThat(cache.getStateInformation().iterator().next().getSize()).isZero();
+    }
+
+    @Test
+    public void test200RoleIsCachedWhenAssignmentsAreEvaluated() throws Exception {
+        Task task = getTestTask();
+        OperationResult result = task.getResult();
+
+        given("an idempotent role not in the cache");
+        String oid = addRole("role200", IdempotenceType.CONSERVATIVE, result);
+        cache.invalidate(RoleType.class, oid, null);
+
+        when("the role is assigned to a user");
+        assignRole(USER_JACK_OID, oid, task, result);
+
+        then("the role is in the cache");
+        assertSuccess(result);
+        assertThat(cache.getRole(oid, RoleType.class)).isNotNull();
+
+        unassignRole(USER_JACK_OID, oid, task, result);
+    }
+
+    @Test
+    public void test210CacheDisabledByCachingProfile() throws Exception {
+        OperationResult result = getTestOperationResult();
+
+        given("caching profile that disables the cache");
+        SystemConfigurationType systemConfiguration = getSystemConfiguration();
+        SystemConfigurationType withProfile = systemConfiguration.clone();
+        if (withProfile.getInternals() == null) {
+            withProfile.setInternals(new InternalsConfigurationType(prismContext));
+        }
+        if (withProfile.getInternals().getCaching() == null) {
+            withProfile.getInternals().setCaching(new CachingConfigurationType(prismContext));
+        }
+        withProfile.getInternals().getCaching().getProfile().add(
+                new CachingProfileType(prismContext)
+                        .name(PROFILE_NO_ROLE_CACHE)
+                        .globalRoleInducementGraphCache(new CacheSettingsType(prismContext)
+                                .append(false)
+                                .maxSize(0)));
+        cacheConfigurationManager.applyCachingConfiguration(withProfile);
+        String oid = addRole("role210", IdempotenceType.CONSERVATIVE, result);
+        cache.put(getRole(oid, result), cache.getInvalidationCount());
+        assertThat(cache.getRole(oid, RoleType.class)).isNotNull();
+
+        try {
+            when("the profile is used");
+            cacheConfigurationManager.setThreadLocalProfiles(List.of(PROFILE_NO_ROLE_CACHE));
+
+            then("the cache is not used");
+            assertThat(cache.isEnabledFor(RoleType.class)).isFalse();
+            assertThat(cache.getRole(oid, RoleType.class)).isNull();
+            cache.invalidate(RoleType.class, oid, null);
+            cache.put(getRole(oid, result), cache.getInvalidationCount());
+        } finally {
+            cacheConfigurationManager.unsetThreadLocalProfiles();
+            cacheConfigurationManager.applyCachingConfiguration(systemConfiguration);
+        }
+
+        and("the role was not cached while the cache was disabled");
+        assertThat(cache.isEnabledFor(RoleType.class)).isTrue();
+        assertThat(cache.getRole(oid, RoleType.class)).isNull();
+    }
+
+    private String addRole(String name, IdempotenceType idempotence, OperationResult result) throws Exception {
+        RoleType role = new RoleType(prismContext)
+                .name(name)
+                .idempotence(idempotence)
+                .inducement(new AssignmentType(prismContext)
+                        .description("inducement of " + name)
+                        .focusType(UserType.COMPLEX_TYPE));
+        return repositoryService.addObject(role.asPrismObject(), null, result);
+    }
+
+    private PrismObject<RoleType> getRole(String oid, OperationResult result) throws Exception {
+        return repositoryService.getObject(RoleType.class, oid, null, result);
+    }
+
+    private long getHits() {
+        return cache.getStateInformation().iterator().next().getHits();
+    }
+
+    private long getMisses() {
+        return cache.getStateInformation().iterator().next().getMisses();
+    }
+}
@@ -0,0 +1,201 @@
+/*
+ * Copyright (C) 2010-2022 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+package com.evolveum.midpoint.model.impl.misc;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.annotation.DirtiesContext.ClassMode;
+import org.springframework.test.context.ContextConfiguration;
+import org.testng.annotations.Test;
+
+import com.evolveum.midpoint.model.impl.AbstractInternalModelIntegrationTest;
+import com.evolveum.midpoint.model.impl.controller.MaintainedCollectionCounts;
+import com.evolveum.midpoint.prism.PrismObject;
+import com.evolveum.midpoint.prism.query.ObjectFilter;
+import com.evolveum.midpoint.repo.api.CacheDispatcher;
+import com.evolveum.midpoint.schema.result.OperationResult;
+import com.evolveum.midpoint.task.api.Task;
+import com.evolveum.midpoint.test.TestResource;
+import com.evolveum.midpoint.test.util.MidPointTestConstants;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.*;
+import com.evolveum.prism.xml.ns._public.types_3.PolyStringType;
+
+/**
+ * Tests {@link MaintainedCollectionCounts}: incremental updates from repository change events, reconciliation
+ * by the activity, and authorizations.
+ */
+@ContextConfiguration(locations = { "classpath:ctx-model-test-main.xml" })
+@DirtiesContext(classMode = ClassMode.AFTER_CLASS)
+public class TestMaintainedCollectionCounts extends AbstractInternalModelIntegrationTest {
+
+    private static final File TEST_DIR = new File(MidPointTestConstants.TEST_RESOURCES_DIR, "misc");
+
+    private static final TestResource<TaskType> TASK_RECONCILIATION = new TestResource<>(TEST_DIR,
+            "task-collection-counts-reconciliation.xml", "2b8ef4a5-8c1a-4a0d-a4a6-bcd2a8c5f0a3");
+    private static final TestResource<RoleType> ROLE_MCC_VIEWER = new TestResource<>(TEST_DIR,
+            "role-mcc-viewer.xml", "6e2cc3f1-79a1-4b0e-9f3c-3c0c2f61bd2e");
+    private static final TestResource<UserType> USER_MCC_VIEWER = new TestResource<>(TEST_DIR,
+            "user-mcc-viewer.xml", "0c5b7e64-3f1d-4e0a-8a62-5d7f3e9e2b41");
+    private static final String USER_MCC_VIEWER_NAME = "mcc-viewer";
+    private static final TestResource<UserType> USER_MCC_NOBODY = new TestResource<>(TEST_DIR,
+            "user-mcc-nobody.xml", "9d1f2a7c-5e63-4b8f-a0d4-2c6e8b7f1a95");
+    private static final String USER_MCC_NOBODY_NAME = "mcc-nobody";
+
+    private static final String COST_CENTER = "mcc";
+
+    /** Long enough not to recompute the counts on access during the test. */
+    private static final long RECONCILIATION_INTERVAL = TimeUnit.HOURS.toMillis(1);
+
+    @Autowired private MaintainedCollectionCounts maintainedCollectionCounts;
+    @Autowired private CacheDispatcher cacheDispatcher;
+
+    private String user2Oid;
+    private String user3Oid;
+
+    @Override
+    public void initSystem(Task initTask, OperationResult initResult) throws Exception {
+        super.initSystem(initTask, initResult);
+        repoAdd(ROLE_MCC_VIEWER, initResult);
+        repoAdd(USER_MCC_VIEWER, initResult);
+        repoAdd(USER_MCC_NOBODY, initResult);
+    }
+
+    @Test
+    public void test100InitialCount() throws Exception {
+        Task task = getTestTask();
+        OperationResult result = task.getResult();
+
+        given("three users in the collection");
+        addUser("mcc-1", "visible", result);
+        user2Oid = addUser("mcc-2", null, result);
+        user3Oid = addUser("mcc-3", null, result);
+
+        expect("they are counted");
+        assertThat(getCount(task, result)).isEqualTo(3);
+        assertThat(maintainedCollectionCounts.size()).isEqualTo(1);
+    }
+
+    /**
+     * Changes seen by the repository cache are applied incrementally. A change done in the repository directly
+     * is not seen, so it shows that the count was not recomputed.
+     */
+    @Test
+    public void test110IncrementalUpdates() throws Exception {
+        Task task = getTestTask();
+        OperationResult result = task.getResult();
+
+        given("a user added bypassing the repository cache (i.e. without change event)");
+        plainRepositoryService.addObject(createUser("mcc-hidden", null), null, result);
+
+        when("users are added");
+        addUser("mcc-4", "visible", result);
+        addUser("mcc-5", null, result);
+
+        then("they are counted, but the user without change event is not");
+        assertThat(getCount(task, result)).isEqualTo(5);
+
+        when("user is changed to be out of the collection");
+        repositoryService.modifyObject(UserType.class, user2Oid,
+                deltaFor(UserType.class)
+                        .item(UserType.F_COST_CENTER).replace("other")
+                        .asItemDeltas(),
+                result);
+
+        then("it is not counted");
+        assertThat(getCount(task, result)).isEqualTo(4);
+
+        when("user is deleted");
+        repositoryService.deleteObject(UserType.class, user3Oid, result);
+
+        then("it is not counted");
+        assertThat(getCount(task, result)).isEqualTo(3);
+    }
+
+    /** Change event without details (as if coming from another node) makes the count stale; the activity fixes it. */
+    @Test
+    public void test120ReconciliationActivity() throws Exception {
+        Task task = getTestTask();
+        OperationResult result = task.getResult();
+
+        given("change event without details");
+        cacheDispatcher.dispatchInvalidation(UserType.class, null, false, null);
+
+        expect("the count is not changed until reconciled");
+        assertThat(getCount(task, result)).isEqualTo(3);
+
+        when("reconciliation activity runs");
+        repoAdd(TASK_RECONCILIATION, result);
+        waitForTaskCloseOrSuspend(TASK_RECONCILIATION.oid);
+
+        then("the count is recomputed, including the user added without change event");
+        assertTask(TASK_RECONCILIATION.oid, "after")
+                .display()
+                .assertSuccess();
+        assertThat(getCount(task, result)).isEqualTo(4);
+    }
+
+    /** The count includes only users the current user is authorized to search for. */
+    @Test
+    public void test130Authorizations() throws Exception {
+        Task task = getTestTask();
+        OperationResult result = task.getResult();
+
+        when("user that can see only some users asks for the count");
+        login(USER_MCC_VIEWER_NAME);
+        int countForViewer = getCount(task, result);
+
+        then("only visible users are counted");
+        assertThat(countForViewer).isEqualTo(2);
+
+        when("user with no authorizations asks for the count");
+        login(USER_MCC_NOBODY_NAME);
+        int countForNobody = getCount(task, result);
+
+        then("no users are counted");
+        assertThat(countForNobody).isZero();
+
+        and("the count for administrator is not affected");
+        login(userAdministrator);
+        assertThat(getCount(task, result)).isEqualTo(4);
+
+        and("the visible users are counted incrementally as well");
+        addUser("mcc-6", "visible", result);
+        login(USER_MCC_VIEWER_NAME);
+        assertThat(getCount(task, result)).isEqualTo(3);
+        login(userAdministrator);
+        assertThat(getCount(task, result)).isEqualTo(5);
+    }
+
+    private String addUser(String name, String givenName, OperationResult result) throws Exception {
+        return repositoryService.addObject(createUser(name, givenName), null, result);
+    }
+
+    private PrismObject<UserType> createUser(String name, String givenName) {
+        UserType user = new UserType(prismContext)
+                .name(name)
+                .costCenter(COST_CENTER);
+        if (givenName != null) {
+            user.setGivenName(PolyStringType.fromOrig(givenName));
+        }
+        return user.asPrismObject();
+    }
+
+    private int getCount(Task task, OperationResult result) throws Exception {
+        ObjectFilter filter = prismContext.queryFor(UserType.class)
+                .item(UserType.F_COST_CENTER).eq(COST_CENTER)
+                .buildFilter();
+        Integer count = maintainedCollectionCounts.getCount(
+                UserType.class, filter, null, RECONCILIATION_INTERVAL, task, result);
+        assertThat(count).as("count").isNotNull();
+        return count;
+    }
+}
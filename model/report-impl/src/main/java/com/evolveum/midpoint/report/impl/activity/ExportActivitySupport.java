@@ -25,6 +25,7 @@ import com.evolveum.midpoint.xml.ns._public.common.audit_3.AuditEventRecordType;
 import com.evolveum.midpoint.util.exception.CommonException;
 import com.evolveum.midpoint.xml.ns._public.common.common_3.ObjectType;
 
+import java.io.File;
 import java.util.*;
 
 import static com.evolveum.midpoint.util.MiscUtil.or0;
@@ -65,6 +66,19 @@ public class ExportActivitySupport extends ReportActivitySupport {
         saveSupport.saveReportFile(dataWriter, result);
     }
 
+    /**
+     * Save exported report whose content was streamed to a temporary file.
+     */
+    void saveReportFile(File temporaryFile,
+            ReportDataWriter<? extends ExportedReportDataRow, ? extends ExportedReportHeaderRow> dataWriter,
+            OperationResult result) throws CommonException {
+        saveSupport.saveReportFile(temporaryFile, dataWriter, result);
+    }
+
+    SaveReportFileSupport getSaveSupport() {
+        return saveSupport;
+    }
+
     /**
      * Search container objects for iterative task.
      */
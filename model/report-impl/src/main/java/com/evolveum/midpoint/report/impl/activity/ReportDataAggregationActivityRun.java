@@ -7,6 +7,9 @@
 
 package com.evolveum.midpoint.report.impl.activity;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
 import java.util.List;
 import java.util.Objects;
 
@@ -18,6 +21,7 @@ import com.evolveum.midpoint.report.impl.controller.ExportedReportDataRow;
 import com.evolveum.midpoint.report.impl.controller.ExportedReportHeaderRow;
 import com.evolveum.midpoint.report.impl.controller.ReportDataWriter;
 import com.evolveum.midpoint.task.api.RunningTask;
+import com.evolveum.midpoint.util.exception.SystemException;
 import com.evolveum.midpoint.util.logging.Trace;
 import com.evolveum.midpoint.util.logging.TraceManager;
 
@@ -46,11 +50,21 @@ final class ReportDataAggregationActivityRun
     @NotNull private final DistributedReportExportActivitySupport support;
 
     /**
-     * Data from all the partial reports.
+     * Temporary file to which the data from all the partial reports are written, in the order of their
+     * sequential numbers. It is moved to its final place when the aggregation is complete.
      *
-     * TODO eliminate gathering in memory: write to a file immediately after getting the data.
+     * Used only if the data writer supports streaming, see {@link ReportDataWriter#canStreamAggregatedData()}.
      */
-    private final StringBuilder aggregatedData = new StringBuilder();
+    private File aggregatedDataFile;
+
+    /** Writer for {@link #aggregatedDataFile}. Compresses the data if the report file is to be compressed. */
+    private Writer aggregatedDataWriter;
+
+    /**
+     * Data from all the partial reports, if the data writer does not support streaming (e.g. HTML),
+     * because it needs the complete data to create the report.
+     */
+    private StringBuilder aggregatedData;
 
     /**
      * Data writer which completes the content of the report.
@@ -81,6 +95,35 @@ final class ReportDataAggregationActivityRun
 
         dataWriter = ReportUtils.createDataWriter(
                 support.getReport(), FileFormatTypeType.CSV, getActivityHandler().reportService, support.getCompiledCollectionView(result));
+
+        if (dataWriter.canStreamAggregatedData()) {
+            openAggregatedDataFile();
+        } else {
+            aggregatedData = new StringBuilder();
+        }
+    }
+
+    private void openAggregatedDataFile() {
+        SaveReportFileSupport saveSupport = support.getSaveSupport();
+        aggregatedDataFile = saveSupport.createTemporaryReportFile();
+        try {
+            aggregatedDataWriter = saveSupport.openReportFileWriter(aggregatedDataFile, dataWriter);
+            aggregatedDataWriter.write(dataWriter.getReportProlog());
+        } catch (IOException e) {
+            closeQuietly();
+            saveSupport.deleteTemporaryReportFile(aggregatedDataFile);
+            throw new SystemException("Couldn't open temporary report file " + aggregatedDataFile + ": " + e.getMessage(), e);
+        }
+    }
+
+    private void closeQuietly() {
+        if (aggregatedDataWriter != null) {
+            try {
+                aggregatedDataWriter.close();
+            } catch (IOException e) {
+                LOGGER.debug("Couldn't close temporary report file {}", aggregatedDataFile, e);
+            }
+        }
     }
 
     @Override
@@ -105,7 +148,7 @@ final class ReportDataAggregationActivityRun
             throws CommonException, ActivityRunException {
         LOGGER.info("Appending data from {} (and deleting the object)", reportData);
         checkSequentialNumber(reportData); // TODO check also the total # of buckets (after we know it at the start!)
-        aggregatedData.append(reportData.getData());
+        appendData(reportData);
         getActivityHandler().commonTaskBeans.repositoryService.deleteObject(ReportDataType.class, reportData.getOid(), result);
         return true;
     }
@@ -119,8 +162,36 @@ final class ReportDataAggregationActivityRun
         expectedSequentialNumber++;
     }
 
+    private void appendData(@NotNull ReportDataType reportData) {
+        String data = reportData.getData();
+        if (data == null) {
+            return;
+        }
+        if (aggregatedData != null) {
+            aggregatedData.append(data);
+            return;
+        }
+        try {
+            aggregatedDataWriter.write(data);
+        } catch (IOException e) {
+            throw new SystemException("Couldn't write data from " + reportData + " to " + aggregatedDataFile, e);
+        }
+    }
+
     @Override
     public void afterRun(OperationResult result) throws CommonException, ActivityRunException {
-        support.saveReportFile(aggregatedData.toString(), dataWriter, result);
+        if (aggregatedData != null) {
+            support.saveReportFile(aggregatedData.toString(), dataWriter, result);
+            return;
+        }
+        try {
+            aggregatedDataWriter.write(dataWriter.getReportEpilog());
+            aggregatedDataWriter.close();
+        } catch (IOException e) {
+            closeQuietly();
+            support.getSaveSupport().deleteTemporaryReportFile(aggregatedDataFile);
+            throw new SystemException("Couldn't write aggregated report to " + aggregatedDataFile, e);
+        }
+        support.saveReportFile(aggregatedDataFile, dataWriter, result);
     }
 }
@@ -41,11 +41,13 @@ import org.apache.commons.io.FileUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.jetbrains.annotations.NotNull;
 
-import java.io.File;
-import java.io.IOException;
+import java.io.*;
 import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.text.SimpleDateFormat;
 import java.util.*;
+import java.util.zip.GZIPOutputStream;
 
 /**
  * Contains common functionality for save exported report file executions.
@@ -57,6 +59,8 @@ class SaveReportFileSupport {
 
     private static final String OP_CREATE_REPORT_DATA = SaveReportFileSupport.class.getName() + "createReportData";
 
+    private static final String COMPRESSED_FILE_SUFFIX = ".gz";
+
     @NotNull protected final AbstractActivityRun<?, ?, ?> activityRun;
     @NotNull protected final RunningTask runningTask;
     @NotNull protected final ReportServiceImpl reportService;
@@ -93,9 +97,34 @@ class SaveReportFileSupport {
         storeExportedReport(dataWriter.completizeReport(), dataWriter, result);
     }
 
+    /**
+     * Saves the report whose complete content was already written (streamed) to given temporary file,
+     * see {@link #createTemporaryReportFile()} and {@link #openReportFileWriter(File, ReportDataWriter)}.
+     * The file is moved to its final location, or deleted if the report is not to be stored.
+     */
+    void saveReportFile(@NotNull File temporaryFile,
+            ReportDataWriter<? extends ExportedReportDataRow, ? extends ExportedReportHeaderRow> dataWriter,
+            OperationResult result) throws CommonException {
+        try {
+            storeExportedReport(
+                    aggregatedFilePath -> moveToReportFile(temporaryFile, aggregatedFilePath),
+                    dataWriter, result);
+        } finally {
+            deleteTemporaryReportFile(temporaryFile);
+        }
+    }
+
     private void storeExportedReport(String completizedReport,
             ReportDataWriter<? extends ExportedReportDataRow, ? extends ExportedReportHeaderRow> dataWriter,
             OperationResult result) throws CommonException {
+        storeExportedReport(
+                aggregatedFilePath -> writeToReportFile(completizedReport, aggregatedFilePath, dataWriter),
+                dataWriter, result);
+    }
+
+    private void storeExportedReport(ReportFileCreator reportFileCreator,
+            ReportDataWriter<? extends ExportedReportDataRow, ? extends ExportedReportHeaderRow> dataWriter,
+            OperationResult result) throws CommonException {
 
         if (!activityRun.getRunningTask().canRun()) {
             LOGGER.warn("Not storing the resulting report, as the activity is being suspended: {}", report);
@@ -106,7 +135,7 @@ class SaveReportFileSupport {
 
         if (StoreExportedWidgetDataType.ONLY_FILE.equals(storeType)
                 || StoreExportedWidgetDataType.WIDGET_AND_FILE.equals(storeType)) {
-            writeToReportFile(completizedReport, aggregatedFilePath);
+            reportFileCreator.createReportFile(aggregatedFilePath);
             saveReportDataObject(dataWriter, aggregatedFilePath, result);
             if (report.getPostReportScript() != null) {
                 processPostReportScript(report, aggregatedFilePath, runningTask, result);
@@ -171,6 +200,9 @@ class SaveReportFileSupport {
         String reportName = StringUtils.replace(reportType.getName().getOrig(), File.separator, "_");
         String fileNamePrefix = reportName + "-EXPORT " + getDateTime();
         String fileName = fileNamePrefix + dataWriter.getTypeSuffix();
+        if (isCompressed(dataWriter)) {
+            fileName += COMPRESSED_FILE_SUFFIX;
+        }
         return new File(exportDir, MiscUtil.replaceIllegalCharInFileNameOnWindows(fileName)).getPath();
     }
 
@@ -185,16 +217,76 @@ class SaveReportFileSupport {
         return formatDate.format(createDate);
     }
 
-    private void writeToReportFile(String contextOfFile, String aggregatedFilePath) {
+    private static boolean isCompressed(
+            ReportDataWriter<? extends ExportedReportDataRow, ? extends ExportedReportHeaderRow> dataWriter) {
+        FileFormatConfigurationType configuration = dataWriter.getFileFormatConfiguration();
+        return configuration != null && Boolean.TRUE.equals(configuration.isCompress());
+    }
+
+    private void writeToReportFile(String contextOfFile, String aggregatedFilePath,
+            ReportDataWriter<? extends ExportedReportDataRow, ? extends ExportedReportHeaderRow> dataWriter) {
+        if (!isCompressed(dataWriter)) {
+            try {
+                FileUtils.writeByteArrayToFile(
+                        new File(aggregatedFilePath),
+                        contextOfFile.getBytes(Charset.defaultCharset()));
+            } catch (IOException e) {
+                throw new SystemException("Couldn't write aggregated report to " + aggregatedFilePath, e);
+            }
+        } else {
+            try (Writer writer = openReportFileWriter(new File(aggregatedFilePath), dataWriter)) {
+                writer.write(contextOfFile);
+            } catch (IOException e) {
+                throw new SystemException("Couldn't write aggregated report to " + aggregatedFilePath, e);
+            }
+        }
+    }
+
+    /** Creates an empty temporary file in the export directory, to which the report content can be streamed. */
+    @NotNull File createTemporaryReportFile() {
         try {
-            FileUtils.writeByteArrayToFile(
-                    new File(aggregatedFilePath),
-                    contextOfFile.getBytes(Charset.defaultCharset()));
+            return File.createTempFile(".report-", ".tmp", ReportSupportUtil.getOrCreateExportDir());
         } catch (IOException e) {
-            throw new SystemException("Couldn't write aggregated report to " + aggregatedFilePath, e);
+            throw new SystemException("Couldn't create temporary report file: " + e.getMessage(), e);
         }
     }
 
+    /**
+     * Opens a buffered writer to given file, compressing the content on the fly if the report file should be compressed.
+     * The caller is responsible for closing the writer.
+     */
+    @NotNull Writer openReportFileWriter(@NotNull File file,
+            ReportDataWriter<? extends ExportedReportDataRow, ? extends ExportedReportHeaderRow> dataWriter)
+            throws IOException {
+        OutputStream outputStream = new BufferedOutputStream(new FileOutputStream(file));
+        if (isCompressed(dataWriter)) {
+            outputStream = new GZIPOutputStream(outputStream);
+        }
+        return new OutputStreamWriter(outputStream, Charset.defaultCharset());
+    }
+
+    private void moveToReportFile(File temporaryFile, String aggregatedFilePath) {
+        try {
+            Files.move(temporaryFile.toPath(), new File(aggregatedFilePath).toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            throw new SystemException("Couldn't move aggregated report to " + aggregatedFilePath, e);
+        }
+    }
+
+    void deleteTemporaryReportFile(@NotNull File temporaryFile) {
+        try {
+            Files.deleteIfExists(temporaryFile.toPath());
+        } catch (IOException e) {
+            LoggingUtils.logUnexpectedException(LOGGER, "Couldn't delete temporary report file {}", e, temporaryFile);
+        }
+    }
+
+    /** Puts the report content to the file with given path. */
+    @FunctionalInterface
+    private interface ReportFileCreator {
+        void createReportFile(String aggregatedFilePath);
+    }
+
     private void saveReportDataObject(
             ReportDataWriter<? extends ExportedReportDataRow, ? extends ExportedReportHeaderRow> dataWriter,
             String filePath,
@@ -71,6 +71,12 @@ public class CsvReportDataWriter extends AbstractReportDataWriter<ExportedReport
         return support.isHeader();
     }
 
+    /** CSV report is just the aggregated data, see {@link AbstractReportDataWriter#completizeReport(String)}. */
+    @Override
+    public boolean canStreamAggregatedData() {
+        return true;
+    }
+
     @Override
     public String getTypeSuffix() {
         return ".csv";
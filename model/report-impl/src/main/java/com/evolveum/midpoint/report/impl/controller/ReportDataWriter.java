@@ -69,6 +69,25 @@ public interface ReportDataWriter<ED extends ExportedReportDataRow, EH extends E
      */
     String completizeReport();
 
+    /**
+     * Returns true if {@link #completizeReport(String)} only puts {@link #getReportProlog()} before
+     * and {@link #getReportEpilog()} after the aggregated data, without changing them. The aggregated data
+     * can be then streamed directly to the report file instead of being gathered in memory.
+     */
+    default boolean canStreamAggregatedData() {
+        return false;
+    }
+
+    /** Text put before the aggregated data. Relevant only if {@link #canStreamAggregatedData()} is true. */
+    default String getReportProlog() {
+        return "";
+    }
+
+    /** Text put after the aggregated data. Relevant only if {@link #canStreamAggregatedData()} is true. */
+    default String getReportEpilog() {
+        return "";
+    }
+
     @Nullable
     default Function<String, String> getFunctionForWidgetStatus(){
         return null;
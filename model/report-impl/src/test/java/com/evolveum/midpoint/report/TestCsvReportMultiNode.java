@@ -6,10 +6,14 @@
  */
 package com.evolveum.midpoint.report;
 
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.testng.Assert.assertTrue;
 
-import java.io.File;
+import java.io.*;
+import java.nio.charset.Charset;
 import java.util.List;
+import java.util.stream.Collectors;
+import java.util.zip.GZIPInputStream;
 
 import org.testng.annotations.Test;
 
@@ -20,6 +24,7 @@ import com.evolveum.midpoint.schema.result.OperationResult;
 import com.evolveum.midpoint.task.api.Task;
 import com.evolveum.midpoint.test.TestResource;
 import com.evolveum.midpoint.xml.ns._public.common.audit_3.AuditEventRecordType;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.FileFormatConfigurationType;
 import com.evolveum.midpoint.xml.ns._public.common.common_3.ObjectCollectionType;
 import com.evolveum.midpoint.xml.ns._public.common.common_3.ReportType;
 import com.evolveum.midpoint.xml.ns._public.common.common_3.TaskType;
@@ -41,6 +46,9 @@ public class TestCsvReportMultiNode extends TestCsvReport {
 
     private static final int USERS = 1000;
 
+    /** Should the report file be compressed? */
+    private boolean compress;
+
     @Override
     public void initSystem(Task initTask, OperationResult initResult) throws Exception {
         super.initSystem(initTask, initResult);
@@ -82,6 +90,51 @@ public class TestCsvReportMultiNode extends TestCsvReport {
         assertNotificationMessage(REPORT_OBJECT_COLLECTION_USERS);
     }
 
+    /** The aggregated data are streamed through the compressing writer; the content must be the same. */
+    @Test
+    public void test110ExportUsersCompressed() throws Exception {
+        given();
+
+        Task task = getTestTask();
+        OperationResult result = task.getResult();
+
+        dummyTransport.clearMessages();
+        compress = true;
+
+        try {
+            runExportTask(TASK_DISTRIBUTED_EXPORT_USERS, REPORT_OBJECT_COLLECTION_USERS, result);
+
+            when();
+
+            waitForTaskCloseOrSuspend(TASK_DISTRIBUTED_EXPORT_USERS.oid);
+        } finally {
+            compress = false;
+        }
+
+        then();
+
+        assertTask(TASK_DISTRIBUTED_EXPORT_USERS.oid, "after")
+                .assertSuccess()
+                .display();
+
+        PrismObject<ReportType> report = getObject(ReportType.class, REPORT_OBJECT_COLLECTION_USERS.oid);
+        File outputFile = findOutputFile(report);
+        displayValue("Found report file", outputFile);
+        assertThat(outputFile).as("output file").isNotNull();
+        assertThat(outputFile.getName()).as("output file name").endsWith(".csv.gz");
+
+        List<String> lines;
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(new GZIPInputStream(new FileInputStream(outputFile)), Charset.defaultCharset()))) {
+            lines = reader.lines().collect(Collectors.toList());
+        }
+        outputFile.renameTo(new File(outputFile.getParentFile(), "processed-" + outputFile.getName()));
+        assertThat(lines).as("lines in the report").hasSize(1004);
+        assertThat(lines.get(0).split(";")).as("columns").hasSize(2);
+
+        assertNotificationMessage(REPORT_OBJECT_COLLECTION_USERS);
+    }
+
     @Test
     public void test101ExportAuditRecords() throws Exception {
         auditTest();
@@ -163,6 +216,15 @@ public class TestCsvReportMultiNode extends TestCsvReport {
         assertNotificationMessage(REPORT_AUDIT_COLLECTION_WITH_DEFAULT_COLUMN);
     }
 
+    @Override
+    protected FileFormatConfigurationType getFileFormatConfiguration() {
+        FileFormatConfigurationType config = super.getFileFormatConfiguration();
+        if (compress) {
+            config.setCompress(true);
+        }
+        return config;
+    }
+
     @Override
     protected ItemName getWorkDefinitionType() {
         return WorkDefinitionsType.F_DISTRIBUTED_REPORT_EXPORT;
@@ -0,0 +1,95 @@
+/*
+ * Copyright (C) 2010-2022 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+package com.evolveum.midpoint.report;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.File;
+import java.util.List;
+
+import org.apache.commons.lang3.StringUtils;
+import org.testng.annotations.Test;
+
+import com.evolveum.midpoint.prism.PrismObject;
+import com.evolveum.midpoint.prism.path.ItemName;
+import com.evolveum.midpoint.schema.result.OperationResult;
+import com.evolveum.midpoint.task.api.Task;
+import com.evolveum.midpoint.test.TestResource;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.*;
+
+/**
+ * Distributed export to HTML. Unlike CSV, the aggregated data cannot be streamed to the report file,
+ * as the HTML writer needs them all to complete the report.
+ */
+public class TestHtmlReportMultiNode extends EmptyReportIntegrationTest {
+
+    private static final File TEST_DIR = new File("src/test/resources/reports");
+
+    private static final TestResource<TaskType> TASK_DISTRIBUTED_EXPORT_USERS = new TestResource<>(TEST_DIR_REPORTS,
+            "task-distributed-export-users.xml", "5ab8f8c6-df1a-4580-af8b-a899f240b44f");
+
+    private static final TestResource<ReportType> REPORT_OBJECT_COLLECTION_USERS = new TestResource<>(TEST_DIR,
+            "report-object-collection-users.xml", "64e13165-21e5-419a-8d8b-732895109f84");
+
+    private static final int USERS = 200;
+
+    @Override
+    public void initSystem(Task initTask, OperationResult initResult) throws Exception {
+        super.initSystem(initTask, initResult);
+        commonInitialization(initResult);
+
+        repoAdd(TASK_DISTRIBUTED_EXPORT_USERS, initResult);
+        repoAdd(REPORT_OBJECT_COLLECTION_USERS, initResult);
+
+        createUsers(USERS, initTask, initResult);
+    }
+
+    /** The partial data from all buckets are put into single, complete HTML table. */
+    @Test
+    public void test100ExportUsers() throws Exception {
+        given();
+
+        Task task = getTestTask();
+        OperationResult result = task.getResult();
+
+        dummyTransport.clearMessages();
+
+        runExportTask(TASK_DISTRIBUTED_EXPORT_USERS, REPORT_OBJECT_COLLECTION_USERS, result);
+
+        when();
+
+        waitForTaskCloseOrSuspend(TASK_DISTRIBUTED_EXPORT_USERS.oid);
+
+        then();
+
+        assertTask(TASK_DISTRIBUTED_EXPORT_USERS.oid, "after")
+                .assertSuccess()
+                .display();
+
+        PrismObject<ReportType> report = getObject(ReportType.class, REPORT_OBJECT_COLLECTION_USERS.oid);
+        String content = String.join("\n", getLinesOfOutputFile(report));
+
+        assertThat(content).as("report content").startsWith("<div> <style>").endsWith("</div>");
+        assertThat(StringUtils.countMatches(content, "<table")).as("tables").isEqualTo(1);
+        assertThat(StringUtils.countMatches(content, "<tbody>")).as("table bodies").isEqualTo(1);
+        assertThat(StringUtils.countMatches(content, "</table>")).as("table ends").isEqualTo(1);
+        assertThat(StringUtils.countMatches(content, "<tr")).as("rows").isGreaterThan(USERS);
+
+        assertNotificationMessage(REPORT_OBJECT_COLLECTION_USERS.getObjectable(), "text/html");
+    }
+
+    @Override
+    protected FileFormatConfigurationType getFileFormatConfiguration() {
+        return new FileFormatConfigurationType()
+                .type(FileFormatTypeType.HTML);
+    }
+
+    @Override
+    protected ItemName getWorkDefinitionType() {
+        return WorkDefinitionsType.F_DISTRIBUTED_REPORT_EXPORT;
+    }
+}
@@ -39,6 +39,8 @@ import com.evolveum.midpoint.schema.result.OperationResult;
 import com.evolveum.midpoint.task.api.Task;
 import com.evolveum.midpoint.task.api.TaskConstants;
 import com.evolveum.midpoint.util.exception.SecurityViolationException;
+import com.evolveum.midpoint.xml.ns._public.common.api_types_3.CacheInvalidationEventListType;
+import com.evolveum.midpoint.xml.ns._public.common.api_types_3.CacheInvalidationEventType;
 import com.evolveum.midpoint.xml.ns._public.common.api_types_3.TerminateSessionEventType;
 import com.evolveum.midpoint.xml.ns._public.common.api_types_3.UserSessionManagementListType;
 import com.evolveum.midpoint.xml.ns._public.common.api_types_3.UserSessionManagementType;
@@ -62,6 +64,7 @@ public class ClusterRestController extends AbstractRestController {
     public static final String CLASS_DOT = ClusterRestController.class.getName() + ".";
 
     private static final String OPERATION_EXECUTE_CLUSTER_CACHE_INVALIDATION_EVENT = CLASS_DOT + "executeClusterCacheInvalidationEvent";
+    private static final String OPERATION_EXECUTE_CLUSTER_CACHE_INVALIDATION_BATCH = CLASS_DOT + "executeClusterCacheInvalidationBatch";
     private static final String OPERATION_EXECUTE_CLUSTER_TERMINATE_SESSION_EVENT = CLASS_DOT + "executeClusterTerminateSessionEvent";
     private static final String OPERATION_GET_LOCAL_SCHEDULER_INFORMATION = CLASS_DOT + "getLocalSchedulerInformation";
     private static final String OPERATION_STOP_LOCAL_SCHEDULER = CLASS_DOT + "stopLocalScheduler";
@@ -119,6 +122,33 @@ public class ClusterRestController extends AbstractRestController {
         return response;
     }
 
+    @PostMapping(ClusterServiceConsts.EVENT_INVALIDATION_BATCH)
+    public ResponseEntity<?> executeClusterCacheInvalidationBatch(
+            @RequestBody CacheInvalidationEventListType events) {
+        Task task = initRequest();
+        OperationResult result = createSubresult(task, OPERATION_EXECUTE_CLUSTER_CACHE_INVALIDATION_BATCH);
+
+        ResponseEntity<?> response;
+        try {
+            checkNodeAuthentication();
+
+            for (CacheInvalidationEventType event : events.getEvent()) {
+                String type = event.getType();
+                Class<? extends ObjectType> clazz = type != null ? ObjectTypes.getClassFromRestType(type) : null;
+
+                // clusterwide is false: we got this from another node so we don't need to redistribute it
+                cacheDispatcher.dispatchInvalidation(clazz, event.getOid(), false, new CacheInvalidationContext(true, null));
+            }
+
+            result.recordSuccess();
+            response = createResponse(HttpStatus.OK, result);
+        } catch (Throwable t) {
+            response = handleException(result, t);
+        }
+        finishRequest(task, result);
+        return response;
+    }
+
     @PostMapping(ClusterServiceConsts.EVENT_TERMINATE_SESSION)
     public ResponseEntity<?> executeClusterTerminateSessionEvent(
             @RequestBody TerminateSessionEventType event) {
@@ -0,0 +1,58 @@
+/*
+ * Copyright (C) 2010-2022 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+package com.evolveum.midpoint.rest.impl;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.evolveum.midpoint.model.api.ModelAuthorizationAction;
+import com.evolveum.midpoint.schema.metrics.MidpointMetrics;
+import com.evolveum.midpoint.schema.metrics.PrometheusTextWriter;
+import com.evolveum.midpoint.schema.result.OperationResult;
+import com.evolveum.midpoint.security.enforcer.api.AuthorizationParameters;
+import com.evolveum.midpoint.security.enforcer.api.SecurityEnforcer;
+import com.evolveum.midpoint.task.api.Task;
+
+/**
+ * Metrics of this node in Prometheus (OpenMetrics compatible) text format, intended to be scraped
+ * by a monitoring system. Each cluster node provides its own metrics.
+ */
+@RestController
+@RequestMapping({ "/ws/metrics", "/rest/metrics", "/api/metrics" })
+public class MetricsRestController extends AbstractRestController {
+
+    private static final MediaType PROMETHEUS_TEXT = MediaType.parseMediaType(PrometheusTextWriter.CONTENT_TYPE);
+
+    @Autowired private SecurityEnforcer securityEnforcer;
+
+    @GetMapping
+    public ResponseEntity<?> getMetrics() {
+        Task task = initRequest();
+        OperationResult result = createSubresult(task, "getMetrics");
+
+        ResponseEntity<?> response;
+        try {
+            securityEnforcer.authorize(ModelAuthorizationAction.READ_METRICS.getUrl(),
+                    null, AuthorizationParameters.EMPTY, null, task, result);
+
+            response = ResponseEntity.status(HttpStatus.OK)
+                    .contentType(PROMETHEUS_TEXT)
+                    .body(MidpointMetrics.export());
+        } catch (Exception ex) {
+            result.recordFatalError(ex);
+            response = handleException(result, ex);
+        }
+
+        finishRequest(task, result);
+        return response;
+    }
+}
@@ -12,6 +12,8 @@ import com.evolveum.midpoint.prism.PrismObject;
 import com.evolveum.midpoint.repo.api.Cache;
 import com.evolveum.midpoint.repo.api.RepositoryService;
 import com.evolveum.midpoint.repo.api.CacheRegistry;
+import com.evolveum.midpoint.schema.processor.ResourceSchemaFactory;
+import com.evolveum.midpoint.schema.internals.CachingStatistics;
 import com.evolveum.midpoint.schema.internals.InternalMonitor;
 import com.evolveum.midpoint.schema.result.OperationResult;
 import com.evolveum.midpoint.util.caching.CachePerformanceCollector;
@@ -42,6 +44,13 @@ import static com.evolveum.midpoint.util.caching.CacheConfiguration.StatisticsLe
  * It relies on versions and on invalidation events instead. So we have to use resource object versions when querying it.
  * (This could be perhaps changed in the future. But not now.)
  *
+ * The cache is not synchronized: cached resources are immutable snapshots (with their parsed schemas),
+ * replaced or removed as a whole. Read-only clients get the snapshot itself, including its parsed schemas.
+ * Prism objects have no copy-on-write views, so other clients get a clone. The clone parses its schemas again when needed,
+ * as the client may change its `schema` or `schemaHandling`.
+ * Hits, misses and clones are counted in {@link InternalMonitor#getResourceCacheStats()} (also reported
+ * in {@link #getStateInformation()}) and registered in {@link CachePerformanceCollector}, see {@link #recordHit(boolean)}.
+ *
  * @author Radovan Semancik
  */
 @Component
@@ -68,12 +77,10 @@ public class ResourceCache implements Cache {
     /**
      * Note that prism objects in this map are always not null and immutable.
      * And they must remain immutable after getting them from the cache.
-     *
-     * As for ConcurrentHashMap: Although we use synchronization whenever possible, let's be extra cautious here.
      */
     private final Map<String, PrismObject<ResourceType>> cache = new ConcurrentHashMap<>();
 
-    synchronized void put(PrismObject<ResourceType> resource) throws SchemaException {
+    void put(PrismObject<ResourceType> resource) throws SchemaException {
         String oid = resource.getOid();
         if (oid == null) {
             throw new SchemaException("Attempt to cache "+resource+" without an OID");
@@ -87,17 +94,23 @@ public class ResourceCache implements Cache {
         PrismObject<ResourceType> cachedResource = cache.get(oid);
         if (cachedResource == null) {
             LOGGER.debug("Caching(new): {}", resource);
-            cache.put(oid, resource.createImmutableClone());
+            cache.put(oid, createSnapshot(resource));
         } else if (compareVersion(resource.getVersion(), cachedResource.getVersion())) {
             LOGGER.debug("Caching fizzle, resource already cached: {}", resource);
             // We already have equivalent resource, nothing to do
             //  TODO is this correct? What if the resource being put here is newer than the existing one (although having the same version)?
         } else {
             LOGGER.debug("Caching(replace): {}", resource);
-            cache.put(oid, resource.createImmutableClone());
+            cache.put(oid, createSnapshot(resource));
         }
     }
 
+    private PrismObject<ResourceType> createSnapshot(PrismObject<ResourceType> resource) {
+        PrismObject<ResourceType> snapshot = resource.createImmutableClone();
+        ResourceSchemaFactory.shareParsedSchemas(resource, snapshot);
+        return snapshot;
+    }
+
     private boolean compareVersion(String version1, String version2) {
         return version1 == null && version2 == null || version1 != null && version1.equals(version2);
     }
@@ -105,7 +118,7 @@ public class ResourceCache implements Cache {
     /**
      * Gets a resource if it has specified version. If it has not, purges it from the cache (even if it exists there).
      */
-    synchronized PrismObject<ResourceType> get(@NotNull String oid, String requestedVersion, boolean readOnly) {
+    PrismObject<ResourceType> get(@NotNull String oid, String requestedVersion, boolean readOnly) {
         InternalMonitor.getResourceCacheStats().recordRequest();
 
         PrismObject<ResourceType> resourceToReturn;
@@ -117,7 +130,8 @@ public class ResourceCache implements Cache {
             LOGGER.debug("MISS(wrong version) for {} (req={}, actual={})", oid, requestedVersion, cachedResource.getVersion());
             LOGGER.trace("Cached resource version {} does not match requested resource version {}, purging from cache",
                     cachedResource.getVersion(), requestedVersion);
-            cache.remove(oid);
+            // The entry may have been replaced by a newer version in the meanwhile; let's keep that one.
+            cache.remove(oid, cachedResource);
             resourceToReturn = null;
         } else if (readOnly) {
             cachedResource.checkImmutable();
@@ -129,20 +143,33 @@ public class ResourceCache implements Cache {
         }
 
         if (resourceToReturn != null) {
-            CachePerformanceCollector.INSTANCE.registerHit(ResourceCache.class, ResourceType.class, PER_CACHE);
-            InternalMonitor.getResourceCacheStats().recordHit();
+            recordHit(!readOnly);
         } else {
-            CachePerformanceCollector.INSTANCE.registerMiss(ResourceCache.class, ResourceType.class, PER_CACHE);
-            InternalMonitor.getResourceCacheStats().recordMiss();
+            recordMiss();
         }
         return resourceToReturn;
     }
 
+    /** The only place where hits are counted. */
+    private void recordHit(boolean cloned) {
+        CachingStatistics stats = InternalMonitor.getResourceCacheStats();
+        stats.recordHit();
+        if (cloned) {
+            stats.recordClone();
+        }
+        CachePerformanceCollector.INSTANCE.registerHit(ResourceCache.class, ResourceType.class, PER_CACHE);
+    }
+
+    /** The only place where misses are counted. */
+    private void recordMiss() {
+        InternalMonitor.getResourceCacheStats().recordMiss();
+        CachePerformanceCollector.INSTANCE.registerMiss(ResourceCache.class, ResourceType.class, PER_CACHE);
+    }
+
     /**
      * Gets a resource without specifying requested version: returns one only if it has the same version as in the repo.
      *
-     * This requires a cooperation with the repository cache. Therefore this method is NOT synchronized
-     * and has operation result as its parameter.
+     * This requires a cooperation with the repository cache. Therefore this method has operation result as its parameter.
      */
     PrismObject<ResourceType> getIfLatest(@NotNull String oid, boolean readonly, OperationResult parentResult)
             throws SchemaException, ObjectNotFoundException {
@@ -152,20 +179,19 @@ public class ResourceCache implements Cache {
             return get(oid, version, readonly);
         } else {
             LOGGER.debug("MISS(not cached) for {} (getIfLatest)", oid);
-            CachePerformanceCollector.INSTANCE.registerMiss(ResourceCache.class, ResourceType.class, PER_CACHE);
-            InternalMonitor.getResourceCacheStats().recordMiss();
+            recordMiss();
             return null;
         }
     }
 
-    private synchronized boolean contains(@NotNull String oid) {
+    private boolean contains(@NotNull String oid) {
         return cache.containsKey(oid);
     }
 
     /**
      * Returns currently cached version. FOR DIAGNOSTICS ONLY.
      */
-    synchronized String getVersion(String oid) {
+    String getVersion(String oid) {
         if (oid == null) {
             return null;
         }
@@ -176,12 +202,12 @@ public class ResourceCache implements Cache {
         return cachedResource.getVersion();
     }
 
-    synchronized void remove(String oid) {
+    void remove(String oid) {
         cache.remove(oid);
     }
 
     @Override
-    public synchronized void invalidate(Class<?> type, String oid, CacheInvalidationContext context) {
+    public void invalidate(Class<?> type, String oid, CacheInvalidationContext context) {
         if (type == null || type.isAssignableFrom(ResourceType.class)) {
             if (oid != null) {
                 remove(oid);
@@ -193,12 +219,15 @@ public class ResourceCache implements Cache {
 
     @NotNull
     @Override
-    public synchronized Collection<SingleCacheStateInformationType> getStateInformation() {
-        return Collections.singleton(
-                new SingleCacheStateInformationType(prismContext)
-                        .name(ResourceCache.class.getName())
-                        .size(cache.size())
-        );
+    public Collection<SingleCacheStateInformationType> getStateInformation() {
+        CachingStatistics stats = InternalMonitor.getResourceCacheStats();
+        SingleCacheStateInformationType info = new SingleCacheStateInformationType(prismContext)
+                .name(ResourceCache.class.getName())
+                .size(cache.size())
+                .hits(stats.getHits())
+                .misses(stats.getMisses())
+                .clones(stats.getClones());
+        return Collections.singleton(info);
     }
 
     @Override
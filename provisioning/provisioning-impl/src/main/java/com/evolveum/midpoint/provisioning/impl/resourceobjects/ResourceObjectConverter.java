@@ -1367,8 +1367,6 @@ public class ResourceObjectConverter {
 
         ConnectorInstance connector = ctx.getConnector(ReadCapabilityType.class, parentResult);
 
-        AtomicInteger objectCounter = new AtomicInteger(0);
-
         UcfFetchErrorReportingMethod ucfErrorReportingMethod;
         if (errorReportingMethod == FetchErrorReportingMethodType.FETCH_RESULT) {
             ucfErrorReportingMethod = UcfFetchErrorReportingMethod.UCF_OBJECT;
@@ -1376,55 +1374,40 @@ public class ResourceObjectConverter {
             ucfErrorReportingMethod = UcfFetchErrorReportingMethod.EXCEPTION;
         }
 
+        FoundObjectsWindow window = new FoundObjectsWindow(ctx, resultHandler);
+
         SearchResultMetadata metadata;
         try {
 
-            metadata = connector.search(objectDefinition, query,
-                    (ucfObject, result) -> {
-                        ResourceObjectFound objectFound =
-                                new ResourceObjectFound(ucfObject, ResourceObjectConverter.this, ctx, fetchAssociations);
-
-                        // in order to utilize the cache right from the beginning...
-                        RepositoryCache.enterLocalCaches(cacheConfigurationManager);
-                        try {
-
-                            int objectNumber = objectCounter.getAndIncrement();
-
-                            Task task = ctx.getTask();
+            try {
+                metadata = connector.search(objectDefinition, query,
+                        (ucfObject, result) -> {
                             try {
-                                OperationResult objResult = result
-                                        .subresult(OperationConstants.OPERATION_SEARCH_RESULT)
-                                        .setMinor()
-                                        .addParam("number", objectNumber)
-                                        .addArbitraryObjectAsParam("primaryIdentifierValue", ucfObject.getPrimaryIdentifierValue())
-                                        .addArbitraryObjectAsParam("errorState", ucfObject.getErrorState()).build();
-                                try {
-                                    objectFound.initialize(task, objResult);
-                                    return resultHandler.handle(objectFound, objResult);
-                                } catch (Throwable t) {
-                                    objResult.recordFatalError(t);
-                                    throw t;
-                                } finally {
-                                    objResult.computeStatusIfUnknown();
-                                    // FIXME: hack. Hardcoded ugly summarization of successes. something like
-                                    //  AbstractSummarizingResultHandler [lazyman]
-                                    if (objResult.isSuccess() && objResult.canBeCleanedUp()) {
-                                        objResult.getSubresults().clear();
-                                    }
-                                    // TODO Reconsider this. It is quite dubious to touch the global result from the inside.
-                                    result.summarize();
-                                }
-                            } finally {
-                                RepositoryCache.exitLocalCaches();
+                                return window.add(ucfObject,
+                                        new ResourceObjectFound(ucfObject, ResourceObjectConverter.this, ctx, fetchAssociations),
+                                        result);
+                            } catch (RuntimeException e) {
+                                throw e;
+                            } catch (Throwable t) {
+                                throw new TunnelException(t);
                             }
-                        } catch (RuntimeException e) {
-                            throw e;
-                        } catch (Throwable t) {
-                            throw new TunnelException(t);
-                        }
-                    },
-                    attributesToReturn, objectDefinition.getPagedSearches(ctx.getResource()), searchHierarchyConstraints,
-                    ucfErrorReportingMethod, ctx.getUcfExecutionContext(), parentResult);
+                        },
+                        attributesToReturn, objectDefinition.getPagedSearches(ctx.getResource()), searchHierarchyConstraints,
+                        ucfErrorReportingMethod, ctx.getUcfExecutionContext(), parentResult);
+            } catch (Throwable t) {
+                // Objects found before the failure are handled, just as they would be without the window.
+                window.flushAfterFailure(t, parentResult);
+                throw t;
+            }
+
+            // Objects remaining in the last (incomplete) window.
+            try {
+                window.flush(parentResult);
+            } catch (RuntimeException e) {
+                throw e;
+            } catch (Throwable t) {
+                throw new TunnelException(t);
+            }
 
         } catch (GenericFrameworkException e) {
             parentResult.recordFatalError("Generic error in the connector: " + e.getMessage(), e);
@@ -1891,4 +1874,175 @@ public class ResourceObjectConverter {
     public ResourceObjectsLocalBeans getLocalBeans() {
         return localBeans;
     }
+
+    /**
+     * Collects objects found by the search into windows of {@link ResourceObjectHandler#getWindowSize()} objects.
+     * Objects in each window are initialized first, then the window is passed to
+     * {@link ResourceObjectHandler#prepare(List, OperationResult)}, and then the objects are handled one by one.
+     * Each object has its own operation result, just like without the window.
+     */
+    private class FoundObjectsWindow {
+
+        @NotNull private final ProvisioningContext ctx;
+        @NotNull private final ResourceObjectHandler handler;
+        private final int size;
+
+        @NotNull private final List<WindowItem> items = new ArrayList<>();
+        private int objectCounter;
+        private boolean stopped;
+
+        private FoundObjectsWindow(@NotNull ProvisioningContext ctx, @NotNull ResourceObjectHandler handler) {
+            this.ctx = ctx;
+            this.handler = handler;
+            this.size = Math.max(handler.getWindowSize(), 1);
+        }
+
+        /** Returns false if the search should be stopped. */
+        private boolean add(UcfObjectFound ucfObject, ResourceObjectFound objectFound, OperationResult result)
+                throws Throwable {
+            WindowItem item = new WindowItem(ucfObject, objectFound, objectCounter++);
+            if (size == 1) {
+                initialize(item, result);
+                return handle(item, result);
+            }
+            items.add(item);
+            if (items.size() >= size) {
+                return flush(result);
+            } else {
+                return true;
+            }
+        }
+
+        /** Initializes, prepares, and handles objects collected so far. Returns false if the search should be stopped. */
+        private boolean flush(OperationResult result) throws Throwable {
+            if (items.isEmpty() || stopped) {
+                items.clear();
+                return !stopped;
+            }
+            List<WindowItem> itemsToHandle = new ArrayList<>(items);
+            items.clear();
+
+            int handled = 0;
+            try {
+                // The handler should prepare for objects in their final (post-processed) form.
+                List<ResourceObjectFound> objectsToPrepare = new ArrayList<>(itemsToHandle.size());
+                for (WindowItem item : itemsToHandle) {
+                    initialize(item, result);
+                    objectsToPrepare.add(item.objectFound);
+                }
+
+                handler.prepare(objectsToPrepare, result);
+
+                for (WindowItem item : itemsToHandle) {
+                    handled++;
+                    if (!handle(item, result)) {
+                        return false;
+                    }
+                }
+                return true;
+            } finally {
+                for (WindowItem item : itemsToHandle.subList(handled, itemsToHandle.size())) {
+                    item.closeUnhandled(result);
+                }
+            }
+        }
+
+        /**
+         * Handles objects collected before the search failed. Problems encountered here are attached to the original
+         * failure, as it is the one to be reported.
+         */
+        private void flushAfterFailure(Throwable failure, OperationResult result) {
+            if (items.isEmpty()) {
+                return;
+            }
+            LOGGER.trace("Handling {} object(s) found before the search failed", items.size());
+            try {
+                flush(result);
+            } catch (Throwable t) {
+                failure.addSuppressed(t);
+            }
+        }
+
+        private void initialize(WindowItem item, OperationResult result) throws Throwable {
+            item.objResult = result
+                    .subresult(OperationConstants.OPERATION_SEARCH_RESULT)
+                    .setMinor()
+                    .addParam("number", item.objectNumber)
+                    .addArbitraryObjectAsParam("primaryIdentifierValue", item.ucfObject.getPrimaryIdentifierValue())
+                    .addArbitraryObjectAsParam("errorState", item.ucfObject.getErrorState()).build();
+            // in order to utilize the cache right from the beginning...
+            RepositoryCache.enterLocalCaches(cacheConfigurationManager);
+            try {
+                item.objectFound.initialize(ctx.getTask(), item.objResult);
+            } catch (Throwable t) {
+                stopped = true;
+                item.objResult.recordFatalError(t);
+                item.close(result);
+                throw t;
+            } finally {
+                RepositoryCache.exitLocalCaches();
+            }
+        }
+
+        private boolean handle(WindowItem item, OperationResult result) throws Throwable {
+            RepositoryCache.enterLocalCaches(cacheConfigurationManager);
+            try {
+                boolean cont = handler.handle(item.objectFound, item.objResult);
+                if (!cont) {
+                    stopped = true;
+                }
+                return cont;
+            } catch (Throwable t) {
+                stopped = true;
+                item.objResult.recordFatalError(t);
+                throw t;
+            } finally {
+                item.close(result);
+                RepositoryCache.exitLocalCaches();
+            }
+        }
+
+        /**
+         * An object found, along with its operation result. The result is created when the object is initialized
+         * and it is closed when the object is handled (or when it is clear it won't be).
+         */
+        private class WindowItem {
+
+            @NotNull private final UcfObjectFound ucfObject;
+            @NotNull private final ResourceObjectFound objectFound;
+            private final int objectNumber;
+            private OperationResult objResult;
+            private boolean closed;
+
+            private WindowItem(@NotNull UcfObjectFound ucfObject, @NotNull ResourceObjectFound objectFound,
+                    int objectNumber) {
+                this.ucfObject = ucfObject;
+                this.objectFound = objectFound;
+                this.objectNumber = objectNumber;
+            }
+
+            private void close(OperationResult result) {
+                if (closed) {
+                    return;
+                }
+                closed = true;
+                objResult.computeStatusIfUnknown();
+                // FIXME: hack. Hardcoded ugly summarization of successes. something like
+                //  AbstractSummarizingResultHandler [lazyman]
+                if (objResult.isSuccess() && objResult.canBeCleanedUp()) {
+                    objResult.getSubresults().clear();
+                }
+                // TODO Reconsider this. It is quite dubious to touch the global result from the inside.
+                result.summarize();
+            }
+
+            /** Closes the result of an object that was initialized but not handled, because the search was stopped. */
+            private void closeUnhandled(OperationResult result) {
+                if (objResult != null && !closed) {
+                    objResult.recordNotApplicable("Not handled, the search was stopped");
+                    close(result);
+                }
+            }
+        }
+    }
 }
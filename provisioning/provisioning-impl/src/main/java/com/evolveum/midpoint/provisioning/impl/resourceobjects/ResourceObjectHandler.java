@@ -7,6 +7,10 @@
 
 package com.evolveum.midpoint.provisioning.impl.resourceobjects;
 
+import java.util.List;
+
+import org.jetbrains.annotations.NotNull;
+
 import com.evolveum.midpoint.schema.result.OperationResult;
 import com.evolveum.midpoint.util.annotation.Experimental;
 
@@ -18,4 +22,21 @@ public interface ResourceObjectHandler {
 
     boolean handle(ResourceObjectFound resourceObject, OperationResult result);
 
+    /**
+     * Number of objects that are collected before they are passed to {@link #prepare(List, OperationResult)}
+     * and then handled. The default of 1 means that each object is handled as soon as it is found.
+     *
+     * Note that if the search fails, the objects collected in the current window are still handled
+     * (before the failure is reported), just as they would be without the window.
+     */
+    default int getWindowSize() {
+        return 1;
+    }
+
+    /**
+     * Called for each window of found objects after they are initialized and before they are handled one by one.
+     * Can be used to fetch data needed for the handling in bulk. Should not fail because of individual objects.
+     */
+    default void prepare(@NotNull List<ResourceObjectFound> objects, @NotNull OperationResult result) {
+    }
 }
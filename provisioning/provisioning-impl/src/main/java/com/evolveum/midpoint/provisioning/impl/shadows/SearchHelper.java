@@ -12,7 +12,10 @@ import static com.evolveum.midpoint.schema.GetOperationOptions.isMaxStaleness;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.atomic.AtomicInteger;
 import javax.xml.namespace.QName;
 
@@ -44,10 +47,12 @@ import com.evolveum.midpoint.schema.internals.InternalMonitor;
 import com.evolveum.midpoint.schema.internals.InternalsConfig;
 import com.evolveum.midpoint.schema.result.OperationResult;
 import com.evolveum.midpoint.schema.util.ObjectQueryUtil;
+import com.evolveum.midpoint.schema.util.ResourceTypeUtil;
 import com.evolveum.midpoint.task.api.Task;
 import com.evolveum.midpoint.util.QNameUtil;
 import com.evolveum.midpoint.util.annotation.Experimental;
 import com.evolveum.midpoint.util.exception.*;
+import com.evolveum.midpoint.util.logging.LoggingUtils;
 import com.evolveum.midpoint.util.logging.Trace;
 import com.evolveum.midpoint.util.logging.TraceManager;
 import com.evolveum.midpoint.xml.ns._public.common.common_3.*;
@@ -64,6 +69,8 @@ class SearchHelper {
 
     private static final Trace LOGGER = TraceManager.getTrace(SearchHelper.class);
 
+    private static final String OP_LOOKUP_SHADOWS_IN_BULK = SearchHelper.class.getName() + ".lookupShadowsInBulk";
+
     @Autowired private PrismContext prismContext;
     @Autowired private SchemaService schemaService;
     @Autowired private ResourceObjectConverter resourceObjectConverter;
@@ -133,21 +140,7 @@ class SearchHelper {
         // (we do not have raw/noFetch option)
         InternalMonitor.recordCount(InternalCounters.SHADOW_FETCH_OPERATION_COUNT);
 
-        ResourceObjectHandler resultHandler = (ResourceObjectFound objectFound, OperationResult objResult) -> {
-
-            ShadowedObjectFound shadowedObjectFound = new ShadowedObjectFound(objectFound, localBeans, ctx);
-            shadowedObjectFound.initialize(ctx.getTask(), objResult);
-            PrismObject<ShadowType> shadowedObject = shadowedObjectFound.getResultingObject(ucfErrorReportingMethod);
-
-            try {
-                return handler.handle(shadowedObject, objResult);
-            } catch (Throwable t) {
-                objResult.recordFatalError(t);
-                throw t;
-            } finally {
-                objResult.computeStatusIfUnknown();
-            }
-        };
+        ResourceObjectHandler resultHandler = new ShadowingHandler(ctx, handler, ucfErrorReportingMethod);
 
         ObjectQuery attributeQuery = createAttributeQuery(query);
         boolean fetchAssociations = SelectorOptions.hasToLoadPath(ShadowType.F_ASSOCIATION, options);
@@ -535,6 +528,97 @@ class SearchHelper {
                 isMaxStaleness(rootOptions);
     }
 
+    /**
+     * Converts resource objects found into shadowed objects and passes them to the client handler.
+     *
+     * If {@link ResourceConsistencyType#getShadowLookupBatchSize()} is greater than 1, repository shadows for each
+     * window of found objects are looked up by a single query. Objects whose shadows were not found this way
+     * are processed in the usual (one-by-one) way.
+     */
+    private class ShadowingHandler implements ResourceObjectHandler {
+
+        @NotNull private final ProvisioningContext ctx;
+        @NotNull private final ResultHandler<ShadowType> handler;
+        private final FetchErrorReportingMethodType ucfErrorReportingMethod;
+
+        /** Shadows looked up for the current window. */
+        @NotNull private final Map<ResourceObjectFound, PrismObject<ShadowType>> prefetchedShadows = new IdentityHashMap<>();
+
+        private ShadowingHandler(@NotNull ProvisioningContext ctx, @NotNull ResultHandler<ShadowType> handler,
+                FetchErrorReportingMethodType ucfErrorReportingMethod) {
+            this.ctx = ctx;
+            this.handler = handler;
+            this.ucfErrorReportingMethod = ucfErrorReportingMethod;
+        }
+
+        @Override
+        public int getWindowSize() {
+            return ResourceTypeUtil.getShadowLookupBatchSize(ctx.getResource());
+        }
+
+        @Override
+        public void prepare(@NotNull List<ResourceObjectFound> objects, @NotNull OperationResult parentResult) {
+            prefetchedShadows.clear();
+            OperationResult result = parentResult.subresult(OP_LOOKUP_SHADOWS_IN_BULK)
+                    .setMinor()
+                    .addParam("objects", objects.size())
+                    .build();
+            try {
+                Map<ResourceObjectFound, String> primaryIdentifierValues = new IdentityHashMap<>();
+                for (ResourceObjectFound object : objects) {
+                    if (!object.getInitializationState().isOk()) {
+                        continue;
+                    }
+                    try {
+                        String value = shadowManager.determinePrimaryIdentifierValue(ctx, object.getResourceObject());
+                        if (value != null) {
+                            primaryIdentifierValues.put(object, value);
+                        }
+                    } catch (SchemaException e) {
+                        // The object will be processed (and the error reported) in the regular way.
+                        LOGGER.trace("Couldn't determine primary identifier value for {}, skipping it", object, e);
+                    }
+                }
+                if (primaryIdentifierValues.isEmpty()) {
+                    return;
+                }
+                Map<String, PrismObject<ShadowType>> shadows = shadowManager.searchLiveShadowsByIndexedPrimaryIdValues(
+                        ctx, new HashSet<>(primaryIdentifierValues.values()), result);
+                primaryIdentifierValues.forEach((object, value) -> {
+                    PrismObject<ShadowType> shadow = shadows.get(value);
+                    if (shadow != null) {
+                        prefetchedShadows.put(object, shadow);
+                    }
+                });
+                LOGGER.trace("Looked up {} shadows for {} objects found", prefetchedShadows.size(), objects.size());
+            } catch (Throwable t) {
+                // Not fatal: the shadows will be looked up one by one.
+                LoggingUtils.logUnexpectedException(LOGGER, "Couldn't look up shadows in bulk", t);
+                result.recordWarning("Couldn't look up shadows in bulk: " + t.getMessage(), t);
+                prefetchedShadows.clear();
+            } finally {
+                result.computeStatusIfUnknown();
+            }
+        }
+
+        @Override
+        public boolean handle(ResourceObjectFound objectFound, OperationResult objResult) {
+            PrismObject<ShadowType> prefetchedShadow = prefetchedShadows.remove(objectFound);
+            ShadowedObjectFound shadowedObjectFound = new ShadowedObjectFound(objectFound, prefetchedShadow, localBeans, ctx);
+            shadowedObjectFound.initialize(ctx.getTask(), objResult);
+            PrismObject<ShadowType> shadowedObject = shadowedObjectFound.getResultingObject(ucfErrorReportingMethod);
+
+            try {
+                return handler.handle(shadowedObject, objResult);
+            } catch (Throwable t) {
+                objResult.recordFatalError(t);
+                throw t;
+            } finally {
+                objResult.computeStatusIfUnknown();
+            }
+        }
+    }
+
     private enum CountMethod {
         METADATA, COUNTING
     }
@@ -16,6 +16,7 @@ import com.evolveum.midpoint.provisioning.impl.ProvisioningContext;
 import com.evolveum.midpoint.schema.result.OperationResult;
 import com.evolveum.midpoint.schema.util.ShadowUtil;
 import com.evolveum.midpoint.util.DebugUtil;
+import com.evolveum.midpoint.util.QNameUtil;
 import com.evolveum.midpoint.util.annotation.Experimental;
 import com.evolveum.midpoint.util.exception.*;
 import com.evolveum.midpoint.util.logging.Trace;
@@ -24,6 +25,7 @@ import com.evolveum.midpoint.xml.ns._public.common.common_3.ObjectReferenceType;
 import com.evolveum.midpoint.xml.ns._public.common.common_3.ShadowType;
 
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import javax.xml.namespace.QName;
 
@@ -72,17 +74,24 @@ class ShadowAcquisition {
     /** Whether we want to skip the classification. It is used e.g. in emergency shadow creation. */
     private final boolean skipClassification;
 
+    /**
+     * Live repo shadow for the object, if it was already looked up (e.g. for the whole window of objects found by a search).
+     * If null, the shadow is looked up in the usual way.
+     */
+    @Nullable private final PrismObject<ShadowType> prefetchedRepoShadow;
+
     private final CommonBeans beans;
     private final ShadowsLocalBeans localBeans;
 
     ShadowAcquisition(@NotNull ProvisioningContext ctx, @NotNull PrismProperty<?> primaryIdentifier,
             @NotNull QName objectClass, @NotNull ResourceObjectSupplier resourceObjectSupplier,
-            boolean skipClassification, CommonBeans commonBeans) {
+            boolean skipClassification, @Nullable PrismObject<ShadowType> prefetchedRepoShadow, CommonBeans commonBeans) {
         this.ctx = ctx;
         this.primaryIdentifier = primaryIdentifier;
         this.objectClass = objectClass;
         this.resourceObjectSupplier = resourceObjectSupplier;
         this.skipClassification = skipClassification;
+        this.prefetchedRepoShadow = prefetchedRepoShadow;
         this.beans = commonBeans;
         this.localBeans = commonBeans.shadowsFacade.getLocalBeans();
     }
@@ -135,8 +144,7 @@ class ShadowAcquisition {
     private PrismObject<ShadowType> obtainRepoShadow(OperationResult result) throws SchemaException, ObjectNotFoundException,
             CommunicationException, ConfigurationException, ExpressionEvaluationException, EncryptionException {
 
-        PrismObject<ShadowType> existingRepoShadow = beans.shadowManager.lookupLiveShadowByPrimaryId(ctx, primaryIdentifier,
-                objectClass, result);
+        PrismObject<ShadowType> existingRepoShadow = lookupLiveShadow(result);
 
         if (existingRepoShadow != null) {
             LOGGER.trace("Found shadow object in the repository {}", ShadowUtil.shortDumpShadowLazily(existingRepoShadow));
@@ -159,6 +167,20 @@ class ShadowAcquisition {
         }
     }
 
+    private PrismObject<ShadowType> lookupLiveShadow(OperationResult result) throws SchemaException,
+            ConfigurationException, ObjectNotFoundException, CommunicationException, ExpressionEvaluationException {
+        if (prefetchedRepoShadow != null
+                && QNameUtil.match(objectClass, prefetchedRepoShadow.asObjectable().getObjectClass())) {
+            PrismObject<ShadowType> checkedShadow = beans.shadowManager.checkLiveShadow(prefetchedRepoShadow, result);
+            if (checkedShadow != null) {
+                LOGGER.trace("Using prefetched shadow {}", ShadowUtil.shortDumpShadowLazily(checkedShadow));
+                return checkedShadow;
+            }
+            // Let us be safe and look for the shadow in the usual way.
+        }
+        return beans.shadowManager.lookupLiveShadowByPrimaryId(ctx, primaryIdentifier, objectClass, result);
+    }
+
     @NotNull
     private PrismObject<ShadowType> findConflictingShadow(PrismObject<ShadowType> resourceObject,
             ObjectAlreadyExistsException e, OperationResult result)
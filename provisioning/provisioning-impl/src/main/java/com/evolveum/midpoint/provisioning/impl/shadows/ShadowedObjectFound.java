@@ -15,6 +15,7 @@ import java.util.Objects;
 import com.google.common.base.MoreObjects;
 import org.apache.commons.collections4.CollectionUtils;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import com.evolveum.midpoint.prism.PrismObject;
 import com.evolveum.midpoint.prism.crypto.EncryptionException;
@@ -83,11 +84,20 @@ public class ShadowedObjectFound implements InitializableMixin {
     /** Information used to initialize this object. */
     @NotNull private final InitializationContext ictx;
 
+    /** Live repo shadow looked up for the whole window of found objects (if any). Used when acquiring the shadow. */
+    @Nullable private final PrismObject<ShadowType> prefetchedRepoShadow;
+
     public ShadowedObjectFound(ResourceObjectFound resourceObjectFound, ShadowsLocalBeans localBeans, ProvisioningContext ctx) {
+        this(resourceObjectFound, null, localBeans, ctx);
+    }
+
+    ShadowedObjectFound(ResourceObjectFound resourceObjectFound, @Nullable PrismObject<ShadowType> prefetchedRepoShadow,
+            ShadowsLocalBeans localBeans, ProvisioningContext ctx) {
         this.resourceObject = resourceObjectFound.getResourceObject();
         this.primaryIdentifierValue = resourceObjectFound.getPrimaryIdentifierValue();
         this.initializationState = InitializationState.fromPreviousState(resourceObjectFound.getInitializationState());
         this.ictx = new InitializationContext(localBeans, ctx);
+        this.prefetchedRepoShadow = prefetchedRepoShadow;
     }
 
     @Override
@@ -163,7 +173,7 @@ public class ShadowedObjectFound implements InitializableMixin {
         PrismObject<ShadowType> repoShadow;
         try {
             repoShadow = ictx.localBeans.shadowAcquisitionHelper
-                    .acquireRepoShadow(estimatedCtx, resourceObject, false, result);
+                    .acquireRepoShadow(estimatedCtx, resourceObject, prefetchedRepoShadow, false, result);
         } catch (Exception e) {
             // No need to log stack trace now. It will be logged at the place where the exception is processed.
             LOGGER.error("Couldn't acquire shadow for {}. Creating shadow in emergency mode. Error: {}", resourceObject, getClassWithMessage(e));
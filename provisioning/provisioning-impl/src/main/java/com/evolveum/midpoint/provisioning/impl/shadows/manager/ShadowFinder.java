@@ -41,7 +41,9 @@ import org.springframework.stereotype.Component;
 import javax.xml.namespace.QName;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
 
 import static com.evolveum.midpoint.provisioning.util.ProvisioningUtil.selectLiveShadow;
@@ -98,7 +100,17 @@ class ShadowFinder {
         List<PrismObject<ShadowType>> shadowsFound = searchRepoShadows(query, options, result);
         LOGGER.trace("Found {} shadows (live or dead)", shadowsFound.size());
 
-        PrismObject<ShadowType> liveShadow = selectLiveShadow(shadowsFound);
+        return checkLiveShadow(selectLiveShadow(shadowsFound), result);
+    }
+
+    /**
+     * Does the checks of {@link #lookupLiveShadowByPrimaryId(ProvisioningContext, PrismProperty, QName, OperationResult)}
+     * on a live shadow found by other means.
+     *
+     * @return the shadow or null if it does not exist any more
+     */
+    PrismObject<ShadowType> checkLiveShadow(PrismObject<ShadowType> liveShadow, OperationResult result)
+            throws SchemaException {
         if (liveShadow == null) {
             return null;
         }
@@ -111,6 +123,44 @@ class ShadowFinder {
         return liveShadow;
     }
 
+    /**
+     * Looks up live shadows for a collection of primary identifier values using a single query on the indexed
+     * shadow.primaryIdentifierValue property. Unlike {@link #lookupLiveShadowByPrimaryId(ProvisioningContext, PrismProperty,
+     * QName, OperationResult)} the shadows are not checked, see {@link #checkLiveShadow(PrismObject, OperationResult)}.
+     *
+     * @return live shadows indexed by primary identifier value; values without a live shadow are not present
+     */
+    @NotNull Map<String, PrismObject<ShadowType>> searchLiveShadowsByIndexedPrimaryIdValues(ProvisioningContext ctx,
+            Collection<String> primaryIdentifierValues, OperationResult result) throws SchemaException {
+
+        if (primaryIdentifierValues.isEmpty()) {
+            return Map.of();
+        }
+
+        ObjectQuery query = prismContext.queryFor(ShadowType.class)
+                .item(ShadowType.F_PRIMARY_IDENTIFIER_VALUE).eq(primaryIdentifierValues.toArray())
+                .and().item(ShadowType.F_OBJECT_CLASS).eq(ctx.getObjectClassNameRequired())
+                .and().item(ShadowType.F_RESOURCE_REF).ref(ctx.getResourceOid())
+                .build();
+        LOGGER.trace("Searching for shadows by {} primaryIdentifierValue(s) using filter:\n{}",
+                primaryIdentifierValues.size(), DebugUtil.debugDumpLazily(query, 1));
+
+        // Explicitly avoid all caches. We want to avoid shadow duplication.
+        Collection<SelectorOptions<GetOperationOptions>> options = schemaService.getOperationOptionsBuilder()
+                .staleness(0L)
+                .build();
+
+        Map<String, PrismObject<ShadowType>> liveShadows = new HashMap<>();
+        for (PrismObject<ShadowType> shadow : searchRepoShadows(query, options, result)) {
+            String value = shadow.asObjectable().getPrimaryIdentifierValue();
+            if (value != null && ShadowUtil.isNotDead(shadow)) {
+                liveShadows.put(value, shadow);
+            }
+        }
+        LOGGER.trace("Found {} live shadows for {} primaryIdentifierValue(s)", liveShadows.size(), primaryIdentifierValues.size());
+        return liveShadows;
+    }
+
     /** @return true if the shadow is OK; false if it does not exist any more */
     private boolean checkExistsFlagForLiveShadow(PrismObject<ShadowType> liveShadow, OperationResult result)
             throws SchemaException {
@@ -9,6 +9,7 @@ package com.evolveum.midpoint.provisioning.impl.shadows.manager;
 
 import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import javax.xml.datatype.XMLGregorianCalendar;
 import javax.xml.namespace.QName;
 
@@ -143,6 +144,25 @@ public class ShadowManager {
         return shadowFinder.lookupLiveShadowByPrimaryId(ctx, primaryIdentifier, objectClass, result);
     }
 
+    /**
+     * Looks up live shadows for given primary identifier values using a single repository query.
+     * The shadows are NOT checked like in {@link #lookupLiveShadowByPrimaryId(ProvisioningContext, PrismProperty, QName,
+     * OperationResult)}; use {@link #checkLiveShadow(PrismObject, OperationResult)} before they are used.
+     */
+    public @NotNull Map<String, PrismObject<ShadowType>> searchLiveShadowsByIndexedPrimaryIdValues(ProvisioningContext ctx,
+            Collection<String> primaryIdentifierValues, OperationResult result) throws SchemaException {
+        return shadowFinder.searchLiveShadowsByIndexedPrimaryIdValues(ctx, primaryIdentifierValues, result);
+    }
+
+    /**
+     * Checks a live shadow obtained by {@link #searchLiveShadowsByIndexedPrimaryIdValues(ProvisioningContext, Collection,
+     * OperationResult)}. Returns null if the shadow does not exist any more.
+     */
+    public PrismObject<ShadowType> checkLiveShadow(PrismObject<ShadowType> liveShadow, OperationResult result)
+            throws SchemaException {
+        return shadowFinder.checkLiveShadow(liveShadow, result);
+    }
+
     /**
      * Looks up live (or any other, if there's none) shadow by primary identifier(s).
      */
@@ -6,13 +6,18 @@
  */
 package com.evolveum.midpoint.provisioning.impl.dummy;
 
+import static org.assertj.core.api.Assertions.assertThat;
+
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
 
+import com.evolveum.midpoint.schema.processor.ResourceSchema;
 import com.evolveum.midpoint.schema.processor.ResourceSchemaFactory;
 
+import org.springframework.beans.factory.annotation.Autowired;
+
 import org.springframework.test.annotation.DirtiesContext;
 import org.springframework.test.context.ContextConfiguration;
 import org.testng.AssertJUnit;
@@ -20,6 +25,7 @@ import org.testng.annotations.Test;
 import org.w3c.dom.Element;
 
 import com.evolveum.midpoint.prism.PrismObject;
+import com.evolveum.midpoint.provisioning.impl.ResourceCache;
 import com.evolveum.midpoint.prism.delta.ObjectDelta;
 import com.evolveum.midpoint.prism.delta.PropertyDelta;
 import com.evolveum.midpoint.prism.path.ItemPath;
@@ -39,6 +45,7 @@ import com.evolveum.midpoint.util.exception.*;
 import com.evolveum.midpoint.xml.ns._public.common.common_3.ProjectionPolicyType;
 import com.evolveum.midpoint.xml.ns._public.common.common_3.ResourceType;
 import com.evolveum.midpoint.xml.ns._public.common.common_3.ShadowType;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.SingleCacheStateInformationType;
 
 /**
  * The test of Provisioning service on the API level. It checks proper caching of resource and schemas.
@@ -51,6 +58,8 @@ import com.evolveum.midpoint.xml.ns._public.common.common_3.ShadowType;
 @DirtiesContext
 public class TestDummyResourceAndSchemaCaching extends AbstractDummyTest {
 
+    @Autowired private ResourceCache resourceCache;
+
     @Test
     public void test010GetResource() throws Exception {
         // GIVEN
@@ -522,6 +531,99 @@ public class TestDummyResourceAndSchemaCaching extends AbstractDummyTest {
         assertConnectorConfigChanged();
     }
 
+    /**
+     * Read-only clients get the cached snapshot, other clients get a clone.
+     * The clone does not share the parsed schemas of the snapshot, as it may be modified.
+     * Modifications of the clone must not get into the cache.
+     */
+    @Test
+    public void test032GetResourceReadOnlyAndClone() throws Exception {
+        // GIVEN
+        Task task = getTestTask();
+        OperationResult result = createOperationResult();
+        Collection<SelectorOptions<GetOperationOptions>> readOnly =
+                SelectorOptions.createCollection(GetOperationOptions.createReadOnly());
+
+        provisioningService.getObject(ResourceType.class, RESOURCE_DUMMY_OID, readOnly, task, result);
+        rememberResourceCacheStats();
+        long clonesBefore = InternalMonitor.getResourceCacheStats().getClones();
+
+        // WHEN
+        when();
+        PrismObject<ResourceType> readOnly1 =
+                provisioningService.getObject(ResourceType.class, RESOURCE_DUMMY_OID, readOnly, task, result);
+        PrismObject<ResourceType> readOnly2 =
+                provisioningService.getObject(ResourceType.class, RESOURCE_DUMMY_OID, readOnly, task, result);
+
+        // THEN
+        then();
+        assertSuccess(result);
+        assertThat(readOnly1.isImmutable()).as("read-only resource is immutable").isTrue();
+        assertThat(readOnly2).as("second read-only resource").isSameAs(readOnly1);
+        assertResourceCacheHitsIncrement(2);
+        assertResourceCacheMissesIncrement(0);
+        assertThat(InternalMonitor.getResourceCacheStats().getClones() - clonesBefore)
+                .as("clones increment").isEqualTo(0);
+
+        // WHEN
+        when();
+        rememberCounter(InternalCounters.RESOURCE_SCHEMA_PARSE_COUNT);
+        SingleCacheStateInformationType stateBefore = getResourceCacheState();
+        PrismObject<ResourceType> clone =
+                provisioningService.getObject(ResourceType.class, RESOURCE_DUMMY_OID, null, task, result);
+        ResourceSchemaFactory.getCompleteSchema(clone);
+
+        // THEN
+        then();
+        assertSuccess(result);
+        assertThat(clone.isImmutable()).as("cloned resource is immutable").isFalse();
+        assertThat(clone).as("cloned resource").isNotSameAs(readOnly1);
+        assertResourceCacheHitsIncrement(1);
+        assertResourceCacheMissesIncrement(0);
+        assertThat(InternalMonitor.getResourceCacheStats().getClones() - clonesBefore)
+                .as("clones increment").isEqualTo(1);
+        assertCounterIncrement(InternalCounters.RESOURCE_SCHEMA_PARSE_COUNT, 1);
+        SingleCacheStateInformationType stateAfter = getResourceCacheState();
+        assertThat(stateAfter.getHits() - stateBefore.getHits()).as("hits in cache state").isEqualTo(1);
+        assertThat(stateAfter.getMisses() - stateBefore.getMisses()).as("misses in cache state").isEqualTo(0);
+        assertThat(stateAfter.getClones() - stateBefore.getClones()).as("clones in cache state").isEqualTo(1);
+
+        // WHEN
+        when();
+        clone.asObjectable().setDescription("modified clone");
+        PrismObject<ResourceType> readOnly3 =
+                provisioningService.getObject(ResourceType.class, RESOURCE_DUMMY_OID, readOnly, task, result);
+
+        // THEN
+        then();
+        assertSuccess(result);
+        assertThat(readOnly3).as("read-only resource after clone modification").isSameAs(readOnly1);
+        assertThat(readOnly3.asObjectable().getDescription()).as("cached description").isNotEqualTo("modified clone");
+        assertResourceCacheHitsIncrement(1);
+        assertResourceCacheMissesIncrement(0);
+
+        // WHEN
+        when();
+        PrismObject<ResourceType> clone2 =
+                provisioningService.getObject(ResourceType.class, RESOURCE_DUMMY_OID, null, task, result);
+        clone2.asObjectable().setSchemaHandling(null);
+        ResourceSchema clone2Schema = ResourceSchemaFactory.getCompleteSchema(clone2);
+
+        // THEN
+        then();
+        assertSuccess(result);
+        assertThat(clone2Schema.getObjectTypeDefinitions())
+                .as("object types of the clone without schema handling")
+                .isEmpty();
+        assertThat(ResourceSchemaFactory.getCompleteSchema(readOnly3).getObjectTypeDefinitions())
+                .as("object types of the cached resource")
+                .isNotEmpty();
+    }
+
+    private SingleCacheStateInformationType getResourceCacheState() {
+        return resourceCache.getStateInformation().iterator().next();
+    }
+
     @Test
     public void test900DeleteResource() throws Exception {
         // GIVEN
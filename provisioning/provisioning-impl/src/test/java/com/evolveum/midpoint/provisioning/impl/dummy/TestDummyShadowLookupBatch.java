@@ -0,0 +1,222 @@
+/*
+ * Copyright (C) 2010-2022 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+package com.evolveum.midpoint.provisioning.impl.dummy;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import javax.xml.namespace.QName;
+
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ContextConfiguration;
+import org.testng.annotations.Test;
+
+import com.evolveum.icf.dummy.resource.DummyAccount;
+import com.evolveum.midpoint.prism.PrismObject;
+import com.evolveum.midpoint.prism.query.ObjectQuery;
+import com.evolveum.midpoint.repo.api.RepositoryService;
+import com.evolveum.midpoint.repo.api.perf.OperationPerformanceInformation;
+import com.evolveum.midpoint.repo.api.perf.PerformanceInformation;
+import com.evolveum.midpoint.repo.api.perf.PerformanceMonitor;
+import com.evolveum.midpoint.schema.ResultHandler;
+import com.evolveum.midpoint.schema.constants.MidPointConstants;
+import com.evolveum.midpoint.schema.constants.SchemaConstants;
+import com.evolveum.midpoint.schema.result.OperationResult;
+import com.evolveum.midpoint.schema.util.ObjectQueryUtil;
+import com.evolveum.midpoint.task.api.Task;
+import com.evolveum.midpoint.util.exception.CommunicationException;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.*;
+
+/**
+ * Tests searching for accounts with shadows looked up in bulk, i.e. with search results collected into windows
+ * (`consistency/shadowLookupBatchSize`). Checks that the windowing does not change what objects are handled,
+ * even if the search is stopped or if it fails in the middle.
+ */
+@ContextConfiguration(locations = "classpath:ctx-provisioning-test-main.xml")
+@DirtiesContext
+public class TestDummyShadowLookupBatch extends AbstractDummyTest {
+
+    private static final int BATCH_SIZE = 3;
+    private static final int NEW_ACCOUNTS = 7;
+
+    /** All accounts on the resource: the new ones plus daemon. */
+    private static final int ALL_ACCOUNTS = NEW_ACCOUNTS + 1;
+
+    /** Number of windows (and hence bulk shadow lookups) when all the accounts are searched for. */
+    private static final int ALL_ACCOUNTS_WINDOWS = (ALL_ACCOUNTS + BATCH_SIZE - 1) / BATCH_SIZE;
+
+    @Override
+    public void initSystem(Task initTask, OperationResult initResult) throws Exception {
+        super.initSystem(initTask, initResult);
+
+        repositoryService.modifyObject(ResourceType.class, RESOURCE_DUMMY_OID,
+                deltaFor(ResourceType.class)
+                        .item(ResourceType.F_CONSISTENCY, ResourceConsistencyType.F_SHADOW_LOOKUP_BATCH_SIZE)
+                        .replace(BATCH_SIZE)
+                        .asItemDeltas(),
+                initResult);
+
+        for (int i = 0; i < NEW_ACCOUNTS; i++) {
+            DummyAccount account = new DummyAccount("batch-" + i);
+            account.setEnabled(true);
+            dummyResource.addAccount(account);
+        }
+    }
+
+    /** All accounts are found; shadows are created for the new ones. Then they are found again using the bulk lookup. */
+    @Test
+    public void test100SearchAllAccounts() throws Exception {
+        Task task = getTestTask();
+        OperationResult result = task.getResult();
+
+        when("accounts are searched for the first time");
+        List<PrismObject<ShadowType>> found = searchAccounts(Integer.MAX_VALUE, task, result);
+
+        then("all of them are found");
+        assertSuccess(result);
+        assertThat(found).hasSize(ALL_ACCOUNTS);
+        List<String> oids = getOids(found);
+        assertThat(oids).doesNotContainNull().doesNotHaveDuplicates();
+
+        when("accounts are searched again (shadows exist now)");
+        OperationResult result2 = createOperationResult();
+        List<PrismObject<ShadowType>> foundAgain;
+        PerformanceInformation repoOperations;
+        startRepoOperationsCollection();
+        try {
+            foundAgain = searchAccounts(Integer.MAX_VALUE, task, result2);
+            repoOperations = getRepoPerformanceMonitor().getThreadLocalPerformanceInformation().clone();
+        } finally {
+            stopRepoOperationsCollection();
+        }
+
+        then("the same shadows are found");
+        assertSuccess(result2);
+        assertThat(getOids(foundAgain)).containsExactlyElementsOf(oids);
+
+        and("the shadows are looked up by a single repository search per window, not one by one");
+        displayDumpable("repository operations", repoOperations);
+        assertThat(getRepoOperationCount(repoOperations, RepositoryService.OP_SEARCH_OBJECTS, ShadowType.class))
+                .as("shadow searches")
+                .isEqualTo(ALL_ACCOUNTS_WINDOWS);
+        assertThat(getRepoOperationCount(repoOperations, RepositoryService.OP_GET_OBJECT, ShadowType.class))
+                .as("shadow gets")
+                .isZero();
+        assertThat(getRepoOperationCount(repoOperations, RepositoryService.OP_GET_OBJECTS, ShadowType.class))
+                .as("shadow multi-gets")
+                .isZero();
+    }
+
+    /** The client stops the search in the middle of a window: the rest of the window must not be handled. */
+    @Test
+    public void test110StopSearchInTheMiddleOfWindow() throws Exception {
+        Task task = getTestTask();
+        OperationResult result = task.getResult();
+
+        when("the handler stops after 4 objects");
+        List<PrismObject<ShadowType>> found = searchAccounts(4, task, result);
+
+        then("exactly 4 objects are handled");
+        assertSuccess(result);
+        assertThat(found).hasSize(4);
+    }
+
+    /**
+     * The search fails in the middle of the second window. Objects found before the failure are handled,
+     * just as they would be without the window, and the failure is reported.
+     */
+    @Test
+    public void test120SearchFailsInTheMiddleOfWindow() throws Exception {
+        Task task = getTestTask();
+        OperationResult result = task.getResult();
+
+        given("the resource fails after returning 5 objects");
+        dummyResource.setSearchBreakAfter(5);
+
+        List<PrismObject<ShadowType>> found = new ArrayList<>();
+        try {
+            when("accounts are searched for");
+            provisioningService.searchObjectsIterative(
+                    ShadowType.class, createAccountQuery(), null, collectingHandler(found, Integer.MAX_VALUE), task, result);
+            assertNotReached();
+        } catch (CommunicationException e) {
+            then("the failure is reported");
+            displayExpectedException(e);
+        } finally {
+            dummyResource.resetBreakMode();
+        }
+
+        and("objects found before the failure are handled, including the incomplete window");
+        assertFailure(result);
+        assertThat(found).hasSize(5);
+        assertThat(getOids(found)).doesNotContainNull();
+    }
+
+    /** Repository operations are counted per operation and object type, in the current thread. */
+    private void startRepoOperationsCollection() {
+        getRepoPerformanceMonitor().setConfiguration(
+                new RepositoryStatisticsReportingConfigurationType()
+                        .collection(RepositoryStatisticsCollectionStyleType.GLOBALLY_AND_LOCALLY)
+                        .classification(RepositoryStatisticsClassificationType.PER_OPERATION_AND_OBJECT_TYPE));
+        getRepoPerformanceMonitor().startThreadLocalPerformanceInformationCollection();
+    }
+
+    private void stopRepoOperationsCollection() {
+        getRepoPerformanceMonitor().stopThreadLocalPerformanceInformationCollection();
+        getRepoPerformanceMonitor().setConfiguration(null);
+    }
+
+    private PerformanceMonitor getRepoPerformanceMonitor() {
+        return repositoryService.getPerformanceMonitor();
+    }
+
+    /**
+     * Operations are recorded as `[prefix.]operation.ObjectType`, where the prefix depends on the repository implementation.
+     */
+    private int getRepoOperationCount(PerformanceInformation information, String operation, Class<?> objectType) {
+        int count = 0;
+        for (Map.Entry<String, OperationPerformanceInformation> entry : information.getAllData().entrySet()) {
+            List<String> segments = Arrays.asList(entry.getKey().split("\\."));
+            int i = segments.indexOf(operation);
+            if (i >= 0 && i + 1 < segments.size() && segments.get(i + 1).equals(objectType.getSimpleName())) {
+                count += entry.getValue().getInvocationCount();
+            }
+        }
+        return count;
+    }
+
+    private List<PrismObject<ShadowType>> searchAccounts(int maxObjects, Task task, OperationResult result)
+            throws Exception {
+        List<PrismObject<ShadowType>> found = new ArrayList<>();
+        provisioningService.searchObjectsIterative(
+                ShadowType.class, createAccountQuery(), null, collectingHandler(found, maxObjects), task, result);
+        return found;
+    }
+
+    private ResultHandler<ShadowType> collectingHandler(List<PrismObject<ShadowType>> found, int maxObjects) {
+        return (object, lResult) -> {
+            found.add(object);
+            return found.size() < maxObjects;
+        };
+    }
+
+    private ObjectQuery createAccountQuery() {
+        return ObjectQueryUtil.createResourceAndObjectClassQuery(RESOURCE_DUMMY_OID,
+                new QName(MidPointConstants.NS_RI, SchemaConstants.ACCOUNT_OBJECT_CLASS_LOCAL_NAME), prismContext);
+    }
+
+    private List<String> getOids(List<PrismObject<ShadowType>> shadows) {
+        List<String> oids = new ArrayList<>();
+        for (PrismObject<ShadowType> shadow : shadows) {
+            oids.add(shadow.getOid());
+        }
+        return oids;
+    }
+}
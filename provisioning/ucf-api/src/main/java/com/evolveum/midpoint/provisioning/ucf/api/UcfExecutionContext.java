@@ -16,6 +16,7 @@ import com.evolveum.midpoint.schema.processor.ResourceObjectDefinition;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import com.evolveum.midpoint.schema.metrics.MidpointMetrics;
 import com.evolveum.midpoint.schema.reporting.ConnIdOperation;
 import com.evolveum.midpoint.schema.statistics.ProvisioningOperation;
 import com.evolveum.midpoint.schema.util.ObjectTypeUtil;
@@ -131,6 +132,8 @@ public class UcfExecutionContext {
     public void recordIcfOperationEnd(ConnIdOperation operation, Throwable ex) {
         LOGGER.trace("recordIcfOperationEnd: operation={}, currentOperation={}, task={}", operation, currentOperation, task);
         operation.onEnd();
+        MidpointMetrics.recordConnectorOperation(operation.getResourceOid(), operation.getResourceName(),
+                operation.getOperation().getName(), operation.getNetRunningTime());
 
         boolean relevant;
         if (currentOperation != operation) {
@@ -529,7 +529,7 @@ public class AuditEventRecord implements DebugDumpable, Serializable {
         ObjectDeltaOperation.checkConsistence(deltas);
     }
 
-    // TODO: currently unused (2021), but if audit(AERType) will be reused as part of audit(AER) it can still be useful
+    // Used e.g. to spool records written asynchronously by the native repository audit.
     public AuditEventRecordType createAuditEventRecordType(boolean tolerateInconsistencies) {
         AuditEventRecordType auditRecord = new AuditEventRecordType();
         auditRecord.setRepoId(repoId);
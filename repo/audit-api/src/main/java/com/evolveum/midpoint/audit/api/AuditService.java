@@ -21,6 +21,7 @@ import com.evolveum.midpoint.task.api.Task;
 import com.evolveum.midpoint.util.annotation.Experimental;
 import com.evolveum.midpoint.util.exception.SchemaException;
 import com.evolveum.midpoint.xml.ns._public.common.audit_3.AuditEventRecordType;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.AuditPartitionsPolicyType;
 import com.evolveum.midpoint.xml.ns._public.common.common_3.CleanupPolicyType;
 import com.evolveum.midpoint.xml.ns._public.common.common_3.SystemConfigurationAuditType;
 
@@ -37,6 +38,7 @@ public interface AuditService {
     String OP_AUDIT = "audit";
     String OP_CLEANUP_AUDIT_MAX_AGE = "cleanupAuditMaxAge";
     String OP_CLEANUP_AUDIT_MAX_RECORDS = "cleanupAuditMaxRecords";
+    String OP_MAINTAIN_AUDIT_PARTITIONS = "maintainAuditPartitions";
     String OP_COUNT_OBJECTS = "countObjects";
     String OP_SEARCH_OBJECTS = "searchObjects";
     String OP_SEARCH_OBJECTS_ITERATIVE = "searchObjectsIterative";
@@ -66,6 +68,16 @@ public interface AuditService {
      */
     void cleanupAudit(CleanupPolicyType policy, OperationResult parentResult);
 
+    /**
+     * Creates missing partitions of the audit tables ahead of time and reports sizes of the existing ones.
+     * Does nothing for implementations that do not use partitioning.
+     *
+     * @param policy Partitions are maintained based on this policy.
+     */
+    default void maintainAuditPartitions(
+            @NotNull AuditPartitionsPolicyType policy, @NotNull OperationResult parentResult) {
+    }
+
     /**
      * Returns true if retrieval of objects from the audit trail is supported.
      * This applies to listRecords, countObjects, reconstructObject and similar
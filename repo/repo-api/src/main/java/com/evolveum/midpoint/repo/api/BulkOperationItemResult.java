@@ -0,0 +1,73 @@
+/*
+ * Copyright (C) 2010-2022 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+
+package com.evolveum.midpoint.repo.api;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import com.evolveum.midpoint.util.annotation.Experimental;
+
+/**
+ * Result of the operation on a single object within bulk repository operation, like
+ * {@link RepositoryService#addObjects} or {@link RepositoryService#modifyObjects}.
+ *
+ * Exactly one of {@link #modifyObjectResult} (for successful modify operations; null for add) and {@link #exception}
+ * (for failed operations) can be present.
+ *
+ * EXPERIMENTAL.
+ */
+@Experimental
+public class BulkOperationItemResult {
+
+    private final String oid;
+    private final ModifyObjectResult<?> modifyObjectResult;
+    private final Throwable exception;
+
+    private BulkOperationItemResult(String oid, ModifyObjectResult<?> modifyObjectResult, Throwable exception) {
+        this.oid = oid;
+        this.modifyObjectResult = modifyObjectResult;
+        this.exception = exception;
+    }
+
+    public static BulkOperationItemResult added(@NotNull String oid) {
+        return new BulkOperationItemResult(oid, null, null);
+    }
+
+    public static BulkOperationItemResult modified(@NotNull String oid, @NotNull ModifyObjectResult<?> modifyObjectResult) {
+        return new BulkOperationItemResult(oid, modifyObjectResult, null);
+    }
+
+    public static BulkOperationItemResult failed(@Nullable String oid, @NotNull Throwable exception) {
+        return new BulkOperationItemResult(oid, null, exception);
+    }
+
+    /** OID of the object. May be null for objects that were not added. */
+    public String getOid() {
+        return oid;
+    }
+
+    public ModifyObjectResult<?> getModifyObjectResult() {
+        return modifyObjectResult;
+    }
+
+    public Throwable getException() {
+        return exception;
+    }
+
+    public boolean isSuccess() {
+        return exception == null;
+    }
+
+    @Override
+    public String toString() {
+        return "BulkOperationItemResult{" +
+                "oid='" + oid + '\'' +
+                (exception != null ? ", exception=" + exception : "") +
+                '}';
+    }
+}
@@ -58,6 +58,15 @@ public class RepoModifyOptions extends AbstractOptions
      */
     private Boolean useNoFetchExtensionValuesDeletion;
 
+    /**
+     * Whether rows of containers added by the modification may be inserted using JDBC batches.
+     * Applied only if the modification consists solely of additions of top-level container values
+     * (e.g. certification cases added to a campaign); otherwise it is ignored.
+     * Supported only by the native repository.
+     * EXPERIMENTAL
+     */
+    private boolean batchContainerInserts;
+
     @SuppressWarnings("WeakerAccess")
     public boolean isForceReindex() {
         return forceReindex;
@@ -116,6 +125,24 @@ public class RepoModifyOptions extends AbstractOptions
         return opts;
     }
 
+    public boolean isBatchContainerInserts() {
+        return batchContainerInserts;
+    }
+
+    public void setBatchContainerInserts(boolean batchContainerInserts) {
+        this.batchContainerInserts = batchContainerInserts;
+    }
+
+    public static boolean isBatchContainerInserts(RepoModifyOptions options) {
+        return options != null && options.isBatchContainerInserts();
+    }
+
+    public static RepoModifyOptions createBatchContainerInserts() {
+        RepoModifyOptions opts = new RepoModifyOptions();
+        opts.setBatchContainerInserts(true);
+        return opts;
+    }
+
     @Override
     public String toString() {
         StringBuilder sb = new StringBuilder("RepoModifyOptions(");
@@ -129,6 +156,7 @@ public class RepoModifyOptions extends AbstractOptions
         appendFlag(sb, "forceReindex", forceReindex);
         appendFlag(sb, "useNoFetchExtensionValuesInsertion", useNoFetchExtensionValuesInsertion);
         appendFlag(sb, "useNoFetchExtensionValuesDeletion", useNoFetchExtensionValuesDeletion);
+        appendFlag(sb, "batchContainerInserts", batchContainerInserts);
         removeLastComma(sb);
     }
 
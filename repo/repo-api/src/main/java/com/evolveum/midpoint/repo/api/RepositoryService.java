@@ -6,7 +6,11 @@
  */
 package com.evolveum.midpoint.repo.api;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
@@ -14,6 +18,7 @@ import org.jetbrains.annotations.Nullable;
 import com.evolveum.midpoint.prism.Containerable;
 import com.evolveum.midpoint.prism.PrismObject;
 import com.evolveum.midpoint.prism.delta.ItemDelta;
+import com.evolveum.midpoint.prism.delta.ObjectDelta;
 import com.evolveum.midpoint.prism.query.ObjectQuery;
 import com.evolveum.midpoint.repo.api.perf.PerformanceMonitor;
 import com.evolveum.midpoint.repo.api.query.ObjectFilterExpressionEvaluator;
@@ -115,14 +120,18 @@ public interface RepositoryService {
     String OP_DELETE_OBJECT = "deleteObject";
     String OP_COUNT_OBJECTS = "countObjects";
     String OP_MODIFY_OBJECT = "modifyObject";
+    String OP_ADD_OBJECTS = "addObjects";
+    String OP_MODIFY_OBJECTS = "modifyObjects";
     String OP_MODIFY_OBJECT_DYNAMICALLY = "modifyObjectDynamically";
     String OP_GET_VERSION = "getVersion";
     String OP_IS_DESCENDANT = "isDescendant";
     String OP_IS_ANCESTOR = "isAncestor";
     String OP_ADVANCE_SEQUENCE = "advanceSequence";
     String OP_RETURN_UNUSED_VALUES_TO_SEQUENCE = "returnUnusedValuesToSequence";
+    String OP_RESERVE_SEQUENCE_VALUES = "reserveSequenceValues";
     String OP_EXECUTE_QUERY_DIAGNOSTICS = "executeQueryDiagnostics";
     String OP_GET_OBJECT = "getObject";
+    String OP_GET_OBJECTS = "getObjects";
     String OP_SEARCH_SHADOW_OWNER = "searchShadowOwner";
     String OP_SEARCH_OBJECTS = "searchObjects";
     String OP_SEARCH_OBJECTS_ITERATIVE = "searchObjectsIterative";
@@ -173,6 +182,42 @@ public interface RepositoryService {
             Collection<SelectorOptions<GetOperationOptions>> options, OperationResult parentResult)
             throws ObjectNotFoundException, SchemaException;
 
+    /**
+     * Returns objects for provided OIDs.
+     *
+     * Unlike {@link #getObject}, this method does not fail if some of the objects do not exist:
+     * they are simply not present in the returned map.
+     *
+     * Implementations should do this more efficiently than getting the objects one by one, e.g. by using
+     * a single query - default implementation just calls {@link #getObject} repeatedly.
+     *
+     * @param oids OIDs of the objects to get
+     * @param parentResult parent OperationResult (in/out)
+     * @return Objects fetched from repository, indexed by OID, in the order of `oids` collection
+     * @throws SchemaException error dealing with storage schema
+     * @throws IllegalArgumentException wrong OID format, etc.
+     */
+    @Experimental
+    default @NotNull <O extends ObjectType> Map<String, PrismObject<O>> getObjects(
+            @NotNull Class<O> type,
+            @NotNull Collection<String> oids,
+            Collection<SelectorOptions<GetOperationOptions>> options,
+            @NotNull OperationResult parentResult)
+            throws SchemaException {
+        Map<String, PrismObject<O>> objects = new LinkedHashMap<>();
+        for (String oid : oids) {
+            if (objects.containsKey(oid)) {
+                continue;
+            }
+            try {
+                objects.put(oid, getObject(type, oid, options, parentResult));
+            } catch (ObjectNotFoundException e) {
+                parentResult.muteLastSubresultError();
+            }
+        }
+        return objects;
+    }
+
     /**
      * Returns object version for provided OID.
      * <p>
@@ -282,6 +327,67 @@ public interface RepositoryService {
             @NotNull OperationResult parentResult)
             throws ObjectNotFoundException, SchemaException, ObjectAlreadyExistsException, PreconditionViolationException;
 
+    /**
+     * Adds multiple objects, with the same semantics as {@link #addObject} for each of them.
+     *
+     * Implementations should do this more efficiently than adding the objects one by one, e.g. by using a single
+     * transaction and batching the inserts - default implementation just calls {@link #addObject} repeatedly.
+     * Nevertheless, a failure of one object must not prevent other objects from being added.
+     *
+     * @param objects objects to create; OIDs are set for those that are successfully added
+     * @param options options to be applied to each object
+     * @param parentResult parent OperationResult (in/out)
+     * @return results for individual objects, in the order of the `objects` list
+     */
+    @Experimental
+    default @NotNull List<BulkOperationItemResult> addObjects(
+            @NotNull List<? extends PrismObject<? extends ObjectType>> objects,
+            @Nullable RepoAddOptions options,
+            @NotNull OperationResult parentResult) {
+        List<BulkOperationItemResult> results = new ArrayList<>(objects.size());
+        for (PrismObject<? extends ObjectType> object : objects) {
+            try {
+                results.add(
+                        BulkOperationItemResult.added(
+                                addObject(object, options, parentResult)));
+            } catch (CommonException | RuntimeException e) {
+                results.add(BulkOperationItemResult.failed(object.getOid(), e));
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Modifies multiple objects, with the same semantics as {@link #modifyObject} for each of them.
+     *
+     * Implementations should do this more efficiently than modifying the objects one by one, e.g. by using a single
+     * transaction - default implementation just calls {@link #modifyObject} repeatedly.
+     * Nevertheless, a failure of one object must not prevent other objects from being modified.
+     *
+     * @param deltas MODIFY deltas with the type and OID of the object
+     * @param options options to be applied to each object
+     * @param parentResult parent OperationResult (in/out)
+     * @return results for individual objects, in the order of the `deltas` list
+     */
+    @Experimental
+    default @NotNull List<BulkOperationItemResult> modifyObjects(
+            @NotNull List<? extends ObjectDelta<? extends ObjectType>> deltas,
+            @Nullable RepoModifyOptions options,
+            @NotNull OperationResult parentResult) {
+        List<BulkOperationItemResult> results = new ArrayList<>(deltas.size());
+        for (ObjectDelta<? extends ObjectType> delta : deltas) {
+            try {
+                results.add(
+                        BulkOperationItemResult.modified(delta.getOid(),
+                                modifyObject(delta.getObjectTypeClass(), delta.getOid(), delta.getModifications(),
+                                        options, parentResult)));
+            } catch (CommonException | RuntimeException e) {
+                results.add(BulkOperationItemResult.failed(delta.getOid(), e));
+            }
+        }
+        return results;
+    }
+
     /**
      * Modifies an object dynamically. This means that the deltas are not provided by the caller, but computed by specified
      * supplier, based on the current object state.
@@ -533,6 +639,37 @@ public interface RepositoryService {
      */
     long advanceSequence(String oid, OperationResult parentResult) throws ObjectNotFoundException, SchemaException;
 
+    /**
+     * Reserves a block of values from the sequence at once, with the same guarantees as {@link #advanceSequence}.
+     * Unused values of the sequence are reserved first, then the values from the counter.
+     *
+     * Implementations should do this in a single operation (e.g. single transaction), which is the point
+     * of this method - default implementation just calls {@link #advanceSequence} repeatedly.
+     *
+     * @param oid sequence OID
+     * @param count number of values to reserve, if null, `reservationBlockSize` of the sequence is used
+     * (default implementation uses 1 in that case)
+     * @param parentResult Operation result
+     * @return reserved values in the order they should be used; there may be fewer values than requested
+     * if the sequence reaches its maximum without rewind, but always at least one
+     * @throws ObjectNotFoundException the sequence does not exist
+     * @throws SchemaException the sequence cannot produce a value (e.g. maximum counter reached)
+     */
+    default @NotNull List<Long> reserveSequenceValues(String oid, Integer count, OperationResult parentResult)
+            throws ObjectNotFoundException, SchemaException {
+        int valuesToReserve = count != null ? count : 1;
+        List<Long> values = new ArrayList<>(valuesToReserve);
+        values.add(advanceSequence(oid, parentResult));
+        for (int i = 1; i < valuesToReserve; i++) {
+            try {
+                values.add(advanceSequence(oid, parentResult));
+            } catch (SystemException e) {
+                break; // sequence is exhausted, we return what we have
+            }
+        }
+        return values;
+    }
+
     /**
      * The sequence may ignore the values, e.g. if value re-use is disabled or when the list of
      * unused values is full. In such a case the values will be ignored silently and no error is indicated.
@@ -622,4 +759,15 @@ public interface RepositoryService {
             throws ObjectNotFoundException, SchemaException, ObjectAlreadyExistsException;
 
     PerformanceMonitor getPerformanceMonitor();
+
+    /**
+     * Returns dedicated storage for work buckets of distributed activities,
+     * or null if the repository implementation does not provide one.
+     *
+     * EXPERIMENTAL
+     */
+    @Experimental
+    default @Nullable WorkBucketStore getWorkBucketStore() {
+        return null;
+    }
 }
@@ -0,0 +1,113 @@
+/*
+ * Copyright (C) 2010-2022 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+
+package com.evolveum.midpoint.repo.api;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import com.evolveum.midpoint.schema.result.OperationResult;
+import com.evolveum.midpoint.schema.util.task.ActivityPath;
+import com.evolveum.midpoint.util.annotation.Experimental;
+import com.evolveum.midpoint.util.exception.ObjectAlreadyExistsException;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.WorkBucketStateType;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.WorkBucketType;
+
+/**
+ * Dedicated storage for work buckets of activities distributed to worker tasks.
+ *
+ * The buckets are stored one per row, outside the coordinator task, so workers can obtain and complete them
+ * without competing for the coordinator task object. Buckets are identified by the coordinator task OID,
+ * activity path and their sequential number.
+ *
+ * Obtained via {@link RepositoryService#getWorkBucketStore()}; available only in repositories that support it.
+ *
+ * EXPERIMENTAL.
+ */
+@Experimental
+public interface WorkBucketStore {
+
+    String OP_ADD_BUCKETS = "addBuckets";
+    String OP_CLAIM_BUCKETS = "claimBuckets";
+    String OP_GET_DELEGATED_BUCKETS = "getDelegatedBuckets";
+    String OP_GET_LAST_BUCKET = "getLastBucket";
+    String OP_COUNT_BUCKETS = "countBuckets";
+    String OP_COMPLETE_BUCKET = "completeBucket";
+    String OP_RELEASE_BUCKETS = "releaseBuckets";
+    String OP_RECLAIM_BUCKETS = "reclaimBuckets";
+    String OP_DELETE_BUCKETS = "deleteBuckets";
+
+    /**
+     * Adds new buckets. Their state and worker reference are stored as provided.
+     *
+     * @throws ObjectAlreadyExistsException if any of the sequential numbers is already present;
+     * typically because the buckets were concurrently created by another worker. Nothing is added then.
+     */
+    void addBuckets(@NotNull String coordinatorOid, @NotNull ActivityPath activityPath,
+            @NotNull List<WorkBucketType> buckets, @NotNull OperationResult parentResult)
+            throws ObjectAlreadyExistsException;
+
+    /**
+     * Claims READY buckets with the lowest sequential numbers for given worker. At most `maxBuckets` are returned.
+     * All returned buckets are (atomically) marked as DELEGATED to the worker.
+     *
+     * READY buckets being claimed concurrently by other workers are skipped, not waited for.
+     * Buckets already delegated to the worker are not returned; see {@link #getDelegatedBuckets(String, ActivityPath,
+     * String, OperationResult)}.
+     */
+    @NotNull List<WorkBucketType> claimBuckets(@NotNull String coordinatorOid, @NotNull ActivityPath activityPath,
+            @NotNull String workerOid, int maxBuckets, @NotNull OperationResult parentResult);
+
+    /**
+     * Returns buckets delegated to given worker (e.g. before its restart), ordered by their sequential numbers.
+     * Their state is not changed.
+     */
+    @NotNull List<WorkBucketType> getDelegatedBuckets(@NotNull String coordinatorOid, @NotNull ActivityPath activityPath,
+            @NotNull String workerOid, @NotNull OperationResult parentResult);
+
+    /** Returns the bucket with the highest sequential number (regardless of its state), or null if there are none. */
+    @Nullable WorkBucketType getLastBucket(@NotNull String coordinatorOid, @NotNull ActivityPath activityPath,
+            @NotNull OperationResult parentResult);
+
+    /** Returns the number of buckets in individual states. States without buckets are not present in the map. */
+    @NotNull Map<WorkBucketStateType, Integer> countBuckets(@NotNull String coordinatorOid,
+            @NotNull ActivityPath activityPath, @NotNull OperationResult parentResult);
+
+    /**
+     * Marks given bucket as COMPLETE.
+     *
+     * @return false if there is no such bucket in this store (e.g. because the buckets of the activity
+     * are kept in the coordinator task)
+     */
+    boolean completeBucket(@NotNull String coordinatorOid, @NotNull ActivityPath activityPath,
+            int sequentialNumber, @NotNull OperationResult parentResult);
+
+    /**
+     * Returns buckets delegated to given worker to the READY state.
+     *
+     * @param sequentialNumber If present, only this bucket is released.
+     * @return the number of released buckets
+     */
+    int releaseBuckets(@NotNull String coordinatorOid, @NotNull ActivityPath activityPath, @NotNull String workerOid,
+            @Nullable Integer sequentialNumber, @NotNull OperationResult parentResult);
+
+    /**
+     * Returns buckets delegated to workers other than the specified (live) ones to the READY state.
+     *
+     * @return the number of reclaimed buckets
+     */
+    int reclaimBuckets(@NotNull String coordinatorOid, @NotNull ActivityPath activityPath,
+            @NotNull Collection<String> liveWorkerOids, @NotNull OperationResult parentResult);
+
+    /** Deletes all buckets of given activity, e.g. before the activity is distributed again. */
+    void deleteBuckets(@NotNull String coordinatorOid, @NotNull ActivityPath activityPath,
+            @NotNull OperationResult parentResult);
+}
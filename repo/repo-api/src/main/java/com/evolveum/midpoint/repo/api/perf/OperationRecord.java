@@ -21,6 +21,8 @@ public class OperationRecord {
     private long handle;
     private int attempts;
     private long startTime;
+    /** Start as {@link System#nanoTime()}, for precise measurement of the duration. */
+    private final long startNanos;
     private long totalTime;
     private long wastedTime;
 
@@ -29,6 +31,7 @@ public class OperationRecord {
         this.objectType = objectType;
         this.handle = handle;
         this.startTime = System.currentTimeMillis();
+        this.startNanos = System.nanoTime();
     }
 
     @Override
@@ -89,6 +92,10 @@ public class OperationRecord {
         this.startTime = startTime;
     }
 
+    public long getStartNanos() {
+        return startNanos;
+    }
+
     public long getTotalTime() {
         return totalTime;
     }
@@ -12,6 +12,7 @@ import static com.evolveum.midpoint.repo.cache.other.MonitoringUtil.repoOpStart;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import javax.annotation.PreDestroy;
 
 import org.jetbrains.annotations.NotNull;
@@ -23,6 +24,7 @@ import com.evolveum.midpoint.CacheInvalidationContext;
 import com.evolveum.midpoint.prism.Containerable;
 import com.evolveum.midpoint.prism.PrismObject;
 import com.evolveum.midpoint.prism.delta.ItemDelta;
+import com.evolveum.midpoint.prism.delta.ObjectDelta;
 import com.evolveum.midpoint.prism.query.ObjectQuery;
 import com.evolveum.midpoint.repo.api.*;
 import com.evolveum.midpoint.repo.api.perf.PerformanceMonitor;
@@ -100,6 +102,13 @@ public class RepositoryCache implements RepositoryService, Cache {
         return getObjectOpHandler.getObject(type, oid, options, parentResult);
     }
 
+    @Override
+    public @NotNull <T extends ObjectType> Map<String, PrismObject<T>> getObjects(@NotNull Class<T> type,
+            @NotNull Collection<String> oids, Collection<SelectorOptions<GetOperationOptions>> options,
+            @NotNull OperationResult parentResult) throws SchemaException {
+        return getObjectOpHandler.getObjects(type, oids, options, parentResult);
+    }
+
     @Override
     public <T extends ObjectType> String getVersion(Class<T> type, String oid, OperationResult parentResult)
             throws ObjectNotFoundException, SchemaException {
@@ -189,6 +198,22 @@ public class RepositoryCache implements RepositoryService, Cache {
         return modificationOpHandler.modifyObject(type, oid, modifications, precondition, options, parentResult);
     }
 
+    @Override
+    public @NotNull List<BulkOperationItemResult> addObjects(
+            @NotNull List<? extends PrismObject<? extends ObjectType>> objects,
+            @Nullable RepoAddOptions options,
+            @NotNull OperationResult parentResult) {
+        return modificationOpHandler.addObjects(objects, options, parentResult);
+    }
+
+    @Override
+    public @NotNull List<BulkOperationItemResult> modifyObjects(
+            @NotNull List<? extends ObjectDelta<? extends ObjectType>> deltas,
+            @Nullable RepoModifyOptions options,
+            @NotNull OperationResult parentResult) {
+        return modificationOpHandler.modifyObjects(deltas, options, parentResult);
+    }
+
     @Override
     public @NotNull <T extends ObjectType> ModifyObjectResult<T> modifyObjectDynamically(
             @NotNull Class<T> type,
@@ -216,6 +241,12 @@ public class RepositoryCache implements RepositoryService, Cache {
         return modificationOpHandler.advanceSequence(oid, parentResult);
     }
 
+    @Override
+    public @NotNull List<Long> reserveSequenceValues(String oid, Integer count, OperationResult parentResult)
+            throws ObjectNotFoundException, SchemaException {
+        return modificationOpHandler.reserveSequenceValues(oid, count, parentResult);
+    }
+
     @Override
     public void returnUnusedValuesToSequence(String oid, Collection<Long> unusedValues, OperationResult parentResult)
             throws ObjectNotFoundException, SchemaException {
@@ -360,6 +391,12 @@ public class RepositoryCache implements RepositoryService, Cache {
     public PerformanceMonitor getPerformanceMonitor() {
         return repositoryService.getPerformanceMonitor();
     }
+
+    @Override
+    public WorkBucketStore getWorkBucketStore() {
+        // Buckets are not cached; they are shared by workers running on different nodes.
+        return repositoryService.getWorkBucketStore();
+    }
     //endregion
 
     @Override
@@ -7,12 +7,17 @@
 
 package com.evolveum.midpoint.repo.cache.global;
 
+import org.cache2k.Cache;
+import org.cache2k.CacheEntry;
+import org.cache2k.event.CacheEntryEvictedListener;
+import org.cache2k.event.CacheEntryExpiredListener;
 import org.cache2k.expiry.Expiry;
 import org.springframework.beans.factory.annotation.Autowired;
 
 import com.evolveum.midpoint.prism.PrismContext;
 import com.evolveum.midpoint.schema.cache.CacheConfigurationManager;
 import com.evolveum.midpoint.schema.cache.CacheType;
+import com.evolveum.midpoint.schema.metrics.MidpointMetrics;
 import com.evolveum.midpoint.util.caching.CacheConfiguration;
 import com.evolveum.midpoint.util.caching.CacheConfiguration.CacheObjectTypeConfiguration;
 import com.evolveum.midpoint.xml.ns._public.common.common_3.ObjectType;
@@ -71,4 +76,27 @@ public abstract class AbstractGlobalCache {
     }
 
     public abstract void clear();
+
+    /**
+     * Counts entries removed because of the capacity or time to live, see {@link MidpointMetrics#CACHE_EVICTIONS}.
+     * Explicit removals (invalidations) are not counted.
+     */
+    static class EvictionCounter<K, V> implements CacheEntryEvictedListener<K, V>, CacheEntryExpiredListener<K, V> {
+
+        private final String cacheName;
+
+        EvictionCounter(Class<? extends AbstractGlobalCache> cacheClass) {
+            this.cacheName = cacheClass.getSimpleName();
+        }
+
+        @Override
+        public void onEntryEvicted(Cache<K, V> cache, CacheEntry<K, V> entry) {
+            MidpointMetrics.recordCacheEviction(cacheName, "evicted");
+        }
+
+        @Override
+        public void onEntryExpired(Cache<K, V> cache, CacheEntry<K, V> entry) {
+            MidpointMetrics.recordCacheEviction(cacheName, "expired");
+        }
+    }
 }
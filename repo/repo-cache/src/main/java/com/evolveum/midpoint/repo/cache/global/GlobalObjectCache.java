@@ -53,6 +53,7 @@ public class GlobalObjectCache extends AbstractGlobalCache {
                     .name(CACHE_NAME)
                     .entryCapacity(capacity)
                     .expiryPolicy(getExpirePolicy())
+                    .addAsyncListener(new EvictionCounter<>(GlobalObjectCache.class))
                     .storeByReference(true) // this is default in the current version of cache2k; we need this because we update TTL value for cached objects
                     .build();
             LOGGER.info("Created global repository object cache with a capacity of {} objects", capacity);
@@ -8,7 +8,9 @@
 package com.evolveum.midpoint.repo.cache.global;
 
 import com.evolveum.midpoint.prism.PrismObject;
+import com.evolveum.midpoint.repo.cache.invalidation.ChangeDescription;
 import com.evolveum.midpoint.repo.cache.local.QueryKey;
+import com.evolveum.midpoint.repo.cache.local.QueryKeyIndex;
 import com.evolveum.midpoint.schema.SearchResultList;
 import com.evolveum.midpoint.schema.cache.CacheType;
 import com.evolveum.midpoint.util.logging.Trace;
@@ -17,13 +19,19 @@ import com.evolveum.midpoint.xml.ns._public.common.common_3.ObjectType;
 import com.evolveum.midpoint.xml.ns._public.common.common_3.SingleCacheStateInformationType;
 
 import org.apache.commons.lang3.tuple.MutablePair;
+import org.cache2k.Cache;
 import org.cache2k.Cache2kBuilder;
+import org.cache2k.CacheEntry;
+import org.cache2k.event.CacheEntryEvictedListener;
+import org.cache2k.event.CacheEntryExpiredListener;
+import org.cache2k.event.CacheEntryRemovedListener;
 import org.cache2k.expiry.ExpiryPolicy;
 import org.jetbrains.annotations.NotNull;
 import org.springframework.stereotype.Component;
 
 import javax.annotation.PreDestroy;
 import java.util.Collection;
+import java.util.AbstractMap;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
@@ -45,6 +53,13 @@ public class GlobalQueryCache extends AbstractGlobalCache {
 
     private org.cache2k.Cache<QueryKey, GlobalCacheQueryValue> cache;
 
+    /**
+     * Index of cached query keys, used to avoid scanning the whole cache on each invalidation.
+     * Keys are added before the entry is put into the cache (under the index lock for the query type) and removed
+     * asynchronously after the entry is removed, evicted or expired.
+     */
+    private final QueryKeyIndex index = new QueryKeyIndex();
+
     public void initialize() {
         if (cache != null) {
             LOGGER.warn("Global query cache was already initialized -- ignoring this request.");
@@ -59,6 +74,8 @@ public class GlobalQueryCache extends AbstractGlobalCache {
                     .name(CACHE_NAME)
                     .entryCapacity(capacity)
                     .expiryPolicy(getExpirePolicy())
+                    .addAsyncListener(new IndexCleaner())
+                    .addAsyncListener(new EvictionCounter<>(GlobalQueryCache.class))
                     .build();
             LOGGER.info("Created global repository query cache with a capacity of {} queries", capacity);
         }
@@ -74,6 +91,7 @@ public class GlobalQueryCache extends AbstractGlobalCache {
             cache.close();
             cache = null;
         }
+        index.clear();
     }
 
     public boolean isAvailable() {
@@ -102,15 +120,36 @@ public class GlobalQueryCache extends AbstractGlobalCache {
             if (cacheObject.size() > QUERY_RESULT_SIZE_LIMIT) {
                 throw new IllegalStateException("Trying to cache result list greater than " + QUERY_RESULT_SIZE_LIMIT + ": " + cacheObject.size());
             }
-            //noinspection unchecked
-            cache.put(key, new GlobalCacheQueryValue(cacheObject));
+            index.executeLocked(key.getType(), () -> {
+                index.add(key, cacheObject);
+                //noinspection unchecked
+                cache.put(key, new GlobalCacheQueryValue(cacheObject));
+            });
         }
     }
 
-    public void deleteMatching(Predicate<Map.Entry<QueryKey, GlobalCacheQueryValue>> predicate) {
-        if (cache != null) {
-            cache.asMap().entrySet().removeIf(predicate);
+    /**
+     * Deletes entries matching the predicate. Only entries that may be affected by a change of an object
+     * of given type and OID are evaluated, see {@link QueryKeyIndex#getCandidates(Class, String, ChangeDescription)}.
+     *
+     * @return Number of entries evaluated.
+     */
+    public int deleteMatching(@NotNull Class<? extends ObjectType> type, String oid, @NotNull ChangeDescription change,
+            Predicate<Map.Entry<QueryKey, GlobalCacheQueryValue>> predicate) {
+        if (cache == null) {
+            return 0;
+        }
+        int evaluated = 0;
+        for (QueryKey<?> key : index.getCandidates(type, oid, change)) {
+            GlobalCacheQueryValue value = cache.peek(key);
+            if (value != null) {
+                evaluated++;
+                if (predicate.test(new AbstractMap.SimpleImmutableEntry<>(key, value))) {
+                    cache.removeIfEquals(key, value);
+                }
+            }
         }
+        return evaluated;
     }
 
     @Override
@@ -126,6 +165,8 @@ public class GlobalQueryCache extends AbstractGlobalCache {
     public void clear() {
         if (cache != null) {
             cache.clear();
+            // Keys put into the cache concurrently must stay in the index, and listeners are not called on clear.
+            index.removeIf(key -> !cache.containsKey(key));
         }
     }
 
@@ -176,4 +217,39 @@ public class GlobalQueryCache extends AbstractGlobalCache {
             });
         }
     }
+
+    /**
+     * Removes keys of entries that are no longer in the cache from the index.
+     * Called asynchronously, so the key might have been put into the cache again in the meantime.
+     */
+    private class IndexCleaner implements CacheEntryRemovedListener<QueryKey, GlobalCacheQueryValue>,
+            CacheEntryEvictedListener<QueryKey, GlobalCacheQueryValue>,
+            CacheEntryExpiredListener<QueryKey, GlobalCacheQueryValue> {
+
+        @Override
+        public void onEntryRemoved(Cache<QueryKey, GlobalCacheQueryValue> cache,
+                CacheEntry<QueryKey, GlobalCacheQueryValue> entry) {
+            removeFromIndexIfNotCached(cache, entry.getKey());
+        }
+
+        @Override
+        public void onEntryEvicted(Cache<QueryKey, GlobalCacheQueryValue> cache,
+                CacheEntry<QueryKey, GlobalCacheQueryValue> entry) {
+            removeFromIndexIfNotCached(cache, entry.getKey());
+        }
+
+        @Override
+        public void onEntryExpired(Cache<QueryKey, GlobalCacheQueryValue> cache,
+                CacheEntry<QueryKey, GlobalCacheQueryValue> entry) {
+            removeFromIndexIfNotCached(cache, entry.getKey());
+        }
+
+        private void removeFromIndexIfNotCached(Cache<QueryKey, GlobalCacheQueryValue> cache, QueryKey<?> key) {
+            index.executeLocked(key.getType(), () -> {
+                if (!cache.isClosed() && !cache.containsKey(key)) {
+                    index.remove(key);
+                }
+            });
+        }
+    }
 }
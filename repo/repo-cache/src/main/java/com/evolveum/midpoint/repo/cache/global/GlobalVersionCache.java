@@ -52,6 +52,7 @@ public class GlobalVersionCache extends AbstractGlobalCache {
                     .name(CACHE_NAME)
                     .entryCapacity(capacity)
                     .expiryPolicy(getExpirePolicy())
+                    .addAsyncListener(new EvictionCounter<>(GlobalVersionCache.class))
                     .storeByReference(true) // this is default in the current version of cache2k; we need this because we update TTL value for cached objects
                     .build();
             LOGGER.info("Created global repository object version cache with a capacity of {} objects", capacity);
@@ -21,7 +21,7 @@ public class AddObjectResult<T extends ObjectType> {
 
     @NotNull private final PrismObject<T> object;
 
-    AddObjectResult(@NotNull PrismObject<T> object) {
+    public AddObjectResult(@NotNull PrismObject<T> object) {
         this.object = object;
     }
 
@@ -15,6 +15,9 @@ import static com.evolveum.midpoint.schema.SelectorOptions.findRootOptions;
 import static com.evolveum.midpoint.schema.util.TraceUtil.isAtLeastMinimal;
 
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Objects;
 
 import org.jetbrains.annotations.NotNull;
@@ -38,6 +41,7 @@ import com.evolveum.midpoint.xml.ns._public.common.common_3.TracingLevelType;
 public class GetObjectOpHandler extends CachedOpHandler {
 
     private static final String GET_OBJECT = CLASS_NAME_WITH_DOT + "getObject";
+    private static final String GET_OBJECTS = CLASS_NAME_WITH_DOT + "getObjects";
 
     @NotNull
     public <T extends ObjectType> PrismObject<T> getObject(Class<T> type, String oid,
@@ -121,6 +125,129 @@ public class GetObjectOpHandler extends CachedOpHandler {
         }
     }
 
+    /**
+     * Serves the objects from the local and global caches, and fetches the missing ones from the repository
+     * in a single call. Objects in the global cache that need their version to be checked are simply fetched
+     * along with the missing ones, as this is about as cheap as checking their versions one by one.
+     */
+    @NotNull
+    public <T extends ObjectType> Map<String, PrismObject<T>> getObjects(Class<T> type, Collection<String> oids,
+            Collection<SelectorOptions<GetOperationOptions>> options, OperationResult parentResult)
+            throws SchemaException {
+
+        OperationResult result = parentResult.subresult(GET_OBJECTS)
+                .addQualifier(type.getSimpleName())
+                .addParam("type", type)
+                .addParam("count", oids.size())
+                .addArbitraryObjectCollectionAsParam("options", options)
+                .build();
+
+        try {
+            CacheSetAccessInfo<T> caches = cacheSetAccessInfoFactory.determine(type);
+            PassReason passReason = PassReason.determine(options, type);
+
+            Map<String, PrismObject<T>> objects = new HashMap<>();
+            Map<String, GetObjectOpExecution<T>> toFetch = new LinkedHashMap<>();
+            for (String oid : oids) {
+                if (objects.containsKey(oid) || toFetch.containsKey(oid)) {
+                    continue;
+                }
+                GetObjectOpExecution<T> exec =
+                        new GetObjectOpExecution<>(type, oid, options, result, null, null, prismContext, caches);
+                if (passReason != null) {
+                    exec.reportLocalAndGlobalPass(passReason);
+                    toFetch.put(oid, exec);
+                    continue;
+                }
+                PrismObject<T> cachedObject = getFromCaches(exec);
+                if (cachedObject != null) {
+                    cachedObject.checkImmutable();
+                    objects.put(oid, exec.readOnly ? cachedObject : cachedObject.clone());
+                } else {
+                    toFetch.put(oid, exec);
+                }
+            }
+
+            if (!toFetch.isEmpty()) {
+                Map<String, PrismObject<T>> loaded = getObjectsInternal(type, toFetch.keySet(), options, result);
+                for (GetObjectOpExecution<T> exec : toFetch.values()) {
+                    PrismObject<T> object = loaded.get(exec.oid);
+                    if (object == null) {
+                        globalObjectCache.remove(exec.oid);
+                        globalVersionCache.remove(exec.oid);
+                    } else if (passReason != null) {
+                        objects.put(exec.oid, object);
+                    } else {
+                        objects.put(exec.oid, cacheLoadedObject(object, exec));
+                    }
+                }
+            }
+
+            Map<String, PrismObject<T>> ordered = new LinkedHashMap<>();
+            for (String oid : oids) {
+                PrismObject<T> object = objects.get(oid);
+                if (object != null) {
+                    ordered.put(oid, object);
+                }
+            }
+            result.addReturn("found", ordered.size());
+            return ordered;
+        } catch (Throwable t) {
+            result.recordFatalError(t);
+            throw t;
+        } finally {
+            result.computeStatusIfUnknown();
+        }
+    }
+
+    /** Returns immutable object from the local or global cache (if present there and usable without version check). */
+    private <T extends ObjectType> PrismObject<T> getFromCaches(GetObjectOpExecution<T> exec) {
+        if (!exec.local.available) {
+            exec.reportLocalNotAvailable();
+        } else if (!exec.local.supports) {
+            exec.reportLocalPass();
+        } else {
+            PrismObject<T> cachedObject = exec.local.cache.get(exec.oid);
+            if (cachedObject != null) {
+                exec.reportLocalHit();
+                return cachedObject;
+            } else {
+                exec.reportLocalMiss();
+            }
+        }
+
+        if (!exec.global.available) {
+            exec.reportGlobalNotAvailable();
+            return null;
+        } else if (!exec.global.supports) {
+            exec.reportGlobalPass();
+            return null;
+        }
+
+        GlobalCacheObjectValue<T> cachedValue = globalObjectCache.get(exec.oid);
+        if (cachedValue == null || cachedValue.shouldCheckVersion()) {
+            exec.reportGlobalMiss();
+            return null;
+        } else {
+            exec.reportGlobalHit();
+            PrismObject<T> cachedObject = cachedValue.getObject();
+            cacheUpdater.storeImmutableObjectToAllLocal(cachedObject, exec.caches);
+            return cachedObject;
+        }
+    }
+
+    @NotNull
+    private <T extends ObjectType> Map<String, PrismObject<T>> getObjectsInternal(Class<T> type, Collection<String> oids,
+            Collection<SelectorOptions<GetOperationOptions>> options, OperationResult parentResult)
+            throws SchemaException {
+        Long startTime = repoOpStart();
+        try {
+            return repositoryService.getObjects(type, oids, options, parentResult);
+        } finally {
+            repoOpEnd(startTime);
+        }
+    }
+
     private <T extends ObjectType> GetObjectOpExecution<T> initializeExecution(Class<T> type, String oid,
             Collection<SelectorOptions<GetOperationOptions>> options, OperationResult parentResult) {
         OperationResult result = parentResult.subresult(GET_OBJECT)
@@ -163,16 +290,7 @@ public class GetObjectOpHandler extends CachedOpHandler {
             throws SchemaException, ObjectNotFoundException {
         try {
             PrismObject<T> object = getObjectInternal(exec.type, exec.oid, exec.options, exec.result);
-            PrismObject<T> immutable = toImmutable(object);
-            cacheUpdater.storeImmutableObjectToObjectLocal(immutable, exec.caches);
-            cacheUpdater.storeImmutableObjectToObjectGlobal(immutable);
-            cacheUpdater.storeObjectToVersionGlobal(immutable, exec.caches.globalVersion);
-            cacheUpdater.storeObjectToVersionLocal(immutable, exec.caches.localVersion);
-            if (exec.readOnly) {
-                return immutable;
-            } else {
-                return object.cloneIfImmutable();
-            }
+            return cacheLoadedObject(object, exec);
         } catch (ObjectNotFoundException | SchemaException ex) {
             globalObjectCache.remove(exec.oid);
             globalVersionCache.remove(exec.oid);
@@ -180,6 +298,20 @@ public class GetObjectOpHandler extends CachedOpHandler {
         }
     }
 
+    // returns directly returnable object (frozen if readonly, mutable if not readonly)
+    private <T extends ObjectType> PrismObject<T> cacheLoadedObject(PrismObject<T> object, GetObjectOpExecution<T> exec) {
+        PrismObject<T> immutable = toImmutable(object);
+        cacheUpdater.storeImmutableObjectToObjectLocal(immutable, exec.caches);
+        cacheUpdater.storeImmutableObjectToObjectGlobal(immutable);
+        cacheUpdater.storeObjectToVersionGlobal(immutable, exec.caches.globalVersion);
+        cacheUpdater.storeObjectToVersionLocal(immutable, exec.caches.localVersion);
+        if (exec.readOnly) {
+            return immutable;
+        } else {
+            return object.cloneIfImmutable();
+        }
+    }
+
     private <T extends ObjectType> PrismObject<T> toImmutable(PrismObject<T> object) {
         if (object.isImmutable()) {
             return object;
@@ -9,6 +9,7 @@ package com.evolveum.midpoint.repo.cache.handlers;
 
 import com.evolveum.midpoint.prism.PrismObject;
 import com.evolveum.midpoint.prism.delta.ItemDelta;
+import com.evolveum.midpoint.prism.delta.ObjectDelta;
 import com.evolveum.midpoint.repo.api.*;
 import com.evolveum.midpoint.repo.cache.other.MonitoringUtil;
 import com.evolveum.midpoint.schema.DeltaConvertor;
@@ -22,9 +23,7 @@ import com.evolveum.midpoint.xml.ns._public.common.common_3.*;
 import org.jetbrains.annotations.NotNull;
 import org.springframework.stereotype.Component;
 
-import java.util.Collection;
-import java.util.Collections;
-import java.util.Random;
+import java.util.*;
 
 import static com.evolveum.midpoint.repo.cache.RepositoryCache.CLASS_NAME_WITH_DOT;
 import static com.evolveum.midpoint.schema.util.TraceUtil.isAtLeastMinimal;
@@ -39,9 +38,12 @@ public class ModificationOpHandler extends BaseOpHandler {
 
     private static final String ADD_OBJECT = CLASS_NAME_WITH_DOT + "addObject";
     private static final String MODIFY_OBJECT = CLASS_NAME_WITH_DOT + "modifyObject";
+    private static final String ADD_OBJECTS = CLASS_NAME_WITH_DOT + "addObjects";
+    private static final String MODIFY_OBJECTS = CLASS_NAME_WITH_DOT + "modifyObjects";
     private static final String DELETE_OBJECT = CLASS_NAME_WITH_DOT + "deleteObject";
     private static final String ADVANCE_SEQUENCE = CLASS_NAME_WITH_DOT + "advanceSequence";
     private static final String RETURN_UNUSED_VALUES_TO_SEQUENCE = CLASS_NAME_WITH_DOT + "returnUnusedValuesToSequence";
+    private static final String RESERVE_SEQUENCE_VALUES = CLASS_NAME_WITH_DOT + "reserveSequenceValues";
     private static final String ADD_DIAGNOSTIC_INFORMATION = CLASS_NAME_WITH_DOT + "addDiagnosticInformation";
 
     private Integer modifyRandomDelayRange;
@@ -148,6 +150,80 @@ public class ModificationOpHandler extends BaseOpHandler {
         }
     }
 
+    /**
+     * Adds the objects via repository bulk operation; local query results are invalidated once for each type
+     * instead of once for each object.
+     */
+    public @NotNull List<BulkOperationItemResult> addObjects(
+            @NotNull List<? extends PrismObject<? extends ObjectType>> objects, RepoAddOptions options,
+            OperationResult parentResult) {
+        OperationResult result = parentResult.subresult(ADD_OBJECTS)
+                .addParam("objects", objects.size())
+                .addParam("overwrite", RepoAddOptions.isOverwrite(options))
+                .addArbitraryObjectAsParam("options", options)
+                .build();
+        try {
+            List<BulkOperationItemResult> results = null;
+            Long startTime = MonitoringUtil.repoOpStart();
+            try {
+                results = repositoryService.addObjects(objects, options, result);
+                return results;
+            } finally {
+                MonitoringUtil.repoOpEnd(startTime);
+                // Note that if there is an exception, we do not know which objects were added, so we invalidate all of them.
+                Map<Class<? extends ObjectType>, List<String>> oidsByType = new HashMap<>();
+                for (int i = 0; i < objects.size(); i++) {
+                    PrismObject<? extends ObjectType> object = objects.get(i);
+                    String oid = results != null ? results.get(i).getOid() : object.getOid();
+                    if (oid != null && (results == null || results.get(i).isSuccess())) {
+                        oidsByType.computeIfAbsent(object.getCompileTimeClass(), k -> new ArrayList<>())
+                                .add(oid);
+                    }
+                }
+                oidsByType.forEach((type, oids) -> invalidator.invalidateCacheEntries(type, oids, result));
+            }
+        } catch (Throwable t) {
+            result.recordFatalError(t);
+            throw t;
+        } finally {
+            result.computeStatusIfUnknown();
+        }
+    }
+
+    /**
+     * Modifies the objects via repository bulk operation; local query results are invalidated once for each type
+     * instead of once for each object.
+     */
+    public @NotNull List<BulkOperationItemResult> modifyObjects(
+            @NotNull List<? extends ObjectDelta<? extends ObjectType>> deltas, RepoModifyOptions options,
+            OperationResult parentResult) {
+        OperationResult result = parentResult.subresult(MODIFY_OBJECTS)
+                .addParam("deltas", deltas.size())
+                .addArbitraryObjectAsParam("options", options)
+                .build();
+        try {
+            randomDelay();
+            Long startTime = MonitoringUtil.repoOpStart();
+            try {
+                return repositoryService.modifyObjects(deltas, options, result);
+            } finally {
+                MonitoringUtil.repoOpEnd(startTime);
+                // We invalidate also objects whose modification failed, just like modifyObject does.
+                Map<Class<? extends ObjectType>, List<String>> oidsByType = new HashMap<>();
+                for (ObjectDelta<? extends ObjectType> delta : deltas) {
+                    oidsByType.computeIfAbsent(delta.getObjectTypeClass(), k -> new ArrayList<>())
+                            .add(delta.getOid());
+                }
+                oidsByType.forEach((type, oids) -> invalidator.invalidateCacheEntries(type, oids, result));
+            }
+        } catch (Throwable t) {
+            result.recordFatalError(t);
+            throw t;
+        } finally {
+            result.computeStatusIfUnknown();
+        }
+    }
+
     @NotNull
     public <T extends ObjectType> DeleteObjectResult deleteObject(Class<T> type, String oid, OperationResult parentResult)
             throws ObjectNotFoundException {
@@ -203,6 +279,28 @@ public class ModificationOpHandler extends BaseOpHandler {
         }
     }
 
+    public @NotNull List<Long> reserveSequenceValues(String oid, Integer count, OperationResult parentResult)
+            throws ObjectNotFoundException, SchemaException {
+        OperationResult result = parentResult.subresult(RESERVE_SEQUENCE_VALUES)
+                .addParam("oid", oid)
+                .addParam("count", String.valueOf(count))
+                .build();
+        try {
+            Long startTime = MonitoringUtil.repoOpStart();
+            try {
+                return repositoryService.reserveSequenceValues(oid, count, result);
+            } finally {
+                MonitoringUtil.repoOpEnd(startTime);
+                invalidator.invalidateCacheEntries(SequenceType.class, oid, null, result);
+            }
+        } catch (Throwable t) {
+            result.recordFatalError(t);
+            throw t;
+        } finally {
+            result.computeStatusIfUnknown();
+        }
+    }
+
     public void returnUnusedValuesToSequence(String oid, Collection<Long> unusedValues, OperationResult parentResult)
             throws ObjectNotFoundException, SchemaException {
         OperationResult result = parentResult.subresult(RETURN_UNUSED_VALUES_TO_SEQUENCE)
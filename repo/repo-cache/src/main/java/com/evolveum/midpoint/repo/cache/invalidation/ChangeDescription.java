@@ -7,11 +7,17 @@
 
 package com.evolveum.midpoint.repo.cache.invalidation;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import com.evolveum.midpoint.CacheInvalidationContext;
 import com.evolveum.midpoint.prism.PrismObject;
+import com.evolveum.midpoint.prism.delta.ItemDelta;
+import com.evolveum.midpoint.prism.path.ItemPath;
 import com.evolveum.midpoint.prism.match.MatchingRuleRegistry;
 import com.evolveum.midpoint.prism.query.ObjectFilter;
 import com.evolveum.midpoint.prism.query.ObjectQuery;
@@ -69,6 +75,11 @@ public abstract class ChangeDescription {
             return filter.match(addInfo.getObject().getValue(), matchingRuleRegistry);
         }
 
+        @Override
+        public PrismObject<?> getAddedObject() {
+            return addInfo.getObject();
+        }
+
         @Override
         public String toString() {
             return "Add{" + addInfo + '}';
@@ -98,6 +109,18 @@ public abstract class ChangeDescription {
             }
         }
 
+        @Override
+        public Collection<ItemPath> getModifiedItems() {
+            if (modifyInfo.getObjectAfter() == null || modifyInfo.getModifications() == null) {
+                return null; // see above
+            }
+            List<ItemPath> paths = new ArrayList<>();
+            for (ItemDelta<?, ?> modification : modifyInfo.getModifications()) {
+                paths.add(modification.getPath());
+            }
+            return paths;
+        }
+
         @Override
         public String toString() {
             return "Modify{" +
@@ -122,6 +145,11 @@ public abstract class ChangeDescription {
             return false;
         }
 
+        @Override
+        public boolean mayAddToQueryResults() {
+            return false;
+        }
+
         @Override
         public String toString() {
             return "Delete{" +
@@ -145,6 +173,11 @@ public abstract class ChangeDescription {
             return safeInvalidation;
         }
 
+        @Override
+        public boolean mayAddToQueryResults() {
+            return safeInvalidation;
+        }
+
         @Override
         public String toString() {
             return "Any{" +
@@ -238,6 +271,27 @@ public abstract class ChangeDescription {
         }
     }
 
+    /**
+     * Returns false if {@link #mayMatchAfterChange(ObjectFilter, SearchResultList, MatchingRuleRegistry)} is always false
+     * for this change. Such a change can affect only queries that contain the object or that have no filter.
+     */
+    public boolean mayAddToQueryResults() {
+        return true;
+    }
+
+    /**
+     * Paths of the items modified by the change, null if not known (i.e. anything could be changed).
+     * Queries whose filter and ordering do not use any of these items cannot start or stop matching the object.
+     */
+    public @Nullable Collection<ItemPath> getModifiedItems() {
+        return null;
+    }
+
+    /** The object being added, if this is an ADD operation. */
+    public @Nullable PrismObject<?> getAddedObject() {
+        return null;
+    }
+
     public abstract boolean mayMatchAfterChange(@NotNull ObjectFilter filter, SearchResultList list, MatchingRuleRegistry matchingRuleRegistry)
             throws SchemaException;
 
@@ -250,7 +304,7 @@ public abstract class ChangeDescription {
     private static boolean listContainsOid(SearchResultList list, String oid) {
         for (Object o : list) {
             if (o instanceof PrismObject<?>) {
-                if (oid.equals(((PrismObject) o).getOid())) {
+                if (oid != null && oid.equals(((PrismObject) o).getOid())) {
                     return true;
                 }
             }
@@ -123,43 +123,86 @@ public class Invalidator {
         }
     }
 
+    /**
+     * Invalidates cache entries after a bulk operation on objects of given type.
+     * There is no detailed information about the changes, so the local query results of given type are evicted
+     * only once, without looking at the details. The invalidation is dispatched for each object separately,
+     * so other nodes remove only the affected objects from their caches (and not everything of given type);
+     * cluster-wide events are batched by the dispatcher anyway.
+     */
+    public <T extends ObjectType> void invalidateCacheEntries(
+            Class<T> type, Collection<String> oids, OperationResult parentResult) {
+        if (oids.isEmpty()) {
+            return;
+        } else if (oids.size() == 1) {
+            invalidateCacheEntries(type, oids.iterator().next(), null, parentResult);
+            return;
+        }
+        OperationResult result = parentResult.subresult(CLASS_NAME_WITH_DOT + "invalidateCacheEntriesForType")
+                .setMinor()
+                .addParam("type", type)
+                .addParam("objects", oids.size())
+                .build();
+        try {
+            LocalObjectCache localObjectCache = getLocalObjectCache();
+            LocalVersionCache localVersionCache = getLocalVersionCache();
+            for (String oid : oids) {
+                if (localObjectCache != null) {
+                    localObjectCache.remove(oid);
+                }
+                if (localVersionCache != null) {
+                    localVersionCache.remove(oid);
+                }
+            }
+            LocalQueryCache localQueryCache = getLocalQueryCache();
+            if (localQueryCache != null) {
+                clearQueryResultsLocally(localQueryCache, type, null, null, matchingRuleRegistry);
+            }
+            boolean clusterwide = TYPES_ALWAYS_INVALIDATED_CLUSTERWIDE.contains(type) ||
+                    globalObjectCache.hasClusterwideInvalidationFor(type) ||
+                    globalVersionCache.hasClusterwideInvalidationFor(type) ||
+                    globalQueryCache.hasClusterwideInvalidationFor(type);
+            for (String oid : oids) {
+                cacheDispatcher.dispatchInvalidation(type, oid, clusterwide,
+                        new CacheInvalidationContext(false, new RepositoryCacheInvalidationDetails(null)));
+            }
+        } catch (Throwable t) {
+            result.recordFatalError(t);
+            throw t;
+        } finally {
+            result.computeStatusIfUnknown();
+        }
+    }
+
     private <T extends ObjectType> void clearQueryResultsLocally(LocalQueryCache cache, Class<T> type, String oid,
             Object additionalInfo, MatchingRuleRegistry matchingRuleRegistry) {
-        // TODO implement more efficiently
-
         ChangeDescription change = ChangeDescription.getFrom(type, oid, additionalInfo, true);
 
         long start = System.currentTimeMillis();
-        int all = 0;
-        int removed = 0;
-        Iterator<Map.Entry<QueryKey, SearchResultList>> iterator = cache.getEntryIterator();
-        while (iterator.hasNext()) {
-            Map.Entry<QueryKey, SearchResultList> entry = iterator.next();
-            QueryKey<?> queryKey = entry.getKey();
-            all++;
-            if (change.mayAffect(queryKey, entry.getValue(), matchingRuleRegistry)) {
+        AtomicInteger removed = new AtomicInteger(0);
+        int evaluated = cache.deleteMatching(type, oid, change, (queryKey, list) -> {
+            if (change.mayAffect(queryKey, list, matchingRuleRegistry)) {
                 LOGGER.trace("Removing (from local cache) query for type={}, change={}: {}", type, change, queryKey.getQuery());
-                iterator.remove();
-                removed++;
+                removed.incrementAndGet();
+                return true;
+            } else {
+                return false;
             }
-        }
-        LOGGER.trace("Removed (from local cache) {} (of {}) query result entries of type {} in {} ms", removed, all, type, System.currentTimeMillis() - start);
+        });
+        LOGGER.trace("Removed (from local cache) {} (of {} evaluated) query result entries of type {} in {} ms",
+                removed, evaluated, type, System.currentTimeMillis() - start);
     }
 
     private <T extends ObjectType> void clearQueryResultsGlobally(Class<T> type, String oid, CacheInvalidationContext context) {
-        // TODO implement more efficiently
-
         // Safe invalidation means we evict queries without looking at details of the change.
         boolean safeIfUnknown = !context.isFromRemoteNode() || globalQueryCache.shouldDoSafeRemoteInvalidationFor(type);
         ChangeDescription change = ChangeDescription.getFrom(type, oid, context, safeIfUnknown);
 
         long start = System.currentTimeMillis();
-        AtomicInteger all = new AtomicInteger(0);
         AtomicInteger removed = new AtomicInteger(0);
 
-        globalQueryCache.deleteMatching(entry -> {
+        int evaluated = globalQueryCache.deleteMatching(type, oid, change, entry -> {
             QueryKey queryKey = entry.getKey();
-            all.incrementAndGet();
             if (change.mayAffect(queryKey, entry.getValue().getResult(), matchingRuleRegistry)) {
                 LOGGER.trace("Removing (from global cache) query for type={}, change={}: {}", type, change, queryKey.getQuery());
                 removed.incrementAndGet();
@@ -168,7 +211,8 @@ public class Invalidator {
                 return false;
             }
         });
-        LOGGER.trace("Removed (from global cache) {} (of {}) query result entries of type {} in {} ms", removed, all, type, System.currentTimeMillis() - start);
+        LOGGER.trace("Removed (from global cache) {} (of {} evaluated) query result entries of type {} in {} ms",
+                removed, evaluated, type, System.currentTimeMillis() - start);
     }
 
     public void registerInvalidationEventsListener(InvalidationEventListener listener) {
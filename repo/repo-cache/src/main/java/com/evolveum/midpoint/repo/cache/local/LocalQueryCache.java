@@ -9,13 +9,14 @@ package com.evolveum.midpoint.repo.cache.local;
 
 import static com.evolveum.midpoint.repo.cache.handlers.SearchOpHandler.QUERY_RESULT_SIZE_LIMIT;
 
-import java.util.Iterator;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiPredicate;
 
 import org.jetbrains.annotations.NotNull;
 
 import com.evolveum.midpoint.prism.PrismObject;
+import com.evolveum.midpoint.repo.cache.invalidation.ChangeDescription;
 import com.evolveum.midpoint.schema.SearchResultList;
 import com.evolveum.midpoint.util.caching.AbstractThreadLocalCache;
 import com.evolveum.midpoint.util.logging.Trace;
@@ -31,6 +32,9 @@ public class LocalQueryCache extends AbstractThreadLocalCache {
 
     private final Map<QueryKey, SearchResultList> data = new ConcurrentHashMap<>();
 
+    /** Index of cached query keys, used to avoid scanning the whole cache on each invalidation. */
+    private final QueryKeyIndex index = new QueryKeyIndex();
+
     public <T extends ObjectType> SearchResultList<PrismObject<T>> get(QueryKey key) {
         //noinspection unchecked
         return data.get(key);
@@ -41,11 +45,13 @@ public class LocalQueryCache extends AbstractThreadLocalCache {
         if (list.size() > QUERY_RESULT_SIZE_LIMIT) {
             throw new IllegalStateException("Trying to cache result list greater than " + QUERY_RESULT_SIZE_LIMIT + ": " + list.size());
         }
+        index.add(key, list);
         data.put(key, list);
     }
 
     public void remove(QueryKey key) {
         data.remove(key);
+        index.remove(key);
     }
 
     @Override
@@ -82,7 +88,26 @@ public class LocalQueryCache extends AbstractThreadLocalCache {
         return rv;
     }
 
-    public Iterator<Map.Entry<QueryKey, SearchResultList>> getEntryIterator() {
-        return data.entrySet().iterator();
+    /**
+     * Deletes entries matching the predicate. Only entries that may be affected by a change of an object
+     * of given type and OID are evaluated, see {@link QueryKeyIndex#getCandidates(Class, String, ChangeDescription)}.
+     *
+     * @return Number of entries evaluated.
+     */
+    public int deleteMatching(@NotNull Class<? extends ObjectType> type, String oid, @NotNull ChangeDescription change,
+            BiPredicate<QueryKey<?>, SearchResultList> predicate) {
+        int evaluated = 0;
+        for (QueryKey<?> key : index.getCandidates(type, oid, change)) {
+            SearchResultList list = data.get(key);
+            if (list != null) {
+                evaluated++;
+                if (predicate.test(key, list)) {
+                    remove(key);
+                }
+            } else {
+                index.remove(key);
+            }
+        }
+        return evaluated;
     }
 }
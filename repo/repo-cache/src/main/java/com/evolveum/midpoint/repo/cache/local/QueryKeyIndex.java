@@ -0,0 +1,495 @@
+/*
+ * Copyright (C) 2010-2022 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+
+package com.evolveum.midpoint.repo.cache.local;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+import javax.xml.namespace.QName;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import com.evolveum.midpoint.prism.*;
+import com.evolveum.midpoint.prism.path.ItemName;
+import com.evolveum.midpoint.prism.path.ItemPath;
+import com.evolveum.midpoint.prism.polystring.PolyString;
+import com.evolveum.midpoint.prism.query.*;
+import com.evolveum.midpoint.repo.cache.invalidation.ChangeDescription;
+import com.evolveum.midpoint.schema.SearchResultList;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.ObjectType;
+
+/**
+ * Secondary index for query caches, used to find queries that may be affected by a change of an object
+ * without going through all the cached queries.
+ *
+ * Keys are indexed by their object type and then:
+ *
+ * - by OIDs of objects in their (cached) result,
+ * - by items used in their filter and ordering (top-level item names only): a modification of other items
+ * cannot make an object start or stop matching the query,
+ * - by values of an equality condition on a single top-level item that must hold for any matching object
+ * (e.g. `name = 'xyz'`): an added object can match only queries with its values.
+ *
+ * Keys whose filter cannot be analyzed are treated as depending on anything.
+ *
+ * The index may contain keys that are no longer in the cache (it is an over-approximation),
+ * but each key present in the cache must be in the index. Callers are responsible for keeping this invariant,
+ * i.e. to add a key here before putting it into the cache. Compound operations can be executed
+ * under the lock of the respective type using {@link #executeLocked(Class, Runnable)}.
+ *
+ * Each type has its own lock, so changes of queries of different types do not block each other.
+ */
+public class QueryKeyIndex {
+
+    private final Map<Class<?>, TypeIndex> typeIndexes = new ConcurrentHashMap<>();
+
+    public void add(@NotNull QueryKey<?> key, @NotNull SearchResultList<?> list) {
+        TypeIndex typeIndex = getTypeIndex(key.getType());
+        IndexedKey indexedKey = new IndexedKey(key, list);
+        synchronized (typeIndex) {
+            typeIndex.remove(key);
+            typeIndex.add(indexedKey);
+        }
+    }
+
+    public void remove(@NotNull QueryKey<?> key) {
+        TypeIndex typeIndex = typeIndexes.get(key.getType());
+        if (typeIndex != null) {
+            synchronized (typeIndex) {
+                typeIndex.remove(key);
+            }
+        }
+    }
+
+    /** Removes keys matching the predicate, e.g. keys no longer present in the cache. */
+    public void removeIf(@NotNull Predicate<QueryKey<?>> predicate) {
+        for (TypeIndex typeIndex : typeIndexes.values()) {
+            synchronized (typeIndex) {
+                for (QueryKey<?> key : new ArrayList<>(typeIndex.entries.keySet())) {
+                    if (predicate.test(key)) {
+                        typeIndex.remove(key);
+                    }
+                }
+            }
+        }
+    }
+
+    /** Executes the action while holding the lock for keys of given type. */
+    public void executeLocked(@NotNull Class<?> type, @NotNull Runnable action) {
+        //noinspection SynchronizationOnLocalVariableOrMethodParameter
+        synchronized (getTypeIndex(type)) {
+            action.run();
+        }
+    }
+
+    public void clear() {
+        for (TypeIndex typeIndex : typeIndexes.values()) {
+            synchronized (typeIndex) {
+                typeIndex.clear();
+            }
+        }
+    }
+
+    public int size() {
+        int size = 0;
+        for (TypeIndex typeIndex : typeIndexes.values()) {
+            synchronized (typeIndex) {
+                size += typeIndex.entries.size();
+            }
+        }
+        return size;
+    }
+
+    private @NotNull TypeIndex getTypeIndex(@NotNull Class<?> type) {
+        // Type indexes are never removed, there is only a limited number of object types.
+        return typeIndexes.computeIfAbsent(type, k -> new TypeIndex());
+    }
+
+    /**
+     * Returns keys of queries that may be affected by a change of an object of given type and OID.
+     * The result is a superset of queries for which {@link ChangeDescription} can say that they are affected.
+     *
+     * - For a change that cannot add the object to query results (e.g. delete), only queries containing the object
+     * and queries without a filter are returned.
+     * - For a modification with known modified items, queries using any of these items in their filter or ordering
+     * are returned as well.
+     * - For an addition, queries that may match the object according to the values of their equality condition
+     * are returned as well.
+     * - Otherwise all queries of the given type (or its supertypes) are returned.
+     */
+    public @NotNull Collection<QueryKey<?>> getCandidates(@NotNull Class<?> type, String oid,
+            @NotNull ChangeDescription change) {
+        Set<QueryKey<?>> candidates = new HashSet<>();
+        for (Map.Entry<Class<?>, TypeIndex> entry : typeIndexes.entrySet()) {
+            if (entry.getKey().isAssignableFrom(type)) {
+                TypeIndex typeIndex = entry.getValue();
+                synchronized (typeIndex) {
+                    typeIndex.collectCandidates(oid, change, candidates);
+                }
+            }
+        }
+        return candidates;
+    }
+
+    /** Part of the index for queries of a single type. Guarded by itself. */
+    private static class TypeIndex {
+
+        private final Map<QueryKey<?>, IndexedKey> entries = new HashMap<>();
+
+        private final Map<String, Set<QueryKey<?>>> keysByOid = new HashMap<>();
+        private final Set<QueryKey<?>> keysWithoutFilter = new HashSet<>();
+
+        /** By local names of top-level items used in the filter or ordering. */
+        private final Map<String, Set<QueryKey<?>>> keysByItem = new HashMap<>();
+        private final Set<QueryKey<?>> keysWithUnknownItems = new HashSet<>();
+
+        /** By the equality condition item and the value (normalized according to the matching rule). */
+        private final Map<EqualityItem, Map<String, Set<QueryKey<?>>>> keysByEqualityValue = new HashMap<>();
+        private final Set<QueryKey<?>> keysWithoutEquality = new HashSet<>();
+
+        private void add(IndexedKey indexedKey) {
+            QueryKey<?> key = indexedKey.key;
+            entries.put(key, indexedKey);
+            indexedKey.oids.forEach(oid -> addTo(keysByOid, oid, key));
+            if (!indexedKey.hasFilter) {
+                keysWithoutFilter.add(key);
+            }
+            if (indexedKey.items != null) {
+                indexedKey.items.forEach(item -> addTo(keysByItem, item, key));
+            } else {
+                keysWithUnknownItems.add(key);
+            }
+            if (indexedKey.equalityItem != null) {
+                Map<String, Set<QueryKey<?>>> byValue =
+                        keysByEqualityValue.computeIfAbsent(indexedKey.equalityItem, k -> new HashMap<>());
+                indexedKey.equalityValues.forEach(value -> addTo(byValue, value, key));
+            } else {
+                keysWithoutEquality.add(key);
+            }
+        }
+
+        private void remove(QueryKey<?> key) {
+            IndexedKey indexedKey = entries.remove(key);
+            if (indexedKey == null) {
+                return;
+            }
+            indexedKey.oids.forEach(oid -> removeFrom(keysByOid, oid, key));
+            keysWithoutFilter.remove(key);
+            if (indexedKey.items != null) {
+                indexedKey.items.forEach(item -> removeFrom(keysByItem, item, key));
+            } else {
+                keysWithUnknownItems.remove(key);
+            }
+            if (indexedKey.equalityItem != null) {
+                Map<String, Set<QueryKey<?>>> byValue = keysByEqualityValue.get(indexedKey.equalityItem);
+                if (byValue != null) {
+                    indexedKey.equalityValues.forEach(value -> removeFrom(byValue, value, key));
+                    if (byValue.isEmpty()) {
+                        keysByEqualityValue.remove(indexedKey.equalityItem);
+                    }
+                }
+            } else {
+                keysWithoutEquality.remove(key);
+            }
+        }
+
+        private void clear() {
+            entries.clear();
+            keysByOid.clear();
+            keysWithoutFilter.clear();
+            keysByItem.clear();
+            keysWithUnknownItems.clear();
+            keysByEqualityValue.clear();
+            keysWithoutEquality.clear();
+        }
+
+        private void collectCandidates(String oid, ChangeDescription change, Set<QueryKey<?>> candidates) {
+            if (oid == null) {
+                candidates.addAll(entries.keySet());
+                return;
+            }
+            if (!change.mayAddToQueryResults()) {
+                candidates.addAll(keysByOid.getOrDefault(oid, Set.of()));
+                candidates.addAll(keysWithoutFilter);
+                return;
+            }
+
+            Collection<ItemPath> modifiedItems = change.getModifiedItems();
+            PrismObject<?> addedObject = change.getAddedObject();
+            if (modifiedItems != null) {
+                for (ItemPath modifiedItem : modifiedItems) {
+                    ItemName name = modifiedItem.firstName();
+                    if (name == null) {
+                        candidates.addAll(entries.keySet());
+                        return;
+                    }
+                    candidates.addAll(keysByItem.getOrDefault(name.getLocalPart(), Set.of()));
+                }
+                candidates.addAll(keysWithUnknownItems);
+            } else if (addedObject != null) {
+                keysByEqualityValue.forEach((equalityItem, byValue) -> {
+                    Collection<String> values = equalityItem.getValues(addedObject);
+                    if (values != null) {
+                        for (String value : values) {
+                            candidates.addAll(byValue.getOrDefault(value, Set.of()));
+                        }
+                    } else {
+                        byValue.values().forEach(candidates::addAll);
+                    }
+                });
+                candidates.addAll(keysWithoutEquality);
+            } else {
+                candidates.addAll(entries.keySet());
+                return;
+            }
+            candidates.addAll(keysByOid.getOrDefault(oid, Set.of()));
+            candidates.addAll(keysWithoutFilter);
+        }
+
+        private static <K> void addTo(Map<K, Set<QueryKey<?>>> map, K indexValue, QueryKey<?> key) {
+            map.computeIfAbsent(indexValue, k -> new HashSet<>())
+                    .add(key);
+        }
+
+        private static <K> void removeFrom(Map<K, Set<QueryKey<?>>> map, K indexValue, QueryKey<?> key) {
+            Set<QueryKey<?>> keys = map.get(indexValue);
+            if (keys != null) {
+                keys.remove(key);
+                if (keys.isEmpty()) {
+                    map.remove(indexValue);
+                }
+            }
+        }
+    }
+
+    /** Information about the key needed for indexing, computed once when the key is added. */
+    private static class IndexedKey {
+
+        @NotNull private final QueryKey<?> key;
+        @NotNull private final Set<String> oids = new HashSet<>();
+        private final boolean hasFilter;
+
+        /** Local names of top-level items used in the filter and ordering, null if they cannot be determined. */
+        @Nullable private final Set<String> items;
+
+        /** Item of the equality condition that must hold for all matching objects (if there is one). */
+        @Nullable private EqualityItem equalityItem;
+        @NotNull private Set<String> equalityValues = Set.of();
+
+        private IndexedKey(@NotNull QueryKey<?> key, @NotNull SearchResultList<?> list) {
+            this.key = key;
+            for (Object o : list) {
+                if (o instanceof PrismObject<?>) {
+                    String oid = ((PrismObject<?>) o).getOid();
+                    if (oid != null) {
+                        oids.add(oid);
+                    }
+                }
+            }
+            ObjectQuery query = key.getQuery();
+            ObjectFilter filter = query != null ? query.getFilter() : null;
+            hasFilter = filter != null;
+            items = determineItems(query);
+            if (filter != null) {
+                determineEquality(filter);
+            }
+        }
+
+        private static Set<String> determineItems(ObjectQuery query) {
+            if (query == null) {
+                return Set.of();
+            }
+            Set<String> items = new HashSet<>();
+            if (!collectItems(query.getFilter(), items)) {
+                return null;
+            }
+            ObjectPaging paging = query.getPaging();
+            if (paging != null && paging.getOrderingInstructions() != null) {
+                for (ObjectOrdering ordering : paging.getOrderingInstructions()) {
+                    if (!addFirstName(ordering.getOrderBy(), items)) {
+                        return null;
+                    }
+                }
+            }
+            return items;
+        }
+
+        /** Returns false if the items used by the filter cannot be determined. */
+        private static boolean collectItems(ObjectFilter filter, Set<String> items) {
+            if (filter == null || filter instanceof AllFilter || filter instanceof NoneFilter
+                    || filter instanceof UndefinedFilter || filter instanceof InOidFilter) {
+                return true; // OID of an object does not change
+            } else if (filter instanceof LogicalFilter) {
+                for (ObjectFilter condition : ((LogicalFilter) filter).getConditions()) {
+                    if (!collectItems(condition, items)) {
+                        return false;
+                    }
+                }
+                return true;
+            } else if (filter instanceof TypeFilter) {
+                return collectItems(((TypeFilter) filter).getFilter(), items);
+            } else if (filter instanceof ExistsFilter) {
+                // Inner filter is relative to this path, so it uses only items under its first segment.
+                return addFirstName(((ExistsFilter) filter).getFullPath(), items);
+            } else if (filter instanceof OrgFilter) {
+                items.add(ObjectType.F_PARENT_ORG_REF.getLocalPart());
+                return true;
+            } else if (filter instanceof ValueFilter) {
+                ValueFilter<?, ?> valueFilter = (ValueFilter<?, ?>) filter;
+                return addFirstName(valueFilter.getFullPath(), items)
+                        && (valueFilter.getRightHandSidePath() == null
+                        || addFirstName(valueFilter.getRightHandSidePath(), items));
+            } else {
+                return false; // e.g. full text filter
+            }
+        }
+
+        private static boolean addFirstName(ItemPath path, Set<String> items) {
+            ItemName name = path != null ? path.firstName() : null;
+            if (name == null) {
+                return false;
+            }
+            items.add(name.getLocalPart());
+            return true;
+        }
+
+        /** Finds equality condition of the filter itself or of one of its top-level conjuncts. */
+        private void determineEquality(ObjectFilter filter) {
+            if (filter instanceof AndFilter) {
+                for (ObjectFilter condition : ((AndFilter) filter).getConditions()) {
+                    if (setEqualityIfApplicable(condition)) {
+                        return;
+                    }
+                }
+            } else {
+                setEqualityIfApplicable(filter);
+            }
+        }
+
+        private boolean setEqualityIfApplicable(ObjectFilter filter) {
+            if (!(filter instanceof EqualFilter)) {
+                return false;
+            }
+            EqualFilter<?> equalFilter = (EqualFilter<?>) filter;
+            ItemPath path = equalFilter.getFullPath();
+            if (!path.isSingleName() || equalFilter.getRightHandSidePath() != null
+                    || equalFilter.getExpression() != null
+                    || equalFilter.getValues() == null || equalFilter.getValues().isEmpty()) {
+                return false;
+            }
+            EqualityItem item = EqualityItem.create(path.asSingleName(), equalFilter.getMatchingRule());
+            if (item == null) {
+                return false;
+            }
+            Set<String> values = new HashSet<>();
+            for (PrismPropertyValue<?> value : equalFilter.getValues()) {
+                String normalized = item.normalize(value.getRealValue());
+                if (normalized == null) {
+                    return false;
+                }
+                values.add(normalized);
+            }
+            equalityItem = item;
+            equalityValues = values;
+            return true;
+        }
+    }
+
+    /**
+     * Top-level item compared by an equality condition with the respective normalization of its values:
+     * two values can be equal according to the matching rule only if their normalized forms are equal.
+     */
+    private static class EqualityItem {
+
+        private static final String DEFAULT = "default";
+        private static final String NORM = "norm";
+
+        @NotNull private final ItemName name;
+        @NotNull private final String normalization;
+
+        private EqualityItem(@NotNull ItemName name, @NotNull String normalization) {
+            this.name = name;
+            this.normalization = normalization;
+        }
+
+        /** Returns null for matching rules we do not index. */
+        private static EqualityItem create(ItemName name, QName matchingRule) {
+            String rule = matchingRule != null ? matchingRule.getLocalPart() : null;
+            if (rule == null
+                    || PrismConstants.DEFAULT_MATCHING_RULE_NAME.getLocalPart().equals(rule)
+                    || PrismConstants.POLY_STRING_STRICT_MATCHING_RULE_NAME.getLocalPart().equals(rule)
+                    || PrismConstants.POLY_STRING_ORIG_MATCHING_RULE_NAME.getLocalPart().equals(rule)) {
+                return new EqualityItem(name, DEFAULT);
+            } else if (PrismConstants.POLY_STRING_NORM_MATCHING_RULE_NAME.getLocalPart().equals(rule)) {
+                return new EqualityItem(name, NORM);
+            } else {
+                return null;
+            }
+        }
+
+        /** Returns null if the value cannot be normalized, i.e. the query cannot be indexed by it. */
+        private String normalize(Object realValue) {
+            if (NORM.equals(normalization)) {
+                if (realValue instanceof PolyString) {
+                    PolyString polyString = (PolyString) realValue;
+                    return polyString.getNorm() != null ? polyString.getNorm() : normalize(polyString.getOrig());
+                } else if (realValue instanceof String) {
+                    return PrismContext.get().getDefaultPolyStringNormalizer().normalize((String) realValue);
+                } else {
+                    return null;
+                }
+            } else if (realValue instanceof PolyString) {
+                return ((PolyString) realValue).getOrig();
+            } else if (realValue instanceof String) {
+                return (String) realValue;
+            } else if (realValue instanceof Enum<?>) {
+                return ((Enum<?>) realValue).name();
+            } else if (realValue instanceof Boolean) {
+                return realValue.toString();
+            } else {
+                return null;
+            }
+        }
+
+        /** Returns null if some of the values cannot be normalized, so any value can match. */
+        private Collection<String> getValues(PrismObject<?> object) {
+            Item<?, ?> item = object.findItem(name);
+            if (item == null) {
+                return List.of();
+            }
+            List<String> values = new ArrayList<>();
+            for (PrismValue value : item.getValues()) {
+                String normalized = normalize(value.getRealValue());
+                if (normalized == null) {
+                    return null;
+                }
+                values.add(normalized);
+            }
+            return values;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            EqualityItem that = (EqualityItem) o;
+            return name.getLocalPart().equals(that.name.getLocalPart())
+                    && normalization.equals(that.normalization);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(name.getLocalPart(), normalization);
+        }
+    }
+}
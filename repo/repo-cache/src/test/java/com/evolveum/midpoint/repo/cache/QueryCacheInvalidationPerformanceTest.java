@@ -0,0 +1,204 @@
+/*
+ * Copyright (C) 2010-2022 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+package com.evolveum.midpoint.repo.cache;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import static com.evolveum.midpoint.prism.util.PrismTestUtil.getPrismContext;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import javax.annotation.PostConstruct;
+
+import org.apache.commons.lang3.RandomStringUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.ContextConfiguration;
+import org.testng.annotations.BeforeSuite;
+import org.testng.annotations.Test;
+import org.xml.sax.SAXException;
+
+import com.evolveum.midpoint.prism.delta.ItemDelta;
+import com.evolveum.midpoint.prism.path.ItemName;
+import com.evolveum.midpoint.prism.polystring.PolyString;
+import com.evolveum.midpoint.prism.query.ObjectQuery;
+import com.evolveum.midpoint.prism.util.PrismTestUtil;
+import com.evolveum.midpoint.repo.api.DeleteObjectResult;
+import com.evolveum.midpoint.repo.api.ModifyObjectResult;
+import com.evolveum.midpoint.repo.cache.global.GlobalObjectCache;
+import com.evolveum.midpoint.repo.cache.global.GlobalQueryCache;
+import com.evolveum.midpoint.repo.cache.global.GlobalVersionCache;
+import com.evolveum.midpoint.repo.cache.handlers.AddObjectResult;
+import com.evolveum.midpoint.repo.cache.invalidation.ChangeDescription;
+import com.evolveum.midpoint.schema.MidPointPrismContextFactory;
+import com.evolveum.midpoint.schema.constants.MidPointConstants;
+import com.evolveum.midpoint.schema.result.OperationResult;
+import com.evolveum.midpoint.test.util.AbstractSpringTest;
+import com.evolveum.midpoint.test.util.InfraTestMixin;
+import com.evolveum.midpoint.util.PrettyPrinter;
+import com.evolveum.midpoint.util.exception.ObjectAlreadyExistsException;
+import com.evolveum.midpoint.util.exception.ObjectNotFoundException;
+import com.evolveum.midpoint.util.exception.SchemaException;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.ArchetypeType;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.ServiceType;
+
+/**
+ * Checks that the cost of query cache invalidation does not grow with the number of cached queries
+ * that cannot be affected by the change: modifications of objects of other type, modifications of items
+ * not used by the cached queries, additions of objects not matching them, and deletions of objects
+ * that are not in any cached result.
+ *
+ * The number of evaluated cache entries is asserted, as it does not depend on the machine; durations are only displayed.
+ *
+ * Currently not a part of automated test suite.
+ */
+@ContextConfiguration(locations = { "classpath:ctx-repo-cache-test.xml" })
+public class QueryCacheInvalidationPerformanceTest extends AbstractSpringTest implements InfraTestMixin {
+
+    private static final String CLASS_DOT = QueryCacheInvalidationPerformanceTest.class.getName() + ".";
+
+    private static final int[] CACHED_SEARCHES = { 1000, 10000, 40000 };
+    private static final int ITERATIONS = 200;
+    private static final String NOT_CACHED_OID = "2cd4cc48-5a4a-4bdb-8f8c-5f8c2d7ec5d1";
+
+    @Autowired RepositoryCache repositoryCache;
+    @Autowired GlobalQueryCache globalQueryCache;
+    @Autowired GlobalObjectCache globalObjectCache;
+    @Autowired GlobalVersionCache globalVersionCache;
+
+    @BeforeSuite
+    public void setup() throws SchemaException, SAXException, IOException {
+        PrettyPrinter.setDefaultNamespacePrefix(MidPointConstants.NS_MIDPOINT_PUBLIC_PREFIX);
+        PrismTestUtil.resetPrismContext(MidPointPrismContextFactory.FACTORY);
+    }
+
+    @PostConstruct
+    public void initialize() throws SchemaException, ObjectAlreadyExistsException {
+        displayTestTitle("Initializing TEST CLASS: " + getClass().getName());
+        OperationResult initResult = new OperationResult(CLASS_DOT + "setup");
+        repositoryCache.postInit(initResult);
+    }
+
+    @Test
+    public void test100InvalidationCostVersusCacheSize()
+            throws SchemaException, ObjectNotFoundException, ObjectAlreadyExistsException {
+        given();
+        OperationResult result = createOperationResult();
+
+        ServiceType service = new ServiceType(getPrismContext())
+                .name("service-" + RandomStringUtils.randomAlphabetic(10));
+        repositoryCache.addObject(service.asPrismObject(), null, result);
+
+        for (int cachedSearches : CACHED_SEARCHES) {
+            List<String> archetypeOids = addArchetypes(result);
+            clearCaches();
+            fillQueryCache(cachedSearches, result);
+            int cachedQueries = globalQueryCache.size();
+            displayValue("cached queries", String.valueOf(cachedQueries));
+
+            when("modifying object of other type, " + cachedSearches + " cached searches");
+            long start = System.nanoTime();
+            for (int i = 0; i < ITERATIONS; i++) {
+                List<ItemDelta<?, ?>> itemDeltas = getPrismContext().deltaFor(ServiceType.class)
+                        .item(ServiceType.F_DESCRIPTION)
+                        .replace(RandomStringUtils.randomAlphabetic(10))
+                        .asItemDeltas();
+                repositoryCache.modifyObject(ServiceType.class, service.getOid(), itemDeltas, result);
+            }
+            displayAverage("Modification of other type, " + cachedSearches + " cached searches", start);
+
+            when("modifying items not used by cached searches, " + cachedSearches + " cached searches");
+            start = System.nanoTime();
+            for (String oid : archetypeOids) {
+                List<ItemDelta<?, ?>> itemDeltas = getPrismContext().deltaFor(ArchetypeType.class)
+                        .item(ArchetypeType.F_DESCRIPTION)
+                        .replace(RandomStringUtils.randomAlphabetic(10))
+                        .asItemDeltas();
+                repositoryCache.modifyObject(ArchetypeType.class, oid, itemDeltas, result);
+            }
+            displayAverage("Modification of the same type, " + cachedSearches + " cached searches", start);
+
+            when("adding objects not matching cached searches, " + cachedSearches + " cached searches");
+            start = System.nanoTime();
+            archetypeOids.addAll(addArchetypes(result));
+            displayAverage("Addition of the same type, " + cachedSearches + " cached searches", start);
+
+            when("deleting objects not in cached results, " + cachedSearches + " cached searches");
+            start = System.nanoTime();
+            for (String oid : archetypeOids) {
+                repositoryCache.deleteObject(ArchetypeType.class, oid, result);
+            }
+            displayAverage("Deletion of the same type, " + cachedSearches + " cached searches", start);
+
+            then("no cached query was invalidated");
+            assertThat(globalQueryCache.size()).as("cached queries after invalidations").isEqualTo(cachedQueries);
+
+            and("the number of entries evaluated does not depend on the number of cached queries");
+            assertEvaluated(modifyChange("name-1", ArchetypeType.F_DESCRIPTION), 0);
+            assertEvaluated(modifyChange("name-1", ArchetypeType.F_NAME), cachedQueries);
+            assertEvaluated(addChange("other-name"), 0);
+            assertEvaluated(addChange("name-1"), 1);
+            assertEvaluated(ChangeDescription.getFrom(
+                    ArchetypeType.class, NOT_CACHED_OID, new DeleteObjectResult("dummy"), true), 0);
+        }
+    }
+
+    private void assertEvaluated(ChangeDescription change, int expected) {
+        int evaluated = globalQueryCache.deleteMatching(ArchetypeType.class, NOT_CACHED_OID, change, entry -> false);
+        assertThat(evaluated).as("entries evaluated for " + change).isEqualTo(expected);
+    }
+
+    private ChangeDescription addChange(String name) {
+        ArchetypeType archetype = new ArchetypeType(getPrismContext())
+                .oid(NOT_CACHED_OID)
+                .name(name);
+        return ChangeDescription.getFrom(
+                ArchetypeType.class, NOT_CACHED_OID, new AddObjectResult<>(archetype.asPrismObject()), true);
+    }
+
+    private ChangeDescription modifyChange(String name, ItemName modifiedItem) throws SchemaException {
+        ArchetypeType archetype = new ArchetypeType(getPrismContext())
+                .oid(NOT_CACHED_OID)
+                .name(name);
+        List<ItemDelta<?, ?>> itemDeltas = getPrismContext().deltaFor(ArchetypeType.class)
+                .item(modifiedItem)
+                .replace()
+                .asItemDeltas();
+        return ChangeDescription.getFrom(ArchetypeType.class, NOT_CACHED_OID,
+                new ModifyObjectResult<>(archetype.asPrismObject(), archetype.asPrismObject(), itemDeltas), true);
+    }
+
+    private List<String> addArchetypes(OperationResult result) throws SchemaException, ObjectAlreadyExistsException {
+        List<String> oids = new ArrayList<>();
+        for (int i = 0; i < ITERATIONS; i++) {
+            ArchetypeType archetype = new ArchetypeType(getPrismContext())
+                    .name("other-" + RandomStringUtils.randomAlphabetic(10));
+            oids.add(repositoryCache.addObject(archetype.asPrismObject(), null, result));
+        }
+        return oids;
+    }
+
+    private void fillQueryCache(int cachedSearches, OperationResult result) throws SchemaException {
+        for (int i = 0; i < cachedSearches; i++) {
+            ObjectQuery query = getPrismContext().queryFor(ArchetypeType.class)
+                    .item(ArchetypeType.F_NAME).eq(PolyString.fromOrig("name-" + i)).matchingOrig()
+                    .build();
+            repositoryCache.searchObjects(ArchetypeType.class, query, null, result);
+        }
+    }
+
+    private void displayAverage(String label, long startNanos) {
+        double average = (System.nanoTime() - startNanos) / 1e6 / ITERATIONS;
+        displayValue(label, String.format("%,.3f ms", average));
+    }
+
+    private void clearCaches() {
+        globalObjectCache.clear();
+        globalVersionCache.clear();
+        globalQueryCache.clear();
+    }
+}
@@ -30,6 +30,7 @@ import org.testng.annotations.Test;
 import com.evolveum.midpoint.prism.PrismContext;
 import com.evolveum.midpoint.prism.PrismObject;
 import com.evolveum.midpoint.prism.delta.ItemDelta;
+import com.evolveum.midpoint.prism.delta.ObjectDelta;
 import com.evolveum.midpoint.prism.query.ObjectQuery;
 import com.evolveum.midpoint.prism.util.PrismTestUtil;
 import com.evolveum.midpoint.repo.api.RepositoryService;
@@ -304,6 +305,93 @@ public class TestRepositoryCache extends AbstractSpringTest implements InfraTest
         assertThat(data.overSizedQueries.get()).as("over-sized counter").isEqualTo(2); // search + searchIterative
     }
 
+    /**
+     * Objects requested via getObjects are served from the cache where possible; all the others are fetched
+     * from the repository in a single call.
+     */
+    @Test
+    public void test335GetObjectsBatchesMisses() throws Exception {
+        OperationResult result = createOperationResult();
+
+        deleteExistingObjects(ArchetypeType.class, result);
+        List<String> oids = new ArrayList<>();
+        for (PrismObject<ArchetypeType> archetype : generateObjects(ArchetypeType.class, 4, result)) {
+            oids.add(archetype.getOid());
+        }
+        String nonExistingOid = UUID.randomUUID().toString();
+
+        clearStatistics();
+        clearCaches();
+
+        given("two of the archetypes are in the global cache");
+        repositoryCache.getObject(ArchetypeType.class, oids.get(0), null, result);
+        repositoryCache.getObject(ArchetypeType.class, oids.get(1), null, result);
+        assertGetOperations(2);
+
+        when("all of them (plus a non-existing one) are requested");
+        List<String> requested = new ArrayList<>(oids);
+        requested.add(nonExistingOid);
+        Map<String, PrismObject<ArchetypeType>> objects =
+                repositoryCache.getObjects(ArchetypeType.class, requested, null, result);
+
+        then("the cached ones are served from the cache and the rest is fetched by a single call");
+        dumpStatistics();
+        assertThat(objects.keySet()).containsExactlyElementsOf(oids);
+        assertGetOperations(2);
+        assertOperations(RepositoryService.OP_GET_OBJECTS, 1);
+        for (String oid : oids) {
+            assertObjectAndVersionCached(oid, true);
+        }
+        assertObjectIsNotCached(nonExistingOid);
+
+        when("they are requested again");
+        Map<String, PrismObject<ArchetypeType>> objects2 =
+                repositoryCache.getObjects(ArchetypeType.class, oids, null, result);
+
+        then("all of them come from the cache");
+        assertThat(objects2.keySet()).containsExactlyElementsOf(oids);
+        assertGetOperations(2);
+        assertOperations(RepositoryService.OP_GET_OBJECTS, 1);
+
+        and("returned objects are not shared with the cache");
+        objects2.get(oids.get(0)).asObjectable().setDescription("garbage");
+        assertThat(repositoryCache.getObject(ArchetypeType.class, oids.get(0), null, result)
+                .asObjectable().getDescription()).isNull();
+    }
+
+    /**
+     * Bulk modification invalidates cached objects one by one, so objects that were not modified stay in the global cache.
+     */
+    @Test
+    public void test340BulkModifyInvalidatesOnlyModifiedObjects() throws Exception {
+        OperationResult result = createOperationResult();
+
+        deleteExistingObjects(ArchetypeType.class, result);
+        clearCaches();
+
+        given("three archetypes in the global cache");
+        List<String> oids = new ArrayList<>();
+        for (PrismObject<ArchetypeType> archetype : generateObjects(ArchetypeType.class, 3, result)) {
+            oids.add(archetype.getOid());
+            repositoryCache.getObject(ArchetypeType.class, archetype.getOid(), null, result);
+            assertObjectAndVersionCached(archetype.getOid(), true);
+        }
+
+        when("two of them are modified in bulk");
+        List<ObjectDelta<ArchetypeType>> deltas = new ArrayList<>();
+        for (String oid : oids.subList(0, 2)) {
+            deltas.add(prismContext.deltaFor(ArchetypeType.class)
+                    .item(ArchetypeType.F_DESCRIPTION).replace("modified")
+                    .asObjectDelta(oid));
+        }
+        repositoryCache.modifyObjects(deltas, null, result);
+
+        then("only the modified ones are removed from the cache");
+        assertObjectAndVersionCached(oids.get(0), false);
+        assertObjectAndVersionCached(oids.get(1), false);
+        assertObjectAndVersionCached(oids.get(2), true);
+    }
+
     // Must be executed last, because naive deletion such large number of archetypes fails on OOM
     @Test
     public void test900HeapUsage() throws Exception {
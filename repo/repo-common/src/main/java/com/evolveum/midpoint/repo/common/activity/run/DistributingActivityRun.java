@@ -19,6 +19,7 @@ import java.util.stream.Collectors;
 import org.jetbrains.annotations.NotNull;
 
 import com.evolveum.midpoint.prism.path.ItemPath;
+import com.evolveum.midpoint.repo.api.WorkBucketStore;
 import com.evolveum.midpoint.repo.common.activity.definition.WorkDefinition;
 import com.evolveum.midpoint.repo.common.activity.handlers.ActivityHandler;
 import com.evolveum.midpoint.repo.common.activity.run.distribution.WorkersReconciliation;
@@ -141,6 +142,7 @@ public final class DistributingActivityRun<
             // Currently there are no activities having workers with persistent state,
             // so we assume there are no workers left at this point.
             helper.checkNoRelevantSubtasksDoExist(result);
+            deleteBucketsFromStore(result);
 
             List<Task> children = createSuspendedChildren(result);
             helper.switchExecutionToChildren(children, result);
@@ -154,6 +156,14 @@ public final class DistributingActivityRun<
         }
     }
 
+    /** Buckets left in the dedicated store by previous realization of this activity (if any) must not be reused. */
+    private void deleteBucketsFromStore(OperationResult result) {
+        WorkBucketStore store = getBeans().plainRepositoryService.getWorkBucketStore();
+        if (store != null) {
+            store.deleteBuckets(getRunningTask().getOid(), getActivityPath(), result);
+        }
+    }
+
     private List<Task> createSuspendedChildren(OperationResult result) throws ActivityRunException {
         try {
             WorkersReconciliationOptions options = new WorkersReconciliationOptions();
@@ -9,6 +9,7 @@ package com.evolveum.midpoint.repo.common.activity.run.buckets;
 
 import com.evolveum.midpoint.repo.api.ModifyObjectResult;
 import com.evolveum.midpoint.repo.common.activity.run.state.ActivityBucketManagementStatistics;
+import com.evolveum.midpoint.schema.metrics.MidpointMetrics;
 import com.evolveum.midpoint.xml.ns._public.common.common_3.TaskType;
 
 public class BucketOperationStatisticsKeeper {
@@ -28,16 +29,22 @@ public class BucketOperationStatisticsKeeper {
     }
 
     public void register(String situation) {
+        long duration = System.currentTimeMillis() - start;
         if (statistics != null) {
-            statistics.register(situation, System.currentTimeMillis() - start,
+            statistics.register(situation, duration,
                     conflictCount, conflictWastedTime, bucketWaitCount, bucketWaitTime, bucketsReclaimed);
         }
+        MidpointMetrics.recordBucketOperation(situation, duration);
     }
 
     void addReclaims(int count) {
         bucketsReclaimed += count;
     }
 
+    void addConflict() {
+        conflictCount++;
+    }
+
     void addToConflictCounts(ModifyObjectResult<TaskType> modifyObjectResult) {
         conflictCount += modifyObjectResult.getRetries();
         conflictWastedTime += modifyObjectResult.getWastedTime();
@@ -51,5 +58,6 @@ public class BucketOperationStatisticsKeeper {
     void addWaitTime(long waitTime) {
         bucketWaitCount++;
         bucketWaitTime += waitTime;
+        MidpointMetrics.recordBucketWait(waitTime);
     }
 }
@@ -53,6 +53,9 @@ public class BucketingManager {
     @Autowired private CommonTaskBeans beans;
     @Autowired private WorkBucketContentHandlerRegistry handlerRegistry;
 
+    /** Buckets delegated to workers running on this node, not handed out yet. Used with dedicated bucket storage only. */
+    @NotNull private final PrefetchedBuckets prefetchedBuckets = new PrefetchedBuckets();
+
     /**
      * Obtains work bucket. If no free work buckets are currently present it tries to create one.
      * If there is already delegated work bucket for given worker task, it is returned.
@@ -61,7 +64,8 @@ public class BucketingManager {
             @NotNull ActivityPath activityPath, @Nullable GetBucketOperationOptions options,
             ActivityBucketManagementStatistics statistics, @NotNull OperationResult result)
             throws ObjectAlreadyExistsException, ObjectNotFoundException, SchemaException, InterruptedException {
-        return new GetBucketOperation(coordinatorTaskOid, workerTaskOid, activityPath, statistics, options, beans)
+        return new GetBucketOperation(coordinatorTaskOid, workerTaskOid, activityPath, statistics, options, beans,
+                prefetchedBuckets)
                 .execute(result);
     }
 
@@ -86,7 +90,8 @@ public class BucketingManager {
             @NotNull ActivityPath activityPath, int sequentialNumber,
             ActivityBucketManagementStatistics statistics, OperationResult result)
             throws ObjectNotFoundException, SchemaException {
-        new ReleaseBucketsOperation(coordinatorTaskOid, workerTaskOid, activityPath, statistics, beans, sequentialNumber)
+        new ReleaseBucketsOperation(coordinatorTaskOid, workerTaskOid, activityPath, statistics, beans,
+                prefetchedBuckets, sequentialNumber)
                 .execute(result);
     }
 
@@ -99,7 +104,8 @@ public class BucketingManager {
     public void releaseAllWorkBucketsFromWorker(@NotNull String coordinatorTaskOid, @NotNull String workerTaskOid,
             @NotNull ActivityPath activityPath, ActivityBucketManagementStatistics statistics, OperationResult result)
             throws ObjectNotFoundException, SchemaException {
-        new ReleaseBucketsOperation(coordinatorTaskOid, workerTaskOid, activityPath, statistics, beans, null)
+        new ReleaseBucketsOperation(coordinatorTaskOid, workerTaskOid, activityPath, statistics, beans,
+                prefetchedBuckets, null)
                 .execute(result);
     }
 
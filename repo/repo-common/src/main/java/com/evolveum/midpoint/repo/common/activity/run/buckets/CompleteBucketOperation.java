@@ -23,6 +23,7 @@ import com.evolveum.midpoint.prism.delta.ItemDelta;
 import com.evolveum.midpoint.prism.path.ItemPath;
 import com.evolveum.midpoint.prism.util.CloneUtil;
 import com.evolveum.midpoint.repo.api.ModifyObjectResult;
+import com.evolveum.midpoint.repo.api.WorkBucketStore;
 import com.evolveum.midpoint.repo.common.activity.run.state.ActivityBucketManagementStatistics;
 import com.evolveum.midpoint.repo.common.activity.run.CommonTaskBeans;
 import com.evolveum.midpoint.schema.result.OperationResult;
@@ -56,6 +57,9 @@ public class CompleteBucketOperation extends BucketOperation {
             throws ObjectAlreadyExistsException, ObjectNotFoundException, SchemaException {
 
         LOGGER.trace("Completing work bucket #{} in {} (worker {})", sequentialNumber, coordinatorTaskOid, workerTaskOid);
+        if (completeInStore(result)) {
+            return;
+        }
         ModifyObjectResult<TaskType> modifyObjectResult =
                 plainRepositoryService.modifyObjectDynamically(TaskType.class, coordinatorTaskOid, null,
                         this::computeCompletionModifications, null, result);
@@ -64,6 +68,25 @@ public class CompleteBucketOperation extends BucketOperation {
         statisticsKeeper.register(BucketingConstants.COMPLETE_WORK_BUCKET);
     }
 
+    /**
+     * Completes the bucket in the dedicated bucket store, if the bucket is there. Completed buckets are not compressed
+     * in the store; they are deleted along with the coordinator task or when the activity is distributed again.
+     *
+     * Neither the coordinator task is read nor the buckets are counted here: the buckets are counted only occasionally,
+     * see {@link GetBucketOperation} and workers reconciliation.
+     *
+     * @return false if the bucket is kept in the coordinator task
+     */
+    private boolean completeInStore(OperationResult result) throws ObjectNotFoundException, SchemaException {
+        WorkBucketStore store = plainRepositoryService.getWorkBucketStore();
+        if (isStandalone() || store == null
+                || !store.completeBucket(coordinatorTaskOid, activityPath, sequentialNumber, result)) {
+            return false;
+        }
+        statisticsKeeper.register(BucketingConstants.COMPLETE_WORK_BUCKET);
+        return true;
+    }
+
     private @NotNull Collection<ItemDelta<?, ?>> computeCompletionModifications(@NotNull TaskType task) {
 
         ActivityStateType activityState = ActivityStateUtil.getActivityStateRequired(task.getActivityState(), activityPath);
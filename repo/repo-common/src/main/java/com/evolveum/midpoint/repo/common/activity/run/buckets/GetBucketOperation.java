@@ -14,6 +14,9 @@ import static java.util.Objects.requireNonNullElseGet;
 import static com.evolveum.midpoint.schema.util.task.BucketingUtil.getBuckets;
 import static com.evolveum.midpoint.schema.util.task.BucketingUtil.getWorkerOid;
 import static com.evolveum.midpoint.schema.util.task.work.BucketingConstants.*;
+import static com.evolveum.midpoint.xml.ns._public.common.common_3.ActivityBucketingStateType.F_COMPLETE_BUCKETS;
+import static com.evolveum.midpoint.xml.ns._public.common.common_3.ActivityBucketingStateType.F_DEDICATED_BUCKET_STORAGE;
+import static com.evolveum.midpoint.xml.ns._public.common.common_3.ActivityBucketingStateType.F_NUMBER_OF_BUCKETS;
 import static com.evolveum.midpoint.xml.ns._public.common.common_3.ActivityBucketingStateType.F_SCAVENGING;
 import static com.evolveum.midpoint.xml.ns._public.common.common_3.ActivityBucketingStateType.F_WORK_COMPLETE;
 import static com.evolveum.midpoint.xml.ns._public.common.common_3.ActivityStateType.F_BUCKETING;
@@ -30,8 +33,10 @@ import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import com.evolveum.midpoint.prism.delta.ItemDelta;
+import com.evolveum.midpoint.prism.delta.builder.S_ItemEntry;
 import com.evolveum.midpoint.prism.path.ItemPath;
 import com.evolveum.midpoint.repo.api.ModifyObjectResult;
+import com.evolveum.midpoint.repo.api.WorkBucketStore;
 import com.evolveum.midpoint.repo.common.activity.run.state.ActivityBucketManagementStatistics;
 import com.evolveum.midpoint.repo.common.activity.run.CommonTaskBeans;
 import com.evolveum.midpoint.repo.common.activity.run.buckets.segmentation.BucketFactory;
@@ -69,12 +74,17 @@ public class GetBucketOperation extends BucketOperation {
     /** If doing sampling, we try to get more buckets. All but the last are immediately marked as COMPLETE. */
     private int bucketsToGet;
 
+    /** Buckets delegated to workers on this node but not handed out yet. Used with the dedicated bucket store. */
+    @NotNull private final PrefetchedBuckets prefetchedBuckets;
+
     GetBucketOperation(@NotNull String coordinatorTaskOid, @Nullable String workerTaskOid, @NotNull ActivityPath activityPath,
             ActivityBucketManagementStatistics statisticsCollector,
-            @Nullable GetBucketOperationOptions options, CommonTaskBeans beans) {
+            @Nullable GetBucketOperationOptions options, CommonTaskBeans beans,
+            @NotNull PrefetchedBuckets prefetchedBuckets) {
         super(coordinatorTaskOid, workerTaskOid, activityPath, statisticsCollector,
                 GetBucketOperationOptions.getProgressConsumer(options), beans);
         this.options = requireNonNullElseGet(options, GetBucketOperationOptions::standard);
+        this.prefetchedBuckets = prefetchedBuckets;
     }
 
     /**
@@ -96,7 +106,12 @@ public class GetBucketOperation extends BucketOperation {
                 return getBucketStandalone(result);
             } else {
                 executeInitialDelayForMultiNode();
-                return getBucketMultiNode(result);
+                WorkBucketStore store = getWorkBucketStoreIfConfigured();
+                if (store != null) {
+                    return getBucketMultiNodeFromStore(store, result);
+                } else {
+                    return getBucketMultiNode(result);
+                }
             }
         } catch (Throwable t) {
             statisticsKeeper.register("getWorkBucket." + t.getClass().getSimpleName());
@@ -193,6 +208,221 @@ public class GetBucketOperation extends BucketOperation {
         }
     }
 
+    /**
+     * Returns the dedicated bucket store, if it is both configured for the activity and provided by the repository.
+     * Used only for coordinator-workers scenario; standalone activities keep buckets in the task.
+     */
+    private @Nullable WorkBucketStore getWorkBucketStoreIfConfigured() {
+        ActivityDistributionDefinition distribution = options.getDistributionDefinition();
+        WorkAllocationDefinitionType allocation = distribution != null && distribution.getBuckets() != null ?
+                distribution.getBuckets().getAllocation() : null;
+        if (allocation == null || !Boolean.TRUE.equals(allocation.isDedicatedBucketStorage())) {
+            return null;
+        }
+        WorkBucketStore store = plainRepositoryService.getWorkBucketStore();
+        if (store == null) {
+            LOGGER.debug("Dedicated bucket storage is configured but not supported by the repository, "
+                    + "buckets will be kept in the coordinator task {}", coordinatorTaskOid);
+        }
+        return store;
+    }
+
+    /**
+     * Multi-node variant using the dedicated bucket store. Only the summary state (number of buckets,
+     * scavenging and work complete flags, number of complete buckets) is kept in the coordinator task, so the task
+     * is not modified when buckets are obtained. The number of complete buckets is recorded only when the work
+     * is complete (and by the workers reconciliation).
+     *
+     * Buckets are claimed (or created) in batches of `bucketCreationBatch`; the ones not used immediately are handed
+     * out to the worker later from {@link #prefetchedBuckets}, without going to the store.
+     */
+    private WorkBucketType getBucketMultiNodeFromStore(@NotNull WorkBucketStore store, OperationResult result)
+            throws SchemaException, ObjectAlreadyExistsException, ObjectNotFoundException, InterruptedException {
+        assert workerTaskOid != null;
+
+        boolean runStart = options.isExecuteInitialWait();
+        if (runStart) {
+            // Buckets delegated to us before (e.g. before the restart of the worker) are processed first, without sampling.
+            prefetchedBuckets.set(coordinatorTaskOid, workerTaskOid, activityPath,
+                    store.getDelegatedBuckets(coordinatorTaskOid, activityPath, workerTaskOid, result));
+        }
+
+        WorkBucketType prefetched = prefetchedBuckets.poll(coordinatorTaskOid, workerTaskOid, activityPath);
+        if (prefetched != null) {
+            reportProgressFromStore(store, runStart, result);
+            recordFoundDelegated(prefetched);
+            return prefetched;
+        }
+
+        for (;;) {
+
+            WorkBucketType bucketToUse = claimOrCreateBucketInStore(store, result);
+
+            if (bucketToUse != null) {
+                reportProgressFromStore(store, runStart, result);
+                return bucketToUse;
+            }
+
+            // Nothing found!
+
+            Map<WorkBucketStateType, Integer> counts = reportProgressFromStore(store, true, result);
+            int completeBuckets = counts.getOrDefault(WorkBucketStateType.COMPLETE, 0);
+
+            if (!options.isScavenger()) {
+                markScavengingIfNotYet(result);
+                recordNothingFoundForNonScavenger();
+                return null;
+            }
+
+            boolean definite = counts.getOrDefault(WorkBucketStateType.DELEGATED, 0) == 0;
+            if (definite || options.getFreeBucketWaitTime() == 0L) {
+                markWorkComplete(completeBuckets, result);
+                recordNothingFoundDefinite();
+                return null;
+            }
+
+            long toWait = getRemainingTimeToWait();
+            if (toWait <= 0) {
+                markWorkComplete(completeBuckets, result); // TODO really marking work as complete?
+                recordNothingFoundWithWaitTimeElapsed();
+                return null;
+            }
+
+            sleep(toWait);
+            int reclaimed = store.reclaimBuckets(coordinatorTaskOid, activityPath, getLiveWorkers(result), result);
+            statisticsKeeper.addReclaims(reclaimed);
+        }
+    }
+
+    /**
+     * Reports the bucket progress. Buckets in the store are counted only if `count` is true (at the start
+     * of the worker run and when no bucket was found), as this is an aggregation over all buckets of the activity.
+     * Otherwise only the total number of buckets is reported; the number of complete buckets is kept in the coordinator
+     * (see {@link #markWorkComplete(Integer, OperationResult)} and workers reconciliation).
+     *
+     * @return Bucket counts, if computed; empty map otherwise.
+     */
+    private @NotNull Map<WorkBucketStateType, Integer> reportProgressFromStore(
+            @NotNull WorkBucketStore store, boolean count, OperationResult result) {
+        BucketProgressOverviewType progress = new BucketProgressOverviewType()
+                .totalBuckets(bucketFactory.estimateNumberOfBuckets());
+        Map<WorkBucketStateType, Integer> counts;
+        if (count) {
+            counts = store.countBuckets(coordinatorTaskOid, activityPath, result);
+            progress.completeBuckets(counts.getOrDefault(WorkBucketStateType.COMPLETE, 0));
+        } else {
+            counts = Map.of();
+        }
+        bucketProgressHolder.accept(progress);
+        bucketProgressHolder.passValue();
+        return counts;
+    }
+
+    /**
+     * Claims READY bucket(s) from the store; if there are none, creates new ones. Buckets are claimed and created
+     * in batches (see {@link BucketFactory#getBucketCreationBatch()}); the ones that are not used now stay DELEGATED
+     * to this worker and are kept in {@link #prefetchedBuckets}.
+     *
+     * When sampling, all buckets except for the last one obtained are marked as COMPLETE, and nothing is prefetched
+     * (buckets created over the needed number are left READY). Only READY buckets are sampled this way: buckets
+     * already delegated to the worker are handed out from {@link #prefetchedBuckets} before getting here.
+     *
+     * Returns null if there is nothing more to be created.
+     */
+    private WorkBucketType claimOrCreateBucketInStore(@NotNull WorkBucketStore store, OperationResult result)
+            throws SchemaException, ObjectAlreadyExistsException, ObjectNotFoundException {
+        assert workerTaskOid != null;
+
+        boolean sampling = bucketsToGet > 1;
+        int toClaim = sampling ? bucketsToGet : Math.max(1, bucketFactory.getBucketCreationBatch());
+
+        for (;;) {
+            int toGet = bucketsToGet;
+            List<WorkBucketType> claimed = store.claimBuckets(coordinatorTaskOid, activityPath, workerTaskOid, toClaim, result);
+            Iterator<WorkBucketType> claimedIterator = claimed.iterator();
+            while (claimedIterator.hasNext()) {
+                WorkBucketType bucket = claimedIterator.next();
+                if (toGet == 1) {
+                    List<WorkBucketType> remaining = new ArrayList<>();
+                    claimedIterator.forEachRemaining(remaining::add);
+                    prefetchedBuckets.set(coordinatorTaskOid, workerTaskOid, activityPath, remaining);
+                    recordFoundReady(bucket);
+                    return bucket;
+                }
+                LOGGER.debug("Marking existing bucket as COMPLETE because of sampling: {}", bucket);
+                store.completeBucket(coordinatorTaskOid, activityPath, bucket.getSequentialNumber(), result);
+                toGet--;
+            }
+
+            WorkBucketType lastBucket = store.getLastBucket(coordinatorTaskOid, activityPath, result);
+            List<WorkBucketType> newBuckets = bucketFactory.createNewBuckets(
+                    lastBucket != null ? List.of(lastBucket) : List.of(), toGet);
+            if (newBuckets.isEmpty()) {
+                return null;
+            }
+
+            WorkBucketType bucketToUse = null;
+            List<WorkBucketType> toPrefetch = new ArrayList<>();
+            for (WorkBucketType bucket : newBuckets) {
+                if (toGet > 1) {
+                    LOGGER.debug("Marking new bucket as COMPLETE because of sampling: {}", bucket);
+                    bucket.state(WorkBucketStateType.COMPLETE);
+                } else if (toGet == 1 || !sampling) {
+                    // The first one is to be used, the others (if any) are kept for future use by this worker.
+                    bucket.state(WorkBucketStateType.DELEGATED)
+                            .workerRef(workerTaskOid, TaskType.COMPLEX_TYPE);
+                    if (toGet == 1) {
+                        bucketToUse = bucket.clone();
+                    } else {
+                        toPrefetch.add(bucket.clone());
+                    }
+                } else {
+                    // To be sampled later, along with other READY buckets.
+                    bucket.state(WorkBucketStateType.READY);
+                }
+                if (toGet > 0) {
+                    toGet--;
+                }
+            }
+
+            try {
+                store.addBuckets(coordinatorTaskOid, activityPath, newBuckets, result);
+            } catch (ObjectAlreadyExistsException e) {
+                // Someone else has created the buckets in the meanwhile. So let's try to claim them (or create next ones).
+                LOGGER.trace("Conflict while creating new buckets in {}, trying again: {}", workerTaskOid, e.getMessage());
+                statisticsKeeper.addConflict();
+                continue;
+            }
+
+            prefetchedBuckets.set(coordinatorTaskOid, workerTaskOid, activityPath, toPrefetch);
+            if (lastBucket == null) {
+                markDedicatedBucketStorage(result);
+            }
+            if (bucketToUse != null) {
+                recordCreatedNew(bucketToUse);
+            }
+            return bucketToUse;
+        }
+    }
+
+    /**
+     * Marks the coordinator task state as using dedicated bucket storage. Done by the worker that created
+     * the first bucket(s).
+     */
+    private void markDedicatedBucketStorage(OperationResult result)
+            throws ObjectAlreadyExistsException, ObjectNotFoundException, SchemaException {
+        Integer numberOfBuckets = bucketFactory.estimateNumberOfBuckets();
+        plainRepositoryService.modifyObjectDynamically(TaskType.class, coordinatorTaskOid, null,
+                task -> {
+                    ItemPath bucketingPath = ActivityStateUtil.getStateItemPath(task.getActivityState(), activityPath)
+                            .append(F_BUCKETING);
+                    return prismContext.deltaFor(TaskType.class)
+                            .item(bucketingPath.append(F_DEDICATED_BUCKET_STORAGE)).replace(true)
+                            .item(bucketingPath.append(F_NUMBER_OF_BUCKETS)).replace(numberOfBuckets)
+                            .asItemDeltas();
+                }, null, result);
+    }
+
     /**
      * Recording situation when there is a bucket to be returned.
      * (The cases where there is no bucket are treated separately for standalone/workers cases.
@@ -201,13 +431,13 @@ public class GetBucketOperation extends BucketOperation {
         @NotNull Situation situation = attempt.getSituationRequired();
         switch (situation) {
             case FOUND_DELEGATED_TO_ME:
-                recordFoundDelegated(attempt);
+                recordFoundDelegated(attempt.getBucketToUse());
                 break;
             case FOUND_READY:
-                recordFoundReady(attempt);
+                recordFoundReady(attempt.getBucketToUse());
                 break;
             case CREATED_NEW:
-                recordCreatedNew(attempt);
+                recordCreatedNew(attempt.getBucketToUse());
                 break;
             default:
                 throw new AssertionError(situation);
@@ -275,22 +505,22 @@ public class GetBucketOperation extends BucketOperation {
         return waitUntil - System.currentTimeMillis();
     }
 
-    private void recordFoundDelegated(@NotNull GetBucketOperationAttempt attempt) {
-        LOGGER.trace("Returning already delegated bucket for {}: {}", workerTaskOid, attempt.getBucketToUse());
+    private void recordFoundDelegated(WorkBucketType bucket) {
+        LOGGER.trace("Returning already delegated bucket for {}: {}", workerTaskOid, bucket);
         statisticsKeeper.register(GET_WORK_BUCKET_FOUND_DELEGATED);
     }
 
-    private void recordFoundReady(@NotNull GetBucketOperationAttempt attempt) {
+    private void recordFoundReady(WorkBucketType bucket) {
         CONTENTION_LOGGER.trace("Existing bucket acquired after {} ms (conflicts: {}) in {}: {}",
                 System.currentTimeMillis() - statisticsKeeper.start, statisticsKeeper.conflictCount, workerTaskOid,
-                attempt.getBucketToUse());
+                bucket);
         statisticsKeeper.register(GET_WORK_BUCKET_FOUND_READY);
     }
 
-    private void recordCreatedNew(@NotNull GetBucketOperationAttempt attempt) {
+    private void recordCreatedNew(WorkBucketType bucket) {
         CONTENTION_LOGGER.trace("New bucket(s) acquired after {} ms (retries: {}) in {}: {}",
                 System.currentTimeMillis() - statisticsKeeper.start, statisticsKeeper.conflictCount, workerTaskOid,
-                attempt.getBucketToUse());
+                bucket);
         statisticsKeeper.register(GET_WORK_BUCKET_CREATED_NEW);
     }
 
@@ -386,13 +616,27 @@ public class GetBucketOperation extends BucketOperation {
 
     private void markWorkComplete(OperationResult result)
             throws ObjectAlreadyExistsException, ObjectNotFoundException, SchemaException {
+        markWorkComplete(null, result);
+    }
+
+    /**
+     * @param completeBuckets Number of complete buckets to be recorded in the summary; for buckets kept
+     * in the dedicated storage only.
+     */
+    private void markWorkComplete(@Nullable Integer completeBuckets, OperationResult result)
+            throws ObjectAlreadyExistsException, ObjectNotFoundException, SchemaException {
         // We use dynamic modify only because we do not know the state item path without loading coordinator task first
         plainRepositoryService.modifyObjectDynamically(TaskType.class, coordinatorTaskOid, null,
                 task -> {
-                    ItemPath stateItemPath = ActivityStateUtil.getStateItemPath(task.getActivityState(), activityPath);
-                    return prismContext.deltaFor(TaskType.class)
-                            .item(stateItemPath.append(F_BUCKETING, F_WORK_COMPLETE)).replace(true)
-                            .asItemDeltas();
+                    ItemPath bucketingPath = ActivityStateUtil.getStateItemPath(task.getActivityState(), activityPath)
+                            .append(F_BUCKETING);
+                    S_ItemEntry deltaBuilder = prismContext.deltaFor(TaskType.class)
+                            .item(bucketingPath.append(F_WORK_COMPLETE)).replace(true);
+                    if (completeBuckets != null) {
+                        deltaBuilder = deltaBuilder
+                                .item(bucketingPath.append(F_COMPLETE_BUCKETS)).replace(completeBuckets);
+                    }
+                    return deltaBuilder.asItemDeltas();
                 }, null, result);
     }
 
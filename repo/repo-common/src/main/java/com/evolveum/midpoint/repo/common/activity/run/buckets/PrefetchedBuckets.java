@@ -0,0 +1,64 @@
+/*
+ * Copyright (C) 2010-2022 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+
+package com.evolveum.midpoint.repo.common.activity.run.buckets;
+
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import com.evolveum.midpoint.schema.util.task.ActivityPath;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.WorkBucketType;
+
+/**
+ * Buckets from the dedicated bucket store that are already DELEGATED to a worker (claimed or created by it in a batch)
+ * but were not handed out to it yet. Kept on the node where the worker runs, so the worker gets most of its buckets
+ * without going to the store.
+ *
+ * The content is discarded when the worker run starts (the store is authoritative then) and when the buckets
+ * of the worker are released.
+ */
+class PrefetchedBuckets {
+
+    @NotNull private final Map<String, Deque<WorkBucketType>> bucketsMap = new ConcurrentHashMap<>();
+
+    /** Returns the next bucket to be processed by the worker, or null if there is none. */
+    @Nullable WorkBucketType poll(@NotNull String coordinatorOid, @NotNull String workerOid,
+            @NotNull ActivityPath activityPath) {
+        Deque<WorkBucketType> buckets = bucketsMap.get(createKey(coordinatorOid, workerOid, activityPath));
+        if (buckets == null) {
+            return null;
+        }
+        synchronized (buckets) {
+            return buckets.pollFirst();
+        }
+    }
+
+    /** Replaces the buckets kept for the worker. */
+    void set(@NotNull String coordinatorOid, @NotNull String workerOid, @NotNull ActivityPath activityPath,
+            @NotNull Collection<WorkBucketType> buckets) {
+        String key = createKey(coordinatorOid, workerOid, activityPath);
+        if (buckets.isEmpty()) {
+            bucketsMap.remove(key);
+        } else {
+            bucketsMap.put(key, new ArrayDeque<>(buckets));
+        }
+    }
+
+    void clear(@NotNull String coordinatorOid, @NotNull String workerOid, @NotNull ActivityPath activityPath) {
+        bucketsMap.remove(createKey(coordinatorOid, workerOid, activityPath));
+    }
+
+    private static String createKey(String coordinatorOid, String workerOid, ActivityPath activityPath) {
+        return coordinatorOid + ":" + workerOid + ":" + activityPath;
+    }
+}
@@ -16,6 +16,7 @@ import org.jetbrains.annotations.NotNull;
 import com.evolveum.midpoint.prism.delta.ItemDelta;
 import com.evolveum.midpoint.prism.path.ItemPath;
 import com.evolveum.midpoint.repo.api.ModifyObjectResult;
+import com.evolveum.midpoint.repo.api.WorkBucketStore;
 import com.evolveum.midpoint.repo.common.activity.run.state.ActivityBucketManagementStatistics;
 import com.evolveum.midpoint.repo.common.activity.run.CommonTaskBeans;
 import com.evolveum.midpoint.schema.result.OperationResult;
@@ -41,16 +42,23 @@ public class ReleaseBucketsOperation extends BucketOperation {
     /** null means all delegated buckets */
     private final Integer sequentialNumber;
 
+    @NotNull private final PrefetchedBuckets prefetchedBuckets;
+
     ReleaseBucketsOperation(@NotNull String coordinatorTaskOid, @NotNull String workerTaskOid,
             @NotNull ActivityPath activityPath, ActivityBucketManagementStatistics collector, CommonTaskBeans beans,
-            Integer sequentialNumber) {
+            @NotNull PrefetchedBuckets prefetchedBuckets, Integer sequentialNumber) {
         super(coordinatorTaskOid, workerTaskOid, activityPath, collector, null, beans);
+        this.prefetchedBuckets = prefetchedBuckets;
         this.sequentialNumber = sequentialNumber;
     }
 
     public void execute(OperationResult result)
             throws ObjectNotFoundException, SchemaException {
 
+        if (releaseInStore(result)) {
+            return;
+        }
+
         ModifyObjectResult<TaskType> modifyObjectResult;
         try {
             modifyObjectResult = plainRepositoryService.modifyObjectDynamically(TaskType.class, coordinatorTaskOid, null,
@@ -63,6 +71,27 @@ public class ReleaseBucketsOperation extends BucketOperation {
         statisticsKeeper.register(BucketingConstants.RELEASE_WORK_BUCKET);
     }
 
+    /** @return false if there was nothing to release in the dedicated bucket store (buckets are kept in the task) */
+    private boolean releaseInStore(OperationResult result) {
+        assert workerTaskOid != null;
+        WorkBucketStore store = plainRepositoryService.getWorkBucketStore();
+        if (store == null) {
+            return false;
+        }
+        if (sequentialNumber == null) {
+            // The buckets are going to be READY, so they must not be handed out from the local cache anymore.
+            prefetchedBuckets.clear(coordinatorTaskOid, workerTaskOid, activityPath);
+        }
+        int released = store.releaseBuckets(coordinatorTaskOid, activityPath, workerTaskOid, sequentialNumber, result);
+        if (released == 0) {
+            return false;
+        }
+        LOGGER.trace("Released {} bucket(s) in the bucket store of {} (delegated to {})",
+                released, coordinatorTaskOid, workerTaskOid);
+        statisticsKeeper.register(BucketingConstants.RELEASE_WORK_BUCKET);
+        return true;
+    }
+
     private @NotNull Collection<ItemDelta<?, ?>> computeReleaseModifications(@NotNull TaskType task) {
         assert workerTaskOid != null;
 
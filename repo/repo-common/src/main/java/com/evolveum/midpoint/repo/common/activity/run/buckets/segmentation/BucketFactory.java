@@ -91,7 +91,7 @@ public class BucketFactory {
         return newContentList;
     }
 
-    private int getBucketCreationBatch() {
+    public int getBucketCreationBatch() {
         if (allocationDefinition != null && allocationDefinition.getBucketCreationBatch() != null) {
             return allocationDefinition.getBucketCreationBatch();
         } else {
@@ -20,6 +20,7 @@ import com.evolveum.midpoint.prism.path.ItemPath;
 
 import com.evolveum.midpoint.repo.api.ModificationPrecondition;
 import com.evolveum.midpoint.repo.api.PreconditionViolationException;
+import com.evolveum.midpoint.repo.api.WorkBucketStore;
 
 import org.jetbrains.annotations.NotNull;
 
@@ -161,6 +162,7 @@ public class WorkersReconciliation {
             adaptGroupCompatibleWorkers(result);
 
             suspendRunningWorkersOnLiveNodes(result);
+            int reclaimed = reclaimBucketsInStore(result);
 
             // Finally, let's create workers for the nodes where they are missing.
             createWorkers(result);
@@ -175,10 +177,11 @@ public class WorkersReconciliation {
 
             int closedBecauseDone = or0(reconciliationResult.getClosedDone());
             result.recordStatus(OperationResultStatus.SUCCESS, String.format("Worker reconciliation finished. Original workers: %d,"
-                            + " should be: %d, matched: %d, renamed: %d, adapted: %d, suspended: %d, created: %d worker task(s).%s",
+                            + " should be: %d, matched: %d, renamed: %d, adapted: %d, suspended: %d, created: %d worker task(s).%s%s",
                     startingWorkersCount, startingShouldBeWorkersCount,
                     reconciliationResult.getMatched(), reconciliationResult.getRenamed(), reconciliationResult.getAdapted(),
                     reconciliationResult.getSuspended(), reconciliationResult.getCreated(),
+                    (reclaimed > 0 ? " Reclaimed " + reclaimed + " buckets from inactive workers." : ""),
                     (closedBecauseDone > 0 ? " Closed " + closedBecauseDone + " workers because the work is done." : "")));
 
             return reconciliationResult;
@@ -363,7 +366,7 @@ public class WorkersReconciliation {
      * TODO What if a task runs on a recently-killed node (still in grace period of 30 seconds)?
      *  It will get suspended here, but the buckets will not be released.
      *  (This can also occur if a task is suspended, but the node is killed shortly after that.)
-     *  See MID-7180.
+     *  See MID-7180. For buckets kept in the dedicated store this is covered by {@link #reclaimBucketsInStore(OperationResult)}.
      */
     private void suspendRunningWorkersOnLiveNodes(OperationResult result) {
         List<Task> runningWorkersOnLiveNodes = currentWorkers.stream()
@@ -385,6 +388,47 @@ public class WorkersReconciliation {
         reconciliationResult.setSuspended(count);
     }
 
+    /**
+     * If the buckets are kept in the dedicated store, returns the buckets delegated to workers that are not running
+     * on live nodes (i.e. suspended, closed, or dead ones) to the READY state. Workers suspended in an orderly way
+     * release their buckets themselves, but the ones on dead nodes or the ones that failed to do so would hold them
+     * until a scavenger reclaims them - and that is only at the very end of the processing.
+     *
+     * Also records the current number of complete buckets in the coordinator task, as it is not updated
+     * on individual bucket completions.
+     *
+     * @return the number of reclaimed buckets
+     */
+    private int reclaimBucketsInStore(OperationResult result)
+            throws SchemaException, ObjectNotFoundException, ObjectAlreadyExistsException {
+        WorkBucketStore store = beans.plainRepositoryService.getWorkBucketStore();
+        if (store == null || !BucketingUtil.hasDedicatedBucketStorage(coordinatorActivityState.getBucketing())) {
+            return 0;
+        }
+
+        Set<String> liveWorkers = getCurrentWorkers(result).stream()
+                .filter(Task::isRunning)
+                .filter(t -> expectedSetup.getNodesUpAndAlive().contains(t.getNode()))
+                .map(Task::getOid)
+                .collect(Collectors.toSet());
+        int reclaimed = store.reclaimBuckets(coordinatorTask.getOid(), activityPath, liveWorkers, result);
+        if (reclaimed > 0) {
+            LOGGER.info("Reclaimed {} bucket(s) from inactive workers of {}; live workers: {}",
+                    reclaimed, coordinatorTask, liveWorkers);
+        }
+
+        int completeBuckets = store.countBuckets(coordinatorTask.getOid(), activityPath, result)
+                .getOrDefault(WorkBucketStateType.COMPLETE, 0);
+        ItemPath bucketingPath = ActivityStateUtil.getStateItemPath(coordinatorTask.getActivitiesStateOrClone(), activityPath)
+                .append(ActivityStateType.F_BUCKETING);
+        beans.plainRepositoryService.modifyObject(TaskType.class, coordinatorTask.getOid(),
+                beans.prismContext.deltaFor(TaskType.class)
+                        .item(bucketingPath.append(ActivityBucketingStateType.F_COMPLETE_BUCKETS)).replace(completeBuckets)
+                        .asItemDeltas(),
+                result);
+        return reclaimed;
+    }
+
     /**
      * Finally, create remaining workers.
      */
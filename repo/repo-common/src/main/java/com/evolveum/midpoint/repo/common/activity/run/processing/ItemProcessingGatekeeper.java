@@ -25,6 +25,7 @@ import com.evolveum.midpoint.repo.common.util.OperationExecutionRecorderForTasks
 import com.evolveum.midpoint.repo.common.util.RepoCommonUtils;
 import com.evolveum.midpoint.schema.cache.CacheConfigurationManager;
 import com.evolveum.midpoint.schema.constants.ExpressionConstants;
+import com.evolveum.midpoint.schema.metrics.MidpointMetrics;
 import com.evolveum.midpoint.schema.reporting.ConnIdOperation;
 import com.evolveum.midpoint.schema.result.OperationResult;
 import com.evolveum.midpoint.schema.result.OperationResultBuilder;
@@ -402,6 +403,8 @@ class ItemProcessingGatekeeper<I> {
     private void recordIterativeOperationEnd(Operation operation) {
         // Does NOT increase progress. (Currently.)
         operation.done(processingResult.outcome, processingResult.exception);
+        MidpointMetrics.recordActivityItem(activityRun.getShortName(),
+                processingResult.outcome.getOutcome().value(), operation.getDurationRounded());
     }
 
     private void computeStatusIfNeeded(OperationResult result) {
@@ -45,7 +45,7 @@ public class ProcessingCoordinator<I> {
     private final int threadsCount;
     private final boolean multithreaded;
     private final List<OperationResult> workerSpecificResults;
-    private final RequestsBuffer<I> requestsBuffer;
+    private final RequestsBuffer<ItemProcessingRequest<I>> requestsBuffer;
 
     @NotNull private final IterativeActivityRun<I, ?, ?, ?> activityRun;
 
@@ -71,6 +71,8 @@ public class ProcessingCoordinator<I> {
             multithreaded = true;
             workerSpecificResults = new ArrayList<>(threadsCount);
             requestsBuffer = new RequestsBuffer<>(threadsCount);
+            activityRun.getActivityState().getLiveStatistics().getLiveItemProcessing()
+                    .setWorkerQueueDepthsSupplier(requestsBuffer::getQueueDepths);
         } else {
             multithreaded = false;
             workerSpecificResults = null;
@@ -164,7 +166,7 @@ public class ProcessingCoordinator<I> {
             workerSpecificResult.addContext("subtaskIndex", i+1);
             workerSpecificResults.add(workerSpecificResult);
 
-            RunningLightweightTask subtask = coordinatorTask.createSubtask(new WorkerHandler(workerSpecificResult));
+            RunningLightweightTask subtask = coordinatorTask.createSubtask(new WorkerHandler(i, workerSpecificResult));
             subtask.setCategory(coordinatorTask.getCategory());
             subtask.setResult(new OperationResult(OP_EXECUTE_WORKER, OperationResultStatus.IN_PROGRESS, (String) null));
             subtask.setName("Worker thread " + (i+1) + " of " + threadsCount);
@@ -189,6 +191,10 @@ public class ProcessingCoordinator<I> {
         allItemsSubmitted.set(true);
         waitForWorkersFinish(result);
         nackQueuedRequests(result);
+        if (multithreaded) {
+            activityRun.getActivityState().getLiveStatistics().getLiveItemProcessing()
+                    .setWorkerQueueDepthsSupplier(null);
+        }
     }
 
     private void waitForWorkersFinish(OperationResult result) {
@@ -208,9 +214,13 @@ public class ProcessingCoordinator<I> {
     }
 
     private class WorkerHandler implements LightweightTaskHandler {
+
+        /** Index of the worker, used to find its queue in {@link RequestsBuffer}. */
+        private final int workerIndex;
         private final OperationResult workerSpecificResult;
 
-        private WorkerHandler(OperationResult workerSpecificResult) {
+        private WorkerHandler(int workerIndex, OperationResult workerSpecificResult) {
+            this.workerIndex = workerIndex;
             this.workerSpecificResult = workerSpecificResult;
         }
 
@@ -224,12 +234,10 @@ public class ProcessingCoordinator<I> {
             workerTask.setName(workerTask.getName().getOrig() + " (" + Thread.currentThread().getName() + ")");
             workerSpecificResult.addArbitraryObjectAsContext("subtaskName", workerTask.getName());
 
-            String taskIdentifier = workerTask.getTaskIdentifier();
-
             while (canRun(workerTask)) {
 
                 workerTask.refreshThreadLocalStatistics();
-                ItemProcessingRequest<I> request = requestsBuffer.poll(taskIdentifier);
+                ItemProcessingRequest<I> request = requestsBuffer.poll(workerIndex);
 
                 if (request != null) {
                     try {
@@ -237,7 +245,6 @@ public class ProcessingCoordinator<I> {
                             stopRequestedByAnyWorker.set(true);
                         }
                     } finally {
-                        requestsBuffer.markProcessed(request, taskIdentifier);
                         treatOperationResultAfterOperation();
                     }
                 } else {
@@ -257,9 +264,9 @@ public class ProcessingCoordinator<I> {
                 }
             }
 
-            int reservedRequests = requestsBuffer.getReservedRequestsCount(taskIdentifier);
-            if (reservedRequests > 0) {
-                LOGGER.warn("Worker task exiting but it has {} reserved (pre-assigned) change requests", reservedRequests);
+            int queuedRequests = requestsBuffer.getQueueDepth(workerIndex);
+            if (queuedRequests > 0) {
+                LOGGER.warn("Worker task exiting but it has {} queued (pre-assigned) requests", queuedRequests);
             }
             workerTask.refreshThreadLocalStatistics();
         }
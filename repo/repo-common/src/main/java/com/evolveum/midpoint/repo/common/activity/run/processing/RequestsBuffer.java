@@ -1,5 +1,5 @@
 /*
- * Copyright (C) 2010-2021 Evolveum and contributors
+ * Copyright (C) 2010-2022 Evolveum and contributors
  *
  * This work is dual-licensed under the Apache License 2.0
  * and European Union Public License. See LICENSE file for details.
@@ -8,237 +8,199 @@
 package com.evolveum.midpoint.repo.common.activity.run.processing;
 
 import java.util.*;
-import java.util.concurrent.ArrayBlockingQueue;
-import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
+import org.jetbrains.annotations.NotNull;
+
+import com.evolveum.midpoint.schema.AcknowledgementSink;
 import com.evolveum.midpoint.schema.result.OperationResult;
 import com.evolveum.midpoint.util.logging.Trace;
 import com.evolveum.midpoint.util.logging.TraceManager;
 
 /**
- * TODO fix the description
+ * Stores requests to be processed by worker threads.
  *
- * <p>Stores requests to be processed.</p>
+ * Its primary responsibility is to ensure that requests with the same correlation value (e.g. changes related to given
+ * primary identifier) are never processed concurrently, and that they are processed exactly in the order in which
+ * they were submitted (e.g. fetched from the resource). This is ensured by routing: each {@link CorrelatableProcessingRequest}
+ * is put into the queue of the worker determined by the hash of its correlation value. Only the owning worker takes
+ * requests from this part of its queue, and it processes them one after another.
  *
- * <p>Its primary responsibility is that it has to ensure that changes related to given primary identifier are processed exactly
- * in the order in which they were fetched from the resource (recorded as {@link com.evolveum.midpoint.provisioning.ucf.api.Change#localSequenceNumber}).
- * This responsibility is ensured by the concepts of binding and reservation.</p>
+ * Other (uncorrelated) requests are distributed among the workers in round-robin fashion. Any worker that has nothing
+ * to do can steal them from queues of other workers.
  *
- * <p>Primary identifier I is said to be _bound_ to task T if an object with this identifier it is being currently processed by T
- * or is waiting to be processed by T (reserved for T). See {@link #bind(ProcessChangeRequest, String)} and {@link #unbind(ProcessChangeRequest, String)}
- * methods.</p>
+ * There is no global monitor: the queues are lock-free, and the total number of queued requests is limited
+ * by a semaphore, in order to keep the submitting thread from getting too far ahead of the workers.
  *
- * <p>Reservation is represented by a queue of requests waiting to be processed by specified subtask. A request gets
- * onto this queue if it's fetched from the global queue but cannot be processed because it is bound to a subtask different
- * from the current one. So it's put into "owning" task reserved requests queue. See {@link #reserve(ProcessChangeRequest, String)}.</p>
+ * @param <R> Type of the requests. In production it is {@link ItemProcessingRequest}.
  */
-@SuppressWarnings("JavadocReference")
-class RequestsBuffer<I> {
+class RequestsBuffer<R extends AcknowledgementSink> {
 
     private static final Trace LOGGER = TraceManager.getTrace(RequestsBuffer.class);
 
     private static final long REQUEST_QUEUE_OFFER_TIMEOUT = 1000L;
 
     /**
-     * Global queue of waiting requests.
+     * How many requests can wait for each worker. It is larger than the original global queue allowed (2 per worker),
+     * because correlated requests cannot be stolen, so a slow worker may collect more of them.
      */
-    private final BlockingQueue<ItemProcessingRequest<I>> globalQueue;
+    private static final int QUEUED_REQUESTS_PER_WORKER = 4;
 
-    /**
-     * Current bindings of resource objects (their identifiers) to subtasks.
-     *
-     * Entry key: primary resource object identifier (~ account ID)
-     * Entry value: task identifier
-     */
-    private final Map<Object, String> bindingsMap = new HashMap<>();
+    /** Queues of individual workers, indexed by the worker index. */
+    @NotNull private final List<WorkerQueue<R>> workerQueues;
 
-    /**
-     * Change requests reserved to be processed by each subtask.
-     *
-     * Entry key: task identifier.
-     * Entry value: queue of requests. The requests are sorted by change identifier, to ensure processing in the correct order.
-     */
-    private final Map<String, PriorityQueue<ItemProcessingRequest<I>>> reservedRequestsQueueMap = new HashMap<>();
+    /** Free slots for requests to be queued. */
+    @NotNull private final Semaphore freeSlots;
+
+    /** Used to distribute uncorrelated requests among the workers. */
+    @NotNull private final AtomicInteger uncorrelatedRequestsCounter = new AtomicInteger();
 
     RequestsBuffer(int threadsCount) {
-        int globalQueueSize = threadsCount*2; // actually, size of threadsCount should be sufficient but it doesn't hurt if queue is larger
-        globalQueue = new ArrayBlockingQueue<>(globalQueueSize);
+        workerQueues = new ArrayList<>(threadsCount);
+        for (int i = 0; i < threadsCount; i++) {
+            workerQueues.add(new WorkerQueue<>());
+        }
+        freeSlots = new Semaphore(threadsCount * QUEUED_REQUESTS_PER_WORKER);
     }
 
     /**
-     * Offers a request for processing.
-     *
-     * This method is intentionally NOT synchronized.
+     * Offers a request for processing. Waits for a free slot for a limited time.
      *
+     * @return false if there was no free slot - the request was not queued then.
      * @throws InterruptedException If present, the request was not put into the queue.
      */
-    boolean offer(ItemProcessingRequest<I> request) throws InterruptedException {
-        return globalQueue.offer(request, REQUEST_QUEUE_OFFER_TIMEOUT, TimeUnit.MILLISECONDS);
-    }
-
-    /**
-     * Tries to obtain a request to be processed by the specified subtask.
-     * Does NOT wait, it just checks reserved requests and global queues.
-     *
-     * Post-conditions:
-     * - Returns null only if there are no reserved nor globally available requests.
-     * - If the request is not null, the primary identifier of the request is (successfully) bound to the specified task.
-     */
-    synchronized ItemProcessingRequest<I> poll(String taskIdentifier) {
-
-        ItemProcessingRequest<I> reserved = getNextReservedRequest(taskIdentifier);
-        if (reserved != null) {
-            LOGGER.trace("Got reserved (pre-assigned) request: {}", reserved);
-            if (bind(reserved, taskIdentifier)) {
-                return reserved;
-            } else {
-                throw new IllegalStateException("A reserved request couldn't be bound to the current task. Request = " +
-                        reserved + ", task = " + taskIdentifier);
-            }
+    boolean offer(R request) throws InterruptedException {
+        if (!freeSlots.tryAcquire(REQUEST_QUEUE_OFFER_TIMEOUT, TimeUnit.MILLISECONDS)) {
+            return false;
         }
-
-        for (;;) {
-            ItemProcessingRequest<I> request = globalQueue.poll();
-            LOGGER.trace("Got request from global queue: {}", request);
-
-            if (request == null) {
-                // Nothing in the queue for now. OK, let's try next time.
-                return null;
-            }
-
-            if (bind(request, taskIdentifier)) {
-                return request;
-            } else {
-                // The request couldn't be bound to the specified task. We have to go and try another one.
-            }
+        Object correlationValue = getCorrelationValue(request);
+        if (correlationValue != null) {
+            int workerIndex = Math.floorMod(correlationValue.hashCode(), workerQueues.size());
+            LOGGER.trace("Routing {} (correlation value: {}) to worker #{}", request, correlationValue, workerIndex);
+            workerQueues.get(workerIndex).addCorrelated(request);
+        } else {
+            int workerIndex = Math.floorMod(uncorrelatedRequestsCounter.getAndIncrement(), workerQueues.size());
+            workerQueues.get(workerIndex).addUncorrelated(request);
         }
+        return true;
     }
 
-    /**
-     * Binds a request identifier to specified subtask, if possible i.e. if the request identifier is not bound to another task.
-     * If the request identifier is bound to another task, the request is assigned to it.
-     *
-     * @return true if the request was successfully bound to the current task;
-     *         false if it was reassigned (so this task has to fetch another request).
-     */
-    private boolean bind(ItemProcessingRequest<I> request, String taskIdentifier) {
+    private Object getCorrelationValue(R request) {
         if (!(request instanceof CorrelatableProcessingRequest)) {
-            return true;
+            return null;
         }
-
         Object correlationValue = ((CorrelatableProcessingRequest) request).getCorrelationValue();
         if (correlationValue == null) {
             LOGGER.warn("Null correlationValue in request {}", request);
-            return true;
-        }
-
-        String boundTo = bindingsMap.get(correlationValue);
-        if (boundTo == null) {
-            LOGGER.trace("Binding {} to {}", correlationValue, taskIdentifier);
-            bindingsMap.put(correlationValue, taskIdentifier);
-            return true;
         }
-
-        if (boundTo.equals(taskIdentifier)) {
-            LOGGER.trace("Processing {} as it is already bound to current task: {}", correlationValue, taskIdentifier);
-            return true;
-        }
-
-        LOGGER.trace("Request {} (ID {}) is already bound to another task {}. Moving it to the reserved"
-                + " requests queue for that task. Current task: {}", request, correlationValue, boundTo, taskIdentifier);
-        reserve(request, boundTo);
-        return false;
+        return correlationValue;
     }
 
     /**
-     * Gets a change reserved for given task (if there's any).
-     * REMOVES the reservation.
+     * Tries to obtain a request to be processed by the specified worker.
+     * Does NOT wait, it just checks the worker's own queue, and then tries to steal an uncorrelated request
+     * from the other workers.
      *
-     * @return Change reserved for given task; or null if there's nothing there.
+     * Post-condition: Returns null only if there are no requests for this worker nor any uncorrelated requests.
      */
-    private ItemProcessingRequest<I> getNextReservedRequest(String taskIdentifier) {
-        Queue<ItemProcessingRequest<I>> reservedRequests = reservedRequestsQueueMap.get(taskIdentifier);
-        if (reservedRequests != null) {
-            return reservedRequests.poll();
-        } else {
-            return null;
+    R poll(int workerIndex) {
+        WorkerQueue<R> own = workerQueues.get(workerIndex);
+        R request = own.pollCorrelated();
+        if (request == null) {
+            request = own.pollUncorrelated(false);
         }
-    }
-
-    private void reserve(ItemProcessingRequest<I> request, String owningTaskIdentifier) {
-        reservedRequestsQueueMap
-                .computeIfAbsent(owningTaskIdentifier, key -> new PriorityQueue<>())
-                .offer(request);
-    }
-
-    /**
-     * Marks specified request as processed: Unbinds its primary identifier from the calling subtask.
-     */
-    synchronized void markProcessed(ItemProcessingRequest<I> request, String taskIdentifier) {
-        unbind(request, taskIdentifier);
-    }
-
-    private void unbind(ItemProcessingRequest<I> request, String taskIdentifier) {
-        if (!(request instanceof CorrelatableProcessingRequest)) {
-            return;
+        for (int i = 1; request == null && i < workerQueues.size(); i++) {
+            request = workerQueues.get((workerIndex + i) % workerQueues.size())
+                    .pollUncorrelated(true);
+            if (request != null) {
+                LOGGER.trace("Worker #{} stole request: {}", workerIndex, request);
+            }
         }
-
-        Object correlationValue = ((CorrelatableProcessingRequest) request).getCorrelationValue();
-        LOGGER.trace("Trying to unbind {} from {}", correlationValue, taskIdentifier);
-        if (correlationValue == null) {
-            LOGGER.trace("correlationValue is null (warning has been already issued): {}", request);
-            return;
+        if (request != null) {
+            freeSlots.release();
         }
-
-        if (isReserved(correlationValue, taskIdentifier)) {
-            LOGGER.trace("...but it is reserved to its owner (some relevant changes are waiting), so not unbinding now");
-            return;
-        }
-
-        String previousOwner = bindingsMap.remove(correlationValue);
-        LOGGER.trace("Unbound (previous owner was: {})", previousOwner);
-        assert taskIdentifier.equals(previousOwner);
+        return request;
     }
 
-    private boolean isReserved(Object primaryIdentifier, String taskIdentifier) {
-        Queue<ItemProcessingRequest<I>> reservedRequests = reservedRequestsQueueMap.get(taskIdentifier);
-        if (reservedRequests != null) {
-            for (ItemProcessingRequest<I> request : reservedRequests) {
-                if (request instanceof CorrelatableProcessingRequest &&
-                        primaryIdentifier.equals(((CorrelatableProcessingRequest) request).getCorrelationValue())) {
-                    return true;
-                }
-            }
-        }
-        return false;
+    /** Returns the number of requests waiting in the queue of given worker. */
+    int getQueueDepth(int workerIndex) {
+        return workerQueues.get(workerIndex).depth.get();
     }
 
-    synchronized int getReservedRequestsCount(String taskIdentifier) {
-        Queue<ItemProcessingRequest<I>> reservedRequests = reservedRequestsQueueMap.get(taskIdentifier);
-        return reservedRequests != null ? reservedRequests.size() : 0;
+    /** Returns the numbers of requests waiting in the queues of individual workers. */
+    @NotNull List<Integer> getQueueDepths() {
+        List<Integer> depths = new ArrayList<>(workerQueues.size());
+        for (WorkerQueue<R> workerQueue : workerQueues) {
+            depths.add(workerQueue.depth.get());
+        }
+        return depths;
     }
 
     // should be called when there's no concurrency
     int nackAllRequests(OperationResult result) {
         AtomicInteger nackCounter = new AtomicInteger();
 
-        nackAll(globalQueue, nackCounter, result);
-        reservedRequestsQueueMap.values().forEach(queue -> nackAll(queue, nackCounter, result));
+        for (WorkerQueue<R> workerQueue : workerQueues) {
+            nackAll(workerQueue.correlated, nackCounter, result);
+            nackAll(workerQueue.uncorrelated, nackCounter, result);
+            workerQueue.depth.set(0);
+        }
 
         return nackCounter.get();
     }
 
-    private void nackAll(Queue<ItemProcessingRequest<I>> queue, AtomicInteger counter, OperationResult result) {
+    private void nackAll(Queue<R> queue, AtomicInteger counter, OperationResult result) {
         for (;;) {
-            ItemProcessingRequest<I> request = queue.poll();
+            R request = queue.poll();
             if (request == null) {
                 break;
             } else {
+                freeSlots.release();
                 request.acknowledge(false, result);
                 counter.incrementAndGet();
             }
         }
     }
+
+    /** Requests waiting for a specific worker. */
+    private static class WorkerQueue<R extends AcknowledgementSink> {
+
+        /** Requests that must be processed by this worker, in the order of submission. */
+        @NotNull private final Queue<R> correlated = new ConcurrentLinkedQueue<>();
+
+        /** Requests that can be processed by any worker. The owner takes them from the head, others from the tail. */
+        @NotNull private final Deque<R> uncorrelated = new ConcurrentLinkedDeque<>();
+
+        /** Number of requests in both queues. Kept separately, as the size of concurrent queues is not a constant-time operation. */
+        @NotNull private final AtomicInteger depth = new AtomicInteger();
+
+        private void addCorrelated(R request) {
+            depth.incrementAndGet();
+            correlated.add(request);
+        }
+
+        private void addUncorrelated(R request) {
+            depth.incrementAndGet();
+            uncorrelated.addLast(request);
+        }
+
+        private R pollCorrelated() {
+            return countRemoved(correlated.poll());
+        }
+
+        private R pollUncorrelated(boolean steal) {
+            return countRemoved(steal ? uncorrelated.pollLast() : uncorrelated.pollFirst());
+        }
+
+        private R countRemoved(R request) {
+            if (request != null) {
+                depth.decrementAndGet();
+            }
+            return request;
+        }
+    }
 }
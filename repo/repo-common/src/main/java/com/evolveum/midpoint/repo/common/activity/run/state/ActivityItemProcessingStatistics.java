@@ -11,12 +11,17 @@ import static java.util.Objects.requireNonNull;
 
 import static com.evolveum.midpoint.util.MiscUtil.or0;
 
-import java.util.List;
-import java.util.Objects;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BooleanSupplier;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
 import javax.xml.datatype.XMLGregorianCalendar;
 
-import com.evolveum.midpoint.repo.common.activity.run.AbstractActivityRun;
 import com.evolveum.midpoint.repo.common.activity.run.ActivityRunException;
 import com.evolveum.midpoint.schema.result.OperationResult;
 import com.evolveum.midpoint.schema.statistics.Operation;
@@ -26,7 +31,9 @@ import com.evolveum.midpoint.util.annotation.Experimental;
 
 import com.evolveum.midpoint.util.logging.LoggingUtils;
 
+import com.google.common.annotations.VisibleForTesting;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import com.evolveum.midpoint.prism.xml.XmlTypeConverter;
 import com.evolveum.midpoint.schema.statistics.AbstractStatisticsPrinter;
@@ -47,11 +54,11 @@ import com.evolveum.midpoint.xml.ns._public.common.common_3.*;
  * 1. Updates are invoked in the context of the thread executing the activity.
  * 2. But queries are invoked either from this thread, or from some observer (task manager or GUI thread).
  *
- * Implementation: Because the iteration information grew to quite complex structure,
- * we no longer keep "native" form and "bean" form separately. Now we simply store the bean
- * form, and provide the necessary synchronization.
- *
- * Also, we no longer distinguish start value and delta. Everything is kept in the {@link #value}.
+ * Implementation: The initial value and run records are kept in the bean form in {@link #value}, guarded by this.
+ * Operation start and end are recorded by worker threads, so they are kept in the "native" form instead:
+ * current operations in a concurrent map and processed items in per-outcome accumulators based on {@link LongAdder}.
+ * They are merged into the bean form when the value is requested, typically when the statistics are written to the task.
+ * This avoids contention on the monitor and prism manipulation for each item processed.
  */
 public class ActivityItemProcessingStatistics extends Initializable {
 
@@ -63,13 +70,37 @@ public class ActivityItemProcessingStatistics extends Initializable {
 
     private static final AtomicLong ID_COUNTER = new AtomicLong(0);
 
-    /** Current value. Guarded by this. */
+    /** Initial value and run records. Guarded by this. Does not include {@link #currentOperations} and {@link #processed}. */
     @NotNull private final ActivityItemProcessingStatisticsType value;
 
+    /** Operations currently being executed, indexed by operation ID. */
+    @NotNull private final Map<Long, ProcessedItemType> currentOperations = new ConcurrentHashMap<>();
+
+    /** Items processed since initialization, indexed by their outcome. */
+    @NotNull private final Map<OutcomeKey, ProcessedItems> processed = new ConcurrentHashMap<>();
+
+    /** Used to keep the order of processed item sets stable, i.e. in the order of first occurrence. */
+    @NotNull private final AtomicInteger processedSetsCounter = new AtomicInteger();
+
+    /** Number of items processed in the initial value. */
+    private volatile int initialItemsProcessed;
+
+    /** Latest end timestamp of an operation, to be written to the matching run record. Zero if there is none. */
+    @NotNull private final AtomicLong lastOperationEndTimestamp = new AtomicLong();
+
+    /** Provides the current depths of worker queues, if the activity is processed by multiple threads. */
+    private volatile Supplier<List<Integer>> workerQueueDepthsSupplier;
+
     /**
-     * Reference to the containing activity state object.
+     * Reference to the containing activity state object. Null only in tests, where there are no simple callers.
      */
-    @NotNull private final CurrentActivityState<?> activityState;
+    @Nullable private final CurrentActivityState<?> activityState;
+
+    /** Tells whether the activity run supports run records, see {@link #areRunRecordsSupported()}. */
+    @NotNull private final BooleanSupplier runRecordsSupportedSupplier;
+
+    /** Provides the start timestamp of the current activity run. */
+    @NotNull private final LongSupplier runStartTimestampSupplier;
 
     /**
      * When we last updated activity statistics for the simple clients.
@@ -82,7 +113,19 @@ public class ActivityItemProcessingStatistics extends Initializable {
     private static final long STATISTICS_UPDATE_INTERVAL = 3000L;
 
     ActivityItemProcessingStatistics(@NotNull CurrentActivityState<?> activityState) {
+        this(activityState,
+                () -> activityState.getActivityRun().areRunRecordsSupported(),
+                () -> activityState.getActivityRun().getStartTimestampRequired());
+    }
+
+    @VisibleForTesting
+    ActivityItemProcessingStatistics(
+            @Nullable CurrentActivityState<?> activityState,
+            @NotNull BooleanSupplier runRecordsSupportedSupplier,
+            @NotNull LongSupplier runStartTimestampSupplier) {
         this.activityState = activityState;
+        this.runRecordsSupportedSupplier = runRecordsSupportedSupplier;
+        this.runStartTimestampSupplier = runStartTimestampSupplier;
         this.value = new ActivityItemProcessingStatisticsType();
     }
 
@@ -92,13 +135,16 @@ public class ActivityItemProcessingStatistics extends Initializable {
      * As the easiest solution (for 4.3) is to simply stop collecting this information for such tasks.
      */
     private boolean areRunRecordsSupported() {
-        return activityState.getActivityRun().areRunRecordsSupported();
+        return runRecordsSupportedSupplier.getAsBoolean();
     }
 
     public void initialize(ActivityItemProcessingStatisticsType initialValue) {
         doInitialize(() -> {
             if (initialValue != null) {
-                ActivityItemProcessingStatisticsUtil.addTo(this.value, initialValue);
+                synchronized (this) {
+                    ActivityItemProcessingStatisticsUtil.addTo(this.value, initialValue);
+                    initialItemsProcessed = ActivityItemProcessingStatisticsUtil.getItemsProcessed(this.value);
+                }
             }
         });
     }
@@ -106,7 +152,55 @@ public class ActivityItemProcessingStatistics extends Initializable {
     /** Returns a current value of this statistics. It is copied because of thread safety issues. */
     public synchronized @NotNull ActivityItemProcessingStatisticsType getValueCopy() {
         assertInitialized();
-        return value.cloneWithoutId();
+        ActivityItemProcessingStatisticsType copy = value.cloneWithoutId();
+        addProcessedItemSets(copy);
+        addCurrentOperations(copy);
+        addWorkerQueues(copy);
+        if (areRunRecordsSupported()) {
+            addLastOperationEnd(copy);
+        }
+        return copy;
+    }
+
+    private void addProcessedItemSets(ActivityItemProcessingStatisticsType part) {
+        processed.values().stream()
+                .sorted(Comparator.comparingInt(items -> items.order))
+                .forEach(items -> items.addTo(part));
+    }
+
+    private void addCurrentOperations(ActivityItemProcessingStatisticsType part) {
+        new TreeMap<>(currentOperations).values()
+                .forEach(item -> part.getCurrent().add(item.cloneWithoutId()));
+    }
+
+    private void addWorkerQueues(ActivityItemProcessingStatisticsType part) {
+        Supplier<List<Integer>> supplier = workerQueueDepthsSupplier;
+        if (supplier != null) {
+            List<Integer> depths = supplier.get();
+            for (int i = 0; i < depths.size(); i++) {
+                part.getWorkerQueue().add(
+                        new WorkerQueueInformationType()
+                                .worker(i + 1)
+                                .depth(depths.get(i)));
+            }
+        }
+    }
+
+    /** Sets (or clears) the provider of worker queue depths. Called when multi-threaded processing starts or ends. */
+    public void setWorkerQueueDepthsSupplier(@Nullable Supplier<List<Integer>> workerQueueDepthsSupplier) {
+        this.workerQueueDepthsSupplier = workerQueueDepthsSupplier;
+    }
+
+    /** Operation end is applied to the run record only if it is later than the recorded end. */
+    private void addLastOperationEnd(ActivityItemProcessingStatisticsType part) {
+        long endTimestamp = lastOperationEndTimestamp.get();
+        if (endTimestamp == 0) {
+            return;
+        }
+        ActivityRunRecordType record = findOrCreateMatchingRunRecord(part.getRun(), getActivityRunStartTimestamp());
+        if (record.getEndTimestamp() == null || XmlTypeConverter.toMillis(record.getEndTimestamp()) < endTimestamp) {
+            record.setEndTimestamp(XmlTypeConverter.createXMLGregorianCalendar(endTimestamp));
+        }
     }
 
     /**
@@ -114,7 +208,7 @@ public class ActivityItemProcessingStatistics extends Initializable {
      * Returns an object that should receive the status of the operation, in order to record
      * the operation end.
      */
-    public synchronized Operation recordOperationStart(IterativeOperationStartInfo startInfo) {
+    public Operation recordOperationStart(IterativeOperationStartInfo startInfo) {
         assertInitialized();
         IterationItemInformation item = startInfo.getItem();
         ProcessedItemType processedItem = new ProcessedItemType()
@@ -125,9 +219,8 @@ public class ActivityItemProcessingStatistics extends Initializable {
                 .startTimestamp(XmlTypeConverter.createXMLGregorianCalendar(startInfo.getStartTimeMillis()))
                 .operationId(getNextOperationId());
 
-        List<ProcessedItemType> currentList = value.getCurrent();
-        currentList.add(processedItem);
-        LOGGER.trace("Recorded current operation. Current list size: {}. Operation: {}", currentList.size(), startInfo);
+        currentOperations.put(processedItem.getOperationId(), processedItem);
+        LOGGER.trace("Recorded current operation. Current list size: {}. Operation: {}", currentOperations.size(), startInfo);
 
         return new OperationImpl(startInfo, processedItem);
     }
@@ -168,64 +261,44 @@ public class ActivityItemProcessingStatistics extends Initializable {
     }
 
     /**
-     * Records the operation end. Must be synchronized because it is called externally (through Operation interface).
+     * Records the operation end. Called externally (through Operation interface), so it must be thread safe.
+     * It does not touch the {@link #value}; the information is merged into it in {@link #getValueCopy()}.
      */
-    private synchronized void recordOperationEnd(OperationImpl operation, QualifiedItemProcessingOutcomeType outcome,
+    private void recordOperationEnd(OperationImpl operation, QualifiedItemProcessingOutcomeType outcome,
             Throwable exception) {
-        removeFromCurrentOperations(value, operation);
-        addToProcessedItemSet(value, operation, outcome, exception);
+        removeFromCurrentOperations(operation);
+        addToProcessedItemSet(operation, outcome, exception);
         if (areRunRecordsSupported()) {
-            updateMatchingRunRecord(getActivityRunStartTimestamp(), operation.getEndTimestamp());
+            lastOperationEndTimestamp.accumulateAndGet(operation.endTimeMillis, Math::max);
         }
     }
 
     private long getActivityRunStartTimestamp() {
-        return getActivityRun().getStartTimestampRequired();
-    }
-
-    private @NotNull AbstractActivityRun<?, ?, ?> getActivityRun() {
-        return activityState.getActivityRun();
+        return runStartTimestampSupplier.getAsLong();
     }
 
-    /** Updates the corresponding `processed` statistics. Creates and stores appropriate `lastItem` record. */
-    private void addToProcessedItemSet(ActivityItemProcessingStatisticsType part, OperationImpl operation,
-            QualifiedItemProcessingOutcomeType outcome, Throwable exception) {
-
-        ProcessedItemSetType itemSet = findOrCreateProcessedItemSet(part, outcome);
-        itemSet.setCount(or0(itemSet.getCount()) + 1);
-
-        itemSet.setDuration(or0(itemSet.getDuration()) + operation.getDurationRounded());
-        ProcessedItemType processedItemClone = operation.processedItem.cloneWithoutId(); // mainly to remove the parent
-        processedItemClone.setEndTimestamp(XmlTypeConverter.createXMLGregorianCalendar(operation.endTimeMillis));
-        if (exception != null) {
-            processedItemClone.setMessage(exception.getMessage());
-        }
-        itemSet.setLastItem(processedItemClone);
+    private @NotNull CurrentActivityState<?> getActivityState() {
+        return requireNonNull(activityState, "No activity state");
     }
 
-    /** Finds item set, creating _and adding to the list_ if necessary. */
-    private ProcessedItemSetType findOrCreateProcessedItemSet(ActivityItemProcessingStatisticsType part,
-            QualifiedItemProcessingOutcomeType outcome) {
-        return part.getProcessed().stream()
-                .filter(itemSet -> Objects.equals(itemSet.getOutcome(), outcome))
-                .findFirst()
-                .orElseGet(
-                        () -> ActivityItemProcessingStatisticsUtil.add(
-                                part.getProcessed(),
-                                new ProcessedItemSetType()
-                                        .outcome(outcome.cloneWithoutId())));
+    /** Updates the corresponding `processed` statistics and remembers the operation as the `lastItem`. */
+    private void addToProcessedItemSet(OperationImpl operation, QualifiedItemProcessingOutcomeType outcome,
+            Throwable exception) {
+        processed.computeIfAbsent(
+                        new OutcomeKey(outcome),
+                        k -> new ProcessedItems(outcome, processedSetsCounter.getAndIncrement()))
+                .add(operation, exception);
     }
 
-    /** Removes operation (given by id) from current operations in given task part. */
-    private void removeFromCurrentOperations(ActivityItemProcessingStatisticsType part, OperationImpl operation) {
-        List<ProcessedItemType> currentOperations = part.getCurrent();
-        boolean removed = currentOperations.removeIf(item -> Objects.equals(operation.operationId, item.getOperationId()));
-        if (removed) {
+    /** Removes operation (given by id) from current operations. */
+    private void removeFromCurrentOperations(OperationImpl operation) {
+        ProcessedItemType removed = currentOperations.remove(operation.operationId);
+        if (removed != null) {
             LOGGER.trace("Removed operation {} from the list of current operations. Remaining: {}",
                     operation, currentOperations.size());
         } else {
             LOGGER.warn("Couldn't remove operation {} from the list of current operations: {}",
-                    operation, currentOperations);
+                    operation, currentOperations.values());
         }
     }
 
@@ -251,8 +324,113 @@ public class ActivityItemProcessingStatistics extends Initializable {
         return ActivityItemProcessingStatisticsUtil.format(source, options);
     }
 
+    /** Cheaper than computing the value from {@link #getValueCopy()}, as it is called for each item processed. */
     public int getItemsProcessed() {
-        return ActivityItemProcessingStatisticsUtil.getItemsProcessed(getValueCopy());
+        assertInitialized();
+        int sum = initialItemsProcessed;
+        for (ProcessedItems items : processed.values()) {
+            sum += items.count.intValue();
+        }
+        return sum;
+    }
+
+    /** Key for {@link #processed} map. Cheaper to compute hash code for than for the outcome bean. */
+    private static class OutcomeKey {
+
+        private final ItemProcessingOutcomeType outcome;
+        private final String qualifierUri;
+
+        private OutcomeKey(@NotNull QualifiedItemProcessingOutcomeType qualifiedOutcome) {
+            this.outcome = qualifiedOutcome.getOutcome();
+            this.qualifierUri = qualifiedOutcome.getQualifierUri();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof OutcomeKey)) {
+                return false;
+            }
+            OutcomeKey that = (OutcomeKey) o;
+            return outcome == that.outcome && Objects.equals(qualifierUri, that.qualifierUri);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(outcome, qualifierUri);
+        }
+    }
+
+    /** Accumulates information about items processed with given outcome. The "native" form of {@link ProcessedItemSetType}. */
+    private static class ProcessedItems {
+
+        @NotNull private final QualifiedItemProcessingOutcomeType outcome;
+
+        /** Order of the first occurrence, see {@link #processedSetsCounter}. */
+        private final int order;
+
+        @NotNull private final LongAdder count = new LongAdder();
+        @NotNull private final DoubleAdder duration = new DoubleAdder();
+
+        /** The latest item processed. The bean is created only when needed. */
+        private volatile LastItem lastItem;
+
+        private ProcessedItems(@NotNull QualifiedItemProcessingOutcomeType outcome, int order) {
+            this.outcome = outcome.cloneWithoutId();
+            this.order = order;
+        }
+
+        private void add(OperationImpl operation, Throwable exception) {
+            count.increment();
+            duration.add(operation.getDurationRounded());
+            lastItem = new LastItem(operation, exception != null ? exception.getMessage() : null);
+        }
+
+        /** Adds this information to the corresponding set in given statistics, creating the set if needed. */
+        private void addTo(ActivityItemProcessingStatisticsType part) {
+            ProcessedItemSetType itemSet = findOrCreateProcessedItemSet(part, outcome);
+            itemSet.setCount(or0(itemSet.getCount()) + count.intValue());
+            itemSet.setDuration(or0(itemSet.getDuration()) + duration.sum());
+            LastItem currentLastItem = lastItem;
+            if (currentLastItem != null) {
+                itemSet.setLastItem(currentLastItem.toBean());
+            }
+        }
+    }
+
+    private static class LastItem {
+
+        @NotNull private final OperationImpl operation;
+        private final String message;
+
+        private LastItem(@NotNull OperationImpl operation, String message) {
+            this.operation = operation;
+            this.message = message;
+        }
+
+        private ProcessedItemType toBean() {
+            ProcessedItemType processedItemClone = operation.processedItem.cloneWithoutId(); // mainly to remove the parent
+            processedItemClone.setEndTimestamp(XmlTypeConverter.createXMLGregorianCalendar(operation.endTimeMillis));
+            if (message != null) {
+                processedItemClone.setMessage(message);
+            }
+            return processedItemClone;
+        }
+    }
+
+    /** Finds item set, creating _and adding to the list_ if necessary. */
+    private static ProcessedItemSetType findOrCreateProcessedItemSet(ActivityItemProcessingStatisticsType part,
+            QualifiedItemProcessingOutcomeType outcome) {
+        return part.getProcessed().stream()
+                .filter(itemSet -> Objects.equals(itemSet.getOutcome(), outcome))
+                .findFirst()
+                .orElseGet(
+                        () -> ActivityItemProcessingStatisticsUtil.add(
+                                part.getProcessed(),
+                                new ProcessedItemSetType()
+                                        .outcome(outcome.cloneWithoutId())));
     }
 
     /**
@@ -287,7 +465,7 @@ public class ActivityItemProcessingStatistics extends Initializable {
             setEndTimes();
             recordOperationEnd(this, outcome, exception);
             if (startInfo.isSimpleCaller()) {
-                activityState.getLiveProgress().increment(outcome, ActivityProgress.Counters.COMMITTED);
+                getActivityState().getLiveProgress().increment(outcome, ActivityProgress.Counters.COMMITTED);
                 updateStatisticsForSimpleClients();
             }
         }
@@ -329,6 +507,7 @@ public class ActivityItemProcessingStatistics extends Initializable {
     @Experimental
     private void updateStatisticsForSimpleClients() {
         try {
+            CurrentActivityState<?> activityState = getActivityState();
             activityState.updateProgressAndStatisticsNoCommit();
             if (System.currentTimeMillis() > lastStatisticsUpdatedForSimpleClients + STATISTICS_UPDATE_INTERVAL) {
                 lastStatisticsUpdatedForSimpleClients = System.currentTimeMillis();
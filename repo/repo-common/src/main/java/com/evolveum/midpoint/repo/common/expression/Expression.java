@@ -126,6 +126,8 @@ public class Expression<V extends PrismValue, D extends ItemDefinition> {
 
             ExpressionEvaluationContext contextWithProcessedVariables = context.shallowClone();
             contextWithProcessedVariables.setVariables(processedVariables);
+            contextWithProcessedVariables.setInnerVariablesDefined(
+                    expressionType != null && !expressionType.getVariable().isEmpty());
             PrismValueDeltaSetTriple<V> outputTriple;
 
             ObjectReferenceType runAsRef = null;
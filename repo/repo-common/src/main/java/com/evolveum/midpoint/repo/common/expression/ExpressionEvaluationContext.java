@@ -120,6 +120,12 @@ public class ExpressionEvaluationContext {
      */
     private TransformationValueMetadataComputer valueMetadataComputer;
 
+    /**
+     * True if the expression defines its own variables (`variable` items). They are added to {@link #variables}
+     * by the expression itself, so the evaluators cannot tell them apart from the variables provided by the caller.
+     */
+    private boolean innerVariablesDefined;
+
     public ExpressionEvaluationContext(Collection<Source<?,?>> sources,
             VariablesMap variables, String contextDescription, Task task) {
         super();
@@ -251,6 +257,14 @@ public class ExpressionEvaluationContext {
         this.valueMetadataComputer = valueMetadataComputer;
     }
 
+    public boolean isInnerVariablesDefined() {
+        return innerVariablesDefined;
+    }
+
+    public void setInnerVariablesDefined(boolean innerVariablesDefined) {
+        this.innerVariablesDefined = innerVariablesDefined;
+    }
+
     public boolean hasDeltas() {
         return hasDeltas(sources) || variables != null && variables.haveDeltas();
     }
@@ -277,6 +291,7 @@ public class ExpressionEvaluationContext {
         clone.variableProducer = this.variableProducer;
         clone.valueMetadataComputer = this.valueMetadataComputer;
         clone.localContextDescription = this.localContextDescription;
+        clone.innerVariablesDefined = this.innerVariablesDefined;
         return clone;
     }
 }
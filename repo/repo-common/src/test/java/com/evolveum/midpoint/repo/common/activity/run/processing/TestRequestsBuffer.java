@@ -0,0 +1,247 @@
+/*
+ * Copyright (C) 2010-2022 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+package com.evolveum.midpoint.repo.common.activity.run.processing;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.testng.annotations.Test;
+
+import com.evolveum.midpoint.schema.AcknowledgementSink;
+import com.evolveum.midpoint.schema.result.OperationResult;
+import com.evolveum.midpoint.test.util.InfraTestMixin;
+import com.evolveum.midpoint.tools.testng.AbstractUnitTest;
+
+/**
+ * Tests {@link RequestsBuffer}: routing of correlated requests, stealing of uncorrelated ones, and draining
+ * of the buffer on shutdown.
+ */
+public class TestRequestsBuffer extends AbstractUnitTest implements InfraTestMixin {
+
+    private static final int CAPACITY_PER_WORKER = 4;
+
+    /**
+     * Workers poll the buffer concurrently, while requests are being submitted. Requests with the same correlation value
+     * must never be processed at the same time, and they must be processed in the order of submission.
+     */
+    @Test
+    public void test100CorrelatedRequestsAreNotProcessedConcurrently() throws Exception {
+        int workers = 4;
+        int correlationValues = 5;
+        int requestsCount = 2000;
+        RequestsBuffer<TestRequest> buffer = new RequestsBuffer<>(workers);
+
+        Set<Object> inProgress = Collections.synchronizedSet(new HashSet<>());
+        Map<Object, List<Integer>> processedByValue = new HashMap<>();
+        List<Integer> processedUncorrelated = Collections.synchronizedList(new ArrayList<>());
+        List<String> violations = Collections.synchronizedList(new ArrayList<>());
+        AtomicBoolean allSubmitted = new AtomicBoolean();
+
+        given("workers are polling the buffer");
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < workers; i++) {
+            int workerIndex = i;
+            Thread thread = new Thread(() -> {
+                for (;;) {
+                    boolean submitted = allSubmitted.get();
+                    TestRequest request = buffer.poll(workerIndex);
+                    if (request == null) {
+                        if (submitted) {
+                            return;
+                        }
+                        Thread.yield();
+                        continue;
+                    }
+                    Object value = request.correlationValue;
+                    if (value == null) {
+                        processedUncorrelated.add(request.sequentialNumber);
+                        continue;
+                    }
+                    if (!inProgress.add(value)) {
+                        violations.add("Concurrent processing of " + value + " in #" + workerIndex);
+                    }
+                    synchronized (processedByValue) {
+                        processedByValue.computeIfAbsent(value, k -> new ArrayList<>())
+                                .add(request.sequentialNumber);
+                    }
+                    Thread.yield(); // to give the other workers a chance to interfere
+                    inProgress.remove(value);
+                }
+            }, "worker-" + i);
+            threads.add(thread);
+            thread.start();
+        }
+
+        when("correlated and uncorrelated requests are submitted");
+        for (int i = 0; i < requestsCount; i++) {
+            TestRequest request = i % 3 == 0 ?
+                    request(i, null) : request(i, "value-" + i % correlationValues);
+            while (!buffer.offer(request)) {
+                // waiting for the workers
+            }
+        }
+        allSubmitted.set(true);
+        for (Thread thread : threads) {
+            thread.join(60000);
+            assertThat(thread.isAlive()).as("worker " + thread.getName() + " is alive").isFalse();
+        }
+
+        then("no correlation value was processed concurrently");
+        assertThat(violations).isEmpty();
+
+        and("correlated requests were processed in the order of submission");
+        int processedCorrelated = 0;
+        for (Map.Entry<Object, List<Integer>> entry : processedByValue.entrySet()) {
+            assertThat(entry.getValue()).as("requests for " + entry.getKey()).isSorted();
+            processedCorrelated += entry.getValue().size();
+        }
+
+        and("all requests were processed exactly once");
+        assertThat(processedUncorrelated).doesNotHaveDuplicates();
+        assertThat(processedCorrelated + processedUncorrelated.size()).isEqualTo(requestsCount);
+        assertThat(buffer.getQueueDepths()).containsOnly(0);
+    }
+
+    /** Idle worker steals uncorrelated requests from the others, but never the correlated ones. */
+    @Test
+    public void test110StealingPreservesCorrelatedOrder() throws Exception {
+        RequestsBuffer<TestRequest> buffer = new RequestsBuffer<>(2);
+
+        given("correlated requests for worker #0 and uncorrelated requests for both workers");
+        // Correlation value of 0 is routed to worker #0 (Integer hash code is the value itself).
+        buffer.offer(request(1, 0));
+        buffer.offer(request(2, null)); // worker #0 (round robin)
+        buffer.offer(request(3, 0));
+        buffer.offer(request(4, null)); // worker #1
+        buffer.offer(request(5, null)); // worker #0
+        buffer.offer(request(6, 0));
+        assertThat(buffer.getQueueDepths()).containsExactly(5, 1);
+
+        when("worker #1 takes everything it can");
+        List<Integer> takenByWorker1 = pollAll(buffer, 1);
+
+        then("it gets its own request and steals the uncorrelated requests of worker #0 from the tail");
+        assertThat(takenByWorker1).containsExactly(4, 5, 2);
+        assertThat(buffer.getQueueDepths()).containsExactly(3, 0);
+
+        when("worker #0 takes its requests");
+        List<Integer> takenByWorker0 = pollAll(buffer, 0);
+
+        then("it gets all correlated requests in the order of submission");
+        assertThat(takenByWorker0).containsExactly(1, 3, 6);
+        assertThat(buffer.getQueueDepths()).containsExactly(0, 0);
+    }
+
+    /** The owner prefers its correlated requests, and takes its uncorrelated ones from the head. */
+    @Test
+    public void test120OwnerTakesCorrelatedFirst() throws Exception {
+        RequestsBuffer<TestRequest> buffer = new RequestsBuffer<>(1);
+
+        given("mixed requests");
+        buffer.offer(request(1, null));
+        buffer.offer(request(2, "a"));
+        buffer.offer(request(3, null));
+        buffer.offer(request(4, "b"));
+
+        expect("correlated ones go first, everything in the order of submission");
+        assertThat(pollAll(buffer, 0)).containsExactly(2, 4, 1, 3);
+    }
+
+    /** When the workers are gone, remaining requests are not acknowledged as processed, and the slots are freed. */
+    @Test
+    public void test130NackAllRequestsDrainsTheBuffer() throws Exception {
+        int workers = 2;
+        int capacity = workers * CAPACITY_PER_WORKER;
+        RequestsBuffer<TestRequest> buffer = new RequestsBuffer<>(workers);
+        OperationResult result = createOperationResult();
+
+        given("the buffer is full");
+        List<TestRequest> requests = new ArrayList<>();
+        for (int i = 0; i < capacity; i++) {
+            TestRequest request = request(i, i % 2 == 0 ? null : "value-" + i);
+            requests.add(request);
+            assertThat(buffer.offer(request)).as("offer #" + i).isTrue();
+        }
+
+        expect("no more requests are accepted");
+        assertThat(buffer.offer(request(capacity, null))).isFalse();
+
+        when("all requests are nacked");
+        int nacked = buffer.nackAllRequests(result);
+
+        then("all of them are acknowledged as not released");
+        assertThat(nacked).isEqualTo(capacity);
+        for (TestRequest request : requests) {
+            assertThat(request.acknowledged).as("acknowledgement of " + request).containsExactly(false);
+        }
+        assertThat(buffer.getQueueDepths()).containsExactly(0, 0);
+        assertThat(buffer.poll(0)).isNull();
+        assertThat(buffer.poll(1)).isNull();
+
+        and("the slots are free again");
+        for (int i = 0; i < capacity; i++) {
+            assertThat(buffer.offer(request(i, null))).as("offer #" + i).isTrue();
+        }
+    }
+
+    /** Creates uncorrelated request if the value is null. */
+    private static TestRequest request(int sequentialNumber, Object correlationValue) {
+        return correlationValue != null ?
+                new CorrelatedTestRequest(sequentialNumber, correlationValue) : new TestRequest(sequentialNumber, null);
+    }
+
+    private List<Integer> pollAll(RequestsBuffer<TestRequest> buffer, int workerIndex) {
+        List<Integer> taken = new ArrayList<>();
+        TestRequest request;
+        while ((request = buffer.poll(workerIndex)) != null) {
+            taken.add(request.sequentialNumber);
+        }
+        return taken;
+    }
+
+    private static class TestRequest implements AcknowledgementSink {
+
+        private final int sequentialNumber;
+        private final Object correlationValue;
+        private final List<Boolean> acknowledged = new ArrayList<>();
+
+        TestRequest(int sequentialNumber, Object correlationValue) {
+            this.sequentialNumber = sequentialNumber;
+            this.correlationValue = correlationValue;
+        }
+
+        @Override
+        public void acknowledge(boolean release, OperationResult result) {
+            acknowledged.add(release);
+        }
+
+        @Override
+        public String toString() {
+            return "#" + sequentialNumber + " (" + correlationValue + ")";
+        }
+    }
+
+    private static class CorrelatedTestRequest extends TestRequest implements CorrelatableProcessingRequest {
+
+        CorrelatedTestRequest(int sequentialNumber, Object correlationValue) {
+            super(sequentialNumber, correlationValue);
+        }
+
+        @Override
+        public Object getCorrelationValue() {
+            return correlationValue;
+        }
+    }
+}
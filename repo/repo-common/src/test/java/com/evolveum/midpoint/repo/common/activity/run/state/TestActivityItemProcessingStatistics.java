@@ -0,0 +1,288 @@
+/*
+ * Copyright (C) 2010-2022 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+package com.evolveum.midpoint.repo.common.activity.run.state;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+import static com.evolveum.midpoint.util.MiscUtil.or0;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+
+import org.testng.annotations.BeforeSuite;
+import org.testng.annotations.Test;
+
+import com.evolveum.midpoint.prism.util.PrismTestUtil;
+import com.evolveum.midpoint.prism.xml.XmlTypeConverter;
+import com.evolveum.midpoint.schema.MidPointPrismContextFactory;
+import com.evolveum.midpoint.schema.statistics.IterationItemInformation;
+import com.evolveum.midpoint.schema.statistics.IterativeOperationStartInfo;
+import com.evolveum.midpoint.schema.statistics.Operation;
+import com.evolveum.midpoint.schema.util.task.ActivityItemProcessingStatisticsUtil;
+import com.evolveum.midpoint.test.util.InfraTestMixin;
+import com.evolveum.midpoint.tools.testng.AbstractUnitTest;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.*;
+
+/**
+ * Tests {@link ActivityItemProcessingStatistics} updated by concurrent workers. The value obtained from
+ * {@link ActivityItemProcessingStatistics#getValueCopy()} is compared with the value computed by {@link ReferenceStatistics},
+ * i.e. in the way the statistics were updated under the monitor, item by item, before they were made lock-free.
+ */
+public class TestActivityItemProcessingStatistics extends AbstractUnitTest implements InfraTestMixin {
+
+    private static final int WORKERS = 8;
+    private static final int ITEMS_PER_WORKER = 500;
+
+    private static final QualifiedItemProcessingOutcomeType SUCCESS = outcome(ItemProcessingOutcomeType.SUCCESS);
+    private static final QualifiedItemProcessingOutcomeType FAILURE = outcome(ItemProcessingOutcomeType.FAILURE);
+    private static final QualifiedItemProcessingOutcomeType SKIP = outcome(ItemProcessingOutcomeType.SKIP);
+    private static final List<QualifiedItemProcessingOutcomeType> OUTCOMES = List.of(SUCCESS, FAILURE, SKIP);
+
+    @BeforeSuite
+    public void setup() throws Exception {
+        PrismTestUtil.resetPrismContext(MidPointPrismContextFactory.FACTORY);
+    }
+
+    @Test
+    public void test100ConcurrentWorkers() throws Exception {
+        long runStart = System.currentTimeMillis() - 1000;
+        ActivityItemProcessingStatisticsType initialValue = createInitialValue(runStart);
+
+        ActivityItemProcessingStatistics statistics =
+                new ActivityItemProcessingStatistics(null, () -> true, () -> runStart);
+        statistics.initialize(initialValue);
+        statistics.recordRunStart(runStart);
+        ReferenceStatistics reference = new ReferenceStatistics(initialValue, runStart);
+
+        given("each outcome occurred once, to fix the order of processed item sets");
+        for (QualifiedItemProcessingOutcomeType outcome : OUTCOMES) {
+            process(statistics, reference, "first-" + outcome.getOutcome().value(), outcome);
+        }
+
+        when("workers process items concurrently");
+        Map<String, ProcessedItemType> lastItemCandidates = new ConcurrentHashMap<>();
+        Map<String, QualifiedItemProcessingOutcomeType> candidateOutcomes = new ConcurrentHashMap<>();
+        CountDownLatch startLatch = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        List<Throwable> errors = new ArrayList<>();
+        for (int w = 0; w < WORKERS; w++) {
+            int workerIndex = w;
+            Thread thread = new Thread(() -> {
+                try {
+                    startLatch.await();
+                    for (int i = 0; i < ITEMS_PER_WORKER; i++) {
+                        String name = "item-" + workerIndex + "-" + i;
+                        QualifiedItemProcessingOutcomeType outcome = OUTCOMES.get(i % OUTCOMES.size());
+                        lastItemCandidates.put(name, process(statistics, reference, name, outcome));
+                        candidateOutcomes.put(name, outcome);
+                        if (i % 50 == 0) {
+                            statistics.getValueCopy(); // readers run concurrently with the workers
+                        }
+                    }
+                } catch (Throwable t) {
+                    synchronized (errors) {
+                        errors.add(t);
+                    }
+                }
+            }, "worker-" + w);
+            threads.add(thread);
+            thread.start();
+        }
+        startLatch.countDown();
+        for (Thread thread : threads) {
+            thread.join(60000);
+            assertThat(thread.isAlive()).as("worker " + thread.getName() + " is alive").isFalse();
+        }
+        assertThat(errors).isEmpty();
+
+        then("counts, durations and run records are the same as computed item by item");
+        ActivityItemProcessingStatisticsType value = statistics.getValueCopy();
+        displayValue("statistics after concurrent processing", ActivityItemProcessingStatistics.format(value));
+        ActivityItemProcessingStatisticsType expected = reference.getValue();
+        assertCountsAndDurations(value, expected);
+        assertRunRecords(value, expected);
+        assertThat(value.getCurrent()).as("current operations").isEmpty();
+        assertThat(statistics.getItemsProcessed())
+                .isEqualTo(ActivityItemProcessingStatisticsUtil.getItemsProcessed(expected));
+
+        and("last items are ones of the items processed with given outcome");
+        for (ProcessedItemSetType itemSet : value.getProcessed()) {
+            ProcessedItemType lastItem = itemSet.getLastItem();
+            ProcessedItemType candidate = lastItemCandidates.get(lastItem.getName());
+            assertThat(candidate).as("last item candidate for " + lastItem.getName()).isNotNull();
+            assertLastItem(lastItem, candidate);
+            assertThat(candidateOutcomes.get(lastItem.getName())).as("outcome of " + lastItem.getName())
+                    .isEqualTo(itemSet.getOutcome());
+        }
+
+        when("one more item for each outcome is processed after the workers finished");
+        for (QualifiedItemProcessingOutcomeType outcome : OUTCOMES) {
+            process(statistics, reference, "last-" + outcome.getOutcome().value(), outcome);
+        }
+
+        then("the whole value is the same as computed item by item, including the last items");
+        value = statistics.getValueCopy();
+        expected = reference.getValue();
+        assertCountsAndDurations(value, expected);
+        assertRunRecords(value, expected);
+        for (ProcessedItemSetType itemSet : value.getProcessed()) {
+            assertLastItem(itemSet.getLastItem(), findSet(expected, itemSet.getOutcome()).getLastItem());
+        }
+
+        when("an item is started but not finished");
+        statistics.recordOperationStart(startInfo("in-progress"));
+
+        then("it is among the current operations only");
+        value = statistics.getValueCopy();
+        assertThat(value.getCurrent()).hasSize(1);
+        assertThat(value.getCurrent().get(0).getName()).isEqualTo("in-progress");
+        assertCountsAndDurations(value, expected);
+    }
+
+    /** Processes the item, recording it in both statistics. Returns the expected "last item" information. */
+    private ProcessedItemType process(ActivityItemProcessingStatistics statistics, ReferenceStatistics reference,
+            String name, QualifiedItemProcessingOutcomeType outcome) {
+        Operation operation = statistics.recordOperationStart(startInfo(name));
+        Throwable exception = outcome.equals(FAILURE) ? new RuntimeException("Failed: " + name) : null;
+        operation.done(outcome, exception);
+        return reference.recordOperationEnd(operation, outcome, exception);
+    }
+
+    private IterativeOperationStartInfo startInfo(String name) {
+        return new IterativeOperationStartInfo(
+                new IterationItemInformation(name, null, UserType.COMPLEX_TYPE, "oid-" + name));
+    }
+
+    private ActivityItemProcessingStatisticsType createInitialValue(long runStart) {
+        ActivityItemProcessingStatisticsType initialValue = new ActivityItemProcessingStatisticsType();
+        initialValue.getProcessed().add(
+                new ProcessedItemSetType()
+                        .outcome(SUCCESS.clone())
+                        .count(10)
+                        .duration(1.5));
+        initialValue.getRun().add(
+                new ActivityRunRecordType()
+                        .startTimestamp(XmlTypeConverter.createXMLGregorianCalendar(runStart - 10000))
+                        .endTimestamp(XmlTypeConverter.createXMLGregorianCalendar(runStart - 5000)));
+        return initialValue;
+    }
+
+    private void assertCountsAndDurations(
+            ActivityItemProcessingStatisticsType value, ActivityItemProcessingStatisticsType expected) {
+        assertThat(value.getProcessed()).hasSameSizeAs(expected.getProcessed());
+        for (int i = 0; i < expected.getProcessed().size(); i++) {
+            ProcessedItemSetType expectedSet = expected.getProcessed().get(i);
+            ProcessedItemSetType realSet = value.getProcessed().get(i);
+            String desc = "set #" + i + " (" + expectedSet.getOutcome().getOutcome() + ")";
+            assertThat(realSet.getOutcome()).as(desc + " outcome").isEqualTo(expectedSet.getOutcome());
+            assertThat(realSet.getCount()).as(desc + " count").isEqualTo(expectedSet.getCount());
+            assertThat(realSet.getDuration()).as(desc + " duration")
+                    .isCloseTo(expectedSet.getDuration(), within(0.000001));
+        }
+    }
+
+    private void assertRunRecords(ActivityItemProcessingStatisticsType value, ActivityItemProcessingStatisticsType expected) {
+        assertThat(value.getRun()).as("run records").isEqualTo(expected.getRun());
+    }
+
+    /** The operation ID is not compared, as it is not visible through the {@link Operation} interface. */
+    private void assertLastItem(ProcessedItemType real, ProcessedItemType expected) {
+        assertThat(real.getName()).as("name").isEqualTo(expected.getName());
+        assertThat(real.getType()).as("type").isEqualTo(expected.getType());
+        assertThat(real.getOid()).as("oid").isEqualTo(expected.getOid());
+        assertThat(real.getStartTimestamp()).as("start timestamp").isEqualTo(expected.getStartTimestamp());
+        assertThat(real.getEndTimestamp()).as("end timestamp").isEqualTo(expected.getEndTimestamp());
+        assertThat(real.getMessage()).as("message").isEqualTo(expected.getMessage());
+    }
+
+    private static ProcessedItemSetType findSet(
+            ActivityItemProcessingStatisticsType value, QualifiedItemProcessingOutcomeType outcome) {
+        return value.getProcessed().stream()
+                .filter(set -> Objects.equals(set.getOutcome(), outcome))
+                .findFirst()
+                .orElseThrow(() -> new AssertionError("No item set for " + outcome));
+    }
+
+    private static QualifiedItemProcessingOutcomeType outcome(ItemProcessingOutcomeType outcome) {
+        return new QualifiedItemProcessingOutcomeType().outcome(outcome);
+    }
+
+    /**
+     * Keeps the statistics in the bean form, updated under the monitor for each item processed.
+     * This is how {@link ActivityItemProcessingStatistics} worked before the processed items were accumulated lock-free.
+     */
+    private static class ReferenceStatistics {
+
+        private final ActivityItemProcessingStatisticsType value;
+        private final long runStart;
+
+        private ReferenceStatistics(ActivityItemProcessingStatisticsType initialValue, long runStart) {
+            this.value = initialValue.clone();
+            this.runStart = runStart;
+        }
+
+        /** Records the operation end and returns the resulting last item information. */
+        private synchronized ProcessedItemType recordOperationEnd(
+                Operation operation, QualifiedItemProcessingOutcomeType outcome, Throwable exception) {
+            ProcessedItemSetType itemSet = findOrCreateSet(outcome);
+            itemSet.setCount(or0(itemSet.getCount()) + 1);
+            itemSet.setDuration(or0(itemSet.getDuration()) + operation.getDurationRounded());
+
+            IterationItemInformation item = operation.getIterationItemInformation();
+            ProcessedItemType lastItem = new ProcessedItemType()
+                    .name(item.getObjectName())
+                    .type(item.getObjectType())
+                    .oid(item.getObjectOid())
+                    .startTimestamp(XmlTypeConverter.createXMLGregorianCalendar(operation.getStartInfo().getStartTimeMillis()))
+                    .endTimestamp(XmlTypeConverter.createXMLGregorianCalendar(operation.getEndTimeMillis()));
+            if (exception != null) {
+                lastItem.setMessage(exception.getMessage());
+            }
+            itemSet.setLastItem(lastItem);
+
+            // Operations of concurrent workers may come here out of order, while the real implementation keeps
+            // the latest end timestamp. Under the monitor the last operation recorded was also the one ending last.
+            ActivityRunRecordType runRecord = findOrCreateRunRecord();
+            if (runRecord.getEndTimestamp() == null
+                    || XmlTypeConverter.toMillis(runRecord.getEndTimestamp()) < operation.getEndTimeMillis()) {
+                runRecord.setEndTimestamp(XmlTypeConverter.createXMLGregorianCalendar(operation.getEndTimeMillis()));
+            }
+
+            return lastItem.clone();
+        }
+
+        private synchronized ActivityItemProcessingStatisticsType getValue() {
+            return value.clone();
+        }
+
+        private ProcessedItemSetType findOrCreateSet(QualifiedItemProcessingOutcomeType outcome) {
+            return value.getProcessed().stream()
+                    .filter(set -> Objects.equals(set.getOutcome(), outcome))
+                    .findFirst()
+                    .orElseGet(() -> ActivityItemProcessingStatisticsUtil.add(
+                            value.getProcessed(),
+                            new ProcessedItemSetType().outcome(outcome.clone())));
+        }
+
+        private ActivityRunRecordType findOrCreateRunRecord() {
+            for (ActivityRunRecordType record : value.getRun()) {
+                if (XmlTypeConverter.toMillis(record.getStartTimestamp()) == runStart) {
+                    return record;
+                }
+            }
+            ActivityRunRecordType record = new ActivityRunRecordType()
+                    .startTimestamp(XmlTypeConverter.createXMLGregorianCalendar(runStart));
+            value.getRun().add(record);
+            return record;
+        }
+    }
+}
@@ -22,6 +22,10 @@ import com.evolveum.midpoint.util.logging.TraceManager;
 
 /**
  * Cache for {@link MExtItem} catalog.
+ *
+ * Lookups of already known items do not take any lock, only creation of a new `m_ext_item` row
+ * is serialized (within this node).
+ * Concurrent creation of the same item by other nodes is handled by the unique constraint on the table.
  */
 public class ExtItemCache {
 
@@ -31,7 +35,7 @@ public class ExtItemCache {
     private final Map<MExtItem.Key, MExtItem> keyToExtItem = new ConcurrentHashMap<>();
 
     // WARNING: Each .get() creates new connection, always use in try-with-resource block!
-    private Supplier<JdbcSession> jdbcSessionSupplier;
+    private volatile Supplier<JdbcSession> jdbcSessionSupplier;
 
     /**
      * Initializes the ext-item cache.
@@ -65,7 +69,7 @@ public class ExtItemCache {
         keyToExtItem.put(row.key(), row);
     }
 
-    public synchronized @NotNull MExtItem resolveExtensionItem(@NotNull MExtItem.Key extItemKey) {
+    public @NotNull MExtItem resolveExtensionItem(@NotNull MExtItem.Key extItemKey) {
         if (jdbcSessionSupplier == null) {
             throw new IllegalStateException("Ext item cache was not initialized yet!");
         }
@@ -75,6 +79,16 @@ public class ExtItemCache {
             return extItem;
         }
 
+        return createExtensionItem(extItemKey);
+    }
+
+    private synchronized @NotNull MExtItem createExtensionItem(@NotNull MExtItem.Key extItemKey) {
+        // Other thread may have created the item while we were waiting for the lock.
+        MExtItem extItem = keyToExtItem.get(extItemKey);
+        if (extItem != null) {
+            return extItem;
+        }
+
         QExtItem ei = QExtItem.DEFAULT;
         try (JdbcSession jdbcSession = jdbcSessionSupplier.get().startTransaction()) {
             Integer id = jdbcSession.newInsert(ei)
@@ -89,7 +103,12 @@ public class ExtItemCache {
             updateMaps(extItem);
         } catch (RuntimeException e) {
             if (SqaleUtils.isUniqueConstraintViolation(e)) {
+                // created concurrently by another node
                 extItem = retrieveFromDb(extItemKey);
+                if (extItem == null) {
+                    throw new IllegalStateException(
+                            "Ext item " + extItemKey + " violates unique constraint but was not found", e);
+                }
             } else {
                 throw e;
             }
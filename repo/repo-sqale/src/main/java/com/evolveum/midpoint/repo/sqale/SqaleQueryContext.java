@@ -6,11 +6,20 @@
  */
 package com.evolveum.midpoint.repo.sqale;
 
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
 import java.util.Collection;
+import java.util.List;
 import java.util.UUID;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 import javax.xml.namespace.QName;
 
 import com.querydsl.core.types.Predicate;
+import com.querydsl.core.types.dsl.Expressions;
+import com.querydsl.sql.Configuration;
+import com.querydsl.sql.SQLBindings;
 import com.querydsl.sql.SQLQuery;
 import org.jetbrains.annotations.NotNull;
 
@@ -33,9 +42,13 @@ import com.evolveum.midpoint.xml.ns._public.common.common_3.ObjectType;
 public class SqaleQueryContext<S, Q extends FlexibleRelationalPathBase<R>, R>
         extends SqlQueryContext<S, Q, R> {
 
+    /** Row estimate of the top plan node in the output of `EXPLAIN (FORMAT JSON)`. */
+    private static final Pattern PLAN_ROWS_PATTERN = Pattern.compile("\"Plan Rows\":\\s*(\\d+)");
+
     /**
      * Flag guarding whether we need to refresh organization closure before executing
      * the actual query.
+     * Closure is maintained incrementally, refresh only applies queued changes in deferred mode.
      */
     private boolean containsOrgFilter = false;
 
@@ -169,6 +182,39 @@ public class SqaleQueryContext<S, Q extends FlexibleRelationalPathBase<R>, R>
         return (SqaleQueryContext<?, ?, ?>) super.parentContext();
     }
 
+    /**
+     * Returns the number of rows estimated by PostgreSQL planner for the query.
+     * Planner uses table statistics, so the estimate is good for queries without conditions
+     * (it is based on the table size then) or with simple conditions on columns, but it can be
+     * quite off for complex conditions (e.g. with subqueries).
+     */
+    @Override
+    public int executeCountEstimate(JdbcSession jdbcSession) {
+        SQLBindings sql = sqlQuery.clone(jdbcSession.connection())
+                .select(Expressions.ONE)
+                .getSQL();
+        Configuration configuration = repositoryContext().getQuerydslConfiguration();
+        try (PreparedStatement stmt = jdbcSession.connection()
+                .prepareStatement("EXPLAIN (FORMAT JSON) " + sql.getSQL())) {
+            List<Object> bindings = sql.getNullFriendlyBindings();
+            for (int i = 0; i < bindings.size(); i++) {
+                configuration.set(stmt, null, i + 1, bindings.get(i));
+            }
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (rs.next()) {
+                    Matcher matcher = PLAN_ROWS_PATTERN.matcher(rs.getString(1));
+                    if (matcher.find()) {
+                        return (int) Math.min(Long.parseLong(matcher.group(1)), Integer.MAX_VALUE);
+                    }
+                }
+            }
+        } catch (SQLException e) {
+            throw new SystemException("Couldn't estimate count of the query results", e);
+        }
+        // Should not happen, but exact count is always a safe answer.
+        return executeCount(jdbcSession);
+    }
+
     @Override
     public void beforeQuery() {
         if (containsOrgFilter) {
@@ -30,6 +30,7 @@ import com.evolveum.midpoint.util.exception.SystemException;
 public class SqaleRepositoryConfiguration implements JdbcRepositoryConfiguration {
 
     private static final String PROPERTY_SQL_DURATION_WARNING_MS = "sqlDurationWarningMs";
+    private static final String PROPERTY_ITERATIVE_SEARCH_PREFETCH_THREADS = "iterativeSearchPrefetchThreads";
 
     private static final String DEFAULT_DRIVER = "org.postgresql.Driver";
     private static final SupportedDatabase DEFAULT_DATABASE = SupportedDatabase.POSTGRESQL;
@@ -59,6 +60,12 @@ public class SqaleRepositoryConfiguration implements JdbcRepositoryConfiguration
 
     private static final int DEFAULT_ITERATIVE_SEARCH_PAGE_SIZE = 100;
 
+    /**
+     * Prefetching of the next page for iterative search is opt-in, 0 means it's disabled.
+     * Each prefetching thread uses its own connection from the pool while reading the page.
+     */
+    private static final int DEFAULT_ITERATIVE_SEARCH_PREFETCH_THREADS = 0;
+
     private static final int DEFAULT_SQL_DURATION_WARNING_MS = 0; // 0 or less means no warning
 
     @NotNull private final Configuration configuration;
@@ -85,6 +92,7 @@ public class SqaleRepositoryConfiguration implements JdbcRepositoryConfiguration
     private int performanceStatisticsLevel;
 
     private int iterativeSearchByPagingBatchSize;
+    private int iterativeSearchPrefetchThreads;
     private boolean createMissingCustomColumns;
 
     private long sqlDurationWarningMs; // 0 or less means no warning
@@ -137,6 +145,8 @@ public class SqaleRepositoryConfiguration implements JdbcRepositoryConfiguration
 
         iterativeSearchByPagingBatchSize = configuration.getInt(
                 PROPERTY_ITERATIVE_SEARCH_BY_PAGING_BATCH_SIZE, DEFAULT_ITERATIVE_SEARCH_PAGE_SIZE);
+        iterativeSearchPrefetchThreads = Math.max(0, configuration.getInt(
+                PROPERTY_ITERATIVE_SEARCH_PREFETCH_THREADS, DEFAULT_ITERATIVE_SEARCH_PREFETCH_THREADS));
         createMissingCustomColumns =
                 configuration.getBoolean(PROPERTY_CREATE_MISSING_CUSTOM_COLUMNS, false);
 
@@ -296,6 +306,20 @@ public class SqaleRepositoryConfiguration implements JdbcRepositoryConfiguration
         this.iterativeSearchByPagingBatchSize = iterativeSearchByPagingBatchSize;
     }
 
+    /**
+     * Returns maximum number of background threads prefetching the next page of iterative search
+     * while the current page is being handled.
+     * Value of 0 means that the prefetching is disabled and pages are read only when needed.
+     */
+    public int getIterativeSearchPrefetchThreads() {
+        return iterativeSearchPrefetchThreads;
+    }
+
+    // exists because of testing
+    public void setIterativeSearchPrefetchThreads(int iterativeSearchPrefetchThreads) {
+        this.iterativeSearchPrefetchThreads = iterativeSearchPrefetchThreads;
+    }
+
     @Override
     public boolean isCreateMissingCustomColumns() {
         return createMissingCustomColumns;
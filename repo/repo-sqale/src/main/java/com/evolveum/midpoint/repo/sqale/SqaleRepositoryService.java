@@ -13,16 +13,25 @@ import java.sql.Connection;
 import java.sql.Driver;
 import java.sql.DriverManager;
 import java.sql.SQLException;
+import java.sql.Savepoint;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
 import java.util.stream.Collectors;
 import javax.xml.namespace.QName;
 
 import com.google.common.base.Strings;
+import com.google.common.collect.Lists;
 import com.google.common.collect.ObjectArrays;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.querydsl.core.Tuple;
 import com.querydsl.core.types.Path;
-import com.querydsl.core.types.dsl.Expressions;
 import com.querydsl.sql.SQLQuery;
 import org.apache.commons.lang3.Validate;
 import org.jetbrains.annotations.NotNull;
@@ -31,6 +40,7 @@ import org.springframework.beans.factory.annotation.Autowired;
 
 import com.evolveum.midpoint.common.crypto.CryptoUtil;
 import com.evolveum.midpoint.prism.*;
+import com.evolveum.midpoint.prism.delta.ContainerDelta;
 import com.evolveum.midpoint.prism.delta.ItemDelta;
 import com.evolveum.midpoint.prism.delta.ItemDeltaCollectionsUtil;
 import com.evolveum.midpoint.prism.delta.ObjectDelta;
@@ -40,6 +50,7 @@ import com.evolveum.midpoint.prism.path.ItemPath;
 import com.evolveum.midpoint.prism.polystring.PolyString;
 import com.evolveum.midpoint.prism.query.*;
 import com.evolveum.midpoint.prism.query.builder.S_ConditionEntry;
+import com.evolveum.midpoint.prism.query.builder.S_FilterExit;
 import com.evolveum.midpoint.prism.query.builder.S_MatchingRuleEntry;
 import com.evolveum.midpoint.prism.util.PrismUtil;
 import com.evolveum.midpoint.prism.xml.XmlTypeConverter;
@@ -58,6 +69,7 @@ import com.evolveum.midpoint.repo.sqale.update.AddObjectContext;
 import com.evolveum.midpoint.repo.sqale.update.RootUpdateContext;
 import com.evolveum.midpoint.repo.sqlbase.*;
 import com.evolveum.midpoint.repo.sqlbase.mapping.QueryTableMapping;
+import com.evolveum.midpoint.repo.sqlbase.perfmon.SqlPerformanceMonitorImpl;
 import com.evolveum.midpoint.repo.sqlbase.querydsl.FlexibleRelationalPathBase;
 import com.evolveum.midpoint.schema.*;
 import com.evolveum.midpoint.schema.constants.SchemaConstants;
@@ -105,6 +117,14 @@ public class SqaleRepositoryService extends SqaleServiceBase implements Reposito
 
     private static final int MAX_CONFLICT_WATCHERS = 10;
 
+    /** Keeps the number of bind parameters of a single getObjects query reasonable. */
+    private static final int MAX_OIDS_PER_GET_OBJECTS_QUERY = 1000;
+
+    /** Time spent by iterative search waiting for the next page read by the prefetch thread. */
+    private static final String OP_SEARCH_OBJECTS_ITERATIVE_PREFETCH_WAIT = "searchObjectsIterativePrefetchWait";
+
+    private static final long PREFETCH_THREAD_KEEP_ALIVE_SECONDS = 60;
+
     private static final Collection<SelectorOptions<GetOperationOptions>> GET_FOR_UPDATE_OPTIONS =
             SchemaService.get().getOperationOptionsBuilder().build();
 
@@ -115,6 +135,7 @@ public class SqaleRepositoryService extends SqaleServiceBase implements Reposito
                     .build();
 
     private final SqlQueryExecutor sqlQueryExecutor;
+    private final SqaleWorkBucketStore workBucketStore;
 
     @Autowired private SystemConfigurationChangeDispatcher systemConfigurationChangeDispatcher;
 
@@ -123,11 +144,25 @@ public class SqaleRepositoryService extends SqaleServiceBase implements Reposito
 
     private FullTextSearchConfigurationType fullTextSearchConfiguration;
 
+    private ExecutorService prefetchExecutor; // lazy, see prefetchExecutor()
+
     public SqaleRepositoryService(
             SqaleRepoContext repositoryContext,
             SqlPerformanceMonitorsCollection sqlPerformanceMonitorsCollection) {
         super(repositoryContext, sqlPerformanceMonitorsCollection);
         this.sqlQueryExecutor = new SqlQueryExecutor(repositoryContext);
+        this.workBucketStore = new SqaleWorkBucketStore(repositoryContext);
+    }
+
+    @Override
+    public void destroy() {
+        synchronized (this) {
+            if (prefetchExecutor != null) {
+                prefetchExecutor.shutdownNow();
+                prefetchExecutor = null;
+            }
+        }
+        super.destroy();
     }
 
     @Override
@@ -189,6 +224,90 @@ public class SqaleRepositoryService extends SqaleServiceBase implements Reposito
         return object;
     }
 
+    @Override
+    public @NotNull <T extends ObjectType> Map<String, PrismObject<T>> getObjects(
+            @NotNull Class<T> type,
+            @NotNull Collection<String> oids,
+            Collection<SelectorOptions<GetOperationOptions>> options,
+            @NotNull OperationResult parentResult)
+            throws SchemaException {
+
+        Objects.requireNonNull(type, "Object type must not be null.");
+        Objects.requireNonNull(oids, "OIDs must not be null.");
+        Objects.requireNonNull(parentResult, "Operation result must not be null.");
+        List<UUID> oidUuids = oids.stream()
+                .map(this::checkOid)
+                .distinct()
+                .collect(Collectors.toList());
+
+        logger.debug("Getting {} objects '{}': {}",
+                oidUuids.size(), type.getSimpleName(), parentResult.getOperation());
+
+        OperationResult operationResult = parentResult.subresult(opNamePrefix + OP_GET_OBJECTS)
+                .addQualifier(type.getSimpleName())
+                .setMinor()
+                .addParam("type", type.getName())
+                .addParam("count", oidUuids.size())
+                .build();
+
+        try {
+            Map<String, PrismObject<T>> objects = executeGetObjects(type, oidUuids, options);
+            operationResult.addReturn("found", objects.size());
+            return objects;
+        } catch (RuntimeException e) {
+            throw handledGeneralException(e, operationResult);
+        } catch (Throwable t) {
+            recordFatalError(operationResult, t);
+            throw t;
+        } finally {
+            operationResult.computeStatusIfUnknown();
+        }
+    }
+
+    private <T extends ObjectType> Map<String, PrismObject<T>> executeGetObjects(
+            Class<T> type,
+            List<UUID> oids,
+            Collection<SelectorOptions<GetOperationOptions>> options)
+            throws SchemaException {
+        Map<UUID, PrismObject<T>> loaded = new HashMap<>();
+        long opHandle = registerOperationStart(OP_GET_OBJECTS, type);
+        try (JdbcSession jdbcSession =
+                sqlRepoContext.newJdbcSession().startReadOnlyTransaction()) {
+            SqaleTableMapping<T, QObject<MObject>, MObject> rootMapping =
+                    sqlRepoContext.getMappingBySchemaType(type);
+            QObject<MObject> root = rootMapping.defaultAlias();
+
+            for (List<UUID> oidsChunk : Lists.partition(oids, MAX_OIDS_PER_GET_OBJECTS_QUERY)) {
+                List<Tuple> rows = jdbcSession.newQuery()
+                        .from(root)
+                        .select(rootMapping.selectExpressions(root, options))
+                        .where(root.oid.in(oidsChunk))
+                        .fetch();
+                for (Tuple row : rows) {
+                    if (row.get(root.fullObject) != null) {
+                        T object = rootMapping.toSchemaObject(row, root, options, jdbcSession, false);
+                        //noinspection unchecked
+                        loaded.put(row.get(root.oid), (PrismObject<T>) object.asPrismObject());
+                    }
+                }
+            }
+            jdbcSession.commit();
+        } finally {
+            registerOperationFinish(opHandle);
+        }
+
+        Map<String, PrismObject<T>> objects = new LinkedHashMap<>();
+        for (UUID oid : oids) {
+            PrismObject<T> object = loaded.get(oid);
+            if (object != null) {
+                InternalMonitor.recordRepositoryRead(type, object.getOid());
+                invokeConflictWatchers((w) -> w.afterGetObject(object));
+                objects.put(object.getOid(), object);
+            }
+        }
+        return objects;
+    }
+
     private UUID checkOid(String oid) {
         Objects.requireNonNull(oid, "OID must not be null");
         try {
@@ -301,26 +420,7 @@ public class SqaleRepositoryService extends SqaleServiceBase implements Reposito
                 .build();
 
         try {
-            PolyString name = object.getName();
-            if (name == null || Strings.isNullOrEmpty(name.getOrig())) {
-                throw new SchemaException("Attempt to add object without name.");
-            }
-
-            //noinspection ConstantConditions
-            logger.debug(
-                    "Adding object type '{}', overwrite={}, allowUnencryptedValues={}, name={} - {}",
-                    object.getCompileTimeClass().getSimpleName(), options.isOverwrite(),
-                    options.isAllowUnencryptedValues(), name.getOrig(), name.getNorm());
-
-            if (InternalsConfig.encryptionChecks && !RepoAddOptions.isAllowUnencryptedValues(options)) {
-                CryptoUtil.checkEncrypted(object);
-            }
-
-            if (InternalsConfig.consistencyChecks) {
-                object.checkConsistence(ConsistencyCheckScope.THOROUGH);
-            } else {
-                object.checkConsistence(ConsistencyCheckScope.MANDATORY_CHECKS_ONLY);
-            }
+            checkObjectToAdd(object, options);
 
             return object.getOid() == null || !options.isOverwrite()
                     ? executeAddObject(object)
@@ -336,6 +436,30 @@ public class SqaleRepositoryService extends SqaleServiceBase implements Reposito
         }
     }
 
+    private void checkObjectToAdd(@NotNull PrismObject<? extends ObjectType> object, @NotNull RepoAddOptions options)
+            throws SchemaException {
+        PolyString name = object.getName();
+        if (name == null || Strings.isNullOrEmpty(name.getOrig())) {
+            throw new SchemaException("Attempt to add object without name.");
+        }
+
+        //noinspection ConstantConditions
+        logger.debug(
+                "Adding object type '{}', overwrite={}, allowUnencryptedValues={}, name={} - {}",
+                object.getCompileTimeClass().getSimpleName(), options.isOverwrite(),
+                options.isAllowUnencryptedValues(), name.getOrig(), name.getNorm());
+
+        if (InternalsConfig.encryptionChecks && !RepoAddOptions.isAllowUnencryptedValues(options)) {
+            CryptoUtil.checkEncrypted(object);
+        }
+
+        if (InternalsConfig.consistencyChecks) {
+            object.checkConsistence(ConsistencyCheckScope.THOROUGH);
+        } else {
+            object.checkConsistence(ConsistencyCheckScope.MANDATORY_CHECKS_ONLY);
+        }
+    }
+
     private <T extends ObjectType> String executeAddObject(
             @NotNull PrismObject<T> object)
             throws SchemaException, ObjectAlreadyExistsException {
@@ -398,6 +522,133 @@ public class SqaleRepositoryService extends SqaleServiceBase implements Reposito
         }
     }
 
+    /**
+     * Adds all the objects in a single transaction.
+     * Each object is added after its own savepoint, so a failing object can be rolled back without affecting the others.
+     * OIDs are generated here (if missing), so each object is inserted by a single insert of its main row.
+     * Rows of related tables (containers, references) are collected and inserted at the end, in one JDBC batch per table.
+     * If this fails, the transaction is rolled back and the objects are added again, without the batching.
+     *
+     * Overwrite is more like modify, so it is not supported here - objects are added one by one in that case.
+     */
+    @Override
+    public @NotNull List<BulkOperationItemResult> addObjects(
+            @NotNull List<? extends PrismObject<? extends ObjectType>> objects,
+            @Nullable RepoAddOptions options,
+            @NotNull OperationResult parentResult) {
+        Objects.requireNonNull(objects, "Objects must not be null.");
+        Objects.requireNonNull(parentResult, "Operation result must not be null.");
+
+        if (RepoAddOptions.isOverwrite(options)) {
+            return RepositoryService.super.addObjects(objects, options, parentResult);
+        }
+
+        OperationResult operationResult = parentResult.subresult(opNamePrefix + OP_ADD_OBJECTS)
+                .addParam("objects", objects.size())
+                .addParam("options", String.valueOf(options))
+                .build();
+
+        try {
+            List<BulkOperationItemResult> results =
+                    executeAddObjects(objects, options != null ? options : new RepoAddOptions());
+            recordBulkResults(operationResult, results, "added");
+            return results;
+        } catch (RuntimeException e) {
+            throw handledGeneralException(e, operationResult);
+        } catch (Throwable t) {
+            recordFatalError(operationResult, t);
+            throw t;
+        } finally {
+            operationResult.computeStatusIfUnknown();
+        }
+    }
+
+    private List<BulkOperationItemResult> executeAddObjects(
+            @NotNull List<? extends PrismObject<? extends ObjectType>> objects, @NotNull RepoAddOptions options) {
+        long opHandle = registerOperationStart(OP_ADD_OBJECTS, ObjectType.class);
+        try (JdbcSession jdbcSession = sqlRepoContext.newJdbcSession().startTransaction()) {
+            List<BulkOperationItemResult> results;
+            boolean[] withoutOid = new boolean[objects.size()];
+            for (int i = 0; i < objects.size(); i++) {
+                withoutOid[i] = objects.get(i).getOid() == null;
+            }
+            DeferredInserts deferredInserts = new DeferredInserts();
+            jdbcSession.deferInserts(deferredInserts);
+            try {
+                results = addObjectsWithSavepoints(jdbcSession, objects, withoutOid, options, deferredInserts);
+                jdbcSession.deferInserts(null);
+                int rows = deferredInserts.flush(jdbcSession);
+                logger.trace("Inserted {} deferred rows for {} objects", rows, objects.size());
+            } catch (RuntimeException e) {
+                logger.debug("Batched insert of {} objects failed, adding them again without batching: {}",
+                        objects.size(), e.toString());
+                jdbcSession.rollback();
+                jdbcSession.deferInserts(null);
+                results = addObjectsWithSavepoints(jdbcSession, objects, withoutOid, options, null);
+            }
+            jdbcSession.commit();
+
+            for (int i = 0; i < objects.size(); i++) {
+                if (results.get(i).isSuccess()) {
+                    PrismObject<? extends ObjectType> object = objects.get(i);
+                    invokeConflictWatchers((w) -> w.afterAddObject(object.getOid(), object));
+                }
+            }
+            return results;
+        } finally {
+            registerOperationFinish(opHandle);
+        }
+    }
+
+    private List<BulkOperationItemResult> addObjectsWithSavepoints(
+            @NotNull JdbcSession jdbcSession,
+            @NotNull List<? extends PrismObject<? extends ObjectType>> objects,
+            boolean[] withoutOid,
+            @NotNull RepoAddOptions options,
+            @Nullable DeferredInserts deferredInserts) {
+        List<BulkOperationItemResult> results = new ArrayList<>(objects.size());
+        for (int i = 0; i < objects.size(); i++) {
+            PrismObject<? extends ObjectType> object = objects.get(i);
+            Savepoint savepoint = jdbcSession.setSavepoint();
+            try {
+                checkObjectToAdd(object, options);
+                if (withoutOid[i] && object.getOid() == null) {
+                    object.setOid(UUID.randomUUID().toString());
+                }
+                String oid = new AddObjectContext<>(sqlRepoContext, object)
+                        .executeWithinTransaction(jdbcSession);
+                jdbcSession.releaseSavepoint(savepoint);
+                if (deferredInserts != null) {
+                    deferredInserts.acceptPending();
+                }
+                results.add(BulkOperationItemResult.added(oid));
+            } catch (SchemaException | ObjectAlreadyExistsException | RuntimeException e) {
+                logger.debug("Couldn't add object {}: {}", object, e.toString());
+                jdbcSession.rollbackToSavepoint(savepoint);
+                if (deferredInserts != null) {
+                    deferredInserts.discardPending();
+                }
+                if (withoutOid[i]) {
+                    object.setOid(null);
+                }
+                results.add(BulkOperationItemResult.failed(object.getOid(), e));
+            }
+        }
+        return results;
+    }
+
+    /** Records the overall result of bulk operation; failures of individual objects are reported as partial error. */
+    private void recordBulkResults(OperationResult operationResult, List<BulkOperationItemResult> results, String verb) {
+        long failures = results.stream().filter(r -> !r.isSuccess()).count();
+        operationResult.addReturn("failures", failures);
+        if (failures > 0) {
+            operationResult.recordPartialError(
+                    failures + " of " + results.size() + " objects couldn't be " + verb);
+        } else {
+            operationResult.recordSuccess();
+        }
+    }
+
     @Override
     @NotNull
     public <T extends ObjectType> ModifyObjectResult<T> modifyObject(
@@ -486,6 +737,69 @@ public class SqaleRepositoryService extends SqaleServiceBase implements Reposito
         }
     }
 
+    /**
+     * Modifies all the objects in a single transaction, each one after its own savepoint,
+     * so a failing object can be rolled back without affecting the others.
+     */
+    @Override
+    public @NotNull List<BulkOperationItemResult> modifyObjects(
+            @NotNull List<? extends ObjectDelta<? extends ObjectType>> deltas,
+            @Nullable RepoModifyOptions options,
+            @NotNull OperationResult parentResult) {
+        Objects.requireNonNull(deltas, "Deltas must not be null.");
+        Objects.requireNonNull(parentResult, "Operation result must not be null.");
+
+        OperationResult operationResult = parentResult.subresult(opNamePrefix + OP_MODIFY_OBJECTS)
+                .addParam("deltas", deltas.size())
+                .addParam("options", String.valueOf(options))
+                .build();
+
+        long opHandle = registerOperationStart(OP_MODIFY_OBJECTS, ObjectType.class);
+        try (JdbcSession jdbcSession = sqlRepoContext.newJdbcSession().startTransaction()) {
+            List<BulkOperationItemResult> results = new ArrayList<>(deltas.size());
+            for (ObjectDelta<? extends ObjectType> delta : deltas) {
+                Savepoint savepoint = jdbcSession.setSavepoint();
+                try {
+                    results.add(
+                            BulkOperationItemResult.modified(delta.getOid(),
+                                    modifyObjectInTransaction(jdbcSession, delta, options, operationResult)));
+                    jdbcSession.releaseSavepoint(savepoint);
+                } catch (SchemaException | ObjectNotFoundException | RepositoryException | RuntimeException e) {
+                    logger.debug("Couldn't modify object {}: {}", delta.getOid(), e.toString());
+                    jdbcSession.rollbackToSavepoint(savepoint);
+                    results.add(BulkOperationItemResult.failed(delta.getOid(), e));
+                }
+            }
+            jdbcSession.commit();
+            recordBulkResults(operationResult, results, "modified");
+            return results;
+        } catch (RuntimeException e) {
+            throw handledGeneralException(e, operationResult);
+        } finally {
+            registerOperationFinish(opHandle);
+            operationResult.computeStatusIfUnknown();
+        }
+    }
+
+    private <T extends ObjectType> ModifyObjectResult<T> modifyObjectInTransaction(
+            @NotNull JdbcSession jdbcSession,
+            @NotNull ObjectDelta<T> delta,
+            @Nullable RepoModifyOptions options,
+            @NotNull OperationResult operationResult)
+            throws SchemaException, ObjectNotFoundException, RepositoryException {
+        if (!delta.isModify()) {
+            throw new IllegalArgumentException("Only MODIFY deltas are supported: " + delta);
+        }
+        Collection<? extends ItemDelta<?, ?>> modifications = delta.getModifications();
+        RootUpdateContext<T, QObject<MObject>, MObject> updateContext = prepareUpdateContext(
+                jdbcSession, delta.getObjectTypeClass(), modifications, checkOid(delta.getOid()), options);
+        try {
+            return modifyObjectInternal(updateContext, modifications, null, options, operationResult);
+        } catch (PreconditionViolationException e) {
+            throw new AssertionError(e); // with null precondition we couldn't get this exception
+        }
+    }
+
     @Override
     public @NotNull <T extends ObjectType> ModifyObjectResult<T> modifyObjectDynamically(
             @NotNull Class<T> type,
@@ -612,6 +926,8 @@ public class SqaleRepositoryService extends SqaleServiceBase implements Reposito
             // do not modify nested items.
             modifications = updateContext.execute(modifications, false);
             replaceObject(updateContext, updateContext.getPrismObject());
+        } else if (options.isBatchContainerInserts() && isContainerAddOnly(modifications)) {
+            modifications = executeWithDeferredInserts(updateContext, modifications);
         } else {
             modifications = updateContext.execute(modifications);
         }
@@ -623,6 +939,47 @@ public class SqaleRepositoryService extends SqaleServiceBase implements Reposito
         return new ModifyObjectResult<>(originalObject, prismObject, modifications);
     }
 
+    /**
+     * Returns true if the modifications only add values of top-level containers (e.g. certification cases
+     * added to a campaign in batches). Rows of such containers (and of their own containers and references)
+     * are only inserted, nothing else in the modification touches them, so the inserts can be batched.
+     * Used only if requested by {@link RepoModifyOptions#isBatchContainerInserts()}.
+     */
+    private boolean isContainerAddOnly(Collection<? extends ItemDelta<?, ?>> modifications) {
+        if (modifications.isEmpty()) {
+            return false;
+        }
+        for (ItemDelta<?, ?> modification : modifications) {
+            if (!(modification instanceof ContainerDelta)
+                    || modification.getPath().size() != 1
+                    || modification.isReplace()
+                    || modification.isDelete()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Executes the modifications with inserts deferred and executed as JDBC batches, one per table. */
+    private <T extends ObjectType> Collection<? extends ItemDelta<?, ?>> executeWithDeferredInserts(
+            @NotNull RootUpdateContext<T, QObject<MObject>, MObject> updateContext,
+            @NotNull Collection<? extends ItemDelta<?, ?>> modifications)
+            throws SchemaException, RepositoryException {
+        JdbcSession jdbcSession = updateContext.jdbcSession();
+        DeferredInserts deferredInserts = new DeferredInserts();
+        jdbcSession.deferInserts(deferredInserts);
+        Collection<? extends ItemDelta<?, ?>> executedModifications;
+        try {
+            executedModifications = updateContext.execute(modifications);
+            deferredInserts.acceptPending();
+        } finally {
+            jdbcSession.deferInserts(null);
+        }
+        int rows = deferredInserts.flush(jdbcSession);
+        logger.trace("Inserted {} deferred rows for {} modifications", rows, modifications.size());
+        return executedModifications;
+    }
+
     private <T extends ObjectType> void replaceObject(
             @NotNull RootUpdateContext<?, QObject<MObject>, MObject> updateContext,
             PrismObject<T> newObject)
@@ -962,6 +1319,9 @@ public class SqaleRepositoryService extends SqaleServiceBase implements Reposito
             Collection<SelectorOptions<GetOperationOptions>> options,
             OperationResult operationResult) throws SchemaException, RepositoryException {
 
+        boolean prefetch = repositoryConfiguration().getIterativeSearchPrefetchThreads() > 0;
+        Future<List<PrismObject<T>>> prefetchedPage = null;
+        long prefetchWaitMs = 0;
         try {
             ObjectPaging originalPaging = originalQuery != null ? originalQuery.getPaging() : null;
             // this is total requested size of the search
@@ -975,39 +1335,34 @@ public class SqaleRepositoryService extends SqaleServiceBase implements Reposito
                         + " by multiple paths (yet): " + providedOrdering);
             }
 
-            ObjectQuery pagedQuery = prismContext().queryFactory().createQuery();
-            ObjectPaging paging = prismContext().queryFactory().createPaging();
-            if (originalPaging != null && originalPaging.getOrderingInstructions() != null) {
-                originalPaging.getOrderingInstructions().forEach(o ->
-                        paging.addOrderingInstruction(o.getOrderBy(), o.getDirection()));
-            }
-            paging.addOrderingInstruction(OID_PATH, OrderDirection.ASCENDING);
-            pagedQuery.setPaging(paging);
-
             int pageSize = Math.min(
                     repositoryConfiguration().getIterativeSearchByPagingBatchSize(),
                     defaultIfNull(maxSize, Integer.MAX_VALUE));
-            pagedQuery.getPaging().setMaxSize(pageSize);
 
             PrismObject<T> lastProcessedObject = null;
             int handledObjectsTotal = 0;
+            // Without prefetch this is the same as handledObjectsTotal after the page is handled.
+            int fetchedObjectsTotal = 0;
 
+            List<PrismObject<T>> objects = executeSearchObjectsIterativePage(
+                    type, originalQuery, providedOrdering, null, pageSize, options);
             while (true) {
-                if (maxSize != null && maxSize - handledObjectsTotal < pageSize) {
-                    // relevant only for the last page
-                    pagedQuery.getPaging().setMaxSize(maxSize - handledObjectsTotal);
+                fetchedObjectsTotal += objects.size();
+                // Full page means there may be more, unless maxSize was reached already.
+                boolean hasNextPage = objects.size() >= pageSize
+                        && (maxSize == null || fetchedObjectsTotal < maxSize);
+                int nextPageSize = maxSize != null
+                        ? Math.min(pageSize, maxSize - fetchedObjectsTotal) // relevant for the last page
+                        : pageSize;
+
+                if (prefetch && hasNextPage) {
+                    // Next page condition depends only on the last fetched object, not on the handler.
+                    PrismObject<T> lastFetchedObject = objects.get(objects.size() - 1);
+                    prefetchedPage = prefetchExecutor().submit(withCallerPerformanceInformation(
+                            () -> executeSearchObjectsIterativePage(type, originalQuery, providedOrdering,
+                                    lastFetchedObject, nextPageSize, options)));
                 }
 
-                // null safe, even for both nulls - don't use filterAnd which mutates original AND filter
-                pagedQuery.setFilter(ObjectQueryUtil.filterAndImmutable(
-                        originalQuery != null ? originalQuery.getFilter() : null,
-                        lastOidCondition(lastProcessedObject, providedOrdering)));
-
-                // we don't call public searchObject to avoid subresults and query simplification
-                logSearchInputParameters(type, pagedQuery, "Search object iterative page");
-                List<PrismObject<T>> objects = executeSearchObjects(
-                        type, pagedQuery, options, OP_SEARCH_OBJECTS_ITERATIVE_PAGE);
-
                 // process page results
                 for (PrismObject<T> object : objects) {
                     lastProcessedObject = object;
@@ -1026,14 +1381,35 @@ public class SqaleRepositoryService extends SqaleServiceBase implements Reposito
                     }
                 }
 
-                if (objects.isEmpty() || objects.size() < pageSize) {
+                if (!hasNextPage) {
                     return new SearchResultMetadata()
                             .approxNumberOfAllResults(handledObjectsTotal)
                             .pagingCookie(lastProcessedObject != null
                                     ? lastProcessedObject.getOid() : null);
                 }
+
+                if (prefetchedPage != null) {
+                    long waitStartMs = System.currentTimeMillis();
+                    objects = awaitPrefetchedPage(prefetchedPage, type);
+                    prefetchedPage = null;
+                    prefetchWaitMs += System.currentTimeMillis() - waitStartMs;
+                } else {
+                    objects = executeSearchObjectsIterativePage(
+                            type, originalQuery, providedOrdering, lastProcessedObject, nextPageSize, options);
+                }
             }
         } finally {
+            if (prefetchedPage != null) {
+                // Handler stopped the iteration or failed, prefetched page is not needed anymore.
+                // We don't interrupt the reader, JDBC session is closed properly when it's done.
+                prefetchedPage.cancel(false);
+            }
+            if (prefetch) {
+                operationResult.addReturn("prefetch-wait-ms", prefetchWaitMs);
+                logger.debug("Iterative search of type '{}' waited {} ms for prefetched pages.",
+                        type.getSimpleName(), prefetchWaitMs);
+            }
+
             // This just counts the operation and adds zero/minimal time not to confuse user
             // with what could be possibly very long duration.
             long opHandle = registerOperationStart(OP_SEARCH_OBJECTS_ITERATIVE, type);
@@ -1041,6 +1417,99 @@ public class SqaleRepositoryService extends SqaleServiceBase implements Reposito
         }
     }
 
+    /**
+     * Reads a single page of iterative search starting after the last object from the previous page.
+     * New query is created for each page, which allows reading the page in a prefetch thread.
+     */
+    private <T extends ObjectType> List<PrismObject<T>> executeSearchObjectsIterativePage(
+            Class<T> type,
+            ObjectQuery originalQuery,
+            List<? extends ObjectOrdering> providedOrdering,
+            PrismObject<T> lastObject,
+            int pageSize,
+            Collection<SelectorOptions<GetOperationOptions>> options)
+            throws SchemaException, RepositoryException {
+        ObjectQuery pagedQuery = prismContext().queryFactory().createQuery();
+        ObjectPaging paging = prismContext().queryFactory().createPaging();
+        if (providedOrdering != null) {
+            providedOrdering.forEach(o ->
+                    paging.addOrderingInstruction(o.getOrderBy(), o.getDirection()));
+        }
+        paging.addOrderingInstruction(OID_PATH, OrderDirection.ASCENDING);
+        paging.setMaxSize(pageSize);
+        pagedQuery.setPaging(paging);
+
+        // null safe, even for both nulls - don't use filterAnd which mutates original AND filter
+        pagedQuery.setFilter(ObjectQueryUtil.filterAndImmutable(
+                originalQuery != null ? originalQuery.getFilter() : null,
+                lastOidCondition(lastObject, providedOrdering)));
+
+        // we don't call public searchObject to avoid subresults and query simplification
+        logSearchInputParameters(type, pagedQuery, "Search object iterative page");
+        return executeSearchObjects(type, pagedQuery, options, OP_SEARCH_OBJECTS_ITERATIVE_PAGE);
+    }
+
+    /**
+     * Waits for the page read by the prefetch thread, the waiting time is reported
+     * in the performance monitor as a separate operation.
+     */
+    private <T extends ObjectType> List<PrismObject<T>> awaitPrefetchedPage(
+            Future<List<PrismObject<T>>> prefetchedPage, Class<T> type)
+            throws SchemaException, RepositoryException {
+        long opHandle = registerOperationStart(OP_SEARCH_OBJECTS_ITERATIVE_PREFETCH_WAIT, type);
+        try {
+            return prefetchedPage.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RepositoryException("Interrupted while waiting for prefetched page", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof SchemaException) {
+                throw (SchemaException) cause;
+            } else if (cause instanceof RepositoryException) {
+                throw (RepositoryException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            } else {
+                throw new RepositoryException(cause);
+            }
+        } finally {
+            registerOperationFinish(opHandle);
+        }
+    }
+
+    /**
+     * Page read by the prefetch thread must be recorded in the performance information of the caller,
+     * e.g. in repository statistics of the task running the search.
+     */
+    private <V> Callable<V> withCallerPerformanceInformation(Callable<V> callable) {
+        SqlPerformanceMonitorImpl monitor = performanceMonitor;
+        return monitor != null ? monitor.withCurrentThreadLocalPerformanceInformation(callable) : callable;
+    }
+
+    /**
+     * Returns executor for iterative search prefetching, created on the first use.
+     * If all the prefetch threads are busy, the page is read by the calling thread immediately,
+     * which is not worse than reading it after the current page is handled.
+     */
+    private synchronized ExecutorService prefetchExecutor() {
+        if (prefetchExecutor == null) {
+            int threads = repositoryConfiguration().getIterativeSearchPrefetchThreads();
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads,
+                    PREFETCH_THREAD_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new SynchronousQueue<>(),
+                    new ThreadFactoryBuilder()
+                            .setNameFormat("repo-iterative-prefetch-%d")
+                            .setDaemon(true)
+                            .build(),
+                    new ThreadPoolExecutor.CallerRunsPolicy());
+            executor.allowCoreThreadTimeOut(true);
+            prefetchExecutor = executor;
+        }
+        return prefetchExecutor;
+    }
+
     /**
      * Without requested ordering, this is easy: `WHERE oid > lastOid`
      *
@@ -1057,9 +1526,22 @@ public class SqaleRepositoryService extends SqaleServiceBase implements Reposito
      *
      * This is suddenly much more fun, isn't it?
      * Of course the condition `>` or `<` depends on `ASC` vs `DESC`.
+     * The OID is always the last ordering and always ascending, see the paging in
+     * {@link #executeSearchObjectsIterativePage}.
+     *
+     * Ordering items can be null and PostgreSQL sorts nulls as if larger than any non-null value,
+     * that is, NULLS LAST for `ASC` and NULLS FIRST for `DESC`
+     * (see https://www.postgresql.org/docs/13/queries-order.html).
+     * For single path ordering by X it means:
+     *
+     * ----
+     * ASC, non-null last.X: X > last.X OR (X = last.X AND OID > last.OID) OR X IS NULL
+     * DESC, non-null last.X: X < last.X OR (X = last.X AND OID > last.OID)
+     * ASC, null last.X: X IS NULL AND OID > last.OID
+     * DESC, null last.X: (X IS NULL AND OID > last.OID) OR X IS NOT NULL
+     * ----
      *
      * TODO: Currently, single path ordering is supported. Finish multi-path too.
-     * TODO: What about nullable columns?
      */
     @Nullable
     private <T extends ObjectType> ObjectFilter lastOidCondition(
@@ -1079,30 +1561,41 @@ public class SqaleRepositoryService extends SqaleServiceBase implements Reposito
             ObjectOrdering objectOrdering = providedOrdering.get(0);
             ItemPath orderByPath = objectOrdering.getOrderBy();
             boolean asc = objectOrdering.getDirection() != OrderDirection.DESCENDING; // null => asc
-            S_ConditionEntry filter = prismContext()
-                    .queryFor(lastProcessedObject.getCompileTimeClass())
-                    .item(orderByPath);
             //noinspection rawtypes
             Item<PrismValue, ItemDefinition<Item>> item = lastProcessedObject.findItem(orderByPath);
-            if (item.size() > 1) {
+            if (item != null && item.size() > 1) {
                 throw new IllegalArgumentException(
                         "Multi-value property for ordering is forbidden - item: " + item);
-            } else if (item.isEmpty()) {
-                // TODO what if it's nullable? is it null-first or last?
-                // See: https://www.postgresql.org/docs/13/queries-order.html
-                // "By default, null values sort as if larger than any non-null value; that is,
-                // NULLS FIRST is the default for DESC order, and NULLS LAST otherwise."
+            } else if (item == null || item.isEmpty()) {
+                S_FilterExit nullsAfterLast = prismContext()
+                        .queryFor(lastProcessedObject.getCompileTimeClass())
+                        .block()
+                        .item(orderByPath).isNull()
+                        .and()
+                        .item(OID_PATH).gt(lastProcessedOid)
+                        .endBlock();
+                return asc
+                        ? nullsAfterLast.buildFilter()
+                        : nullsAfterLast.or().not().item(orderByPath).isNull().buildFilter();
             } else {
+                Object lastValue = item.getRealValue();
+                S_ConditionEntry filter = prismContext()
+                        .queryFor(lastProcessedObject.getCompileTimeClass())
+                        .item(orderByPath);
                 S_MatchingRuleEntry matchingRuleEntry =
-                        asc ? filter.gt(item.getRealValue()) : filter.lt(item.getRealValue());
-                filter = matchingRuleEntry.or()
+                        asc ? filter.gt(lastValue) : filter.lt(lastValue);
+                S_ConditionEntry equalValueFilter = matchingOrigIfPolyString(matchingRuleEntry, lastValue)
+                        .or()
                         .block()
-                        .item(orderByPath).eq(item.getRealValue())
+                        .item(orderByPath);
+                S_FilterExit nonNullsAfterLast =
+                        matchingOrigIfPolyString(equalValueFilter.eq(lastValue), lastValue)
                         .and()
-                        .item(OID_PATH);
-                return (asc ? filter.gt(lastProcessedOid) : filter.lt(lastProcessedOid))
-                        .endBlock()
-                        .buildFilter();
+                        .item(OID_PATH).gt(lastProcessedOid)
+                        .endBlock();
+                return asc
+                        ? nonNullsAfterLast.or().item(orderByPath).isNull().buildFilter()
+                        : nonNullsAfterLast.buildFilter();
             }
         }
 
@@ -1133,6 +1626,15 @@ public class SqaleRepositoryService extends SqaleServiceBase implements Reposito
         */
     }
 
+    /**
+     * Polystrings are ordered by their original value (see `QueryTableMapping.polyStringMapper()`),
+     * so the condition must use the original value too.
+     * Without a matching rule, both original and normalized values would be compared.
+     */
+    private S_FilterExit matchingOrigIfPolyString(S_MatchingRuleEntry condition, Object value) {
+        return value instanceof PolyString ? condition.matchingOrig() : condition;
+    }
+
     @Override
     public <T extends Containerable> int countContainers(Class<T> type, ObjectQuery query,
             Collection<SelectorOptions<GetOperationOptions>> options, OperationResult parentResult) {
@@ -1411,6 +1913,85 @@ public class SqaleRepositoryService extends SqaleServiceBase implements Reposito
         return returnValue;
     }
 
+    @Override
+    public @NotNull List<Long> reserveSequenceValues(
+            String oid, Integer count, OperationResult parentResult)
+            throws ObjectNotFoundException, SchemaException {
+        UUID oidUuid = checkOid(oid);
+        Validate.notNull(parentResult, "Operation result must not be null.");
+        Validate.isTrue(count == null || count > 0, "Count of values to reserve must be positive.");
+
+        logger.debug("Reserving {} values from sequence {}", count, oid);
+
+        OperationResult operationResult = parentResult.subresult(opNamePrefix + OP_RESERVE_SEQUENCE_VALUES)
+                .addParam("oid", oid)
+                .addParam("count", String.valueOf(count))
+                .build();
+
+        try {
+            return executeReserveSequenceValues(oidUuid, count);
+        } catch (RepositoryException | RuntimeException | SchemaException e) {
+            throw handledGeneralException(e, operationResult);
+        } catch (Throwable t) {
+            recordFatalError(operationResult, t);
+            throw t;
+        } finally {
+            operationResult.computeStatusIfUnknown();
+        }
+    }
+
+    private List<Long> executeReserveSequenceValues(UUID oid, Integer count)
+            throws ObjectNotFoundException, SchemaException, RepositoryException {
+        long opHandle = registerOperationStart(OP_RESERVE_SEQUENCE_VALUES, SequenceType.class);
+
+        try (JdbcSession jdbcSession = sqlRepoContext.newJdbcSession().startTransaction()) {
+            RootUpdateContext<SequenceType, QObject<MObject>, MObject> updateContext =
+                    prepareUpdateContext(jdbcSession, SequenceType.class, oid);
+            SequenceType sequence = updateContext.getPrismObject().asObjectable();
+
+            logger.trace("OBJECT before:\n{}", sequence.debugDumpLazily());
+
+            int valuesToReserve = count != null
+                    ? count
+                    : Math.max(1, defaultIfNull(sequence.getReservationBlockSize(), 1));
+            List<Long> returnValues = new ArrayList<>(valuesToReserve);
+            boolean rewound = false;
+            while (returnValues.size() < valuesToReserve) {
+                if (!sequence.getUnusedValues().isEmpty()) {
+                    returnValues.add(sequence.getUnusedValues().remove(0));
+                } else if (returnValues.isEmpty() || !rewound && canAdvanceSequence(sequence)) {
+                    // For the first value we let advanceSequence() throw if the sequence is exhausted.
+                    long value = advanceSequence(sequence, oid);
+                    returnValues.add(value);
+                    // The block ends at the rewind, otherwise it could contain the same values twice.
+                    rewound = sequence.getCounter() <= value;
+                } else {
+                    break;
+                }
+            }
+
+            logger.trace("Return values = {}, OBJECT after:\n{}",
+                    returnValues, sequence.debugDumpLazily());
+
+            updateContext.finishExecutionOwn();
+            jdbcSession.commit();
+            return returnValues;
+        } finally {
+            registerOperationFinish(opHandle);
+        }
+    }
+
+    /**
+     * Returns false if the next {@link #advanceSequence(SequenceType, UUID)} would fail or rewind the sequence.
+     * Rewind within a single reservation is not allowed, so the block is shorter in that case.
+     */
+    private boolean canAdvanceSequence(SequenceType sequence) {
+        long counter = sequence.getCounter() != null ? sequence.getCounter() : 0L;
+        long maxCounter = sequence.getMaxCounter() != null
+                ? sequence.getMaxCounter() : Long.MAX_VALUE;
+        return counter <= maxCounter;
+    }
+
     @Override
     public void returnUnusedValuesToSequence(
             String oid, Collection<Long> unusedValues, OperationResult parentResult)
@@ -1539,6 +2120,11 @@ public class SqaleRepositoryService extends SqaleServiceBase implements Reposito
         return REPOSITORY_IMPL_NAME;
     }
 
+    @Override
+    public @NotNull WorkBucketStore getWorkBucketStore() {
+        return workBucketStore;
+    }
+
     private String getTransactionIsolation(
             Connection connection, JdbcRepositoryConfiguration config) {
         String value = config.getTransactionIsolation() != null ?
@@ -1600,22 +2186,16 @@ public class SqaleRepositoryService extends SqaleServiceBase implements Reposito
                     sqlRepoContext.newJdbcSession().startReadOnlyTransaction()) {
                 QOrgClosure oc = new QOrgClosure();
                 closureCount = jdbcSession.newQuery().from(oc).fetchCount();
-                // this is CTE used also for m_org_closure materialized view (here with count)
+                // this is CTE used also for full rebuild of m_org_closure table (here with count)
                 QOrg o = QOrgMapping.getOrgMapping().defaultAlias();
-                QObjectReference<?> ref = QObjectReferenceMapping.getForParentOrg().newAlias("ref");
                 QObjectReference<?> par = QObjectReferenceMapping.getForParentOrg().newAlias("par");
                 //noinspection unchecked
                 expectedCount = jdbcSession.newQuery()
                         .withRecursive(oc, oc.ancestorOid, oc.descendantOid)
                         .as(new SQLQuery<>().union(
-                                // non-recursive term: initial select
+                                // non-recursive term: identity rows for all orgs
                                 new SQLQuery<>().select(o.oid, o.oid)
-                                        .from(o)
-                                        .where(new SQLQuery<>().select(Expressions.ONE)
-                                                .from(ref)
-                                                .where(ref.targetOid.eq(o.oid)
-                                                        .or(ref.ownerOid.eq(o.oid)))
-                                                .exists()),
+                                        .from(o),
                                 new SQLQuery<>().select(par.targetOid, oc.descendantOid)
                                         .from(par, oc)
                                         .where(par.ownerOid.eq(oc.ancestorOid))))
@@ -0,0 +1,414 @@
+/*
+ * Copyright (C) 2010-2022 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+package com.evolveum.midpoint.repo.sqale;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.stream.Collectors;
+
+import com.querydsl.core.QueryFlag.Position;
+import com.querydsl.core.Tuple;
+import com.querydsl.core.types.dsl.BooleanExpression;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import com.evolveum.midpoint.prism.SerializationOptions;
+import com.evolveum.midpoint.repo.api.WorkBucketStore;
+import com.evolveum.midpoint.repo.sqale.qmodel.task.MActivityBucket;
+import com.evolveum.midpoint.repo.sqale.qmodel.task.QActivityBucket;
+import com.evolveum.midpoint.repo.sqlbase.JdbcSession;
+import com.evolveum.midpoint.schema.result.OperationResult;
+import com.evolveum.midpoint.schema.util.task.ActivityPath;
+import com.evolveum.midpoint.util.exception.ObjectAlreadyExistsException;
+import com.evolveum.midpoint.util.exception.SchemaException;
+import com.evolveum.midpoint.util.exception.SystemException;
+import com.evolveum.midpoint.util.logging.Trace;
+import com.evolveum.midpoint.util.logging.TraceManager;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.ActivityBucketingStateType;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.TaskType;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.WorkBucketStateType;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.WorkBucketType;
+
+/**
+ * Implementation of {@link WorkBucketStore} using `m_activity_bucket` table.
+ *
+ * Each bucket is one row, the whole bucket is serialized in `fullObject` column, while the state
+ * and the worker are also stored in separate columns used for claiming.
+ * Claiming uses `FOR UPDATE SKIP LOCKED`, so concurrent workers do not wait for each other
+ * and never obtain the same bucket.
+ */
+public class SqaleWorkBucketStore implements WorkBucketStore {
+
+    private static final Trace LOGGER = TraceManager.getTrace(SqaleWorkBucketStore.class);
+
+    private static final String OP_NAME_PREFIX = SqaleWorkBucketStore.class.getSimpleName() + '.';
+
+    private final SqaleRepoContext repositoryContext;
+
+    public SqaleWorkBucketStore(SqaleRepoContext repositoryContext) {
+        this.repositoryContext = repositoryContext;
+    }
+
+    @Override
+    public void addBuckets(@NotNull String coordinatorOid, @NotNull ActivityPath activityPath,
+            @NotNull List<WorkBucketType> buckets, @NotNull OperationResult parentResult)
+            throws ObjectAlreadyExistsException {
+        OperationResult operationResult = createSubresult(
+                OP_ADD_BUCKETS, coordinatorOid, activityPath, parentResult);
+        operationResult.addParam("buckets", buckets.size());
+        try {
+            if (buckets.isEmpty()) {
+                return;
+            }
+            QActivityBucket ab = QActivityBucket.DEFAULT;
+            try (JdbcSession jdbcSession = repositoryContext.newJdbcSession().startTransaction()) {
+                var insert = jdbcSession.newInsert(ab);
+                for (WorkBucketType bucket : buckets) {
+                    MActivityBucket row = new MActivityBucket();
+                    row.taskOid = UUID.fromString(coordinatorOid);
+                    row.activityPath = activityPath.toString();
+                    row.sequentialNumber = bucket.getSequentialNumber();
+                    row.state = Objects.requireNonNull(bucket.getState(), "No bucket state");
+                    row.workerOid = bucket.getWorkerRef() != null
+                            ? UUID.fromString(bucket.getWorkerRef().getOid())
+                            : null;
+                    row.fullObject = serialize(bucket);
+                    insert.populate(row).addBatch();
+                }
+                insert.execute();
+                jdbcSession.commit();
+            }
+        } catch (RuntimeException e) {
+            if (SqaleUtils.isUniqueConstraintViolation(e)) {
+                operationResult.recordHandledError(e);
+                throw new ObjectAlreadyExistsException(
+                        "Some of the buckets already exist for " + coordinatorOid + ":" + activityPath, e);
+            }
+            throw handledGeneralException(e, operationResult);
+        } finally {
+            operationResult.computeStatusIfUnknown();
+        }
+    }
+
+    @Override
+    public @NotNull List<WorkBucketType> claimBuckets(@NotNull String coordinatorOid,
+            @NotNull ActivityPath activityPath, @NotNull String workerOid, int maxBuckets,
+            @NotNull OperationResult parentResult) {
+        OperationResult operationResult = createSubresult(
+                OP_CLAIM_BUCKETS, coordinatorOid, activityPath, parentResult);
+        operationResult.addParam("workerOid", workerOid);
+        operationResult.addParam("maxBuckets", maxBuckets);
+        try {
+            QActivityBucket ab = QActivityBucket.DEFAULT;
+            UUID workerUuid = UUID.fromString(workerOid);
+            try (JdbcSession jdbcSession = repositoryContext.newJdbcSession().startTransaction()) {
+                List<Tuple> rows = jdbcSession.newQuery()
+                        .select(ab.sequentialNumber, ab.fullObject)
+                        .from(ab)
+                        .where(bucketsOf(ab, coordinatorOid, activityPath)
+                                .and(ab.state.eq(WorkBucketStateType.READY)))
+                        .orderBy(ab.sequentialNumber.asc())
+                        .limit(maxBuckets)
+                        .forUpdate()
+                        .addFlag(Position.END, " skip locked")
+                        .fetch();
+
+                List<WorkBucketType> buckets = new ArrayList<>(rows.size());
+                for (Tuple row : rows) {
+                    WorkBucketType bucket = parse(row.get(ab.fullObject))
+                            .state(WorkBucketStateType.DELEGATED)
+                            .workerRef(workerOid, TaskType.COMPLEX_TYPE);
+                    buckets.add(bucket);
+                    jdbcSession.newUpdate(ab)
+                            .set(ab.state, WorkBucketStateType.DELEGATED)
+                            .set(ab.workerOid, workerUuid)
+                            .set(ab.fullObject, serialize(bucket))
+                            .where(bucketsOf(ab, coordinatorOid, activityPath)
+                                    .and(ab.sequentialNumber.eq(row.get(ab.sequentialNumber))))
+                            .execute();
+                }
+                jdbcSession.commit();
+                operationResult.addReturn("claimed", buckets.size());
+                return buckets;
+            }
+        } catch (RuntimeException e) {
+            throw handledGeneralException(e, operationResult);
+        } finally {
+            operationResult.computeStatusIfUnknown();
+        }
+    }
+
+    @Override
+    public @NotNull List<WorkBucketType> getDelegatedBuckets(@NotNull String coordinatorOid,
+            @NotNull ActivityPath activityPath, @NotNull String workerOid, @NotNull OperationResult parentResult) {
+        OperationResult operationResult = createSubresult(
+                OP_GET_DELEGATED_BUCKETS, coordinatorOid, activityPath, parentResult);
+        operationResult.addParam("workerOid", workerOid);
+        try {
+            QActivityBucket ab = QActivityBucket.DEFAULT;
+            try (JdbcSession jdbcSession = repositoryContext.newJdbcSession().startReadOnlyTransaction()) {
+                List<byte[]> rows = jdbcSession.newQuery()
+                        .select(ab.fullObject)
+                        .from(ab)
+                        .where(bucketsOf(ab, coordinatorOid, activityPath)
+                                .and(ab.state.eq(WorkBucketStateType.DELEGATED))
+                                .and(ab.workerOid.eq(UUID.fromString(workerOid))))
+                        .orderBy(ab.sequentialNumber.asc())
+                        .fetch();
+                jdbcSession.commit();
+                List<WorkBucketType> buckets = new ArrayList<>(rows.size());
+                for (byte[] fullObject : rows) {
+                    buckets.add(parse(fullObject));
+                }
+                operationResult.addReturn("found", buckets.size());
+                return buckets;
+            }
+        } catch (RuntimeException e) {
+            throw handledGeneralException(e, operationResult);
+        } finally {
+            operationResult.computeStatusIfUnknown();
+        }
+    }
+
+    @Override
+    public @Nullable WorkBucketType getLastBucket(@NotNull String coordinatorOid,
+            @NotNull ActivityPath activityPath, @NotNull OperationResult parentResult) {
+        OperationResult operationResult = createSubresult(
+                OP_GET_LAST_BUCKET, coordinatorOid, activityPath, parentResult);
+        try {
+            QActivityBucket ab = QActivityBucket.DEFAULT;
+            try (JdbcSession jdbcSession = repositoryContext.newJdbcSession().startReadOnlyTransaction()) {
+                byte[] fullObject = jdbcSession.newQuery()
+                        .select(ab.fullObject)
+                        .from(ab)
+                        .where(bucketsOf(ab, coordinatorOid, activityPath))
+                        .orderBy(ab.sequentialNumber.desc())
+                        .limit(1)
+                        .fetchOne();
+                jdbcSession.commit();
+                return fullObject != null ? parse(fullObject) : null;
+            }
+        } catch (RuntimeException e) {
+            throw handledGeneralException(e, operationResult);
+        } finally {
+            operationResult.computeStatusIfUnknown();
+        }
+    }
+
+    @Override
+    public @NotNull Map<WorkBucketStateType, Integer> countBuckets(@NotNull String coordinatorOid,
+            @NotNull ActivityPath activityPath, @NotNull OperationResult parentResult) {
+        OperationResult operationResult = createSubresult(
+                OP_COUNT_BUCKETS, coordinatorOid, activityPath, parentResult);
+        try {
+            QActivityBucket ab = QActivityBucket.DEFAULT;
+            try (JdbcSession jdbcSession = repositoryContext.newJdbcSession().startReadOnlyTransaction()) {
+                List<Tuple> rows = jdbcSession.newQuery()
+                        .select(ab.state, ab.sequentialNumber.count())
+                        .from(ab)
+                        .where(bucketsOf(ab, coordinatorOid, activityPath))
+                        .groupBy(ab.state)
+                        .fetch();
+                jdbcSession.commit();
+                Map<WorkBucketStateType, Integer> counts = new EnumMap<>(WorkBucketStateType.class);
+                for (Tuple row : rows) {
+                    counts.put(row.get(ab.state), Objects.requireNonNull(row.get(1, Long.class)).intValue());
+                }
+                return counts;
+            }
+        } catch (RuntimeException e) {
+            throw handledGeneralException(e, operationResult);
+        } finally {
+            operationResult.computeStatusIfUnknown();
+        }
+    }
+
+    @Override
+    public boolean completeBucket(@NotNull String coordinatorOid, @NotNull ActivityPath activityPath,
+            int sequentialNumber, @NotNull OperationResult parentResult) {
+        OperationResult operationResult = createSubresult(
+                OP_COMPLETE_BUCKET, coordinatorOid, activityPath, parentResult);
+        operationResult.addParam("sequentialNumber", sequentialNumber);
+        try {
+            QActivityBucket ab = QActivityBucket.DEFAULT;
+            try (JdbcSession jdbcSession = repositoryContext.newJdbcSession().startTransaction()) {
+                byte[] fullObject = jdbcSession.newQuery()
+                        .select(ab.fullObject)
+                        .from(ab)
+                        .where(bucketsOf(ab, coordinatorOid, activityPath)
+                                .and(ab.sequentialNumber.eq(sequentialNumber)))
+                        .forUpdate()
+                        .fetchOne();
+                if (fullObject == null) {
+                    jdbcSession.commit();
+                    return false;
+                }
+                WorkBucketType bucket = parse(fullObject)
+                        .state(WorkBucketStateType.COMPLETE)
+                        .workerRef(null);
+                jdbcSession.newUpdate(ab)
+                        .set(ab.state, WorkBucketStateType.COMPLETE)
+                        .setNull(ab.workerOid)
+                        .set(ab.fullObject, serialize(bucket))
+                        .where(bucketsOf(ab, coordinatorOid, activityPath)
+                                .and(ab.sequentialNumber.eq(sequentialNumber)))
+                        .execute();
+                jdbcSession.commit();
+                return true;
+            }
+        } catch (RuntimeException e) {
+            throw handledGeneralException(e, operationResult);
+        } finally {
+            operationResult.computeStatusIfUnknown();
+        }
+    }
+
+    @Override
+    public int releaseBuckets(@NotNull String coordinatorOid, @NotNull ActivityPath activityPath,
+            @NotNull String workerOid, @Nullable Integer sequentialNumber, @NotNull OperationResult parentResult) {
+        OperationResult operationResult = createSubresult(
+                OP_RELEASE_BUCKETS, coordinatorOid, activityPath, parentResult);
+        operationResult.addParam("workerOid", workerOid);
+        operationResult.addParam("sequentialNumber", sequentialNumber);
+        try {
+            QActivityBucket ab = QActivityBucket.DEFAULT;
+            var condition = bucketsOf(ab, coordinatorOid, activityPath)
+                    .and(ab.state.eq(WorkBucketStateType.DELEGATED))
+                    .and(ab.workerOid.eq(UUID.fromString(workerOid)));
+            if (sequentialNumber != null) {
+                condition = condition.and(ab.sequentialNumber.eq(sequentialNumber));
+            }
+            int released = returnToReady(condition);
+            operationResult.addReturn("released", released);
+            return released;
+        } catch (RuntimeException e) {
+            throw handledGeneralException(e, operationResult);
+        } finally {
+            operationResult.computeStatusIfUnknown();
+        }
+    }
+
+    @Override
+    public int reclaimBuckets(@NotNull String coordinatorOid, @NotNull ActivityPath activityPath,
+            @NotNull Collection<String> liveWorkerOids, @NotNull OperationResult parentResult) {
+        OperationResult operationResult = createSubresult(
+                OP_RECLAIM_BUCKETS, coordinatorOid, activityPath, parentResult);
+        operationResult.addArbitraryObjectCollectionAsParam("liveWorkerOids", liveWorkerOids);
+        try {
+            QActivityBucket ab = QActivityBucket.DEFAULT;
+            var condition = bucketsOf(ab, coordinatorOid, activityPath)
+                    .and(ab.state.eq(WorkBucketStateType.DELEGATED));
+            if (!liveWorkerOids.isEmpty()) {
+                condition = condition.and(ab.workerOid.notIn(
+                        liveWorkerOids.stream().map(UUID::fromString).collect(Collectors.toList())));
+            }
+            int reclaimed = returnToReady(condition);
+            operationResult.addReturn("reclaimed", reclaimed);
+            if (reclaimed > 0) {
+                LOGGER.info("Reclaimed {} buckets of {}:{} from workers that are no longer alive",
+                        reclaimed, coordinatorOid, activityPath);
+            }
+            return reclaimed;
+        } catch (RuntimeException e) {
+            throw handledGeneralException(e, operationResult);
+        } finally {
+            operationResult.computeStatusIfUnknown();
+        }
+    }
+
+    @Override
+    public void deleteBuckets(@NotNull String coordinatorOid, @NotNull ActivityPath activityPath,
+            @NotNull OperationResult parentResult) {
+        OperationResult operationResult = createSubresult(
+                OP_DELETE_BUCKETS, coordinatorOid, activityPath, parentResult);
+        try {
+            QActivityBucket ab = QActivityBucket.DEFAULT;
+            try (JdbcSession jdbcSession = repositoryContext.newJdbcSession().startTransaction()) {
+                long deleted = jdbcSession.newDelete(ab)
+                        .where(bucketsOf(ab, coordinatorOid, activityPath))
+                        .execute();
+                jdbcSession.commit();
+                operationResult.addReturn("deleted", deleted);
+            }
+        } catch (RuntimeException e) {
+            throw handledGeneralException(e, operationResult);
+        } finally {
+            operationResult.computeStatusIfUnknown();
+        }
+    }
+
+    /** Returns matching buckets to the READY state, updating their serialized form as well. */
+    private int returnToReady(BooleanExpression condition) {
+        QActivityBucket ab = QActivityBucket.DEFAULT;
+        try (JdbcSession jdbcSession = repositoryContext.newJdbcSession().startTransaction()) {
+            List<Tuple> rows = jdbcSession.newQuery()
+                    .select(ab.sequentialNumber, ab.fullObject)
+                    .from(ab)
+                    .where(condition)
+                    .forUpdate()
+                    .fetch();
+            for (Tuple row : rows) {
+                WorkBucketType bucket = parse(row.get(ab.fullObject))
+                        .state(WorkBucketStateType.READY)
+                        .workerRef(null);
+                jdbcSession.newUpdate(ab)
+                        .set(ab.state, WorkBucketStateType.READY)
+                        .setNull(ab.workerOid)
+                        .set(ab.fullObject, serialize(bucket))
+                        .where(condition.and(ab.sequentialNumber.eq(row.get(ab.sequentialNumber))))
+                        .execute();
+            }
+            jdbcSession.commit();
+            return rows.size();
+        }
+    }
+
+    private BooleanExpression bucketsOf(
+            QActivityBucket ab, String coordinatorOid, ActivityPath activityPath) {
+        return ab.taskOid.eq(UUID.fromString(coordinatorOid))
+                .and(ab.activityPath.eq(activityPath.toString()));
+    }
+
+    private byte[] serialize(WorkBucketType bucket) {
+        try {
+            return repositoryContext.createStringSerializer()
+                    .options(SerializationOptions.createSerializeReferenceNamesForNullOids().skipWhitespaces(true))
+                    .serializeRealValue(bucket, ActivityBucketingStateType.F_BUCKET)
+                    .getBytes(StandardCharsets.UTF_8);
+        } catch (SchemaException e) {
+            throw new SystemException("Couldn't serialize work bucket: " + e.getMessage(), e);
+        }
+    }
+
+    private WorkBucketType parse(byte[] fullObject) {
+        try {
+            return repositoryContext.parsePrismObject(
+                            new String(fullObject, StandardCharsets.UTF_8), WorkBucketType.class)
+                    .prismValue;
+        } catch (SchemaException e) {
+            throw new SystemException("Couldn't parse work bucket: " + e.getMessage(), e);
+        }
+    }
+
+    private OperationResult createSubresult(String operation, String coordinatorOid,
+            ActivityPath activityPath, OperationResult parentResult) {
+        return parentResult.subresult(OP_NAME_PREFIX + operation)
+                .setMinor()
+                .addParam("coordinatorOid", coordinatorOid)
+                .addParam("activityPath", activityPath.toString())
+                .build();
+    }
+
+    private SystemException handledGeneralException(
+            @NotNull RuntimeException ex, @NotNull OperationResult operationResult) {
+        LOGGER.debug("Unexpected exception (will be rethrown and handled higher): {}", ex.toString());
+        operationResult.recordFatalError(ex);
+        return ex instanceof SystemException
+                ? (SystemException) ex
+                : new SystemException(ex.getMessage(), ex);
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright (C) 2010-2022 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+package com.evolveum.midpoint.repo.sqale.audit;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.*;
+
+import com.querydsl.sql.ColumnMetadata;
+import com.querydsl.sql.dml.DefaultMapper;
+import com.querydsl.sql.dml.SQLInsertClause;
+import org.jetbrains.annotations.NotNull;
+
+import com.evolveum.midpoint.repo.sqale.audit.qmodel.*;
+import com.evolveum.midpoint.repo.sqlbase.JdbcSession;
+import com.evolveum.midpoint.util.exception.SystemException;
+
+/**
+ * Throw-away object realizing DB insertion of multiple prepared audit event records
+ * (with their deltas and references) using a single multi-row insert per table.
+ *
+ * Records must be fully prepared, including the changed item paths and custom column values;
+ * see {@link SqaleAuditService}.
+ * IDs are assigned from the sequence upfront, so the generated keys do not have to be read back.
+ */
+public class AuditBatchInsertion {
+
+    /** Sequence behind `ma_audit_event.id` (BIGSERIAL). */
+    private static final String ID_SEQUENCE = "ma_audit_event_id_seq";
+
+    private final List<MAuditEventRecord> rows;
+    private final JdbcSession jdbcSession;
+
+    public AuditBatchInsertion(@NotNull List<MAuditEventRecord> rows, @NotNull JdbcSession jdbcSession) {
+        this.rows = rows;
+        this.jdbcSession = jdbcSession;
+    }
+
+    public void execute() {
+        if (rows.isEmpty()) {
+            return;
+        }
+
+        assignIds();
+        insertAuditEventRecords();
+        insertAuditDeltas();
+        insertReferences();
+    }
+
+    private void assignIds() {
+        int missingIds = (int) rows.stream().filter(r -> r.id == null).count();
+        if (missingIds == 0) {
+            return;
+        }
+
+        Iterator<Long> ids = reserveIds(missingIds).iterator();
+        for (MAuditEventRecord row : rows) {
+            if (row.id == null) {
+                row.id = ids.next();
+            }
+        }
+    }
+
+    private List<Long> reserveIds(int count) {
+        List<Long> ids = new ArrayList<>(count);
+        try (PreparedStatement stmt = jdbcSession.connection().prepareStatement(
+                "select nextval('" + ID_SEQUENCE + "') from generate_series(1, ?)")) {
+            stmt.setInt(1, count);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    ids.add(rs.getLong(1));
+                }
+            }
+        } catch (SQLException e) {
+            throw new SystemException("Couldn't reserve " + count + " audit event record IDs", e);
+        }
+        return ids;
+    }
+
+    private void insertAuditEventRecords() {
+        QAuditEventRecordMapping aerMapping = QAuditEventRecordMapping.get();
+        QAuditEventRecord aer = aerMapping.defaultAlias();
+        Map<String, ColumnMetadata> customColumns = aerMapping.getExtensionColumns();
+
+        SQLInsertClause insertBatch = jdbcSession.newInsert(aer);
+        for (MAuditEventRecord row : rows) {
+            // NULLs are important to keep the value count consistent during the batch
+            insertBatch.populate(row, DefaultMapper.WITH_NULL_BINDINGS);
+            for (String propertyName : customColumns.keySet()) {
+                String value = row.customColumnValues != null ? row.customColumnValues.get(propertyName) : null;
+                insertBatch.columns(aer.getPath(propertyName)).values(value);
+            }
+            insertBatch.addBatch();
+        }
+        insertBatch.setBatchToBulk(true);
+        insertBatch.execute();
+    }
+
+    private void insertAuditDeltas() {
+        SQLInsertClause insertBatch = jdbcSession.newInsert(QAuditDeltaMapping.get().defaultAlias());
+        for (MAuditEventRecord row : rows) {
+            if (row.deltas == null) {
+                continue;
+            }
+            for (MAuditDelta deltaRow : row.deltas) {
+                deltaRow.recordId = row.id;
+                deltaRow.timestamp = row.timestamp;
+                insertBatch.populate(deltaRow, DefaultMapper.WITH_NULL_BINDINGS).addBatch();
+            }
+        }
+        if (insertBatch.getBatchCount() > 0) {
+            insertBatch.setBatchToBulk(true);
+            insertBatch.execute();
+        }
+    }
+
+    private void insertReferences() {
+        QAuditRefValue qr = QAuditRefValueMapping.get().defaultAlias();
+        SQLInsertClause insertBatch = jdbcSession.newInsert(qr);
+        for (MAuditEventRecord row : rows) {
+            if (row.refValues == null) {
+                continue;
+            }
+            for (List<MAuditRefValue> refValues : row.refValues.values()) {
+                for (MAuditRefValue refValue : refValues) {
+                    // id will be generated, but we're not interested in those here
+                    insertBatch.set(qr.recordId, row.id)
+                            .set(qr.timestamp, row.timestamp)
+                            .set(qr.name, refValue.name)
+                            .set(qr.targetOid, refValue.targetOid)
+                            .set(qr.targetType, refValue.targetType)
+                            .set(qr.targetNameOrig, refValue.targetNameOrig)
+                            .set(qr.targetNameNorm, refValue.targetNameNorm)
+                            .addBatch();
+                }
+            }
+        }
+        if (insertBatch.getBatchCount() > 0) {
+            insertBatch.setBatchToBulk(true);
+            insertBatch.execute();
+        }
+    }
+}
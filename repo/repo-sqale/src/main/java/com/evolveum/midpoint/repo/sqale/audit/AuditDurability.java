@@ -0,0 +1,58 @@
+/*
+ * Copyright (C) 2010-2022 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+package com.evolveum.midpoint.repo.sqale.audit;
+
+import java.util.Arrays;
+import java.util.stream.Collectors;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * How audit event records are written by {@link SqaleAuditService}, configured by `durability`
+ * in the audit service configuration.
+ */
+public enum AuditDurability {
+
+    /** Record is written to the database before the audit call returns (default). */
+    SYNC("sync"),
+
+    /**
+     * Record is appended to a local spool file and queued; it is written to the database later
+     * by a background writer, see {@link AuditWriteBehind}.
+     * Records are not lost if the node crashes, they are written when it starts again.
+     */
+    ASYNC_SPOOLED("asyncSpooled"),
+
+    /**
+     * Record is only queued in memory and written to the database later by a background writer.
+     * Records not yet written are lost if the node crashes.
+     */
+    ASYNC("async");
+
+    private final String configValue;
+
+    AuditDurability(String configValue) {
+        this.configValue = configValue;
+    }
+
+    public String getConfigValue() {
+        return configValue;
+    }
+
+    public static @NotNull AuditDurability fromConfigValue(String value) {
+        if (value == null) {
+            return SYNC;
+        }
+        for (AuditDurability durability : values()) {
+            if (durability.configValue.equalsIgnoreCase(value)) {
+                return durability;
+            }
+        }
+        throw new IllegalArgumentException("Unknown audit durability '" + value + "', supported values are: "
+                + Arrays.stream(values()).map(AuditDurability::getConfigValue).collect(Collectors.toList()));
+    }
+}
@@ -0,0 +1,264 @@
+/*
+ * Copyright (C) 2010-2022 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+package com.evolveum.midpoint.repo.sqale.audit;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import javax.xml.namespace.QName;
+
+import org.jetbrains.annotations.NotNull;
+
+import com.evolveum.midpoint.prism.SerializationOptions;
+import com.evolveum.midpoint.repo.sqale.SqaleRepoContext;
+import com.evolveum.midpoint.util.exception.SchemaException;
+import com.evolveum.midpoint.util.exception.SystemException;
+import com.evolveum.midpoint.util.logging.Trace;
+import com.evolveum.midpoint.util.logging.TraceManager;
+import com.evolveum.midpoint.xml.ns._public.common.audit_3.AuditEventRecordType;
+
+/**
+ * Append-only local file with audit event records that were accepted, but possibly not yet written
+ * to the database, see {@link AuditDurability#ASYNC_SPOOLED}.
+ *
+ * Each record gets a sequence number. Records are written to the file before they are queued,
+ * and their sequence numbers are reported back by {@link #committed(Collection)} after they are written
+ * to the database. The highest number up to which all the records are in the database is kept in a separate
+ * checkpoint file. When all the appended records are committed, the spool file is truncated.
+ *
+ * Records are written directly to the file channel (without buffering in JVM), so they survive the crash
+ * of the process, but not necessarily the crash of the operating system.
+ * Records that were committed but not yet check-pointed when the node crashed are written again
+ * on the next start, so duplicates are possible (but records are not lost).
+ *
+ * File format: sequence of [long sequence number, int length, serialized {@link AuditEventRecordType}].
+ * Records are serialized in the same format as full objects in the repository, so the spool written
+ * by one version of midPoint can be read by another one.
+ *
+ * Records that couldn't be written to the database at all are appended to the dead letter file
+ * (spool file name with {@value #DEAD_LETTER_SUFFIX} suffix), separated by new lines, see {@link #deadLetter}.
+ */
+public class AuditSpool {
+
+    private static final Trace LOGGER = TraceManager.getTrace(AuditSpool.class);
+
+    private static final String CHECKPOINT_SUFFIX = ".checkpoint";
+    private static final String DEAD_LETTER_SUFFIX = ".dead-letter";
+    private static final int RECORD_HEADER_SIZE = Long.BYTES + Integer.BYTES;
+
+    private static final QName RECORD_ELEMENT_NAME =
+            new QName(AuditEventRecordType.COMPLEX_TYPE.getNamespaceURI(), "auditEventRecord");
+
+    @NotNull private final SqaleRepoContext repoContext;
+    @NotNull private final Path spoolFile;
+    @NotNull private final Path checkpointFile;
+    @NotNull private final Path deadLetterFile;
+
+    private FileChannel channel;
+
+    private long lastAppended;
+
+    /** All the records up to (and including) this number are committed. */
+    private long committedWatermark;
+
+    /** Committed records above the watermark (committed out of order). */
+    private final SortedSet<Long> committedAboveWatermark = new TreeSet<>();
+
+    public AuditSpool(@NotNull SqaleRepoContext repoContext, @NotNull Path spoolFile) {
+        this.repoContext = repoContext;
+        this.spoolFile = spoolFile;
+        this.checkpointFile = spoolFile.resolveSibling(spoolFile.getFileName() + CHECKPOINT_SUFFIX);
+        this.deadLetterFile = spoolFile.resolveSibling(spoolFile.getFileName() + DEAD_LETTER_SUFFIX);
+    }
+
+    /**
+     * Opens the spool and returns records that were not committed before (e.g. because the node crashed).
+     * These records are considered appended, they must be committed as well.
+     */
+    public synchronized @NotNull SortedMap<Long, AuditEventRecordType> open() {
+        committedWatermark = readCheckpoint();
+        lastAppended = committedWatermark;
+
+        SortedMap<Long, AuditEventRecordType> pending = new TreeMap<>();
+        try {
+            Files.createDirectories(spoolFile.toAbsolutePath().getParent());
+            channel = FileChannel.open(spoolFile,
+                    StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            readPendingRecords(pending);
+            // We continue after the last complete record, possibly overwriting incomplete one.
+            channel.truncate(channel.position());
+        } catch (IOException e) {
+            throw new SystemException("Couldn't open audit spool file " + spoolFile + ": " + e.getMessage(), e);
+        }
+        if (!pending.isEmpty()) {
+            LOGGER.info("Found {} audit records in spool file {} that were not written to the database yet",
+                    pending.size(), spoolFile);
+        }
+        return pending;
+    }
+
+    private void readPendingRecords(SortedMap<Long, AuditEventRecordType> pending) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_SIZE);
+        long position = 0;
+        while (true) {
+            header.clear();
+            if (readFully(header, position) < RECORD_HEADER_SIZE) {
+                break;
+            }
+            header.flip();
+            long sequence = header.getLong();
+            int length = header.getInt();
+            ByteBuffer data = ByteBuffer.allocate(length);
+            if (readFully(data, position + RECORD_HEADER_SIZE) < length) {
+                LOGGER.warn("Incomplete audit record #{} at the end of spool file {}, ignoring it", sequence, spoolFile);
+                break;
+            }
+            position += RECORD_HEADER_SIZE + length;
+            lastAppended = Math.max(lastAppended, sequence);
+            if (sequence > committedWatermark) {
+                pending.put(sequence, deserialize(data.array()));
+            }
+        }
+        channel.position(position);
+    }
+
+    private int readFully(ByteBuffer buffer, long position) throws IOException {
+        int total = 0;
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + total);
+            if (read < 0) {
+                break;
+            }
+            total += read;
+        }
+        return total;
+    }
+
+    /**
+     * Appends the record to the spool and returns its sequence number.
+     * The record is serialized before taking the lock, the lock covers only the sequence assignment and the write.
+     */
+    public long append(@NotNull AuditEventRecordType record) {
+        byte[] data = serialize(record);
+        ByteBuffer buffer = ByteBuffer.allocate(RECORD_HEADER_SIZE + data.length);
+        buffer.putLong(0).putInt(data.length).put(data).flip();
+        synchronized (this) {
+            long sequence = lastAppended + 1;
+            buffer.putLong(0, sequence);
+            try {
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+            } catch (IOException e) {
+                throw new SystemException("Couldn't append audit record to spool file " + spoolFile, e);
+            }
+            lastAppended = sequence;
+            return sequence;
+        }
+    }
+
+    /** Marks records with provided sequence numbers as written to the database. */
+    synchronized void committed(@NotNull Collection<Long> sequences) {
+        committedAboveWatermark.addAll(sequences);
+        long oldWatermark = committedWatermark;
+        while (!committedAboveWatermark.isEmpty() && committedAboveWatermark.first() == committedWatermark + 1) {
+            committedWatermark = committedAboveWatermark.first();
+            committedAboveWatermark.remove(committedWatermark);
+        }
+        if (committedWatermark == oldWatermark) {
+            return;
+        }
+
+        writeCheckpoint(committedWatermark);
+        if (committedWatermark == lastAppended) {
+            try {
+                channel.truncate(0);
+            } catch (IOException e) {
+                // Not critical, the records are check-pointed, they will be skipped.
+                LOGGER.warn("Couldn't truncate audit spool file {}: {}", spoolFile, e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * Appends the record that couldn't be written to the database to the dead letter file.
+     * The record still has to be marked as {@link #committed(Collection)}, so the spool can move on.
+     */
+    void deadLetter(@NotNull AuditEventRecordType record) {
+        String serialized = new String(serialize(record), StandardCharsets.UTF_8) + '\n';
+        synchronized (this) {
+            try {
+                Files.writeString(deadLetterFile, serialized,
+                        StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            } catch (IOException e) {
+                LOGGER.error("Couldn't write audit record to dead letter file {}, the record is lost: {}\n{}",
+                        deadLetterFile, e.getMessage(), record, e);
+            }
+        }
+    }
+
+    public synchronized void close() {
+        if (channel == null) {
+            return;
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            LOGGER.warn("Couldn't close audit spool file {}: {}", spoolFile, e.getMessage(), e);
+        }
+        channel = null;
+    }
+
+    private long readCheckpoint() {
+        if (!Files.exists(checkpointFile)) {
+            return 0;
+        }
+        try {
+            return Long.parseLong(Files.readString(checkpointFile, StandardCharsets.UTF_8).trim());
+        } catch (IOException | NumberFormatException e) {
+            throw new SystemException("Couldn't read audit spool checkpoint " + checkpointFile + ": " + e.getMessage(), e);
+        }
+    }
+
+    private void writeCheckpoint(long watermark) {
+        Path tempFile = checkpointFile.resolveSibling(checkpointFile.getFileName() + ".tmp");
+        try {
+            Files.writeString(tempFile, String.valueOf(watermark), StandardCharsets.UTF_8);
+            Files.move(tempFile, checkpointFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            // Records would be written again after restart, but we can go on.
+            LOGGER.warn("Couldn't write audit spool checkpoint {}: {}", checkpointFile, e.getMessage(), e);
+        }
+    }
+
+    private byte[] serialize(AuditEventRecordType record) {
+        try {
+            return repoContext.createStringSerializer()
+                    .options(SerializationOptions.createEscapeInvalidCharacters().skipWhitespaces(true))
+                    .serializeRealValue(record, RECORD_ELEMENT_NAME)
+                    .getBytes(StandardCharsets.UTF_8);
+        } catch (SchemaException e) {
+            throw new SystemException("Couldn't serialize audit record: " + e.getMessage(), e);
+        }
+    }
+
+    private AuditEventRecordType deserialize(byte[] data) {
+        try {
+            return repoContext.parsePrismObject(
+                            new String(data, StandardCharsets.UTF_8), AuditEventRecordType.class)
+                    .prismValue;
+        } catch (SchemaException e) {
+            throw new SystemException("Couldn't read audit record from spool file " + spoolFile, e);
+        }
+    }
+}
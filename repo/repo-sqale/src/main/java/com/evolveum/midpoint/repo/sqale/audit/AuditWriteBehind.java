@@ -0,0 +1,436 @@
+/*
+ * Copyright (C) 2010-2022 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+package com.evolveum.midpoint.repo.sqale.audit;
+
+import java.sql.SQLException;
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import com.evolveum.midpoint.audit.api.AuditEventRecord;
+import com.evolveum.midpoint.repo.sqale.SqaleRepoContext;
+import com.evolveum.midpoint.repo.sqale.audit.qmodel.MAuditEventRecord;
+import com.evolveum.midpoint.repo.sqlbase.JdbcSession;
+import com.evolveum.midpoint.schema.metrics.MetricsCollector;
+import com.evolveum.midpoint.schema.metrics.MidpointMetrics;
+import com.evolveum.midpoint.schema.metrics.PrometheusTextWriter;
+import com.evolveum.midpoint.schema.util.ExceptionUtil;
+import com.evolveum.midpoint.util.exception.SystemException;
+import com.evolveum.midpoint.util.logging.Trace;
+import com.evolveum.midpoint.util.logging.TraceManager;
+import com.evolveum.midpoint.xml.ns._public.common.audit_3.AuditEventRecordType;
+
+/**
+ * Asynchronous writer of audit event records, used for {@link AuditDurability#ASYNC}
+ * and {@link AuditDurability#ASYNC_SPOOLED}.
+ *
+ * Prepared records are put into a bounded queue (optionally after being appended to {@link AuditSpool}).
+ * When the queue is full, {@link #submit(MAuditEventRecord, AuditEventRecord)} waits for a while and then
+ * writes the record synchronously, so a stuck writer does not stall audited operations for good.
+ * When the writer is not running (e.g. it is being stopped), records are not accepted and the caller
+ * has to write them by itself.
+ * A single writer thread takes the records from the queue and writes them to the database in batches,
+ * see {@link AuditBatchInsertion}. Transient failures (e.g. lost connection or unavailable database) are retried
+ * with increasing delay until they succeed, the records stay in the queue (and in the spool) meanwhile.
+ * A batch that fails permanently (constraint violation or data error, see {@link #isTransientFailure(Throwable)})
+ * is written one by one, and only the records that fail permanently are moved to the dead letter file
+ * of the spool, or logged by the dead letter logger if there is no spool.
+ *
+ * Exposes backlog (number of records waiting) and lag (age of the oldest record not written yet),
+ * also as metrics in {@link MidpointMetrics} while the writer is running.
+ */
+public class AuditWriteBehind {
+
+    private static final Trace LOGGER = TraceManager.getTrace(AuditWriteBehind.class);
+    private static final Trace DEAD_LETTER_LOGGER = TraceManager.getTrace("com.evolveum.midpoint.repo.sqale.audit.deadLetter");
+
+    private static final long POLL_TIMEOUT_MS = 500;
+    private static final long OFFER_TIMEOUT_MS = 1_000;
+    private static final long MIN_RETRY_DELAY_MS = 1_000;
+    private static final long MAX_RETRY_DELAY_MS = 60_000;
+    private static final long STOP_TIMEOUT_MS = 30_000;
+
+    @NotNull private final SqaleRepoContext repoContext;
+    @NotNull private final AuditDurability durability;
+    @Nullable private final AuditSpool spool;
+    private final int batchSize;
+
+    @NotNull private final BlockingQueue<QueuedRecord> queue;
+    @NotNull private final Thread writerThread;
+    private volatile boolean running;
+
+    /**
+     * Submitters hold the read lock while checking {@link #running} and registering themselves in {@link #submitting}.
+     * The writer thread does not finish (after being stopped) while there are registered submitters, so no record
+     * is left in the queue. The lock is not held while waiting for the space in the queue.
+     */
+    @NotNull private final ReadWriteLock runningLock = new ReentrantReadWriteLock();
+    @NotNull private final AtomicInteger submitting = new AtomicInteger();
+
+    /** Time when the oldest record of the batch being written was queued, or 0. */
+    private volatile long inFlightSince;
+
+    private final AtomicLong writtenCount = new AtomicLong();
+    private final AtomicLong failedAttempts = new AtomicLong();
+    private final AtomicLong synchronouslyWrittenCount = new AtomicLong();
+    private final AtomicLong deadLetterCount = new AtomicLong();
+
+    @NotNull private final MetricsCollector metricsCollector = this::collectMetrics;
+
+    public AuditWriteBehind(@NotNull SqaleRepoContext repoContext, @NotNull AuditDurability durability,
+            @Nullable AuditSpool spool, int queueSize, int batchSize) {
+        if (durability == AuditDurability.SYNC) {
+            throw new IllegalArgumentException("Write-behind is not used for synchronous audit");
+        }
+        this.repoContext = repoContext;
+        this.durability = durability;
+        this.spool = spool;
+        this.batchSize = batchSize;
+        this.queue = new ArrayBlockingQueue<>(queueSize);
+        this.writerThread = new Thread(this::run, "audit-writer");
+        this.writerThread.setDaemon(true);
+    }
+
+    /**
+     * Writes records left in the spool from the previous run (if any) and starts the writer thread.
+     *
+     * @param spooledRecordsWriter Writes (synchronously) records found in the spool, in batches.
+     */
+    public void start(@NotNull Consumer<List<AuditEventRecordType>> spooledRecordsWriter) {
+        if (spool != null) {
+            SortedMap<Long, AuditEventRecordType> pending = spool.open();
+            List<Long> sequences = new ArrayList<>(pending.keySet());
+            List<AuditEventRecordType> records = new ArrayList<>(pending.values());
+            for (int from = 0; from < records.size(); from += batchSize) {
+                int to = Math.min(from + batchSize, records.size());
+                spooledRecordsWriter.accept(records.subList(from, to));
+                writtenCount.addAndGet(to - from);
+                spool.committed(sequences.subList(from, to));
+            }
+        }
+        running = true;
+        writerThread.start();
+        MidpointMetrics.registerCollector(metricsCollector);
+        LOGGER.info("Asynchronous audit writer started, durability: {}, queue size: {}, batch size: {}",
+                durability.getConfigValue(), queue.remainingCapacity(), batchSize);
+    }
+
+    /**
+     * Accepts the prepared record for writing. If the queue is still full after {@link #OFFER_TIMEOUT_MS},
+     * the record is written synchronously in the caller's thread.
+     *
+     * @param row Prepared row to be written.
+     * @param record Original record, used for the spool (if there is one).
+     * @return false if the record was not accepted, because the writer is not running
+     */
+    public boolean submit(@NotNull MAuditEventRecord row, @NotNull AuditEventRecord record) {
+        runningLock.readLock().lock();
+        try {
+            if (!running) {
+                return false;
+            }
+            submitting.incrementAndGet();
+        } finally {
+            runningLock.readLock().unlock();
+        }
+
+        try {
+            AuditEventRecordType spooledRecord = spool != null ? record.createAuditEventRecordType(true) : null;
+            long sequence = spool != null ? spool.append(spooledRecord) : 0;
+            QueuedRecord queuedRecord = new QueuedRecord(row, spooledRecord, sequence, System.currentTimeMillis());
+            if (!queue.offer(queuedRecord, OFFER_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                writeSynchronously(queuedRecord);
+            }
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SystemException("Interrupted while waiting for space in audit queue"
+                    + (spool != null ? ", the record is kept in the spool" : ""), e);
+        } finally {
+            submitting.decrementAndGet();
+        }
+    }
+
+    /** Writes the record that did not fit into the queue. Failures are reported to the caller, as for synchronous audit. */
+    private void writeSynchronously(QueuedRecord record) {
+        LOGGER.debug("Audit queue is full, writing the record synchronously");
+        try {
+            write(List.of(record.row));
+            synchronouslyWrittenCount.incrementAndGet();
+        } finally {
+            // Written or reported to the caller by the exception, the spool must not keep it in either case.
+            if (spool != null) {
+                spool.committed(List.of(record.sequence));
+            }
+        }
+    }
+
+    private void run() {
+        List<QueuedRecord> batch = new ArrayList<>(batchSize);
+        while (running || submitting.get() > 0 || !queue.isEmpty()) {
+            try {
+                QueuedRecord first = queue.poll(POLL_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, batchSize - 1);
+                inFlightSince = first.queuedTimestamp;
+                if (!writeBatch(batch)) {
+                    LOGGER.warn("Asynchronous audit writer is stopping, {} records were not written"
+                            + " (they are kept in the spool)", batch.size() + queue.size());
+                    break;
+                }
+            } catch (InterruptedException e) {
+                LOGGER.warn("Asynchronous audit writer was interrupted, {} records were not written{}",
+                        batch.size() + queue.size(), spool != null ? " (they are kept in the spool)" : "");
+                if (spool == null) {
+                    queue.drainTo(batch);
+                    batch.forEach(r -> DEAD_LETTER_LOGGER.error("Audit record was not written: {}", r.row));
+                }
+                break;
+            } finally {
+                inFlightSince = 0;
+                batch.clear();
+            }
+        }
+    }
+
+    /**
+     * Writes the batch. If it fails permanently, the records are written one by one,
+     * so a single bad record does not block the others.
+     *
+     * @return false if the writer gave up because it is stopping; records are kept in the spool then
+     */
+    private boolean writeBatch(List<QueuedRecord> batch) throws InterruptedException {
+        List<MAuditEventRecord> rows = batch.stream().map(r -> r.row).collect(Collectors.toList());
+        WriteResult result = writeRetryingTransientFailures(rows);
+        if (result.stopping) {
+            return false;
+        } else if (result.failure == null) {
+            if (spool != null) {
+                spool.committed(batch.stream().map(r -> r.sequence).collect(Collectors.toList()));
+            }
+            return true;
+        }
+
+        LOGGER.error("Couldn't write {} audit records, writing them one by one: {}",
+                batch.size(), result.failure.getMessage(), result.failure);
+        for (QueuedRecord record : batch) {
+            WriteResult recordResult = writeRetryingTransientFailures(List.of(record.row));
+            if (recordResult.stopping) {
+                return false;
+            } else if (recordResult.failure != null) {
+                deadLetter(record, recordResult.failure);
+            }
+            if (spool != null) {
+                spool.committed(List.of(record.sequence));
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Writes the rows, retrying transient failures with increasing delay (up to {@link #MAX_RETRY_DELAY_MS}).
+     * With the spool, the retrying stops when the writer is stopping, because the records are safe in the spool.
+     * Without it, the retrying goes on until the writer thread is interrupted by {@link #stop()}.
+     */
+    private WriteResult writeRetryingTransientFailures(List<MAuditEventRecord> rows) throws InterruptedException {
+        long delay = MIN_RETRY_DELAY_MS;
+        while (true) {
+            try {
+                write(rows);
+                return WriteResult.WRITTEN;
+            } catch (RuntimeException e) {
+                failedAttempts.incrementAndGet();
+                if (!isTransientFailure(e)) {
+                    return new WriteResult(e, false);
+                }
+                if (!running && spool != null) {
+                    LOGGER.error("Couldn't write {} audit records, giving up as the writer is stopping: {}",
+                            rows.size(), e.getMessage(), e);
+                    return WriteResult.STOPPING;
+                }
+                LOGGER.error("Couldn't write {} audit records because of a transient failure, will retry in {} ms: {}",
+                        rows.size(), delay, e.getMessage(), e);
+                Thread.sleep(delay);
+                delay = Math.min(delay * 2, MAX_RETRY_DELAY_MS);
+            }
+        }
+    }
+
+    /**
+     * Only integrity constraint violations (SQLState class 23) and data exceptions (class 22) are permanent,
+     * writing the same record again would fail the same way. Other database failures (connection, transaction
+     * rollback, insufficient resources, ...) are considered transient.
+     * Failures not caused by the database at all mean that the record can't be mapped, so they are permanent too.
+     */
+    public static boolean isTransientFailure(@NotNull Throwable e) {
+        SQLException sqlException = ExceptionUtil.findCause(e, SQLException.class);
+        if (sqlException == null) {
+            return false;
+        }
+        String state = sqlException.getSQLState();
+        return state == null || !(state.startsWith("22") || state.startsWith("23"));
+    }
+
+    private void deadLetter(QueuedRecord record, RuntimeException e) {
+        deadLetterCount.incrementAndGet();
+        if (spool != null && record.spooledRecord != null) {
+            spool.deadLetter(record.spooledRecord);
+            LOGGER.error("Couldn't write audit record {}, moved it to the dead letter file: {}",
+                    record.row.eventIdentifier, e.getMessage(), e);
+        } else {
+            DEAD_LETTER_LOGGER.error("Couldn't write audit record, dropping it: {}\n{}",
+                    e.getMessage(), record.row, e);
+        }
+    }
+
+    private void write(List<MAuditEventRecord> rows) {
+        try (JdbcSession jdbcSession = repoContext.newJdbcSession().startTransaction()) {
+            new AuditBatchInsertion(rows, jdbcSession).execute();
+            jdbcSession.commit();
+        }
+        writtenCount.addAndGet(rows.size());
+    }
+
+    /** Stops accepting records, writes what is in the queue (waiting for a while) and stops the writer thread. */
+    public void stop() {
+        runningLock.writeLock().lock();
+        try {
+            running = false;
+        } finally {
+            runningLock.writeLock().unlock();
+        }
+        try {
+            writerThread.join(STOP_TIMEOUT_MS);
+            if (writerThread.isAlive()) {
+                writerThread.interrupt();
+                writerThread.join(STOP_TIMEOUT_MS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        MidpointMetrics.unregisterCollector(metricsCollector);
+        if (spool != null) {
+            spool.close();
+        }
+        LOGGER.info("Asynchronous audit writer stopped, {} records written, {} left unwritten",
+                writtenCount.get(), queue.size());
+    }
+
+    public @NotNull AuditDurability getDurability() {
+        return durability;
+    }
+
+    /** Number of records accepted but not written to the database yet (not counting the batch being written). */
+    public int getBacklog() {
+        return queue.size();
+    }
+
+    /** Age of the oldest record not written to the database yet, in milliseconds; 0 if there are none. */
+    public long getLagMillis() {
+        long oldest = inFlightSince;
+        if (oldest == 0) {
+            QueuedRecord head = queue.peek();
+            oldest = head != null ? head.queuedTimestamp : 0;
+        }
+        return oldest != 0 ? System.currentTimeMillis() - oldest : 0;
+    }
+
+    public long getWrittenCount() {
+        return writtenCount.get();
+    }
+
+    public long getFailedAttempts() {
+        return failedAttempts.get();
+    }
+
+    /** Number of records written synchronously by the submitters, because the queue was full. */
+    public long getSynchronouslyWrittenCount() {
+        return synchronouslyWrittenCount.get();
+    }
+
+    /** Number of records that couldn't be written at all, see {@link #deadLetter(QueuedRecord, RuntimeException)}. */
+    public long getDeadLetterCount() {
+        return deadLetterCount.get();
+    }
+
+    private void collectMetrics(@NotNull PrometheusTextWriter writer) {
+        writer.header("midpoint_audit_write_behind_backlog",
+                "Number of audit records accepted by the asynchronous writer but not written yet.", "gauge");
+        writer.sample("midpoint_audit_write_behind_backlog", getBacklog());
+        writer.header("midpoint_audit_write_behind_lag_seconds",
+                "Age of the oldest audit record not written by the asynchronous writer yet.", "gauge");
+        writer.sample("midpoint_audit_write_behind_lag_seconds", getLagMillis() / 1000.0);
+        writer.header("midpoint_audit_write_behind_written_total",
+                "Number of audit records written by the asynchronous writer.", "counter");
+        writer.sample("midpoint_audit_write_behind_written_total", getWrittenCount());
+        writer.header("midpoint_audit_write_behind_synchronously_written_total",
+                "Number of audit records written synchronously because the queue was full.", "counter");
+        writer.sample("midpoint_audit_write_behind_synchronously_written_total", getSynchronouslyWrittenCount());
+        writer.header("midpoint_audit_write_behind_failed_attempts_total",
+                "Number of failed attempts to write audit records, including the retried ones.", "counter");
+        writer.sample("midpoint_audit_write_behind_failed_attempts_total", getFailedAttempts());
+        writer.header("midpoint_audit_write_behind_dead_letters_total",
+                "Number of audit records that couldn't be written at all (dead letters).", "counter");
+        writer.sample("midpoint_audit_write_behind_dead_letters_total", getDeadLetterCount());
+    }
+
+    @Override
+    public String toString() {
+        return "AuditWriteBehind{" +
+                "durability=" + durability +
+                ", backlog=" + getBacklog() +
+                ", lagMillis=" + getLagMillis() +
+                ", written=" + getWrittenCount() +
+                ", failedAttempts=" + getFailedAttempts() +
+                ", synchronouslyWritten=" + getSynchronouslyWrittenCount() +
+                ", deadLetters=" + getDeadLetterCount() +
+                '}';
+    }
+
+    private static class WriteResult {
+        private static final WriteResult WRITTEN = new WriteResult(null, false);
+        private static final WriteResult STOPPING = new WriteResult(null, true);
+
+        /** Permanent failure; null if written (or stopping). */
+        @Nullable private final RuntimeException failure;
+        private final boolean stopping;
+
+        private WriteResult(@Nullable RuntimeException failure, boolean stopping) {
+            this.failure = failure;
+            this.stopping = stopping;
+        }
+    }
+
+    private static class QueuedRecord {
+        @NotNull private final MAuditEventRecord row;
+        /** Record as stored in the spool, kept for the dead letter file; null if there is no spool. */
+        @Nullable private final AuditEventRecordType spooledRecord;
+        private final long sequence;
+        private final long queuedTimestamp;
+
+        private QueuedRecord(@NotNull MAuditEventRecord row, @Nullable AuditEventRecordType spooledRecord,
+                long sequence, long queuedTimestamp) {
+            this.row = row;
+            this.spooledRecord = spooledRecord;
+            this.sequence = sequence;
+            this.queuedTimestamp = queuedTimestamp;
+        }
+    }
+}
@@ -16,7 +16,14 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.SequenceInputStream;
 import java.nio.charset.StandardCharsets;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
 import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
 import java.util.*;
 import javax.xml.datatype.Duration;
 import javax.xml.datatype.XMLGregorianCalendar;
@@ -69,12 +76,18 @@ import com.evolveum.prism.xml.ns._public.types_3.ObjectDeltaType;
  */
 public class SqaleAuditService extends SqaleServiceBase implements AuditService {
 
+    private static final int DEFAULT_FUTURE_PARTITIONS = 3;
+    private static final DateTimeFormatter PARTITION_SUFFIX_FORMATTER = DateTimeFormatter.ofPattern("yyyyMM");
+
     private final SqlQueryExecutor sqlQueryExecutor;
 
     // set from SystemConfigurationAuditType
     private boolean escapeIllegalCharacters = false;
     @NotNull private OperationResultDetailLevel deltaSuccessExecutionResult = OperationResultDetailLevel.CLEANED_UP;
 
+    // null for synchronous audit (default)
+    @Nullable private volatile AuditWriteBehind writeBehind;
+
     public SqaleAuditService(
             SqaleRepoContext sqlRepoContext,
             SqlPerformanceMonitorsCollection sqlPerformanceMonitorsCollection) {
@@ -102,33 +115,46 @@ public class SqaleAuditService extends SqaleServiceBase implements AuditService
 
     private void executeAudit(AuditEventRecord record) {
         long opHandle = registerOperationStart(OP_AUDIT);
-        try (JdbcSession jdbcSession = sqlRepoContext.newJdbcSession().startTransaction()) {
+        try {
             record.setRepoId(null); // we want DB to assign the ID
-            MAuditEventRecord auditRow = insertAuditEventRecord(jdbcSession, record);
-            record.setRepoId(auditRow.id);
+            MAuditEventRecord auditRow = prepareAuditEventRecord(record);
+            AuditWriteBehind writeBehind = this.writeBehind;
+            if (writeBehind != null) {
+                if (!submitAuditEventRecord(writeBehind, auditRow, record)) {
+                    // The writer is being stopped, so we write the row ourselves. It is already converted
+                    // for the write-behind (references included), hence the batch insertion.
+                    try (JdbcSession jdbcSession = sqlRepoContext.newJdbcSession().startTransaction()) {
+                        new AuditBatchInsertion(List.of(auditRow), jdbcSession).execute();
+                        jdbcSession.commit();
+                    }
+                    record.setRepoId(auditRow.id);
+                }
+                return;
+            }
 
-            insertAuditDeltas(jdbcSession, auditRow);
-            insertReferences(jdbcSession, auditRow, record.getReferences());
+            try (JdbcSession jdbcSession = sqlRepoContext.newJdbcSession().startTransaction()) {
+                insertAuditEventRecord(jdbcSession, auditRow);
+                record.setRepoId(auditRow.id);
 
-            jdbcSession.commit();
+                insertAuditDeltas(jdbcSession, auditRow);
+                insertReferences(jdbcSession, auditRow, record.getReferences());
+
+                jdbcSession.commit();
+            }
         } finally {
             registerOperationFinish(opHandle);
         }
     }
 
     /**
-     * Inserts audit event record aggregate root without any subentities.
+     * Prepares audit event record aggregate root with transient deltas and custom column values.
      * Traditional Sqale "insert root first, then insert children" is not optimal here,
      * because to insert root we need to collect some information from children anyway.
      * So we prepare the subentities in collections, gather the needed information
-     * (e.g. changed item paths) and then insert root entity.
-     * Subentities are inserted later out of this method.
-     *
-     * @return inserted row with transient deltas prepared for insertion
+     * (e.g. changed item paths) and only then the root entity can be inserted.
      */
-    private MAuditEventRecord insertAuditEventRecord(JdbcSession jdbcSession, AuditEventRecord record) {
+    private MAuditEventRecord prepareAuditEventRecord(AuditEventRecord record) {
         QAuditEventRecordMapping aerMapping = QAuditEventRecordMapping.get();
-        QAuditEventRecord aer = aerMapping.defaultAlias();
         MAuditEventRecord row = aerMapping.toRowObject(record);
 
         Collection<MAuditDelta> deltaRows = prepareDeltas(record.getDeltas());
@@ -137,22 +163,68 @@ public class SqaleAuditService extends SqaleServiceBase implements AuditService
         Set<String> changedItemPaths = collectChangedItemPaths(deltaRows);
         row.changedItemPaths = changedItemPaths.isEmpty() ? null : changedItemPaths.toArray(String[]::new);
 
-        SQLInsertClause insert = jdbcSession.newInsert(aer).populate(row);
         Map<String, ColumnMetadata> customColumns = aerMapping.getExtensionColumns();
-        for (Map.Entry<String, String> property : record.getCustomColumnProperty().entrySet()) {
-            String propertyName = property.getKey();
+        for (String propertyName : record.getCustomColumnProperty().keySet()) {
             if (!customColumns.containsKey(propertyName)) {
                 throw new IllegalArgumentException("Audit event record table doesn't"
                         + " contains column for property " + propertyName);
             }
+        }
+        row.customColumnValues = record.getCustomColumnProperty();
+        return row;
+    }
+
+    /**
+     * Inserts audit event record aggregate root without any subentities.
+     * Subentities are inserted later out of this method.
+     * ID of the row is set to the ID assigned by the DB.
+     */
+    private void insertAuditEventRecord(JdbcSession jdbcSession, MAuditEventRecord row) {
+        QAuditEventRecord aer = QAuditEventRecordMapping.get().defaultAlias();
+        SQLInsertClause insert = jdbcSession.newInsert(aer).populate(row);
+        for (Map.Entry<String, String> property : row.customColumnValues.entrySet()) {
             // Like insert.set, but that one is too parameter-type-safe for our generic usage here.
-            insert.columns(aer.getPath(propertyName)).values(property.getValue());
+            insert.columns(aer.getPath(property.getKey())).values(property.getValue());
         }
 
         Long returnedId = insert.executeWithKey(aer.id);
         // If returned ID is null, it was likely provided, so we use that one.
-        row.id = returnedId != null ? returnedId : record.getRepoId();
-        return row;
+        if (returnedId != null) {
+            row.id = returnedId;
+        }
+    }
+
+    /**
+     * Hands the prepared row over to the {@link AuditWriteBehind}.
+     * Row must be self-contained, so the references are converted to rows and the collections are copied.
+     *
+     * @return false if the row was not accepted (the row is converted anyway)
+     */
+    private boolean submitAuditEventRecord(
+            @NotNull AuditWriteBehind writeBehind, MAuditEventRecord auditRow, AuditEventRecord record) {
+        Map<String, Set<AuditReferenceValue>> references = record.getReferences();
+        List<MAuditDelta> deltaRows = new ArrayList<>(auditRow.deltas);
+        for (MAuditDelta deltaRow : deltaRows) {
+            deltaRow.serializedDelta = null; // not needed anymore, changed item paths are collected
+        }
+        auditRow.deltas = deltaRows;
+        auditRow.customColumnValues = new HashMap<>(auditRow.customColumnValues);
+
+        for (Map.Entry<String, Set<AuditReferenceValue>> entry : references.entrySet()) {
+            for (AuditReferenceValue refValue : entry.getValue()) {
+                PolyString targetName = refValue.getTargetName();
+                MAuditRefValue refRow = new MAuditRefValue();
+                refRow.name = entry.getKey();
+                refRow.targetOid = SqaleUtils.oidToUUid(refValue.getOid());
+                refRow.targetType = refValue.getType() != null
+                        ? MObjectType.fromTypeQName(refValue.getType()) : null;
+                refRow.targetNameOrig = PolyString.getOrig(targetName);
+                refRow.targetNameNorm = PolyString.getNorm(targetName);
+                auditRow.addRefValue(refRow);
+            }
+        }
+
+        return writeBehind.submit(auditRow, record);
     }
 
     private Collection<MAuditDelta> prepareDeltas(Collection<ObjectDeltaOperation<?>> deltas) {
@@ -423,19 +495,203 @@ public class SqaleAuditService extends SqaleServiceBase implements AuditService
         Instant olderThan = Instant.ofEpochMilli(minValue.getTime());
 
         long start = System.currentTimeMillis();
+        int droppedPartitions = 0;
         long deletedCount = 0;
-        try (JdbcSession jdbcSession = sqlRepoContext.newJdbcSession().startTransaction()) {
-            logger.info("Audit cleanup, deleting records older than {}.", olderThan);
+        try {
+            // Whole expired partitions are dropped first, so the row delete affects only
+            // the boundary partition (and the default one).
+            droppedPartitions = dropAuditPartitionsOlderThan(olderThan);
+
+            try (JdbcSession jdbcSession = sqlRepoContext.newJdbcSession().startTransaction()) {
+                logger.info("Audit cleanup, deleting records older than {}.", olderThan);
+
+                QAuditEventRecord qae = QAuditEventRecordMapping.get().defaultAlias();
+                deletedCount = jdbcSession.newDelete(qae)
+                        .where(qae.timestamp.lt(olderThan))
+                        .execute();
+                jdbcSession.commit();
+            }
+        } finally {
+            registerOperationFinish(opHandle);
+            logger.info("Audit cleanup based on age finished; dropped {} partitions"
+                            + " and deleted {} entries in {} seconds.",
+                    droppedPartitions, deletedCount, (System.currentTimeMillis() - start) / 1000L);
+        }
+    }
 
-            QAuditEventRecord qae = QAuditEventRecordMapping.get().defaultAlias();
-            deletedCount = jdbcSession.newDelete(qae)
-                    .where(qae.timestamp.lt(olderThan))
-                    .execute();
+    /**
+     * Detaches and drops audit table partitions containing only records older than the provided instant.
+     * Each partition is dropped in its own transaction, because detaching locks the parent tables
+     * exclusively until commit.
+     * Returns the number of dropped partitions (for each audit table), zero if partitions are not used.
+     */
+    private int dropAuditPartitionsOlderThan(Instant olderThan) {
+        int dropped = 0;
+        int droppedNow;
+        do {
+            droppedNow = dropAuditPartitionsOlderThan(olderThan, 1);
+            dropped += droppedNow;
+        } while (droppedNow > 0);
+        return dropped;
+    }
+
+    private int dropAuditPartitionsOlderThan(Instant olderThan, int maxPartitions) {
+        try (JdbcSession jdbcSession = sqlRepoContext.newJdbcSession().startTransaction();
+                PreparedStatement stmt = jdbcSession.connection().prepareStatement(
+                        "select audit_drop_partitions_older_than(?, ?)")) {
+            stmt.setTimestamp(1, Timestamp.from(olderThan));
+            stmt.setInt(2, maxPartitions);
+            int dropped;
+            try (ResultSet rs = stmt.executeQuery()) {
+                rs.next();
+                dropped = rs.getInt(1);
+            }
             jdbcSession.commit();
+            return dropped;
+        } catch (SQLException e) {
+            throw new SystemException("Couldn't drop audit partitions older than " + olderThan, e);
+        }
+    }
+
+    @Override
+    public void maintainAuditPartitions(
+            @NotNull AuditPartitionsPolicyType policy, @NotNull OperationResult parentResult) {
+        OperationResult operationResult =
+                parentResult.createSubresult(opNamePrefix + OP_MAINTAIN_AUDIT_PARTITIONS);
+        try {
+            executeMaintainAuditPartitions(policy, operationResult);
+        } catch (RuntimeException e) {
+            throw handledGeneralException(e, operationResult);
+        } catch (Throwable t) {
+            recordFatalError(operationResult, t);
+            throw t;
+        } finally {
+            operationResult.computeStatusIfUnknown();
+        }
+    }
+
+    private void executeMaintainAuditPartitions(
+            AuditPartitionsPolicyType policy, OperationResult operationResult) {
+        long opHandle = registerOperationStart(OP_MAINTAIN_AUDIT_PARTITIONS);
+        try {
+            int futurePartitions = defaultIfNull(policy.getFuturePartitions(), DEFAULT_FUTURE_PARTITIONS);
+            if (futurePartitions > 0) {
+                logger.info("Audit partitions maintenance, ensuring {} monthly partitions"
+                        + " starting with the current month.", futurePartitions);
+                createMonthlyAuditPartitions(futurePartitions, operationResult);
+            }
+            reportAuditPartitionSizes(operationResult);
         } finally {
             registerOperationFinish(opHandle);
-            logger.info("Audit cleanup based on age finished; deleted {} entries in {} seconds.",
-                    deletedCount, (System.currentTimeMillis() - start) / 1000L);
+        }
+    }
+
+    /**
+     * Creates missing monthly partitions starting with the current month, like `audit_create_monthly_partitions`
+     * procedure does. Unlike the procedure, it skips (and reports) the months having records in the default
+     * partitions, because PostgreSQL refuses to create a partition for such a range.
+     * Months are computed in the JVM time zone, which is also the time zone of the JDBC session.
+     */
+    private void createMonthlyAuditPartitions(int futurePartitions, OperationResult operationResult) {
+        ZonedDateTime monthStart = ZonedDateTime.now().truncatedTo(ChronoUnit.DAYS).withDayOfMonth(1);
+        List<String> blockedMonths = new ArrayList<>();
+        try (JdbcSession jdbcSession = sqlRepoContext.newJdbcSession().startTransaction()) {
+            for (int i = 0; i < futurePartitions; i++) {
+                ZonedDateTime from = monthStart.plusMonths(i);
+                ZonedDateTime to = from.plusMonths(1);
+                String tableSuffix = from.format(PARTITION_SUFFIX_FORMATTER);
+                if (tableExists(jdbcSession, "ma_audit_event_" + tableSuffix)) {
+                    logger.debug("Audit partitions for {} already exist", tableSuffix);
+                } else if (hasRecordsInDefaultPartition(jdbcSession, from, to)) {
+                    blockedMonths.add(tableSuffix);
+                } else {
+                    logger.info("Creating audit partitions for range {} - {}", from, to);
+                    createAuditPartition(jdbcSession, tableSuffix, from, to);
+                }
+            }
+            jdbcSession.commit();
+        } catch (SQLException e) {
+            throw new SystemException("Couldn't create audit partitions", e);
+        }
+
+        if (!blockedMonths.isEmpty()) {
+            String message = "Audit partitions for months " + blockedMonths + " were not created,"
+                    + " because the default partition contains audit records for them."
+                    + " Move the records out of the default partition to create the partitions.";
+            logger.warn(message);
+            operationResult.recordWarning(message);
+        }
+    }
+
+    private boolean tableExists(JdbcSession jdbcSession, String tableName) throws SQLException {
+        try (PreparedStatement stmt = jdbcSession.connection().prepareStatement(
+                "select to_regclass(?) is not null")) {
+            stmt.setString(1, tableName);
+            try (ResultSet rs = stmt.executeQuery()) {
+                rs.next();
+                return rs.getBoolean(1);
+            }
+        }
+    }
+
+    private boolean hasRecordsInDefaultPartition(
+            JdbcSession jdbcSession, ZonedDateTime from, ZonedDateTime to) throws SQLException {
+        if (!tableExists(jdbcSession, "ma_audit_event_default")) {
+            return false;
+        }
+        // Delta and reference rows have the timestamp of their audit event, checking events is enough.
+        try (PreparedStatement stmt = jdbcSession.connection().prepareStatement(
+                "select exists(select 1 from ma_audit_event_default where timestamp >= ? and timestamp < ?)")) {
+            stmt.setTimestamp(1, Timestamp.from(from.toInstant()));
+            stmt.setTimestamp(2, Timestamp.from(to.toInstant()));
+            try (ResultSet rs = stmt.executeQuery()) {
+                rs.next();
+                return rs.getBoolean(1);
+            }
+        }
+    }
+
+    /** Same DDL as in `audit_create_monthly_partitions` procedure. */
+    private void createAuditPartition(
+            JdbcSession jdbcSession, String tableSuffix, ZonedDateTime from, ZonedDateTime to) {
+        // values FROM are inclusive (>=), TO are exclusive (<)
+        String range = " FOR VALUES FROM ('" + from.toOffsetDateTime()
+                + "') TO ('" + to.toOffsetDateTime() + "')";
+        for (String table : List.of("ma_audit_event", "ma_audit_delta", "ma_audit_ref")) {
+            jdbcSession.executeStatement("CREATE TABLE " + table + "_" + tableSuffix
+                    + " PARTITION OF " + table + range);
+        }
+        for (String table : List.of("ma_audit_delta", "ma_audit_ref")) {
+            jdbcSession.executeStatement("ALTER TABLE " + table + "_" + tableSuffix
+                    + " ADD CONSTRAINT " + table + "_" + tableSuffix + "_fk"
+                    + " FOREIGN KEY (recordId, timestamp)"
+                    + " REFERENCES ma_audit_event_" + tableSuffix + " (id, timestamp) ON DELETE CASCADE");
+        }
+    }
+
+    /** Logs sizes of all audit table partitions and adds them as the returns of the operation result. */
+    private void reportAuditPartitionSizes(OperationResult operationResult) {
+        try (JdbcSession jdbcSession = sqlRepoContext.newJdbcSession().startReadOnlyTransaction();
+                PreparedStatement stmt = jdbcSession.connection().prepareStatement(
+                        "select c.relname, greatest(c.reltuples, 0)::bigint, pg_total_relation_size(c.oid)"
+                                + " from pg_inherits i join pg_class c on c.oid = i.inhrelid"
+                                + " where i.inhparent in ('ma_audit_event'::regclass,"
+                                + " 'ma_audit_delta'::regclass, 'ma_audit_ref'::regclass)"
+                                + " order by c.relname");
+                ResultSet rs = stmt.executeQuery()) {
+            long totalSize = 0;
+            while (rs.next()) {
+                String partition = rs.getString(1);
+                long estimatedRows = rs.getLong(2);
+                long size = rs.getLong(3);
+                totalSize += size;
+                logger.info("Audit partition {}: ~{} rows, {} bytes", partition, estimatedRows, size);
+                operationResult.addReturn(partition, size);
+            }
+            operationResult.addReturn("total-size", totalSize);
+            jdbcSession.commit();
+        } catch (SQLException e) {
+            throw new SystemException("Couldn't read sizes of audit partitions", e);
         }
     }
 
@@ -502,6 +758,55 @@ public class SqaleAuditService extends SqaleServiceBase implements AuditService
         deltaSuccessExecutionResult = getDeltaSuccessExecutionResult(configuration);
     }
 
+    /**
+     * Switches {@link #audit(AuditEventRecord, Task, OperationResult)} to asynchronous writing.
+     * Records provided as {@link AuditEventRecordType} (e.g. imported ones) are still written synchronously.
+     */
+    public void startWriteBehind(@NotNull AuditWriteBehind writeBehind) {
+        writeBehind.start(this::insertSpooledRecords);
+        this.writeBehind = writeBehind;
+    }
+
+    /** Writes records left in the spool by the previous run, see {@link AuditSpool}. */
+    private void insertSpooledRecords(List<AuditEventRecordType> records) {
+        long opHandle = registerOperationStart(OP_AUDIT);
+        try (JdbcSession jdbcSession = sqlRepoContext.newJdbcSession().startTransaction()) {
+            for (AuditEventRecordType record : records) {
+                new AuditInsertion(record, jdbcSession, sqlRepoContext, escapeIllegalCharacters, logger)
+                        .execute();
+            }
+            jdbcSession.commit();
+        } finally {
+            registerOperationFinish(opHandle);
+        }
+    }
+
+    /**
+     * Switches back to synchronous writing, writing the records already accepted by the asynchronous writer.
+     * Records being submitted concurrently are either accepted by the writer or written synchronously as well.
+     */
+    public void stopWriteBehind() {
+        AuditWriteBehind writeBehind = this.writeBehind;
+        if (writeBehind != null) {
+            this.writeBehind = null;
+            writeBehind.stop();
+        }
+    }
+
+    /**
+     * Returns asynchronous writer (e.g. for its backlog and lag) or null if audit is synchronous.
+     * The same values are exported as metrics, see {@link AuditWriteBehind}.
+     */
+    public @Nullable AuditWriteBehind getWriteBehind() {
+        return writeBehind;
+    }
+
+    @Override
+    public void destroy() {
+        stopWriteBehind();
+        super.destroy();
+    }
+
     @Override
     public int countObjects(
             @Nullable ObjectQuery query,
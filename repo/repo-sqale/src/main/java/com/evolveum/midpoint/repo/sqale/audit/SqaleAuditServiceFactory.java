@@ -8,6 +8,7 @@ package com.evolveum.midpoint.repo.sqale.audit;
 
 import static com.evolveum.midpoint.repo.sqlbase.JdbcRepositoryConfiguration.*;
 
+import java.nio.file.Paths;
 import java.sql.Types;
 import java.util.List;
 import javax.sql.DataSource;
@@ -56,6 +57,15 @@ public class SqaleAuditServiceFactory implements AuditServiceFactory {
     private static final String CONF_AUDIT_SERVICE_COLUMNS = "customColumn";
     private static final String CONF_AUDIT_SERVICE_COLUMN_NAME = "columnName";
     private static final String CONF_AUDIT_SERVICE_EVENT_RECORD_PROPERTY_NAME = "eventRecordPropertyName";
+    private static final String CONF_AUDIT_SERVICE_DURABILITY = "durability";
+    private static final String CONF_AUDIT_SERVICE_ASYNC_QUEUE_SIZE = "asyncQueueSize";
+    private static final String CONF_AUDIT_SERVICE_ASYNC_BATCH_SIZE = "asyncBatchSize";
+    private static final String CONF_AUDIT_SERVICE_SPOOL_FILE = "spoolFile";
+
+    private static final int DEFAULT_ASYNC_QUEUE_SIZE = 10_000;
+    private static final int DEFAULT_ASYNC_BATCH_SIZE = 100;
+    private static final String DEFAULT_SPOOL_FILE_NAME = "audit-spool";
+    private static final String MIDPOINT_HOME_PROPERTY = "midpoint.home";
 
     private final SqaleRepositoryConfiguration sqaleRepositoryConfiguration;
     private final SchemaService schemaService;
@@ -82,6 +92,7 @@ public class SqaleAuditServiceFactory implements AuditServiceFactory {
             SqaleRepoContext sqlRepoContext = createSqaleRepoContext(configuration);
             auditService = new SqaleAuditService(sqlRepoContext, sqlPerformanceMonitorsCollection);
             initCustomColumns(configuration, sqlRepoContext);
+            initWriteBehind(configuration, sqlRepoContext);
         } catch (RepositoryServiceFactoryException ex) {
             throw new AuditServiceFactoryException(ex.getMessage(), ex);
         }
@@ -167,6 +178,37 @@ public class SqaleAuditServiceFactory implements AuditServiceFactory {
         }
     }
 
+    private void initWriteBehind(@NotNull Configuration configuration, SqaleRepoContext sqlRepoContext)
+            throws AuditServiceFactoryException {
+        AuditDurability durability;
+        try {
+            durability = AuditDurability.fromConfigValue(configuration.getString(CONF_AUDIT_SERVICE_DURABILITY));
+        } catch (IllegalArgumentException e) {
+            throw new AuditServiceFactoryException(e.getMessage(), e);
+        }
+        if (durability == AuditDurability.SYNC) {
+            return;
+        }
+
+        AuditSpool spool = null;
+        if (durability == AuditDurability.ASYNC_SPOOLED) {
+            String spoolFile = configuration.getString(CONF_AUDIT_SERVICE_SPOOL_FILE);
+            if (spoolFile == null) {
+                String midpointHome = System.getProperty(MIDPOINT_HOME_PROPERTY);
+                if (midpointHome == null) {
+                    throw new AuditServiceFactoryException("Property " + CONF_AUDIT_SERVICE_SPOOL_FILE
+                            + " must be set for audit durability " + durability.getConfigValue());
+                }
+                spoolFile = Paths.get(midpointHome, DEFAULT_SPOOL_FILE_NAME).toString();
+            }
+            spool = new AuditSpool(sqlRepoContext, Paths.get(spoolFile));
+        }
+
+        auditService.startWriteBehind(new AuditWriteBehind(sqlRepoContext, durability, spool,
+                configuration.getInt(CONF_AUDIT_SERVICE_ASYNC_QUEUE_SIZE, DEFAULT_ASYNC_QUEUE_SIZE),
+                configuration.getInt(CONF_AUDIT_SERVICE_ASYNC_BATCH_SIZE, DEFAULT_ASYNC_BATCH_SIZE)));
+    }
+
     private String getStringFromConfig(Configuration config, String key) {
         String value = config.getString(key);
         if (Strings.isNullOrEmpty(value)) {
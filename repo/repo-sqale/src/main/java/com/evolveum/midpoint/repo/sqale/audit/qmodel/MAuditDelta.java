@@ -8,6 +8,7 @@ package com.evolveum.midpoint.repo.sqale.audit.qmodel;
 
 import static com.evolveum.midpoint.util.MiscUtil.binaryToHexPreview;
 
+import java.io.Serializable;
 import java.time.Instant;
 import java.util.UUID;
 
@@ -19,7 +20,9 @@ import com.evolveum.prism.xml.ns._public.types_3.ChangeTypeType;
  * Querydsl "row bean" type related to {@link QAuditDelta}.
  */
 @SuppressWarnings("unused")
-public class MAuditDelta {
+public class MAuditDelta implements Serializable {
+
+    private static final long serialVersionUID = 1L;
 
     public Long recordId;
     public Instant timestamp;
@@ -6,6 +6,7 @@
  */
 package com.evolveum.midpoint.repo.sqale.audit.qmodel;
 
+import java.io.Serializable;
 import java.time.Instant;
 import java.util.*;
 
@@ -17,7 +18,9 @@ import com.evolveum.midpoint.xml.ns._public.common.common_3.OperationResultStatu
 
 /** Querydsl "row bean" type related to {@link QAuditEventRecord}. */
 @SuppressWarnings("unused")
-public class MAuditEventRecord {
+public class MAuditEventRecord implements Serializable {
+
+    private static final long serialVersionUID = 1L;
 
     public Long id;
     public Instant timestamp;
@@ -57,6 +60,8 @@ public class MAuditEventRecord {
     // "transient" fields not used by Querydsl
     public Collection<MAuditDelta> deltas;
     public Map<String, List<MAuditRefValue>> refValues;
+    // values for custom columns (see QAuditEventRecordMapping#getExtensionColumns()), used for inserts
+    public Map<String, String> customColumnValues;
 
     public void addDelta(MAuditDelta mAuditDelta) {
         if (deltas == null) {
@@ -6,6 +6,7 @@
  */
 package com.evolveum.midpoint.repo.sqale.audit.qmodel;
 
+import java.io.Serializable;
 import java.time.Instant;
 import java.util.UUID;
 
@@ -15,7 +16,9 @@ import com.evolveum.midpoint.repo.sqale.qmodel.object.MObjectType;
  * Querydsl "row bean" type related to {@link QAuditRefValue}.
  */
 @SuppressWarnings("unused")
-public class MAuditRefValue {
+public class MAuditRefValue implements Serializable {
+
+    private static final long serialVersionUID = 1L;
 
     public Long id;
     public Long recordId;
@@ -7,6 +7,7 @@
 package com.evolveum.midpoint.repo.sqale.jsonb;
 
 import java.io.IOException;
+import java.io.Serializable;
 import java.math.BigDecimal;
 import java.util.List;
 import java.util.Map;
@@ -23,7 +24,9 @@ import org.jetbrains.annotations.NotNull;
 /**
  * Type representing JSONB columns in PostgreSQL database as a wrapped string.
  */
-public class Jsonb {
+public class Jsonb implements Serializable {
+
+    private static final long serialVersionUID = 1L;
 
     public final String value;
 
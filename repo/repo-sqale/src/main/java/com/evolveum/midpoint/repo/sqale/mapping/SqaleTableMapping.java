@@ -436,11 +436,12 @@ public abstract class SqaleTableMapping<S, Q extends FlexibleRelationalPathBase<
         return strings.toArray(String[]::new);
     }
 
-    /** Convenient insert shortcut when the row is fully populated. */
+    /**
+     * Convenient insert shortcut when the row is fully populated.
+     * The insert may be deferred and executed later in a batch, see {@link JdbcSession#insertOrDefer}.
+     */
     protected void insert(R row, JdbcSession jdbcSession) {
-        jdbcSession.newInsert(defaultAlias())
-                .populate(row)
-                .execute();
+        jdbcSession.insertOrDefer(defaultAlias(), row);
     }
 
     /**
@@ -0,0 +1,71 @@
+/*
+ * Copyright (C) 2010-2022 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+package com.evolveum.midpoint.repo.sqale.qmodel.task;
+
+import java.sql.Types;
+
+import com.querydsl.core.types.dsl.ArrayPath;
+import com.querydsl.core.types.dsl.EnumPath;
+import com.querydsl.core.types.dsl.NumberPath;
+import com.querydsl.core.types.dsl.StringPath;
+import com.querydsl.sql.ColumnMetadata;
+
+import com.evolveum.midpoint.repo.sqlbase.querydsl.FlexibleRelationalPathBase;
+import com.evolveum.midpoint.repo.sqlbase.querydsl.UuidPath;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.WorkBucketStateType;
+
+/**
+ * Querydsl query type for {@value #TABLE_NAME} table holding work buckets of distributed activities.
+ * This table is not mapped to any prism item, it is used only by
+ * {@link com.evolveum.midpoint.repo.sqale.SqaleWorkBucketStore}.
+ */
+@SuppressWarnings("unused")
+public class QActivityBucket extends FlexibleRelationalPathBase<MActivityBucket> {
+
+    private static final long serialVersionUID = -5470137296417531462L;
+
+    public static final String TABLE_NAME = "m_activity_bucket";
+
+    public static final String DEFAULT_ALIAS_NAME = "ab";
+
+    public static final ColumnMetadata TASK_OID =
+            ColumnMetadata.named("taskOid").ofType(UuidPath.UUID_TYPE).notNull();
+    public static final ColumnMetadata ACTIVITY_PATH =
+            ColumnMetadata.named("activityPath").ofType(Types.VARCHAR).notNull();
+    public static final ColumnMetadata SEQUENTIAL_NUMBER =
+            ColumnMetadata.named("sequentialNumber").ofType(Types.INTEGER).notNull();
+    public static final ColumnMetadata STATE =
+            ColumnMetadata.named("state").ofType(Types.OTHER).notNull();
+    public static final ColumnMetadata WORKER_OID =
+            ColumnMetadata.named("workerOid").ofType(UuidPath.UUID_TYPE);
+    public static final ColumnMetadata FULL_OBJECT =
+            ColumnMetadata.named("fullObject").ofType(Types.BINARY).notNull();
+
+    // must be after column metadata, constructor uses them
+    public static final QActivityBucket DEFAULT = new QActivityBucket();
+
+    public final UuidPath taskOid = createUuid("taskOid", TASK_OID);
+    public final StringPath activityPath = createString("activityPath", ACTIVITY_PATH);
+    public final NumberPath<Integer> sequentialNumber =
+            createInteger("sequentialNumber", SEQUENTIAL_NUMBER);
+    public final EnumPath<WorkBucketStateType> state =
+            createEnum("state", WorkBucketStateType.class, STATE);
+    public final UuidPath workerOid = createUuid("workerOid", WORKER_OID);
+    public final ArrayPath<byte[], Byte> fullObject = createByteArray("fullObject", FULL_OBJECT);
+
+    public QActivityBucket() {
+        this(DEFAULT_ALIAS_NAME, DEFAULT_SCHEMA_NAME);
+    }
+
+    public QActivityBucket(String variable) {
+        this(variable, DEFAULT_SCHEMA_NAME);
+    }
+
+    public QActivityBucket(String variable, String schema) {
+        super(MActivityBucket.class, variable, schema, TABLE_NAME);
+    }
+}
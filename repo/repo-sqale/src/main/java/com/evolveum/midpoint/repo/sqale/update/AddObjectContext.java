@@ -57,11 +57,7 @@ public class AddObjectContext<S extends ObjectType, Q extends QObject<R>, R exte
             jdbcSession.commit();
             return oid;
         } catch (QueryException e) { // Querydsl exception, not ours
-            Throwable cause = e.getCause();
-            if (cause instanceof PSQLException) {
-                SqaleUtils.handlePostgresException((PSQLException) cause);
-            }
-            throw e;
+            throw handledQueryException(e);
         }
     }
 
@@ -79,17 +75,34 @@ public class AddObjectContext<S extends ObjectType, Q extends QObject<R>, R exte
         }
     }
 
+    /**
+     * Like {@link #execute(JdbcSession)}, but translates constraint violations to {@link ObjectAlreadyExistsException}
+     * like {@link #execute()} does. Used when more objects are added in a single transaction.
+     */
+    public String executeWithinTransaction(JdbcSession jdbcSession)
+            throws SchemaException, ObjectAlreadyExistsException {
+        try {
+            return execute(jdbcSession);
+        } catch (QueryException e) { // Querydsl exception, not ours
+            throw handledQueryException(e);
+        }
+    }
+
+    private QueryException handledQueryException(QueryException e) throws ObjectAlreadyExistsException {
+        Throwable cause = e.getCause();
+        if (cause instanceof PSQLException) {
+            SqaleUtils.handlePostgresException((PSQLException) cause);
+        }
+        return e;
+    }
+
     public void executeReindexed(JdbcSession jdbcSession)
             throws SchemaException, ObjectAlreadyExistsException {
         try {
             initContexts();
             addObjectWithOid(jdbcSession);
         } catch (QueryException e) { // Querydsl exception, not ours
-            Throwable cause = e.getCause();
-            if (cause instanceof PSQLException) {
-                SqaleUtils.handlePostgresException((PSQLException) cause);
-            }
-            throw e;
+            throw handledQueryException(e);
         }
     }
 
@@ -401,6 +401,17 @@ public class SqaleRepoBaseTest extends AbstractSpringTest
         }
     }
 
+    /** Switches org closure between immediate incremental update (default) and deferred update. */
+    protected void setOrgClosureDeferredUpdate(boolean deferred) {
+        try (JdbcSession jdbcSession = startTransaction()) {
+            jdbcSession.executeStatement(deferred
+                    ? "INSERT INTO m_global_metadata VALUES ('orgClosureDeferredUpdate', 'true')"
+                    + " ON CONFLICT (name) DO UPDATE SET value = 'true'"
+                    : "DELETE FROM m_global_metadata WHERE name = 'orgClosureDeferredUpdate'");
+            jdbcSession.commit();
+        }
+    }
+
     /** Low-level shortcut for {@link SqaleRepositoryService#searchObjects}, no checks. */
     @SafeVarargs
     @NotNull
@@ -8,7 +8,12 @@ package com.evolveum.midpoint.repo.sqale.func;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
 import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
 import java.util.UUID;
 
 import com.querydsl.core.types.dsl.NumberExpression;
@@ -27,6 +32,7 @@ import com.evolveum.midpoint.schema.result.OperationResult;
 import com.evolveum.midpoint.schema.util.ObjectTypeUtil;
 import com.evolveum.midpoint.task.api.test.NullTaskImpl;
 import com.evolveum.midpoint.util.exception.SchemaException;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.AuditPartitionsPolicyType;
 import com.evolveum.midpoint.xml.ns._public.common.common_3.CleanupPolicyType;
 import com.evolveum.midpoint.xml.ns._public.common.common_3.UserType;
 
@@ -44,7 +50,11 @@ public class AuditCleanupTest extends SqaleRepoBaseTest {
     private void prepareAuditRecords(long startTimestamp, int count, OperationResult result)
             throws SchemaException {
         clearAudit();
+        addAuditRecords(startTimestamp, count, result);
+    }
 
+    private void addAuditRecords(long startTimestamp, int count, OperationResult result)
+            throws SchemaException {
         long timestamp = startTimestamp;
         for (int i = 1; i <= count; i++) {
             AuditEventRecord record = new AuditEventRecord();
@@ -146,6 +156,123 @@ public class AuditCleanupTest extends SqaleRepoBaseTest {
                 .isZero(); // start + 40s should be < now - 60s, it should be all gone
     }
 
+    @Test
+    public void test300CleanupByAgeDropsExpiredPartitions() throws Exception {
+        given("audit has monthly partitions for the last months and records in some of them");
+        OperationResult operationResult = createOperationResult();
+        clearAudit(); // default partition must be empty for the ranges of new partitions
+        executeStatement("call audit_create_monthly_partitions(-4)");
+        int partitionsBefore = countAuditEventPartitions();
+        addAuditRecords(ZonedDateTime.now().minusMonths(3).toInstant().toEpochMilli(), 10, operationResult);
+        addAuditRecords(System.currentTimeMillis() - 100_000, 100, operationResult);
+        QAuditEventRecord qae = QAuditEventRecordMapping.get().defaultAlias();
+
+        when("audit cleanup is called to leave just the last month");
+        auditService.cleanupAudit(new CleanupPolicyType()
+                .maxAge(XmlTypeConverter.createDuration("P1M")), operationResult);
+
+        then("operation is success, expired partitions are dropped and recent records are left");
+        assertThatOperationResult(operationResult).isSuccess();
+        assertCount(qae, 100);
+        // partitions for 2 and 3 months ago are dropped, the previous month contains the limit
+        assertThat(countAuditEventPartitions()).isLessThanOrEqualTo(partitionsBefore - 2);
+    }
+
+    @Test
+    public void test310MaintainAuditPartitions() throws Exception {
+        given("empty audit");
+        OperationResult operationResult = createOperationResult();
+        clearAudit();
+
+        when("audit partitions maintenance is called for the current and the next month");
+        auditService.maintainAuditPartitions(
+                new AuditPartitionsPolicyType().futurePartitions(2), operationResult);
+
+        then("operation is success, partitions exist and their sizes are reported");
+        assertThatOperationResult(operationResult).isSuccess();
+        assertThat(partitionExists("date_trunc('month', current_timestamp)")).isTrue();
+        assertThat(partitionExists("date_trunc('month', current_timestamp) + interval '1 month'")).isTrue();
+        OperationResult subresult = operationResult.getLastSubresult();
+        assertThat(subresult.getReturnSingle("total-size")).isNotNull();
+    }
+
+    /**
+     * PostgreSQL cannot create a partition for a range having rows in the default partition.
+     * Such months are skipped and reported, the other partitions are created.
+     */
+    @Test
+    public void test320MaintainAuditPartitionsWithRecordsInDefaultPartition() throws Exception {
+        given("audit records for a month without partition, i.e. in the default partition");
+        OperationResult operationResult = createOperationResult();
+        clearAudit();
+        addAuditRecords(ZonedDateTime.now().plusMonths(3).withDayOfMonth(15).toInstant().toEpochMilli(),
+                5, operationResult);
+        assertThat(partitionExists("date_trunc('month', current_timestamp) + interval '3 month'")).isFalse();
+        QAuditEventRecord qae = QAuditEventRecordMapping.get().defaultAlias();
+        assertThat(countDefaultPartitionRecords()).isEqualTo(5);
+
+        when("audit partitions maintenance is called for the next five months");
+        auditService.maintainAuditPartitions(
+                new AuditPartitionsPolicyType().futurePartitions(5), operationResult);
+
+        then("operation is not a failure, but the blocked month is reported");
+        operationResult.computeStatus();
+        assertThat(operationResult.isWarning()).as("warning in result").isTrue();
+        assertThat(operationResult.getLastSubresult().getMessage())
+                .contains(ZonedDateTime.now().plusMonths(3).format(DateTimeFormatter.ofPattern("yyyyMM")));
+
+        and("partitions for the other months are created");
+        for (int i = 0; i < 5; i++) {
+            assertThat(partitionExists("date_trunc('month', current_timestamp) + interval '" + i + " month'"))
+                    .as("partition for month +" + i)
+                    .isEqualTo(i != 3);
+        }
+
+        and("the records are intact");
+        assertCount(qae, 5);
+        assertThat(countDefaultPartitionRecords()).isEqualTo(5);
+
+        clearAudit(); // so the default partition does not block partitions created by other tests
+    }
+
+    private int countDefaultPartitionRecords() throws SQLException {
+        try (JdbcSession jdbcSession = startReadOnlyTransaction();
+                PreparedStatement stmt = jdbcSession.connection().prepareStatement(
+                        "select count(*) from ma_audit_event_default");
+                ResultSet rs = stmt.executeQuery()) {
+            rs.next();
+            return rs.getInt(1);
+        }
+    }
+
+    private void executeStatement(String sql) {
+        try (JdbcSession jdbcSession = startTransaction()) {
+            jdbcSession.executeStatement(sql);
+            jdbcSession.commit();
+        }
+    }
+
+    private int countAuditEventPartitions() throws SQLException {
+        try (JdbcSession jdbcSession = startReadOnlyTransaction();
+                PreparedStatement stmt = jdbcSession.connection().prepareStatement(
+                        "select count(*) from pg_inherits where inhparent = 'ma_audit_event'::regclass");
+                ResultSet rs = stmt.executeQuery()) {
+            rs.next();
+            return rs.getInt(1);
+        }
+    }
+
+    private boolean partitionExists(String monthStartExpression) throws SQLException {
+        try (JdbcSession jdbcSession = startReadOnlyTransaction();
+                PreparedStatement stmt = jdbcSession.connection().prepareStatement(
+                        "select to_regclass('ma_audit_event_' || to_char(" + monthStartExpression + ", 'YYYYMM'))"
+                                + " is not null");
+                ResultSet rs = stmt.executeQuery()) {
+            rs.next();
+            return rs.getBoolean(1);
+        }
+    }
+
     private long selectMinMaxId(QAuditEventRecord qae, NumberExpression<Long> minMaxPath) {
         try (JdbcSession jdbcSession = startReadOnlyTransaction()) {
             return jdbcSession.newQuery()
@@ -0,0 +1,304 @@
+/*
+ * Copyright (C) 2010-2022 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+package com.evolveum.midpoint.repo.sqale.func;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+import org.testng.annotations.Test;
+
+import com.evolveum.midpoint.audit.api.AuditEventRecord;
+import com.evolveum.midpoint.repo.sqale.SqaleRepoBaseTest;
+import com.evolveum.midpoint.repo.sqale.audit.AuditDurability;
+import com.evolveum.midpoint.repo.sqale.audit.AuditSpool;
+import com.evolveum.midpoint.repo.sqale.audit.AuditWriteBehind;
+import com.evolveum.midpoint.repo.sqale.audit.SqaleAuditService;
+import com.evolveum.midpoint.repo.sqale.audit.qmodel.*;
+import com.evolveum.midpoint.repo.sqale.qmodel.object.MObjectType;
+import com.evolveum.midpoint.schema.constants.ObjectTypes;
+import com.evolveum.midpoint.schema.metrics.MidpointMetrics;
+import com.evolveum.midpoint.schema.result.OperationResult;
+import com.evolveum.midpoint.schema.util.ObjectTypeUtil;
+import com.evolveum.midpoint.task.api.test.NullTaskImpl;
+import com.evolveum.midpoint.util.exception.SystemException;
+import com.evolveum.midpoint.xml.ns._public.common.audit_3.AuditEventRecordType;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.ChangeTypeType;
+
+/**
+ * Tests asynchronous audit writing with {@link AuditWriteBehind}, mostly without going through the service.
+ */
+public class AuditWriteBehindTest extends SqaleRepoBaseTest {
+
+    @Test
+    public void test100AsyncWriteInBatches() {
+        given("cleared audit and asynchronous writer with small batches");
+        clearAudit();
+        AuditWriteBehind writeBehind = new AuditWriteBehind(
+                sqlRepoContext, AuditDurability.ASYNC, null, 100, 7);
+        writeBehind.start(records -> {
+            throw new AssertionError("No spool, no spooled records");
+        });
+
+        when("records are submitted and the writer is stopped");
+        for (int i = 1; i <= 50; i++) {
+            assertThat(writeBehind.submit(createRow(i), createRecord(i))).isTrue();
+        }
+        writeBehind.stop();
+
+        then("all the records with their deltas and references are written");
+        assertThat(writeBehind.getWrittenCount()).isEqualTo(50);
+        assertThat(writeBehind.getBacklog()).isZero();
+        assertThat(writeBehind.getLagMillis()).isZero();
+        QAuditEventRecord qae = QAuditEventRecordMapping.get().defaultAlias();
+        assertCount(qae, 50);
+        assertCount(QAuditDeltaMapping.get().defaultAlias(), 50);
+        assertCount(QAuditRefValueMapping.get().defaultAlias(), 50);
+
+        and("all the records have distinct IDs and their children point to them");
+        List<MAuditEventRecord> rows = select(qae);
+        assertThat(rows).extracting(r -> r.id).doesNotHaveDuplicates();
+        List<MAuditDelta> deltas = select(QAuditDeltaMapping.get().defaultAlias());
+        assertThat(deltas).extracting(d -> d.recordId)
+                .containsExactlyInAnyOrderElementsOf(
+                        rows.stream().map(r -> r.id).collect(Collectors.toList()));
+    }
+
+    @Test
+    public void test110StoppedWriterRefusesRecords() {
+        given("stopped asynchronous writer");
+        clearAudit();
+        AuditWriteBehind writeBehind = new AuditWriteBehind(
+                sqlRepoContext, AuditDurability.ASYNC, null, 100, 7);
+        writeBehind.start(records -> {});
+        writeBehind.stop();
+
+        expect("the record is not accepted (instead of failing)");
+        assertThat(writeBehind.submit(createRow(1), createRecord(1))).isFalse();
+        assertThat(writeBehind.getBacklog()).isZero();
+        assertCount(QAuditEventRecordMapping.get().defaultAlias(), 0);
+    }
+
+    /** While the writer is being stopped, audit service writes the records synchronously. */
+    @Test
+    public void test120ServiceFallsBackToSyncWriteWhenWriterIsStopping() {
+        OperationResult result = createOperationResult();
+        SqaleAuditService sqaleAuditService = (SqaleAuditService) auditService;
+
+        given("audit service with asynchronous writer that is already stopped, but not yet detached");
+        clearAudit();
+        AuditWriteBehind writeBehind = new AuditWriteBehind(
+                sqlRepoContext, AuditDurability.ASYNC, null, 100, 7);
+        sqaleAuditService.startWriteBehind(writeBehind);
+        writeBehind.stop();
+
+        try {
+            when("a record is audited");
+            AuditEventRecord record = createRecord(1);
+            record.addReferenceValue("ref1",
+                    ObjectTypeUtil.createObjectRef(UUID.randomUUID().toString(), ObjectTypes.USER)
+                            .asReferenceValue());
+            sqaleAuditService.audit(record, NullTaskImpl.INSTANCE, result);
+
+            then("it is written synchronously, including its references");
+            assertThatOperationResult(result).isSuccess();
+            assertThat(record.getRepoId()).isNotNull();
+            assertCount(QAuditEventRecordMapping.get().defaultAlias(), 1);
+            assertCount(QAuditRefValueMapping.get().defaultAlias(), 1);
+        } finally {
+            sqaleAuditService.stopWriteBehind();
+        }
+    }
+
+    @Test
+    public void test200SpooledWriteEmptiesTheSpool() throws Exception {
+        given("cleared audit and asynchronous writer with a spool");
+        clearAudit();
+        Path spoolFile = Files.createTempDirectory("audit-spool-test").resolve("audit-spool");
+        AuditWriteBehind writeBehind = new AuditWriteBehind(sqlRepoContext,
+                AuditDurability.ASYNC_SPOOLED, new AuditSpool(sqlRepoContext, spoolFile), 100, 10);
+        writeBehind.start(records -> {});
+
+        when("records are submitted and the writer is stopped");
+        for (int i = 1; i <= 25; i++) {
+            assertThat(writeBehind.submit(createRow(i), createRecord(i))).isTrue();
+        }
+        writeBehind.stop();
+
+        then("all the records are written and the spool is truncated");
+        assertCount(QAuditEventRecordMapping.get().defaultAlias(), 25);
+        assertThat(Files.size(spoolFile)).isZero();
+
+        and("no records are written again when the spool is reopened");
+        List<AuditEventRecordType> spooledRecords = new ArrayList<>();
+        writeBehind = new AuditWriteBehind(sqlRepoContext,
+                AuditDurability.ASYNC_SPOOLED, new AuditSpool(sqlRepoContext, spoolFile), 100, 10);
+        writeBehind.start(spooledRecords::addAll);
+        writeBehind.stop();
+        assertThat(spooledRecords).isEmpty();
+        assertThat(writeBehind.getWrittenCount()).isZero();
+        assertCount(QAuditEventRecordMapping.get().defaultAlias(), 25);
+    }
+
+    /** Records not written before the writer stopped are read from the spool (in a stable format) on the next start. */
+    @Test
+    public void test210UncommittedSpooledRecordsAreWrittenOnStart() throws Exception {
+        given("spool with records that were not committed");
+        Path spoolFile = Files.createTempDirectory("audit-spool-test").resolve("audit-spool");
+        AuditSpool spool = new AuditSpool(sqlRepoContext, spoolFile);
+        assertThat(spool.open()).isEmpty();
+        for (int i = 1; i <= 15; i++) {
+            spool.append(createRecord(i).createAuditEventRecordType(true));
+        }
+        spool.close();
+
+        when("the writer is started with the spool");
+        List<AuditEventRecordType> spooledRecords = new ArrayList<>();
+        List<Integer> batchSizes = new ArrayList<>();
+        AuditWriteBehind writeBehind = new AuditWriteBehind(sqlRepoContext,
+                AuditDurability.ASYNC_SPOOLED, new AuditSpool(sqlRepoContext, spoolFile), 100, 10);
+        writeBehind.start(records -> {
+            batchSizes.add(records.size());
+            spooledRecords.addAll(records);
+        });
+        writeBehind.stop();
+
+        then("the records are provided in batches, in the original order and with the original content");
+        assertThat(batchSizes).containsExactly(10, 5);
+        assertThat(spooledRecords).extracting(AuditEventRecordType::getParameter)
+                .containsExactly("1", "2", "3", "4", "5", "6", "7", "8", "9", "10", "11", "12", "13", "14", "15");
+        assertThat(writeBehind.getWrittenCount()).isEqualTo(15);
+
+        and("they are not provided again after the next start");
+        spooledRecords.clear();
+        writeBehind = new AuditWriteBehind(sqlRepoContext,
+                AuditDurability.ASYNC_SPOOLED, new AuditSpool(sqlRepoContext, spoolFile), 100, 10);
+        writeBehind.start(spooledRecords::addAll);
+        writeBehind.stop();
+        assertThat(spooledRecords).isEmpty();
+    }
+
+    /** A record that can't be written does not block the others, it ends up in the dead letter file. */
+    @Test
+    public void test220FailingRecordIsMovedToDeadLetterFile() throws Exception {
+        given("cleared audit and asynchronous writer with a spool");
+        clearAudit();
+        Path spoolFile = Files.createTempDirectory("audit-spool-test").resolve("audit-spool");
+        AuditWriteBehind writeBehind = new AuditWriteBehind(sqlRepoContext,
+                AuditDurability.ASYNC_SPOOLED, new AuditSpool(sqlRepoContext, spoolFile), 100, 10);
+        writeBehind.start(records -> {});
+
+        when("records are submitted, one of them violating the primary key of the delta table");
+        for (int i = 1; i <= 5; i++) {
+            MAuditEventRecord row = createRow(i);
+            if (i == 3) {
+                MAuditDelta duplicateDelta = new MAuditDelta();
+                duplicateDelta.checksum = "checksum-" + i;
+                row.addDelta(duplicateDelta);
+            }
+            assertThat(writeBehind.submit(row, createRecord(i))).isTrue();
+        }
+        // Waiting for the one-by-one writes, records failing while the writer is stopping would be kept in the spool.
+        long deadline = System.currentTimeMillis() + 60_000;
+        while (writeBehind.getWrittenCount() + writeBehind.getDeadLetterCount() < 5
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(100);
+        }
+        writeBehind.stop();
+
+        then("the other records are written and the spool is truncated");
+        assertCount(QAuditEventRecordMapping.get().defaultAlias(), 4);
+        assertThat(writeBehind.getWrittenCount()).isEqualTo(4);
+        assertThat(writeBehind.getDeadLetterCount()).isEqualTo(1);
+        assertThat(writeBehind.getFailedAttempts())
+                .as("constraint violation is not retried, only the batch and the record fail")
+                .isEqualTo(2);
+        assertThat(Files.size(spoolFile)).isZero();
+
+        and("the failing record is in the dead letter file");
+        assertThat(Files.readString(spoolFile.resolveSibling("audit-spool.dead-letter"))).isNotBlank();
+    }
+
+    /** Only constraint violations and data errors are dead-lettered, database outages are retried. */
+    @Test
+    public void test230OnlyConstraintViolationsAndDataErrorsAreNotRetried() {
+        expect("constraint violations and data errors are permanent failures");
+        assertThat(AuditWriteBehind.isTransientFailure(
+                new SystemException(new SQLException("duplicate key", "23505")))).isFalse();
+        assertThat(AuditWriteBehind.isTransientFailure(
+                new SystemException(new SQLException("value too long", "22001")))).isFalse();
+
+        and("failures not caused by the database are permanent too");
+        assertThat(AuditWriteBehind.isTransientFailure(new IllegalStateException("bad row"))).isFalse();
+
+        and("connection, rollback and resource problems are transient");
+        assertThat(AuditWriteBehind.isTransientFailure(
+                new SystemException(new SQLException("connection refused", "08001")))).isTrue();
+        assertThat(AuditWriteBehind.isTransientFailure(
+                new SystemException(new SQLException("serialization failure", "40001")))).isTrue();
+        assertThat(AuditWriteBehind.isTransientFailure(
+                new SystemException(new SQLException("too many connections", "53300")))).isTrue();
+        assertThat(AuditWriteBehind.isTransientFailure(
+                new SystemException(new SQLTransientConnectionException("connection is not available")))).isTrue();
+    }
+
+    @Test
+    public void test240WriterMetricsAreExportedWhileRunning() {
+        given("asynchronous writer");
+        AuditWriteBehind writeBehind = new AuditWriteBehind(
+                sqlRepoContext, AuditDurability.ASYNC, null, 100, 10);
+
+        when("the writer is started");
+        writeBehind.start(records -> {});
+
+        then("its metrics are exported");
+        assertThat(MidpointMetrics.export())
+                .contains("midpoint_audit_write_behind_backlog ")
+                .contains("midpoint_audit_write_behind_lag_seconds ")
+                .contains("midpoint_audit_write_behind_dead_letters_total ");
+
+        when("the writer is stopped");
+        writeBehind.stop();
+
+        then("its metrics are not exported anymore");
+        assertThat(MidpointMetrics.export()).doesNotContain("midpoint_audit_write_behind_");
+    }
+
+    private AuditEventRecord createRecord(int index) {
+        AuditEventRecord record = new AuditEventRecord();
+        record.setParameter(String.valueOf(index));
+        record.setTimestamp(System.currentTimeMillis());
+        return record;
+    }
+
+    private MAuditEventRecord createRow(int index) {
+        MAuditEventRecord row = new MAuditEventRecord();
+        row.timestamp = Instant.now();
+        row.parameter = String.valueOf(index);
+
+        MAuditDelta delta = new MAuditDelta();
+        delta.checksum = "checksum-" + index;
+        delta.deltaOid = UUID.randomUUID();
+        delta.deltaType = ChangeTypeType.MODIFY;
+        row.addDelta(delta);
+
+        MAuditRefValue ref = new MAuditRefValue();
+        ref.name = "ref1";
+        ref.targetOid = UUID.randomUUID();
+        ref.targetType = MObjectType.USER;
+        row.addRefValue(ref);
+        return row;
+    }
+}
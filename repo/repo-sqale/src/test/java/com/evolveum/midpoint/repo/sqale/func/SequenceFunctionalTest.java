@@ -88,4 +88,83 @@ public class SequenceFunctionalTest extends SqaleRepoBaseTest {
         Assertions.assertThatThrownBy(() -> repositoryService.advanceSequence(oid, result))
                 .isInstanceOf(SystemException.class);
     }
+
+    @Test
+    public void test030ReservingValues() throws Exception {
+        OperationResult result = createOperationResult();
+        String oid = repositoryService.addObject(
+                new SequenceType()
+                        .name("Sequence 0-9, 5 unused values, block of 3")
+                        .counter(0L)
+                        .maxCounter(9L)
+                        .maxUnusedValues(5)
+                        .reservationBlockSize(3)
+                        .asPrismObject(),
+                null, result);
+
+        Assertions.assertThat(repositoryService.reserveSequenceValues(oid, null, result))
+                .containsExactly(0L, 1L, 2L);
+        Assertions.assertThat(repositoryService.reserveSequenceValues(oid, 2, result))
+                .containsExactly(3L, 4L);
+        repositoryService.returnUnusedValuesToSequence(oid, Arrays.asList(1L, 4L), result);
+        // unused values go first, block is filled from the counter
+        Assertions.assertThat(repositoryService.reserveSequenceValues(oid, null, result))
+                .containsExactly(1L, 4L, 5L);
+        assertEquals(repositoryService.advanceSequence(oid, result), 6L);
+        // only values up to the max counter are reserved
+        Assertions.assertThat(repositoryService.reserveSequenceValues(oid, 5, result))
+                .containsExactly(7L, 8L, 9L);
+        Assertions.assertThatThrownBy(() -> repositoryService.reserveSequenceValues(oid, null, result))
+                .isInstanceOf(SystemException.class);
+    }
+
+    @Test
+    public void test031ReservingValuesWithRewind() throws Exception {
+        OperationResult result = createOperationResult();
+        String oid = repositoryService.addObject(
+                new SequenceType()
+                        .name("Sequence 0-9, wrap around, block of 20")
+                        .counter(0L)
+                        .maxCounter(9L)
+                        .allowRewind(true)
+                        .reservationBlockSize(20)
+                        .asPrismObject(),
+                null, result);
+
+        // the block ends at the rewind, no value is reserved twice in the same block
+        Assertions.assertThat(repositoryService.reserveSequenceValues(oid, null, result))
+                .containsExactly(0L, 1L, 2L, 3L, 4L, 5L, 6L, 7L, 8L, 9L);
+        Assertions.assertThat(repositoryService.reserveSequenceValues(oid, 3, result))
+                .containsExactly(0L, 1L, 2L);
+        Assertions.assertThat(repositoryService.reserveSequenceValues(oid, null, result))
+                .containsExactly(3L, 4L, 5L, 6L, 7L, 8L, 9L);
+        Assertions.assertThat(repositoryService.reserveSequenceValues(oid, 1, result))
+                .containsExactly(0L);
+    }
+
+    @Test
+    public void test032ReservingValuesUntilExhausted() throws Exception {
+        OperationResult result = createOperationResult();
+        String oid = repositoryService.addObject(
+                new SequenceType()
+                        .name("Sequence 0-4, block of 3")
+                        .counter(0L)
+                        .maxCounter(4L)
+                        .maxUnusedValues(5)
+                        .reservationBlockSize(3)
+                        .asPrismObject(),
+                null, result);
+
+        Assertions.assertThat(repositoryService.reserveSequenceValues(oid, null, result))
+                .containsExactly(0L, 1L, 2L);
+        // short block at the end of the sequence
+        Assertions.assertThat(repositoryService.reserveSequenceValues(oid, null, result))
+                .containsExactly(3L, 4L);
+        // returned values can be reserved again even if the sequence is exhausted
+        repositoryService.returnUnusedValuesToSequence(oid, Arrays.asList(1L, 3L), result);
+        Assertions.assertThat(repositoryService.reserveSequenceValues(oid, null, result))
+                .containsExactly(1L, 3L);
+        Assertions.assertThatThrownBy(() -> repositoryService.reserveSequenceValues(oid, null, result))
+                .isInstanceOf(SystemException.class);
+    }
 }
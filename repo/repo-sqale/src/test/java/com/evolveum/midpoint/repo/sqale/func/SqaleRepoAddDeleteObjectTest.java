@@ -29,6 +29,7 @@ import com.evolveum.midpoint.prism.Containerable;
 import com.evolveum.midpoint.prism.PrismObject;
 import com.evolveum.midpoint.prism.path.ItemName;
 import com.evolveum.midpoint.prism.polystring.PolyString;
+import com.evolveum.midpoint.repo.api.BulkOperationItemResult;
 import com.evolveum.midpoint.repo.api.DeleteObjectResult;
 import com.evolveum.midpoint.repo.api.RepositoryService;
 import com.evolveum.midpoint.repo.sqale.SqaleRepoBaseTest;
@@ -2462,6 +2463,56 @@ public class SqaleRepoAddDeleteObjectTest extends SqaleRepoBaseTest {
     }
     // endregion
 
+    // region bulk add
+    @Test
+    public void test870AddObjectsInBulk() throws Exception {
+        OperationResult result = createOperationResult();
+
+        given("users to add, one of them with a conflicting name");
+        long baseCount = count(QUser.class);
+        String userName = "user" + getTestNumber();
+        UserType user1 = new UserType()
+                .name(userName + "-1")
+                .assignment(new AssignmentType()
+                        .targetRef(UUID.randomUUID().toString(), RoleType.COMPLEX_TYPE))
+                .assignment(new AssignmentType()
+                        .targetRef(UUID.randomUUID().toString(), OrgType.COMPLEX_TYPE));
+        UserType userConflicting = new UserType()
+                .name(userName + "-1");
+        UserType user2 = new UserType()
+                .oid(UUID.randomUUID().toString())
+                .name(userName + "-2")
+                .assignment(new AssignmentType()
+                        .targetRef(UUID.randomUUID().toString(), RoleType.COMPLEX_TYPE));
+
+        when("adding them to the repository in bulk");
+        List<BulkOperationItemResult> results = repositoryService.addObjects(
+                List.of(user1.asPrismObject(), userConflicting.asPrismObject(), user2.asPrismObject()),
+                null, result);
+
+        then("non-conflicting users are added, the conflicting one is reported as failed");
+        assertThat(results).hasSize(3);
+        assertThat(results.get(0).isSuccess()).isTrue();
+        assertThat(results.get(0).getOid()).isEqualTo(user1.getOid());
+        assertThat(results.get(1).isSuccess()).isFalse();
+        assertThat(results.get(1).getException()).isInstanceOf(ObjectAlreadyExistsException.class);
+        assertThat(userConflicting.getOid()).isNull();
+        assertThat(results.get(2).isSuccess()).isTrue();
+        assertThat(results.get(2).getOid()).isEqualTo(user2.getOid());
+
+        result.computeStatus();
+        assertThat(result.isPartialError()).isTrue();
+
+        and("rows of added users and their containers are stored");
+        assertThat(count(QUser.class)).isEqualTo(baseCount + 2);
+        assertThat(selectObjectByOid(QUser.class, user1.getOid()).nameOrig).isEqualTo(userName + "-1");
+        assertThat(selectObjectByOid(QUser.class, user2.getOid()).nameOrig).isEqualTo(userName + "-2");
+        QAssignment<?> qa = QAssignmentMapping.getAssignmentMapping().defaultAlias();
+        assertThat(select(qa, qa.ownerOid.eq(UUID.fromString(user1.getOid())))).hasSize(2);
+        assertThat(select(qa, qa.ownerOid.eq(UUID.fromString(user2.getOid())))).hasSize(1);
+    }
+    // endregion
+
     // region delete tests
     // when we get here we have a couple of users and some other types stored in the repository
     @Test
@@ -3037,6 +3037,116 @@ public class SqaleRepoModifyObjectTest extends SqaleRepoBaseTest {
         assertThat(campaignObjectAfter.getCase().size()).isEqualTo(1);
     }
 
+    @Test
+    public void test340AddingAssignmentsWithBatchedInserts()
+            throws ObjectAlreadyExistsException, ObjectNotFoundException, SchemaException {
+        OperationResult result = createOperationResult();
+        MUser originalRow = selectObjectByOid(QUser.class, user1Oid);
+        QAssignment<?> a = QAssignmentMapping.getAssignmentMapping().defaultAlias();
+        int origAssignmentCount = (int) count(a, a.ownerOid.eq(UUID.fromString(user1Oid)));
+
+        given("delta adding two assignments with refs and metadata for user 1");
+        UUID roleOid = UUID.randomUUID();
+        UUID resourceOid = UUID.randomUUID();
+        ObjectDelta<UserType> delta = prismContext.deltaFor(UserType.class)
+                .item(UserType.F_ASSIGNMENT)
+                .add(new AssignmentType()
+                                .targetRef(roleOid.toString(), RoleType.COMPLEX_TYPE)
+                                .metadata(new MetadataType()
+                                        .createChannel("batch-channel")
+                                        .createApproverRef(UUID.randomUUID().toString(),
+                                                UserType.COMPLEX_TYPE)
+                                        .modifyApproverRef(UUID.randomUUID().toString(),
+                                                UserType.COMPLEX_TYPE))
+                                .order(58),
+                        new AssignmentType()
+                                .construction(new ConstructionType()
+                                        .resourceRef(resourceOid.toString(),
+                                                ResourceType.COMPLEX_TYPE))
+                                .order(59))
+                .asObjectDelta(user1Oid);
+
+        when("modifyObject is called with batched container inserts");
+        repositoryService.modifyObject(UserType.class, user1Oid, delta.getModifications(),
+                RepoModifyOptions.createBatchContainerInserts(), result);
+
+        then("operation is successful");
+        assertThatOperationResult(result).isSuccess();
+
+        and("serialized form (fullObject) is updated");
+        UserType userObject = repositoryService.getObject(UserType.class, user1Oid, null, result)
+                .asObjectable();
+        assertThat(userObject.getVersion()).isEqualTo(String.valueOf(originalRow.version + 1));
+        assertThat(userObject.getAssignment()).hasSize(origAssignmentCount + 2);
+
+        and("new assignment rows are created as if inserted one by one");
+        MUser row = selectObjectByOid(QUser.class, user1Oid);
+        assertThat(row.version).isEqualTo(originalRow.version + 1);
+        assertThat(row.containerIdSeq).isEqualTo(originalRow.containerIdSeq + 2);
+
+        List<MAssignment> aRows = select(a, a.ownerOid.eq(UUID.fromString(user1Oid)));
+        assertThat(aRows).hasSize(origAssignmentCount + 2)
+                .anyMatch(aRow -> aRow.cid == row.containerIdSeq - 2
+                        && aRow.orderValue == 58
+                        && aRow.targetRefTargetOid.equals(roleOid)
+                        && cachedUriById(aRow.createChannelId).equals("batch-channel"))
+                .anyMatch(aRow -> aRow.cid == row.containerIdSeq - 1
+                        && aRow.orderValue == 59
+                        && aRow.resourceRefTargetOid.equals(resourceOid));
+
+        QAssignmentReference car =
+                QAssignmentReferenceMapping.getForAssignmentCreateApprover().defaultAlias();
+        assertThat(select(car, car.ownerOid.eq(UUID.fromString(user1Oid))
+                .and(car.assignmentCid.eq(row.containerIdSeq - 2))))
+                .hasSize(1)
+                .allMatch(rr -> rr.targetType == MObjectType.USER);
+        QAssignmentReference mar =
+                QAssignmentReferenceMapping.getForAssignmentModifyApprover().defaultAlias();
+        assertThat(select(mar, mar.ownerOid.eq(UUID.fromString(user1Oid))
+                .and(mar.assignmentCid.eq(row.containerIdSeq - 2))))
+                .hasSize(1)
+                .allMatch(rr -> rr.targetType == MObjectType.USER);
+    }
+
+    @Test
+    public void test341AddingAssignmentWithDuplicateCidAndBatchedInsertsFails()
+            throws ObjectNotFoundException, SchemaException {
+        OperationResult result = createOperationResult();
+        MUser originalRow = selectObjectByOid(QUser.class, user1Oid);
+        QAssignment<?> a = QAssignmentMapping.getAssignmentMapping().defaultAlias();
+        int origAssignmentCount = (int) count(a, a.ownerOid.eq(UUID.fromString(user1Oid)));
+
+        given("delta adding new assignment and an assignment with CID that is already used");
+        long usedCid = originalRow.containerIdSeq - 1;
+        ObjectDelta<UserType> delta = prismContext.deltaFor(UserType.class)
+                .item(UserType.F_ASSIGNMENT)
+                .add(new AssignmentType()
+                                .order(60),
+                        new AssignmentType()
+                                .id(usedCid)
+                                .order(61))
+                .asObjectDelta(user1Oid);
+
+        expect("modifyObject called with batched container inserts throws exception");
+        assertThatThrownBy(() -> repositoryService.modifyObject(UserType.class, user1Oid,
+                delta.getModifications(), RepoModifyOptions.createBatchContainerInserts(), result))
+                .isInstanceOfAny(SchemaException.class, SystemException.class);
+
+        and("operation is fatal error");
+        assertThatOperationResult(result).isFatalError();
+
+        and("nothing is changed, not even the assignment without the conflict");
+        MUser row = selectObjectByOid(QUser.class, user1Oid);
+        assertThat(row.version).isEqualTo(originalRow.version);
+        assertThat(row.containerIdSeq).isEqualTo(originalRow.containerIdSeq);
+        assertThat(select(a, a.ownerOid.eq(UUID.fromString(user1Oid))))
+                .hasSize(origAssignmentCount)
+                .noneMatch(aRow -> aRow.orderValue != null && aRow.orderValue == 60)
+                .anyMatch(aRow -> aRow.cid == usedCid && aRow.orderValue == 59);
+        assertThat(repositoryService.getObject(UserType.class, user1Oid, null, result)
+                .asObjectable().getAssignment()).hasSize(origAssignmentCount);
+    }
+
     @Test
     public void test399DeleteAllAssignments()
             throws ObjectAlreadyExistsException, ObjectNotFoundException, SchemaException {
@@ -8,6 +8,7 @@ package com.evolveum.midpoint.repo.sqale.func;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.UUID;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -20,6 +21,7 @@ import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
 import com.evolveum.midpoint.prism.PrismObject;
+import com.evolveum.midpoint.prism.delta.builder.S_ValuesEntry;
 import com.evolveum.midpoint.prism.query.ObjectQuery;
 import com.evolveum.midpoint.repo.api.RepositoryService;
 import com.evolveum.midpoint.repo.sqale.SqaleRepoBaseTest;
@@ -68,6 +70,7 @@ public class SqaleRepoSearchIterativeTest extends SqaleRepoBaseTest {
     public void resetTestHandler() {
         testHandler.reset();
         repositoryConfiguration.setIterativeSearchByPagingBatchSize(ITERATION_PAGE_SIZE);
+        repositoryConfiguration.setIterativeSearchPrefetchThreads(0);
     }
 
     @AfterMethod
@@ -321,6 +324,231 @@ public class SqaleRepoSearchIterativeTest extends SqaleRepoBaseTest {
         }
     }
 
+    @Test
+    public void test130SearchIterativeWithPrefetch() throws Exception {
+        OperationResult operationResult = createOperationResult();
+        SqlPerformanceMonitorImpl pm = getPerformanceMonitor();
+        pm.clearGlobalPerformanceInformation();
+
+        given("prefetch enabled and total result count not multiple of the page size");
+        repositoryConfiguration.setIterativeSearchPrefetchThreads(2);
+        int iterativePageSize = 47;
+        repositoryConfiguration.setIterativeSearchByPagingBatchSize(iterativePageSize);
+        assertThat(count(QUser.class) % iterativePageSize).isNotZero();
+        List<String> handledOids = new ArrayList<>();
+        testHandler.setStoppingPredicate(u -> {
+            handledOids.add(u.getOid());
+            return false;
+        });
+
+        when("calling search iterative with null query");
+        SearchResultMetadata metadata = searchObjectsIterative(null, operationResult);
+
+        then("result metadata is not null and reports the handled objects");
+        assertThatOperationResult(operationResult).isSuccess();
+        assertThat(metadata).isNotNull();
+        assertThat(metadata.getApproxNumberOfAllResults()).isEqualTo(testHandler.getCounter());
+        assertThat(metadata.isPartialResults()).isFalse();
+        assertThat(metadata.getPagingCookie()).isEqualTo(handledOids.get(handledOids.size() - 1));
+
+        and("the same pages were read as without prefetch");
+        assertOperationRecordedCount(
+                REPO_OP_PREFIX + RepositoryService.OP_SEARCH_OBJECTS_ITERATIVE, 1);
+        assertTypicalPageOperationCount(metadata);
+
+        and("all objects were processed in OID order, each exactly once");
+        assertThat(testHandler.getCounter()).isEqualTo(count(QUser.class));
+        assertThat(handledOids).isSorted().doesNotHaveDuplicates();
+    }
+
+    @Test
+    public void test135SearchIterativeWithPrefetchAndBreakingCondition() throws Exception {
+        OperationResult operationResult = createOperationResult();
+
+        String midOid = "80000000-0000-0000-0000-000000000000";
+        given("prefetch enabled and condition that breaks iterative search based on UUID");
+        repositoryConfiguration.setIterativeSearchPrefetchThreads(2);
+        testHandler.setStoppingPredicate(u -> u.getOid().compareTo(midOid) >= 0);
+
+        when("calling search iterative with null query");
+        SearchResultMetadata metadata = searchObjectsIterative(null, operationResult);
+
+        then("result metadata reports partial result with the last handled object as cookie");
+        assertThat(metadata).isNotNull();
+        assertThat(metadata.getApproxNumberOfAllResults()).isEqualTo(testHandler.getCounter());
+        assertThat(metadata.isPartialResults()).isTrue(); // extremely likely with enough items
+        assertThat(metadata.getPagingCookie()).isGreaterThanOrEqualTo(midOid);
+
+        and("all objects up to specified UUID were processed, prefetched page is ignored");
+        QUser u = aliasFor(QUser.class);
+        assertThat(testHandler.getCounter())
+                // first >= midOid was processed too
+                .isEqualTo(count(u, u.oid.lt(UUID.fromString(midOid))) + 1);
+    }
+
+    @Test
+    public void test136SearchIterativeWithPrefetchAndMaxSize() throws Exception {
+        OperationResult operationResult = createOperationResult();
+        SqlPerformanceMonitorImpl pm = getPerformanceMonitor();
+        pm.clearGlobalPerformanceInformation();
+
+        given("prefetch enabled and query with maxSize specified");
+        repositoryConfiguration.setIterativeSearchPrefetchThreads(2);
+        ObjectQuery query = prismContext.queryFor(UserType.class)
+                .maxSize(101)
+                .build();
+
+        when("calling search iterative");
+        SearchResultMetadata metadata = searchObjectsIterative(query, operationResult);
+
+        then("result metadata is not null and specified amount of objects was processed");
+        assertThat(metadata).isNotNull();
+        assertThat(metadata.getApproxNumberOfAllResults()).isEqualTo(testHandler.getCounter());
+        assertThat(metadata.isPartialResults()).isFalse();
+        assertThat(testHandler.getCounter()).isEqualTo(101);
+
+        and("no page was read beyond the max size");
+        assertTypicalPageOperationCount(metadata);
+    }
+
+    @Test
+    public void test137SearchIterativeWithPrefetchRecordsPagesInCallerStatistics() throws Exception {
+        OperationResult operationResult = createOperationResult();
+        SqlPerformanceMonitorImpl pm = getPerformanceMonitor();
+        pm.clearGlobalPerformanceInformation();
+
+        given("prefetch enabled and thread-local performance information collected");
+        repositoryConfiguration.setIterativeSearchPrefetchThreads(2);
+        pm.startThreadLocalPerformanceInformationCollection();
+        try {
+            when("calling search iterative with null query");
+            SearchResultMetadata metadata = searchObjectsIterative(null, operationResult);
+
+            then("all the pages are in the caller's statistics, including the prefetched ones");
+            assertThat(metadata).isNotNull();
+            String pageOperation = REPO_OP_PREFIX + RepositoryService.OP_SEARCH_OBJECTS_ITERATIVE_PAGE;
+            assertThat(pm.getThreadLocalPerformanceInformation().getInvocationCount(pageOperation))
+                    .isEqualTo(pm.getGlobalPerformanceInformation().getInvocationCount(pageOperation))
+                    .isGreaterThan(1);
+        } finally {
+            pm.stopThreadLocalPerformanceInformationCollection();
+        }
+    }
+
+    @Test
+    public void test140SearchIterativeWithAscendingOrderingByNullableItem() throws Exception {
+        searchIterativeWithOrderingByNullableItem(true);
+    }
+
+    @Test
+    public void test141SearchIterativeWithDescendingOrderingByNullableItem() throws Exception {
+        searchIterativeWithOrderingByNullableItem(false);
+    }
+
+    /**
+     * Nulls are last for ascending and first for descending ordering, the next page must not skip them,
+     * whether the last object of the previous page has the ordering item null or not.
+     */
+    private void searchIterativeWithOrderingByNullableItem(boolean asc) throws Exception {
+        OperationResult operationResult = createOperationResult();
+
+        given("ordering item that is null for some users, with page boundaries inside groups of the same value");
+        setTelephoneNumberForSomeUsers(operationResult);
+        repositoryConfiguration.setIterativeSearchByPagingBatchSize(7);
+        ObjectQuery query = asc
+                ? prismContext.queryFor(UserType.class).asc(UserType.F_TELEPHONE_NUMBER).build()
+                : prismContext.queryFor(UserType.class).desc(UserType.F_TELEPHONE_NUMBER).build();
+        List<String> handledOids = new ArrayList<>();
+        testHandler.setStoppingPredicate(u -> {
+            handledOids.add(u.getOid());
+            return false;
+        });
+
+        when("calling search iterative");
+        SearchResultMetadata metadata = searchObjectsIterative(query, operationResult);
+
+        then("all objects were processed, each exactly once");
+        assertThatOperationResult(operationResult).isSuccess();
+        assertThat(metadata).isNotNull();
+        assertThat(metadata.isPartialResults()).isFalse();
+        assertThat(handledOids).hasSize((int) count(QUser.class)).doesNotHaveDuplicates();
+
+        and("in the order of the database, nulls included");
+        QUser u = aliasFor(QUser.class);
+        try (JdbcSession jdbcSession = startReadOnlyTransaction()) {
+            List<String> expectedOids = jdbcSession.newQuery()
+                    .from(u)
+                    .orderBy(asc ? u.telephoneNumber.asc() : u.telephoneNumber.desc(), u.oid.asc())
+                    .select(u.oid)
+                    .fetch()
+                    .stream()
+                    .map(UUID::toString)
+                    .collect(Collectors.toList());
+            assertThat(handledOids).containsExactlyElementsOf(expectedOids);
+        }
+    }
+
+    /**
+     * Polystrings are ordered by their original values, which may order differently than the normalized ones
+     * (e.g. because of the case or of the characters removed by the normalization).
+     * The next page must continue by the original value too.
+     */
+    @Test
+    public void test150SearchIterativeWithOrderingByNameWithMixedCase() throws Exception {
+        OperationResult operationResult = createOperationResult();
+
+        given("users with names in mixed case and with punctuation");
+        for (String name : List.of("Mixed-B", "mixed-a", "MIXED-c", "mixed-D", "Mixed-e",
+                "mixed-ab", "mixed-a-c", "MIXED-AB-d")) {
+            repositoryService.addObject(new UserType().name(name).asPrismObject(), null, operationResult);
+        }
+        repositoryConfiguration.setIterativeSearchByPagingBatchSize(3);
+        ObjectQuery query = prismContext.queryFor(UserType.class).asc(UserType.F_NAME).build();
+        List<String> handledOids = new ArrayList<>();
+        testHandler.setStoppingPredicate(u -> {
+            handledOids.add(u.getOid());
+            return false;
+        });
+
+        when("calling search iterative ordered by name");
+        SearchResultMetadata metadata = searchObjectsIterative(query, operationResult);
+
+        then("all objects were processed, each exactly once");
+        assertThatOperationResult(operationResult).isSuccess();
+        assertThat(metadata).isNotNull();
+        assertThat(metadata.isPartialResults()).isFalse();
+        assertThat(handledOids).hasSize((int) count(QUser.class)).doesNotHaveDuplicates();
+
+        and("in the order of the original names in the database");
+        QUser u = aliasFor(QUser.class);
+        try (JdbcSession jdbcSession = startReadOnlyTransaction()) {
+            List<String> expectedOids = jdbcSession.newQuery()
+                    .from(u)
+                    .orderBy(u.nameOrig.asc(), u.oid.asc())
+                    .select(u.oid)
+                    .fetch()
+                    .stream()
+                    .map(UUID::toString)
+                    .collect(Collectors.toList());
+            assertThat(handledOids).containsExactlyElementsOf(expectedOids);
+        }
+    }
+
+    /** Every third user is left without telephone number, others share a few values. */
+    private void setTelephoneNumberForSomeUsers(OperationResult operationResult) throws Exception {
+        List<PrismObject<UserType>> users = repositoryService.searchObjects(
+                UserType.class, prismContext.queryFor(UserType.class).asc(UserType.F_NAME).build(),
+                null, operationResult);
+        for (int i = 0; i < users.size(); i++) {
+            S_ValuesEntry telephoneNumber = prismContext.deltaFor(UserType.class)
+                    .item(UserType.F_TELEPHONE_NUMBER);
+            repositoryService.modifyObject(UserType.class, users.get(i).getOid(),
+                    (i % 3 == 0 ? telephoneNumber.replace() : telephoneNumber.replace("555-" + i % 4))
+                            .asItemDeltas(),
+                    operationResult);
+        }
+    }
+
     @SafeVarargs
     private SearchResultMetadata searchObjectsIterative(
             ObjectQuery query,
@@ -118,15 +118,25 @@ public class SqaleRepoSmokeTest extends SqaleRepoBaseTest {
                 .parentOrgRef(orgOid, OrgType.COMPLEX_TYPE);
         repositoryService.addObject(user.asPrismObject(), null, result);
 
+        and("closure row for the parent reference is lost");
+        QOrgClosure oc = new QOrgClosure();
+        try (JdbcSession jdbcSession = startTransaction()) {
+            jdbcSession.newDelete(oc)
+                    .where(oc.ancestorOid.eq(UUID.fromString(rootOid))
+                            .and(oc.descendantOid.eq(UUID.fromString(orgOid))))
+                    .execute();
+            jdbcSession.commit();
+        }
+
         when("testOrgClosureConsistency() is called with rebuild flag");
         repositoryService.testOrgClosureConsistency(true, result);
 
         expect("operation is successful and contains info about closure");
         assertThatOperationResult(result).isSuccess();
         OperationResult subresult = result.getLastSubresult();
-        assertThat(subresult.getReturnSingle("closure-count")).isEqualTo(String.valueOf(baseCount));
+        // two equality rows for each org + 1 for parent reference, which was deleted
+        assertThat(subresult.getReturnSingle("closure-count")).isEqualTo(String.valueOf(baseCount + 2));
         assertThat(subresult.getReturnSingle("expected-count"))
-                // two equality rows for each org + 1 for parent reference
                 .isEqualTo(String.valueOf(baseCount + 3));
         assertThat(subresult.getReturnSingle("rebuild-done")).isEqualTo("true");
 
@@ -135,14 +145,14 @@ public class SqaleRepoSmokeTest extends SqaleRepoBaseTest {
     }
 
     @Test
-    public void test021OrgClosureIsRefreshedBeforeOrgFilterQuery() throws Exception {
+    public void test021OrgClosureIsUpdatedImmediately() throws Exception {
         OperationResult result = createOperationResult();
 
         given("reset closure");
         refreshOrgClosureForce();
         long baseCount = count(new QOrgClosure());
 
-        given("user belonging to org hierarchy");
+        when("user belonging to org hierarchy is added");
         OrgType orgRoot = new OrgType().name("orgRoot" + getTestNumber());
         String rootOid = repositoryService.addObject(orgRoot.asPrismObject(), null, result);
         OrgType org = new OrgType().name("org" + getTestNumber())
@@ -151,21 +161,73 @@ public class SqaleRepoSmokeTest extends SqaleRepoBaseTest {
         UserType user = new UserType().name("user" + getTestNumber())
                 .parentOrgRef(orgOid, OrgType.COMPLEX_TYPE);
         String userOid = repositoryService.addObject(user.asPrismObject(), null, result);
-        assertThat(count(new QOrgClosure())).isEqualTo(baseCount); // not refreshed yet
 
-        when("query with org filter is used");
+        then("closure is updated without refresh");
+        assertThat(count(new QOrgClosure())).isEqualTo(baseCount + 3); // see previous test
+
+        and("query with org filter returns proper results");
         SearchResultList<PrismObject<UserType>> users = repositoryService.searchObjects(
                 UserType.class, prismContext.queryFor(UserType.class).isChildOf(rootOid).build(),
                 null, result);
-
-        expect("operation is successful and returns proper results");
         assertThatOperationResult(result).isSuccess();
         assertThat(users).hasSize(1)
                 .extracting(p -> p.asObjectable().getOid())
                 .containsExactlyInAnyOrder(userOid);
 
-        and("closure is rebuilt");
-        assertThat(count(new QOrgClosure())).isEqualTo(baseCount + 3); // see previous test
+        when("parent reference of the org is removed");
+        repositoryService.modifyObject(OrgType.class, orgOid,
+                prismContext.deltaFor(OrgType.class)
+                        .item(ObjectType.F_PARENT_ORG_REF)
+                        .delete(new ObjectReferenceType().oid(rootOid).type(OrgType.COMPLEX_TYPE))
+                        .asItemDeltas(),
+                result);
+
+        then("closure row for the reference is removed and closure is still consistent");
+        assertThat(count(new QOrgClosure())).isEqualTo(baseCount + 2);
+        repositoryService.testOrgClosureConsistency(false, result);
+        OperationResult subresult = result.getLastSubresult();
+        assertThat(subresult.getReturnSingle("closure-count"))
+                .isEqualTo(subresult.getReturnSingle("expected-count"));
+    }
+
+    @Test
+    public void test022OrgClosureDeferredUpdateIsAppliedBeforeOrgFilterQuery() throws Exception {
+        OperationResult result = createOperationResult();
+
+        given("reset closure and deferred closure update");
+        refreshOrgClosureForce();
+        long baseCount = count(new QOrgClosure());
+        setOrgClosureDeferredUpdate(true);
+
+        try {
+            and("user belonging to org hierarchy");
+            OrgType orgRoot = new OrgType().name("orgRoot" + getTestNumber());
+            String rootOid = repositoryService.addObject(orgRoot.asPrismObject(), null, result);
+            OrgType org = new OrgType().name("org" + getTestNumber())
+                    .parentOrgRef(rootOid, OrgType.COMPLEX_TYPE);
+            String orgOid = repositoryService.addObject(org.asPrismObject(), null, result);
+            UserType user = new UserType().name("user" + getTestNumber())
+                    .parentOrgRef(orgOid, OrgType.COMPLEX_TYPE);
+            String userOid = repositoryService.addObject(user.asPrismObject(), null, result);
+            // identity rows are added immediately, the reference between orgs is queued
+            assertThat(count(new QOrgClosure())).isEqualTo(baseCount + 2);
+
+            when("query with org filter is used");
+            SearchResultList<PrismObject<UserType>> users = repositoryService.searchObjects(
+                    UserType.class, prismContext.queryFor(UserType.class).isChildOf(rootOid).build(),
+                    null, result);
+
+            expect("operation is successful and returns proper results");
+            assertThatOperationResult(result).isSuccess();
+            assertThat(users).hasSize(1)
+                    .extracting(p -> p.asObjectable().getOid())
+                    .containsExactlyInAnyOrder(userOid);
+
+            and("queued changes are applied to the closure");
+            assertThat(count(new QOrgClosure())).isEqualTo(baseCount + 3); // see previous tests
+        } finally {
+            setOrgClosureDeferredUpdate(false);
+        }
     }
 
     @Test
@@ -278,6 +340,31 @@ public class SqaleRepoSmokeTest extends SqaleRepoBaseTest {
         assertThatOperationResult(result).isFatalError();
     }
 
+    @Test
+    public void test205GetObjects() throws Exception {
+        OperationResult result = createOperationResult();
+
+        given("existing users and cleared performance information");
+        String user1Oid = repositoryService.addObject(
+                new UserType().name("user" + getTestNumber() + "-1").asPrismObject(), null, result);
+        String user2Oid = repositoryService.addObject(
+                new UserType().name("user" + getTestNumber() + "-2").asPrismObject(), null, result);
+        String missingOid = UUID.randomUUID().toString();
+        SqlPerformanceMonitorImpl pm = repositoryService.getPerformanceMonitor();
+        pm.clearGlobalPerformanceInformation();
+
+        when("getObjects is called for known OIDs and a non-existent one");
+        Map<String, PrismObject<UserType>> objects = repositoryService.getObjects(
+                UserType.class, List.of(user2Oid, missingOid, user1Oid), null, result);
+
+        then("existing objects are obtained in the requested order, with a single operation recorded");
+        assertThatOperationResult(result).isSuccess();
+        assertThat(objects.keySet()).containsExactly(user2Oid, user1Oid);
+        assertThat(objects.get(user1Oid).asObjectable().getName().getOrig())
+                .isEqualTo("user" + getTestNumber() + "-1");
+        assertSingleOperationRecorded(REPO_OP_PREFIX + RepositoryService.OP_GET_OBJECTS);
+    }
+
     @Test
     public void test210GetVersion() throws Exception {
         OperationResult result = createOperationResult();
@@ -470,6 +557,46 @@ public class SqaleRepoSmokeTest extends SqaleRepoBaseTest {
         assertThat(entry.sql).startsWith("select u.oid, u.fullObject");
     }
 
+    @Test
+    public void test410EstimatedCount() throws Exception {
+        OperationResult result = createOperationResult();
+
+        given("users in the repository and up-to-date planner statistics");
+        for (int i = 1; i <= 10; i++) {
+            repositoryService.addObject(
+                    new UserType().name("user" + getTestNumber() + "-" + i)
+                            .activation(new ActivationType().administrativeStatus(ActivationStatusType.ENABLED))
+                            .asPrismObject(),
+                    null, result);
+        }
+        try (JdbcSession jdbcSession = startTransaction()) {
+            jdbcSession.executeStatement("ANALYZE m_user");
+            jdbcSession.commit();
+        }
+
+        when("count is estimated without filter");
+        queryRecorder.clearBufferAndStartRecording();
+        int estimatedCount = repositoryService.countObjects(UserType.class, null,
+                SelectorOptions.createCollection(GetOperationOptions.createEstimatedCount()), result);
+
+        then("estimate is based on the statistics, exact count is not executed");
+        assertThat(estimatedCount).isPositive();
+        assertThat(queryRecorder.getQueryBuffer())
+                .noneMatch(entry -> entry.sql.startsWith("select count(*)"));
+
+        when("count with filter with parameters is estimated");
+        int estimatedFilteredCount = repositoryService.countObjects(UserType.class,
+                prismContext.queryFor(UserType.class)
+                        .item(UserType.F_ACTIVATION, ActivationType.F_ADMINISTRATIVE_STATUS)
+                        .eq(ActivationStatusType.ENABLED)
+                        .build(),
+                SelectorOptions.createCollection(GetOperationOptions.createEstimatedCount()), result);
+
+        then("some estimate is returned");
+        assertThat(estimatedFilteredCount).isNotNegative();
+        assertThatOperationResult(result).isSuccess();
+    }
+
     @Test
     public void test500ExecuteQueryDiagnostics() throws Exception {
         // also known as "Query Playground"
@@ -0,0 +1,166 @@
+/*
+ * Copyright (C) 2010-2022 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+package com.evolveum.midpoint.repo.sqale.func;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import com.evolveum.midpoint.repo.api.WorkBucketStore;
+import com.evolveum.midpoint.repo.sqale.SqaleRepoBaseTest;
+import com.evolveum.midpoint.repo.sqale.qmodel.task.QActivityBucket;
+import com.evolveum.midpoint.schema.result.OperationResult;
+import com.evolveum.midpoint.schema.util.task.ActivityPath;
+import com.evolveum.midpoint.util.exception.ObjectAlreadyExistsException;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.TaskType;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.WorkBucketStateType;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.WorkBucketType;
+
+public class SqaleWorkBucketStoreTest extends SqaleRepoBaseTest {
+
+    private static final ActivityPath ACTIVITY_PATH = ActivityPath.fromId("reconciliation", "resourceObjects");
+
+    private final String worker1Oid = UUID.randomUUID().toString();
+    private final String worker2Oid = UUID.randomUUID().toString();
+
+    private WorkBucketStore store;
+    private String coordinatorOid;
+
+    @BeforeClass
+    public void initObjects() throws Exception {
+        OperationResult result = createOperationResult();
+
+        store = repositoryService.getWorkBucketStore();
+        coordinatorOid = repositoryService.addObject(
+                new TaskType().name("coordinator").asPrismObject(), null, result);
+
+        assertThatOperationResult(result).isSuccess();
+    }
+
+    @Test
+    public void test100AddAndClaimBuckets() throws Exception {
+        OperationResult result = createOperationResult();
+
+        when("three ready buckets are added");
+        store.addBuckets(coordinatorOid, ACTIVITY_PATH,
+                List.of(readyBucket(1), readyBucket(2), readyBucket(3)), result);
+
+        then("the buckets are stored");
+        assertThatOperationResult(result).isSuccess();
+        assertCount(QActivityBucket.DEFAULT, 3);
+        assertThat(store.getLastBucket(coordinatorOid, ACTIVITY_PATH, result))
+                .extracting(WorkBucketType::getSequentialNumber)
+                .isEqualTo(3);
+
+        when("the buckets are claimed by two workers");
+        List<WorkBucketType> claimed1 = store.claimBuckets(coordinatorOid, ACTIVITY_PATH, worker1Oid, 2, result);
+        List<WorkBucketType> claimed2 = store.claimBuckets(coordinatorOid, ACTIVITY_PATH, worker2Oid, 2, result);
+
+        then("each bucket is delegated to exactly one worker");
+        assertThat(sequentialNumbers(claimed1)).containsExactly(1, 2);
+        assertThat(sequentialNumbers(claimed2)).containsExactly(3);
+        assertThat(claimed1).allMatch(b -> b.getState() == WorkBucketStateType.DELEGATED
+                && worker1Oid.equals(b.getWorkerRef().getOid()));
+        assertThat(store.countBuckets(coordinatorOid, ACTIVITY_PATH, result))
+                .isEqualTo(Map.of(WorkBucketStateType.DELEGATED, 3));
+
+        and("buckets already delegated to the worker are not claimed again");
+        assertThat(store.claimBuckets(coordinatorOid, ACTIVITY_PATH, worker1Oid, 1, result)).isEmpty();
+
+        and("but they can be obtained as delegated ones, without changing their state");
+        List<WorkBucketType> delegated1 = store.getDelegatedBuckets(coordinatorOid, ACTIVITY_PATH, worker1Oid, result);
+        assertThat(sequentialNumbers(delegated1)).containsExactly(1, 2);
+        assertThat(delegated1).allMatch(b -> b.getState() == WorkBucketStateType.DELEGATED
+                && worker1Oid.equals(b.getWorkerRef().getOid()));
+        assertThat(store.countBuckets(coordinatorOid, ACTIVITY_PATH, result))
+                .isEqualTo(Map.of(WorkBucketStateType.DELEGATED, 3));
+        assertThatOperationResult(result).isSuccess();
+    }
+
+    @Test
+    public void test110AddConflictingBuckets() {
+        OperationResult result = createOperationResult();
+
+        expect("adding a bucket with existing sequential number fails");
+        assertThatThrownBy(() -> store.addBuckets(coordinatorOid, ACTIVITY_PATH,
+                List.of(readyBucket(3), readyBucket(4)), result))
+                .isInstanceOf(ObjectAlreadyExistsException.class);
+
+        and("nothing is added");
+        assertCount(QActivityBucket.DEFAULT, 3);
+    }
+
+    @Test
+    public void test120CompleteBucket() {
+        OperationResult result = createOperationResult();
+
+        expect("existing bucket is completed");
+        assertThat(store.completeBucket(coordinatorOid, ACTIVITY_PATH, 1, result)).isTrue();
+
+        and("non-existing bucket is reported as such");
+        assertThat(store.completeBucket(coordinatorOid, ACTIVITY_PATH, 42, result)).isFalse();
+        assertThat(store.completeBucket(coordinatorOid, ActivityPath.fromId("other"), 1, result)).isFalse();
+
+        assertThatOperationResult(result).isSuccess();
+        assertThat(store.countBuckets(coordinatorOid, ACTIVITY_PATH, result))
+                .isEqualTo(Map.of(WorkBucketStateType.COMPLETE, 1, WorkBucketStateType.DELEGATED, 2));
+    }
+
+    @Test
+    public void test130ReleaseAndReclaimBuckets() {
+        OperationResult result = createOperationResult();
+
+        when("worker 1 releases its buckets and buckets of dead workers are reclaimed");
+        int released = store.releaseBuckets(coordinatorOid, ACTIVITY_PATH, worker1Oid, null, result);
+        int reclaimed = store.reclaimBuckets(coordinatorOid, ACTIVITY_PATH, List.of(worker1Oid), result);
+
+        then("only the delegated buckets are returned to the ready state");
+        assertThatOperationResult(result).isSuccess();
+        assertThat(released).isEqualTo(1); // bucket #1 is complete
+        assertThat(reclaimed).isEqualTo(1); // bucket #3 of worker 2
+        assertThat(store.countBuckets(coordinatorOid, ACTIVITY_PATH, result))
+                .isEqualTo(Map.of(WorkBucketStateType.COMPLETE, 1, WorkBucketStateType.READY, 2));
+
+        and("the ready buckets can be claimed again, without the worker reference from before");
+        List<WorkBucketType> claimed = store.claimBuckets(coordinatorOid, ACTIVITY_PATH, worker2Oid, 10, result);
+        assertThat(sequentialNumbers(claimed)).containsExactly(2, 3);
+        assertThat(claimed).allMatch(b -> worker2Oid.equals(b.getWorkerRef().getOid()));
+    }
+
+    @Test
+    public void test140DeleteBuckets() {
+        OperationResult result = createOperationResult();
+
+        when("buckets are deleted");
+        store.deleteBuckets(coordinatorOid, ACTIVITY_PATH, result);
+
+        then("no buckets remain");
+        assertThatOperationResult(result).isSuccess();
+        assertCount(QActivityBucket.DEFAULT, 0);
+        assertThat(store.getLastBucket(coordinatorOid, ACTIVITY_PATH, result)).isNull();
+        assertThat(store.countBuckets(coordinatorOid, ACTIVITY_PATH, result)).isEmpty();
+    }
+
+    private WorkBucketType readyBucket(int sequentialNumber) {
+        return new WorkBucketType()
+                .sequentialNumber(sequentialNumber)
+                .state(WorkBucketStateType.READY);
+    }
+
+    private List<Integer> sequentialNumbers(List<WorkBucketType> buckets) {
+        return buckets.stream()
+                .map(WorkBucketType::getSequentialNumber)
+                .collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright (C) 2010-2022 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+package com.evolveum.midpoint.repo.sqale.perf;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+import org.javasimon.Split;
+import org.javasimon.Stopwatch;
+import org.testng.annotations.Test;
+
+import com.evolveum.midpoint.repo.sqale.SqaleRepoBaseTest;
+import com.evolveum.midpoint.repo.sqale.qmodel.focus.QUser;
+import com.evolveum.midpoint.schema.result.OperationResult;
+import com.evolveum.midpoint.tools.testng.PerformanceTestClassMixin;
+import com.evolveum.midpoint.util.exception.SchemaException;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.ExtensionType;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.UserType;
+import com.evolveum.prism.xml.ns._public.types_3.PolyStringType;
+
+/**
+ * Measures inserts of objects with many extension items from multiple threads,
+ * mostly to see the contention on the ext item cache.
+ *
+ * The test is not part of automatically run tests (it is not mentioned in suite XMLs).
+ */
+public class ExtensionConcurrencyPerfTest extends SqaleRepoBaseTest
+        implements PerformanceTestClassMixin {
+
+    private static final int THREAD_COUNT = Integer.parseInt(System.getProperty("threadCount", "8"));
+    private static final int USERS_PER_THREAD = Integer.parseInt(System.getProperty("usersPerThread", "500"));
+
+    @Test
+    public void test100AddUsersWithExtensionsConcurrently() throws Exception {
+        long usersBefore = count(QUser.class);
+        Stopwatch stopwatch = stopwatch("user.add", "Repository addObject(user) with extensions, concurrently");
+
+        ExecutorService executor = Executors.newFixedThreadPool(THREAD_COUNT);
+        List<Future<?>> futures = new ArrayList<>();
+        long start = System.currentTimeMillis();
+        for (int threadIndex = 1; threadIndex <= THREAD_COUNT; threadIndex++) {
+            int thread = threadIndex;
+            futures.add(executor.submit(() -> {
+                OperationResult result = createOperationResult("thread-" + thread);
+                for (int userIndex = 1; userIndex <= USERS_PER_THREAD; userIndex++) {
+                    UserType user = createUser(String.format("ext-user-%02d-%06d", thread, userIndex));
+                    try (Split ignored = stopwatch.start()) {
+                        repositoryService.addObject(user.asPrismObject(), null, result);
+                    }
+                }
+                return null;
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get(); // rethrows any failure
+        }
+        executor.shutdown();
+        long duration = System.currentTimeMillis() - start;
+
+        int total = THREAD_COUNT * USERS_PER_THREAD;
+        display(String.format("Added %d users in %d threads in %d ms, %.1f users/s",
+                total, THREAD_COUNT, duration, total * 1000.0 / duration));
+        assertThat(count(QUser.class)).isEqualTo(usersBefore + total);
+    }
+
+    private UserType createUser(String name) throws SchemaException {
+        UserType user = new UserType()
+                .name(PolyStringType.fromOrig(name))
+                .extension(new ExtensionType());
+        ExtensionType ext = user.getExtension();
+        addExtensionValue(ext, "string", "string-" + name);
+        addExtensionValue(ext, "string2", "string2-" + name);
+        addExtensionValue(ext, "int", name.hashCode());
+        addExtensionValue(ext, "long", (long) name.hashCode());
+        addExtensionValue(ext, "boolean", name.hashCode() % 2 == 0);
+        addExtensionValue(ext, "string-mv", "mv1-" + name, "mv2-" + name, "mv3-" + name);
+        addExtensionValue(ext, "int-mv", 1, 2, 3);
+        return user;
+    }
+}
@@ -9,10 +9,13 @@ package com.evolveum.midpoint.repo.sqale.perf;
 import static org.assertj.core.api.Assertions.assertThat;
 
 import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.List;
 
 import org.testng.annotations.BeforeClass;
 import org.testng.annotations.Test;
 
+import com.evolveum.midpoint.prism.delta.builder.S_ItemEntry;
 import com.evolveum.midpoint.prism.polystring.PolyString;
 import com.evolveum.midpoint.repo.sqale.SqaleRepoBaseTest;
 import com.evolveum.midpoint.repo.sqale.qmodel.focus.QUser;
@@ -22,8 +25,10 @@ import com.evolveum.midpoint.schema.SearchResultList;
 import com.evolveum.midpoint.schema.result.OperationResult;
 import com.evolveum.midpoint.util.MiscUtil;
 import com.evolveum.midpoint.util.exception.ObjectAlreadyExistsException;
+import com.evolveum.midpoint.util.exception.ObjectNotFoundException;
 import com.evolveum.midpoint.util.exception.SchemaException;
 import com.evolveum.midpoint.xml.ns._public.common.common_3.MetadataType;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.ObjectReferenceType;
 import com.evolveum.midpoint.xml.ns._public.common.common_3.ObjectType;
 import com.evolveum.midpoint.xml.ns._public.common.common_3.OrgType;
 import com.evolveum.midpoint.xml.ns._public.common.common_3.UserType;
@@ -32,6 +37,9 @@ public class OrgHierarchyPerfTest extends SqaleRepoBaseTest {
 
     public static final SecureRandom RANDOM = new SecureRandom();
 
+    private static final int DEEP_TREE_DEPTH = 200;
+    private static final int WIDE_TREE_WIDTH = 2000;
+
     @BeforeClass
     public void initObjects() throws Exception {
         OperationResult result = createOperationResult();
@@ -87,12 +95,12 @@ public class OrgHierarchyPerfTest extends SqaleRepoBaseTest {
     }
 
     @Test
-    public void test100Xxx() throws Exception {
-        given("there are orgs and users, closure is not yet updated");
+    public void test100SearchUsersUnderOrg() throws Exception {
+        given("there are orgs and users, closure is maintained as they are added");
         OperationResult operationResult = createOperationResult();
         display("Orgs: " + count(QOrg.CLASS));
         display("Users: " + count(QUser.class));
-        assertThat(count(new QOrgClosure())).isZero();
+        assertThat(count(new QOrgClosure())).isPositive();
         OrgType org1x1x1 = searchObjects(OrgType.class,
                 prismContext.queryFor(OrgType.class)
                         .item(ObjectType.F_NAME).eq(PolyString.fromOrig("org1x1x1"))
@@ -106,11 +114,154 @@ public class OrgHierarchyPerfTest extends SqaleRepoBaseTest {
                         .build(),
                 operationResult);
 
-        then("non-empty result is returned and org closure has been initialized");
+        then("non-empty result is returned");
         assertThat(result).isNotEmpty();
-        assertThat(count(new QOrgClosure())).isPositive();
         display("Orgs: " + count(QOrg.CLASS));
         display("Org closure: " + count(new QOrgClosure()));
         display("Users: " + count(QUser.class));
     }
+
+    @Test
+    public void test200DeepTree() throws Exception {
+        OperationResult result = createOperationResult();
+
+        when("deep chain of orgs is created");
+        long start = System.nanoTime();
+        List<String> chain = createChain("deep", DEEP_TREE_DEPTH, null, result);
+        display("Deep tree: added " + DEEP_TREE_DEPTH + " orgs, avg "
+                + avgMillis(start, DEEP_TREE_DEPTH) + " ms per org");
+
+        then("subtree queries are fast and correct");
+        measureSubtreeQuery("deep tree root", chain.get(0), DEEP_TREE_DEPTH - 1, result);
+
+        when("the lower half of the chain is moved under a new root");
+        String newRootOid = repositoryService.addObject(
+                new OrgType().name("deep-new-root").asPrismObject(), null, result);
+        String middleOid = chain.get(DEEP_TREE_DEPTH / 2);
+        start = System.nanoTime();
+        moveOrg(middleOid, chain.get(DEEP_TREE_DEPTH / 2 - 1), newRootOid, result);
+        display("Deep tree: moved subtree of " + (DEEP_TREE_DEPTH / 2) + " orgs in "
+                + avgMillis(start, 1) + " ms");
+
+        then("subtree queries reflect the move and closure is consistent");
+        measureSubtreeQuery("deep tree root after move", chain.get(0), DEEP_TREE_DEPTH / 2 - 1, result);
+        measureSubtreeQuery("new deep tree root", newRootOid, DEEP_TREE_DEPTH / 2, result);
+        assertOrgClosureConsistent(result);
+    }
+
+    @Test
+    public void test300WideTree() throws Exception {
+        OperationResult result = createOperationResult();
+
+        when("wide tree of orgs is created");
+        String rootOid = repositoryService.addObject(
+                new OrgType().name("wide-root").asPrismObject(), null, result);
+        long start = System.nanoTime();
+        List<String> children = new ArrayList<>();
+        for (int i = 1; i <= WIDE_TREE_WIDTH; i++) {
+            children.add(repositoryService.addObject(
+                    new OrgType().name("wide-x" + i)
+                            .parentOrgRef(rootOid, OrgType.COMPLEX_TYPE)
+                            .asPrismObject(),
+                    null, result));
+        }
+        display("Wide tree: added " + WIDE_TREE_WIDTH + " orgs, avg "
+                + avgMillis(start, WIDE_TREE_WIDTH) + " ms per org");
+
+        then("subtree queries are fast and correct");
+        measureSubtreeQuery("wide tree root", rootOid, WIDE_TREE_WIDTH, result);
+
+        when("the whole tree is moved under another parent");
+        String parentOid = repositoryService.addObject(
+                new OrgType().name("wide-parent").asPrismObject(), null, result);
+        start = System.nanoTime();
+        moveOrg(rootOid, null, parentOid, result);
+        display("Wide tree: moved subtree of " + (WIDE_TREE_WIDTH + 1) + " orgs in "
+                + avgMillis(start, 1) + " ms");
+
+        and("half of the children are removed from the tree");
+        start = System.nanoTime();
+        for (int i = 0; i < WIDE_TREE_WIDTH / 2; i++) {
+            moveOrg(children.get(i), rootOid, null, result);
+        }
+        display("Wide tree: removed " + (WIDE_TREE_WIDTH / 2) + " parent references, avg "
+                + avgMillis(start, WIDE_TREE_WIDTH / 2) + " ms per reference");
+
+        then("subtree queries reflect the changes and closure is consistent");
+        measureSubtreeQuery("wide tree parent", parentOid, WIDE_TREE_WIDTH - WIDE_TREE_WIDTH / 2 + 1, result);
+        assertOrgClosureConsistent(result);
+    }
+
+    @Test
+    public void test400DeferredUpdate() throws Exception {
+        OperationResult result = createOperationResult();
+
+        given("deferred closure update");
+        setOrgClosureDeferredUpdate(true);
+        try {
+            when("deep chain of orgs is created");
+            long start = System.nanoTime();
+            List<String> chain = createChain("deferred", DEEP_TREE_DEPTH, null, result);
+            display("Deferred: added " + DEEP_TREE_DEPTH + " orgs, avg "
+                    + avgMillis(start, DEEP_TREE_DEPTH) + " ms per org");
+
+            then("the first subtree query applies the queued changes");
+            measureSubtreeQuery("deferred chain root (applying changes)", chain.get(0), DEEP_TREE_DEPTH - 1, result);
+            measureSubtreeQuery("deferred chain root", chain.get(0), DEEP_TREE_DEPTH - 1, result);
+            assertOrgClosureConsistent(result);
+        } finally {
+            setOrgClosureDeferredUpdate(false);
+        }
+    }
+
+    private List<String> createChain(String prefix, int depth, String parentOid, OperationResult result)
+            throws SchemaException, ObjectAlreadyExistsException {
+        List<String> chain = new ArrayList<>();
+        for (int i = 1; i <= depth; i++) {
+            OrgType org = new OrgType().name(prefix + "-level" + i);
+            if (parentOid != null) {
+                org.parentOrgRef(parentOid, OrgType.COMPLEX_TYPE);
+            }
+            parentOid = repositoryService.addObject(org.asPrismObject(), null, result);
+            chain.add(parentOid);
+        }
+        return chain;
+    }
+
+    private void moveOrg(String orgOid, String oldParentOid, String newParentOid, OperationResult result)
+            throws SchemaException, ObjectAlreadyExistsException, ObjectNotFoundException {
+        S_ItemEntry delta = prismContext.deltaFor(OrgType.class);
+        if (oldParentOid != null) {
+            delta = delta.item(ObjectType.F_PARENT_ORG_REF)
+                    .delete(new ObjectReferenceType().oid(oldParentOid).type(OrgType.COMPLEX_TYPE));
+        }
+        if (newParentOid != null) {
+            delta = delta.item(ObjectType.F_PARENT_ORG_REF)
+                    .add(new ObjectReferenceType().oid(newParentOid).type(OrgType.COMPLEX_TYPE));
+        }
+        repositoryService.modifyObject(OrgType.class, orgOid, delta.asItemDeltas(), result);
+    }
+
+    private void measureSubtreeQuery(String label, String rootOid, int expectedCount, OperationResult result)
+            throws SchemaException {
+        long start = System.nanoTime();
+        SearchResultList<OrgType> orgs = searchObjects(OrgType.class,
+                prismContext.queryFor(OrgType.class)
+                        .isChildOf(rootOid)
+                        .build(),
+                result);
+        display("Subtree query for " + label + ": " + orgs.size() + " orgs in " + avgMillis(start, 1) + " ms");
+        assertThat(orgs).hasSize(expectedCount);
+    }
+
+    private void assertOrgClosureConsistent(OperationResult result) {
+        repositoryService.testOrgClosureConsistency(false, result);
+        OperationResult subresult = result.getLastSubresult();
+        assertThat(subresult.getReturnSingle("closure-count"))
+                .isEqualTo(subresult.getReturnSingle("expected-count"));
+    }
+
+    private double avgMillis(long startNanos, int count) {
+        return (System.nanoTime() - startNanos) / 1_000_000.0 / count;
+    }
 }
@@ -0,0 +1,105 @@
+/*
+ * Copyright (C) 2010-2022 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+package com.evolveum.midpoint.repo.sqlbase;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.querydsl.sql.RelationalPath;
+import com.querydsl.sql.dml.SQLInsertClause;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Collects inserts of fully populated rows so they can be executed later as JDBC batches, one batch per table.
+ *
+ * Rows are collected in units (e.g. all the rows of one object).
+ * New rows are pending until the unit is either {@link #acceptPending() accepted} or {@link #discardPending() discarded}
+ * (e.g. when the processing of the object fails).
+ * Accepted rows are inserted by {@link #flush(JdbcSession)}.
+ *
+ * Tables are flushed in the order in which they were first used.
+ * As the rows of a unit are added in the order they would be inserted otherwise (owner rows before the rows
+ * referencing them), this order satisfies foreign keys between the tables.
+ *
+ * Not thread-safe, it is used with a single {@link JdbcSession}.
+ */
+public class DeferredInserts {
+
+    private final List<Row> pendingRows = new ArrayList<>();
+
+    /** Accepted rows, by table name. */
+    private final Map<String, TableRows> acceptedRows = new LinkedHashMap<>();
+
+    private int acceptedRowsCount;
+
+    void add(@NotNull RelationalPath<?> entity, @NotNull Object row) {
+        pendingRows.add(new Row(entity, row));
+    }
+
+    /** Accepts pending rows, so they will be inserted on flush. */
+    public void acceptPending() {
+        for (Row row : pendingRows) {
+            acceptedRows.computeIfAbsent(row.entity.getTableName(), k -> new TableRows(row.entity))
+                    .rows.add(row.row);
+        }
+        acceptedRowsCount += pendingRows.size();
+        pendingRows.clear();
+    }
+
+    /** Throws away pending rows. */
+    public void discardPending() {
+        pendingRows.clear();
+    }
+
+    /** Number of accepted rows waiting to be inserted. */
+    public int size() {
+        return acceptedRowsCount;
+    }
+
+    /**
+     * Inserts all accepted rows, using one batch for each table. Pending rows must be accepted or discarded first.
+     * Returns the number of rows inserted.
+     */
+    public int flush(@NotNull JdbcSession jdbcSession) {
+        if (!pendingRows.isEmpty()) {
+            throw new IllegalStateException("There are " + pendingRows.size() + " pending rows, cannot flush");
+        }
+        int flushed = acceptedRowsCount;
+        for (TableRows tableRows : acceptedRows.values()) {
+            SQLInsertClause insertBatch = jdbcSession.newInsert(tableRows.entity);
+            for (Object row : tableRows.rows) {
+                // Rows with different non-null columns end up in different statements, which is fine.
+                insertBatch.populate(row).addBatch();
+            }
+            insertBatch.execute();
+        }
+        acceptedRows.clear();
+        acceptedRowsCount = 0;
+        return flushed;
+    }
+
+    private static class Row {
+        @NotNull private final RelationalPath<?> entity;
+        @NotNull private final Object row;
+
+        private Row(@NotNull RelationalPath<?> entity, @NotNull Object row) {
+            this.entity = entity;
+            this.row = row;
+        }
+    }
+
+    private static class TableRows {
+        @NotNull private final RelationalPath<?> entity;
+        @NotNull private final List<Object> rows = new ArrayList<>();
+
+        private TableRows(@NotNull RelationalPath<?> entity) {
+            this.entity = entity;
+        }
+    }
+}
@@ -8,6 +8,7 @@ package com.evolveum.midpoint.repo.sqlbase;
 
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.sql.Savepoint;
 import java.sql.Statement;
 import java.sql.Types;
 import java.util.Objects;
@@ -20,6 +21,7 @@ import com.querydsl.sql.dml.SQLInsertClause;
 import com.querydsl.sql.dml.SQLUpdateClause;
 import org.apache.commons.lang3.RandomStringUtils;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import com.evolveum.midpoint.util.exception.SystemException;
 import com.evolveum.midpoint.util.logging.Trace;
@@ -59,6 +61,9 @@ public class JdbcSession implements AutoCloseable {
 
     private boolean rollbackForReadOnly;
 
+    /** If not null, inserts of fully populated rows are collected here instead of being executed immediately. */
+    private DeferredInserts deferredInserts;
+
     public JdbcSession(
             @NotNull Connection connection,
             @NotNull JdbcRepositoryConfiguration jdbcRepositoryConfiguration,
@@ -180,6 +185,37 @@ public class JdbcSession implements AutoCloseable {
         }
     }
 
+    /**
+     * Sets a savepoint in the current transaction, so the part of the transaction after it can be rolled back
+     * (e.g. after an error, which would otherwise abort the whole transaction on PostgreSQL).
+     */
+    public Savepoint setSavepoint() {
+        try {
+            return connection.setSavepoint();
+        } catch (SQLException e) {
+            throw new SystemException("Couldn't set savepoint", e);
+        }
+    }
+
+    /** Rolls back the changes done after the savepoint was set. */
+    public void rollbackToSavepoint(@NotNull Savepoint savepoint) {
+        try {
+            LOGGER.debug("Rolling back to savepoint (session {})", sessionId);
+            connection.rollback(savepoint);
+        } catch (SQLException e) {
+            throw new SystemException("Couldn't rollback to savepoint", e);
+        }
+    }
+
+    /** Releases the savepoint that is no longer needed. */
+    public void releaseSavepoint(@NotNull Savepoint savepoint) {
+        try {
+            connection.releaseSavepoint(savepoint);
+        } catch (SQLException e) {
+            throw new SystemException("Couldn't release savepoint", e);
+        }
+    }
+
     /**
      * This is used for technical statements and throws {@link SystemException}.
      * Don't use this for unsafe concatenated statements with parameters!
@@ -244,6 +280,29 @@ public class JdbcSession implements AutoCloseable {
         return sqlRepoContext.newInsert(connection, entity);
     }
 
+    /**
+     * Starts (or stops, if null is provided) collecting inserts into provided {@link DeferredInserts}.
+     * Only inserts going through {@link #insertOrDefer(RelationalPath, Object)} are affected.
+     */
+    public void deferInserts(@Nullable DeferredInserts deferredInserts) {
+        this.deferredInserts = deferredInserts;
+    }
+
+    /**
+     * Inserts fully populated row into specified entity, or adds it to {@link DeferredInserts},
+     * if they were set by {@link #deferInserts(DeferredInserts)}.
+     * Only for rows whose insert does not need to return anything (e.g. generated keys).
+     */
+    public void insertOrDefer(RelationalPath<?> entity, Object row) {
+        if (deferredInserts != null) {
+            deferredInserts.add(entity, row);
+        } else {
+            newInsert(entity)
+                    .populate(row)
+                    .execute();
+        }
+    }
+
     public SQLUpdateClause newUpdate(RelationalPath<?> entity) {
         return sqlRepoContext.newUpdate(connection, entity);
     }
@@ -345,6 +345,14 @@ public abstract class SqlQueryContext<S, Q extends FlexibleRelationalPathBase<R>
                 .fetchCount();
     }
 
+    /**
+     * Returns estimated count of the query results, see {@link GetOperationOptions#isEstimatedCount}.
+     * By default the count is exact, subclasses can use database-specific estimation.
+     */
+    public int executeCountEstimate(JdbcSession jdbcSession) {
+        return executeCount(jdbcSession);
+    }
+
     /**
      * Adds new LEFT JOIN to the query and returns {@link SqlQueryContext} for this join path.
      * The returned context still uses the same SQL query; any further filter processing will
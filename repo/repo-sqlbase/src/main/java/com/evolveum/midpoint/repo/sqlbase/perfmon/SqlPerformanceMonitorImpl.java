@@ -7,11 +7,13 @@
 package com.evolveum.midpoint.repo.sqlbase.perfmon;
 
 import java.util.*;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicLong;
 
 import com.evolveum.midpoint.repo.api.perf.OperationRecord;
 import com.evolveum.midpoint.repo.api.perf.PerformanceMonitor;
+import com.evolveum.midpoint.schema.metrics.MidpointMetrics;
 import com.evolveum.midpoint.util.logging.Trace;
 import com.evolveum.midpoint.util.logging.TraceManager;
 import com.evolveum.midpoint.util.statistics.OperationsPerformanceMonitorImpl;
@@ -101,6 +103,31 @@ public class SqlPerformanceMonitorImpl implements PerformanceMonitor {
         threadLocalPerformanceInformation.remove();
     }
 
+    /**
+     * Wraps the code to be executed by a helper thread on behalf of the current thread (e.g. prefetching
+     * data for it), so the operations it executes are recorded in the thread-local performance information
+     * of the current thread. The information object is thread-safe, both threads can update it at once.
+     */
+    public <T> Callable<T> withCurrentThreadLocalPerformanceInformation(Callable<T> callable) {
+        PerformanceInformationImpl callerInformation = threadLocalPerformanceInformation.get();
+        if (callerInformation == null) {
+            return callable;
+        }
+        return () -> {
+            PerformanceInformationImpl previous = threadLocalPerformanceInformation.get();
+            threadLocalPerformanceInformation.set(callerInformation);
+            try {
+                return callable.call();
+            } finally {
+                if (previous != null) {
+                    threadLocalPerformanceInformation.set(previous);
+                } else {
+                    threadLocalPerformanceInformation.remove();
+                }
+            }
+        };
+    }
+
     public void shutdown() {
         LOGGER.info("SQL Performance Monitor shutting down.");
         synchronized (finishedOperations) {
@@ -160,6 +187,8 @@ public class SqlPerformanceMonitorImpl implements PerformanceMonitor {
         operation.setTotalTime(System.currentTimeMillis() - operation.getStartTime());
         operation.setAttempts(attempt);
         outstandingOperations.remove(operation.getHandle());
+        MidpointMetrics.recordRepositoryOperation(operation.getKind(), operation.getObjectTypeName(),
+                System.nanoTime() - operation.getStartNanos(), attempt);
         if (level >= LEVEL_DETAILS) {
             finishedOperations.add(operation);
         }
@@ -38,6 +38,7 @@ import com.evolveum.midpoint.util.exception.SchemaException;
 import com.evolveum.midpoint.util.logging.Trace;
 import com.evolveum.midpoint.util.logging.TraceManager;
 import com.evolveum.midpoint.xml.ns._public.common.audit_3.AuditEventRecordType;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.AuditPartitionsPolicyType;
 import com.evolveum.midpoint.xml.ns._public.common.common_3.CleanupPolicyType;
 import com.evolveum.midpoint.xml.ns._public.common.common_3.FocusType;
 import com.evolveum.midpoint.xml.ns._public.common.common_3.ObjectType;
@@ -108,6 +109,14 @@ public class AuditServiceProxy implements AuditService, AuditServiceRegistry {
         }
     }
 
+    @Override
+    public void maintainAuditPartitions(
+            @NotNull AuditPartitionsPolicyType policy, @NotNull OperationResult parentResult) {
+        for (AuditService service : services) {
+            service.maintainAuditPartitions(policy, parentResult);
+        }
+    }
+
     @Override
     public void registerService(AuditService service) {
         Validate.notNull(service, "Audit service must not be null.");
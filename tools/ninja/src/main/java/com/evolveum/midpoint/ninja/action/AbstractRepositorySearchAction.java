@@ -9,6 +9,7 @@ package com.evolveum.midpoint.ninja.action;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.Set;
 import java.util.concurrent.*;
@@ -55,6 +56,11 @@ public abstract class AbstractRepositorySearchAction<O extends ExportOptions> ex
 
     protected abstract Runnable createConsumer(BlockingQueue<ObjectType> queue, OperationStatus operation);
 
+    /** Creates consumers taking objects from the queue, by default just one created by {@link #createConsumer}. */
+    protected List<? extends Runnable> createConsumers(BlockingQueue<ObjectType> queue, OperationStatus operation) {
+        return Collections.singletonList(createConsumer(queue, operation));
+    }
+
     protected String getOperationName() {
         return getClass().getName() + "." + getOperationShortName();
     }
@@ -64,12 +70,13 @@ public abstract class AbstractRepositorySearchAction<O extends ExportOptions> ex
         OperationResult result = new OperationResult(getOperationName());
         OperationStatus operation = new OperationStatus(context, result);
 
-        // "+ 2" will be used for consumer and progress reporter
-        ExecutorService executor = Executors.newFixedThreadPool(options.getMultiThread() + 2);
-
         BlockingQueue<ObjectType> queue = new LinkedBlockingQueue<>(QUEUE_CAPACITY_PER_THREAD * options.getMultiThread());
 
         List<SearchProducerWorker> producers = createProducers(queue, operation);
+        List<? extends Runnable> consumers = createConsumers(queue, operation);
+
+        // "+ 1" will be used for progress reporter
+        ExecutorService executor = Executors.newFixedThreadPool(options.getMultiThread() + consumers.size() + 1);
 
         log.info("Starting " + getOperationShortName());
         operation.start();
@@ -83,8 +90,7 @@ public abstract class AbstractRepositorySearchAction<O extends ExportOptions> ex
 
         executor.execute(new ProgressReporterWorker<>(context, options, queue, operation));
 
-        Runnable consumer = createConsumer(queue, operation);
-        executor.execute(consumer);
+        consumers.forEach(executor::execute);
 
         // execute rest of the producers
         for (int i = options.getMultiThread(); i < producers.size(); i++) {
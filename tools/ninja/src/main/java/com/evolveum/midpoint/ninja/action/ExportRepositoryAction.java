@@ -6,15 +6,23 @@
  */
 package com.evolveum.midpoint.ninja.action;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.concurrent.BlockingQueue;
 
 import com.evolveum.midpoint.ninja.action.worker.ExportConsumerWorker;
+import com.evolveum.midpoint.ninja.impl.NinjaException;
 import com.evolveum.midpoint.ninja.opts.ExportOptions;
+import com.evolveum.midpoint.ninja.util.NinjaUtils;
 import com.evolveum.midpoint.ninja.util.OperationStatus;
 import com.evolveum.midpoint.xml.ns._public.common.common_3.ObjectType;
 
 /**
  * Ninja action realizing "export" command.
+ *
+ * Objects are serialized by more threads (based on multi-thread option) and written either to a single output
+ * in the order they were read, or to more output files (shards) when split option is used.
  */
 public class ExportRepositoryAction extends AbstractRepositorySearchAction<ExportOptions> {
 
@@ -25,6 +33,28 @@ public class ExportRepositoryAction extends AbstractRepositorySearchAction<Expor
 
     @Override
     protected Runnable createConsumer(BlockingQueue<ObjectType> queue, OperationStatus operation) {
-        return new ExportConsumerWorker(context, options, queue, operation);
+        return new ExportConsumerWorker(context, options, queue, operation,
+                null, options.getOutput(), options.getMultiThread());
+    }
+
+    @Override
+    protected List<? extends Runnable> createConsumers(BlockingQueue<ObjectType> queue, OperationStatus operation) {
+        int split = options.getSplit();
+        if (split <= 1) {
+            return Collections.singletonList(createConsumer(queue, operation));
+        }
+
+        if (options.getOutput() == null) {
+            throw new NinjaException("Split export requires output file");
+        }
+
+        // each shard is written by its own consumer, which also serializes the objects
+        List<ExportConsumerWorker> consumers = new ArrayList<>();
+        for (int i = 1; i <= split; i++) {
+            consumers.add(new ExportConsumerWorker(context, options, queue, operation,
+                    consumers, NinjaUtils.createShardFile(options.getOutput(), i), 1));
+        }
+
+        return consumers;
     }
 }
@@ -6,6 +6,7 @@
  */
 package com.evolveum.midpoint.ninja.action;
 
+import java.io.File;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.*;
@@ -41,19 +42,19 @@ public class ImportRepositoryAction extends RepositoryAction<ImportOptions> {
 
         BlockingQueue<ObjectType> queue = new LinkedBlockingQueue<>(QUEUE_CAPACITY_PER_THREAD * options.getMultiThread());
 
-        // "+ 2" will be used for producer and progress reporter
-        ExecutorService executor = Executors.newFixedThreadPool(options.getMultiThread() + 2);
-
-        ImportProducerWorker<ObjectType> producer;
+        List<ImportProducerWorker<ObjectType>> producers;
         if (options.getOid() != null) {
             InOidFilter filter = context.getPrismContext().queryFactory().createInOid(options.getOid());
-            producer = importByFilter(filter, true, queue, progress);
+            producers = importByFilter(filter, true, queue, progress);
         } else {
             ObjectFilter filter = NinjaUtils.createObjectFilter(options.getFilter(), context, ObjectType.class);
-            producer = importByFilter(filter, false, queue, progress);
+            producers = importByFilter(filter, false, queue, progress);
         }
 
-        executor.execute(producer);
+        // "+ 1" will be used for progress reporter
+        ExecutorService executor = Executors.newFixedThreadPool(options.getMultiThread() + producers.size() + 1);
+
+        producers.forEach(executor::execute);
 
         Thread.sleep(CONSUMERS_WAIT_FOR_START);
 
@@ -80,9 +81,19 @@ public class ImportRepositoryAction extends RepositoryAction<ImportOptions> {
         return LogTarget.SYSTEM_ERR;
     }
 
-    private ImportProducerWorker<ObjectType> importByFilter(ObjectFilter filter,
+    /**
+     * Creates producer for the input file, or more producers reading shards of split export in parallel,
+     * see {@link NinjaUtils#findInputFiles(File)}.
+     */
+    private List<ImportProducerWorker<ObjectType>> importByFilter(ObjectFilter filter,
             boolean stopAfterFound, BlockingQueue<ObjectType> queue, OperationStatus status) {
-        return new ImportProducerWorker<>(context, options, queue, status, filter, stopAfterFound, options.isContinueOnInputError());
+        List<ImportProducerWorker<ObjectType>> producers = new ArrayList<>();
+        for (File input : NinjaUtils.findInputFiles(options.getInput())) {
+            producers.add(new ImportProducerWorker<>(context, options, queue, status, producers, input,
+                    filter, stopAfterFound, options.isContinueOnInputError()));
+        }
+
+        return producers;
     }
 
     private List<ImportRepositoryConsumerWorker> createConsumers(
@@ -6,10 +6,14 @@
  */
 package com.evolveum.midpoint.ninja.action.worker;
 
+import java.io.File;
 import java.io.IOException;
+import java.io.StringWriter;
 import java.io.Writer;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.TimeUnit;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.*;
 
 import com.evolveum.midpoint.ninja.impl.NinjaContext;
 import com.evolveum.midpoint.ninja.impl.NinjaException;
@@ -20,57 +24,130 @@ import com.evolveum.midpoint.ninja.util.OperationStatus;
 import com.evolveum.midpoint.util.exception.SchemaException;
 
 /**
+ * Consumer writing objects from the queue to the output (file or stdout).
+ *
+ * Objects can be serialized by more threads, see {@link #serializationThreads}.
+ * Their output is still written in the order in which they were taken from the queue.
+ * For sharded output (split export) more consumers are used, each writing to its own output file.
+ *
  * Created by Viliam Repan (lazyman).
  */
 public abstract class AbstractWriterConsumerWorker<O extends BasicExportOptions, T>
         extends BaseWorker<O, T> {
 
+    /** How many objects per serialization thread can wait for writing before we wait for the oldest one. */
+    private static final int PENDING_WRITES_PER_THREAD = 100;
+
+    private final File output;
+
+    /**
+     * Number of threads used to serialize objects (by {@link #write(Writer, Object)}) for this consumer.
+     * If more than one, the write method must be thread-safe.
+     */
+    private final int serializationThreads;
+
     public AbstractWriterConsumerWorker(NinjaContext context,
             O options, BlockingQueue<T> queue, OperationStatus operation) {
-        super(context, options, queue, operation);
+        this(context, options, queue, operation, null, options.getOutput(), 1);
+    }
+
+    /**
+     * @param consumers all consumers taking objects from the queue, operation is finished when they are all done
+     * @param output output file for this consumer, null for stdout
+     */
+    public AbstractWriterConsumerWorker(NinjaContext context, O options, BlockingQueue<T> queue,
+            OperationStatus operation, List<? extends AbstractWriterConsumerWorker<?, ?>> consumers,
+            File output, int serializationThreads) {
+        super(context, options, queue, operation, consumers);
+
+        this.output = output;
+        this.serializationThreads = serializationThreads;
     }
 
     @Override
     public void run() {
         Log log = context.getLog();
 
-        // todo handle split option
-
         init();
 
+        ExecutorService serializers = serializationThreads > 1
+                ? Executors.newFixedThreadPool(serializationThreads) : null;
+        Deque<PendingWrite> pendingWrites = new ArrayDeque<>();
+
         try (Writer writer = createWriter()) {
             while (!shouldConsumerStop()) {
                 T object = null;
                 try {
                     object = queue.poll(CONSUMER_POLL_TIMEOUT, TimeUnit.SECONDS);
                     if (object == null) {
+                        writePending(writer, pendingWrites, Integer.MAX_VALUE);
                         continue;
                     }
 
-                    write(writer, object);
-                    writer.flush();
-
-                    operation.incrementTotal();
+                    if (serializers == null) {
+                        write(writer, object);
+                        operation.incrementTotal();
+                    } else {
+                        T toSerialize = object;
+                        pendingWrites.add(new PendingWrite(object, serializers.submit(() -> serialize(toSerialize))));
+                        writePending(writer, pendingWrites, serializationThreads * PENDING_WRITES_PER_THREAD);
+                    }
                 } catch (Exception ex) {
                     log.error("Couldn't store object {}, reason: {}", ex, object, ex.getMessage());
                     operation.incrementError();
                 }
             }
 
+            writePending(writer, pendingWrites, 0);
             finalizeWriter(writer);
         } catch (IOException ex) {
             log.error("Unexpected exception, reason: {}", ex, ex.getMessage());
         } catch (NinjaException ex) {
             log.error(ex.getMessage(), ex);
         } finally {
-            markDone();
+            if (serializers != null) {
+                serializers.shutdownNow();
+            }
+
+            // with more consumers (split export) the last one finishes the operation
+            synchronized (operation) {
+                markDone();
 
-            if (isWorkersDone()) {
-                operation.finish();
+                if (isWorkersDone() && !operation.isFinished()) {
+                    operation.finish();
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes serialized objects in the queue order: all the already serialized ones from the head of the queue,
+     * and waits for the others while there are more than `maxPending` of them.
+     */
+    private void writePending(Writer writer, Deque<PendingWrite> pendingWrites, int maxPending) throws IOException {
+        while (!pendingWrites.isEmpty()
+                && (pendingWrites.size() > maxPending || pendingWrites.peekFirst().serialized.isDone())) {
+            PendingWrite pending = pendingWrites.removeFirst();
+            try {
+                writer.write(pending.serialized.get());
+                operation.incrementTotal();
+            } catch (ExecutionException ex) {
+                Throwable cause = ex.getCause();
+                context.getLog().error("Couldn't store object {}, reason: {}", cause, pending.object, cause.getMessage());
+                operation.incrementError();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new NinjaException("Interrupted while waiting for serialization of " + pending.object, ex);
             }
         }
     }
 
+    private String serialize(T object) throws SchemaException, IOException {
+        StringWriter writer = new StringWriter();
+        write(writer, object);
+        return writer.toString();
+    }
+
     protected abstract void init();
 
     protected abstract String getProlog();
@@ -80,7 +157,7 @@ public abstract class AbstractWriterConsumerWorker<O extends BasicExportOptions,
     protected abstract String getEpilog();
 
     private Writer createWriter() throws IOException {
-        Writer writer = NinjaUtils.createWriter(options.getOutput(), context.getCharset(), options.isZip(), options.isOverwrite());
+        Writer writer = NinjaUtils.createWriter(output, context.getCharset(), options.isZip(), options.isOverwrite());
         String prolog = getProlog();
         if (prolog != null) {
             writer.write(prolog);
@@ -100,4 +177,15 @@ public abstract class AbstractWriterConsumerWorker<O extends BasicExportOptions,
         }
         writer.flush();
     }
+
+    private class PendingWrite {
+
+        private final T object;
+        private final Future<String> serialized;
+
+        private PendingWrite(T object, Future<String> serialized) {
+            this.object = object;
+            this.serialized = serialized;
+        }
+    }
 }
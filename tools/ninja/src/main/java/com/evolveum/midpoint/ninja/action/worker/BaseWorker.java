@@ -30,7 +30,7 @@ public abstract class BaseWorker<O, T> implements Runnable {
 
     protected OperationStatus operation;
 
-    private boolean done;
+    private volatile boolean done;
 
     public BaseWorker(NinjaContext context, O options, BlockingQueue<T> queue, OperationStatus operation) {
         this(context, options, queue, operation, null);
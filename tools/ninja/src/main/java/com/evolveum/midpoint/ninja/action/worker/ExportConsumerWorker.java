@@ -6,8 +6,10 @@
  */
 package com.evolveum.midpoint.ninja.action.worker;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.Writer;
+import java.util.List;
 import java.util.concurrent.BlockingQueue;
 
 import com.evolveum.midpoint.ninja.impl.NinjaContext;
@@ -24,18 +26,24 @@ import com.evolveum.midpoint.xml.ns._public.common.common_3.ObjectType;
  */
 public class ExportConsumerWorker extends AbstractWriterConsumerWorker<ExportOptions, ObjectType> {
 
-    private PrismSerializer<String> serializer;
+    /** Serializer for each serialization thread, see {@link AbstractWriterConsumerWorker}. */
+    private ThreadLocal<PrismSerializer<String>> serializer;
 
     public ExportConsumerWorker(NinjaContext context,
             ExportOptions options, BlockingQueue<ObjectType> queue, OperationStatus operation) {
         super(context, options, queue, operation);
     }
 
+    public ExportConsumerWorker(NinjaContext context, ExportOptions options, BlockingQueue<ObjectType> queue,
+            OperationStatus operation, List<ExportConsumerWorker> consumers, File output, int serializationThreads) {
+        super(context, options, queue, operation, consumers, output, serializationThreads);
+    }
+
     @Override
     protected void init() {
-        serializer = context.getPrismContext()
+        serializer = ThreadLocal.withInitial(() -> context.getPrismContext()
                 .xmlSerializer()
-                .options(SerializationOptions.createSerializeForExport().skipContainerIds(options.isSkipContainerIds()));
+                .options(SerializationOptions.createSerializeForExport().skipContainerIds(options.isSkipContainerIds())));
     }
 
     @Override
@@ -45,7 +53,7 @@ public class ExportConsumerWorker extends AbstractWriterConsumerWorker<ExportOpt
 
     @Override
     protected void write(Writer writer, ObjectType object) throws SchemaException, IOException {
-        String xml = serializer.serialize(object.asPrismObject());
+        String xml = serializer.get().serialize(object.asPrismObject());
         writer.write(xml);
     }
 
@@ -8,6 +8,7 @@ package com.evolveum.midpoint.ninja.action.worker;
 
 import java.io.*;
 import java.nio.charset.Charset;
+import java.util.List;
 import java.util.concurrent.BlockingQueue;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
@@ -40,6 +41,7 @@ import com.evolveum.midpoint.schema.result.OperationResult;
 public class ImportProducerWorker<T extends Containerable>
         extends BaseWorker<BasicImportOptions, T> {
 
+    private final File input;
     private final ObjectFilter filter;
     private final boolean stopAfterFound;
     private boolean continueOnInputError;
@@ -50,8 +52,20 @@ public class ImportProducerWorker<T extends Containerable>
     public ImportProducerWorker(
             NinjaContext context, BasicImportOptions options, BlockingQueue<T> queue,
             OperationStatus operation, ObjectFilter filter, boolean stopAfterFound, boolean continueOnInputError) {
-        super(context, options, queue, operation);
+        this(context, options, queue, operation, null, options.getInput(), filter, stopAfterFound, continueOnInputError);
+    }
+
+    /**
+     * @param producers all producers, if more input files (shards) are read in parallel
+     * @param input input file for this producer, null for stdin
+     */
+    public ImportProducerWorker(
+            NinjaContext context, BasicImportOptions options, BlockingQueue<T> queue, OperationStatus operation,
+            List<ImportProducerWorker<T>> producers, File input, ObjectFilter filter, boolean stopAfterFound,
+            boolean continueOnInputError) {
+        super(context, options, queue, operation, producers);
 
+        this.input = input;
         this.filter = filter;
         this.stopAfterFound = stopAfterFound;
         this.continueOnInputError = continueOnInputError;
@@ -61,8 +75,16 @@ public class ImportProducerWorker<T extends Containerable>
     public void run() {
         Log log = context.getLog();
 
-        log.info("Starting import");
-        operation.start();
+        synchronized (operation) {
+            // with more producers only the first one starts the operation
+            if (operation.getState() == OperationStatus.State.NOT_STARTED) {
+                log.info("Starting import");
+                operation.start();
+            }
+        }
+        if (input != null) {
+            log.info("Processing file {}", input.getPath());
+        }
 
         try (InputStream input = openInputStream()) {
             if (!options.isZip()) {
@@ -88,26 +110,26 @@ public class ImportProducerWorker<T extends Containerable>
         } catch (NinjaException ex) {
             log.error(ex.getMessage(), ex);
         } finally {
-            markDone();
+            synchronized (operation) {
+                markDone();
 
-            if (isWorkersDone()) {
-                if (!operation.isFinished()) {
-                    operation.producerFinish();
+                if (isWorkersDone()) {
+                    if (!operation.isFinished()) {
+                        operation.producerFinish();
+                    }
                 }
             }
         }
     }
 
     private InputStream openInputStream() throws IOException {
-        File input = options.getInput();
-
         InputStream is;
         if (input != null) {
             if (!input.exists()) {
                 throw new NinjaException("Import file '" + input.getPath() + "' doesn't exist");
             }
 
-            is = new FileInputStream(input);
+            is = new BufferedInputStream(new FileInputStream(input));
         } else {
             is = System.in;
         }
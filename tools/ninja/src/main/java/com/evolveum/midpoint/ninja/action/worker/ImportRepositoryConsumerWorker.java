@@ -6,6 +6,7 @@
  */
 package com.evolveum.midpoint.ninja.action.worker;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.TimeUnit;
@@ -18,6 +19,7 @@ import com.evolveum.midpoint.ninja.opts.ImportOptions;
 import com.evolveum.midpoint.ninja.util.OperationStatus;
 import com.evolveum.midpoint.prism.PrismObject;
 import com.evolveum.midpoint.prism.crypto.Protector;
+import com.evolveum.midpoint.repo.api.BulkOperationItemResult;
 import com.evolveum.midpoint.repo.api.RepoAddOptions;
 import com.evolveum.midpoint.repo.api.RepositoryService;
 import com.evolveum.midpoint.schema.result.OperationResult;
@@ -28,6 +30,9 @@ import com.evolveum.midpoint.xml.ns._public.common.common_3.ObjectType;
  */
 public class ImportRepositoryConsumerWorker extends BaseWorker<ImportOptions, ObjectType> {
 
+    /** Objects waiting in the queue are added to the repository in batches of at most this size. */
+    private static final int IMPORT_BATCH_SIZE = 100;
+
     public ImportRepositoryConsumerWorker(
             NinjaContext context, ImportOptions options, BlockingQueue<ObjectType> queue,
             OperationStatus operation, List<ImportRepositoryConsumerWorker> consumers) {
@@ -39,30 +44,23 @@ public class ImportRepositoryConsumerWorker extends BaseWorker<ImportOptions, Ob
         ApplicationContext ctx = context.getApplicationContext();
         Protector protector = ctx.getBean(Protector.class);
 
+        RepoAddOptions opts = createRepoAddOptions(options);
+
         try {
             while (!shouldConsumerStop()) {
-                ObjectType object = null;
+                List<ObjectType> objects = new ArrayList<>();
                 try {
-                    object = queue.poll(CONSUMER_POLL_TIMEOUT, TimeUnit.SECONDS);
+                    ObjectType object = queue.poll(CONSUMER_POLL_TIMEOUT, TimeUnit.SECONDS);
                     if (object == null) {
                         continue;
                     }
-                    PrismObject<? extends ObjectType> prismObject = object.asPrismObject();
-
-                    RepoAddOptions opts = createRepoAddOptions(options);
-
-                    if (!opts.isAllowUnencryptedValues()) {
-                        CryptoUtil.encryptValues(protector, prismObject);
-                    }
-
-                    RepositoryService repository = context.getRepository();
-                    repository.addObject(prismObject, opts, new OperationResult("Import object"));
-
-                    operation.incrementTotal();
-                } catch (Exception ex) {
-                    context.getLog().error("Couldn't add object {}, reason: {}", ex, object, ex.getMessage());
-                    operation.incrementError();
+                    objects.add(object);
+                    queue.drainTo(objects, IMPORT_BATCH_SIZE - 1);
+                } catch (InterruptedException ex) {
+                    context.getLog().error("Interrupted while waiting for objects to import", ex);
+                    break;
                 }
+                importObjects(objects, opts, protector);
             }
         } finally {
             markDone();
@@ -73,6 +71,43 @@ public class ImportRepositoryConsumerWorker extends BaseWorker<ImportOptions, Ob
         }
     }
 
+    private void importObjects(List<ObjectType> objects, RepoAddOptions opts, Protector protector) {
+        List<PrismObject<? extends ObjectType>> prismObjects = new ArrayList<>(objects.size());
+        for (ObjectType object : objects) {
+            try {
+                PrismObject<? extends ObjectType> prismObject = object.asPrismObject();
+                if (!opts.isAllowUnencryptedValues()) {
+                    CryptoUtil.encryptValues(protector, prismObject);
+                }
+                prismObjects.add(prismObject);
+            } catch (Exception ex) {
+                context.getLog().error("Couldn't add object {}, reason: {}", ex, object, ex.getMessage());
+                operation.incrementError();
+            }
+        }
+
+        List<BulkOperationItemResult> results;
+        try {
+            RepositoryService repository = context.getRepository();
+            results = repository.addObjects(prismObjects, opts, new OperationResult("Import objects"));
+        } catch (Exception ex) {
+            context.getLog().error("Couldn't add {} objects, reason: {}", ex, prismObjects.size(), ex.getMessage());
+            prismObjects.forEach(o -> operation.incrementError());
+            return;
+        }
+
+        for (int i = 0; i < results.size(); i++) {
+            BulkOperationItemResult result = results.get(i);
+            if (result.isSuccess()) {
+                operation.incrementTotal();
+            } else {
+                context.getLog().error("Couldn't add object {}, reason: {}",
+                        prismObjects.get(i), result.getException().getMessage());
+                operation.incrementError();
+            }
+        }
+    }
+
     private RepoAddOptions createRepoAddOptions(ImportOptions options) {
         RepoAddOptions opts = new RepoAddOptions();
         opts.setOverwrite(options.isOverwrite());
@@ -23,9 +23,8 @@ public class ExportOptions extends BaseImportExportOptions implements BasicExpor
     public static final String P_OVERWRITE = "-ow";
     public static final String P_OVERWRITE_LONG = "--overwrite";
 
-    // TODO not supported yet
     public static final String P_SPLIT = "-n";
-    public static final String P_SPLIT_LONG = "-split";
+    public static final String P_SPLIT_LONG = "--split";
 
     public static final String P_NO_IDS = "-ni";
     public static final String P_NO_IDS_LONG = "--no-container-ids";
@@ -39,6 +38,9 @@ public class ExportOptions extends BaseImportExportOptions implements BasicExpor
     @Parameter(names = { P_NO_IDS, P_NO_IDS_LONG }, descriptionKey = "export.skipids")
     private boolean skipIds;
 
+    @Parameter(names = { P_SPLIT, P_SPLIT_LONG }, descriptionKey = "export.split")
+    private int split;
+
     @Override
     public File getOutput() {
         return output;
@@ -52,4 +54,8 @@ public class ExportOptions extends BaseImportExportOptions implements BasicExpor
     public boolean isSkipContainerIds() {
         return skipIds;
     }
+
+    public int getSplit() {
+        return split;
+    }
 }
@@ -166,7 +166,38 @@ public class NinjaUtils {
             os = zos;
         }
 
-        return new OutputStreamWriter(os, charset);
+        return new BufferedWriter(new OutputStreamWriter(os, charset));
+    }
+
+    /**
+     * Returns file for n-th shard (starting with 1) of the split output, e.g. `objects-2.xml` for `objects.xml`.
+     */
+    public static File createShardFile(File output, int index) {
+        String name = output.getName();
+        int dot = name.lastIndexOf('.');
+        String shardName = dot > 0
+                ? name.substring(0, dot) + "-" + index + name.substring(dot)
+                : name + "-" + index;
+        return new File(output.getParentFile(), shardName);
+    }
+
+    /**
+     * Returns input files for import: the input itself if it exists (or is not specified),
+     * otherwise existing shards created by split export (see {@link #createShardFile(File, int)}).
+     * If there are no shards, the input itself is returned, so the missing file is reported as usual.
+     */
+    public static List<File> findInputFiles(File input) {
+        if (input == null || input.exists()) {
+            return Collections.singletonList(input);
+        }
+
+        List<File> shards = new ArrayList<>();
+        File shard;
+        while ((shard = createShardFile(input, shards.size() + 1)).exists()) {
+            shards.add(shard);
+        }
+
+        return shards.isEmpty() ? Collections.singletonList(input) : shards;
     }
 
     public static GetOperationOptionsBuilder addIncludeOptionsForExport(GetOperationOptionsBuilder optionsBuilder,
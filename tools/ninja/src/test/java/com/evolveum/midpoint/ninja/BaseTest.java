@@ -10,6 +10,10 @@ import java.io.*;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
 
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
@@ -36,6 +40,7 @@ public class BaseTest extends AbstractUnitTest {
 
     public static final String RESOURCES_FOLDER = "./target/test-classes";
 
+
     private List<String> systemOut;
     private List<String> systemErr;
 
@@ -166,6 +171,32 @@ public class BaseTest extends AbstractUnitTest {
         AssertJUnit.fail(message + ": " + ex.getMessage());
     }
 
+    /**
+     * Returns OIDs of objects with given element name (e.g. "org") in the exported file,
+     * in the order in which they were written. Zipped file is expected to contain a single entry.
+     */
+    protected List<String> readExportedOids(File file, boolean zip, String elementName) throws IOException {
+        String content;
+        if (zip) {
+            try (ZipInputStream zis = new ZipInputStream(new FileInputStream(file))) {
+                ZipEntry entry = zis.getNextEntry();
+                AssertJUnit.assertNotNull("No entry in " + file, entry);
+                content = IOUtils.toString(zis, StandardCharsets.UTF_8);
+                AssertJUnit.assertNull("More entries in " + file, zis.getNextEntry());
+            }
+        } else {
+            content = FileUtils.readFileToString(file, StandardCharsets.UTF_8);
+        }
+
+        List<String> oids = new ArrayList<>();
+        Pattern objectStart = Pattern.compile("<(?:\\w+:)?" + elementName + "\\s[^>]*?\\boid=\"([^\"]+)\"");
+        Matcher matcher = objectStart.matcher(content);
+        while (matcher.find()) {
+            oids.add(matcher.group(1));
+        }
+        return oids;
+    }
+
     protected void clearDbIfNative(RepositoryService repo) {
         if (repo instanceof SqaleRepositoryService) {
             SqaleRepoContext repoCtx = ((SqaleRepositoryService) repo).sqlRepoContext();
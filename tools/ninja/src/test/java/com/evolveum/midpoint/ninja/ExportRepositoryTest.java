@@ -6,12 +6,35 @@
  */
 package com.evolveum.midpoint.ninja;
 
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.testng.AssertJUnit;
+import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
+import com.evolveum.midpoint.ninja.util.NinjaUtils;
+import com.evolveum.midpoint.repo.api.RepositoryService;
+import com.evolveum.midpoint.schema.result.OperationResult;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.OrgType;
+
 /**
  * Created by Viliam Repan (lazyman).
  */
-public class ExportRepositoryTest {
+public class ExportRepositoryTest extends BaseTest {
+
+    private static final File EXPORT_DIR = new File("./target/export");
+
+    private static final int ORG_COUNT = 9;
+
+    @BeforeMethod
+    public void initMidpointHome() throws Exception {
+        setupMidpointHome();
+        EXPORT_DIR.mkdirs();
+    }
 
     @Test
     public void exportByOid() throws Exception {
@@ -32,4 +55,73 @@ public class ExportRepositoryTest {
     public void exportToZipFileByFilterAllowOverwrite() throws Exception {
 
     }
+
+    @Test
+    public void test100ExportWithMoreThreadsKeepsOrder() throws Exception {
+        importOrgs();
+
+        File output = new File(EXPORT_DIR, "orgs-ordered.xml");
+        String[] input = new String[] { "-m", getMidpointHome(), "export", "-t", "org", "-l", "4",
+                "-O", output.getPath(), "-ow" };
+
+        List<String> expectedOids = new ArrayList<>();
+        executeTest(null,
+                context -> {
+                    // Export reads objects using the same iterative search, i.e. ordered by OID.
+                    RepositoryService repo = context.getRepository();
+                    repo.searchObjectsIterative(OrgType.class, null,
+                            (object, result) -> expectedOids.add(object.getOid()),
+                            null, true, new OperationResult("search orgs"));
+                },
+                null, false, false, input);
+
+        List<String> oids = readExportedOids(output, false, "org");
+        AssertJUnit.assertEquals(ORG_COUNT, expectedOids.size());
+        AssertJUnit.assertEquals("Objects exported by more threads are not in the order they were read",
+                expectedOids, oids);
+    }
+
+    @Test
+    public void test110ExportSplitToZippedShards() throws Exception {
+        importOrgs();
+
+        File output = new File(EXPORT_DIR, "orgs-split.xml");
+        String[] input = new String[] { "-m", getMidpointHome(), "export", "-t", "org", "-n", "3", "-z",
+                "-O", output.getPath(), "-ow" };
+
+        executeTest(null, null, input);
+
+        AssertJUnit.assertFalse("Unsplit output file was created", output.exists());
+        AssertJUnit.assertFalse("Unexpected 4th shard", NinjaUtils.createShardFile(output, 4).exists());
+
+        List<String> oids = new ArrayList<>();
+        for (int i = 1; i <= 3; i++) {
+            File shard = NinjaUtils.createShardFile(output, i);
+            AssertJUnit.assertEquals("orgs-split-" + i + ".xml", shard.getName());
+            AssertJUnit.assertTrue("Shard " + shard + " does not exist", shard.exists());
+            oids.addAll(readExportedOids(shard, true, "org"));
+        }
+
+        AssertJUnit.assertEquals("Objects are not exported exactly once: " + oids,
+                ORG_COUNT, new HashSet<>(oids).size());
+        AssertJUnit.assertEquals(ORG_COUNT, oids.size());
+        AssertJUnit.assertEquals(
+                oids.stream().sorted().collect(Collectors.toList()),
+                readImportedOrgOids());
+    }
+
+    private void importOrgs() {
+        executeTest(null,
+                context -> clearDbIfNative(context.getRepository()),
+                null, false, false,
+                "-m", getMidpointHome(), "import", "-i", RESOURCES_FOLDER + "/org-monkey-island-simple.xml");
+    }
+
+    /** OIDs of the orgs from the imported file, sorted. */
+    private List<String> readImportedOrgOids() throws Exception {
+        return readExportedOids(new File(RESOURCES_FOLDER, "org-monkey-island-simple.xml"), false, "org")
+                .stream()
+                .sorted()
+                .collect(Collectors.toList());
+    }
 }
@@ -6,12 +6,14 @@
  */
 package com.evolveum.midpoint.ninja;
 
+import java.io.File;
 import java.util.List;
 
 import org.testng.AssertJUnit;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
+import com.evolveum.midpoint.ninja.util.NinjaUtils;
 import com.evolveum.midpoint.prism.PrismObject;
 import com.evolveum.midpoint.repo.api.RepositoryService;
 import com.evolveum.midpoint.schema.result.OperationResult;
@@ -176,4 +178,44 @@ public class ImportRepositoryTest extends BaseTest {
                 },
                 true, true, input);
     }
+
+    @Test
+    public void test200ImportSplitExportShards() throws Exception {
+        File output = new File("./target/export/orgs-round-trip.xml");
+        output.getParentFile().mkdirs();
+
+        // orgs exported to three zipped shards
+        executeTest(null,
+                context -> clearDbIfNative(context.getRepository()),
+                null, false, false,
+                "-m", getMidpointHome(), "import", "-i", RESOURCES_FOLDER + "/org-monkey-island-simple.xml");
+        executeTest(null, null, null, false, false,
+                "-m", getMidpointHome(), "export", "-t", "org", "-n", "3", "-z", "-O", output.getPath(), "-ow");
+        for (int i = 1; i <= 3; i++) {
+            AssertJUnit.assertTrue(NinjaUtils.createShardFile(output, i).exists());
+        }
+
+        // shards are imported using the name of the (non-existent) unsplit file
+        String[] input = new String[] { "-m", getMidpointHome(), "import", "-i", output.getPath(), "-z" };
+
+        executeTest(null,
+                context -> {
+                    RepositoryService repo = context.getRepository();
+                    OperationResult result = new OperationResult("delete orgs");
+                    for (PrismObject<OrgType> org : repo.searchObjects(OrgType.class, null, null, result)) {
+                        repo.deleteObject(OrgType.class, org.getOid(), result);
+                    }
+
+                    AssertJUnit.assertEquals(0, repo.countObjects(OrgType.class, null, null, result));
+                },
+                context -> {
+                    RepositoryService repo = context.getRepository();
+
+                    OperationResult result = new OperationResult("count orgs");
+                    AssertJUnit.assertEquals(9, repo.countObjects(OrgType.class, null, null, result));
+                },
+                true, true, input);
+
+        AssertJUnit.assertTrue(getSystemErr().isEmpty());
+    }
 }